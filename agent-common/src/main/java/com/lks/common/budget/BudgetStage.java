@@ -0,0 +1,34 @@
+package com.lks.common.budget;
+
+/**
+ * 预算降级阶段，按预算压力依次进入，运行期间只前进不后退
+ */
+public enum BudgetStage {
+    /** 正常运行 */
+    NORMAL("normal"),
+    /** 改用更便宜的模型 */
+    ECONOMY("economy"),
+    /** 不再启动子代理（移除 task 工具并拒绝新的 task 调用） */
+    NO_SUBAGENTS("no_subagents"),
+    /** 只保留收尾所需的工具，要求模型立即给出最终结果 */
+    FINAL("final"),
+    /** 预算耗尽：收尾机会用过后直接结束运行 */
+    EXHAUSTED("exhausted");
+
+    private final String tag;
+
+    BudgetStage(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * @return 指标标签值
+     */
+    public String tag() {
+        return tag;
+    }
+
+    public boolean atLeast(BudgetStage stage) {
+        return compareTo(stage) >= 0;
+    }
+}
@@ -0,0 +1,42 @@
+package com.lks.common.budget;
+
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.hook.AgentHook;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 运行开始时建立预算用量（子代理关联父运行），结束时注销并记录最终用量
+ */
+public class GovernorAgentHook extends AgentHook {
+
+    private final RunGovernor governor;
+    private final RunGovernor.Scope scope;
+
+    GovernorAgentHook(RunGovernor governor, RunGovernor.Scope scope) {
+        this.governor = governor;
+        this.scope = scope;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> beforeAgent(OverAllState state, RunnableConfig config) {
+        governor.open(scope, config);
+        return CompletableFuture.completedFuture(Map.of());
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> afterAgent(OverAllState state, RunnableConfig config) {
+        RunLedger ledger = RunGovernor.ledger(config);
+        if (ledger != null) {
+            governor.close(ledger);
+        }
+        return CompletableFuture.completedFuture(Map.of());
+    }
+
+    @Override
+    public String getName() {
+        return "GovernorAgentHook";
+    }
+}
@@ -0,0 +1,50 @@
+package com.lks.common.budget;
+
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.hook.HookPosition;
+import com.alibaba.cloud.ai.graph.agent.hook.HookPositions;
+import com.alibaba.cloud.ai.graph.agent.hook.JumpTo;
+import com.alibaba.cloud.ai.graph.agent.hook.ModelHook;
+import org.springframework.ai.chat.messages.AssistantMessage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 模型调用前检查预算：已耗尽且收尾机会已用过，或收尾轮数达到上限时，追加说明并结束运行（与 ToolCallLimitHook 的 END 行为一致）
+ */
+@HookPositions(value = {HookPosition.BEFORE_MODEL})
+public class GovernorModelHook extends ModelHook {
+
+    private final RunGovernor governor;
+
+    GovernorModelHook(RunGovernor governor) {
+        this.governor = governor;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> beforeModel(OverAllState state, RunnableConfig config) {
+        RunLedger ledger = RunGovernor.ledger(config);
+        if (ledger == null) {
+            return CompletableFuture.completedFuture(Map.of());
+        }
+        if (governor.shouldStop(ledger, governor.evaluate(ledger))) {
+            return CompletableFuture.completedFuture(Map.of(
+                    "messages", List.of(new AssistantMessage(governor.exhaustedMessage(ledger))),
+                    "jump_to", JumpTo.end));
+        }
+        return CompletableFuture.completedFuture(Map.of());
+    }
+
+    @Override
+    public String getName() {
+        return "GovernorModelHook";
+    }
+
+    @Override
+    public List<JumpTo> canJumpTo() {
+        return List.of(JumpTo.end);
+    }
+}
@@ -0,0 +1,124 @@
+package com.lks.common.budget;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.model.tool.DefaultToolCallingChatOptions;
+import org.springframework.ai.tool.ToolCallback;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * 按预算阶段改写模型请求，并把响应中的 token 用量与估算费用计入运行
+ *
+ * economy 起改用便宜模型，no_subagents 起移除 task 工具，final 起只保留收尾工具并追加收尾指令。
+ * 流式调用在流结束时按最后一帧携带的用量计入（被取消的流同样计入已生成部分）。
+ */
+public class GovernorModelInterceptor extends ModelInterceptor {
+
+    private static final String NO_TOOLS = "__no_tools__";
+
+    private final RunGovernor governor;
+
+    GovernorModelInterceptor(RunGovernor governor) {
+        this.governor = governor;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ModelResponse interceptModel(ModelRequest request, ModelCallHandler handler) {
+        RunLedger ledger = RunGovernor.ledger(request.getContext());
+        if (ledger == null) {
+            return handler.call(request);
+        }
+        ModelRequest governed = degrade(request, ledger, governor.evaluate(ledger));
+        String requestedModel = governed.getOptions() != null ? governed.getOptions().getModel() : null;
+        ModelResponse response = handler.call(governed);
+        if (response.getMessage() instanceof Flux<?> flux) {
+            return ModelResponse.of(charge((Flux<ChatResponse>) flux, ledger, requestedModel));
+        }
+        charge(ledger, requestedModel, response.getChatResponse());
+        return response;
+    }
+
+    @Override
+    public String getName() {
+        return "GovernorModelInterceptor";
+    }
+
+    private ModelRequest degrade(ModelRequest request, RunLedger ledger, BudgetStage stage) {
+        if (!stage.atLeast(BudgetStage.ECONOMY)) {
+            return request;
+        }
+        ModelRequest.Builder builder = ModelRequest.builder(request);
+        String economyModel = governor.economyModel();
+        if (economyModel != null && !economyModel.isBlank() && request.getOptions() != null) {
+            ChatOptions options = request.getOptions().copy();
+            if (options instanceof DefaultToolCallingChatOptions toolCallingOptions) {
+                toolCallingOptions.setModel(economyModel);
+                builder.options(toolCallingOptions);
+            }
+        }
+        if (stage.atLeast(BudgetStage.NO_SUBAGENTS)) {
+            Predicate<String> allowed = stage.atLeast(BudgetStage.FINAL)
+                    ? governor.finalTools(ledger.scope())::contains
+                    : tool -> !RunGovernor.TASK_TOOL.equals(tool);
+            if (request.getTools() != null) {
+                List<String> tools = request.getTools().stream().filter(allowed).toList();
+                // 框架把空的工具名列表当作不过滤，全部移除时改用一个不存在的工具名
+                builder.tools(tools.isEmpty() ? List.of(NO_TOOLS) : tools);
+            }
+            if (request.getDynamicToolCallbacks() != null) {
+                List<ToolCallback> callbacks = request.getDynamicToolCallbacks().stream()
+                        .filter(callback -> allowed.test(callback.getToolDefinition().name()))
+                        .toList();
+                builder.dynamicToolCallbacks(callbacks);
+            }
+        }
+        if (stage.atLeast(BudgetStage.FINAL)) {
+            String instruction = governor.finalInstruction(ledger);
+            SystemMessage systemMessage = request.getSystemMessage();
+            builder.systemMessage(new SystemMessage(systemMessage != null && systemMessage.getText() != null
+                    ? systemMessage.getText() + "\n\n" + instruction
+                    : instruction));
+            ledger.takeFinalTurn();
+        }
+        return builder.build();
+    }
+
+    private Flux<ChatResponse> charge(Flux<ChatResponse> flux, RunLedger ledger, String requestedModel) {
+        return Flux.defer(() -> {
+            AtomicReference<ChatResponse> last = new AtomicReference<>();
+            return flux
+                    .doOnNext(response -> {
+                        if (response.getMetadata() != null && hasTokens(response.getMetadata().getUsage())) {
+                            last.set(response);
+                        }
+                    })
+                    .doFinally(signal -> charge(ledger, requestedModel, last.get()));
+        });
+    }
+
+    private void charge(RunLedger ledger, String requestedModel, ChatResponse response) {
+        Usage usage = response != null && response.getMetadata() != null ? response.getMetadata().getUsage() : null;
+        if (!hasTokens(usage)) {
+            return;
+        }
+        String model = requestedModel != null ? requestedModel : response.getMetadata().getModel();
+        long prompt = usage.getPromptTokens() != null ? usage.getPromptTokens() : 0;
+        long completion = usage.getCompletionTokens() != null ? usage.getCompletionTokens() : 0;
+        ledger.chargeModel(prompt, completion, governor.estimateCost(model, prompt, completion));
+    }
+
+    private static boolean hasTokens(Usage usage) {
+        return usage != null && usage.getTotalTokens() != null && usage.getTotalTokens() > 0;
+    }
+}
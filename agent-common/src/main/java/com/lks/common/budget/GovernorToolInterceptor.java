@@ -0,0 +1,67 @@
+package com.lks.common.budget;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+
+/**
+ * 把工具调用次数与结果字节数计入运行；进入 no_subagents 阶段后，模型此前发起的 task 调用不再执行，
+ * 直接返回错误结果（放在并行扇出拦截器之前，子代理不会被启动）
+ */
+public class GovernorToolInterceptor extends ToolInterceptor {
+
+    private final RunGovernor governor;
+
+    GovernorToolInterceptor(RunGovernor governor) {
+        this.governor = governor;
+    }
+
+    @Override
+    public ToolCallResponse interceptToolCall(ToolCallRequest request, ToolCallHandler handler) {
+        RunLedger ledger = RunGovernor.ledger(request.getContext());
+        if (ledger == null) {
+            return handler.call(request);
+        }
+        if (RunGovernor.TASK_TOOL.equals(request.getToolName())
+                && governor.evaluate(ledger).atLeast(BudgetStage.NO_SUBAGENTS)) {
+            return ToolCallResponse.of(request.getToolCallId(), request.getToolName(), governor.subAgentRefusal(ledger));
+        }
+        ToolCallResponse response = handler.call(request);
+        ledger.chargeTool(utf8Length(response != null ? response.getResult() : null));
+        governor.evaluate(ledger);
+        return response;
+    }
+
+    @Override
+    public String getName() {
+        return "GovernorToolInterceptor";
+    }
+
+    /**
+     * UTF-8 编码后的字节数，不实际编码
+     */
+    private static long utf8Length(String text) {
+        if (text == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            }
+            else if (c < 0x800) {
+                bytes += 2;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            }
+            else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,181 @@
+package com.lks.common.budget;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * 一次运行的预算上限
+ *
+ * 各项预算互相独立，0（墙钟时间为 {@link Duration#ZERO}）表示不限；运行的预算压力取各项用量占比的最大值。
+ */
+public final class RunBudget {
+
+    /**
+     * 预算项
+     */
+    public enum Kind {
+        /** 墙钟时间（毫秒） */
+        WALL_CLOCK("wall_clock"),
+        /** 提示 token 数 */
+        PROMPT_TOKENS("prompt_tokens"),
+        /** 生成 token 数 */
+        COMPLETION_TOKENS("completion_tokens"),
+        /** 工具结果的 UTF-8 字节数 */
+        TOOL_BYTES("tool_bytes"),
+        /** 工具调用次数 */
+        TOOL_CALLS("tool_calls"),
+        /** 按单价估算的费用 */
+        COST("cost");
+
+        private final String tag;
+
+        Kind(String tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * @return 指标标签值
+         */
+        public String tag() {
+            return tag;
+        }
+    }
+
+    private static final RunBudget UNLIMITED = builder().build();
+
+    private final Duration wallClock;
+    private final long promptTokens;
+    private final long completionTokens;
+    private final long toolBytes;
+    private final long toolCalls;
+    private final double cost;
+
+    private RunBudget(Builder builder) {
+        this.wallClock = builder.wallClock;
+        this.promptTokens = builder.promptTokens;
+        this.completionTokens = builder.completionTokens;
+        this.toolBytes = builder.toolBytes;
+        this.toolCalls = builder.toolCalls;
+        this.cost = builder.cost;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return 不限任何一项的预算
+     */
+    public static RunBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * @return 某项预算的上限（墙钟时间以毫秒计），0 表示不限
+     */
+    public double limit(Kind kind) {
+        return switch (kind) {
+            case WALL_CLOCK -> wallClock.toMillis();
+            case PROMPT_TOKENS -> promptTokens;
+            case COMPLETION_TOKENS -> completionTokens;
+            case TOOL_BYTES -> toolBytes;
+            case TOOL_CALLS -> toolCalls;
+            case COST -> cost;
+        };
+    }
+
+    public Duration getWallClock() {
+        return wallClock;
+    }
+
+    public long getPromptTokens() {
+        return promptTokens;
+    }
+
+    public long getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public long getToolBytes() {
+        return toolBytes;
+    }
+
+    public long getToolCalls() {
+        return toolCalls;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+
+    @Override
+    public String toString() {
+        return "RunBudget{wallClock=" + wallClock + ", promptTokens=" + promptTokens + ", completionTokens=" + completionTokens
+                + ", toolBytes=" + toolBytes + ", toolCalls=" + toolCalls + ", cost=" + cost + '}';
+    }
+
+    public static class Builder {
+        private Duration wallClock = Duration.ZERO;
+        private long promptTokens;
+        private long completionTokens;
+        private long toolBytes;
+        private long toolCalls;
+        private double cost;
+
+        /**
+         * 运行的墙钟时间上限（从 beforeAgent 起算，人工审批中断后恢复的运行重新计时）
+         */
+        public Builder wallClock(Duration wallClock) {
+            this.wallClock = wallClock;
+            return this;
+        }
+
+        /**
+         * 累计提示 token 数上限（每次模型调用都计入整段上下文）
+         */
+        public Builder promptTokens(long promptTokens) {
+            this.promptTokens = promptTokens;
+            return this;
+        }
+
+        /**
+         * 累计生成 token 数上限
+         */
+        public Builder completionTokens(long completionTokens) {
+            this.completionTokens = completionTokens;
+            return this;
+        }
+
+        /**
+         * 工具结果累计字节数上限（网页抓取、论文下载等）
+         */
+        public Builder toolBytes(long toolBytes) {
+            this.toolBytes = toolBytes;
+            return this;
+        }
+
+        /**
+         * 工具调用次数上限
+         */
+        public Builder toolCalls(long toolCalls) {
+            this.toolCalls = toolCalls;
+            return this;
+        }
+
+        /**
+         * 估算费用上限，单位与 {@link RunGovernor.Builder#price(String, double, double)} 的单价一致
+         */
+        public Builder cost(double cost) {
+            this.cost = cost;
+            return this;
+        }
+
+        public RunBudget build() {
+            Objects.requireNonNull(wallClock, "wallClock cannot be null");
+            if (wallClock.isNegative() || promptTokens < 0 || completionTokens < 0 || toolBytes < 0 || toolCalls < 0 || cost < 0) {
+                throw new IllegalArgumentException("budget limits cannot be negative");
+            }
+            return new RunBudget(this);
+        }
+    }
+}
@@ -0,0 +1,517 @@
+package com.lks.common.budget;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.hook.Hook;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 按预算治理研究运行
+ *
+ * 取代固定的工具调用次数上限：为每次运行（主代理）与每个子代理分别跟踪墙钟时间、提示 / 生成 token、
+ * 工具结果字节数、工具调用次数与估算费用，子代理的用量同时计入父运行。预算压力（各项用量占比的最大值）
+ * 越过阈值时依次降级，而不是在某个次数上一刀切断：
+ * <ol>
+ *     <li>{@link BudgetStage#ECONOMY}：模型调用改用 {@link Builder#economyModel(String)}</li>
+ *     <li>{@link BudgetStage#NO_SUBAGENTS}：移除 task 工具，已发起但未执行的 task 调用返回错误结果</li>
+ *     <li>{@link BudgetStage#FINAL}：只保留收尾工具（主代理为写报告的文件工具，子代理不保留工具），
+ *     并在系统提示词后追加收尾指令</li>
+ *     <li>{@link BudgetStage#EXHAUSTED}：收尾机会用过后，下一次模型调用前直接结束运行；
+ *     收尾阶段的模型调用达到 {@link Builder#maxFinalTurns(int)} 次时同样结束</li>
+ * </ol>
+ * 用量挂在运行配置的元数据上（框架把元数据逐节点复制到后续节点与拦截器的请求上下文中），
+ * 拦截器据此找到所属运行；子代理按并行扇出的线程ID（父线程ID/工具调用ID）找到父运行，
+ * 未启用扇出时子代理只受自己的预算约束。被人工审批中断后恢复的运行重新计算预算。
+ */
+public class RunGovernor {
+
+    private static final Logger log = LoggerFactory.getLogger(RunGovernor.class);
+
+    static final String LEDGER_KEY = "_run_budget_ledger";
+    static final String TASK_TOOL = "task";
+
+    /**
+     * 预算作用范围
+     */
+    public enum Scope {
+        /** 主代理的一次运行，包含它启动的全部子代理 */
+        RUN("run"),
+        /** 单个子代理的一次运行 */
+        SUBAGENT("subagent");
+
+        private final String tag;
+
+        Scope(String tag) {
+            this.tag = tag;
+        }
+
+        public String tag() {
+            return tag;
+        }
+    }
+
+    /**
+     * 模型单价
+     *
+     * @param promptPer1k     每千提示 token 的价格
+     * @param completionPer1k 每千生成 token 的价格
+     */
+    public record Price(double promptPer1k, double completionPer1k) {
+    }
+
+    private final RunBudget runBudget;
+    private final RunBudget subAgentBudget;
+    private final double economyAt;
+    private final double noSubAgentsAt;
+    private final double finalAt;
+    private final String economyModel;
+    private final String defaultModel;
+    private final Map<String, Price> prices;
+    private final Set<String> finalTools;
+    private final int maxFinalTurns;
+    private final Duration retention;
+
+    /** 进行中的主代理运行，按线程ID索引，供子代理找到父运行 */
+    private final Map<String, RunLedger> runs = new ConcurrentHashMap<>();
+    private final LongAdder[] entered = new LongAdder[BudgetStage.values().length];
+
+    private final List<Hook> runHooks;
+    private final List<Hook> subAgentHooks;
+    private final GovernorModelInterceptor modelInterceptor;
+    private final GovernorToolInterceptor toolInterceptor;
+
+    private volatile MeterRegistry registry;
+    private volatile String governor;
+
+    protected RunGovernor(Builder builder) {
+        this.runBudget = builder.runBudget;
+        this.subAgentBudget = builder.subAgentBudget;
+        this.economyAt = builder.economyAt;
+        this.noSubAgentsAt = builder.noSubAgentsAt;
+        this.finalAt = builder.finalAt;
+        this.economyModel = builder.economyModel;
+        this.defaultModel = builder.defaultModel;
+        this.prices = Map.copyOf(builder.prices);
+        this.finalTools = Set.copyOf(builder.finalTools);
+        this.maxFinalTurns = builder.maxFinalTurns;
+        // 中断后被放弃的运行不会到达 afterAgent，超过保留时长后在登记新运行时清理
+        Duration doubled = runBudget.getWallClock().multipliedBy(2);
+        this.retention = doubled.compareTo(Duration.ofHours(1)) > 0 ? doubled : Duration.ofHours(1);
+        for (int i = 0; i < entered.length; i++) {
+            entered[i] = new LongAdder();
+        }
+        this.runHooks = List.of(new GovernorAgentHook(this, Scope.RUN), new GovernorModelHook(this));
+        this.subAgentHooks = List.of(new GovernorAgentHook(this, Scope.SUBAGENT), new GovernorModelHook(this));
+        this.modelInterceptor = new GovernorModelInterceptor(this);
+        this.toolInterceptor = new GovernorToolInterceptor(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return 挂到主代理上的钩子（登记运行、预算耗尽时结束运行）
+     */
+    public List<Hook> getRunHooks() {
+        return runHooks;
+    }
+
+    /**
+     * @return 挂到子代理上的钩子（登记子代理并关联父运行）
+     */
+    public List<Hook> getSubAgentHooks() {
+        return subAgentHooks;
+    }
+
+    /**
+     * 按阶段替换模型、裁剪工具并记录 token 用量的模型拦截器，主代理与子代理共用，
+     * 放在指标拦截器之前，指标按替换后的模型记录
+     */
+    public ModelInterceptor getModelInterceptor() {
+        return modelInterceptor;
+    }
+
+    /**
+     * 记录工具结果字节数、拒绝降级后的 task 调用的工具拦截器，主代理与子代理共用
+     */
+    public ToolInterceptor getToolInterceptor() {
+        return toolInterceptor;
+    }
+
+    /**
+     * @return 进行中的运行数与累计进入各降级阶段的运行数（主代理与子代理合计）
+     */
+    public Stats stats() {
+        return new Stats(runs.size(), entered[BudgetStage.ECONOMY.ordinal()].sum(),
+                entered[BudgetStage.NO_SUBAGENTS.ordinal()].sum(), entered[BudgetStage.FINAL.ordinal()].sum(),
+                entered[BudgetStage.EXHAUSTED.ordinal()].sum());
+    }
+
+    /**
+     * 注册指标：agent.budget.active（进行中的主代理运行数）、
+     * agent.budget.stage（进入各降级阶段的运行数，scope / stage 标签）、
+     * agent.budget.exhausted（耗尽的预算项，scope / budget 标签）、
+     * agent.budget.cost 与 agent.budget.pressure（运行结束时的估算费用与预算压力，scope 标签）
+     *
+     * @param name governor 标签
+     */
+    public RunGovernor bindTo(MeterRegistry registry, String name) {
+        Gauge.builder("agent.budget.active", runs, Map::size)
+                .tag("governor", name).description("Runs currently tracked by the budget governor").register(registry);
+        this.governor = name;
+        this.registry = registry;
+        return this;
+    }
+
+    // ==================== 供钩子与拦截器使用 ====================
+
+    /**
+     * 为新运行建立用量并挂到运行配置的元数据上
+     */
+    RunLedger open(Scope scope, RunnableConfig config) {
+        String threadId = config.threadId().orElse(BaseCheckpointSaver.THREAD_ID_DEFAULT);
+        RunLedger ledger;
+        if (scope == Scope.RUN) {
+            purgeAbandoned();
+            ledger = new RunLedger(scope, threadId, null, runBudget);
+            runs.put(threadId, ledger);
+        }
+        else {
+            int separator = threadId.lastIndexOf('/');
+            RunLedger parent = separator > 0 ? runs.get(threadId.substring(0, separator)) : null;
+            ledger = new RunLedger(scope, threadId, parent, subAgentBudget);
+        }
+        config.metadata().ifPresent(metadata -> metadata.put(LEDGER_KEY, ledger));
+        return ledger;
+    }
+
+    /**
+     * 运行结束：注销并记录最终用量
+     */
+    void close(RunLedger ledger) {
+        if (ledger.scope() == Scope.RUN) {
+            runs.remove(ledger.threadId(), ledger);
+        }
+        double pressure = ledger.usage().values().stream().mapToDouble(Double::doubleValue).max().orElse(0);
+        log.debug("[ThreadId {}] {} finished at stage {}, budget pressure {}, estimated cost {}", ledger.threadId(),
+                ledger.scope().tag(), ledger.stage().tag(), String.format("%.2f", pressure), ledger.used(RunBudget.Kind.COST));
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry != null) {
+            DistributionSummary.builder("agent.budget.cost")
+                    .tag("governor", governor).tag("scope", ledger.scope().tag())
+                    .description("Estimated model cost per run")
+                    .register(meterRegistry)
+                    .record(ledger.used(RunBudget.Kind.COST));
+            DistributionSummary.builder("agent.budget.pressure")
+                    .tag("governor", governor).tag("scope", ledger.scope().tag())
+                    .description("Highest budget usage ratio at the end of a run")
+                    .register(meterRegistry)
+                    .record(pressure);
+        }
+    }
+
+    static RunLedger ledger(Map<String, Object> metadata) {
+        return metadata != null && metadata.get(LEDGER_KEY) instanceof RunLedger ledger ? ledger : null;
+    }
+
+    static RunLedger ledger(RunnableConfig config) {
+        return ledger(config.metadata().orElse(null));
+    }
+
+    /**
+     * 按当前用量推进阶段：记录新耗尽的预算项与阶段变化，子代理不低于父运行的阶段
+     *
+     * @return 推进后的阶段
+     */
+    BudgetStage evaluate(RunLedger ledger) {
+        double pressure = 0;
+        for (Map.Entry<RunBudget.Kind, Double> usage : ledger.usage().entrySet()) {
+            pressure = Math.max(pressure, usage.getValue());
+            if (usage.getValue() >= 1 && ledger.markExhausted(usage.getKey())) {
+                log.info("[ThreadId {}] {} budget exhausted: {} ({} of {})", ledger.threadId(), ledger.scope().tag(),
+                        usage.getKey().tag(), ledger.used(usage.getKey()), budgetOf(ledger).limit(usage.getKey()));
+                increment("agent.budget.exhausted", "Budgets exhausted by a run",
+                        "scope", ledger.scope().tag(), "budget", usage.getKey().tag());
+            }
+        }
+        BudgetStage target = stageFor(pressure);
+        if (ledger.parent() != null) {
+            BudgetStage parentStage = evaluate(ledger.parent());
+            if (parentStage.atLeast(target)) {
+                target = parentStage;
+            }
+        }
+        BudgetStage previous = ledger.advance(target);
+        if (previous != null) {
+            log.info("[ThreadId {}] {} budget stage {} -> {} (pressure {})", ledger.threadId(), ledger.scope().tag(),
+                    previous.tag(), target.tag(), String.format("%.2f", pressure));
+            for (int i = previous.ordinal() + 1; i <= target.ordinal(); i++) {
+                BudgetStage stage = BudgetStage.values()[i];
+                entered[i].increment();
+                increment("agent.budget.stage", "Runs entering a budget degradation stage",
+                        "scope", ledger.scope().tag(), "stage", stage.tag());
+            }
+        }
+        return ledger.stage();
+    }
+
+    /**
+     * 是否结束运行：预算耗尽且已给过收尾机会，或收尾轮数已用完
+     */
+    boolean shouldStop(RunLedger ledger, BudgetStage stage) {
+        int finalTurns = ledger.finalTurns();
+        return stage == BudgetStage.EXHAUSTED && finalTurns > 0 || finalTurns >= maxFinalTurns;
+    }
+
+    /**
+     * 按模型单价估算一次调用的费用；模型名精确匹配不到时取最长的前缀匹配（如带日期后缀的快照名），
+     * 仍匹配不到时按默认模型计价
+     */
+    double estimateCost(String model, long promptTokens, long completionTokens) {
+        Price price = priceOf(model != null ? model : defaultModel);
+        if (price == null) {
+            price = priceOf(defaultModel);
+        }
+        if (price == null) {
+            return 0;
+        }
+        return promptTokens / 1000.0 * price.promptPer1k() + completionTokens / 1000.0 * price.completionPer1k();
+    }
+
+    String economyModel() {
+        return economyModel;
+    }
+
+    /**
+     * 收尾阶段保留的工具：主代理保留写报告所需的文件工具，子代理直接回答
+     */
+    Set<String> finalTools(Scope scope) {
+        return scope == Scope.RUN ? finalTools : Set.of();
+    }
+
+    /**
+     * 收尾阶段追加到系统提示词后的指令
+     */
+    String finalInstruction(RunLedger ledger) {
+        String pressure = describe(ledger);
+        if (ledger.scope() == Scope.RUN) {
+            return "IMPORTANT: The research budget is almost used up (" + pressure + "). Stop researching now: "
+                    + "do not start new searches or sub-agents. Write the final report to `final_report.md` using "
+                    + "the information you already have, then reply with a short summary.";
+        }
+        return "IMPORTANT: The research budget is almost used up (" + pressure + "). Stop researching now and "
+                + "reply with your final answer based on what you have found so far.";
+    }
+
+    /**
+     * 运行因预算被结束时作为最后一条回复的说明
+     */
+    String exhaustedMessage(RunLedger ledger) {
+        String exhausted = ledger.exhausted().isEmpty()
+                ? describe(ledger)
+                : ledger.exhausted().stream().map(RunBudget.Kind::tag).collect(Collectors.joining(", "));
+        if (ledger.scope() == Scope.RUN) {
+            return "Research stopped at the budget limit (" + exhausted + "). "
+                    + "The report written so far is in `final_report.md`.";
+        }
+        return "Sub-agent stopped at the budget limit (" + exhausted + ") before finishing the research.";
+    }
+
+    /**
+     * 降级后拒绝 task 调用时返回的结果
+     */
+    String subAgentRefusal(RunLedger ledger) {
+        return "Error: sub-agent not started, the research budget is almost used up (" + describe(ledger)
+                + "). Continue with the information already gathered.";
+    }
+
+    private RunBudget budgetOf(RunLedger ledger) {
+        return ledger.scope() == Scope.RUN ? runBudget : subAgentBudget;
+    }
+
+    private BudgetStage stageFor(double pressure) {
+        if (pressure >= 1) {
+            return BudgetStage.EXHAUSTED;
+        }
+        if (pressure >= finalAt) {
+            return BudgetStage.FINAL;
+        }
+        if (pressure >= noSubAgentsAt) {
+            return BudgetStage.NO_SUBAGENTS;
+        }
+        if (pressure >= economyAt) {
+            return BudgetStage.ECONOMY;
+        }
+        return BudgetStage.NORMAL;
+    }
+
+    /**
+     * 用量占比最高的几项，如 "cost 92%, wall_clock 60%"
+     */
+    private static String describe(RunLedger ledger) {
+        Map<RunBudget.Kind, Double> usage = new LinkedHashMap<>();
+        for (RunLedger current = ledger; current != null; current = current.parent()) {
+            current.usage().forEach((kind, ratio) -> usage.merge(kind, ratio, Math::max));
+        }
+        return usage.entrySet().stream()
+                .sorted(Map.Entry.<RunBudget.Kind, Double>comparingByValue().reversed())
+                .limit(2)
+                .map(entry -> entry.getKey().tag() + " " + Math.round(entry.getValue() * 100) + "%")
+                .collect(Collectors.joining(", "));
+    }
+
+    private Price priceOf(String model) {
+        if (model == null) {
+            return null;
+        }
+        Price price = prices.get(model);
+        if (price != null) {
+            return price;
+        }
+        String matched = null;
+        for (String candidate : prices.keySet()) {
+            if (model.startsWith(candidate) && (matched == null || candidate.length() > matched.length())) {
+                matched = candidate;
+            }
+        }
+        return matched != null ? prices.get(matched) : null;
+    }
+
+    private void purgeAbandoned() {
+        long expiredBefore = System.nanoTime() - retention.toNanos();
+        runs.values().removeIf(ledger -> ledger.startedAt() - expiredBefore < 0);
+    }
+
+    private void increment(String name, String description, String... tags) {
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry != null) {
+            Counter.builder(name).tag("governor", governor).tags(tags)
+                    .description(description).register(meterRegistry).increment();
+        }
+    }
+
+    /**
+     * @param activeRuns  进行中的主代理运行数
+     * @param economy     累计进入 economy 阶段的运行数
+     * @param noSubAgents 累计进入 no_subagents 阶段的运行数
+     * @param finalStage  累计进入 final 阶段的运行数
+     * @param exhausted   累计预算耗尽的运行数
+     */
+    public record Stats(int activeRuns, long economy, long noSubAgents, long finalStage, long exhausted) {
+    }
+
+    public static class Builder {
+        private RunBudget runBudget = RunBudget.unlimited();
+        private RunBudget subAgentBudget = RunBudget.unlimited();
+        private double economyAt = 0.5;
+        private double noSubAgentsAt = 0.7;
+        private double finalAt = 0.85;
+        private String economyModel;
+        private String defaultModel;
+        private final Map<String, Price> prices = new LinkedHashMap<>();
+        private Set<String> finalTools = Set.of("write_file", "edit_file", "read_file", "ls");
+        private int maxFinalTurns = 4;
+
+        /**
+         * 主代理一次运行（含其子代理）的预算
+         */
+        public Builder runBudget(RunBudget runBudget) {
+            this.runBudget = runBudget;
+            return this;
+        }
+
+        /**
+         * 单个子代理的预算
+         */
+        public Builder subAgentBudget(RunBudget subAgentBudget) {
+            this.subAgentBudget = subAgentBudget;
+            return this;
+        }
+
+        /**
+         * 各降级阶段的预算压力阈值，需满足 0 &lt; economy &le; noSubAgents &le; final &lt; 1
+         */
+        public Builder thresholds(double economyAt, double noSubAgentsAt, double finalAt) {
+            this.economyAt = economyAt;
+            this.noSubAgentsAt = noSubAgentsAt;
+            this.finalAt = finalAt;
+            return this;
+        }
+
+        /**
+         * 进入 economy 阶段后改用的模型（如 qwen-turbo），为空时该阶段不换模型
+         */
+        public Builder economyModel(String economyModel) {
+            this.economyModel = economyModel;
+            return this;
+        }
+
+        /**
+         * 请求未指定模型、响应也未携带模型名时计价使用的模型（聊天模型的默认模型）
+         */
+        public Builder defaultModel(String defaultModel) {
+            this.defaultModel = defaultModel;
+            return this;
+        }
+
+        /**
+         * 模型单价，用于估算费用
+         */
+        public Builder price(String model, double promptPer1k, double completionPer1k) {
+            this.prices.put(model, new Price(promptPer1k, completionPer1k));
+            return this;
+        }
+
+        /**
+         * 主代理在收尾阶段保留的工具，默认为写报告所需的文件工具
+         */
+        public Builder finalTools(Set<String> finalTools) {
+            this.finalTools = finalTools;
+            return this;
+        }
+
+        /**
+         * 收尾阶段最多进行的模型调用次数（写报告、修改、回复），用完后结束运行
+         */
+        public Builder maxFinalTurns(int maxFinalTurns) {
+            this.maxFinalTurns = maxFinalTurns;
+            return this;
+        }
+
+        public RunGovernor build() {
+            Objects.requireNonNull(runBudget, "runBudget cannot be null");
+            Objects.requireNonNull(subAgentBudget, "subAgentBudget cannot be null");
+            Objects.requireNonNull(finalTools, "finalTools cannot be null");
+            if (maxFinalTurns < 1) {
+                throw new IllegalArgumentException("maxFinalTurns must be positive");
+            }
+            if (!(economyAt > 0 && economyAt <= noSubAgentsAt && noSubAgentsAt <= finalAt && finalAt < 1)) {
+                throw new IllegalArgumentException("thresholds must satisfy 0 < economy <= noSubAgents <= final < 1");
+            }
+            for (Price price : prices.values()) {
+                if (price.promptPer1k() < 0 || price.completionPer1k() < 0) {
+                    throw new IllegalArgumentException("prices cannot be negative");
+                }
+            }
+            return new RunGovernor(this);
+        }
+    }
+}
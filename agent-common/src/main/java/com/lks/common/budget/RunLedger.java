@@ -0,0 +1,148 @@
+package com.lks.common.budget;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * 一次运行（主代理或单个子代理）的预算用量
+ *
+ * 子代理的用量同时计入父运行：父运行的预算覆盖它启动的全部子代理，子代理另有自己的预算。
+ * 子代理所处阶段不低于父运行的阶段——父运行进入收尾时，仍在运行的子代理也随之收尾。
+ */
+final class RunLedger {
+
+    private final RunGovernor.Scope scope;
+    private final String threadId;
+    private final RunLedger parent;
+    private final RunBudget budget;
+    private final long startedAt = System.nanoTime();
+
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+    private final AtomicLong toolBytes = new AtomicLong();
+    private final AtomicLong toolCalls = new AtomicLong();
+    private final DoubleAdder cost = new DoubleAdder();
+    private final AtomicReference<BudgetStage> stage = new AtomicReference<>(BudgetStage.NORMAL);
+    private final Set<RunBudget.Kind> exhausted = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger finalTurns = new AtomicInteger();
+
+    RunLedger(RunGovernor.Scope scope, String threadId, RunLedger parent, RunBudget budget) {
+        this.scope = scope;
+        this.threadId = threadId;
+        this.parent = parent;
+        this.budget = budget;
+    }
+
+    RunGovernor.Scope scope() {
+        return scope;
+    }
+
+    String threadId() {
+        return threadId;
+    }
+
+    RunLedger parent() {
+        return parent;
+    }
+
+    long startedAt() {
+        return startedAt;
+    }
+
+    void chargeModel(long prompt, long completion, double estimatedCost) {
+        promptTokens.addAndGet(prompt);
+        completionTokens.addAndGet(completion);
+        cost.add(estimatedCost);
+        if (parent != null) {
+            parent.chargeModel(prompt, completion, estimatedCost);
+        }
+    }
+
+    void chargeTool(long bytes) {
+        toolBytes.addAndGet(bytes);
+        toolCalls.incrementAndGet();
+        if (parent != null) {
+            parent.chargeTool(bytes);
+        }
+    }
+
+    /**
+     * @return 某项预算的当前用量（墙钟时间以毫秒计）
+     */
+    double used(RunBudget.Kind kind) {
+        return switch (kind) {
+            case WALL_CLOCK -> (System.nanoTime() - startedAt) / 1_000_000.0;
+            case PROMPT_TOKENS -> promptTokens.get();
+            case COMPLETION_TOKENS -> completionTokens.get();
+            case TOOL_BYTES -> toolBytes.get();
+            case TOOL_CALLS -> toolCalls.get();
+            case COST -> cost.sum();
+        };
+    }
+
+    /**
+     * @return 各项有上限的预算的用量占比
+     */
+    Map<RunBudget.Kind, Double> usage() {
+        Map<RunBudget.Kind, Double> usage = new EnumMap<>(RunBudget.Kind.class);
+        for (RunBudget.Kind kind : RunBudget.Kind.values()) {
+            double limit = budget.limit(kind);
+            if (limit > 0) {
+                usage.put(kind, used(kind) / limit);
+            }
+        }
+        return usage;
+    }
+
+    BudgetStage stage() {
+        return stage.get();
+    }
+
+    /**
+     * 推进到更高的阶段
+     *
+     * @return 推进前的阶段；目标阶段不高于当前阶段时返回 null
+     */
+    BudgetStage advance(BudgetStage target) {
+        while (true) {
+            BudgetStage current = stage.get();
+            if (!target.atLeast(current) || target == current) {
+                return null;
+            }
+            if (stage.compareAndSet(current, target)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * @return 该项预算是否第一次被标记为耗尽
+     */
+    boolean markExhausted(RunBudget.Kind kind) {
+        return exhausted.add(kind);
+    }
+
+    Set<RunBudget.Kind> exhausted() {
+        return exhausted;
+    }
+
+    /**
+     * 记下收尾阶段的一次模型调用
+     */
+    void takeFinalTurn() {
+        finalTurns.incrementAndGet();
+    }
+
+    /**
+     * @return 收尾阶段已进行的模型调用次数
+     */
+    int finalTurns() {
+        return finalTurns.get();
+    }
+}
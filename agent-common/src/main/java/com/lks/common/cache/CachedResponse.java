@@ -0,0 +1,69 @@
+package com.lks.common.cache;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.util.List;
+
+/**
+ * 缓存的模型响应
+ *
+ * 只保留重放所需的最小信息：正文、思考过程、工具调用与结束原因。
+ *
+ * @param text         模型正文
+ * @param reasoning    思考过程（reasoningContent），没有时为空字符串
+ * @param toolCalls    工具调用列表
+ * @param finishReason 结束原因
+ * @param model        产生该响应的模型名称
+ * @param createdAt    写入缓存的时间戳（毫秒）
+ */
+public record CachedResponse(String text,
+                             String reasoning,
+                             List<AssistantMessage.ToolCall> toolCalls,
+                             String finishReason,
+                             String model,
+                             long createdAt) {
+
+    /** DashScope 在 AssistantMessage 元数据中存放思考过程的键 */
+    public static final String REASONING_CONTENT_KEY = "reasoningContent";
+
+    public CachedResponse {
+        text = text == null ? "" : text;
+        reasoning = reasoning == null ? "" : reasoning;
+        toolCalls = toolCalls == null ? List.of() : List.copyOf(toolCalls);
+    }
+
+    /**
+     * @return 是否包含工具调用
+     */
+    public boolean hasToolCalls() {
+        return !toolCalls.isEmpty();
+    }
+
+    /**
+     * @return 是否为空响应（空响应不应写入缓存）
+     */
+    public boolean isEmpty() {
+        return text.isBlank() && toolCalls.isEmpty();
+    }
+
+    /**
+     * 从同步调用的 ChatResponse 构建缓存项
+     *
+     * @param response 模型响应
+     * @return CachedResponse，响应为空时返回 null
+     */
+    public static CachedResponse from(ChatResponse response) {
+        if (response == null || response.getResult() == null || response.getResult().getOutput() == null) {
+            return null;
+        }
+        Generation generation = response.getResult();
+        AssistantMessage output = generation.getOutput();
+        Object reasoning = output.getMetadata().get(REASONING_CONTENT_KEY);
+        String finishReason = generation.getMetadata() != null ? generation.getMetadata().getFinishReason() : null;
+        String model = response.getMetadata() != null ? response.getMetadata().getModel() : null;
+        return new CachedResponse(output.getText(), reasoning != null ? reasoning.toString() : "",
+                output.getToolCalls(), finishReason, model, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,259 @@
+package com.lks.common.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * 带响应缓存的 ChatModel 装饰器
+ *
+ * 在真实模型之前查询 {@link ResponseCache}：
+ * - call：命中时直接返回缓存的 ChatResponse
+ * - stream：命中时把缓存内容切分为若干块，以 Flux 形式重放（先思考过程、后正文、最后工具调用），
+ *   因此 ReactAgent.stream 的下游处理逻辑无需任何修改
+ *
+ * 未命中时透传给被装饰的模型，并在调用/流正常结束后写入缓存；流被取消或出错时不写入。
+ */
+public class CachingChatModel implements ChatModel {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingChatModel.class);
+
+    /** 响应元数据中标记缓存命中类型的键 */
+    public static final String CACHE_HIT_METADATA_KEY = "cacheHit";
+
+    private final ChatModel delegate;
+    private final ResponseCache cache;
+    private final String namespace;
+    private final int replayChunkSize;
+
+    private CachingChatModel(Builder builder) {
+        this.delegate = builder.delegate;
+        this.cache = builder.cache;
+        this.namespace = builder.namespace != null ? builder.namespace : builder.cache.getName();
+        this.replayChunkSize = builder.replayChunkSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        PromptFingerprint fingerprint = PromptFingerprint.of(namespace, prompt, delegate.getDefaultOptions());
+        Optional<ResponseCache.Hit> hit = cache.lookup(fingerprint);
+        if (hit.isPresent()) {
+            CachedResponse cached = hit.get().response();
+            return toChatResponse(cached.text(), cached.reasoning(), cached.toolCalls(), cached.finishReason(),
+                    cached.model(), hit.get().type());
+        }
+        ChatResponse response = delegate.call(prompt);
+        cache.put(fingerprint, CachedResponse.from(response));
+        return response;
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            PromptFingerprint fingerprint = PromptFingerprint.of(namespace, prompt, delegate.getDefaultOptions());
+            Optional<ResponseCache.Hit> hit = cache.lookup(fingerprint);
+            if (hit.isPresent()) {
+                return Flux.fromIterable(replay(hit.get()));
+            }
+            StreamAccumulator accumulator = new StreamAccumulator();
+            return delegate.stream(prompt)
+                    .doOnNext(accumulator::accept)
+                    .doOnComplete(() -> cache.put(fingerprint, accumulator.toCachedResponse()))
+                    .doOnError(e -> log.debug("[{}] stream failed, skip caching: {}", namespace, e.getMessage()));
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    /**
+     * @return 缓存统计
+     */
+    public ResponseCache.Stats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * 将缓存响应切分为流式块
+     */
+    private List<ChatResponse> replay(ResponseCache.Hit hit) {
+        CachedResponse cached = hit.response();
+        List<ChatResponse> chunks = new ArrayList<>();
+        for (String piece : split(cached.reasoning())) {
+            chunks.add(toChatResponse("", piece, List.of(), null, cached.model(), hit.type()));
+        }
+        for (String piece : split(cached.text())) {
+            chunks.add(toChatResponse(piece, "", List.of(), null, cached.model(), hit.type()));
+        }
+        // 最后一块携带工具调用和结束原因
+        chunks.add(toChatResponse("", "", cached.toolCalls(), cached.finishReason(), cached.model(), hit.type()));
+        return chunks;
+    }
+
+    private List<String> split(String content) {
+        if (content == null || content.isEmpty()) {
+            return List.of();
+        }
+        List<String> pieces = new ArrayList<>();
+        int[] codePoints = content.codePoints().toArray();
+        for (int i = 0; i < codePoints.length; i += replayChunkSize) {
+            pieces.add(new String(codePoints, i, Math.min(replayChunkSize, codePoints.length - i)));
+        }
+        return pieces;
+    }
+
+    private static ChatResponse toChatResponse(String text, String reasoning, List<AssistantMessage.ToolCall> toolCalls,
+                                               String finishReason, String model, ResponseCache.HitType hitType) {
+        Map<String, Object> properties = new HashMap<>();
+        if (reasoning != null && !reasoning.isEmpty()) {
+            properties.put(CachedResponse.REASONING_CONTENT_KEY, reasoning);
+        }
+        if (finishReason != null) {
+            properties.put("finishReason", finishReason);
+        }
+        AssistantMessage message = AssistantMessage.builder()
+                .content(text)
+                .properties(properties)
+                .toolCalls(toolCalls)
+                .build();
+        ChatGenerationMetadata generationMetadata = finishReason == null ? ChatGenerationMetadata.NULL
+                : ChatGenerationMetadata.builder().finishReason(finishReason).build();
+        ChatResponseMetadata.Builder metadata = ChatResponseMetadata.builder().keyValue(CACHE_HIT_METADATA_KEY, hitType.name());
+        if (model != null) {
+            metadata.model(model);
+        }
+        return new ChatResponse(List.of(new Generation(message, generationMetadata)), metadata.build());
+    }
+
+    /**
+     * 流式响应累加器：按框架的合并规则拼接正文与思考过程，并按ID合并工具调用
+     */
+    private static class StreamAccumulator {
+        private final StringBuilder text = new StringBuilder();
+        private final StringBuilder reasoning = new StringBuilder();
+        private final Map<String, AssistantMessage.ToolCall> toolCalls = new LinkedHashMap<>();
+        private String lastToolCallId;
+        private String finishReason;
+        private String model;
+
+        void accept(ChatResponse response) {
+            if (response == null || response.getResult() == null || response.getResult().getOutput() == null) {
+                return;
+            }
+            AssistantMessage output = response.getResult().getOutput();
+            if (output.getText() != null) {
+                text.append(output.getText());
+            }
+            Object reasoningContent = output.getMetadata().get(CachedResponse.REASONING_CONTENT_KEY);
+            if (reasoningContent != null) {
+                reasoning.append(reasoningContent);
+            }
+            for (AssistantMessage.ToolCall toolCall : output.getToolCalls()) {
+                // 参数分多个分片到达时后续分片可能不带ID，归入最近一个工具调用
+                String id = toolCall.id() != null && !toolCall.id().isEmpty() ? toolCall.id() : lastToolCallId;
+                if (id == null) {
+                    id = String.valueOf(toolCalls.size());
+                }
+                toolCalls.merge(id, toolCall, StreamAccumulator::mergeToolCall);
+                lastToolCallId = id;
+            }
+            ChatGenerationMetadata metadata = response.getResult().getMetadata();
+            if (metadata != null && metadata.getFinishReason() != null) {
+                finishReason = metadata.getFinishReason();
+            }
+            if (response.getMetadata() != null && response.getMetadata().getModel() != null) {
+                model = response.getMetadata().getModel();
+            }
+        }
+
+        /**
+         * 同一工具调用的分片：参数按到达顺序拼接，ID、类型与名称取先到的非空值
+         */
+        private static AssistantMessage.ToolCall mergeToolCall(AssistantMessage.ToolCall first, AssistantMessage.ToolCall next) {
+            return new AssistantMessage.ToolCall(
+                    firstNonEmpty(first.id(), next.id()),
+                    firstNonEmpty(first.type(), next.type()),
+                    firstNonEmpty(first.name(), next.name()),
+                    (first.arguments() != null ? first.arguments() : "") + (next.arguments() != null ? next.arguments() : ""));
+        }
+
+        private static String firstNonEmpty(String a, String b) {
+            return a != null && !a.isEmpty() ? a : b;
+        }
+
+        CachedResponse toCachedResponse() {
+            return new CachedResponse(text.toString(), reasoning.toString(), new ArrayList<>(toolCalls.values()),
+                    finishReason, model, System.currentTimeMillis());
+        }
+    }
+
+    public static class Builder {
+        private ChatModel delegate;
+        private ResponseCache cache;
+        private String namespace;
+        private int replayChunkSize = 16;
+
+        /**
+         * 被装饰的真实模型
+         */
+        public Builder delegate(ChatModel delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * 使用的缓存实例
+         */
+        public Builder cache(ResponseCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * 缓存命名空间（默认取缓存名称），不同 agent 共享同一缓存实例时用于隔离
+         */
+        public Builder namespace(String namespace) {
+            this.namespace = namespace;
+            return this;
+        }
+
+        /**
+         * 流式重放时每块的字符数
+         */
+        public Builder replayChunkSize(int replayChunkSize) {
+            this.replayChunkSize = replayChunkSize;
+            return this;
+        }
+
+        public CachingChatModel build() {
+            Objects.requireNonNull(delegate, "delegate cannot be null");
+            Objects.requireNonNull(cache, "cache cannot be null");
+            if (replayChunkSize <= 0) {
+                throw new IllegalArgumentException("replayChunkSize must be positive");
+            }
+            return new CachingChatModel(this);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.lks.common.cache;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Prompt 指纹
+ *
+ * 对 Prompt 做规范化（压缩空白、忽略每次调用都会变化的工具调用ID）后计算哈希：
+ * - exactKey：消息 + 选项的完整哈希，用于精确命中
+ * - contextKey：除最后一条用户消息之外的上下文 + 选项哈希，用于限定语义命中的范围
+ * - lastUserText：最后一条用户消息文本，用于计算语义相似度
+ *
+ * @param exactKey     精确匹配键
+ * @param contextKey   语义匹配的上下文键
+ * @param lastUserText 最后一条用户消息文本（不存在时为 null）
+ */
+public record PromptFingerprint(String exactKey, String contextKey, String lastUserText) {
+
+    /**
+     * 计算 Prompt 指纹
+     *
+     * @param namespace     缓存命名空间（通常为 agent 名称），不同 agent 互不共享
+     * @param prompt        请求 Prompt
+     * @param defaultOptions 模型默认选项，Prompt 未指定时作为补充
+     * @return PromptFingerprint 指纹
+     */
+    public static PromptFingerprint of(String namespace, Prompt prompt, ChatOptions defaultOptions) {
+        String options = normalizeOptions(prompt.getOptions() != null ? prompt.getOptions() : defaultOptions);
+        List<Message> messages = prompt.getInstructions();
+
+        int lastUserIndex = -1;
+        if (!messages.isEmpty() && messages.get(messages.size() - 1) instanceof UserMessage) {
+            lastUserIndex = messages.size() - 1;
+        }
+
+        StringBuilder context = new StringBuilder(namespace).append('\u0001').append(options);
+        for (int i = 0; i < messages.size(); i++) {
+            if (i == lastUserIndex) {
+                continue;
+            }
+            appendMessage(context, messages.get(i));
+        }
+        String contextKey = sha256(context.toString());
+
+        if (lastUserIndex < 0) {
+            return new PromptFingerprint(contextKey, contextKey, null);
+        }
+        String lastUserText = normalizeText(messages.get(lastUserIndex).getText());
+        String exactKey = sha256(contextKey + '\u0002' + lastUserText);
+        return new PromptFingerprint(exactKey, contextKey, lastUserText);
+    }
+
+    private static void appendMessage(StringBuilder sb, Message message) {
+        sb.append('\u0001').append(message.getMessageType().name()).append(':')
+                .append(normalizeText(message.getText()));
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                sb.append("|call:").append(toolCall.name()).append('(').append(normalizeText(toolCall.arguments())).append(')');
+            }
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                sb.append("|result:").append(response.name()).append('=').append(normalizeText(response.responseData()));
+            }
+        }
+    }
+
+    private static String normalizeOptions(ChatOptions options) {
+        if (options == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(options.getClass().getName())
+                .append(";model=").append(options.getModel())
+                .append(";temperature=").append(options.getTemperature())
+                .append(";topP=").append(options.getTopP())
+                .append(";topK=").append(options.getTopK())
+                .append(";maxTokens=").append(options.getMaxTokens())
+                .append(";stop=").append(options.getStopSequences())
+                .append(";frequencyPenalty=").append(options.getFrequencyPenalty())
+                .append(";presencePenalty=").append(options.getPresencePenalty());
+        if (options instanceof ToolCallingChatOptions toolOptions) {
+            TreeSet<String> toolNames = new TreeSet<>();
+            if (toolOptions.getToolNames() != null) {
+                toolNames.addAll(toolOptions.getToolNames());
+            }
+            if (toolOptions.getToolCallbacks() != null) {
+                for (ToolCallback callback : toolOptions.getToolCallbacks()) {
+                    toolNames.add(callback.getToolDefinition().name());
+                }
+            }
+            sb.append(";tools=").append(toolNames);
+        }
+        return sb.toString();
+    }
+
+    static String normalizeText(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.replaceAll("\\s+", " ").trim();
+    }
+
+    static String sha256(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
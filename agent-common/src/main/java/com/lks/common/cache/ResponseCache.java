@@ -0,0 +1,265 @@
+package com.lks.common.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lks.common.embedding.EmbeddingFunction;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 模型响应缓存
+ *
+ * 两级查找：
+ * 1. 精确匹配：以规范化 Prompt + 选项的哈希为键
+ * 2. 语义匹配（可选）：上下文完全一致时，最后一条用户消息的向量余弦相似度超过阈值即视为命中。
+ *    带工具调用的响应不参与语义匹配，避免把针对另一个问题的工具参数复用到当前问题上。
+ *
+ * 两级均支持容量上限和 TTL 淘汰，并统计命中/未命中次数（可经 {@link #bindTo} 导出为指标）。
+ */
+public class ResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+
+    private final String name;
+    private final Cache<String, CachedResponse> exactCache;
+    private final Cache<String, SemanticEntry> semanticCache;
+    private final EmbeddingFunction embeddingFunction;
+    private final double similarityThreshold;
+
+    private final LongAdder exactHits = new LongAdder();
+    private final LongAdder semanticHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+
+    private ResponseCache(Builder builder) {
+        this.name = builder.name;
+        this.exactCache = Caffeine.newBuilder()
+                .maximumSize(builder.maxSize)
+                .expireAfterWrite(builder.ttl)
+                .build();
+        this.embeddingFunction = builder.embeddingFunction;
+        this.similarityThreshold = builder.similarityThreshold;
+        this.semanticCache = embeddingFunction == null ? null : Caffeine.newBuilder()
+                .maximumSize(builder.semanticMaxSize)
+                .expireAfterWrite(builder.ttl)
+                .build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 查找缓存
+     *
+     * @param fingerprint Prompt 指纹
+     * @return 命中结果，未命中时为空
+     */
+    public Optional<Hit> lookup(PromptFingerprint fingerprint) {
+        CachedResponse exact = exactCache.getIfPresent(fingerprint.exactKey());
+        if (exact != null) {
+            exactHits.increment();
+            return Optional.of(new Hit(exact, HitType.EXACT, 1.0));
+        }
+
+        if (semanticCache != null && fingerprint.lastUserText() != null) {
+            float[] query = embeddingFunction.embed(fingerprint.lastUserText());
+            SemanticEntry best = null;
+            double bestScore = similarityThreshold;
+            for (SemanticEntry entry : semanticCache.asMap().values()) {
+                if (!entry.contextKey().equals(fingerprint.contextKey())) {
+                    continue;
+                }
+                double score = EmbeddingFunction.cosine(query, entry.vector());
+                if (score >= bestScore) {
+                    best = entry;
+                    bestScore = score;
+                }
+            }
+            if (best != null) {
+                semanticHits.increment();
+                log.debug("[{}] semantic cache hit, score={}", name, bestScore);
+                return Optional.of(new Hit(best.response(), HitType.SEMANTIC, bestScore));
+            }
+        }
+
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param fingerprint Prompt 指纹
+     * @param response    模型响应
+     */
+    public void put(PromptFingerprint fingerprint, CachedResponse response) {
+        if (response == null || response.isEmpty()) {
+            return;
+        }
+        exactCache.put(fingerprint.exactKey(), response);
+        puts.increment();
+        if (semanticCache != null && fingerprint.lastUserText() != null && !response.hasToolCalls()) {
+            float[] vector = embeddingFunction.embed(fingerprint.lastUserText());
+            semanticCache.put(fingerprint.exactKey(), new SemanticEntry(fingerprint.contextKey(), vector, response));
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        exactCache.invalidateAll();
+        if (semanticCache != null) {
+            semanticCache.invalidateAll();
+        }
+    }
+
+    /**
+     * @return 当前统计快照
+     */
+    public Stats stats() {
+        return new Stats(name, exactHits.sum(), semanticHits.sum(), misses.sum(), puts.sum(),
+                exactCache.estimatedSize(), semanticCache != null ? semanticCache.estimatedSize() : 0);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 注册指标：agent.cache.response.hits（type=exact/semantic）、agent.cache.response.misses、
+     * agent.cache.response.puts 与 agent.cache.response.size（type=exact/semantic）
+     *
+     * @param name cache 标签
+     * @return this
+     */
+    public ResponseCache bindTo(MeterRegistry registry, String name) {
+        FunctionCounter.builder("agent.cache.response.hits", exactHits, LongAdder::sum)
+                .tag("cache", name).tag("type", "exact").description("Model calls served from the response cache")
+                .register(registry);
+        FunctionCounter.builder("agent.cache.response.hits", semanticHits, LongAdder::sum)
+                .tag("cache", name).tag("type", "semantic").description("Model calls served from the response cache")
+                .register(registry);
+        FunctionCounter.builder("agent.cache.response.misses", misses, LongAdder::sum)
+                .tag("cache", name).description("Model calls passed through to the model").register(registry);
+        FunctionCounter.builder("agent.cache.response.puts", puts, LongAdder::sum)
+                .tag("cache", name).description("Model responses stored in the cache").register(registry);
+        Gauge.builder("agent.cache.response.size", exactCache, Cache::estimatedSize)
+                .tag("cache", name).tag("type", "exact").register(registry);
+        if (semanticCache != null) {
+            Gauge.builder("agent.cache.response.size", semanticCache, Cache::estimatedSize)
+                    .tag("cache", name).tag("type", "semantic").register(registry);
+        }
+        return this;
+    }
+
+    /**
+     * 命中类型
+     */
+    public enum HitType {
+        /** 精确匹配 */
+        EXACT,
+        /** 语义相似匹配 */
+        SEMANTIC
+    }
+
+    /**
+     * 命中结果
+     *
+     * @param response 缓存的响应
+     * @param type     命中类型
+     * @param score    相似度（精确命中为 1.0）
+     */
+    public record Hit(CachedResponse response, HitType type, double score) {
+    }
+
+    /**
+     * 统计快照
+     */
+    public record Stats(String name, long exactHits, long semanticHits, long misses, long puts,
+                        long exactSize, long semanticSize) {
+
+        public double hitRate() {
+            long total = exactHits + semanticHits + misses;
+            return total == 0 ? 0 : (double) (exactHits + semanticHits) / total;
+        }
+    }
+
+    private record SemanticEntry(String contextKey, float[] vector, CachedResponse response) {
+    }
+
+    public static class Builder {
+        private String name = "default";
+        private long maxSize = 1000;
+        private long semanticMaxSize = 500;
+        private Duration ttl = Duration.ofHours(1);
+        private EmbeddingFunction embeddingFunction;
+        private double similarityThreshold = 0.95;
+
+        /**
+         * 缓存名称，用于日志与指标
+         */
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * 精确匹配缓存的最大条目数
+         */
+        public Builder maxSize(long maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * 语义匹配缓存的最大条目数（语义查找为线性扫描，不宜过大）
+         */
+        public Builder semanticMaxSize(long semanticMaxSize) {
+            this.semanticMaxSize = semanticMaxSize;
+            return this;
+        }
+
+        /**
+         * 写入后的存活时间
+         */
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * 向量化函数，设置后启用语义匹配
+         */
+        public Builder embeddingFunction(EmbeddingFunction embeddingFunction) {
+            this.embeddingFunction = embeddingFunction;
+            return this;
+        }
+
+        /**
+         * 语义命中的最低余弦相似度
+         */
+        public Builder similarityThreshold(double similarityThreshold) {
+            this.similarityThreshold = similarityThreshold;
+            return this;
+        }
+
+        public ResponseCache build() {
+            Objects.requireNonNull(name, "name cannot be null");
+            Objects.requireNonNull(ttl, "ttl cannot be null");
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("maxSize must be positive");
+            }
+            return new ResponseCache(this);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package com.lks.common.checkpoint;
+
+import com.alibaba.cloud.ai.graph.StateGraph;
+import com.alibaba.cloud.ai.graph.serializer.StateSerializer;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.content.Media;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑二进制值编解码器
+ *
+ * 对检查点状态中最常见的值类型使用带标签的二进制格式：
+ * 基本类型、List/Map 以及 Spring AI 的四种消息（User/System/Assistant/ToolResponse，含附带的媒体）。
+ * 字符串和长度统一使用 varint 前缀的 UTF-8 编码，避免 JSON 的字段名与转义开销。
+ *
+ * 无法识别的类型（如 DeepSeekAssistantMessage、框架内部对象）会回退到框架默认的 Jackson 序列化，
+ * 与框架自带的保存器保留同样的信息。框架序列化器会丢弃消息的媒体，因此媒体由本编解码器自行编码。
+ */
+public final class BinaryValueCodec {
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INT = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_DOUBLE = 4;
+    private static final int TAG_TRUE = 5;
+    private static final int TAG_FALSE = 6;
+    private static final int TAG_LIST = 7;
+    private static final int TAG_MAP = 8;
+    private static final int TAG_FLOAT = 9;
+    private static final int TAG_USER_MESSAGE = 10;
+    private static final int TAG_SYSTEM_MESSAGE = 11;
+    private static final int TAG_ASSISTANT_MESSAGE = 12;
+    private static final int TAG_TOOL_RESPONSE_MESSAGE = 13;
+    private static final int TAG_ENUM = 14;
+    private static final int TAG_USER_MEDIA_MESSAGE = 15;
+    private static final int TAG_ASSISTANT_MEDIA_MESSAGE = 16;
+    private static final int TAG_FALLBACK = 127;
+
+    /** 回退序列化时包装值所用的键 */
+    private static final String FALLBACK_KEY = "v";
+
+    /** 媒体数据类型：URL 字符串或原始字节 */
+    private static final int MEDIA_URL = 0;
+    private static final int MEDIA_BYTES = 1;
+
+    private final StateSerializer fallbackSerializer;
+
+    public BinaryValueCodec() {
+        this(StateGraph.DEFAULT_JACKSON_SERIALIZER);
+    }
+
+    public BinaryValueCodec(StateSerializer fallbackSerializer) {
+        this.fallbackSerializer = fallbackSerializer;
+    }
+
+    // ==================== 状态 Map ====================
+
+    public void writeMap(Map<String, Object> map, DataOutput out) throws IOException {
+        writeVarInt(map.size(), out);
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            writeString(entry.getKey(), out);
+            writeValue(entry.getValue(), out);
+        }
+    }
+
+    public Map<String, Object> readMap(DataInput in) throws IOException {
+        int size = readVarInt(in);
+        Map<String, Object> map = new HashMap<>(Math.max(4, size * 2));
+        for (int i = 0; i < size; i++) {
+            map.put(readString(in), readValue(in));
+        }
+        return map;
+    }
+
+    // ==================== 任意值 ====================
+
+    public void writeValue(Object value, DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        }
+        else if (value instanceof String s) {
+            out.writeByte(TAG_STRING);
+            writeString(s, out);
+        }
+        else if (value instanceof Integer i) {
+            out.writeByte(TAG_INT);
+            writeVarLong(zigZag(i), out);
+        }
+        else if (value instanceof Long l) {
+            out.writeByte(TAG_LONG);
+            writeVarLong(zigZag(l), out);
+        }
+        else if (value instanceof Double d) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(d);
+        }
+        else if (value instanceof Float f) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat(f);
+        }
+        else if (value instanceof Boolean b) {
+            out.writeByte(b ? TAG_TRUE : TAG_FALSE);
+        }
+        else if (value instanceof Enum<?> e) {
+            // 消息元数据中的 messageType 等枚举值，按类名 + 名称编码
+            out.writeByte(TAG_ENUM);
+            writeString(e.getDeclaringClass().getName(), out);
+            writeString(e.name(), out);
+        }
+        else if (value.getClass() == UserMessage.class) {
+            UserMessage message = (UserMessage) value;
+            boolean withMedia = !message.getMedia().isEmpty();
+            out.writeByte(withMedia ? TAG_USER_MEDIA_MESSAGE : TAG_USER_MESSAGE);
+            writeString(message.getText(), out);
+            writeMap(message.getMetadata(), out);
+            if (withMedia) {
+                writeMedia(message.getMedia(), out);
+            }
+        }
+        else if (value.getClass() == SystemMessage.class) {
+            SystemMessage message = (SystemMessage) value;
+            out.writeByte(TAG_SYSTEM_MESSAGE);
+            writeString(message.getText(), out);
+            writeMap(message.getMetadata(), out);
+        }
+        else if (value.getClass() == AssistantMessage.class) {
+            AssistantMessage message = (AssistantMessage) value;
+            boolean withMedia = !message.getMedia().isEmpty();
+            out.writeByte(withMedia ? TAG_ASSISTANT_MEDIA_MESSAGE : TAG_ASSISTANT_MESSAGE);
+            writeString(message.getText(), out);
+            writeMap(message.getMetadata(), out);
+            writeVarInt(message.getToolCalls().size(), out);
+            for (AssistantMessage.ToolCall toolCall : message.getToolCalls()) {
+                writeString(toolCall.id(), out);
+                writeString(toolCall.type(), out);
+                writeString(toolCall.name(), out);
+                writeString(toolCall.arguments(), out);
+            }
+            if (withMedia) {
+                writeMedia(message.getMedia(), out);
+            }
+        }
+        else if (value.getClass() == ToolResponseMessage.class) {
+            ToolResponseMessage message = (ToolResponseMessage) value;
+            out.writeByte(TAG_TOOL_RESPONSE_MESSAGE);
+            writeMap(message.getMetadata(), out);
+            writeVarInt(message.getResponses().size(), out);
+            for (ToolResponseMessage.ToolResponse response : message.getResponses()) {
+                writeString(response.id(), out);
+                writeString(response.name(), out);
+                writeString(response.responseData(), out);
+            }
+        }
+        else if (value instanceof List<?> list) {
+            out.writeByte(TAG_LIST);
+            writeVarInt(list.size(), out);
+            for (Object element : list) {
+                writeValue(element, out);
+            }
+        }
+        else if (value instanceof Map<?, ?> map && map.keySet().stream().allMatch(String.class::isInstance)) {
+            out.writeByte(TAG_MAP);
+            @SuppressWarnings("unchecked")
+            Map<String, Object> stringMap = (Map<String, Object>) map;
+            writeMap(stringMap, out);
+        }
+        else {
+            out.writeByte(TAG_FALLBACK);
+            byte[] bytes = fallbackSerializer.dataToBytes(Map.of(FALLBACK_KEY, value));
+            writeVarInt(bytes.length, out);
+            out.write(bytes);
+        }
+    }
+
+    public Object readValue(DataInput in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(in);
+            case TAG_INT:
+                return (int) unZigZag(readVarLong(in));
+            case TAG_LONG:
+                return unZigZag(readVarLong(in));
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_FLOAT:
+                return in.readFloat();
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_ENUM: {
+                String className = readString(in);
+                String name = readString(in);
+                try {
+                    @SuppressWarnings({"unchecked", "rawtypes"})
+                    Object constant = Enum.valueOf((Class) Class.forName(className), name);
+                    return constant;
+                }
+                catch (ClassNotFoundException e) {
+                    throw new IOException("Unknown enum type: " + className, e);
+                }
+            }
+            case TAG_USER_MESSAGE:
+                return UserMessage.builder().text(readString(in)).metadata(readMap(in)).build();
+            case TAG_USER_MEDIA_MESSAGE:
+                return UserMessage.builder().text(readString(in)).metadata(readMap(in)).media(readMedia(in)).build();
+            case TAG_SYSTEM_MESSAGE:
+                return SystemMessage.builder().text(readString(in)).metadata(readMap(in)).build();
+            case TAG_ASSISTANT_MESSAGE:
+            case TAG_ASSISTANT_MEDIA_MESSAGE: {
+                String text = readString(in);
+                Map<String, Object> metadata = readMap(in);
+                int count = readVarInt(in);
+                List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    toolCalls.add(new AssistantMessage.ToolCall(readString(in), readString(in), readString(in), readString(in)));
+                }
+                List<Media> media = tag == TAG_ASSISTANT_MEDIA_MESSAGE ? readMedia(in) : List.of();
+                return AssistantMessage.builder().content(text).properties(metadata).toolCalls(toolCalls).media(media).build();
+            }
+            case TAG_TOOL_RESPONSE_MESSAGE: {
+                Map<String, Object> metadata = readMap(in);
+                int count = readVarInt(in);
+                List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    responses.add(new ToolResponseMessage.ToolResponse(readString(in), readString(in), readString(in)));
+                }
+                return ToolResponseMessage.builder().responses(responses).metadata(metadata).build();
+            }
+            case TAG_LIST: {
+                int count = readVarInt(in);
+                List<Object> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case TAG_MAP: {
+                Map<String, Object> map = readMap(in);
+                return new LinkedHashMap<>(map);
+            }
+            case TAG_FALLBACK: {
+                byte[] bytes = new byte[readVarInt(in)];
+                in.readFully(bytes);
+                try {
+                    return fallbackSerializer.dataFromBytes(bytes).get(FALLBACK_KEY);
+                }
+                catch (ClassNotFoundException e) {
+                    throw new IOException("Failed to read fallback value", e);
+                }
+            }
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    // ==================== 媒体 ====================
+
+    /**
+     * 写入媒体列表：每项为 mimeType | id | name | 数据类型 | 数据（URL 字符串或字节）
+     */
+    private static void writeMedia(List<Media> media, DataOutput out) throws IOException {
+        writeVarInt(media.size(), out);
+        for (Media item : media) {
+            writeString(item.getMimeType().toString(), out);
+            writeString(item.getId(), out);
+            writeString(item.getName(), out);
+            if (item.getData() instanceof byte[] bytes) {
+                out.writeByte(MEDIA_BYTES);
+                writeVarInt(bytes.length, out);
+                out.write(bytes);
+            }
+            else {
+                out.writeByte(MEDIA_URL);
+                writeString(item.getData().toString(), out);
+            }
+        }
+    }
+
+    private static List<Media> readMedia(DataInput in) throws IOException {
+        int count = readVarInt(in);
+        List<Media> media = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Media.Builder builder = Media.builder()
+                    .mimeType(MimeTypeUtils.parseMimeType(readString(in)))
+                    .id(readString(in))
+                    .name(readString(in));
+            int kind = in.readUnsignedByte();
+            if (kind == MEDIA_BYTES) {
+                byte[] bytes = new byte[readVarInt(in)];
+                in.readFully(bytes);
+                builder.data(bytes);
+            }
+            else if (kind == MEDIA_URL) {
+                builder.data(readString(in));
+            }
+            else {
+                throw new IOException("Unknown media data kind: " + kind);
+            }
+            media.add(builder.build());
+        }
+        return media;
+    }
+
+    // ==================== 基础编码 ====================
+
+    /**
+     * 写入可空字符串：长度 + 1 的 varint（0 表示 null），随后是 UTF-8 字节
+     */
+    public static void writeString(String value, DataOutput out) throws IOException {
+        if (value == null) {
+            writeVarInt(0, out);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1, out);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0) {
+            throw new IOException("Malformed string length: " + length);
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeVarInt(int value, DataOutput out) throws IOException {
+        writeVarLong(value & 0xFFFFFFFFL, out);
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    public static void writeVarLong(long value, DataOutput out) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
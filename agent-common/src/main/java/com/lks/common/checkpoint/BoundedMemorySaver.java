@@ -0,0 +1,552 @@
+package com.lks.common.checkpoint;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有界内存检查点保存器
+ *
+ * 替代框架的 MemorySaver（后者把所有线程的完整历史永久留在堆上）：
+ * <ul>
+ *     <li>按常驻线程数和估算字节数限制内存占用，超限时按 LRU 淘汰</li>
+ *     <li>空闲超过 TTL 的线程由后台任务淘汰</li>
+ *     <li>淘汰的线程历史溢写到本地文件（紧凑二进制记录，只追加），再次访问时通过内存映射读取并透明恢复</li>
+ * </ul>
+ *
+ * 未配置溢写目录时淘汰即丢弃；溢写失败（如磁盘已满）时历史继续常驻、暂时超出上限。溢写文件只在进程内有效，启动时会清理旧文件。
+ * 所有操作在同一把锁内完成，与 MemorySaver 的并发语义一致。
+ */
+public class BoundedMemorySaver implements BaseCheckpointSaver, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BoundedMemorySaver.class);
+
+    private static final String SPILL_SUFFIX = ".ckpt";
+
+    private final ReentrantLock lock = new ReentrantLock();
+    /** 访问顺序的 LinkedHashMap，迭代起点即最久未访问的线程 */
+    private final LinkedHashMap<String, ThreadHistory> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> spilled = ConcurrentHashMap.newKeySet();
+    private final CheckpointCodec spillCodec;
+    private final int maxThreads;
+    private final long maxBytes;
+    private final Duration idleTtl;
+    private final Path spillDirectory;
+    private final int snapshotInterval;
+    private final ScheduledExecutorService sweeper;
+
+    private volatile long residentBytes;
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder spills = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+
+    protected BoundedMemorySaver(Builder builder) {
+        this.maxThreads = builder.maxThreads;
+        this.maxBytes = builder.maxBytes;
+        this.idleTtl = builder.idleTtl;
+        this.spillDirectory = builder.spillDirectory;
+        this.snapshotInterval = builder.snapshotInterval;
+        this.spillCodec = new CheckpointCodec(new BinaryValueCodec(), builder.compression, 512);
+        if (spillDirectory != null) {
+            prepareSpillDirectory();
+        }
+        if (idleTtl != null) {
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "checkpoint-idle-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1000, idleTtl.toMillis() / 4);
+            sweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+        else {
+            this.sweeper = null;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        String threadName = threadName(config);
+        lock.lock();
+        try {
+            ThreadHistory history = load(threadName);
+            return history == null ? List.of() : history.checkpoints();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        String threadName = threadName(config);
+        lock.lock();
+        try {
+            ThreadHistory history = load(threadName);
+            if (history == null) {
+                return Optional.empty();
+            }
+            if (config.checkPointId().isPresent()) {
+                String checkPointId = config.checkPointId().get();
+                return history.entries.stream()
+                        .map(Entry::checkpoint)
+                        .filter(checkpoint -> checkpoint.getId().equals(checkPointId))
+                        .findFirst();
+            }
+            return getLast(history.checkpoints(), config);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        String threadName = threadName(config);
+        lock.lock();
+        try {
+            ThreadHistory history = load(threadName);
+            if (history == null) {
+                history = new ThreadHistory();
+                resident.put(threadName, history);
+            }
+            Entry entry = new Entry(checkpoint, StateSizeEstimator.estimate(checkpoint.getState()));
+            if (config.checkPointId().isPresent()) {
+                String checkPointId = config.checkPointId().get();
+                int index = history.indexOf(checkPointId);
+                if (index < 0) {
+                    throw new NoSuchElementException(String.format("Checkpoint with id %s not found!", checkPointId));
+                }
+                Entry previous = history.entries.set(index, entry);
+                adjustBytes(history, entry.bytes() - previous.bytes());
+                // 改写了已溢写的部分，下次溢写时需要重写整个文件
+                if (index >= history.entries.size() - history.spilledCount) {
+                    history.spilledCount = 0;
+                }
+            }
+            else {
+                history.entries.addFirst(entry);
+                adjustBytes(history, entry.bytes());
+            }
+            history.touch();
+            enforceLimits(threadName);
+            return RunnableConfig.builder(config).checkPointId(checkpoint.getId()).build();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Tag release(RunnableConfig config) throws Exception {
+        String threadName = threadName(config);
+        lock.lock();
+        try {
+            ThreadHistory history = load(threadName);
+            if (history == null) {
+                return new Tag(threadName, List.of());
+            }
+            resident.remove(threadName);
+            adjustBytes(null, -history.bytes);
+            deleteSpill(threadName);
+            return new Tag(threadName, history.checkpoints());
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 注册常驻线程数、常驻字节数、溢写线程数以及淘汰/溢写/恢复次数指标
+     *
+     * @param registry 指标注册表
+     * @param name     保存器名称，作为 saver 标签
+     */
+    public BoundedMemorySaver bindTo(MeterRegistry registry, String name) {
+        Gauge.builder("agent.checkpoint.memory.resident.threads", this, saver -> saver.resident.size())
+                .tag("saver", name).description("Threads whose checkpoint history is on the heap").register(registry);
+        Gauge.builder("agent.checkpoint.memory.resident.bytes", this, saver -> saver.residentBytes)
+                .tag("saver", name).baseUnit("bytes").description("Estimated heap bytes of resident checkpoints")
+                .register(registry);
+        Gauge.builder("agent.checkpoint.memory.spilled.threads", this, saver -> saver.spilled.size())
+                .tag("saver", name).description("Threads with a spill file on disk").register(registry);
+        FunctionCounter.builder("agent.checkpoint.memory.evictions", evictions, LongAdder::sum)
+                .tag("saver", name).register(registry);
+        FunctionCounter.builder("agent.checkpoint.memory.spills", spills, LongAdder::sum)
+                .tag("saver", name).register(registry);
+        FunctionCounter.builder("agent.checkpoint.memory.reloads", reloads, LongAdder::sum)
+                .tag("saver", name).register(registry);
+        return this;
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(resident.size(), residentBytes, spilled.size(), evictions.sum(), spills.sum(), reloads.sum());
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 停止后台淘汰；常驻历史保留在内存中，随进程结束释放
+     */
+    @Override
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    // ==================== 内部实现（调用方持有锁） ====================
+
+    /**
+     * 取常驻历史，不在内存中时尝试从溢写文件恢复
+     */
+    private ThreadHistory load(String threadName) {
+        ThreadHistory history = resident.get(threadName);
+        if (history != null) {
+            history.touch();
+            return history;
+        }
+        if (!spilled.contains(threadName)) {
+            return null;
+        }
+        try {
+            history = readSpill(threadName);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to reload spilled checkpoints of " + threadName, e);
+        }
+        resident.put(threadName, history);
+        adjustBytes(null, history.bytes);
+        reloads.increment();
+        enforceLimits(threadName);
+        return history;
+    }
+
+    private void enforceLimits(String activeThread) {
+        Iterator<Map.Entry<String, ThreadHistory>> iterator = resident.entrySet().iterator();
+        while ((resident.size() > maxThreads || residentBytes > maxBytes) && iterator.hasNext()) {
+            Map.Entry<String, ThreadHistory> eldest = iterator.next();
+            if (eldest.getKey().equals(activeThread)) {
+                continue;
+            }
+            if (!evict(eldest.getKey(), eldest.getValue())) {
+                // 溢写失败（如磁盘已满）时宁可暂时超出上限，也不丢弃线程历史
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    private void evictIdle() {
+        lock.lock();
+        try {
+            long deadline = System.nanoTime() - idleTtl.toNanos();
+            Iterator<Map.Entry<String, ThreadHistory>> iterator = resident.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, ThreadHistory> eldest = iterator.next();
+                if (eldest.getValue().lastAccessNanos - deadline > 0) {
+                    // 访问顺序迭代，之后的线程都更“新”
+                    break;
+                }
+                if (!evict(eldest.getKey(), eldest.getValue())) {
+                    break;
+                }
+                iterator.remove();
+            }
+        }
+        catch (RuntimeException e) {
+            log.warn("idle checkpoint eviction failed: {}", e.getMessage());
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 淘汰线程历史：先溢写，成功后才从内存中移除（由调用方移除）
+     *
+     * @return 是否可以移除；溢写失败时返回 false，历史继续常驻，下次淘汰时重写整个溢写文件
+     */
+    private boolean evict(String threadName, ThreadHistory history) {
+        if (spillDirectory == null) {
+            log.warn("[{}] checkpoint history evicted without spill directory, {} checkpoints dropped",
+                    threadName, history.entries.size());
+        }
+        else {
+            try {
+                writeSpill(threadName, history);
+            }
+            catch (IOException | RuntimeException e) {
+                // 追加可能只写了一部分，文件内容已不可信
+                history.spilledCount = 0;
+                log.error("[{}] failed to spill checkpoint history, keeping {} checkpoints resident", threadName,
+                        history.entries.size(), e);
+                return false;
+            }
+            spilled.add(threadName);
+            spills.increment();
+        }
+        adjustBytes(null, -history.bytes);
+        evictions.increment();
+        return true;
+    }
+
+    /**
+     * 溢写线程历史：文件为 [int 长度][记录] 序列，最旧的在前；
+     * 已在文件中的部分不再重写，只追加之后新增的检查点
+     */
+    private void writeSpill(String threadName, ThreadHistory history) throws IOException {
+        List<Checkpoint> oldestFirst = new ArrayList<>(history.entries.size());
+        history.entries.descendingIterator().forEachRemaining(entry -> oldestFirst.add(entry.checkpoint()));
+        int from = history.spilledCount;
+        if (from >= oldestFirst.size()) {
+            return;
+        }
+        List<byte[]> records = new ArrayList<>(oldestFirst.size() - from);
+        int totalBytes = 0;
+        for (int i = from; i < oldestFirst.size(); i++) {
+            boolean snapshot = i % snapshotInterval == 0;
+            byte[] record = spillCodec.encode(oldestFirst.get(i), snapshot ? null : oldestFirst.get(i - 1));
+            records.add(record);
+            totalBytes += 4 + record.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(totalBytes);
+        for (byte[] record : records) {
+            buffer.putInt(record.length).put(record);
+        }
+        buffer.flip();
+        StandardOpenOption mode = from == 0 ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND;
+        try (FileChannel channel = FileChannel.open(spillPath(threadName),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private ThreadHistory readSpill(String threadName) throws IOException {
+        ThreadHistory history = new ThreadHistory();
+        try (FileChannel channel = FileChannel.open(spillPath(threadName), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Checkpoint parent = null;
+            while (buffer.remaining() >= 4) {
+                byte[] record = new byte[buffer.getInt()];
+                buffer.get(record);
+                parent = spillCodec.decode(record, parent);
+                Entry entry = new Entry(parent, StateSizeEstimator.estimate(parent.getState()));
+                history.entries.addFirst(entry);
+                history.bytes += entry.bytes();
+            }
+        }
+        history.spilledCount = history.entries.size();
+        history.touch();
+        return history;
+    }
+
+    private void deleteSpill(String threadName) {
+        if (spilled.remove(threadName)) {
+            try {
+                Files.deleteIfExists(spillPath(threadName));
+            }
+            catch (IOException e) {
+                log.warn("[{}] failed to delete spill file: {}", threadName, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 溢写文件与 MemorySaver 一样只在进程内有效，启动时清理上次运行遗留的文件
+     */
+    private void prepareSpillDirectory() {
+        try {
+            Files.createDirectories(spillDirectory);
+            try (var stale = Files.newDirectoryStream(spillDirectory, "*" + SPILL_SUFFIX)) {
+                for (Path file : stale) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to prepare spill directory " + spillDirectory, e);
+        }
+    }
+
+    private Path spillPath(String threadName) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(threadName.getBytes(StandardCharsets.UTF_8));
+            return spillDirectory.resolve(HexFormat.of().formatHex(digest, 0, 16) + SPILL_SUFFIX);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void adjustBytes(ThreadHistory history, long delta) {
+        if (history != null) {
+            history.bytes += delta;
+        }
+        residentBytes += delta;
+    }
+
+    private static String threadName(RunnableConfig config) {
+        return config.threadId().orElse(THREAD_ID_DEFAULT);
+    }
+
+    private record Entry(Checkpoint checkpoint, long bytes) {
+    }
+
+    /**
+     * 单个线程的检查点历史（最新的在前）
+     */
+    private static final class ThreadHistory {
+
+        private final LinkedList<Entry> entries = new LinkedList<>();
+        private long bytes;
+        private long lastAccessNanos;
+        /** 最旧的 spilledCount 个检查点已经在溢写文件中 */
+        private int spilledCount;
+
+        void touch() {
+            lastAccessNanos = System.nanoTime();
+        }
+
+        int indexOf(String checkPointId) {
+            int index = 0;
+            for (Entry entry : entries) {
+                if (entry.checkpoint().getId().equals(checkPointId)) {
+                    return index;
+                }
+                index++;
+            }
+            return -1;
+        }
+
+        LinkedList<Checkpoint> checkpoints() {
+            LinkedList<Checkpoint> checkpoints = new LinkedList<>();
+            for (Entry entry : entries) {
+                checkpoints.add(entry.checkpoint());
+            }
+            return checkpoints;
+        }
+    }
+
+    /**
+     * 保存器状态
+     *
+     * @param residentThreads 常驻内存的线程数
+     * @param residentBytes   常驻检查点的估算字节数
+     * @param spilledThreads  已溢写到磁盘的线程数
+     * @param evictions       淘汰次数
+     * @param spills          溢写次数
+     * @param reloads         从磁盘恢复次数
+     */
+    public record Stats(int residentThreads, long residentBytes, int spilledThreads,
+                        long evictions, long spills, long reloads) {
+    }
+
+    public static class Builder {
+        private int maxThreads = 100;
+        private long maxBytes = 256L * 1024 * 1024;
+        private Duration idleTtl = Duration.ofMinutes(30);
+        private Path spillDirectory;
+        private CheckpointCompression compression = CheckpointCompression.LZ4;
+        private int snapshotInterval = 20;
+
+        /**
+         * 常驻内存的最大线程数
+         */
+        public Builder maxThreads(int maxThreads) {
+            this.maxThreads = maxThreads;
+            return this;
+        }
+
+        /**
+         * 常驻检查点的最大估算字节数
+         */
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * 线程空闲多久后淘汰，为 null 时只按容量淘汰
+         */
+        public Builder idleTtl(Duration idleTtl) {
+            this.idleTtl = idleTtl;
+            return this;
+        }
+
+        /**
+         * 溢写目录，为 null 时淘汰即丢弃
+         */
+        public Builder spillDirectory(Path spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
+        public Builder compression(CheckpointCompression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * 溢写文件中每隔多少条记录写一次全量快照
+         */
+        public Builder snapshotInterval(int snapshotInterval) {
+            this.snapshotInterval = snapshotInterval;
+            return this;
+        }
+
+        public BoundedMemorySaver build() {
+            Objects.requireNonNull(compression, "compression cannot be null");
+            if (maxThreads < 1 || maxBytes < 1 || snapshotInterval < 1) {
+                throw new IllegalArgumentException("maxThreads, maxBytes and snapshotInterval must be positive");
+            }
+            return new BoundedMemorySaver(this);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.lks.common.checkpoint;
+
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 检查点记录编解码器
+ *
+ * 记录格式：
+ * <pre>
+ * magic(1) | version(1) | kind(1) | compression(1) | rawLength(varint) | payload
+ * payload = id | nodeId | nextNodeId | [parentId | baseMessageCount]（仅增量） | state
+ * </pre>
+ *
+ * 增量记录（DELTA）只保存相对父检查点新追加的消息，其余状态键照常全量保存；
+ * 当消息历史不是父检查点的延续（如被摘要压缩替换）时自动退化为全量快照（FULL）。
+ */
+public class CheckpointCodec {
+
+    /** 状态中保存消息历史的键 */
+    public static final String MESSAGES_KEY = "messages";
+
+    private static final int MAGIC = 0x43;
+    private static final int VERSION = 1;
+    private static final int KIND_FULL = 0;
+    private static final int KIND_DELTA = 1;
+
+    private final BinaryValueCodec valueCodec;
+    private final CheckpointCompression compression;
+    private final int compressionThreshold;
+    private final CheckpointCodecStats stats = new CheckpointCodecStats();
+
+    /**
+     * @param valueCodec           值编解码器
+     * @param compression          压缩算法
+     * @param compressionThreshold 超过该字节数才压缩，小记录压缩收益不抵开销
+     */
+    public CheckpointCodec(BinaryValueCodec valueCodec, CheckpointCompression compression, int compressionThreshold) {
+        this.valueCodec = Objects.requireNonNull(valueCodec, "valueCodec cannot be null");
+        this.compression = Objects.requireNonNull(compression, "compression cannot be null");
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * 编码检查点
+     *
+     * @param checkpoint 待编码的检查点
+     * @param parent     父检查点，为 null 或无法增量时写全量快照
+     * @return 记录字节
+     */
+    public byte[] encode(Checkpoint checkpoint, Checkpoint parent) throws IOException {
+        long start = System.nanoTime();
+        boolean delta = parent != null && isContinuation(messagesOf(parent), messagesOf(checkpoint));
+
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(1024);
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        BinaryValueCodec.writeString(checkpoint.getId(), payload);
+        BinaryValueCodec.writeString(checkpoint.getNodeId(), payload);
+        BinaryValueCodec.writeString(checkpoint.getNextNodeId(), payload);
+        Map<String, Object> state = checkpoint.getState();
+        if (delta) {
+            List<Object> parentMessages = messagesOf(parent);
+            List<Object> messages = messagesOf(checkpoint);
+            BinaryValueCodec.writeString(parent.getId(), payload);
+            BinaryValueCodec.writeVarInt(parentMessages.size(), payload);
+            state = new HashMap<>(state);
+            state.put(MESSAGES_KEY, new ArrayList<>(messages.subList(parentMessages.size(), messages.size())));
+        }
+        valueCodec.writeMap(state, payload);
+        payload.flush();
+
+        byte[] raw = payloadBytes.toByteArray();
+        CheckpointCompression used = raw.length >= compressionThreshold ? compression : CheckpointCompression.NONE;
+        byte[] body = used.doCompress(raw);
+
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(body.length + 8);
+        DataOutputStream record = new DataOutputStream(recordBytes);
+        record.writeByte(MAGIC);
+        record.writeByte(VERSION);
+        record.writeByte(delta ? KIND_DELTA : KIND_FULL);
+        record.writeByte(used.id());
+        BinaryValueCodec.writeVarInt(raw.length, record);
+        record.write(body);
+        record.flush();
+
+        byte[] result = recordBytes.toByteArray();
+        stats.recordEncode(delta, raw.length, result.length, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * 解码检查点
+     *
+     * @param record 记录字节
+     * @param parent 父检查点（增量记录必需，全量记录忽略）
+     * @return 还原后的检查点
+     */
+    public Checkpoint decode(byte[] record, Checkpoint parent) throws IOException {
+        long start = System.nanoTime();
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(record));
+        if (header.readUnsignedByte() != MAGIC) {
+            throw new IOException("Not a compact checkpoint record");
+        }
+        int version = header.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint record version: " + version);
+        }
+        int kind = header.readUnsignedByte();
+        CheckpointCompression used = CheckpointCompression.of(header.readUnsignedByte());
+        int rawLength = BinaryValueCodec.readVarInt(header);
+        int offset = record.length - header.available();
+        byte[] raw = used.doDecompress(record, offset, rawLength);
+
+        DataInputStream payload = new DataInputStream(new ByteArrayInputStream(raw));
+        String id;
+        String nodeId;
+        String nextNodeId;
+        String parentId = null;
+        int baseMessageCount = 0;
+        Map<String, Object> state;
+        try {
+            id = BinaryValueCodec.readString(payload);
+            nodeId = BinaryValueCodec.readString(payload);
+            nextNodeId = BinaryValueCodec.readString(payload);
+            if (kind == KIND_DELTA) {
+                parentId = BinaryValueCodec.readString(payload);
+                baseMessageCount = BinaryValueCodec.readVarInt(payload);
+            }
+            state = valueCodec.readMap(payload);
+        }
+        catch (RuntimeException e) {
+            // 损坏的长度字段可能表现为负数组长度等运行时异常
+            throw new IOException("Corrupted checkpoint record", e);
+        }
+
+        if (kind == KIND_DELTA) {
+            if (parent == null || !parent.getId().equals(parentId)) {
+                throw new IOException("Delta checkpoint " + id + " requires parent " + parentId
+                        + " but got " + (parent != null ? parent.getId() : null));
+            }
+            List<Object> parentMessages = messagesOf(parent);
+            if (parentMessages == null || baseMessageCount > parentMessages.size()) {
+                throw new IOException("Delta checkpoint " + id + " expects " + baseMessageCount
+                        + " parent messages but parent " + parentId + " has "
+                        + (parentMessages != null ? parentMessages.size() : 0));
+            }
+            List<Object> messages = new ArrayList<>(parentMessages.subList(0, baseMessageCount));
+            Object appended = state.get(MESSAGES_KEY);
+            if (appended instanceof List<?> list) {
+                messages.addAll(list);
+            }
+            state.put(MESSAGES_KEY, messages);
+        }
+
+        Checkpoint checkpoint = Checkpoint.builder()
+                .id(id)
+                .nodeId(nodeId)
+                .nextNodeId(nextNodeId)
+                .state(state)
+                .build();
+        stats.recordDecode(System.nanoTime() - start);
+        return checkpoint;
+    }
+
+    /**
+     * @return 记录是否为全量快照（无需父检查点即可解码）
+     */
+    public static boolean isFullSnapshot(byte[] record) {
+        return record.length > 2 && record[0] == MAGIC && record[2] == KIND_FULL;
+    }
+
+    /**
+     * @return 记录是否为本编解码器的格式（用于和旧格式区分）
+     */
+    public static boolean isCompactRecord(byte[] record) {
+        return record != null && record.length > 4 && (record[0] & 0xFF) == MAGIC;
+    }
+
+    public CheckpointCodecStats getStats() {
+        return stats;
+    }
+
+    public CheckpointCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * 判断当前消息历史是否是父检查点消息历史的延续（只追加、未改写）
+     *
+     * 逐条比较父检查点的全部消息：摘要替换、上下文编辑、大结果驱逐等会在长度不变时改写中间的消息，
+     * 只比较首尾会把改写前的消息还原回来。同一对象直接视为相同，只追加的历史基本不需要比较内容。
+     */
+    private static boolean isContinuation(List<Object> parentMessages, List<Object> messages) {
+        if (parentMessages == null || messages == null || parentMessages.isEmpty()
+                || messages.size() < parentMessages.size()) {
+            return false;
+        }
+        for (int i = 0; i < parentMessages.size(); i++) {
+            if (!sameMessage(parentMessages.get(i), messages.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameMessage(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (!(a instanceof Message ma) || !(b instanceof Message mb)) {
+            return Objects.equals(a, b);
+        }
+        if (ma.getMessageType() != mb.getMessageType() || !Objects.equals(ma.getText(), mb.getText())
+                || !Objects.equals(ma.getMetadata(), mb.getMetadata())) {
+            return false;
+        }
+        if (ma instanceof AssistantMessage aa && mb instanceof AssistantMessage ab) {
+            return Objects.equals(aa.getToolCalls(), ab.getToolCalls());
+        }
+        if (ma instanceof ToolResponseMessage ta && mb instanceof ToolResponseMessage tb) {
+            return Objects.equals(ta.getResponses(), tb.getResponses());
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> messagesOf(Checkpoint checkpoint) {
+        Object messages = checkpoint.getState().get(MESSAGES_KEY);
+        return messages instanceof List<?> list ? (List<Object>) list : null;
+    }
+}
@@ -0,0 +1,86 @@
+package com.lks.common.checkpoint;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 检查点编解码统计
+ *
+ * 记录每个检查点的编码字节数与编解码耗时，用于对比不同格式/压缩算法下的 Redis 占用与单步开销。
+ */
+public class CheckpointCodecStats {
+
+    private final LongAdder fullCount = new LongAdder();
+    private final LongAdder deltaCount = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder encodedBytes = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder decodeCount = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+
+    void recordEncode(boolean delta, int raw, int encoded, long nanos) {
+        (delta ? deltaCount : fullCount).increment();
+        rawBytes.add(raw);
+        encodedBytes.add(encoded);
+        encodeNanos.add(nanos);
+    }
+
+    void recordDecode(long nanos) {
+        decodeCount.increment();
+        decodeNanos.add(nanos);
+    }
+
+    /**
+     * @return 当前统计快照
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(fullCount.sum(), deltaCount.sum(), rawBytes.sum(), encodedBytes.sum(),
+                encodeNanos.sum(), decodeCount.sum(), decodeNanos.sum());
+    }
+
+    /**
+     * 统计快照
+     *
+     * @param fullCount    全量快照数量
+     * @param deltaCount   增量检查点数量
+     * @param rawBytes     压缩前总字节数
+     * @param encodedBytes 最终写入的总字节数
+     * @param encodeNanos  编码总耗时（纳秒）
+     * @param decodeCount  解码次数
+     * @param decodeNanos  解码总耗时（纳秒）
+     */
+    public record Snapshot(long fullCount, long deltaCount, long rawBytes, long encodedBytes,
+                           long encodeNanos, long decodeCount, long decodeNanos) {
+
+        public long encodeCount() {
+            return fullCount + deltaCount;
+        }
+
+        /**
+         * @return 平均每个检查点的写入字节数
+         */
+        public double avgBytesPerCheckpoint() {
+            return encodeCount() == 0 ? 0 : (double) encodedBytes / encodeCount();
+        }
+
+        /**
+         * @return 平均编码耗时（微秒）
+         */
+        public double avgEncodeMicros() {
+            return encodeCount() == 0 ? 0 : encodeNanos / 1000.0 / encodeCount();
+        }
+
+        /**
+         * @return 平均解码耗时（微秒）
+         */
+        public double avgDecodeMicros() {
+            return decodeCount == 0 ? 0 : decodeNanos / 1000.0 / decodeCount;
+        }
+
+        /**
+         * @return 压缩比（写入字节 / 原始字节）
+         */
+        public double compressionRatio() {
+            return rawBytes == 0 ? 1 : (double) encodedBytes / rawBytes;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.lks.common.checkpoint;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdException;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 检查点压缩算法
+ *
+ * 原始长度由检查点记录头保存，解压时据此一次性分配缓冲区。
+ * 截断或损坏的记录统一以 {@link IOException} 报告，不会把第三方库的运行时异常抛给调用方。
+ */
+public enum CheckpointCompression {
+
+    /** 不压缩 */
+    NONE(0) {
+        @Override
+        byte[] doCompress(byte[] raw) {
+            return raw;
+        }
+
+        @Override
+        byte[] doDecompress(byte[] compressed, int offset, int rawLength) throws IOException {
+            if (compressed.length - offset != rawLength) {
+                throw new IOException("Truncated checkpoint: " + (compressed.length - offset) + " of " + rawLength + " bytes");
+            }
+            byte[] raw = new byte[rawLength];
+            System.arraycopy(compressed, offset, raw, 0, rawLength);
+            return raw;
+        }
+    },
+
+    /** JDK 自带的 Deflate，无额外依赖 */
+    DEFLATE(1) {
+        @Override
+        byte[] doCompress(byte[] raw) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(raw);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return out.toByteArray();
+            }
+            finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        byte[] doDecompress(byte[] compressed, int offset, int rawLength) throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed, offset, compressed.length - offset);
+                byte[] raw = new byte[rawLength];
+                int read = 0;
+                while (read < rawLength && !inflater.finished()) {
+                    int n = inflater.inflate(raw, read, rawLength - read);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        // 记录被截断或损坏：输入已耗尽仍未解出 rawLength 字节，继续循环只会空转
+                        throw new IOException("Truncated deflate checkpoint: " + read + " of " + rawLength + " bytes");
+                    }
+                    read += n;
+                }
+                if (read < rawLength) {
+                    throw new IOException("Truncated deflate checkpoint: " + read + " of " + rawLength + " bytes");
+                }
+                // 解出 rawLength 字节后还要读完流尾的校验和，缺了尾部的记录同样视为截断
+                if (!inflater.finished() && (inflater.inflate(new byte[1]) != 0 || !inflater.finished())) {
+                    throw new IOException("Truncated deflate checkpoint: missing end of stream");
+                }
+                return raw;
+            }
+            catch (DataFormatException e) {
+                throw new IOException("Corrupted deflate checkpoint", e);
+            }
+            finally {
+                inflater.end();
+            }
+        }
+    },
+
+    /** LZ4：压缩率一般但速度极快，适合每步都写检查点的场景 */
+    LZ4(2) {
+        @Override
+        byte[] doCompress(byte[] raw) {
+            LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+            byte[] buffer = new byte[compressor.maxCompressedLength(raw.length)];
+            int length = compressor.compress(raw, 0, raw.length, buffer, 0, buffer.length);
+            byte[] result = new byte[length];
+            System.arraycopy(buffer, 0, result, 0, length);
+            return result;
+        }
+
+        @Override
+        byte[] doDecompress(byte[] compressed, int offset, int rawLength) throws IOException {
+            // safe 解压器按输入长度做边界检查，截断或损坏的记录不会越界读取
+            LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+            byte[] raw = new byte[rawLength];
+            try {
+                int length = decompressor.decompress(compressed, offset, compressed.length - offset, raw, 0, rawLength);
+                if (length != rawLength) {
+                    throw new IOException("Truncated lz4 checkpoint: " + length + " of " + rawLength + " bytes");
+                }
+            }
+            catch (LZ4Exception e) {
+                throw new IOException("Corrupted lz4 checkpoint", e);
+            }
+            return raw;
+        }
+    },
+
+    /** Zstd：压缩率更高，适合长对话历史 */
+    ZSTD(3) {
+        @Override
+        byte[] doCompress(byte[] raw) {
+            return Zstd.compress(raw, 3);
+        }
+
+        @Override
+        byte[] doDecompress(byte[] compressed, int offset, int rawLength) throws IOException {
+            byte[] src = new byte[compressed.length - offset];
+            System.arraycopy(compressed, offset, src, 0, src.length);
+            try {
+                byte[] raw = Zstd.decompress(src, rawLength);
+                if (raw.length != rawLength) {
+                    throw new IOException("Truncated zstd checkpoint: " + raw.length + " of " + rawLength + " bytes");
+                }
+                return raw;
+            }
+            catch (ZstdException e) {
+                throw new IOException("Corrupted zstd checkpoint", e);
+            }
+        }
+    };
+
+    private final int id;
+
+    CheckpointCompression(int id) {
+        this.id = id;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    abstract byte[] doCompress(byte[] raw) throws IOException;
+
+    abstract byte[] doDecompress(byte[] compressed, int offset, int rawLength) throws IOException;
+
+    public static CheckpointCompression of(int id) {
+        for (CheckpointCompression compression : values()) {
+            if (compression.id == id) {
+                return compression;
+            }
+        }
+        throw new IllegalArgumentException("Unknown checkpoint compression: " + id);
+    }
+}
@@ -0,0 +1,69 @@
+package com.lks.common.checkpoint;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 按线程ID前缀选择检查点保留策略
+ *
+ * 取前缀最长的匹配项，没有匹配时使用默认策略；例如 {@code poem_thread_} 下的对话可单独配置。
+ */
+public class CheckpointRetention {
+
+    private final CheckpointRetentionPolicy defaultPolicy;
+    private final Map<String, CheckpointRetentionPolicy> byPrefix;
+
+    private CheckpointRetention(Builder builder) {
+        this.defaultPolicy = builder.defaultPolicy;
+        this.byPrefix = Map.copyOf(builder.byPrefix);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param threadId 线程ID
+     * @return 该线程适用的策略
+     */
+    public CheckpointRetentionPolicy policyFor(String threadId) {
+        CheckpointRetentionPolicy policy = defaultPolicy;
+        int matched = -1;
+        for (Map.Entry<String, CheckpointRetentionPolicy> entry : byPrefix.entrySet()) {
+            String prefix = entry.getKey();
+            if (prefix.length() > matched && threadId.startsWith(prefix)) {
+                policy = entry.getValue();
+                matched = prefix.length();
+            }
+        }
+        return policy;
+    }
+
+    public static class Builder {
+        private CheckpointRetentionPolicy defaultPolicy = CheckpointRetentionPolicy.KEEP_ALL;
+        private final Map<String, CheckpointRetentionPolicy> byPrefix = new LinkedHashMap<>();
+
+        /**
+         * 没有前缀匹配时的策略，默认全部保留
+         */
+        public Builder defaultPolicy(CheckpointRetentionPolicy defaultPolicy) {
+            this.defaultPolicy = defaultPolicy;
+            return this;
+        }
+
+        /**
+         * 线程ID以 prefix 开头时使用的策略
+         */
+        public Builder policy(String prefix, CheckpointRetentionPolicy policy) {
+            byPrefix.put(Objects.requireNonNull(prefix, "prefix cannot be null"),
+                    Objects.requireNonNull(policy, "policy cannot be null"));
+            return this;
+        }
+
+        public CheckpointRetention build() {
+            Objects.requireNonNull(defaultPolicy, "defaultPolicy cannot be null");
+            return new CheckpointRetention(this);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.lks.common.checkpoint;
+
+import com.alibaba.cloud.ai.graph.StateGraph;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个线程的检查点保留策略
+ *
+ * - keepLast：只保留最近 N 个检查点，0 表示不限
+ * - stepBoundariesOnly：只保留每次运行结束时的检查点（下一节点为 END）与最新检查点，丢弃运行中间的节点检查点
+ * - maxAge：线程最后一次写入后的保留时长，超过后整个线程被删除；null 或 0 表示不过期
+ *
+ * 检查点本身不带时间戳，maxAge 按线程最后一次写入计算（由保存器在写入时刷新过期时间）。
+ *
+ * @param keepLast           保留的最近检查点数，0 表示不限
+ * @param stepBoundariesOnly 是否只保留运行边界上的检查点
+ * @param maxAge             线程最后一次写入后的保留时长
+ */
+public record CheckpointRetentionPolicy(int keepLast, boolean stepBoundariesOnly, Duration maxAge) {
+
+    /** 保留全部检查点且不过期 */
+    public static final CheckpointRetentionPolicy KEEP_ALL = new CheckpointRetentionPolicy(0, false, null);
+
+    public CheckpointRetentionPolicy {
+        if (keepLast < 0) {
+            throw new IllegalArgumentException("keepLast must not be negative");
+        }
+        if (maxAge != null && (maxAge.isNegative() || maxAge.isZero())) {
+            maxAge = null;
+        }
+    }
+
+    /**
+     * @return 是否会裁剪线程内的检查点
+     */
+    public boolean prunes() {
+        return keepLast > 0 || stepBoundariesOnly;
+    }
+
+    /**
+     * @return 是否设置了线程过期时间
+     */
+    public boolean expires() {
+        return maxAge != null;
+    }
+
+    /**
+     * 按策略挑选保留的检查点，最新检查点总是保留
+     *
+     * @param oldestFirst 线程的全部检查点（最旧的在前）
+     * @return 保留的检查点（最旧的在前）；不需要裁剪时返回原列表
+     */
+    public List<Checkpoint> select(List<Checkpoint> oldestFirst) {
+        if (!prunes() || oldestFirst.isEmpty()) {
+            return oldestFirst;
+        }
+        List<Checkpoint> kept = oldestFirst;
+        if (stepBoundariesOnly) {
+            int last = oldestFirst.size() - 1;
+            kept = new ArrayList<>();
+            for (int i = 0; i < oldestFirst.size(); i++) {
+                Checkpoint checkpoint = oldestFirst.get(i);
+                if (i == last || StateGraph.END.equals(checkpoint.getNextNodeId())) {
+                    kept.add(checkpoint);
+                }
+            }
+        }
+        if (keepLast > 0 && kept.size() > keepLast) {
+            kept = kept.subList(kept.size() - keepLast, kept.size());
+        }
+        return kept;
+    }
+}
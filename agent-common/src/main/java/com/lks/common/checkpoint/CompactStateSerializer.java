@@ -0,0 +1,44 @@
+package com.lks.common.checkpoint;
+
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.serializer.StateSerializer;
+import com.alibaba.cloud.ai.graph.state.AgentStateFactory;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Map;
+
+/**
+ * 紧凑二进制状态序列化器
+ *
+ * {@link StateSerializer} 的二进制实现，可直接替换框架默认的 Jackson 序列化器，
+ * 例如 {@code RedisSaver.builder().stateSerializer(new CompactStateSerializer())}。
+ */
+public class CompactStateSerializer extends StateSerializer {
+
+    private final BinaryValueCodec codec;
+
+    public CompactStateSerializer() {
+        this(OverAllState::new, new BinaryValueCodec());
+    }
+
+    public CompactStateSerializer(AgentStateFactory<OverAllState> stateFactory, BinaryValueCodec codec) {
+        super(stateFactory);
+        this.codec = codec;
+    }
+
+    @Override
+    public void writeData(Map<String, Object> data, ObjectOutput out) throws IOException {
+        codec.writeMap(data, out);
+    }
+
+    @Override
+    public Map<String, Object> readData(ObjectInput in) throws IOException {
+        return codec.readMap(in);
+    }
+
+    public BinaryValueCodec getCodec() {
+        return codec;
+    }
+}
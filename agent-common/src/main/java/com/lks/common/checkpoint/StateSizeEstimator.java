@@ -0,0 +1,73 @@
+package com.lks.common.checkpoint;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 检查点状态的堆内字节数估算
+ *
+ * 框架写检查点前会把状态深拷贝一份，因此每个检查点都独立占用与其状态等量的堆空间。
+ * 这里按字符串长度和固定的对象头开销粗略估算，只遍历不分配，足够用于容量控制。
+ */
+public final class StateSizeEstimator {
+
+    /** 对象头 + 引用等固定开销的粗略值 */
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int STRING_OVERHEAD = 40;
+    private static final int ENTRY_OVERHEAD = 32;
+    private static final int UNKNOWN_OBJECT_SIZE = 64;
+
+    private StateSizeEstimator() {
+    }
+
+    public static long estimate(Map<String, Object> state) {
+        return sizeOf(state);
+    }
+
+    private static long sizeOf(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence text) {
+            // Latin-1 字符串 1 字节/字符，中文等需要 UTF-16，取 2 字节保守估计
+            return STRING_OVERHEAD + 2L * text.length();
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Enum<?>) {
+            return OBJECT_OVERHEAD;
+        }
+        if (value instanceof Message message) {
+            long size = OBJECT_OVERHEAD + sizeOf(message.getText()) + sizeOf(message.getMetadata());
+            if (message instanceof AssistantMessage assistant) {
+                for (AssistantMessage.ToolCall toolCall : assistant.getToolCalls()) {
+                    size += OBJECT_OVERHEAD + sizeOf(toolCall.id()) + sizeOf(toolCall.name()) + sizeOf(toolCall.arguments());
+                }
+            }
+            else if (message instanceof ToolResponseMessage toolResponse) {
+                for (ToolResponseMessage.ToolResponse response : toolResponse.getResponses()) {
+                    size += OBJECT_OVERHEAD + sizeOf(response.id()) + sizeOf(response.name()) + sizeOf(response.responseData());
+                }
+            }
+            return size;
+        }
+        if (value instanceof Map<?, ?> map) {
+            long size = OBJECT_OVERHEAD;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += ENTRY_OVERHEAD + sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Collection<?> collection) {
+            long size = OBJECT_OVERHEAD;
+            for (Object element : collection) {
+                size += 8 + sizeOf(element);
+            }
+            return size;
+        }
+        // 未知类型不做反射遍历，按固定开销计
+        return UNKNOWN_OBJECT_SIZE;
+    }
+}
@@ -0,0 +1,268 @@
+package com.lks.common.concurrency;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 全局准入控制：有界并发 + 有界等待队列 + 等待超时
+ *
+ * - 并发未满时立即执行
+ * - 并发已满时进入 FIFO 等待队列，运行结束时直接把名额交给排队最久的运行
+ * - 等待队列也满时立即以 {@link RunRejectedException.Reason#OVERLOADED} 拒绝，不再堆积
+ * - 排队超过 queueTimeout 时以 {@link RunRejectedException.Reason#QUEUE_TIMEOUT} 拒绝
+ *
+ * 过载时被接纳的运行的总耗时不超过 queueTimeout 加上单次运行耗时，其余请求快速失败，尾延迟可预期。
+ */
+public class AdmissionController {
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final Duration queueTimeout;
+    private final Duration retryAfter;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+    // 由 lock 保护
+    private int active;
+
+    private final LongAdder overloaded = new LongAdder();
+    private final LongAdder queueTimeouts = new LongAdder();
+    private volatile Timer waitTimer;
+
+    private AdmissionController(Builder builder) {
+        this.maxConcurrent = builder.maxConcurrent;
+        this.maxQueued = builder.maxQueued;
+        this.queueTimeout = builder.queueTimeout;
+        this.retryAfter = builder.retryAfter;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 在准入名额内执行一次运行
+     *
+     * @param run 订阅时才真正开始的运行；其结束（完成、出错或取消）后释放名额
+     * @return 获得名额时才订阅 run 的 Flux
+     */
+    public <T> Flux<T> admit(Supplier<Flux<T>> run) {
+        return acquire()
+                .flatMapMany(permit -> Flux.defer(run).doFinally(signal -> permit.release()))
+                // 放行与取消同时发生时，未交付的名额在这里归还
+                .doOnDiscard(Permit.class, Permit::release);
+    }
+
+    /**
+     * @return 当前统计
+     */
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(active, queue.size(), overloaded.sum(), queueTimeouts.sum());
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 注册进行中 / 排队运行数、排队耗时与拒绝次数指标
+     *
+     * @param registry 指标注册表
+     * @param name     名称，作为 gate 标签
+     * @return this
+     */
+    public AdmissionController bindTo(MeterRegistry registry, String name) {
+        Gauge.builder("agent.run.admission.active", this, controller -> controller.stats().active())
+                .tag("gate", name).description("Admitted runs in progress").register(registry);
+        Gauge.builder("agent.run.admission.queued", this, controller -> controller.stats().queued())
+                .tag("gate", name).description("Runs waiting for admission").register(registry);
+        FunctionCounter.builder("agent.run.rejected", overloaded, LongAdder::sum)
+                .tag("gate", name).tag("reason", "overloaded").register(registry);
+        FunctionCounter.builder("agent.run.rejected", queueTimeouts, LongAdder::sum)
+                .tag("gate", name).tag("reason", "queue_timeout").register(registry);
+        this.waitTimer = Timer.builder("agent.run.admission.wait")
+                .tag("gate", name).description("Time a run waited for admission")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(queueTimeout.plusSeconds(1))
+                .register(registry);
+        return this;
+    }
+
+    // ==================== 内部实现 ====================
+
+    private Mono<Permit> acquire() {
+        return Mono.defer(() -> {
+            Waiter waiter = new Waiter(System.nanoTime());
+            lock.lock();
+            try {
+                if (active < maxConcurrent) {
+                    active++;
+                    recordWait(waiter);
+                    return Mono.just(new Permit());
+                }
+                if (queue.size() >= maxQueued) {
+                    overloaded.increment();
+                    return Mono.error(new RunRejectedException(RunRejectedException.Reason.OVERLOADED,
+                            "Too many concurrent runs (" + maxConcurrent + " running, " + maxQueued + " queued)", retryAfter));
+                }
+                queue.addLast(waiter);
+            }
+            finally {
+                lock.unlock();
+            }
+            // 等待中被取消（超时或客户端断开）时移出队列
+            waiter.future.whenComplete((permit, error) -> {
+                if (waiter.future.isCancelled()) {
+                    lock.lock();
+                    try {
+                        queue.remove(waiter);
+                    }
+                    finally {
+                        lock.unlock();
+                    }
+                }
+            });
+            return Mono.fromFuture(waiter.future)
+                    .timeout(queueTimeout, Mono.error(() -> {
+                        queueTimeouts.increment();
+                        return new RunRejectedException(RunRejectedException.Reason.QUEUE_TIMEOUT,
+                                "Timed out after " + queueTimeout.toMillis() + " ms waiting for admission", retryAfter);
+                    }));
+        });
+    }
+
+    /**
+     * 把名额交给排队最久的运行，没有排队的运行时归还名额
+     */
+    private void handOff() {
+        Waiter next;
+        lock.lock();
+        try {
+            next = queue.pollFirst();
+            if (next == null) {
+                active--;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        if (next != null) {
+            Permit permit = new Permit();
+            if (next.future.complete(permit)) {
+                recordWait(next);
+            }
+            else {
+                // 已被取消：继续交给下一个
+                permit.release();
+            }
+        }
+    }
+
+    private void recordWait(Waiter waiter) {
+        Timer timer = waitTimer;
+        if (timer != null) {
+            timer.record(System.nanoTime() - waiter.enqueuedNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static final class Waiter {
+        final long enqueuedNanos;
+        final CompletableFuture<Permit> future = new CompletableFuture<>();
+
+        Waiter(long enqueuedNanos) {
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    /**
+     * 一个准入名额，释放后交给排队最久的运行；重复释放被忽略
+     */
+    private final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                handOff();
+            }
+        }
+    }
+
+    /**
+     * 准入统计
+     *
+     * @param active        进行中的运行数
+     * @param queued        排队中的运行数
+     * @param overloaded    因并发与队列均满被拒绝的次数
+     * @param queueTimeouts 排队超时的次数
+     */
+    public record Stats(int active, int queued, long overloaded, long queueTimeouts) {
+    }
+
+    public static class Builder {
+        private int maxConcurrent = 64;
+        private int maxQueued = 128;
+        private Duration queueTimeout = Duration.ofSeconds(5);
+        private Duration retryAfter = Duration.ofSeconds(1);
+
+        /**
+         * 同时执行的运行数上限，默认 64
+         */
+        public Builder maxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+            return this;
+        }
+
+        /**
+         * 等待队列长度上限，超出时立即拒绝，默认 128
+         */
+        public Builder maxQueued(int maxQueued) {
+            this.maxQueued = maxQueued;
+            return this;
+        }
+
+        /**
+         * 排队等待的最长时长，默认 5 秒
+         */
+        public Builder queueTimeout(Duration queueTimeout) {
+            this.queueTimeout = queueTimeout;
+            return this;
+        }
+
+        /**
+         * 拒绝时建议客户端等待的时长，默认 1 秒
+         */
+        public Builder retryAfter(Duration retryAfter) {
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
+        public AdmissionController build() {
+            if (maxConcurrent <= 0) {
+                throw new IllegalArgumentException("maxConcurrent must be positive");
+            }
+            if (maxQueued < 0) {
+                throw new IllegalArgumentException("maxQueued must not be negative");
+            }
+            if (queueTimeout.isNegative() || queueTimeout.isZero()) {
+                throw new IllegalArgumentException("queueTimeout must be positive");
+            }
+            return new AdmissionController(this);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.lks.common.concurrency;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+
+/**
+ * 让工具调用响应运行取消：取消后不再执行新的工具调用，执行中的调用被中断后返回取消结果
+ */
+class CancellationToolInterceptor extends ToolInterceptor {
+
+    @Override
+    public ToolCallResponse interceptToolCall(ToolCallRequest request, ToolCallHandler handler) {
+        RunCancellation cancellation = RunCancellation.of(request.getContext());
+        if (cancellation == null) {
+            return handler.call(request);
+        }
+        if (cancellation.enter()) {
+            return cancelled(request);
+        }
+        ToolCallResponse response;
+        try {
+            response = handler.call(request);
+        }
+        catch (RuntimeException e) {
+            if (cancellation.exit()) {
+                return cancelled(request);
+            }
+            throw e;
+        }
+        return cancellation.exit() ? cancelled(request) : response;
+    }
+
+    @Override
+    public String getName() {
+        return "RunCancellation";
+    }
+
+    private static ToolCallResponse cancelled(ToolCallRequest request) {
+        return ToolCallResponse.of(request.getToolCallId(), request.getToolName(), RunCancellation.CANCELLED);
+    }
+}
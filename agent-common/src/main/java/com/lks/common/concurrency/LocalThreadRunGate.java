@@ -0,0 +1,231 @@
+package com.lks.common.concurrency;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 进程内的按线程串行执行
+ *
+ * 每个有运行在执行的线程在表中占一项，项中保存排队等待的运行；线程空闲时移除该项。
+ * 所有状态变更都在 {@link ConcurrentHashMap#compute} 中完成，即按哈希桶分段加锁，不同线程之间不争用同一把锁。
+ * 前一次运行结束时直接把执行权交给同一线程上排队最久的运行（FIFO）。
+ */
+public class LocalThreadRunGate implements ThreadRunGate {
+
+    private final Mode mode;
+    private final Duration maxWait;
+    private final int maxQueuedPerThread;
+    private final Duration retryAfter;
+
+    private final ConcurrentHashMap<String, ArrayDeque<Waiter>> running = new ConcurrentHashMap<>();
+    private final Map<RunRejectedException.Reason, LongAdder> rejected = new EnumMap<>(RunRejectedException.Reason.class);
+
+    private LocalThreadRunGate(Builder builder) {
+        this.mode = builder.mode;
+        this.maxWait = builder.maxWait;
+        this.maxQueuedPerThread = builder.maxQueuedPerThread;
+        this.retryAfter = builder.retryAfter;
+        rejected.put(RunRejectedException.Reason.THREAD_BUSY, new LongAdder());
+        rejected.put(RunRejectedException.Reason.THREAD_WAIT_TIMEOUT, new LongAdder());
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public <T> Flux<T> run(String threadId, Supplier<Flux<T>> run) {
+        return acquire(threadId)
+                .flatMapMany(ticket -> Flux.defer(run).doFinally(signal -> ticket.release()))
+                // 放行与取消同时发生时，未交付的执行权在这里归还
+                .doOnDiscard(Ticket.class, Ticket::release);
+    }
+
+    /**
+     * @return 有运行在执行的线程数
+     */
+    public int activeThreads() {
+        return running.size();
+    }
+
+    /**
+     * @return 排队等待同一线程上前一次运行结束的运行数
+     */
+    public int queuedRuns() {
+        int queued = 0;
+        for (String threadId : running.keySet()) {
+            ArrayDeque<Waiter> waiters = running.computeIfPresent(threadId, (key, queue) -> queue);
+            queued += waiters != null ? waiters.size() : 0;
+        }
+        return queued;
+    }
+
+    /**
+     * 注册进行中线程数、排队运行数与拒绝次数指标
+     *
+     * @param registry 指标注册表
+     * @param name     名称，作为 gate 标签
+     * @return this
+     */
+    public LocalThreadRunGate bindTo(MeterRegistry registry, String name) {
+        Gauge.builder("agent.run.thread.active", this, LocalThreadRunGate::activeThreads)
+                .tag("gate", name).description("Threads with a run in progress").register(registry);
+        Gauge.builder("agent.run.thread.queued", this, LocalThreadRunGate::queuedRuns)
+                .tag("gate", name).description("Runs waiting for an earlier run on the same thread").register(registry);
+        rejected.forEach((reason, counter) -> FunctionCounter.builder("agent.run.rejected", counter, LongAdder::sum)
+                .tag("gate", name).tag("reason", reason.name().toLowerCase()).register(registry));
+        return this;
+    }
+
+    // ==================== 内部实现 ====================
+
+    private Mono<Ticket> acquire(String threadId) {
+        return Mono.defer(() -> {
+            Waiter waiter = new Waiter();
+            boolean[] granted = new boolean[1];
+            boolean[] busy = new boolean[1];
+            running.compute(threadId, (key, waiters) -> {
+                if (waiters == null) {
+                    granted[0] = true;
+                    return new ArrayDeque<>();
+                }
+                if (mode == Mode.REJECT || waiters.size() >= maxQueuedPerThread) {
+                    busy[0] = true;
+                }
+                else {
+                    waiters.addLast(waiter);
+                }
+                return waiters;
+            });
+            if (granted[0]) {
+                return Mono.just(new Ticket(threadId));
+            }
+            if (busy[0]) {
+                rejected.get(RunRejectedException.Reason.THREAD_BUSY).increment();
+                return Mono.error(new RunRejectedException(RunRejectedException.Reason.THREAD_BUSY,
+                        "Thread " + threadId + " already has a run in progress", retryAfter));
+            }
+            // 等待中被取消（超时或客户端断开）时移出队列
+            waiter.future.whenComplete((ticket, error) -> {
+                if (waiter.future.isCancelled()) {
+                    running.computeIfPresent(threadId, (key, waiters) -> {
+                        waiters.remove(waiter);
+                        return waiters;
+                    });
+                }
+            });
+            return Mono.fromFuture(waiter.future)
+                    .timeout(maxWait, Mono.error(() -> {
+                        rejected.get(RunRejectedException.Reason.THREAD_WAIT_TIMEOUT).increment();
+                        return new RunRejectedException(RunRejectedException.Reason.THREAD_WAIT_TIMEOUT,
+                                "Timed out after " + maxWait.toMillis() + " ms waiting for the previous run on thread " + threadId,
+                                retryAfter);
+                    }));
+        });
+    }
+
+    /**
+     * 把执行权交给同一线程上排队最久的运行，没有排队的运行时移除该线程
+     */
+    private void handOff(String threadId) {
+        Waiter[] next = new Waiter[1];
+        running.computeIfPresent(threadId, (key, waiters) -> {
+            next[0] = waiters.pollFirst();
+            return next[0] == null ? null : waiters;
+        });
+        if (next[0] != null) {
+            Ticket ticket = new Ticket(threadId);
+            if (!next[0].future.complete(ticket)) {
+                // 已被取消：继续交给下一个
+                ticket.release();
+            }
+        }
+    }
+
+    private static final class Waiter {
+        final CompletableFuture<Ticket> future = new CompletableFuture<>();
+    }
+
+    /**
+     * 一次运行的执行权，释放后交给同一线程上的下一个运行；重复释放被忽略
+     */
+    private final class Ticket {
+        private final String threadId;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Ticket(String threadId) {
+            this.threadId = threadId;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                handOff(threadId);
+            }
+        }
+    }
+
+    public static class Builder {
+        private Mode mode = Mode.QUEUE;
+        private Duration maxWait = Duration.ofSeconds(30);
+        private int maxQueuedPerThread = 4;
+        private Duration retryAfter = Duration.ofSeconds(1);
+
+        /**
+         * 重叠运行的处理策略，默认排队
+         */
+        public Builder mode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * 排队等待同一线程上前一次运行结束的最长时长，默认 30 秒
+         */
+        public Builder maxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+            return this;
+        }
+
+        /**
+         * 每个线程最多排队的运行数，超出时拒绝，默认 4
+         */
+        public Builder maxQueuedPerThread(int maxQueuedPerThread) {
+            this.maxQueuedPerThread = maxQueuedPerThread;
+            return this;
+        }
+
+        /**
+         * 拒绝时建议客户端等待的时长，默认 1 秒
+         */
+        public Builder retryAfter(Duration retryAfter) {
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
+        public LocalThreadRunGate build() {
+            if (mode == null) {
+                throw new IllegalArgumentException("mode cannot be null");
+            }
+            if (maxWait.isNegative() || maxWait.isZero()) {
+                throw new IllegalArgumentException("maxWait must be positive");
+            }
+            if (maxQueuedPerThread < 0) {
+                throw new IllegalArgumentException("maxQueuedPerThread must not be negative");
+            }
+            return new LocalThreadRunGate(this);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.lks.common.concurrency;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一次运行的取消标记
+ *
+ * 取消输出流的订阅只会停止后续节点，正在执行的工具调用（阻塞等待 MCP 响应、同步运行的子代理）不会感知。
+ * 运行开始前把标记放进运行配置的元数据（{@link #attachTo(RunnableConfig.Builder)}），
+ * {@link #toolInterceptor()} 执行工具期间登记当前线程：
+ * <ul>
+ *     <li>{@link #cancel()} 中断正在执行工具的线程，阻塞的调用随之以中断结束</li>
+ *     <li>取消之后到达的工具调用不再执行，直接返回 {@link #CANCELLED} 结果</li>
+ *     <li>{@link #onCancel(Runnable)} 注册的回调（如取消并行子代理）在取消时执行一次</li>
+ * </ul>
+ * 中断只在线程登记期间发出，工具调用结束时清除残留的中断标记，不影响线程执行的后续任务。
+ */
+public class RunCancellation {
+
+    /** 运行配置元数据中的键 */
+    public static final String METADATA_KEY = "_run_cancellation_";
+    /** 取消后工具调用的结果 */
+    public static final String CANCELLED = "Error: the run was cancelled";
+
+    private static final ToolInterceptor TOOL_INTERCEPTOR = new CancellationToolInterceptor();
+
+    // 以下字段由 this 保护
+    private final Set<Thread> toolThreads = new HashSet<>();
+    private final List<Runnable> callbacks = new ArrayList<>();
+    private boolean cancelled;
+
+    /**
+     * 所有运行共用的工具拦截器，元数据中没有取消标记的运行直接放行；应放在拦截器列表最前（最外层）
+     */
+    public static ToolInterceptor toolInterceptor() {
+        return TOOL_INTERCEPTOR;
+    }
+
+    /**
+     * @return 运行配置元数据（即工具调用上下文）中的取消标记，没有时为 null
+     */
+    public static RunCancellation of(Map<String, Object> metadata) {
+        return metadata != null && metadata.get(METADATA_KEY) instanceof RunCancellation cancellation ? cancellation : null;
+    }
+
+    /**
+     * 把取消标记放进运行配置的元数据
+     */
+    public RunnableConfig.Builder attachTo(RunnableConfig.Builder builder) {
+        return builder.addMetadata(METADATA_KEY, this);
+    }
+
+    /**
+     * 取消运行：中断正在执行工具的线程并执行回调
+     *
+     * @return 是否为首次取消
+     */
+    public boolean cancel() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            toolThreads.forEach(Thread::interrupt);
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        toRun.forEach(Runnable::run);
+        return true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 注册取消时执行的回调；已取消时立即执行
+     */
+    public void onCancel(Runnable callback) {
+        synchronized (this) {
+            if (!cancelled) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * 登记当前线程正在为本运行执行工具
+     *
+     * @return 是否已取消（已取消时不登记）
+     */
+    synchronized boolean enter() {
+        if (cancelled) {
+            return true;
+        }
+        toolThreads.add(Thread.currentThread());
+        return false;
+    }
+
+    /**
+     * 注销当前线程；取消时发出的中断若未被工具消费，在这里清除
+     *
+     * @return 是否已取消
+     */
+    synchronized boolean exit() {
+        toolThreads.remove(Thread.currentThread());
+        if (cancelled) {
+            Thread.interrupted();
+        }
+        return cancelled;
+    }
+}
@@ -0,0 +1,52 @@
+package com.lks.common.concurrency;
+
+import java.time.Duration;
+
+/**
+ * 运行未被接纳：同一线程已有运行在执行，或全局并发已满
+ *
+ * 在任何输出之前抛出，Web 层据此返回 409 / 429，并把 {@link #getRetryAfter()} 写入 Retry-After。
+ */
+public class RunRejectedException extends RuntimeException {
+
+    /**
+     * 拒绝原因
+     */
+    public enum Reason {
+        /** 同一线程已有运行在执行，且配置为拒绝重叠运行或该线程排队已满 */
+        THREAD_BUSY,
+        /** 等待同一线程上的前一次运行结束超时 */
+        THREAD_WAIT_TIMEOUT,
+        /** 全局并发与等待队列均已满，立即拒绝 */
+        OVERLOADED,
+        /** 在全局等待队列中等待超时 */
+        QUEUE_TIMEOUT
+    }
+
+    private final Reason reason;
+    private final Duration retryAfter;
+
+    public RunRejectedException(Reason reason, String message, Duration retryAfter) {
+        super(message, null, false, false);
+        this.reason = reason;
+        this.retryAfter = retryAfter;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * @return 建议客户端重试前等待的时长
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * @return 是否因同一线程的运行冲突被拒绝（否则为过载）
+     */
+    public boolean isThreadConflict() {
+        return reason == Reason.THREAD_BUSY || reason == Reason.THREAD_WAIT_TIMEOUT;
+    }
+}
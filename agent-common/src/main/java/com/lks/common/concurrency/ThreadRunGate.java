@@ -0,0 +1,37 @@
+package com.lks.common.concurrency;
+
+import reactor.core.publisher.Flux;
+
+import java.util.function.Supplier;
+
+/**
+ * 按线程串行执行运行
+ *
+ * 同一 threadId 同一时刻只有一次运行在执行（读写同一条检查点链），重叠的运行按实现的策略排队或以
+ * {@link RunRejectedException} 拒绝；不同线程之间互不影响。
+ */
+public interface ThreadRunGate {
+
+    /**
+     * 在线程上独占执行一次运行
+     *
+     * @param threadId 线程ID
+     * @param run      订阅时才真正开始的运行；其结束（完成、出错或取消）后释放该线程
+     * @return 轮到该线程时才订阅 run 的 Flux
+     */
+    <T> Flux<T> run(String threadId, Supplier<Flux<T>> run);
+
+    /**
+     * 重叠运行的处理策略
+     */
+    enum Mode {
+        /** 排队等待前一次运行结束 */
+        QUEUE,
+        /** 立即拒绝 */
+        REJECT;
+
+        public static Mode of(String value) {
+            return valueOf(value.trim().toUpperCase());
+        }
+    }
+}
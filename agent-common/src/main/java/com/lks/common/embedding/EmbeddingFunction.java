@@ -0,0 +1,65 @@
+package com.lks.common.embedding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 文本向量化函数
+ *
+ * 将任意文本映射为固定维度的向量，用于相似度检索（语义缓存、本地检索等）。
+ * 实现可以是本地的哈希向量（离线、零依赖），也可以包装远程 EmbeddingModel。
+ */
+public interface EmbeddingFunction {
+
+    /**
+     * 计算文本向量
+     *
+     * @param text 输入文本
+     * @return 归一化后的向量（L2 范数为 1，便于直接用点积计算余弦相似度）
+     */
+    float[] embed(String text);
+
+    /**
+     * @return 向量维度
+     */
+    int dimensions();
+
+    /**
+     * 批量计算文本向量，远程实现可以合并为一次请求
+     *
+     * @param texts 输入文本
+     * @return 与输入一一对应的归一化向量
+     */
+    default List<float[]> embedAll(List<String> texts) {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            vectors.add(embed(text));
+        }
+        return vectors;
+    }
+
+    /**
+     * @return 向量空间的标识，不同标识的向量不可混用（持久化的索引据此判断是否需要重建）
+     */
+    default String name() {
+        return getClass().getSimpleName() + "-" + dimensions();
+    }
+
+    /**
+     * 计算两个归一化向量的余弦相似度
+     *
+     * @param a 向量 a
+     * @param b 向量 b
+     * @return 余弦相似度，范围 [-1, 1]
+     */
+    static double cosine(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Vector dimensions mismatch: " + a.length + " vs " + b.length);
+        }
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+}
@@ -0,0 +1,101 @@
+package com.lks.common.embedding;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * 本地哈希向量化函数（Feature Hashing）
+ *
+ * 将文本切分为字符 n-gram（兼顾中文无空格分词的场景），
+ * 通过哈希映射到固定维度并做带符号累加，最后进行 L2 归一化。
+ * 不依赖任何远程模型，适用于语义缓存的近似匹配以及离线测试。
+ */
+public class HashingEmbeddingFunction implements EmbeddingFunction {
+
+    /** 默认维度 */
+    public static final int DEFAULT_DIMENSIONS = 512;
+
+    /** 默认 n-gram 长度 */
+    public static final int DEFAULT_NGRAM = 2;
+
+    private final int dimensions;
+    private final int ngram;
+
+    public HashingEmbeddingFunction() {
+        this(DEFAULT_DIMENSIONS, DEFAULT_NGRAM);
+    }
+
+    public HashingEmbeddingFunction(int dimensions, int ngram) {
+        if (dimensions <= 0 || ngram <= 0) {
+            throw new IllegalArgumentException("dimensions and ngram must be positive");
+        }
+        this.dimensions = dimensions;
+        this.ngram = ngram;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        if (text == null || text.isBlank()) {
+            return vector;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").trim();
+        int[] codePoints = normalized.codePoints().toArray();
+        int n = Math.min(ngram, codePoints.length);
+        for (int i = 0; i + n <= codePoints.length; i++) {
+            int hash = murmurMix(new String(codePoints, i, n).getBytes(StandardCharsets.UTF_8));
+            int index = Math.floorMod(hash, dimensions);
+            // 用哈希的另一位决定符号，降低碰撞带来的偏差
+            vector[index] += ((hash >>> 31) == 0) ? 1f : -1f;
+        }
+        normalize(vector);
+        return vector;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public String name() {
+        return "hashing-" + dimensions + "-" + ngram;
+    }
+
+    private static void normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            return;
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= inv;
+        }
+    }
+
+    /**
+     * 简化版 MurmurHash3 32 位混合，保证分布足够均匀
+     */
+    private static int murmurMix(byte[] data) {
+        int h = 0x9747b28c;
+        for (byte b : data) {
+            int k = b & 0xff;
+            k *= 0xcc9e2d51;
+            k = Integer.rotateLeft(k, 15);
+            k *= 0x1b873593;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        h ^= data.length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
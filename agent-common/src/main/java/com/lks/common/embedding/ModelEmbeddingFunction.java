@@ -0,0 +1,126 @@
+package com.lks.common.embedding;
+
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 包装 Spring AI {@link EmbeddingModel} 的向量化函数
+ *
+ * 批量计算时按 batchSize 分批请求（DashScope 等服务限制单次请求的文本数），返回的向量统一做 L2 归一化。
+ * 维度需要显式配置：索引在启动时按维度建立文件，不为此在启动时调用一次远程模型。
+ */
+public class ModelEmbeddingFunction implements EmbeddingFunction {
+
+    private final EmbeddingModel model;
+    private final String modelName;
+    private final int dimensions;
+    private final int batchSize;
+
+    private ModelEmbeddingFunction(Builder builder) {
+        this.model = builder.model;
+        this.modelName = builder.modelName;
+        this.dimensions = builder.dimensions;
+        this.batchSize = builder.batchSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return checked(model.embed(text));
+    }
+
+    @Override
+    public List<float[]> embedAll(List<String> texts) {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (int from = 0; from < texts.size(); from += batchSize) {
+            List<String> batch = texts.subList(from, Math.min(from + batchSize, texts.size()));
+            List<float[]> embedded = model.embed(batch);
+            if (embedded.size() != batch.size()) {
+                throw new IllegalStateException("Embedding model returned " + embedded.size() + " vectors for "
+                        + batch.size() + " texts");
+            }
+            for (float[] vector : embedded) {
+                vectors.add(checked(vector));
+            }
+        }
+        return vectors;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public String name() {
+        return "model-" + modelName + "-" + dimensions;
+    }
+
+    private float[] checked(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalStateException("Embedding model " + modelName + " returned " + vector.length
+                    + " dimensions, expected " + dimensions);
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0 && Math.abs(norm - 1) > 1e-4) {
+            float inv = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= inv;
+            }
+        }
+        return vector;
+    }
+
+    public static class Builder {
+        private EmbeddingModel model;
+        private String modelName = "default";
+        private int dimensions;
+        private int batchSize = 10;
+
+        public Builder model(EmbeddingModel model) {
+            this.model = model;
+            return this;
+        }
+
+        /**
+         * 模型名，只用于区分向量空间（换模型后持久化的索引会重建）
+         */
+        public Builder modelName(String modelName) {
+            this.modelName = modelName;
+            return this;
+        }
+
+        /**
+         * 模型输出的向量维度
+         */
+        public Builder dimensions(int dimensions) {
+            this.dimensions = dimensions;
+            return this;
+        }
+
+        /**
+         * 单次请求的文本数上限
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public ModelEmbeddingFunction build() {
+            Objects.requireNonNull(model, "model cannot be null");
+            if (dimensions <= 0 || batchSize <= 0) {
+                throw new IllegalArgumentException("dimensions and batchSize must be positive");
+            }
+            return new ModelEmbeddingFunction(this);
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package com.lks.common.mcp;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.modelcontextprotocol.client.McpAsyncClient;
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.transport.HttpClientSseClientTransport;
+import io.modelcontextprotocol.client.transport.HttpClientStreamableHttpTransport;
+import io.modelcontextprotocol.json.McpJsonMapper;
+import io.modelcontextprotocol.spec.McpClientTransport;
+import io.modelcontextprotocol.spec.McpError;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.tool.ToolCallback;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 远程 MCP 服务器（Streamable HTTP 或 SSE）
+ *
+ * 与 Spring AI 的同步 HTTP 客户端相比：
+ * <ul>
+ *     <li>传输：所有端点共用一个 HTTP/2 客户端（{@link McpHttpServers#newHttpClient(Duration)}），
+ *     同一主机的并发请求复用连接，响应在虚拟线程上处理，调用在等待期间不占用平台线程</li>
+ *     <li>超时：连接超时在共享客户端上设置，读取超时（等待单次请求的响应）在这里单独设置</li>
+ *     <li>并发：同一端点同时进行中的调用数不超过 {@link Builder#maxConcurrency(int)}，其余等待，超过读取超时仍未轮到时失败</li>
+ *     <li>对冲：幂等的工具（如搜索）在 {@link Builder#hedgeDelay(Duration)} 内未返回时再发一次相同请求，取先返回的结果、
+ *     放弃另一个；对冲请求只在端点尚有空闲名额时发出，不会挤占其他调用</li>
+ * </ul>
+ * 被放弃的请求（对冲落败、调用方线程被中断）立即归还名额；MCP SDK 不会中止已发出的 HTTP 请求，它在服务器端仍会执行完，
+ * 因此端点实际承受的并发可能短暂超过上限。
+ */
+public class McpHttpServer implements McpToolClient, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(McpHttpServer.class);
+
+    /**
+     * 传输协议
+     */
+    public enum Transport {
+        /** Streamable HTTP（单个端点收发，MCP 2025-03-26 起的标准传输） */
+        STREAMABLE,
+        /** HTTP + SSE（旧版传输，GET 建立事件流、POST 发送消息） */
+        SSE
+    }
+
+    private final String name;
+    private final String url;
+    private final String endpoint;
+    private final Transport transport;
+    private final Map<String, String> headers;
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+    private final Duration initializationTimeout;
+    private final Semaphore permits;
+    private final Set<String> hedgedTools;
+    private final Duration hedgeDelay;
+    private final McpJsonMapper jsonMapper;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private volatile McpAsyncClient client;
+    private volatile List<McpSchema.Tool> tools = List.of();
+
+    protected McpHttpServer(Builder builder) {
+        this.name = builder.name;
+        this.url = builder.url;
+        this.endpoint = builder.endpoint;
+        this.transport = builder.transport;
+        this.headers = Map.copyOf(builder.headers);
+        this.httpClient = builder.httpClient;
+        this.readTimeout = builder.readTimeout;
+        this.initializationTimeout = builder.initializationTimeout;
+        this.permits = new Semaphore(builder.maxConcurrency, true);
+        this.hedgedTools = Set.copyOf(builder.hedgedTools);
+        this.hedgeDelay = builder.hedgeDelay;
+        this.jsonMapper = builder.jsonMapper != null ? builder.jsonMapper : McpJsonMapper.getDefault();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 建立会话并拉取工具列表
+     */
+    public McpHttpServer start() {
+        long startedAt = System.nanoTime();
+        McpAsyncClient asyncClient = McpClient.async(createTransport())
+                .requestTimeout(readTimeout)
+                .initializationTimeout(initializationTimeout)
+                .build();
+        try {
+            asyncClient.initialize().block();
+            this.tools = List.copyOf(asyncClient.listTools().block().tools());
+        }
+        catch (RuntimeException e) {
+            asyncClient.close();
+            throw new IllegalStateException("MCP server '" + name + "' at " + url + " could not be initialized", e);
+        }
+        this.client = asyncClient;
+        log.info("[{}] MCP HTTP server connected ({}): {} tools in {} ms", name, transport, tools.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        return this;
+    }
+
+    /**
+     * @return 服务器全部工具的回调
+     */
+    public List<ToolCallback> getToolCallbacks() {
+        List<ToolCallback> callbacks = new ArrayList<>(tools.size());
+        for (McpSchema.Tool tool : tools) {
+            callbacks.add(new PooledMcpToolCallback(this, tool));
+        }
+        return callbacks;
+    }
+
+    @Override
+    public List<McpSchema.Tool> getTools() {
+        return tools;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 调用工具：等待并发名额，幂等工具超过对冲延迟未返回时补发一次，在调用方线程上等待结果
+     */
+    @Override
+    public McpSchema.CallToolResult callTool(McpSchema.CallToolRequest request) {
+        McpAsyncClient asyncClient = client;
+        if (asyncClient == null) {
+            throw new IllegalStateException("MCP server '" + name + "' is not started");
+        }
+        acquire();
+        calls.increment();
+        Mono<McpSchema.CallToolResult> call = attempt(asyncClient, request);
+        if (hedgeDelay.isPositive() && hedgedTools.contains(request.name())) {
+            Mono<McpSchema.CallToolResult> hedge = Mono.delay(hedgeDelay)
+                    .then(Mono.defer(() -> {
+                        if (!permits.tryAcquire()) {
+                            return Mono.empty();
+                        }
+                        hedges.increment();
+                        return attempt(asyncClient, request).doOnNext(result -> hedgeWins.increment());
+                    }));
+            call = Mono.firstWithValue(call, hedge)
+                    // 两次请求都失败时 firstWithValue 以 NoSuchElementException 汇总，还原为原始异常
+                    .onErrorMap(NoSuchElementException.class, McpHttpServer::firstSuppressed);
+        }
+        try {
+            return call.block();
+        }
+        catch (McpError e) {
+            failures.increment();
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failures.increment();
+            throw Exceptions.unwrap(e) instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(inFlight.get(), waiting.get(), calls.sum(), failures.sum(), rejected.sum(), hedges.sum(), hedgeWins.sum());
+    }
+
+    /**
+     * 注册指标：agent.mcp.http.in.flight / waiting（进行中与等待名额的调用数）、
+     * agent.mcp.http.calls（outcome 标签：total / failed / rejected）、agent.mcp.http.hedges（result 标签：sent / won）
+     */
+    public McpHttpServer bindTo(MeterRegistry registry) {
+        Gauge.builder("agent.mcp.http.in.flight", inFlight, AtomicInteger::get)
+                .tag("server", name).description("MCP HTTP requests in flight, hedges included")
+                .register(registry);
+        Gauge.builder("agent.mcp.http.waiting", waiting, AtomicInteger::get)
+                .tag("server", name).description("Tool calls waiting for a per-endpoint slot")
+                .register(registry);
+        registerCounter(registry, "agent.mcp.http.calls", "outcome", "total", calls);
+        registerCounter(registry, "agent.mcp.http.calls", "outcome", "failed", failures);
+        registerCounter(registry, "agent.mcp.http.calls", "outcome", "rejected", rejected);
+        registerCounter(registry, "agent.mcp.http.hedges", "result", "sent", hedges);
+        registerCounter(registry, "agent.mcp.http.hedges", "result", "won", hedgeWins);
+        return this;
+    }
+
+    @Override
+    public void close() {
+        McpAsyncClient asyncClient = client;
+        client = null;
+        if (asyncClient == null) {
+            return;
+        }
+        try {
+            asyncClient.closeGracefully().block(Duration.ofSeconds(5));
+        }
+        catch (RuntimeException e) {
+            asyncClient.close();
+        }
+    }
+
+    // ==================== 内部实现 ====================
+
+    private McpClientTransport createTransport() {
+        HttpClient.Builder clientBuilder = new SharedHttpClientBuilder(httpClient);
+        return switch (transport) {
+            case STREAMABLE -> HttpClientStreamableHttpTransport.builder(url)
+                    .clientBuilder(clientBuilder)
+                    .endpoint(endpoint != null ? endpoint : "/mcp")
+                    .customizeRequest(this::customizeRequest)
+                    .jsonMapper(jsonMapper)
+                    .build();
+            case SSE -> HttpClientSseClientTransport.builder(url)
+                    .clientBuilder(clientBuilder)
+                    .sseEndpoint(endpoint != null ? endpoint : "/sse")
+                    .customizeRequest(this::customizeRequest)
+                    .jsonMapper(jsonMapper)
+                    .build();
+        };
+    }
+
+    /**
+     * 请求头与读取超时（HttpRequest 的超时只限制等待响应头的时间，SSE 事件流建立后不受影响）
+     */
+    private void customizeRequest(HttpRequest.Builder request) {
+        headers.forEach(request::header);
+        request.timeout(readTimeout);
+    }
+
+    /**
+     * 单次请求；名额由调用方预先取得，请求结束（含被取消）时归还
+     */
+    private Mono<McpSchema.CallToolResult> attempt(McpAsyncClient asyncClient, McpSchema.CallToolRequest request) {
+        return Mono.defer(() -> {
+                    inFlight.incrementAndGet();
+                    return asyncClient.callTool(request);
+                })
+                .doFinally(signal -> {
+                    inFlight.decrementAndGet();
+                    permits.release();
+                });
+    }
+
+    private void acquire() {
+        waiting.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(readTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new IllegalStateException("MCP server '" + name + "' is saturated: no slot within " + readTimeout);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for MCP server '" + name + "'", e);
+        }
+        finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private static Throwable firstSuppressed(NoSuchElementException e) {
+        Throwable[] suppressed = e.getSuppressed();
+        return suppressed.length > 0 ? suppressed[0] : e;
+    }
+
+    private void registerCounter(MeterRegistry registry, String meter, String key, String value, LongAdder counter) {
+        FunctionCounter.builder(meter, counter, LongAdder::sum)
+                .tag("server", name).tag(key, value)
+                .register(registry);
+    }
+
+    /**
+     * HTTP 服务器统计
+     *
+     * @param inFlight  进行中的请求数（含对冲请求）
+     * @param waiting   等待并发名额的调用数
+     * @param calls     累计调用数
+     * @param failures  累计失败数
+     * @param rejected  累计因等不到名额而失败的调用数
+     * @param hedges    累计发出的对冲请求数
+     * @param hedgeWins 对冲请求先于原请求返回的次数
+     */
+    public record Stats(int inFlight, int waiting, long calls, long failures, long rejected, long hedges, long hedgeWins) {
+    }
+
+    public static class Builder {
+        private String name;
+        private String url;
+        private String endpoint;
+        private Transport transport = Transport.STREAMABLE;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private HttpClient httpClient;
+        private Duration readTimeout = Duration.ofSeconds(60);
+        private Duration initializationTimeout = Duration.ofSeconds(30);
+        private int maxConcurrency = 16;
+        private Set<String> hedgedTools = Set.of();
+        private Duration hedgeDelay = Duration.ZERO;
+        private McpJsonMapper jsonMapper;
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * 服务器基础地址，如 https://mcp.example.com
+         */
+        public Builder url(String url) {
+            this.url = url;
+            return this;
+        }
+
+        /**
+         * 端点路径，默认 Streamable HTTP 为 /mcp、SSE 为 /sse
+         */
+        public Builder endpoint(String endpoint) {
+            this.endpoint = endpoint;
+            return this;
+        }
+
+        public Builder transport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * 每个请求附加的请求头（如 Authorization）
+         */
+        public Builder headers(Map<String, String> headers) {
+            this.headers.putAll(headers);
+            return this;
+        }
+
+        /**
+         * 共享的 HTTP 客户端，见 {@link McpHttpServers#newHttpClient(Duration)}
+         */
+        public Builder httpClient(HttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        /**
+         * 读取超时：单次请求等待响应的最长时间，也是等待并发名额的最长时间
+         */
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        public Builder initializationTimeout(Duration initializationTimeout) {
+            this.initializationTimeout = initializationTimeout;
+            return this;
+        }
+
+        /**
+         * 同一端点同时进行中的请求数上限（含对冲请求）
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * 可以对冲的工具：只应包含幂等、无副作用的工具（搜索、读取），下载等有副作用的工具不要列入
+         */
+        public Builder hedgedTools(Set<String> hedgedTools) {
+            this.hedgedTools = hedgedTools;
+            return this;
+        }
+
+        /**
+         * 原请求超过该时长未返回时发出对冲请求，建议取该端点调用耗时的 P95 左右；为 0 时不对冲
+         */
+        public Builder hedgeDelay(Duration hedgeDelay) {
+            this.hedgeDelay = hedgeDelay;
+            return this;
+        }
+
+        public Builder jsonMapper(McpJsonMapper jsonMapper) {
+            this.jsonMapper = jsonMapper;
+            return this;
+        }
+
+        public McpHttpServer build() {
+            Objects.requireNonNull(name, "name cannot be null");
+            Objects.requireNonNull(url, "url cannot be null");
+            Objects.requireNonNull(httpClient, "httpClient cannot be null");
+            Objects.requireNonNull(transport, "transport cannot be null");
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency must be positive");
+            }
+            if (readTimeout == null || !readTimeout.isPositive()) {
+                throw new IllegalArgumentException("readTimeout must be positive");
+            }
+            if (hedgeDelay == null || hedgeDelay.isNegative()) {
+                throw new IllegalArgumentException("hedgeDelay cannot be negative");
+            }
+            return new McpHttpServer(this);
+        }
+    }
+}
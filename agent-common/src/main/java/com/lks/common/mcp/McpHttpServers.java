@@ -0,0 +1,66 @@
+package com.lks.common.mcp;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+/**
+ * 一组远程 MCP 服务器及它们共用的 HTTP 客户端，统一提供工具回调与关闭
+ */
+public class McpHttpServers implements AutoCloseable {
+
+    private final HttpClient httpClient;
+    private final List<McpHttpServer> servers;
+
+    public McpHttpServers(HttpClient httpClient, List<McpHttpServer> servers) {
+        this.httpClient = httpClient;
+        this.servers = List.copyOf(servers);
+    }
+
+    /**
+     * 创建共享的 HTTP 客户端：优先 HTTP/2（同一主机的并发请求多路复用一条连接，服务器不支持时自动回退 HTTP/1.1 连接池），
+     * 响应在虚拟线程上处理
+     *
+     * @param connectTimeout 建立连接的超时时间
+     */
+    public static HttpClient newHttpClient(Duration connectTimeout) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    /**
+     * @return 全部服务器的工具回调，按服务器配置顺序排列
+     */
+    public List<ToolCallback> getToolCallbacks() {
+        List<ToolCallback> toolCallbacks = new ArrayList<>();
+        for (McpHttpServer server : servers) {
+            toolCallbacks.addAll(server.getToolCallbacks());
+        }
+        return toolCallbacks;
+    }
+
+    public List<McpHttpServer> getServers() {
+        return servers;
+    }
+
+    public McpHttpServers bindTo(MeterRegistry registry) {
+        servers.forEach(server -> server.bindTo(registry));
+        return this;
+    }
+
+    @Override
+    public void close() {
+        servers.forEach(McpHttpServer::close);
+        // close() 会等待进行中的请求（含已被对冲取消、仍在服务器端执行的请求）结束，关闭时不再等待
+        httpClient.shutdownNow();
+    }
+}
@@ -0,0 +1,48 @@
+package com.lks.common.mcp;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.client.transport.ServerParameters;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MCP 服务器配置解析
+ *
+ * 读取与 Spring AI stdio 客户端相同格式的 {@code mcp-servers-config.json}：
+ * <pre>
+ * { "mcpServers": { "name": { "command": "...", "args": [...], "env": {...} } } }
+ * </pre>
+ */
+public final class McpServerConfigs {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private McpServerConfigs() {
+    }
+
+    /**
+     * @return 服务器名称 → 启动参数，保持配置文件中的顺序
+     */
+    public static Map<String, ServerParameters> load(InputStream input) throws IOException {
+        JsonNode servers = MAPPER.readTree(input).path("mcpServers");
+        Map<String, ServerParameters> result = new LinkedHashMap<>();
+        servers.properties().forEach(entry -> {
+            JsonNode server = entry.getValue();
+            List<String> args = new ArrayList<>();
+            server.path("args").forEach(arg -> args.add(arg.asText()));
+            Map<String, String> env = new LinkedHashMap<>();
+            server.path("env").properties().forEach(e -> env.put(e.getKey(), e.getValue().asText()));
+            result.put(entry.getKey(), ServerParameters.builder(server.path("command").asText())
+                    .args(args)
+                    .env(env)
+                    .build());
+        });
+        return result;
+    }
+}
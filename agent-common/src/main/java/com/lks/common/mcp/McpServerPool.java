@@ -0,0 +1,371 @@
+package com.lks.common.mcp;
+
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import io.modelcontextprotocol.json.McpJsonMapper;
+import io.modelcontextprotocol.spec.McpError;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MCP stdio 服务器进程池
+ *
+ * 单个 stdio 进程只有一条管道，并行子代理的工具调用会在上面排队；
+ * 进程池为同一个服务器启动多个实例：
+ * <ul>
+ *     <li>预热：{@link #start()} 时并行启动并初始化全部实例，首次调用无需等待进程启动</li>
+ *     <li>调度：每次调用分派到进行中请求数最少的健康实例，单个实例上的请求经
+ *     {@link MultiplexedStdioClientTransport} 并发复用同一条管道</li>
+ *     <li>健康检查：定期 ping 空闲实例，失败或调用出现传输异常时在后台重启该实例</li>
+ * </ul>
+ * 工具列表取自首个可用实例，所有实例视为同构。
+ */
+public class McpServerPool implements McpToolClient, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(McpServerPool.class);
+
+    private final String name;
+    private final ServerParameters parameters;
+    private final Duration requestTimeout;
+    private final Duration initializationTimeout;
+    private final Duration healthCheckInterval;
+    private final McpJsonMapper jsonMapper;
+    private final List<Instance> instances;
+    private final ScheduledExecutorService healthChecker;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder restarts = new LongAdder();
+
+    private volatile List<McpSchema.Tool> tools = List.of();
+    private volatile boolean closed;
+
+    protected McpServerPool(Builder builder) {
+        this.name = builder.name;
+        this.parameters = builder.parameters;
+        this.requestTimeout = builder.requestTimeout;
+        this.initializationTimeout = builder.initializationTimeout;
+        this.healthCheckInterval = builder.healthCheckInterval;
+        this.jsonMapper = builder.jsonMapper != null ? builder.jsonMapper : McpJsonMapper.getDefault();
+        this.instances = new ArrayList<>(builder.size);
+        for (int i = 0; i < builder.size; i++) {
+            instances.add(new Instance(i));
+        }
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mcp-pool-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 预热：并行启动全部实例并拉取工具列表
+     *
+     * 部分实例启动失败时由健康检查继续重试；全部失败时抛出异常。
+     */
+    public McpServerPool start() {
+        long startedAt = System.nanoTime();
+        try (ExecutorService starter = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Instance instance : instances) {
+                starter.execute(() -> connect(instance));
+            }
+        }
+        Instance ready = instances.stream().filter(instance -> instance.healthy).findFirst().orElse(null);
+        if (ready == null) {
+            close();
+            throw new IllegalStateException("No MCP server instance of '" + name + "' could be started");
+        }
+        this.tools = List.copyOf(ready.client.listTools().tools());
+        log.info("[{}] MCP pool warmed: {}/{} instances, {} tools in {} ms", name, healthyCount(), instances.size(),
+                tools.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+
+        long interval = healthCheckInterval.toMillis();
+        if (interval > 0) {
+            healthChecker.scheduleWithFixedDelay(this::checkAll, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * @return 池中全部工具的回调，调用时分派到最空闲的实例
+     */
+    public List<ToolCallback> getToolCallbacks() {
+        List<ToolCallback> callbacks = new ArrayList<>(tools.size());
+        for (McpSchema.Tool tool : tools) {
+            callbacks.add(new PooledMcpToolCallback(this, tool));
+        }
+        return callbacks;
+    }
+
+    @Override
+    public List<McpSchema.Tool> getTools() {
+        return tools;
+    }
+
+    /**
+     * 调用工具
+     *
+     * 服务器返回的协议错误原样抛出；其他异常（超时、进程退出等）视为实例可能失效，触发后台检查。
+     */
+    @Override
+    public McpSchema.CallToolResult callTool(McpSchema.CallToolRequest request) {
+        Instance instance = acquire();
+        calls.increment();
+        try {
+            return instance.client.callTool(request);
+        }
+        catch (McpError e) {
+            failures.increment();
+            throw e;
+        }
+        catch (RuntimeException e) {
+            failures.increment();
+            healthChecker.execute(() -> check(instance));
+            throw e;
+        }
+        finally {
+            instance.inFlight.decrementAndGet();
+        }
+    }
+
+    public Stats stats() {
+        int inFlight = 0;
+        for (Instance instance : instances) {
+            inFlight += instance.inFlight.get();
+        }
+        return new Stats(instances.size(), healthyCount(), inFlight, calls.sum(), failures.sum(), restarts.sum());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        healthChecker.shutdownNow();
+        for (Instance instance : instances) {
+            instance.healthy = false;
+            closeQuietly(instance.client);
+        }
+    }
+
+    // ==================== 内部实现 ====================
+
+    /**
+     * 选择进行中请求数最少的健康实例；从轮转位置开始扫描，负载相同时均匀分散
+     */
+    private Instance acquire() {
+        int size = instances.size();
+        int start = Math.floorMod(cursor.getAndIncrement(), size);
+        Instance best = null;
+        for (int i = 0; i < size; i++) {
+            Instance candidate = instances.get((start + i) % size);
+            if (candidate.healthy && (best == null || candidate.inFlight.get() < best.inFlight.get())) {
+                best = candidate;
+            }
+        }
+        if (best == null) {
+            throw new IllegalStateException("No healthy MCP server instance of '" + name + "'");
+        }
+        best.inFlight.incrementAndGet();
+        return best;
+    }
+
+    private void connect(Instance instance) {
+        McpSyncClient client = null;
+        try {
+            client = McpClient.sync(new MultiplexedStdioClientTransport(parameters, jsonMapper))
+                    .requestTimeout(requestTimeout)
+                    .initializationTimeout(initializationTimeout)
+                    .build();
+            client.initialize();
+            instance.client = client;
+            instance.healthy = true;
+        }
+        catch (RuntimeException e) {
+            closeQuietly(client);
+            log.warn("[{}#{}] failed to start MCP server: {}", name, instance.index, e.getMessage());
+        }
+    }
+
+    private void checkAll() {
+        for (Instance instance : instances) {
+            check(instance);
+        }
+    }
+
+    /**
+     * 检查单个实例：不健康的直接重启；健康且空闲的发送 ping，忙碌的实例视为存活
+     */
+    private void check(Instance instance) {
+        if (closed) {
+            return;
+        }
+        if (instance.healthy) {
+            if (instance.inFlight.get() > 0) {
+                return;
+            }
+            try {
+                instance.client.ping();
+                return;
+            }
+            catch (RuntimeException e) {
+                if (closed) {
+                    return;
+                }
+                log.warn("[{}#{}] MCP server health check failed: {}", name, instance.index, e.getMessage());
+            }
+        }
+        restart(instance);
+    }
+
+    private void restart(Instance instance) {
+        if (closed || !instance.restarting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            instance.healthy = false;
+            closeQuietly(instance.client);
+            restarts.increment();
+            connect(instance);
+            if (instance.healthy) {
+                log.info("[{}#{}] MCP server restarted", name, instance.index);
+            }
+        }
+        finally {
+            instance.restarting.set(false);
+        }
+    }
+
+    private int healthyCount() {
+        int healthy = 0;
+        for (Instance instance : instances) {
+            if (instance.healthy) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    private static void closeQuietly(McpSyncClient client) {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.closeGracefully();
+        }
+        catch (RuntimeException e) {
+            client.close();
+        }
+    }
+
+    private static final class Instance {
+        private final int index;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean restarting = new AtomicBoolean();
+        private volatile McpSyncClient client;
+        private volatile boolean healthy;
+
+        private Instance(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * 进程池统计
+     *
+     * @param instances 实例总数
+     * @param healthy   健康实例数
+     * @param inFlight  进行中的调用数
+     * @param calls     累计调用数
+     * @param failures  累计失败数
+     * @param restarts  累计重启次数
+     */
+    public record Stats(int instances, int healthy, int inFlight, long calls, long failures, long restarts) {
+    }
+
+    public static class Builder {
+        private String name;
+        private ServerParameters parameters;
+        private int size = 2;
+        private Duration requestTimeout = Duration.ofSeconds(60);
+        private Duration initializationTimeout = Duration.ofSeconds(60);
+        private Duration healthCheckInterval = Duration.ofSeconds(30);
+        private McpJsonMapper jsonMapper;
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder parameters(ServerParameters parameters) {
+            this.parameters = parameters;
+            return this;
+        }
+
+        /**
+         * 同一服务器启动的实例数
+         */
+        public Builder size(int size) {
+            this.size = size;
+            return this;
+        }
+
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /**
+         * 单个实例启动并完成初始化握手的超时时间（uv / npx 首次拉取依赖可能较慢）
+         */
+        public Builder initializationTimeout(Duration initializationTimeout) {
+            this.initializationTimeout = initializationTimeout;
+            return this;
+        }
+
+        /**
+         * 健康检查间隔，为 0 时只在调用异常后检查
+         */
+        public Builder healthCheckInterval(Duration healthCheckInterval) {
+            this.healthCheckInterval = healthCheckInterval;
+            return this;
+        }
+
+        public Builder jsonMapper(McpJsonMapper jsonMapper) {
+            this.jsonMapper = jsonMapper;
+            return this;
+        }
+
+        public McpServerPool build() {
+            Objects.requireNonNull(name, "name cannot be null");
+            Objects.requireNonNull(parameters, "parameters cannot be null");
+            if (size < 1) {
+                throw new IllegalArgumentException("size must be positive");
+            }
+            return new McpServerPool(this);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.lks.common.mcp;
+
+import org.springframework.ai.tool.ToolCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一组 MCP 服务器进程池（每个服务器一个），统一提供工具回调与关闭
+ */
+public class McpServerPools implements AutoCloseable {
+
+    private final List<McpServerPool> pools;
+
+    public McpServerPools(List<McpServerPool> pools) {
+        this.pools = List.copyOf(pools);
+    }
+
+    /**
+     * @return 全部服务器的工具回调，按服务器配置顺序排列
+     */
+    public List<ToolCallback> getToolCallbacks() {
+        List<ToolCallback> toolCallbacks = new ArrayList<>();
+        for (McpServerPool pool : pools) {
+            toolCallbacks.addAll(pool.getToolCallbacks());
+        }
+        return toolCallbacks;
+    }
+
+    public List<McpServerPool> getPools() {
+        return pools;
+    }
+
+    @Override
+    public void close() {
+        pools.forEach(McpServerPool::close);
+    }
+}
@@ -0,0 +1,20 @@
+package com.lks.common.mcp;
+
+import io.modelcontextprotocol.spec.McpSchema;
+
+import java.util.List;
+
+/**
+ * 可同步调用工具的 MCP 服务器（stdio 进程池或 HTTP 端点），供 {@link PooledMcpToolCallback} 分派
+ */
+public interface McpToolClient {
+
+    String getName();
+
+    List<McpSchema.Tool> getTools();
+
+    /**
+     * 调用工具，服务器返回的协议错误以 {@link io.modelcontextprotocol.spec.McpError} 抛出
+     */
+    McpSchema.CallToolResult callTool(McpSchema.CallToolRequest request);
+}
@@ -0,0 +1,30 @@
+package com.lks.common.mcp;
+
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import io.modelcontextprotocol.client.transport.StdioClientTransport;
+import io.modelcontextprotocol.json.McpJsonMapper;
+import io.modelcontextprotocol.spec.McpSchema;
+import reactor.core.publisher.Mono;
+
+/**
+ * 支持并发请求的 stdio 传输
+ *
+ * SDK 的 {@link StdioClientTransport} 用非串行化的 Sink 写出消息，
+ * 多个线程同时调用工具时会直接失败（"Failed to enqueue message"）。
+ * 这里只把入队这一步串行化，请求仍按 JSON-RPC id 在同一条管道上并发等待响应。
+ */
+public class MultiplexedStdioClientTransport extends StdioClientTransport {
+
+    private final Object sendLock = new Object();
+
+    public MultiplexedStdioClientTransport(ServerParameters parameters, McpJsonMapper jsonMapper) {
+        super(parameters, jsonMapper);
+    }
+
+    @Override
+    public Mono<Void> sendMessage(McpSchema.JSONRPCMessage message) {
+        synchronized (sendLock) {
+            return super.sendMessage(message);
+        }
+    }
+}
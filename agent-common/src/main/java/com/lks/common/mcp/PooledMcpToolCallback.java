@@ -0,0 +1,60 @@
+package com.lks.common.mcp;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.mcp.McpToolUtils;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.util.StringUtils;
+
+import java.util.Map;
+
+/**
+ * 经 {@link McpServerPool} 或 {@link McpHttpServer} 分派的 MCP 工具回调
+ *
+ * 参数解析与结果序列化与 Spring AI 的 SyncMcpToolCallback 一致，工具名保持服务器原名。
+ */
+public class PooledMcpToolCallback implements ToolCallback {
+
+    private final McpToolClient client;
+    private final McpSchema.Tool tool;
+    private final ToolDefinition toolDefinition;
+
+    public PooledMcpToolCallback(McpToolClient client, McpSchema.Tool tool) {
+        this.client = client;
+        this.tool = tool;
+        this.toolDefinition = McpToolUtils.createToolDefinition(tool.name(), tool);
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return toolDefinition;
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        Map<String, Object> arguments = ModelOptionsUtils.jsonToMap(StringUtils.hasText(toolInput) ? toolInput : "{}");
+        McpSchema.CallToolResult result;
+        try {
+            result = client.callTool(McpSchema.CallToolRequest.builder()
+                    .name(tool.name())
+                    .arguments(arguments)
+                    .build());
+        }
+        catch (RuntimeException e) {
+            throw new ToolExecutionException(toolDefinition, e);
+        }
+        if (Boolean.TRUE.equals(result.isError())) {
+            throw new ToolExecutionException(toolDefinition,
+                    new IllegalStateException("Error calling tool: " + result.content()));
+        }
+        return ModelOptionsUtils.toJsonString(result.content());
+    }
+}
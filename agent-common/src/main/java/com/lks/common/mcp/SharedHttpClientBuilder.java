@@ -0,0 +1,81 @@
+package com.lks.common.mcp;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * 总是返回同一个 {@link HttpClient} 的构建器
+ *
+ * MCP SDK 的 HTTP 传输只接受 HttpClient.Builder，并在构建传输时自行 build；
+ * 交给它这个构建器，所有端点即共用一个客户端（连接池、HTTP/2 连接与选择器线程），
+ * 对客户端的配置以共享客户端为准，传输设置的参数被忽略。
+ */
+final class SharedHttpClientBuilder implements HttpClient.Builder {
+
+    private final HttpClient client;
+
+    SharedHttpClientBuilder(HttpClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public HttpClient.Builder cookieHandler(CookieHandler cookieHandler) {
+        return this;
+    }
+
+    @Override
+    public HttpClient.Builder connectTimeout(Duration duration) {
+        return this;
+    }
+
+    @Override
+    public HttpClient.Builder sslContext(SSLContext sslContext) {
+        return this;
+    }
+
+    @Override
+    public HttpClient.Builder sslParameters(SSLParameters sslParameters) {
+        return this;
+    }
+
+    @Override
+    public HttpClient.Builder executor(Executor executor) {
+        return this;
+    }
+
+    @Override
+    public HttpClient.Builder followRedirects(HttpClient.Redirect policy) {
+        return this;
+    }
+
+    @Override
+    public HttpClient.Builder version(HttpClient.Version version) {
+        return this;
+    }
+
+    @Override
+    public HttpClient.Builder priority(int priority) {
+        return this;
+    }
+
+    @Override
+    public HttpClient.Builder proxy(ProxySelector proxySelector) {
+        return this;
+    }
+
+    @Override
+    public HttpClient.Builder authenticator(Authenticator authenticator) {
+        return this;
+    }
+
+    @Override
+    public HttpClient build() {
+        return client;
+    }
+}
@@ -0,0 +1,207 @@
+package com.lks.common.metrics;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReactAgent 运行指标
+ *
+ * 一组可挂到代理上的埋点，全部以 Micrometer 计时器 / 分布摘要发布（带直方图，可由 Prometheus 计算分位数）：
+ * <ul>
+ *     <li>{@link #getLifecycleListener()}：图节点耗时 {@value #NODE_DURATION}</li>
+ *     <li>{@link #getModelInterceptor()}：模型首 token 延迟 {@value #MODEL_FIRST_TOKEN}、生成耗时 {@value #MODEL_DURATION}、
+ *     prompt / completion token 数 {@value #MODEL_TOKENS}</li>
+ *     <li>{@link #getToolInterceptor()}：工具调用耗时 {@value #TOOL_DURATION}、参数与结果字节数 {@value #TOOL_PAYLOAD}、
+ *     子代理运行耗时 {@value #SUBAGENT_DURATION}</li>
+ *     <li>{@link #getHook()}：单次代理运行耗时 {@value #RUN_DURATION}</li>
+ *     <li>{@link #instrument(BaseCheckpointSaver, String)}：检查点读写耗时 {@value #CHECKPOINT_DURATION}</li>
+ * </ul>
+ * 标签只使用代理名、节点名、工具名、模型名等有限取值，不含线程 ID 或内容；每个标签最多记录
+ * {@link Builder#maxTagValues(int)} 个不同取值，超出的归入 {@value #OTHER}，防止模型臆造的工具名撑爆时间序列。
+ * 拦截器与钩子不持有单次运行的状态，可在主代理与子代理之间共享。
+ */
+public class AgentMetrics {
+
+    public static final String NODE_DURATION = "agent.node.duration";
+    public static final String MODEL_FIRST_TOKEN = "agent.model.first.token";
+    public static final String MODEL_DURATION = "agent.model.duration";
+    public static final String MODEL_TOKENS = "agent.model.tokens";
+    public static final String TOOL_DURATION = "agent.tool.duration";
+    public static final String TOOL_PAYLOAD = "agent.tool.payload";
+    public static final String SUBAGENT_DURATION = "agent.subagent.duration";
+    public static final String RUN_DURATION = "agent.run.duration";
+    public static final String CHECKPOINT_DURATION = "agent.checkpoint.duration";
+
+    static final String OTHER = "other";
+    static final String UNKNOWN = "unknown";
+
+    private final MeterRegistry registry;
+    private final int maxTagValues;
+    private final Duration maxExpectedDuration;
+    private final Map<String, Set<String>> tagValues = new ConcurrentHashMap<>();
+
+    private final MetricsLifecycleListener lifecycleListener;
+    private final MetricsModelInterceptor modelInterceptor;
+    private final MetricsToolInterceptor toolInterceptor;
+    private final MetricsAgentHook hook;
+
+    protected AgentMetrics(Builder builder) {
+        this.registry = builder.registry;
+        this.maxTagValues = builder.maxTagValues;
+        this.maxExpectedDuration = builder.maxExpectedDuration;
+        this.lifecycleListener = new MetricsLifecycleListener(this);
+        this.modelInterceptor = new MetricsModelInterceptor(this);
+        this.toolInterceptor = new MetricsToolInterceptor(this);
+        this.hook = new MetricsAgentHook(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return 图节点耗时监听器，通过 {@code CompileConfig.builder().withLifecycleListener(...)} 挂到代理上
+     */
+    public MetricsLifecycleListener getLifecycleListener() {
+        return lifecycleListener;
+    }
+
+    /**
+     * @return 模型调用拦截器，应放在拦截器列表首位以覆盖其余拦截器的耗时
+     */
+    public MetricsModelInterceptor getModelInterceptor() {
+        return modelInterceptor;
+    }
+
+    /**
+     * @return 工具调用拦截器，应放在拦截器列表首位以覆盖重试等拦截器的耗时
+     */
+    public MetricsToolInterceptor getToolInterceptor() {
+        return toolInterceptor;
+    }
+
+    /**
+     * @return 代理运行耗时钩子
+     */
+    public MetricsAgentHook getHook() {
+        return hook;
+    }
+
+    /**
+     * @return 指标注册表，供自行发布指标的组件（如后台摘要钩子）共用
+     */
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * 为检查点保存器包装读写耗时统计
+     *
+     * @param saver 被包装的保存器
+     * @param name  保存器名称，作为 saver 标签
+     */
+    public BaseCheckpointSaver instrument(BaseCheckpointSaver saver, String name) {
+        return new MeteredCheckpointSaver(saver, this, name);
+    }
+
+    // ==================== 供埋点使用 ====================
+
+    void recordTimer(String name, String description, long nanos, String... tags) {
+        Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(maxExpectedDuration)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordSummary(String name, String description, String baseUnit, double amount, String... tags) {
+        DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit(baseUnit)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(amount);
+    }
+
+    /**
+     * 限制标签取值数量：已出现过的取值原样返回，新取值在未超过上限时登记，否则归入 other
+     */
+    String tag(String key, String value) {
+        if (value == null || value.isEmpty()) {
+            return UNKNOWN;
+        }
+        Set<String> values = tagValues.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+        if (values.contains(value)) {
+            return value;
+        }
+        synchronized (values) {
+            if (values.size() < maxTagValues) {
+                values.add(value);
+                return value;
+            }
+        }
+        return OTHER;
+    }
+
+    /**
+     * 从运行配置元数据中取当前代理名（主代理与子代理各自的名称）
+     */
+    String agentName(Map<String, Object> metadata) {
+        Object agent = metadata != null ? metadata.get(RunnableConfig.AGENT_NAME_KEY) : null;
+        return tag("agent", agent != null ? agent.toString() : null);
+    }
+
+    String agentName(RunnableConfig config) {
+        return agentName(config != null ? config.metadata().orElse(null) : null);
+    }
+
+    public static class Builder {
+        private MeterRegistry registry;
+        private int maxTagValues = 100;
+        private Duration maxExpectedDuration = Duration.ofMinutes(30);
+
+        public Builder registry(MeterRegistry registry) {
+            this.registry = registry;
+            return this;
+        }
+
+        /**
+         * 每个标签最多记录的不同取值数
+         */
+        public Builder maxTagValues(int maxTagValues) {
+            this.maxTagValues = maxTagValues;
+            return this;
+        }
+
+        /**
+         * 直方图覆盖的最大耗时，一次深度研究可能持续数十分钟
+         */
+        public Builder maxExpectedDuration(Duration maxExpectedDuration) {
+            this.maxExpectedDuration = maxExpectedDuration;
+            return this;
+        }
+
+        public AgentMetrics build() {
+            Objects.requireNonNull(registry, "registry cannot be null");
+            Objects.requireNonNull(maxExpectedDuration, "maxExpectedDuration cannot be null");
+            if (maxTagValues < 1) {
+                throw new IllegalArgumentException("maxTagValues must be positive");
+            }
+            return new AgentMetrics(this);
+        }
+    }
+}
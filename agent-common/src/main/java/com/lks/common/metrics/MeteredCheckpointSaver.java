@@ -0,0 +1,94 @@
+package com.lks.common.metrics;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Optional;
+
+/**
+ * 统计检查点读写耗时的保存器包装
+ *
+ * 记录 {@value AgentMetrics#CHECKPOINT_DURATION}，标签为 saver、operation（list / get / put / release）、outcome。
+ * 被包装的保存器有额外接口（如批量写入）时，可继承本类补充对应方法并用 {@link #record(String, long, String)} 计时。
+ */
+public class MeteredCheckpointSaver implements BaseCheckpointSaver {
+
+    private final BaseCheckpointSaver delegate;
+    private final AgentMetrics metrics;
+    private final String name;
+
+    public MeteredCheckpointSaver(BaseCheckpointSaver delegate, AgentMetrics metrics, String name) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.name = name;
+    }
+
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        long startedAt = System.nanoTime();
+        String outcome = "error";
+        try {
+            Collection<Checkpoint> result = delegate.list(config);
+            outcome = "success";
+            return result;
+        }
+        finally {
+            record("list", startedAt, outcome);
+        }
+    }
+
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        long startedAt = System.nanoTime();
+        String outcome = "error";
+        try {
+            Optional<Checkpoint> result = delegate.get(config);
+            outcome = "success";
+            return result;
+        }
+        finally {
+            record("get", startedAt, outcome);
+        }
+    }
+
+    @Override
+    public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        long startedAt = System.nanoTime();
+        String outcome = "error";
+        try {
+            RunnableConfig result = delegate.put(config, checkpoint);
+            outcome = "success";
+            return result;
+        }
+        finally {
+            record("put", startedAt, outcome);
+        }
+    }
+
+    @Override
+    public Tag release(RunnableConfig config) throws Exception {
+        long startedAt = System.nanoTime();
+        String outcome = "error";
+        try {
+            Tag result = delegate.release(config);
+            outcome = "success";
+            return result;
+        }
+        finally {
+            record("release", startedAt, outcome);
+        }
+    }
+
+    @Override
+    public Optional<Checkpoint> getLast(LinkedList<Checkpoint> checkpoints, RunnableConfig config) {
+        return delegate.getLast(checkpoints, config);
+    }
+
+    protected void record(String operation, long startedAt, String outcome) {
+        metrics.recordTimer(AgentMetrics.CHECKPOINT_DURATION, "Checkpoint saver latency", System.nanoTime() - startedAt,
+                "saver", name, "operation", operation, "outcome", outcome);
+    }
+}
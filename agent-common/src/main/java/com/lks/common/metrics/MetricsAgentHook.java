@@ -0,0 +1,45 @@
+package com.lks.common.metrics;
+
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.hook.AgentHook;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 代理运行耗时
+ *
+ * beforeAgent 把开始时间记录在本次运行的 {@link RunnableConfig#context()} 中，afterAgent 记录
+ * {@value AgentMetrics#RUN_DURATION}（agent 标签）。被人工审批中断的运行不会到达 afterAgent，不计入。
+ */
+public class MetricsAgentHook extends AgentHook {
+
+    private static final String START_KEY = "_metrics_run_started";
+
+    private final AgentMetrics metrics;
+
+    MetricsAgentHook(AgentMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> beforeAgent(OverAllState state, RunnableConfig config) {
+        config.context().put(START_KEY, System.nanoTime());
+        return CompletableFuture.completedFuture(Map.of());
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> afterAgent(OverAllState state, RunnableConfig config) {
+        if (config.context().remove(START_KEY) instanceof Long startedAt) {
+            metrics.recordTimer(AgentMetrics.RUN_DURATION, "Agent run time", System.nanoTime() - startedAt,
+                    "agent", metrics.agentName(config));
+        }
+        return CompletableFuture.completedFuture(Map.of());
+    }
+
+    @Override
+    public String getName() {
+        return "MetricsAgentHook";
+    }
+}
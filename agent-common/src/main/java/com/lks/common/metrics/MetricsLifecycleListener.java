@@ -0,0 +1,49 @@
+package com.lks.common.metrics;
+
+import com.alibaba.cloud.ai.graph.GraphLifecycleListener;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+
+import java.util.Map;
+
+/**
+ * 图节点耗时
+ *
+ * 节点开始时间记录在本次运行的 {@link RunnableConfig#context()} 中（并发的运行互不干扰，运行结束随配置释放），
+ * 节点结束或出错时记录 {@value AgentMetrics#NODE_DURATION}，标签为 agent、node、outcome。
+ * 模型节点的耗时包含流式输出与检查点保存。
+ *
+ * 框架自带的 GraphObservationLifecycleListener 在每个节点把整个状态转为字符串，且单实例只能跟踪一次运行，这里不使用。
+ */
+public class MetricsLifecycleListener implements GraphLifecycleListener {
+
+    private static final String START_KEY_PREFIX = "_metrics_node_started_";
+
+    private final AgentMetrics metrics;
+
+    MetricsLifecycleListener(AgentMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void before(String nodeId, Map<String, Object> state, RunnableConfig config, Long curTime) {
+        config.context().put(START_KEY_PREFIX + nodeId, System.nanoTime());
+    }
+
+    @Override
+    public void after(String nodeId, Map<String, Object> state, RunnableConfig config, Long curTime) {
+        record(nodeId, config, "success");
+    }
+
+    @Override
+    public void onError(String nodeId, Map<String, Object> state, Throwable ex, RunnableConfig config) {
+        record(nodeId, config, "error");
+    }
+
+    private void record(String nodeId, RunnableConfig config, String outcome) {
+        Object startedAt = config.context().remove(START_KEY_PREFIX + nodeId);
+        if (startedAt instanceof Long nanos) {
+            metrics.recordTimer(AgentMetrics.NODE_DURATION, "Time spent in a graph node", System.nanoTime() - nanos,
+                    "agent", metrics.agentName(config), "node", metrics.tag("node", nodeId), "outcome", outcome);
+        }
+    }
+}
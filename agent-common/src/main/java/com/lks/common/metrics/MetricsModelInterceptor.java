@@ -0,0 +1,105 @@
+package com.lks.common.metrics;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 模型调用耗时与 token 数
+ *
+ * 流式调用从订阅开始计时：收到首帧记录首 token 延迟，流结束记录生成耗时与最后一帧携带的用量；
+ * 同步调用只记录生成耗时与用量。标签为 agent、model、outcome（success / error / cancelled）。
+ * 请求选项未指定模型时（使用模型的默认选项），model 标签取响应元数据中的模型名。
+ */
+public class MetricsModelInterceptor extends ModelInterceptor {
+
+    private final AgentMetrics metrics;
+
+    MetricsModelInterceptor(AgentMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ModelResponse interceptModel(ModelRequest request, ModelCallHandler handler) {
+        String agent = metrics.agentName(request.getContext());
+        String requestedModel = request.getOptions() != null ? request.getOptions().getModel() : null;
+        long startedAt = System.nanoTime();
+        ModelResponse response;
+        try {
+            response = handler.call(request);
+        }
+        catch (RuntimeException e) {
+            record(agent, model(requestedModel, null), System.nanoTime() - startedAt, null, "error");
+            throw e;
+        }
+        if (response.getMessage() instanceof Flux<?> flux) {
+            return ModelResponse.of(measure((Flux<ChatResponse>) flux, agent, requestedModel));
+        }
+        ChatResponse chatResponse = response.getChatResponse();
+        record(agent, model(requestedModel, chatResponse), System.nanoTime() - startedAt,
+                chatResponse != null && chatResponse.getMetadata() != null ? chatResponse.getMetadata().getUsage() : null,
+                "success");
+        return response;
+    }
+
+    @Override
+    public String getName() {
+        return "MetricsModelInterceptor";
+    }
+
+    private Flux<ChatResponse> measure(Flux<ChatResponse> flux, String agent, String requestedModel) {
+        return Flux.defer(() -> {
+            long startedAt = System.nanoTime();
+            AtomicReference<String> model = new AtomicReference<>();
+            AtomicReference<Usage> usage = new AtomicReference<>();
+            return flux
+                    .doOnNext(response -> {
+                        if (model.get() == null && model.compareAndSet(null, model(requestedModel, response))) {
+                            metrics.recordTimer(AgentMetrics.MODEL_FIRST_TOKEN, "Time to the first streamed chunk",
+                                    System.nanoTime() - startedAt, "agent", agent, "model", model.get());
+                        }
+                        if (response.getMetadata() != null && hasTokens(response.getMetadata().getUsage())) {
+                            usage.set(response.getMetadata().getUsage());
+                        }
+                    })
+                    .doFinally(signal -> record(agent, model.get() != null ? model.get() : model(requestedModel, null),
+                            System.nanoTime() - startedAt, usage.get(),
+                            signal == SignalType.ON_COMPLETE ? "success" : signal == SignalType.ON_ERROR ? "error" : "cancelled"));
+        });
+    }
+
+    private String model(String requestedModel, ChatResponse response) {
+        if (requestedModel == null && response != null && response.getMetadata() != null) {
+            requestedModel = response.getMetadata().getModel();
+        }
+        return metrics.tag("model", requestedModel);
+    }
+
+    private void record(String agent, String model, long nanos, Usage usage, String outcome) {
+        metrics.recordTimer(AgentMetrics.MODEL_DURATION, "Model generation time", nanos,
+                "agent", agent, "model", model, "outcome", outcome);
+        if (hasTokens(usage)) {
+            recordTokens(agent, model, "prompt", usage.getPromptTokens());
+            recordTokens(agent, model, "completion", usage.getCompletionTokens());
+        }
+    }
+
+    private void recordTokens(String agent, String model, String type, Integer tokens) {
+        if (tokens != null) {
+            metrics.recordSummary(AgentMetrics.MODEL_TOKENS, "Tokens per model call", "tokens", tokens,
+                    "agent", agent, "model", model, "type", type);
+        }
+    }
+
+    private static boolean hasTokens(Usage usage) {
+        return usage != null && usage.getTotalTokens() != null && usage.getTotalTokens() > 0;
+    }
+}
@@ -0,0 +1,104 @@
+package com.lks.common.metrics;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 工具调用耗时与负载大小
+ *
+ * 记录每次工具调用的耗时（agent、tool、outcome 标签）以及参数 / 结果的 UTF-8 字节数（direction 标签）。
+ * 子代理通过 {@code task} 工具运行，其耗时另外按 subagent 标签记录为 {@value AgentMetrics#SUBAGENT_DURATION}。
+ * 启用 {@link com.lks.common.subagent.SubAgentFanOut} 时同一回复的子代理并发运行，这里记录的是工具节点等待结果的时间，
+ * 子代理自身的运行耗时见 agent.subagent.fanout.duration。
+ */
+public class MetricsToolInterceptor extends ToolInterceptor {
+
+    private static final String TASK_TOOL = "task";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final AgentMetrics metrics;
+
+    MetricsToolInterceptor(AgentMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ToolCallResponse interceptToolCall(ToolCallRequest request, ToolCallHandler handler) {
+        String agent = metrics.agentName(request.getContext());
+        String tool = metrics.tag("tool", request.getToolName());
+        long startedAt = System.nanoTime();
+        ToolCallResponse response = null;
+        try {
+            response = handler.call(request);
+            return response;
+        }
+        finally {
+            long nanos = System.nanoTime() - startedAt;
+            String outcome = response != null ? "success" : "error";
+            metrics.recordTimer(AgentMetrics.TOOL_DURATION, "Tool call latency", nanos,
+                    "agent", agent, "tool", tool, "outcome", outcome);
+            recordPayload(agent, tool, "request", request.getArguments());
+            if (response != null) {
+                recordPayload(agent, tool, "response", response.getResult());
+            }
+            if (TASK_TOOL.equals(request.getToolName())) {
+                // TaskTool 把子代理的异常转成以 Error 开头的结果返回
+                boolean failed = response == null || response.getResult() == null || response.getResult().startsWith("Error");
+                metrics.recordTimer(AgentMetrics.SUBAGENT_DURATION, "Sub-agent run time", nanos,
+                        "subagent", metrics.tag("subagent", subagentType(request.getArguments())),
+                        "outcome", failed ? "error" : "success");
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "MetricsToolInterceptor";
+    }
+
+    private void recordPayload(String agent, String tool, String direction, String payload) {
+        metrics.recordSummary(AgentMetrics.TOOL_PAYLOAD, "Tool call payload size", "bytes", utf8Length(payload),
+                "agent", agent, "tool", tool, "direction", direction);
+    }
+
+    private static String subagentType(String arguments) {
+        try {
+            JsonNode type = MAPPER.readTree(arguments).get("subagent_type");
+            return type != null ? type.asText() : null;
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * UTF-8 编码后的字节数，不实际编码
+     */
+    static long utf8Length(String text) {
+        if (text == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            }
+            else if (c < 0x800) {
+                bytes += 2;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            }
+            else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,628 @@
+package com.lks.common.ratelimit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 模型调用调度器：同一份额度（同一个 API Key 下的同一个模型）的进程内共享入口
+ *
+ * - 令牌桶：请求数（RPM）与 token 数（TPM）各一个桶，桶容量为 burst 时长内的额度；
+ *   放行时按估算的 token 数扣减，调用结束后按响应中的实际用量多退少补
+ * - 优先级：每个 {@link ModelPriority} 一个 FIFO 队列，额度不足时先放行高优先级；
+ *   队首等待超过老化阈值的低优先级调用优先放行，避免饿死
+ * - 自适应退避：收到限流（429）后速率减半并暂停放行一段时间（指数退避 + 抖动），
+ *   之后每次成功调用按固定步长恢复速率；被限流的调用以原来的排队时间重新排队，不占用新位置
+ * - 并发上限（可选）：同时进行中的调用数
+ * - 排队超时（可选）：申请超过 acquireTimeout 仍未放行时以 {@link ModelQuotaTimeoutException} 失败并移出队列
+ *
+ * 调用方通过 {@link #acquire(ModelPriority, long)} 拿到 {@link Permit}，调用结束后必须调用
+ * {@link Permit#complete(long)}、{@link Permit#fail()} 或 {@link Permit#throttled()} 之一。
+ * 通常不直接使用，而是经 {@link ScheduledChatModel} 包装模型。
+ */
+public class ModelCallScheduler implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelCallScheduler.class);
+
+    private static final double NANOS_PER_MINUTE = 60e9;
+
+    private final long requestsPerMinute;
+    private final long tokensPerMinute;
+    private final double requestCapacity;
+    private final double tokenCapacity;
+    private final int maxConcurrency;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final double minRateFactor;
+    private final double recoveryStep;
+    private final long agingThresholdNanos;
+    private final int maxThrottleRetries;
+    private final Duration acquireTimeout;
+    private final Predicate<Throwable> throttlePredicate;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<ModelPriority, ArrayDeque<Waiter>> queues = new EnumMap<>(ModelPriority.class);
+    private final ScheduledExecutorService timer;
+
+    // 以下字段由 lock 保护
+    private double requestBucket;
+    private double tokenBucket;
+    private long lastRefillNanos;
+    private double rateFactor = 1.0;
+    private long pausedUntilNanos;
+    private int consecutiveThrottles;
+    private int inFlight;
+    private ScheduledFuture<?> wakeup;
+    private long wakeupAtNanos;
+
+    private final LongAdder granted = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private volatile Map<ModelPriority, Timer> waitTimers;
+
+    private ModelCallScheduler(Builder builder) {
+        this.requestsPerMinute = builder.requestsPerMinute;
+        this.tokensPerMinute = builder.tokensPerMinute;
+        double burstMinutes = builder.burst.toNanos() / NANOS_PER_MINUTE;
+        this.requestCapacity = Math.max(1.0, requestsPerMinute * burstMinutes);
+        this.tokenCapacity = Math.max(1.0, tokensPerMinute * burstMinutes);
+        this.maxConcurrency = builder.maxConcurrency;
+        this.initialBackoffNanos = builder.initialBackoff.toNanos();
+        this.maxBackoffNanos = builder.maxBackoff.toNanos();
+        this.minRateFactor = builder.minRateFactor;
+        this.recoveryStep = builder.recoveryStep;
+        this.agingThresholdNanos = builder.agingThreshold.toNanos();
+        this.maxThrottleRetries = builder.maxThrottleRetries;
+        this.acquireTimeout = builder.acquireTimeout;
+        this.throttlePredicate = builder.throttlePredicate;
+        for (ModelPriority priority : ModelPriority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+        }
+        this.requestBucket = requestCapacity;
+        this.tokenBucket = tokenCapacity;
+        this.lastRefillNanos = System.nanoTime();
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "model-call-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 申请一次调用
+     *
+     * @param priority        优先级
+     * @param estimatedTokens 估算的 token 数（输入 + 预留输出），超过桶容量时按容量扣减
+     * @return 放行时完成的 Future；取消 Future 即放弃排队，排队超时时以 {@link ModelQuotaTimeoutException} 失败
+     */
+    public CompletableFuture<Permit> acquire(ModelPriority priority, long estimatedTokens) {
+        return enqueue(new Waiter(priority, Math.max(0, estimatedTokens), System.nanoTime()), false);
+    }
+
+    /**
+     * @return 该异常是否表示被限流（429 / Throttling）
+     */
+    public boolean isThrottle(Throwable error) {
+        return throttlePredicate.test(error);
+    }
+
+    /**
+     * @return 单次调用被限流后最多重新排队的次数
+     */
+    public int getMaxThrottleRetries() {
+        return maxThrottleRetries;
+    }
+
+    /**
+     * @return 单次申请排队等待的最长时长，为零时不限
+     */
+    public Duration getAcquireTimeout() {
+        return acquireTimeout;
+    }
+
+    /**
+     * @return 当前统计
+     */
+    public Stats stats() {
+        lock.lock();
+        try {
+            int queued = 0;
+            for (ArrayDeque<Waiter> queue : queues.values()) {
+                queued += queue.size();
+            }
+            return new Stats(queued, inFlight, rateFactor, granted.sum(), throttled.sum());
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 注册队列深度、等待时间、进行中调用数、速率系数与限流次数指标
+     *
+     * @param registry 指标注册表
+     * @param name     调度器名称，作为 scheduler 标签
+     * @return this
+     */
+    public ModelCallScheduler bindTo(MeterRegistry registry, String name) {
+        Map<ModelPriority, Timer> timers = new EnumMap<>(ModelPriority.class);
+        for (ModelPriority priority : ModelPriority.values()) {
+            String tag = priority.name().toLowerCase();
+            Gauge.builder("agent.model.scheduler.queue", this, scheduler -> scheduler.queueDepth(priority))
+                    .tag("scheduler", name).tag("priority", tag).description("Model calls waiting for quota")
+                    .register(registry);
+            timers.put(priority, Timer.builder("agent.model.scheduler.wait")
+                    .tag("scheduler", name).tag("priority", tag).description("Time a model call waited for quota")
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofMinutes(5))
+                    .register(registry));
+        }
+        Gauge.builder("agent.model.scheduler.in.flight", this, scheduler -> scheduler.stats().inFlight())
+                .tag("scheduler", name).register(registry);
+        Gauge.builder("agent.model.scheduler.rate.factor", this, scheduler -> scheduler.stats().rateFactor())
+                .tag("scheduler", name).description("Fraction of the configured rate currently allowed")
+                .register(registry);
+        FunctionCounter.builder("agent.model.scheduler.throttled", throttled, LongAdder::sum)
+                .tag("scheduler", name).register(registry);
+        this.waitTimers = timers;
+        return this;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    // ==================== 内部实现 ====================
+
+    private CompletableFuture<Permit> enqueue(Waiter waiter, boolean front) {
+        lock.lock();
+        try {
+            ArrayDeque<Waiter> queue = queues.get(waiter.priority);
+            if (front) {
+                queue.addFirst(waiter);
+            }
+            else {
+                queue.addLast(waiter);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        ScheduledFuture<?> timeout = acquireTimeout.isZero() ? null : timer.schedule(
+                () -> waiter.future.completeExceptionally(new ModelQuotaTimeoutException(acquireTimeout)),
+                acquireTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        // 排队中被取消或超时时移出队列；与放行竞争时 dispatch 中 complete 失败，归还并发名额
+        waiter.future.whenComplete((permit, error) -> {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            if (error != null) {
+                lock.lock();
+                try {
+                    queues.get(waiter.priority).remove(waiter);
+                }
+                finally {
+                    lock.unlock();
+                }
+            }
+        });
+        dispatch();
+        return waiter.future;
+    }
+
+    /**
+     * 在额度允许的范围内按优先级放行排队的调用；额度不足时安排定时器在可放行时再次调度
+     */
+    private void dispatch() {
+        List<Waiter> grants = new ArrayList<>();
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            while (true) {
+                ArrayDeque<Waiter> queue = nextQueue(now);
+                if (queue == null) {
+                    break;
+                }
+                if (now < pausedUntilNanos) {
+                    scheduleWakeup(pausedUntilNanos);
+                    break;
+                }
+                if (maxConcurrency > 0 && inFlight >= maxConcurrency) {
+                    // 有调用结束时再调度
+                    break;
+                }
+                Waiter next = queue.peekFirst();
+                double tokens = Math.min(next.tokens, tokenCapacity);
+                long waitNanos = Math.max(
+                        requestsPerMinute > 0 ? nanosUntil(1.0 - requestBucket, requestsPerMinute) : 0,
+                        tokensPerMinute > 0 ? nanosUntil(tokens - tokenBucket, tokensPerMinute) : 0);
+                if (waitNanos > 0) {
+                    scheduleWakeup(now + waitNanos);
+                    break;
+                }
+                queue.pollFirst();
+                requestBucket -= 1.0;
+                tokenBucket -= tokens;
+                inFlight++;
+                next.grantedTokens = (long) tokens;
+                grants.add(next);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        for (Waiter waiter : grants) {
+            granted.increment();
+            Map<ModelPriority, Timer> timers = waitTimers;
+            if (timers != null) {
+                timers.get(waiter.priority).record(System.nanoTime() - waiter.enqueuedNanos, TimeUnit.NANOSECONDS);
+            }
+            Permit permit = new Permit(waiter.priority, waiter.grantedTokens, waiter.enqueuedNanos);
+            if (!waiter.future.complete(permit)) {
+                // 放行的同时被取消或超时：归还并发名额，请求与 token 额度不退还
+                permit.fail();
+            }
+        }
+    }
+
+    /**
+     * 选出下一个放行的队列：队首等待超过老化阈值的队列中等待最久的优先，否则取最高优先级的非空队列
+     */
+    private ArrayDeque<Waiter> nextQueue(long now) {
+        ArrayDeque<Waiter> highest = null;
+        ArrayDeque<Waiter> starving = null;
+        for (ArrayDeque<Waiter> queue : queues.values()) {
+            Waiter head = queue.peekFirst();
+            if (head == null) {
+                continue;
+            }
+            if (highest == null) {
+                highest = queue;
+            }
+            if (now - head.enqueuedNanos > agingThresholdNanos
+                    && (starving == null || head.enqueuedNanos < starving.peekFirst().enqueuedNanos)) {
+                starving = queue;
+            }
+        }
+        return starving != null ? starving : highest;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        lastRefillNanos = now;
+        if (elapsed <= 0) {
+            return;
+        }
+        requestBucket = Math.min(requestCapacity, requestBucket + elapsed * requestsPerMinute * rateFactor / NANOS_PER_MINUTE);
+        tokenBucket = Math.min(tokenCapacity, tokenBucket + elapsed * tokensPerMinute * rateFactor / NANOS_PER_MINUTE);
+    }
+
+    private long nanosUntil(double deficit, long perMinute) {
+        if (deficit <= 0) {
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil(deficit * NANOS_PER_MINUTE / (perMinute * rateFactor)));
+    }
+
+    private void scheduleWakeup(long atNanos) {
+        if (wakeup != null && !wakeup.isDone() && wakeupAtNanos <= atNanos) {
+            return;
+        }
+        if (wakeup != null) {
+            wakeup.cancel(false);
+        }
+        wakeupAtNanos = atNanos;
+        wakeup = timer.schedule(this::dispatch, Math.max(0, atNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private int queueDepth(ModelPriority priority) {
+        lock.lock();
+        try {
+            return queues.get(priority).size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void onFinished(Permit permit, long actualTokens, boolean succeeded) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (actualTokens > 0 && tokensPerMinute > 0) {
+                // 按实际用量多退少补，允许透支到负的一个桶容量
+                tokenBucket = Math.max(-tokenCapacity, Math.min(tokenCapacity, tokenBucket + permit.tokens - actualTokens));
+            }
+            if (succeeded) {
+                consecutiveThrottles = 0;
+                rateFactor = Math.min(1.0, rateFactor + recoveryStep);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        dispatch();
+    }
+
+    private void onThrottled() {
+        throttled.increment();
+        lock.lock();
+        try {
+            inFlight--;
+            consecutiveThrottles++;
+            rateFactor = Math.max(minRateFactor, rateFactor / 2);
+            long backoff = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(consecutiveThrottles - 1, 20));
+            backoff += (long) (backoff * 0.2 * ThreadLocalRandom.current().nextDouble());
+            pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + backoff);
+            // 暂停结束后从空桶开始按降低后的速率放行，而不是立刻放出一整个突发
+            requestBucket = Math.min(requestBucket, 0);
+            tokenBucket = Math.min(tokenBucket, 0);
+            log.warn("Model call throttled, backing off {} ms at {}% of the configured rate",
+                    TimeUnit.NANOSECONDS.toMillis(backoff), Math.round(rateFactor * 100));
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isThrottleMessage(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            // Spring AI 的默认错误处理器抛出 "429 - {body}"，DashScope 限流错误码为 Throttling.*
+            if (message != null && (message.startsWith("429") || message.contains("429 Too Many Requests")
+                    || message.contains("Throttling"))) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private static final class Waiter {
+        final ModelPriority priority;
+        final long tokens;
+        final long enqueuedNanos;
+        final CompletableFuture<Permit> future = new CompletableFuture<>();
+        long grantedTokens;
+
+        Waiter(ModelPriority priority, long tokens, long enqueuedNanos) {
+            this.priority = priority;
+            this.tokens = tokens;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    /**
+     * 一次放行的调用，结束时只能调用一次 complete / fail / throttled，重复调用被忽略
+     */
+    public final class Permit {
+        private final ModelPriority priority;
+        private final long tokens;
+        private final long enqueuedNanos;
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Permit(ModelPriority priority, long tokens, long enqueuedNanos) {
+            this.priority = priority;
+            this.tokens = tokens;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        /**
+         * 调用成功
+         *
+         * @param actualTokens 响应中的实际 token 用量，未知时传 0（保留估算值）
+         */
+        public void complete(long actualTokens) {
+            if (finished.compareAndSet(false, true)) {
+                onFinished(this, actualTokens, true);
+            }
+        }
+
+        /**
+         * 调用因限流以外的原因失败或被取消
+         */
+        public void fail() {
+            if (finished.compareAndSet(false, true)) {
+                onFinished(this, 0, false);
+            }
+        }
+
+        /**
+         * 调用被限流：降低速率、暂停放行，并以原来的排队时间排到同优先级队首重新申请
+         *
+         * @param estimatedTokens 重新申请时的估算 token 数
+         * @return 再次放行时完成的 Future
+         */
+        public CompletableFuture<Permit> throttled(long estimatedTokens) {
+            if (!finished.compareAndSet(false, true)) {
+                throw new IllegalStateException("Permit already finished");
+            }
+            onThrottled();
+            return enqueue(new Waiter(priority, Math.max(0, estimatedTokens), enqueuedNanos), true);
+        }
+
+        /**
+         * 调用被限流且不再重试
+         */
+        public void throttled() {
+            if (finished.compareAndSet(false, true)) {
+                onThrottled();
+                dispatch();
+            }
+        }
+
+        public ModelPriority getPriority() {
+            return priority;
+        }
+    }
+
+    /**
+     * 调度器统计
+     *
+     * @param queued     排队中的调用数
+     * @param inFlight   进行中的调用数
+     * @param rateFactor 当前允许的速率占配置速率的比例
+     * @param granted    累计放行次数（含限流后重新放行）
+     * @param throttled  累计被限流次数
+     */
+    public record Stats(int queued, int inFlight, double rateFactor, long granted, long throttled) {
+    }
+
+    public static class Builder {
+        private long requestsPerMinute;
+        private long tokensPerMinute;
+        private Duration burst = Duration.ofSeconds(10);
+        private int maxConcurrency;
+        private Duration initialBackoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofSeconds(60);
+        private double minRateFactor = 0.1;
+        private double recoveryStep = 0.05;
+        private Duration agingThreshold = Duration.ofSeconds(30);
+        private int maxThrottleRetries = 5;
+        private Duration acquireTimeout = Duration.ofMinutes(5);
+        private Predicate<Throwable> throttlePredicate = ModelCallScheduler::isThrottleMessage;
+
+        /**
+         * 每分钟请求数上限，0 表示不限
+         */
+        public Builder requestsPerMinute(long requestsPerMinute) {
+            this.requestsPerMinute = requestsPerMinute;
+            return this;
+        }
+
+        /**
+         * 每分钟 token 数上限（输入 + 输出），0 表示不限
+         */
+        public Builder tokensPerMinute(long tokensPerMinute) {
+            this.tokensPerMinute = tokensPerMinute;
+            return this;
+        }
+
+        /**
+         * 桶容量对应的时长：空闲后最多一次性放出这么长时间的额度，默认 10 秒
+         */
+        public Builder burst(Duration burst) {
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * 同时进行中的调用数上限，0 表示不限
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * 第一次限流后暂停放行的时长，连续限流时翻倍，默认 1 秒
+         */
+        public Builder initialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        /**
+         * 暂停放行的最长时长，默认 60 秒
+         */
+        public Builder maxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * 限流后速率系数的下限，默认 0.1
+         */
+        public Builder minRateFactor(double minRateFactor) {
+            this.minRateFactor = minRateFactor;
+            return this;
+        }
+
+        /**
+         * 每次成功调用后速率系数的恢复步长，默认 0.05
+         */
+        public Builder recoveryStep(double recoveryStep) {
+            this.recoveryStep = recoveryStep;
+            return this;
+        }
+
+        /**
+         * 低优先级调用等待超过该时长后提前放行，默认 30 秒
+         */
+        public Builder agingThreshold(Duration agingThreshold) {
+            this.agingThreshold = agingThreshold;
+            return this;
+        }
+
+        /**
+         * 单次调用被限流后最多重新排队的次数，默认 5
+         */
+        public Builder maxThrottleRetries(int maxThrottleRetries) {
+            this.maxThrottleRetries = maxThrottleRetries;
+            return this;
+        }
+
+        /**
+         * 单次申请排队等待的最长时长（被限流后重新排队时重新计时），为零时不限，默认 5 分钟
+         */
+        public Builder acquireTimeout(Duration acquireTimeout) {
+            this.acquireTimeout = acquireTimeout;
+            return this;
+        }
+
+        /**
+         * 判断异常是否为限流，默认按 "429" / "Throttling" 匹配异常链中的消息
+         */
+        public Builder throttlePredicate(Predicate<Throwable> throttlePredicate) {
+            this.throttlePredicate = throttlePredicate;
+            return this;
+        }
+
+        public ModelCallScheduler build() {
+            if (requestsPerMinute < 0 || tokensPerMinute < 0 || maxConcurrency < 0 || maxThrottleRetries < 0) {
+                throw new IllegalArgumentException("limits must not be negative");
+            }
+            if (burst.isNegative() || burst.isZero()) {
+                throw new IllegalArgumentException("burst must be positive");
+            }
+            if (minRateFactor <= 0 || minRateFactor > 1) {
+                throw new IllegalArgumentException("minRateFactor must be in (0, 1]");
+            }
+            if (acquireTimeout == null || acquireTimeout.isNegative()) {
+                throw new IllegalArgumentException("acquireTimeout must not be negative");
+            }
+            if (throttlePredicate == null) {
+                throw new IllegalArgumentException("throttlePredicate cannot be null");
+            }
+            return new ModelCallScheduler(this);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.lks.common.ratelimit;
+
+/**
+ * 模型调用的优先级，按声明顺序从高到低
+ *
+ * 额度不足时 {@link ModelCallScheduler} 先放行高优先级的调用；等待超过老化阈值的低优先级调用会被提前，避免饿死。
+ */
+public enum ModelPriority {
+
+    /** 用户在线等待的交互请求（如 /poem） */
+    INTERACTIVE,
+
+    /** 主研究代理：规划、汇总与撰写最终报告，以及评审报告 */
+    REPORT,
+
+    /** 探索性研究：research-agent 与通用子代理 */
+    RESEARCH,
+
+    /** 不在关键路径上的后台任务（如预先生成摘要） */
+    BACKGROUND
+}
@@ -0,0 +1,25 @@
+package com.lks.common.ratelimit;
+
+import java.time.Duration;
+
+/**
+ * 模型调用排队等待额度超时
+ *
+ * 由 {@link ModelCallScheduler} 在申请排队超过 acquireTimeout 时抛出，此时调用尚未发出，申请已移出队列。
+ */
+public class ModelQuotaTimeoutException extends RuntimeException {
+
+    private final Duration timeout;
+
+    public ModelQuotaTimeoutException(Duration timeout) {
+        super("Timed out after " + timeout.toMillis() + " ms waiting for model quota", null, false, false);
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return 配置的排队超时
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+}
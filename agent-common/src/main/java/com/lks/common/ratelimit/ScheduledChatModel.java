@@ -0,0 +1,231 @@
+package com.lks.common.ratelimit;
+
+import com.lks.common.token.TokenAccountant;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 经 {@link ModelCallScheduler} 排队的 ChatModel 装饰器
+ *
+ * 每个实例绑定一个优先级，同一调度器可以为不同代理包装出多个不同优先级的视图。
+ * - call：阻塞等待放行（最长 {@link ModelCallScheduler#getAcquireTimeout()}，超时抛出 {@link ModelQuotaTimeoutException}），
+ *   被限流时重新排队，最多 {@link ModelCallScheduler#getMaxThrottleRetries()} 次
+ * - stream：订阅时排队，放行后才真正发起请求；只有在尚未收到任何数据块时被限流才重新排队
+ *
+ * 估算的 token 数为输入消息的 token 数加上预留的输出 token 数，结束后按响应中的实际用量校正。
+ * 与 {@link com.lks.common.cache.CachingChatModel} 组合时应放在缓存内层，缓存命中不占用额度。
+ */
+public class ScheduledChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final ModelCallScheduler scheduler;
+    private final ModelPriority priority;
+    private final TokenAccountant tokenAccountant;
+    private final int reservedOutputTokens;
+
+    private ScheduledChatModel(Builder builder) {
+        this.delegate = builder.delegate;
+        this.scheduler = builder.scheduler;
+        this.priority = builder.priority;
+        this.tokenAccountant = builder.tokenAccountant != null ? builder.tokenAccountant : TokenAccountant.builder().build();
+        this.reservedOutputTokens = builder.reservedOutputTokens;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return 共享同一调度器与被装饰模型、使用另一优先级的视图
+     */
+    public ScheduledChatModel withPriority(ModelPriority priority) {
+        if (priority == this.priority) {
+            return this;
+        }
+        return builder().delegate(delegate).scheduler(scheduler).priority(priority)
+                .tokenAccountant(tokenAccountant).reservedOutputTokens(reservedOutputTokens).build();
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        long estimate = estimateTokens(prompt);
+        ModelCallScheduler.Permit permit = await(scheduler.acquire(priority, estimate));
+        for (int attempt = 0; ; attempt++) {
+            ChatResponse response;
+            try {
+                response = delegate.call(prompt);
+            }
+            catch (RuntimeException e) {
+                if (!scheduler.isThrottle(e)) {
+                    permit.fail();
+                    throw e;
+                }
+                if (attempt >= scheduler.getMaxThrottleRetries()) {
+                    permit.throttled();
+                    throw e;
+                }
+                permit = await(permit.throttled(estimate));
+                continue;
+            }
+            permit.complete(totalTokens(response));
+            return response;
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            long estimate = estimateTokens(prompt);
+            return stream(prompt, estimate, () -> scheduler.acquire(priority, estimate), 0);
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    public ModelPriority getPriority() {
+        return priority;
+    }
+
+    // ==================== 内部实现 ====================
+
+    private Flux<ChatResponse> stream(Prompt prompt, long estimate,
+                                      Supplier<CompletableFuture<ModelCallScheduler.Permit>> acquire,
+                                      int attempt) {
+        // 取消订阅时 fromFuture 会取消 Future，排队中的申请随之移出队列
+        return Mono.fromFuture(acquire).flatMapMany(permit -> {
+            AtomicBoolean emitted = new AtomicBoolean();
+            AtomicLong usage = new AtomicLong();
+            // defer：被装饰模型同步抛出的异常同样走下面的错误处理，不会漏掉归还许可
+            return Flux.defer(() -> delegate.stream(prompt))
+                    .doOnNext(response -> {
+                        emitted.set(true);
+                        // 流式响应的用量为累计值，取最大
+                        usage.accumulateAndGet(totalTokens(response), Math::max);
+                    })
+                    .doOnComplete(() -> permit.complete(usage.get()))
+                    .doOnCancel(() -> permit.complete(usage.get()))
+                    .onErrorResume(error -> {
+                        if (!emitted.get() && scheduler.isThrottle(error)
+                                && attempt < scheduler.getMaxThrottleRetries()) {
+                            return stream(prompt, estimate, () -> permit.throttled(estimate), attempt + 1);
+                        }
+                        if (scheduler.isThrottle(error)) {
+                            permit.throttled();
+                        }
+                        else {
+                            permit.fail();
+                        }
+                        return Flux.error(error);
+                    });
+        });
+    }
+
+    private long estimateTokens(Prompt prompt) {
+        long tokens = reservedOutputTokens;
+        for (Message message : prompt.getInstructions()) {
+            tokens += tokenAccountant.countTokens(message);
+        }
+        return tokens;
+    }
+
+    private static long totalTokens(ChatResponse response) {
+        if (response == null || response.getMetadata() == null) {
+            return 0;
+        }
+        Usage usage = response.getMetadata().getUsage();
+        Integer total = usage != null ? usage.getTotalTokens() : null;
+        return total != null ? total : 0;
+    }
+
+    private static ModelCallScheduler.Permit await(CompletableFuture<ModelCallScheduler.Permit> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for model quota");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof ModelQuotaTimeoutException timeout) {
+                throw timeout;
+            }
+            throw new IllegalStateException("Model call scheduling failed", e.getCause());
+        }
+    }
+
+    public static class Builder {
+        private ChatModel delegate;
+        private ModelCallScheduler scheduler;
+        private ModelPriority priority = ModelPriority.INTERACTIVE;
+        private TokenAccountant tokenAccountant;
+        private int reservedOutputTokens = 1024;
+
+        /**
+         * 被装饰的真实模型
+         */
+        public Builder delegate(ChatModel delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * 共享的调度器，同一份额度的所有模型应使用同一实例
+         */
+        public Builder scheduler(ModelCallScheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * 调用的优先级，默认 INTERACTIVE
+         */
+        public Builder priority(ModelPriority priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * 估算输入 token 数使用的计数器，可与摘要钩子共用以复用缓存
+         */
+        public Builder tokenAccountant(TokenAccountant tokenAccountant) {
+            this.tokenAccountant = tokenAccountant;
+            return this;
+        }
+
+        /**
+         * 放行时为输出预留的 token 数，默认 1024
+         */
+        public Builder reservedOutputTokens(int reservedOutputTokens) {
+            this.reservedOutputTokens = reservedOutputTokens;
+            return this;
+        }
+
+        public ScheduledChatModel build() {
+            Objects.requireNonNull(delegate, "delegate cannot be null");
+            Objects.requireNonNull(scheduler, "scheduler cannot be null");
+            Objects.requireNonNull(priority, "priority cannot be null");
+            if (reservedOutputTokens < 0) {
+                throw new IllegalArgumentException("reservedOutputTokens must not be negative");
+            }
+            return new ScheduledChatModel(this);
+        }
+    }
+}
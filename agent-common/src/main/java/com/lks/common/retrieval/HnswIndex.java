@@ -0,0 +1,512 @@
+package com.lks.common.retrieval;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * 持久化的 HNSW 近似最近邻索引（内积 / 余弦相似度，向量须已归一化）
+ *
+ * 存储布局与 hnswlib 相同：
+ * <ul>
+ *     <li>vectors.bin：每个节点一个定长槽位的向量，内存映射，检索时直接在映射上计算点积，不占堆</li>
+ *     <li>links0.bin：每个节点第 0 层的邻居（数量 + 最多 2M 个节点号），内存映射，插入时原地更新</li>
+ *     <li>index.meta：节点数、入口点、各节点层数与上层邻居（只有约 1/M 的节点有上层），{@link #flush()} 时整体原子替换</li>
+ * </ul>
+ * index.meta 中的节点数是已提交的边界：崩溃后重新打开时丢弃之后写入的节点，并从第 0 层剔除指向这些节点的邻居——
+ * 否则新插入的节点沿用这些节点号后，残留的边会把它们连到无关的位置。
+ * 向量空间标识、维度或 M 与文件不一致时清空重建。
+ *
+ * 不是线程安全的：插入须串行，检索与插入之间由调用方加读写锁。
+ */
+public class HnswIndex implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(HnswIndex.class);
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int VERSION = 1;
+    private static final int SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final int MAX_LEVEL = 16;
+
+    private static final String VECTORS_FILE = "vectors.bin";
+    private static final String LINKS_FILE = "links0.bin";
+    private static final String META_FILE = "index.meta";
+
+    private final Path dir;
+    private final String space;
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+
+    private final MappedSlots vectors;
+    private final MappedSlots links0;
+    private final Map<Integer, int[][]> upperLinks = new HashMap<>();
+    private byte[] levels = new byte[1024];
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private HnswIndex(Path dir, String space, int dimensions, int m, int efConstruction) throws IOException {
+        this.dir = dir;
+        this.space = space;
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        Files.createDirectories(dir);
+        boolean loaded = load();
+        if (!loaded) {
+            Files.deleteIfExists(dir.resolve(VECTORS_FILE));
+            Files.deleteIfExists(dir.resolve(LINKS_FILE));
+            Files.deleteIfExists(dir.resolve(META_FILE));
+        }
+        this.vectors = new MappedSlots(dir.resolve(VECTORS_FILE), dimensions * Float.BYTES, SEGMENT_BYTES);
+        this.links0 = new MappedSlots(dir.resolve(LINKS_FILE), (1 + maxM0) * Integer.BYTES, SEGMENT_BYTES);
+        if (loaded) {
+            int dropped = dropUncommittedLinks();
+            if (dropped > 0) {
+                log.info("Dropped {} layer-0 links to uncommitted nodes in {}", dropped, dir);
+            }
+        }
+    }
+
+    /**
+     * 打开（或创建）索引
+     *
+     * @param dir            索引目录，由本索引独占
+     * @param space          向量空间标识（见 EmbeddingFunction#name），与文件中不同时重建
+     * @param dimensions     向量维度
+     * @param m              每个节点在上层的邻居数，第 0 层为 2M
+     * @param efConstruction 插入时的候选集大小
+     */
+    public static HnswIndex open(Path dir, String space, int dimensions, int m, int efConstruction) throws IOException {
+        if (dimensions <= 0 || m < 2 || efConstruction < m) {
+            throw new IllegalArgumentException("dimensions must be positive, m >= 2 and efConstruction >= m");
+        }
+        return new HnswIndex(dir, space, dimensions, m, efConstruction);
+    }
+
+    /**
+     * 插入向量
+     *
+     * @return 节点号（从 0 开始连续分配）
+     */
+    public int add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Vector dimensions mismatch: " + vector.length + " vs " + dimensions);
+        }
+        int node = size;
+        for (int i = 0; i < dimensions; i++) {
+            vectors.putFloat(node, i, vector[i]);
+        }
+        int level = randomLevel();
+        if (node == levels.length) {
+            levels = Arrays.copyOf(levels, levels.length * 2);
+        }
+        levels[node] = (byte) level;
+        links0.putInt(node, 0, 0);
+        if (level > 0) {
+            int[][] upper = new int[level][];
+            for (int l = 0; l < level; l++) {
+                upper[l] = new int[m + 1];
+            }
+            upperLinks.put(node, upper);
+        }
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+        Candidate nearest = new Candidate(entryPoint, score(vector, entryPoint));
+        for (int l = maxLevel; l > level; l--) {
+            nearest = greedy(vector, nearest, l);
+        }
+        List<Candidate> entries = List.of(nearest);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(vector, entries, efConstruction, l);
+            int[] selected = select(candidates, m);
+            setNeighbors(node, l, selected, selected.length);
+            for (int neighbor : selected) {
+                connect(neighbor, node, l);
+            }
+            entries = candidates;
+        }
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+        return node;
+    }
+
+    /**
+     * 检索与查询向量最相似的 k 个节点
+     *
+     * @param ef 候选集大小，越大召回越高、越慢，小于 k 时按 k
+     * @return 按相似度从高到低排列
+     */
+    public List<Neighbor> search(float[] query, int k, int ef) {
+        if (entryPoint < 0 || k <= 0) {
+            return List.of();
+        }
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("Vector dimensions mismatch: " + query.length + " vs " + dimensions);
+        }
+        Candidate nearest = new Candidate(entryPoint, score(query, entryPoint));
+        for (int l = maxLevel; l > 0; l--) {
+            nearest = greedy(query, nearest, l);
+        }
+        List<Candidate> candidates = searchLayer(query, List.of(nearest), Math.max(ef, k), 0);
+        List<Neighbor> result = new ArrayList<>(Math.min(k, candidates.size()));
+        for (int i = 0; i < candidates.size() && i < k; i++) {
+            result.add(new Neighbor(candidates.get(i).id(), candidates.get(i).score()));
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @return 向量与第 0 层邻居的映射字节数
+     */
+    public long mappedBytes() {
+        return vectors.mappedBytes() + links0.mappedBytes();
+    }
+
+    /**
+     * 把映射写回磁盘，再原子替换 index.meta，提交当前的节点数
+     */
+    public void flush() throws IOException {
+        vectors.force();
+        links0.force();
+        Path temp = dir.resolve(META_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(space);
+            out.writeInt(dimensions);
+            out.writeInt(m);
+            out.writeInt(size);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            out.write(levels, 0, size);
+            for (int node = 0; node < size; node++) {
+                int[][] upper = upperLinks.get(node);
+                if (upper == null) {
+                    continue;
+                }
+                for (int[] links : upper) {
+                    out.writeInt(links[0]);
+                    for (int i = 1; i <= links[0]; i++) {
+                        out.writeInt(links[i]);
+                    }
+                }
+            }
+        }
+        try {
+            Files.move(temp, dir.resolve(META_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, dir.resolve(META_FILE), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        vectors.close();
+        links0.close();
+    }
+
+    // ==================== 内部实现 ====================
+
+    /**
+     * 读取 index.meta
+     *
+     * @return 是否可以沿用已有文件（不存在或不兼容时返回 false）
+     */
+    private boolean load() throws IOException {
+        Path meta = dir.resolve(META_FILE);
+        if (!Files.exists(meta)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(meta)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.warn("Unrecognized HNSW index in {}, rebuilding", dir);
+                return false;
+            }
+            String storedSpace = in.readUTF();
+            int storedDimensions = in.readInt();
+            int storedM = in.readInt();
+            if (!storedSpace.equals(space) || storedDimensions != dimensions || storedM != m) {
+                log.warn("HNSW index in {} was built for {} ({} dims, M={}), rebuilding for {} ({} dims, M={})", dir,
+                        storedSpace, storedDimensions, storedM, space, dimensions, m);
+                return false;
+            }
+            size = in.readInt();
+            entryPoint = in.readInt();
+            maxLevel = in.readInt();
+            levels = new byte[Math.max(1024, size)];
+            in.readFully(levels, 0, size);
+            for (int node = 0; node < size; node++) {
+                if (levels[node] == 0) {
+                    continue;
+                }
+                int[][] upper = new int[levels[node]][];
+                for (int l = 0; l < upper.length; l++) {
+                    upper[l] = new int[m + 1];
+                    upper[l][0] = in.readInt();
+                    for (int i = 1; i <= upper[l][0]; i++) {
+                        upper[l][i] = in.readInt();
+                    }
+                }
+                upperLinks.put(node, upper);
+            }
+            return true;
+        }
+        catch (IOException e) {
+            log.warn("Failed to read HNSW index in {}, rebuilding: {}", dir, e.getMessage());
+            size = 0;
+            entryPoint = -1;
+            maxLevel = -1;
+            levels = new byte[1024];
+            upperLinks.clear();
+            return false;
+        }
+    }
+
+    /**
+     * 剔除第 0 层中指向已提交节点数之外的邻居（上次提交后写入、随崩溃丢弃的节点）
+     *
+     * @return 剔除的边数
+     */
+    private int dropUncommittedLinks() {
+        int dropped = 0;
+        for (int node = 0; node < size; node++) {
+            int[] neighbors = neighbors(node, 0);
+            int kept = 0;
+            for (int i = 1; i <= neighbors[0]; i++) {
+                if (neighbors[i] < size) {
+                    neighbors[1 + kept++] = neighbors[i];
+                }
+            }
+            if (kept < neighbors[0]) {
+                dropped += neighbors[0] - kept;
+                setNeighbors(node, 0, Arrays.copyOfRange(neighbors, 1, 1 + kept), kept);
+            }
+        }
+        return dropped;
+    }
+
+    private int randomLevel() {
+        return Math.min(MAX_LEVEL, (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier));
+    }
+
+    /**
+     * 在上层贪心地走向最相似的节点
+     */
+    private Candidate greedy(float[] query, Candidate start, int level) {
+        Candidate best = start;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbors = neighbors(best.id(), level);
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (neighbor >= size) {
+                    continue;
+                }
+                float score = score(query, neighbor);
+                if (score > best.score()) {
+                    best = new Candidate(neighbor, score);
+                    improved = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 在一层内做 ef 宽度的最佳优先搜索
+     *
+     * @return 按相似度从高到低排列的候选
+     */
+    private List<Candidate> searchLayer(float[] query, List<Candidate> entries, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(Comparator.comparingDouble(Candidate::score).reversed());
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Comparator.comparingDouble(Candidate::score));
+        for (Candidate entry : entries) {
+            if (!visited.get(entry.id())) {
+                visited.set(entry.id());
+                frontier.add(entry);
+                results.add(entry);
+            }
+        }
+        while (results.size() > ef) {
+            results.poll();
+        }
+        while (!frontier.isEmpty()) {
+            Candidate current = frontier.poll();
+            if (results.size() >= ef && current.score() < results.peek().score()) {
+                break;
+            }
+            int[] neighbors = neighbors(current.id(), level);
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (neighbor >= size || visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float score = score(query, neighbor);
+                if (results.size() < ef || score > results.peek().score()) {
+                    Candidate candidate = new Candidate(neighbor, score);
+                    frontier.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(Candidate::score).reversed());
+        return sorted;
+    }
+
+    /**
+     * 邻居选择启发式（HNSW 论文算法 4）：候选与已选邻居的相似度高于与目标的相似度时跳过，
+     * 让邻居分散在不同方向，图在聚簇数据上仍然连通
+     *
+     * @param candidates 按与目标的相似度从高到低排列
+     */
+    private int[] select(List<Candidate> candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.size())];
+        int count = 0;
+        for (Candidate candidate : candidates) {
+            if (count == selected.length) {
+                break;
+            }
+            boolean diverse = true;
+            for (int i = 0; i < count; i++) {
+                if (similarity(candidate.id(), selected[i]) > candidate.score()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidate.id();
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * 为已有节点加上一条指向新节点的边，邻居已满时按启发式重新挑选
+     */
+    private void connect(int node, int added, int level) {
+        int max = level == 0 ? maxM0 : m;
+        int[] neighbors = neighbors(node, level);
+        int count = neighbors[0];
+        if (count < max) {
+            if (level == 0) {
+                links0.putInt(node, 1 + count, added);
+                links0.putInt(node, 0, count + 1);
+            }
+            else {
+                neighbors[1 + count] = added;
+                neighbors[0] = count + 1;
+            }
+            return;
+        }
+        List<Candidate> candidates = new ArrayList<>(count + 1);
+        candidates.add(new Candidate(added, similarity(node, added)));
+        for (int i = 1; i <= count; i++) {
+            if (neighbors[i] < size) {
+                candidates.add(new Candidate(neighbors[i], similarity(node, neighbors[i])));
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(Candidate::score).reversed());
+        int[] selected = select(candidates, max);
+        setNeighbors(node, level, selected, selected.length);
+    }
+
+    /**
+     * @return 邻居数组，[0] 为数量；第 0 层读自映射（副本），上层为堆上的数组本身
+     */
+    private int[] neighbors(int node, int level) {
+        if (level > 0) {
+            int[][] upper = upperLinks.get(node);
+            return upper != null && level <= upper.length ? upper[level - 1] : new int[1];
+        }
+        int count = Math.min(links0.getInt(node, 0), maxM0);
+        int[] neighbors = new int[1 + count];
+        neighbors[0] = count;
+        for (int i = 1; i <= count; i++) {
+            neighbors[i] = links0.getInt(node, i);
+        }
+        return neighbors;
+    }
+
+    private void setNeighbors(int node, int level, int[] ids, int count) {
+        if (level == 0) {
+            for (int i = 0; i < count; i++) {
+                links0.putInt(node, 1 + i, ids[i]);
+            }
+            links0.putInt(node, 0, count);
+            return;
+        }
+        int[] links = upperLinks.get(node)[level - 1];
+        System.arraycopy(ids, 0, links, 1, count);
+        links[0] = count;
+    }
+
+    private float score(float[] query, int node) {
+        return vectors.dot(node, query);
+    }
+
+    private float similarity(int a, int b) {
+        return vectors.dot(a, b, dimensions);
+    }
+
+    private record Candidate(int id, float score) {
+    }
+
+    /**
+     * 检索结果
+     *
+     * @param id    节点号
+     * @param score 与查询的相似度（内积）
+     */
+    public record Neighbor(int id, float score) {
+    }
+}
@@ -0,0 +1,566 @@
+package com.lks.common.retrieval;
+
+import com.lks.common.embedding.EmbeddingFunction;
+import com.lks.common.store.ContentAddressedStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * 本地检索语料库
+ *
+ * 把抓取的网页、下载的论文等文本切块、向量化后写入 {@link HnswIndex}，供 local_search 工具在联网搜索前先查本地：
+ * <ul>
+ *     <li>增量：工具结果到达时经 {@link #indexAsync(String, String)} 排队，由后台线程逐个切块、向量化、写入，
+ *     不占用工具调用的时间；监视的目录（如 arxiv 服务器的 papers-storage）按间隔扫描，只索引新增或变化的文件</li>
+ *     <li>去重：块按规范化文本的哈希去重，同一篇论文经 read_paper 与目录扫描两次到达时只索引一次</li>
+ *     <li>持久化：块文本追加写入 chunks.log（堆上只保留偏移），向量与图在内存映射文件中，重启后直接可用；
+ *     每次写入后先落盘 chunks.log 再提交索引，崩溃后以索引提交的节点数为准截断 chunks.log</li>
+ * </ul>
+ * 向量化函数可插拔：离线测试用 {@link com.lks.common.embedding.HashingEmbeddingFunction}，线上可包装远程模型；
+ * 换函数（向量空间标识变化）后索引与块日志一起重建，监视目录会在下一次扫描时重新索引。
+ *
+ * 检索持读锁并发进行，写入持写锁；向量化在锁外完成。
+ */
+public class LocalCorpus implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalCorpus.class);
+
+    private static final String CHUNKS_FILE = "chunks.log";
+    private static final String SOURCES_FILE = "sources.tsv";
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final EmbeddingFunction embeddingFunction;
+    private final TextChunker chunker;
+    private final int efSearch;
+    private final double minScore;
+    private final List<Path> watchedDirs;
+    private final Set<String> extensions;
+    private final Path sourcesFile;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final HnswIndex index;
+    private final FileChannel chunkLog;
+    private long[] offsets = new long[1024];
+    private long logEnd;
+    private final Set<String> chunkHashes = new HashSet<>();
+    /** 文件来源 → 索引时的大小与修改时间，用于扫描时跳过未变化的文件 */
+    private final Map<String, String> fileVersions = new HashMap<>();
+
+    private final ScheduledExecutorService executor;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder indexedChunks = new LongAdder();
+    private final LongAdder duplicateChunks = new LongAdder();
+    private final LongAdder indexedDocuments = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private volatile Timer searchTimer;
+
+    private LocalCorpus(Builder builder) throws IOException {
+        this.embeddingFunction = builder.embeddingFunction;
+        this.chunker = new TextChunker(builder.chunkChars, builder.chunkOverlap);
+        this.efSearch = builder.efSearch;
+        this.minScore = builder.minScore;
+        this.watchedDirs = List.copyOf(builder.watchedDirs);
+        this.extensions = Set.copyOf(builder.extensions);
+        this.sourcesFile = builder.dir.resolve(SOURCES_FILE);
+        this.index = HnswIndex.open(builder.dir.resolve("hnsw"), embeddingFunction.name(), embeddingFunction.dimensions(),
+                builder.m, builder.efConstruction);
+        this.chunkLog = FileChannel.open(builder.dir.resolve(CHUNKS_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+        log.info("Local corpus opened with {} chunks from {} files ({})", index.size(), fileVersions.size(),
+                embeddingFunction.name());
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "local-corpus-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!watchedDirs.isEmpty() && !builder.scanInterval.isZero()) {
+            executor.scheduleWithFixedDelay(this::scanQuietly, 0, builder.scanInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 切块并索引一段文本（调用线程上同步执行）
+     *
+     * @param source 来源（URL、论文 ID、文件路径等），随检索结果返回
+     * @param text   文本
+     * @return 新索引的块数（已存在的块不计）
+     */
+    public int index(String source, String text) throws IOException {
+        List<String> chunks = new ArrayList<>();
+        List<String> hashes = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (String chunk : chunker.chunk(text)) {
+                String hash = hash(chunk);
+                if (chunkHashes.contains(hash) || hashes.contains(hash)) {
+                    duplicateChunks.increment();
+                    continue;
+                }
+                chunks.add(chunk);
+                hashes.add(hash);
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        if (chunks.isEmpty()) {
+            return 0;
+        }
+        List<float[]> vectors = embeddingFunction.embedAll(chunks);
+
+        int added = 0;
+        lock.writeLock().lock();
+        try {
+            byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < chunks.size(); i++) {
+                // 向量化期间可能有相同的块先写入
+                if (!chunkHashes.add(hashes.get(i))) {
+                    duplicateChunks.increment();
+                    continue;
+                }
+                appendRecord(sourceBytes, chunks.get(i).getBytes(StandardCharsets.UTF_8));
+                index.add(vectors.get(i));
+                added++;
+            }
+            if (added > 0) {
+                chunkLog.force(false);
+                index.flush();
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+        indexedChunks.add(added);
+        indexedDocuments.increment();
+        log.debug("Indexed {} new chunks from {}", added, source);
+        return added;
+    }
+
+    /**
+     * 排队索引一段文本，由后台线程执行；失败只记日志
+     */
+    public void indexAsync(String source, String text) {
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    index(source, text);
+                }
+                catch (IOException | RuntimeException e) {
+                    failures.increment();
+                    log.warn("Failed to index {}: {}", source, e.getMessage());
+                }
+                finally {
+                    queued.decrementAndGet();
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * 扫描目录，索引新增或变化（大小、修改时间不同）的文件
+     *
+     * @return 本次索引的文件数
+     */
+    public int scan(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            files = paths.filter(Files::isRegularFile).filter(this::isIndexable).sorted().toList();
+        }
+        int indexed = 0;
+        for (Path file : files) {
+            String source = "file:" + dir.relativize(file).toString().replace('\\', '/');
+            String version = Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis();
+            synchronized (fileVersions) {
+                if (version.equals(fileVersions.get(source))) {
+                    continue;
+                }
+            }
+            try {
+                index(source, Files.readString(file));
+            }
+            catch (IOException | RuntimeException e) {
+                failures.increment();
+                log.warn("Failed to index {}: {}", file, e.getMessage());
+                continue;
+            }
+            synchronized (fileVersions) {
+                fileVersions.put(source, version);
+                Files.writeString(sourcesFile, version + "\t" + source + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            indexed++;
+        }
+        if (indexed > 0) {
+            log.info("Indexed {} new or changed files from {}", indexed, dir);
+        }
+        return indexed;
+    }
+
+    /**
+     * 检索与查询最相关的块
+     *
+     * @param query 查询文本
+     * @param k     返回的块数上限
+     * @return 相似度不低于 minScore 的块，按相似度从高到低排列
+     */
+    public List<Hit> search(String query, int k) {
+        long start = System.nanoTime();
+        float[] vector = embeddingFunction.embed(query);
+        List<Hit> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (HnswIndex.Neighbor neighbor : index.search(vector, k, efSearch)) {
+                if (neighbor.score() < minScore) {
+                    break;
+                }
+                String[] record = readRecord(neighbor.id());
+                result.add(new Hit(record[0], record[1], neighbor.score()));
+            }
+        }
+        catch (IOException e) {
+            log.warn("Failed to read local corpus chunks: {}", e.getMessage());
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        searches.increment();
+        if (!result.isEmpty()) {
+            hits.increment();
+        }
+        Timer timer = searchTimer;
+        if (timer != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return result;
+    }
+
+    public Stats stats() {
+        lock.readLock().lock();
+        try {
+            int files;
+            synchronized (fileVersions) {
+                files = fileVersions.size();
+            }
+            return new Stats(index.size(), files, logEnd, index.mappedBytes(), queued.get(), indexedDocuments.sum(),
+                    indexedChunks.sum(), duplicateChunks.sum(), failures.sum(), searches.sum(), hits.sum());
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public LocalCorpus bindTo(MeterRegistry registry, String name) {
+        Gauge.builder("agent.retrieval.chunks", this, corpus -> corpus.stats().chunks())
+                .tag("corpus", name).description("Chunks in the local vector index").register(registry);
+        Gauge.builder("agent.retrieval.files", this, corpus -> corpus.stats().files())
+                .tag("corpus", name).description("Files indexed from watched directories").register(registry);
+        Gauge.builder("agent.retrieval.queued", queued, AtomicInteger::get)
+                .tag("corpus", name).description("Documents waiting to be indexed").register(registry);
+        FunctionCounter.builder("agent.retrieval.indexed.chunks", indexedChunks, LongAdder::sum)
+                .tag("corpus", name).register(registry);
+        FunctionCounter.builder("agent.retrieval.duplicate.chunks", duplicateChunks, LongAdder::sum)
+                .tag("corpus", name).register(registry);
+        FunctionCounter.builder("agent.retrieval.failures", failures, LongAdder::sum)
+                .tag("corpus", name).register(registry);
+        FunctionCounter.builder("agent.retrieval.searches", searches, LongAdder::sum)
+                .tag("corpus", name).register(registry);
+        FunctionCounter.builder("agent.retrieval.hits", hits, LongAdder::sum)
+                .tag("corpus", name).description("Searches that returned at least one chunk").register(registry);
+        this.searchTimer = Timer.builder("agent.retrieval.search")
+                .tag("corpus", name)
+                .description("Local search latency including query embedding")
+                .publishPercentileHistogram()
+                .register(registry);
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        lock.writeLock().lock();
+        try {
+            index.close();
+            chunkLog.close();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== 内部实现 ====================
+
+    private void scanQuietly() {
+        for (Path dir : watchedDirs) {
+            try {
+                scan(dir);
+            }
+            catch (IOException | RuntimeException e) {
+                log.warn("Failed to scan {}: {}", dir, e.getMessage());
+            }
+        }
+    }
+
+    private boolean isIndexable(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && extensions.contains(name.substring(dot));
+    }
+
+    /**
+     * 按索引提交的节点数恢复块日志：读取前 size 条记录的偏移与哈希，截断之后未提交的记录；
+     * 记录少于节点数（块日志损坏）时无法对应，清空重建
+     */
+    private void recover() throws IOException {
+        int committed = index.size();
+        long position = 0;
+        int count = 0;
+        while (count < committed && position + RECORD_HEADER_BYTES <= chunkLog.size()) {
+            String[] record = readRecordAt(position);
+            if (record == null) {
+                break;
+            }
+            ensureCapacity(count);
+            offsets[count++] = position;
+            chunkHashes.add(hash(record[1]));
+            position += RECORD_HEADER_BYTES + record[0].getBytes(StandardCharsets.UTF_8).length
+                    + record[1].getBytes(StandardCharsets.UTF_8).length;
+        }
+        if (count < committed) {
+            throw new IOException("Chunk log has " + count + " records but the index has " + committed
+                    + " vectors; delete the corpus directory to rebuild");
+        }
+        chunkLog.truncate(position);
+        logEnd = position;
+        if (committed == 0) {
+            // 新建或重建的索引：文件需要重新索引
+            Files.deleteIfExists(sourcesFile);
+        }
+        else if (Files.exists(sourcesFile)) {
+            for (String line : Files.readAllLines(sourcesFile, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    fileVersions.put(line.substring(tab + 1), line.substring(0, tab));
+                }
+            }
+        }
+    }
+
+    private void appendRecord(byte[] source, byte[] text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + source.length + text.length);
+        buffer.putInt(source.length).putInt(text.length).put(source).put(text).flip();
+        long position = logEnd;
+        while (buffer.hasRemaining()) {
+            position += chunkLog.write(buffer, position);
+        }
+        ensureCapacity(index.size());
+        offsets[index.size()] = logEnd;
+        logEnd = position;
+    }
+
+    private String[] readRecord(int id) throws IOException {
+        return readRecordAt(offsets[id]);
+    }
+
+    /**
+     * @return [来源, 文本]，记录不完整时返回 null
+     */
+    private String[] readRecordAt(long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        if (readFully(header, position) < RECORD_HEADER_BYTES) {
+            return null;
+        }
+        int sourceLength = header.getInt(0);
+        int textLength = header.getInt(Integer.BYTES);
+        if (sourceLength < 0 || textLength < 0
+                || position + RECORD_HEADER_BYTES + sourceLength + textLength > chunkLog.size()) {
+            return null;
+        }
+        ByteBuffer body = ByteBuffer.allocate(sourceLength + textLength);
+        readFully(body, position + RECORD_HEADER_BYTES);
+        return new String[]{
+                new String(body.array(), 0, sourceLength, StandardCharsets.UTF_8),
+                new String(body.array(), sourceLength, textLength, StandardCharsets.UTF_8)};
+    }
+
+    private int readFully(ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = chunkLog.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private void ensureCapacity(int id) {
+        if (id >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, id + 1));
+        }
+    }
+
+    private static String hash(String chunk) {
+        return ContentAddressedStore.sha256(chunk.strip().replaceAll("\\s+", " ").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 检索结果
+     *
+     * @param source 来源
+     * @param text   块文本
+     * @param score  与查询的相似度
+     */
+    public record Hit(String source, String text, float score) {
+    }
+
+    /**
+     * 语料库统计
+     *
+     * @param chunks           索引中的块数
+     * @param files            已索引的监视目录文件数
+     * @param logBytes         块日志字节数
+     * @param mappedBytes      向量与图的映射字节数
+     * @param queued           等待索引的文档数
+     * @param indexedDocuments 本次启动以来索引的文档数
+     * @param indexedChunks    本次启动以来新增的块数
+     * @param duplicateChunks  因已存在而跳过的块数
+     * @param failures         索引失败次数
+     * @param searches         检索次数
+     * @param hits             返回了结果的检索次数
+     */
+    public record Stats(int chunks, int files, long logBytes, long mappedBytes, int queued, long indexedDocuments,
+                        long indexedChunks, long duplicateChunks, long failures, long searches, long hits) {
+    }
+
+    public static class Builder {
+        private Path dir;
+        private EmbeddingFunction embeddingFunction;
+        private int chunkChars = 1200;
+        private int chunkOverlap = 150;
+        private int m = 16;
+        private int efConstruction = 128;
+        private int efSearch = 100;
+        private double minScore = 0.3;
+        private final List<Path> watchedDirs = new ArrayList<>();
+        private final Set<String> extensions = new HashSet<>(Set.of(".md", ".txt"));
+        private Duration scanInterval = Duration.ofSeconds(30);
+
+        /**
+         * 语料库目录，由本语料库独占
+         */
+        public Builder dir(Path dir) {
+            this.dir = dir;
+            return this;
+        }
+
+        public Builder embeddingFunction(EmbeddingFunction embeddingFunction) {
+            this.embeddingFunction = embeddingFunction;
+            return this;
+        }
+
+        /**
+         * 每块的字符数上限与相邻块的重叠字符数
+         */
+        public Builder chunking(int chunkChars, int chunkOverlap) {
+            this.chunkChars = chunkChars;
+            this.chunkOverlap = chunkOverlap;
+            return this;
+        }
+
+        /**
+         * HNSW 参数：每个节点的邻居数、插入与检索时的候选集大小
+         */
+        public Builder hnsw(int m, int efConstruction, int efSearch) {
+            this.m = m;
+            this.efConstruction = efConstruction;
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        /**
+         * 低于该相似度的块不返回
+         */
+        public Builder minScore(double minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        /**
+         * 按间隔扫描的目录（如 arxiv 服务器的论文存储目录）
+         */
+        public Builder watch(Path dir) {
+            this.watchedDirs.add(dir);
+            return this;
+        }
+
+        /**
+         * 扫描目录时索引的文件扩展名（含点，小写），默认 .md 与 .txt
+         */
+        public Builder extensions(Set<String> extensions) {
+            this.extensions.clear();
+            this.extensions.addAll(extensions);
+            return this;
+        }
+
+        /**
+         * 扫描监视目录的间隔，为 0 时不在后台扫描
+         */
+        public Builder scanInterval(Duration scanInterval) {
+            this.scanInterval = scanInterval;
+            return this;
+        }
+
+        public LocalCorpus build() throws IOException {
+            Objects.requireNonNull(dir, "dir cannot be null");
+            Objects.requireNonNull(embeddingFunction, "embeddingFunction cannot be null");
+            Files.createDirectories(dir);
+            return new LocalCorpus(this);
+        }
+    }
+}
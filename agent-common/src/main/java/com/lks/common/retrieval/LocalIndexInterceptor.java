@@ -0,0 +1,139 @@
+package com.lks.common.retrieval;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lks.common.tool.ToolArguments;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 把抓取类工具的结果增量写入本地语料库
+ *
+ * 工具返回后把结果交给 {@link LocalCorpus#indexAsync(String, String)} 排队索引，工具结果原样返回，不等待索引。
+ * 须放在大结果驱逐拦截器之后（更靠近工具），才能拿到被驱逐前的完整结果。
+ * MCP 工具的结果是内容项的 JSON 数组，这里取出其中的文本；文本本身是带 content 字段的 JSON（如 read_paper）时再取一层。
+ * 来源优先取参数中的 url / paper_id，取不到时为“工具名:规范化参数”。
+ */
+public class LocalIndexInterceptor extends ToolInterceptor {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final List<String> SOURCE_ARGUMENTS = List.of("url", "paper_id", "id");
+    private static final int MIN_INDEXED_LENGTH = 200;
+
+    private final LocalCorpus corpus;
+    private final Set<String> tools;
+
+    private LocalIndexInterceptor(Builder builder) {
+        this.corpus = builder.corpus;
+        this.tools = Set.copyOf(builder.tools);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public ToolCallResponse interceptToolCall(ToolCallRequest request, ToolCallHandler handler) {
+        ToolCallResponse response = handler.call(request);
+        if (!tools.contains(request.getToolName()) || response.getResult() == null
+                || (response.getStatus() != null && response.getStatus().toLowerCase().contains("error"))) {
+            return response;
+        }
+        String text = extractText(response.getResult());
+        if (text.length() >= MIN_INDEXED_LENGTH && !text.startsWith("Error")) {
+            corpus.indexAsync(sourceOf(request), text);
+        }
+        return response;
+    }
+
+    @Override
+    public String getName() {
+        return "LocalIndex";
+    }
+
+    static String sourceOf(ToolCallRequest request) {
+        try {
+            JsonNode arguments = MAPPER.readTree(request.getArguments());
+            for (String name : SOURCE_ARGUMENTS) {
+                JsonNode value = arguments == null ? null : arguments.get(name);
+                if (value != null && value.isTextual() && !value.asText().isBlank()) {
+                    String source = value.asText().strip();
+                    return "paper_id".equals(name) ? "arxiv:" + source : source;
+                }
+            }
+        }
+        catch (JsonProcessingException | IllegalArgumentException e) {
+            // 参数不是 JSON 时按整体作为来源
+        }
+        return request.getToolName() + ":" + ToolArguments.normalize(request.getArguments());
+    }
+
+    static String extractText(String result) {
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(result);
+        }
+        catch (JsonProcessingException e) {
+            return result;
+        }
+        if (root == null || !root.isArray()) {
+            return unwrap(result);
+        }
+        StringBuilder text = new StringBuilder();
+        for (JsonNode item : root) {
+            JsonNode value = item.get("text");
+            if (value != null && value.isTextual()) {
+                if (!text.isEmpty()) {
+                    text.append("\n\n");
+                }
+                text.append(unwrap(value.asText()));
+            }
+        }
+        return text.toString();
+    }
+
+    private static String unwrap(String text) {
+        String stripped = text.strip();
+        if (!stripped.startsWith("{")) {
+            return text;
+        }
+        try {
+            JsonNode content = MAPPER.readTree(stripped).get("content");
+            return content != null && content.isTextual() ? content.asText() : text;
+        }
+        catch (JsonProcessingException e) {
+            return text;
+        }
+    }
+
+    public static class Builder {
+        private LocalCorpus corpus;
+        private final Set<String> tools = new HashSet<>();
+
+        public Builder corpus(LocalCorpus corpus) {
+            this.corpus = corpus;
+            return this;
+        }
+
+        /**
+         * 结果需要索引的工具（抓取网页、读取论文等），其他工具的结果不索引
+         */
+        public Builder tools(Set<String> tools) {
+            this.tools.addAll(tools);
+            return this;
+        }
+
+        public LocalIndexInterceptor build() {
+            Objects.requireNonNull(corpus, "corpus cannot be null");
+            return new LocalIndexInterceptor(this);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.lks.common.retrieval;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.execution.ToolCallResultConverter;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * local_search 工具：在本地语料库（已抓取的网页、已下载的论文）中检索
+ *
+ * 结果原样返回（不经 JSON 字符串转义），每块带来源与相似度，模型据此决定是否还需要联网搜索。
+ */
+public final class LocalSearchTool {
+
+    public static final String NAME = "local_search";
+
+    private static final String DESCRIPTION = """
+            Search the local corpus of web pages and arxiv papers that have already been fetched or downloaded
+            in earlier research. Call this BEFORE searching the web or downloading a paper: if the returned
+            passages already answer the question, use them (cite the source) instead of fetching again.
+
+            Usage:
+            - query: a natural-language description of the information you need
+            - top_k: number of passages to return (default 5, at most 20)
+            - Each passage is returned with its source (URL, arxiv:<paper id> or file path) and a similarity score
+            - No results means nothing relevant has been collected yet; search the web as usual
+            """;
+    private static final int DEFAULT_TOP_K = 5;
+    private static final int MAX_TOP_K = 20;
+    private static final int MAX_PASSAGE_CHARS = 2000;
+    private static final ToolCallResultConverter RAW_RESULT = (result, returnType) -> String.valueOf(result);
+
+    private LocalSearchTool() {
+    }
+
+    public static ToolCallback create(LocalCorpus corpus) {
+        Function<SearchRequest, String> function = request -> search(corpus, request);
+        return FunctionToolCallback.builder(NAME, function)
+                .description(DESCRIPTION)
+                .inputType(SearchRequest.class)
+                .toolCallResultConverter(RAW_RESULT)
+                .build();
+    }
+
+    private static String search(LocalCorpus corpus, SearchRequest request) {
+        if (request.query == null || request.query.isBlank()) {
+            return "Error: query is required";
+        }
+        int topK = request.topK == null ? DEFAULT_TOP_K : Math.max(1, Math.min(MAX_TOP_K, request.topK));
+        List<LocalCorpus.Hit> hits = corpus.search(request.query, topK);
+        if (hits.isEmpty()) {
+            return "No relevant passages in the local corpus for: " + request.query;
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < hits.size(); i++) {
+            LocalCorpus.Hit hit = hits.get(i);
+            String text = hit.text().length() > MAX_PASSAGE_CHARS
+                    ? hit.text().substring(0, MAX_PASSAGE_CHARS) + "... (truncated)"
+                    : hit.text();
+            result.append(String.format("[%d] source: %s (score %.3f)%n%s%n%n", i + 1, hit.source(), hit.score(), text));
+        }
+        return result.toString().stripTrailing();
+    }
+
+    public static class SearchRequest {
+        @JsonProperty(required = true, value = "query")
+        @JsonPropertyDescription("What to look for in the local corpus")
+        public String query;
+
+        @JsonProperty(value = "top_k")
+        @JsonPropertyDescription("Number of passages to return (default 5, at most 20)")
+        public Integer topK;
+    }
+}
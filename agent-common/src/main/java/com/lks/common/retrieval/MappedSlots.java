@@ -0,0 +1,127 @@
+package com.lks.common.retrieval;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 定长槽位的内存映射文件
+ *
+ * 文件按段映射，每段 slotsPerSegment 个槽位，写到新段时再映射（文件随之增长），已有的映射不需要重建。
+ * 按小端序读写（x86 / ARM 的本机字节序），读取时不做字节交换。
+ * 不做同步：写入由调用方串行，读取与写入之间由调用方的读写锁隔开。
+ */
+final class MappedSlots implements Closeable {
+
+    private final FileChannel channel;
+    private final int slotBytes;
+    private final int slotsPerSegment;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final List<FloatBuffer> floatViews = new ArrayList<>();
+    private final List<IntBuffer> intViews = new ArrayList<>();
+
+    MappedSlots(Path file, int slotBytes, int segmentBytes) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.slotBytes = slotBytes;
+        this.slotsPerSegment = Math.max(1, segmentBytes / slotBytes);
+    }
+
+    float getFloat(int slot, int index) {
+        return floatViews.get(segment(slot)).get(offset(slot) / Float.BYTES + index);
+    }
+
+    void putFloat(int slot, int index, float value) {
+        floatViews.get(segment(slot)).put(offset(slot) / Float.BYTES + index, value);
+    }
+
+    /**
+     * 槽位中前 query.length 个浮点数与 query 的点积
+     */
+    float dot(int slot, float[] query) {
+        FloatBuffer view = floatViews.get(segment(slot));
+        int base = offset(slot) / Float.BYTES;
+        float dot = 0;
+        for (int i = 0; i < query.length; i++) {
+            dot += query[i] * view.get(base + i);
+        }
+        return dot;
+    }
+
+    /**
+     * 两个槽位中前 length 个浮点数的点积
+     */
+    float dot(int a, int b, int length) {
+        FloatBuffer viewA = floatViews.get(segment(a));
+        FloatBuffer viewB = floatViews.get(segment(b));
+        int baseA = offset(a) / Float.BYTES;
+        int baseB = offset(b) / Float.BYTES;
+        float dot = 0;
+        for (int i = 0; i < length; i++) {
+            dot += viewA.get(baseA + i) * viewB.get(baseB + i);
+        }
+        return dot;
+    }
+
+    int getInt(int slot, int index) {
+        return intViews.get(segment(slot)).get(offset(slot) / Integer.BYTES + index);
+    }
+
+    void putInt(int slot, int index, int value) {
+        intViews.get(segment(slot)).put(offset(slot) / Integer.BYTES + index, value);
+    }
+
+    /**
+     * @return 映射的总字节数
+     */
+    long mappedBytes() {
+        return (long) segments.size() * slotsPerSegment * slotBytes;
+    }
+
+    /**
+     * 把修改写回磁盘
+     */
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    /**
+     * @return 槽位所在段的序号，尚未映射时映射到该段为止
+     */
+    private int segment(int slot) {
+        int index = slot / slotsPerSegment;
+        while (segments.size() <= index) {
+            long position = (long) segments.size() * slotsPerSegment * slotBytes;
+            try {
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) slotsPerSegment * slotBytes);
+                segment.order(ByteOrder.LITTLE_ENDIAN);
+                segments.add(segment);
+                floatViews.add(segment.asFloatBuffer());
+                intViews.add(segment.asIntBuffer());
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("Failed to map segment at " + position, e);
+            }
+        }
+        return index;
+    }
+
+    private int offset(int slot) {
+        return (slot % slotsPerSegment) * slotBytes;
+    }
+}
@@ -0,0 +1,116 @@
+package com.lks.common.retrieval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 文本切块
+ *
+ * 按段落（空行）累积到 maxChars 为一块；单个段落超长时按句末标点（中英文）切分，仍然超长的句子按长度硬切。
+ * 相邻块之间保留 overlap 个字符的重叠，跨块的句子在两边都能被检索到。短于 minChars 的块（标题、页眉等）
+ * 并入下一块，只有一块时保留。
+ */
+public class TextChunker {
+
+    private final int maxChars;
+    private final int overlap;
+    private final int minChars;
+
+    public TextChunker(int maxChars, int overlap) {
+        if (maxChars <= 0 || overlap < 0 || overlap >= maxChars) {
+            throw new IllegalArgumentException("maxChars must be positive and overlap in [0, maxChars)");
+        }
+        this.maxChars = maxChars;
+        this.overlap = overlap;
+        this.minChars = Math.min(64, maxChars / 4);
+    }
+
+    public List<String> chunk(String text) {
+        List<String> chunks = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return chunks;
+        }
+        StringBuilder current = new StringBuilder();
+        for (String piece : pieces(text)) {
+            if (current.length() > 0 && current.length() + piece.length() + 1 > maxChars) {
+                if (current.length() >= minChars) {
+                    chunks.add(current.toString());
+                    String tail = tail(current);
+                    current = new StringBuilder(tail.length() + piece.length() < maxChars ? tail : "");
+                }
+            }
+            if (current.length() > 0) {
+                current.append('\n');
+            }
+            current.append(piece);
+        }
+        String last = current.toString().strip();
+        // 只剩上一块的重叠部分时不再单独成块
+        if (!last.isEmpty() && (chunks.isEmpty() || last.length() > overlap)) {
+            chunks.add(last);
+        }
+        return chunks;
+    }
+
+    /**
+     * 段落，超长段落切成句子，超长句子按长度硬切
+     */
+    private List<String> pieces(String text) {
+        List<String> pieces = new ArrayList<>();
+        for (String paragraph : text.split("\\n\\s*\\n")) {
+            String stripped = paragraph.strip();
+            if (stripped.isEmpty()) {
+                continue;
+            }
+            if (stripped.length() <= maxChars) {
+                pieces.add(stripped);
+                continue;
+            }
+            for (String sentence : sentences(stripped)) {
+                for (int from = 0; from < sentence.length(); from += maxChars - overlap) {
+                    pieces.add(sentence.substring(from, Math.min(sentence.length(), from + maxChars - overlap)));
+                }
+            }
+        }
+        return pieces;
+    }
+
+    private static List<String> sentences(String paragraph) {
+        List<String> sentences = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < paragraph.length(); i++) {
+            char c = paragraph.charAt(i);
+            boolean end = c == '。' || c == '！' || c == '？' || c == '；' || c == '\n'
+                    || ((c == '.' || c == '!' || c == '?') && (i + 1 == paragraph.length() || Character.isWhitespace(paragraph.charAt(i + 1))));
+            if (end) {
+                String sentence = paragraph.substring(start, i + 1).strip();
+                if (!sentence.isEmpty()) {
+                    sentences.add(sentence);
+                }
+                start = i + 1;
+            }
+        }
+        String rest = paragraph.substring(start).strip();
+        if (!rest.isEmpty()) {
+            sentences.add(rest);
+        }
+        return sentences;
+    }
+
+    /**
+     * 上一块末尾的重叠部分，从空白处开始，避免截断单词
+     */
+    private String tail(CharSequence chunk) {
+        if (overlap == 0) {
+            return "";
+        }
+        int from = Math.max(0, chunk.length() - overlap);
+        for (int i = from; i < chunk.length() && i < from + 32; i++) {
+            if (Character.isWhitespace(chunk.charAt(i))) {
+                from = i + 1;
+                break;
+            }
+        }
+        return chunk.subSequence(from, chunk.length()).toString();
+    }
+}
@@ -0,0 +1,278 @@
+package com.lks.common.store;
+
+import com.alibaba.cloud.ai.graph.agent.extension.file.EditResult;
+import com.alibaba.cloud.ai.graph.agent.extension.file.FileInfo;
+import com.alibaba.cloud.ai.graph.agent.extension.file.FilesystemBackend;
+import com.alibaba.cloud.ai.graph.agent.extension.file.GrepMatch;
+import com.alibaba.cloud.ai.graph.agent.extension.file.WriteResult;
+import com.alibaba.cloud.ai.graph.agent.extension.interceptor.FilesystemInterceptor;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 基于 {@link MappedBlobStore} 的文件系统后端
+ *
+ * 写入与编辑都进入存储（相同内容只落盘一次），读取按行区间直接从内存映射中解码。
+ * 存储中没有的路径交给 fallback 后端（如本地文件系统），以便继续读取 MCP 工具下载到磁盘的文件；
+ * 列目录与搜索合并两边的结果。每个实例绑定一个会话，写入计入该会话的限额，{@link #forSession(String)}
+ * 得到共享同一存储的其他会话视图。
+ */
+public class BlobStoreFilesystemBackend implements FilesystemBackend {
+
+    private static final String EMPTY_CONTENT_WARNING = "System reminder: File exists but has empty contents";
+
+    private final MappedBlobStore store;
+    private final String session;
+    private final FilesystemBackend fallback;
+
+    /**
+     * @param store    存储
+     * @param session  写入计入的会话
+     * @param fallback 存储中不存在的路径交给它处理，可为 null
+     */
+    public BlobStoreFilesystemBackend(MappedBlobStore store, String session, FilesystemBackend fallback) {
+        this.store = store;
+        this.session = session;
+        this.fallback = fallback;
+    }
+
+    /**
+     * @return 共享同一存储与 fallback、写入计入另一会话的视图
+     */
+    public BlobStoreFilesystemBackend forSession(String session) {
+        return session.equals(this.session) ? this : new BlobStoreFilesystemBackend(store, session, fallback);
+    }
+
+    public MappedBlobStore getStore() {
+        return store;
+    }
+
+    @Override
+    public String read(String filePath, int offset, int limit) {
+        String path;
+        try {
+            path = normalize(filePath);
+        }
+        catch (IllegalArgumentException e) {
+            return "Error: " + e.getMessage();
+        }
+        Optional<MappedBlobStore.Blob> blob = store.get(path);
+        if (blob.isEmpty()) {
+            if (store.isEvicted(path)) {
+                return "Error: File '" + filePath + "' was evicted because this session exceeded its storage budget. "
+                        + "Re-run the tool that produced it if you still need it.";
+            }
+            return fallback != null ? fallback.read(filePath, offset, limit) : "Error: File '" + filePath + "' not found";
+        }
+        int lineCount = blob.get().lineCount();
+        if (lineCount == 0) {
+            return EMPTY_CONTENT_WARNING;
+        }
+        if (offset >= lineCount) {
+            return "Error: Line offset " + offset + " exceeds file length (" + lineCount + " lines)";
+        }
+        List<String> lines = blob.get().lines(Math.max(0, offset), limit);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0) {
+                result.append('\n');
+            }
+            result.append(String.format("%6d\t", Math.max(0, offset) + i + 1)).append(lines.get(i));
+        }
+        return result.toString();
+    }
+
+    @Override
+    public WriteResult write(String filePath, String content) {
+        try {
+            String path = normalize(filePath);
+            if (store.entry(path).isPresent()) {
+                return new WriteResult(null, "Cannot write to " + filePath
+                        + " because it already exists. Read and then make an edit, or write to a new path.", null);
+            }
+            store.put(session, path, content);
+            return new WriteResult(filePath, null, null);
+        }
+        catch (IllegalArgumentException e) {
+            return new WriteResult(null, "Error: " + e.getMessage(), null);
+        }
+        catch (IOException e) {
+            return new WriteResult(null, "Error writing file '" + filePath + "': " + e.getMessage(), null);
+        }
+    }
+
+    @Override
+    public EditResult edit(String filePath, String oldString, String newString, boolean replaceAll) {
+        try {
+            String path = normalize(filePath);
+            Optional<MappedBlobStore.Blob> blob = store.get(path);
+            if (blob.isEmpty()) {
+                return new EditResult(null, 0, "Error: File '" + filePath + "' not found", null);
+            }
+            String content = blob.get().text();
+            int occurrences = countOccurrences(content, oldString);
+            if (occurrences == 0) {
+                return new EditResult(null, 0, "Error: String not found in file: '" + oldString + "'", null);
+            }
+            if (occurrences > 1 && !replaceAll) {
+                return new EditResult(null, 0, "Error: String '" + oldString + "' appears " + occurrences
+                        + " times in file. Use replaceAll=true to replace all instances, or provide a more specific string with surrounding context.", null);
+            }
+            store.put(session, path, content.replace(oldString, newString));
+            return new EditResult(filePath, occurrences, null, null);
+        }
+        catch (IllegalArgumentException e) {
+            return new EditResult(null, 0, "Error: " + e.getMessage(), null);
+        }
+        catch (IOException e) {
+            return new EditResult(null, 0, "Error editing file '" + filePath + "': " + e.getMessage(), null);
+        }
+    }
+
+    @Override
+    public List<FileInfo> lsInfo(String dirPath) {
+        Map<String, FileInfo> results = new LinkedHashMap<>();
+        String prefix;
+        try {
+            prefix = directoryPrefix(dirPath);
+        }
+        catch (IllegalArgumentException e) {
+            return List.of();
+        }
+        for (MappedBlobStore.Entry entry : store.list(prefix)) {
+            String rest = entry.path().substring(prefix.length());
+            int slash = rest.indexOf('/');
+            if (slash < 0) {
+                results.put(entry.path(), fileInfo(entry));
+            }
+            else {
+                String dir = prefix + rest.substring(0, slash + 1);
+                results.putIfAbsent(dir, new FileInfo(dir, true, 0L, null));
+            }
+        }
+        if (fallback != null) {
+            for (FileInfo info : fallback.lsInfo(dirPath)) {
+                results.putIfAbsent(info.getPath(), info);
+            }
+        }
+        return sorted(results);
+    }
+
+    @Override
+    public List<FileInfo> globInfo(String pattern, String dirPath) {
+        Map<String, FileInfo> results = new LinkedHashMap<>();
+        String prefix;
+        PathMatcher matcher;
+        try {
+            prefix = directoryPrefix(dirPath == null ? "/" : dirPath);
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + (pattern.startsWith("/") ? pattern.substring(1) : pattern));
+        }
+        catch (IllegalArgumentException e) {
+            return List.of();
+        }
+        for (MappedBlobStore.Entry entry : store.list(prefix)) {
+            if (matcher.matches(Path.of(entry.path().substring(prefix.length())))) {
+                results.put(entry.path(), fileInfo(entry));
+            }
+        }
+        if (fallback != null) {
+            for (FileInfo info : fallback.globInfo(pattern, dirPath)) {
+                results.putIfAbsent(info.getPath(), info);
+            }
+        }
+        return sorted(results);
+    }
+
+    @Override
+    public Object grepRaw(String pattern, String dirPath, String glob) {
+        Pattern regex;
+        String prefix;
+        try {
+            regex = Pattern.compile(pattern);
+            prefix = directoryPrefix(dirPath == null ? "/" : dirPath);
+        }
+        catch (PatternSyntaxException e) {
+            return "Invalid regex pattern: " + e.getMessage();
+        }
+        catch (IllegalArgumentException e) {
+            return List.of();
+        }
+        PathMatcher globMatcher = glob != null ? FileSystems.getDefault().getPathMatcher("glob:" + glob) : null;
+        List<GrepMatch> matches = new ArrayList<>();
+        for (MappedBlobStore.Entry entry : store.list(prefix)) {
+            if (globMatcher != null && !globMatcher.matches(Path.of(entry.path()).getFileName())) {
+                continue;
+            }
+            Optional<MappedBlobStore.Blob> blob = store.get(entry.path());
+            if (blob.isEmpty()) {
+                continue;
+            }
+            // 行号与 read 的分页行号一致（超长行已切分）
+            List<String> lines = blob.get().lines(0, blob.get().lineCount());
+            for (int i = 0; i < lines.size(); i++) {
+                if (regex.matcher(lines.get(i)).find()) {
+                    matches.add(new GrepMatch(entry.path(), i + 1, lines.get(i)));
+                }
+            }
+        }
+        if (fallback != null && fallback.grepRaw(pattern, dirPath, glob) instanceof List<?> fallbackMatches) {
+            for (Object match : fallbackMatches) {
+                if (match instanceof GrepMatch grepMatch && store.entry(grepMatch.getPath()).isEmpty()) {
+                    matches.add(grepMatch);
+                }
+            }
+        }
+        return matches;
+    }
+
+    // ==================== 内部实现 ====================
+
+    /**
+     * 统一为以 / 开头的规范路径，拒绝 .. 与 ~
+     */
+    private static String normalize(String path) {
+        return FilesystemInterceptor.validatePath(path, null);
+    }
+
+    private static String directoryPrefix(String dirPath) {
+        String path = normalize(dirPath);
+        return path.endsWith("/") ? path : path + "/";
+    }
+
+    private static FileInfo fileInfo(MappedBlobStore.Entry entry) {
+        return new FileInfo(entry.path(), false, entry.size(),
+                entry.modifiedAt().atOffset(ZoneOffset.UTC).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+    }
+
+    private static List<FileInfo> sorted(Map<String, FileInfo> results) {
+        List<FileInfo> list = new ArrayList<>(results.values());
+        list.sort(Comparator.comparing(FileInfo::getPath));
+        return list;
+    }
+
+    private static int countOccurrences(String content, String search) {
+        if (search.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        int index = 0;
+        while ((index = content.indexOf(search, index)) != -1) {
+            count++;
+            index += search.length();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,193 @@
+package com.lks.common.store;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * 本地内容寻址存储
+ *
+ * 内容按 SHA-256 哈希存放在 {@code objects/ab/abcdef...}，相同内容只保存一份；
+ * 写入先落到临时文件再原子移动，进程中途退出不会留下半截对象。
+ * 另提供按名称指向内容哈希的引用（{@code refs/}），供上层建立“键 → 内容”的索引；
+ * 过期的引用与不再被引用的内容由上层经 {@link #pruneRefs} 与 {@link #retainObjects} 清理。
+ */
+public class ContentAddressedStore {
+
+    private static final String OBJECTS_DIR = "objects";
+    private static final String REFS_DIR = "refs";
+    private static final String TMP_DIR = "tmp";
+
+    private final Path root;
+
+    public ContentAddressedStore(Path root) throws IOException {
+        this.root = root;
+        Files.createDirectories(root.resolve(OBJECTS_DIR));
+        Files.createDirectories(root.resolve(REFS_DIR));
+        Files.createDirectories(root.resolve(TMP_DIR));
+    }
+
+    /**
+     * 保存内容
+     *
+     * @return 内容哈希
+     */
+    public String put(byte[] content) throws IOException {
+        String hash = sha256(content);
+        Path target = objectPath(hash);
+        if (!Files.exists(target)) {
+            Files.createDirectories(target.getParent());
+            writeAtomically(target, content);
+        }
+        else {
+            // 已有内容被重新引用：刷新修改时间，避免被并发的 retainObjects 当作孤立对象删除
+            Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        return hash;
+    }
+
+    public Optional<byte[]> get(String hash) throws IOException {
+        Path path = objectPath(hash);
+        return Files.exists(path) ? Optional.of(Files.readAllBytes(path)) : Optional.empty();
+    }
+
+    /**
+     * 删除内容，调用方需自行确认没有引用指向它
+     */
+    public boolean delete(String hash) throws IOException {
+        return Files.deleteIfExists(objectPath(hash));
+    }
+
+    public boolean contains(String hash) {
+        return Files.exists(objectPath(hash));
+    }
+
+    public Path objectPath(String hash) {
+        return root.resolve(OBJECTS_DIR).resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * 写入引用：名称经哈希后作为文件名，内容为任意短文本（如“内容哈希 + 过期时间”）
+     */
+    public void putRef(String name, String value) throws IOException {
+        writeAtomically(refPath(name), value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Optional<String> getRef(String name) throws IOException {
+        Path path = refPath(name);
+        return Files.exists(path) ? Optional.of(Files.readString(path, StandardCharsets.UTF_8)) : Optional.empty();
+    }
+
+    public void deleteRef(String name) throws IOException {
+        Files.deleteIfExists(refPath(name));
+    }
+
+    /**
+     * 删除内容满足条件的引用
+     *
+     * @param shouldDelete 按引用内容判断是否删除
+     * @return 删除的引用数
+     */
+    public int pruneRefs(Predicate<String> shouldDelete) throws IOException {
+        int removed = 0;
+        for (Path path : list(root.resolve(REFS_DIR))) {
+            String value;
+            try {
+                value = Files.readString(path, StandardCharsets.UTF_8);
+            }
+            catch (NoSuchFileException e) {
+                continue;
+            }
+            if (shouldDelete.test(value) && Files.deleteIfExists(path)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 删除不在 live 中的内容
+     *
+     * 最近 grace 内写入或重新引用过的内容保留，它们的引用可能还没写完。
+     *
+     * @param live  仍被引用的内容哈希
+     * @param grace 保留期
+     * @return 删除的内容数
+     */
+    public int retainObjects(Set<String> live, Duration grace) throws IOException {
+        long cutoff = System.currentTimeMillis() - grace.toMillis();
+        int removed = 0;
+        for (Path prefix : list(root.resolve(OBJECTS_DIR))) {
+            for (Path path : list(prefix)) {
+                if (live.contains(path.getFileName().toString())) {
+                    continue;
+                }
+                try {
+                    if (Files.getLastModifiedTime(path).toMillis() < cutoff && Files.deleteIfExists(path)) {
+                        removed++;
+                    }
+                }
+                catch (NoSuchFileException e) {
+                    // 并发删除
+                }
+            }
+        }
+        return removed;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path refPath(String name) {
+        return root.resolve(REFS_DIR).resolve(sha256(name.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.toList();
+        }
+    }
+
+    private void writeAtomically(Path target, byte[] content) throws IOException {
+        Path tmp = Files.createTempFile(root.resolve(TMP_DIR), "obj", ".tmp");
+        try {
+            Files.write(tmp, content);
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
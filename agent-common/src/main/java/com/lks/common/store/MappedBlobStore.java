@@ -0,0 +1,548 @@
+package com.lks.common.store;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * 内容寻址、内存映射的文件存储
+ *
+ * 为代理的虚拟文件系统（{@link BlobStoreFilesystemBackend}）保存文件内容：
+ * <ul>
+ *     <li>去重：内容按 SHA-256 存入 {@link ContentAddressedStore}，并行子代理写入的相同搜索结果只落盘一次，
+ *     对象按引用计数，没有路径指向时删除</li>
+ *     <li>零拷贝读取：对象文件只读映射到内存，读取时不把整个文件读进堆；映射按总字节数上限缓存</li>
+ *     <li>按行分页：每个对象首次读取时建立一次行索引，之后按行号区间只解码需要的字节。
+ *     超过 {@value #MAX_LINE_BYTES} 字节的行按字符边界切成多行，单行的大 JSON 结果同样可以分页</li>
+ *     <li>按会话限额：每个会话写入的文件按逻辑大小计入该会话，超过上限时按最近最少访问淘汰该会话的文件；
+ *     被淘汰的路径留有记录，读取时给出明确提示</li>
+ * </ul>
+ * 路径是全局命名空间（主代理与子代理共享 final_report.md 等文件），会话只决定文件计入谁的限额。
+ * 路径索引只在内存中，启动时清空上次留下的对象。
+ */
+public class MappedBlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedBlobStore.class);
+
+    /**
+     * 拿不到会话 ID 时（如没有线程 ID 的子代理、工具结果驱逐）使用的共享会话
+     */
+    public static final String SHARED_SESSION = "shared";
+
+    static final int MAX_LINE_BYTES = 2000;
+
+    private static final int MAX_EVICTED_PATHS = 10_000;
+
+    private final ContentAddressedStore objects;
+    private final long maxBytesPerSession;
+    private final Cache<String, Blob> mapped;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Session> sessions = new HashMap<>();
+    private final Map<String, StoredObject> storedObjects = new HashMap<>();
+    private final Map<String, String> evictedPaths = new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_EVICTED_PATHS;
+        }
+    };
+    private long logicalBytes;
+    private long storedBytes;
+
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder dedupHits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder readBytes = new LongAdder();
+
+    private MappedBlobStore(Builder builder) throws IOException {
+        clearDirectory(builder.root.resolve("objects"));
+        this.objects = new ContentAddressedStore(builder.root);
+        this.maxBytesPerSession = builder.maxBytesPerSession;
+        this.mapped = Caffeine.newBuilder()
+                .maximumWeight(builder.maxMappedBytes)
+                .weigher((String hash, Blob blob) -> (int) Math.min(blob.size(), Integer.MAX_VALUE))
+                .build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 写入（或覆盖）文件
+     *
+     * @param session 会话 ID，文件计入该会话的限额
+     * @param path    规范化后的路径
+     * @param content 文件内容
+     * @return 写入后的条目
+     */
+    public Entry put(String session, String path, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        String hash = ContentAddressedStore.sha256(bytes);
+        boolean known;
+        lock.lock();
+        try {
+            known = storedObjects.containsKey(hash);
+        }
+        finally {
+            lock.unlock();
+        }
+        // 新内容在锁外落盘，并发写入相同内容时原子移动互相覆盖，结果一致
+        if (!known) {
+            objects.put(bytes);
+        }
+
+        lock.lock();
+        try {
+            StoredObject object = storedObjects.get(hash);
+            if (object == null) {
+                // 锁外写入后对象可能已被并发的淘汰删除，补写一次
+                if (!objects.contains(hash)) {
+                    objects.put(bytes);
+                }
+                object = new StoredObject(bytes.length);
+                storedObjects.put(hash, object);
+                storedBytes += bytes.length;
+            }
+            else {
+                dedupHits.increment();
+            }
+            object.refs++;
+
+            Entry previous = entries.get(path);
+            if (previous != null) {
+                unlink(previous);
+            }
+            Entry entry = new Entry(path, hash, bytes.length, session, Instant.now());
+            entries.put(path, entry);
+            evictedPaths.remove(path);
+            Session owner = sessions.computeIfAbsent(session, Session::new);
+            owner.paths.put(path, entry.size());
+            owner.bytes += entry.size();
+            logicalBytes += entry.size();
+            writes.increment();
+            evictOverBudget(owner);
+            return entry;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取文件内容，并刷新其在所属会话中的访问顺序
+     */
+    public Optional<Blob> get(String path) {
+        String hash;
+        lock.lock();
+        try {
+            Entry entry = entries.get(path);
+            if (entry == null) {
+                return Optional.empty();
+            }
+            Session owner = sessions.get(entry.session());
+            if (owner != null) {
+                owner.paths.get(path);
+            }
+            hash = entry.hash();
+            // 在锁内取得映射，避免与删除对象并发
+            return Optional.of(mapped.get(hash, this::map));
+        }
+        catch (UncheckedIOException e) {
+            log.warn("Failed to map blob for {}: {}", path, e.getMessage());
+            return Optional.empty();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public Optional<Entry> entry(String path) {
+        lock.lock();
+        try {
+            return Optional.ofNullable(entries.get(path));
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 路径是否因会话超出限额被淘汰（之后未再写入）
+     */
+    public boolean isEvicted(String path) {
+        lock.lock();
+        try {
+            return evictedPaths.containsKey(path);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean delete(String path) {
+        lock.lock();
+        try {
+            Entry entry = entries.remove(path);
+            if (entry == null) {
+                return false;
+            }
+            unlink(entry);
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 以 prefix 开头的所有条目，按路径排序
+     */
+    public List<Entry> list(String prefix) {
+        List<Entry> result = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Entry entry : entries.values()) {
+                if (entry.path().startsWith(prefix)) {
+                    result.add(entry);
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        result.sort(Comparator.comparing(Entry::path));
+        return result;
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(entries.size(), storedObjects.size(), logicalBytes, storedBytes, mapped.estimatedSize(),
+                    writes.sum(), dedupHits.sum(), evictions.sum(), reads.sum(), readBytes.sum());
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public MappedBlobStore bindTo(MeterRegistry registry, String name) {
+        Gauge.builder("agent.blobstore.entries", this, store -> store.stats().entries())
+                .tag("store", name).description("Files in the blob store").register(registry);
+        Gauge.builder("agent.blobstore.logical.bytes", this, store -> store.stats().logicalBytes())
+                .tag("store", name).baseUnit("bytes").description("Total size of all files before deduplication")
+                .register(registry);
+        Gauge.builder("agent.blobstore.stored.bytes", this, store -> store.stats().storedBytes())
+                .tag("store", name).baseUnit("bytes").description("Bytes on disk after deduplication")
+                .register(registry);
+        FunctionCounter.builder("agent.blobstore.dedup.hits", dedupHits, LongAdder::sum)
+                .tag("store", name).register(registry);
+        FunctionCounter.builder("agent.blobstore.evictions", evictions, LongAdder::sum)
+                .tag("store", name).register(registry);
+        FunctionCounter.builder("agent.blobstore.reads", reads, LongAdder::sum)
+                .tag("store", name).register(registry);
+        FunctionCounter.builder("agent.blobstore.read.bytes", readBytes, LongAdder::sum)
+                .tag("store", name).baseUnit("bytes").register(registry);
+        return this;
+    }
+
+    // ==================== 内部实现（调用方持有锁） ====================
+
+    private void evictOverBudget(Session session) {
+        Iterator<Map.Entry<String, Long>> eldest = session.paths.entrySet().iterator();
+        // 刚写入的文件位于访问顺序末尾，单个文件超过限额时保留它
+        while (session.bytes > maxBytesPerSession && session.paths.size() > 1) {
+            String path = eldest.next().getKey();
+            Entry entry = entries.remove(path);
+            unlink(entry);
+            evictedPaths.put(path, session.id);
+            evictions.increment();
+            log.debug("Evicted {} ({} bytes) from session {}", path, entry.size(), session.id);
+            eldest = session.paths.entrySet().iterator();
+        }
+    }
+
+    private void unlink(Entry entry) {
+        Session owner = sessions.get(entry.session());
+        if (owner != null && owner.paths.remove(entry.path()) != null) {
+            owner.bytes -= entry.size();
+            if (owner.paths.isEmpty()) {
+                sessions.remove(owner.id);
+            }
+        }
+        logicalBytes -= entry.size();
+        StoredObject object = storedObjects.get(entry.hash());
+        if (object != null && --object.refs == 0) {
+            storedObjects.remove(entry.hash());
+            storedBytes -= object.size;
+            mapped.invalidate(entry.hash());
+            try {
+                objects.delete(entry.hash());
+            }
+            catch (IOException e) {
+                log.warn("Failed to delete blob {}: {}", entry.hash(), e.getMessage());
+            }
+        }
+    }
+
+    private Blob map(String hash) {
+        try (FileChannel channel = FileChannel.open(objects.objectPath(hash), StandardOpenOption.READ)) {
+            // 关闭通道后映射仍然有效，随 Blob 被回收而解除
+            return new Blob(hash, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void clearDirectory(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                if (!path.equals(dir)) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * 文件条目
+     *
+     * @param path       路径
+     * @param hash       内容哈希
+     * @param size       字节数
+     * @param session    计入限额的会话
+     * @param modifiedAt 写入时间
+     */
+    public record Entry(String path, String hash, long size, String session, Instant modifiedAt) {
+    }
+
+    /**
+     * 存储统计
+     *
+     * @param entries      文件数
+     * @param objects      去重后的对象数
+     * @param logicalBytes 所有文件的总字节数
+     * @param storedBytes  去重后落盘的字节数
+     * @param mappedBlobs  当前缓存的内存映射数
+     * @param writes       写入次数
+     * @param dedupHits    写入时内容已存在的次数
+     * @param evictions    因会话超限淘汰的文件数
+     * @param reads        按行区间读取次数
+     * @param readBytes    读取解码的字节数
+     */
+    public record Stats(int entries, int objects, long logicalBytes, long storedBytes, long mappedBlobs,
+                        long writes, long dedupHits, long evictions, long reads, long readBytes) {
+    }
+
+    /**
+     * 内存映射的只读内容
+     *
+     * 行索引在首次按行读取时建立，之后的分页读取只解码所需区间。
+     */
+    public final class Blob {
+
+        private final String hash;
+        private final MappedByteBuffer buffer;
+        private volatile int[] lineStarts;
+
+        private Blob(String hash, MappedByteBuffer buffer) {
+            this.hash = hash;
+            this.buffer = buffer;
+        }
+
+        public String hash() {
+            return hash;
+        }
+
+        public int size() {
+            return buffer.capacity();
+        }
+
+        /**
+         * @return 行数（超长行按切分后的行计）
+         */
+        public int lineCount() {
+            return lineStarts().length;
+        }
+
+        /**
+         * 读取 [offset, offset + limit) 行，不含行尾换行符
+         */
+        public List<String> lines(int offset, int limit) {
+            int[] starts = lineStarts();
+            int end = (int) Math.min((long) offset + limit, starts.length);
+            if (offset < 0 || offset >= end) {
+                return List.of();
+            }
+            List<String> lines = new ArrayList<>(end - offset);
+            int bytes = 0;
+            for (int i = offset; i < end; i++) {
+                int from = starts[i];
+                int to = i + 1 < starts.length ? starts[i + 1] : buffer.capacity();
+                if (to > from && buffer.get(to - 1) == '\n') {
+                    to--;
+                }
+                lines.add(decode(from, to - from));
+                bytes += to - from;
+            }
+            reads.increment();
+            readBytes.add(bytes);
+            return lines;
+        }
+
+        /**
+         * @return 完整内容（编辑等需要全文的操作）
+         */
+        public String text() {
+            reads.increment();
+            readBytes.add(buffer.capacity());
+            return decode(0, buffer.capacity());
+        }
+
+        private String decode(int from, int length) {
+            ByteBuffer slice = buffer.slice(from, length);
+            return StandardCharsets.UTF_8.decode(slice).toString();
+        }
+
+        private int[] lineStarts() {
+            int[] starts = lineStarts;
+            if (starts == null) {
+                starts = indexLines();
+                lineStarts = starts;
+            }
+            return starts;
+        }
+
+        private int[] indexLines() {
+            int size = buffer.capacity();
+            if (size == 0) {
+                return new int[0];
+            }
+            int[] starts = new int[Math.max(16, size / 64)];
+            int count = 0;
+            starts[count++] = 0;
+            int lineStart = 0;
+            for (int pos = 0; pos < size; pos++) {
+                byte b = buffer.get(pos);
+                if (b == '\n') {
+                    if (pos + 1 < size) {
+                        if (count == starts.length) {
+                            starts = Arrays.copyOf(starts, count * 2);
+                        }
+                        starts[count++] = pos + 1;
+                    }
+                    lineStart = pos + 1;
+                    continue;
+                }
+                if (pos - lineStart >= MAX_LINE_BYTES) {
+                    // 在 UTF-8 字符边界处切分（跳过续字节 10xxxxxx）
+                    int split = pos;
+                    while (split > lineStart && (buffer.get(split) & 0xC0) == 0x80) {
+                        split--;
+                    }
+                    if (split == lineStart) {
+                        split = pos;
+                    }
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                    }
+                    starts[count++] = split;
+                    lineStart = split;
+                }
+            }
+            return Arrays.copyOf(starts, count);
+        }
+    }
+
+    private static final class Session {
+        private final String id;
+        /** 路径 → 字节数，按访问顺序排列 */
+        private final LinkedHashMap<String, Long> paths = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        private Session(String id) {
+            this.id = id;
+        }
+    }
+
+    private static final class StoredObject {
+        private final long size;
+        private int refs;
+
+        private StoredObject(long size) {
+            this.size = size;
+        }
+    }
+
+    public static class Builder {
+        private Path root;
+        private long maxBytesPerSession = 64L * 1024 * 1024;
+        private long maxMappedBytes = 256L * 1024 * 1024;
+
+        /**
+         * 存储目录，由本存储独占，启动时清空其中的对象
+         */
+        public Builder root(Path root) {
+            this.root = root;
+            return this;
+        }
+
+        /**
+         * 每个会话写入文件的总字节数上限
+         */
+        public Builder maxBytesPerSession(long maxBytesPerSession) {
+            this.maxBytesPerSession = maxBytesPerSession;
+            return this;
+        }
+
+        /**
+         * 同时保持内存映射的对象总字节数上限（映射占用虚拟内存与页缓存，不占堆）
+         */
+        public Builder maxMappedBytes(long maxMappedBytes) {
+            this.maxMappedBytes = maxMappedBytes;
+            return this;
+        }
+
+        public MappedBlobStore build() throws IOException {
+            Objects.requireNonNull(root, "root cannot be null");
+            if (maxBytesPerSession <= 0 || maxMappedBytes <= 0) {
+                throw new IllegalArgumentException("maxBytesPerSession and maxMappedBytes must be positive");
+            }
+            return new MappedBlobStore(this);
+        }
+    }
+}
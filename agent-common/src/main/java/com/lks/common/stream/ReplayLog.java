@@ -0,0 +1,37 @@
+package com.lks.common.stream;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * 运行输出的外部副本，供多实例部署时在其他实例上重连
+ *
+ * {@link ResumableStreams} 在本地缓冲的同时把每个事件追加到这里；客户端重连到没有该运行的实例时，
+ * 从这里回放错过的事件并跟随后续输出直到运行结束。写入应为异步，不阻塞运行。
+ */
+public interface ReplayLog {
+
+    /**
+     * 追加一个事件
+     *
+     * @param key   流所属的键（如线程ID）
+     * @param event 事件
+     */
+    void append(String key, ResumableEvent event);
+
+    /**
+     * 标记运行结束
+     *
+     * @param key     流所属的键
+     * @param runId   运行标识
+     * @param lastSeq 最后一个事件的序号
+     * @param error   运行出错时的异常，正常结束为 null
+     */
+    void complete(String key, String runId, long lastSeq, Throwable error);
+
+    /**
+     * 读取序号大于 afterSeq 的事件并跟随后续输出，运行结束时完成
+     *
+     * @return 运行不存在或已过期时以 {@link StreamNotResumableException} 结束的 Flux
+     */
+    Flux<ResumableEvent> read(String key, String runId, long afterSeq);
+}
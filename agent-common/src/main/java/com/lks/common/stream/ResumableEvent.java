@@ -0,0 +1,20 @@
+package com.lks.common.stream;
+
+/**
+ * 带序号的流式事件
+ *
+ * SSE 的 id 字段为 {@code runId:seq}，客户端重连时原样放在 Last-Event-ID 中。
+ *
+ * @param runId 一次运行的随机标识
+ * @param seq   该运行内从 1 开始递增的序号
+ * @param event 事件
+ */
+public record ResumableEvent(String runId, long seq, StreamEvent event) {
+
+    /**
+     * @return SSE 的 id 字段
+     */
+    public String id() {
+        return runId + ":" + seq;
+    }
+}
@@ -0,0 +1,427 @@
+package com.lks.common.stream;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 可续传的流式输出
+ *
+ * {@link #start(String, Flux)} 以热源方式订阅一次运行的输出，为每个事件编号并保存在该运行的环形缓冲中；
+ * 客户端断开后运行继续执行，带 Last-Event-ID 重连时经 {@link #resume(String, String)} 先回放错过的事件，
+ * 再接上仍在进行的输出，不必重新调用模型。
+ *
+ * - 缓冲大小：每个运行保留最近 bufferSize 个事件，错过的事件已被覆盖时无法续传
+ * - 保留策略：运行结束后缓冲再保留 retention；运行中的缓冲不过期，总数超过 maxStreams 时淘汰最久未访问的
+ * - 无人订阅：最后一个订阅者断开后运行最多再执行 detachTimeout，期间无人重连则取消运行
+ * - 多实例：配置 {@link ReplayLog} 后事件同时写入外部副本，重连到其他实例时从副本回放
+ */
+public class ResumableStreams {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableStreams.class);
+
+    private final int bufferSize;
+    private final Duration retention;
+    private final Duration detachTimeout;
+    private final ReplayLog replayLog;
+
+    private final Cache<String, ReplayStream> streams;
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder localResumes = new LongAdder();
+    private final LongAdder replayLogResumes = new LongAdder();
+    private final LongAdder replayedEvents = new LongAdder();
+    private final LongAdder notResumable = new LongAdder();
+    private final LongAdder detachedCancels = new LongAdder();
+
+    private ResumableStreams(Builder builder) {
+        this.bufferSize = builder.bufferSize;
+        this.retention = builder.retention;
+        this.detachTimeout = builder.detachTimeout;
+        this.replayLog = builder.replayLog;
+        this.streams = Caffeine.newBuilder()
+                .maximumSize(builder.maxStreams)
+                .expireAfter(new Expiry<String, ReplayStream>() {
+                    @Override
+                    public long expireAfterCreate(String runId, ReplayStream stream, long currentTime) {
+                        return Long.MAX_VALUE;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String runId, ReplayStream stream, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String runId, ReplayStream stream, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .scheduler(Scheduler.systemScheduler())
+                .build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 开始一次可续传的运行
+     *
+     * 订阅返回的 Flux 时才订阅 source；之后 source 的生命周期与该订阅者无关，由缓冲持有。
+     *
+     * @param key    流所属的键（如线程ID），续传时必须一致
+     * @param source 运行输出
+     * @return 从第一个事件开始的带序号输出
+     */
+    public Flux<ResumableEvent> start(String key, Flux<StreamEvent> source) {
+        return start(key, UUID.randomUUID().toString().replace("-", ""), source);
+    }
+
+    /**
+     * 以调用方分配的运行ID开始一次可续传的运行，供在第一个事件之前就需要运行ID的场景（如异步提交后再订阅）
+     *
+     * @param key    流所属的键（如线程ID），续传时必须一致
+     * @param runId  运行ID，不能包含冒号
+     * @param source 运行输出
+     * @return 从第一个事件开始的带序号输出
+     */
+    public Flux<ResumableEvent> start(String key, String runId, Flux<StreamEvent> source) {
+        return Flux.defer(() -> {
+            ReplayStream stream = new ReplayStream(runId, key);
+            streams.put(stream.runId, stream);
+            started.increment();
+            Flux<ResumableEvent> attached = stream.attach(0);
+            stream.connect(source);
+            return attached;
+        });
+    }
+
+    /**
+     * 从客户端收到的最后一个事件之后继续
+     *
+     * @param key         流所属的键，必须与开始时一致
+     * @param lastEventId 客户端的 Last-Event-ID（{@code runId:seq}）
+     * @return 先回放错过的事件再跟随后续输出的 Flux；无法续传时以 {@link StreamNotResumableException} 结束
+     */
+    public Flux<ResumableEvent> resume(String key, String lastEventId) {
+        return Flux.defer(() -> {
+            int separator = lastEventId.lastIndexOf(':');
+            long afterSeq;
+            try {
+                afterSeq = Long.parseLong(lastEventId.substring(separator + 1).trim());
+            }
+            catch (NumberFormatException e) {
+                return notResumable("Malformed Last-Event-ID: " + lastEventId);
+            }
+            String runId = separator > 0 ? lastEventId.substring(0, separator).trim() : "";
+            ReplayStream stream = streams.getIfPresent(runId);
+            if (stream != null) {
+                if (!stream.key.equals(key)) {
+                    return notResumable("Run " + runId + " does not belong to " + key);
+                }
+                localResumes.increment();
+                return stream.attach(afterSeq);
+            }
+            if (replayLog != null && !runId.isEmpty()) {
+                replayLogResumes.increment();
+                return replayLog.read(key, runId, afterSeq)
+                        .doOnNext(event -> replayedEvents.increment())
+                        .doOnError(StreamNotResumableException.class, e -> notResumable.increment());
+            }
+            return notResumable("Run " + runId + " is unknown or has expired");
+        });
+    }
+
+    /**
+     * @return 当前统计
+     */
+    public Stats stats() {
+        int running = 0;
+        for (ReplayStream stream : streams.asMap().values()) {
+            if (!stream.isDone()) {
+                running++;
+            }
+        }
+        return new Stats(running, streams.estimatedSize(), started.sum(), localResumes.sum(), replayLogResumes.sum(),
+                replayedEvents.sum(), notResumable.sum(), detachedCancels.sum());
+    }
+
+    /**
+     * 注册运行中 / 保留中的流数、续传次数、回放事件数、无法续传次数与无人订阅取消次数指标
+     *
+     * @param registry 指标注册表
+     * @param name     名称，作为 stream 标签
+     * @return this
+     */
+    public ResumableStreams bindTo(MeterRegistry registry, String name) {
+        Gauge.builder("agent.stream.resumable.running", this, resumable -> resumable.stats().running())
+                .tag("stream", name).description("Runs still producing output").register(registry);
+        Gauge.builder("agent.stream.resumable.retained", this, resumable -> resumable.stats().retained())
+                .tag("stream", name).description("Runs with a replay buffer in memory").register(registry);
+        FunctionCounter.builder("agent.stream.resumable.resumes", localResumes, LongAdder::sum)
+                .tag("stream", name).tag("source", "local").register(registry);
+        FunctionCounter.builder("agent.stream.resumable.resumes", replayLogResumes, LongAdder::sum)
+                .tag("stream", name).tag("source", "replay_log").register(registry);
+        FunctionCounter.builder("agent.stream.resumable.replayed.events", replayedEvents, LongAdder::sum)
+                .tag("stream", name).register(registry);
+        FunctionCounter.builder("agent.stream.resumable.not.resumable", notResumable, LongAdder::sum)
+                .tag("stream", name).register(registry);
+        FunctionCounter.builder("agent.stream.resumable.detached.cancels", detachedCancels, LongAdder::sum)
+                .tag("stream", name).register(registry);
+        return this;
+    }
+
+    private <T> Flux<T> notResumable(String message) {
+        notResumable.increment();
+        return Flux.error(new StreamNotResumableException(message));
+    }
+
+    private void onFinished(ReplayStream stream, boolean empty) {
+        // 没有任何输出（如未被接纳）的运行无可续传
+        if (retention.isZero() || empty) {
+            streams.asMap().remove(stream.runId, stream);
+            return;
+        }
+        streams.policy().expireVariably().ifPresent(policy ->
+                policy.setExpiresAfter(stream.runId, retention.toNanos(), TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * 一次运行的输出缓冲：环形数组保存最近 bufferSize 个事件，订阅者的回放与实时推送在同一把锁内完成，
+     * 因此不会遗漏或重复
+     */
+    private final class ReplayStream {
+        private final String runId;
+        private final String key;
+        private final ResumableEvent[] ring = new ResumableEvent[bufferSize];
+        // 推送时订阅者可能在同一线程上取消并移除自己，因此用写时复制列表
+        private final List<FluxSink<ResumableEvent>> subscribers = new CopyOnWriteArrayList<>();
+
+        // 以下字段由 this 保护
+        private long nextSeq = 1;
+        private boolean done;
+        private Throwable error;
+        private Disposable upstream;
+        private Disposable detachTask;
+
+        ReplayStream(String runId, String key) {
+            this.runId = runId;
+            this.key = key;
+        }
+
+        void connect(Flux<StreamEvent> source) {
+            Disposable subscription = source.subscribe(this::onNext, this::onError, this::onComplete);
+            synchronized (this) {
+                upstream = subscription;
+            }
+        }
+
+        synchronized boolean isDone() {
+            return done;
+        }
+
+        Flux<ResumableEvent> attach(long afterSeq) {
+            return Flux.create(sink -> {
+                synchronized (this) {
+                    long oldest = Math.max(1, nextSeq - bufferSize);
+                    if (afterSeq + 1 < oldest) {
+                        notResumable.increment();
+                        sink.error(new StreamNotResumableException("Events after " + runId + ":" + afterSeq
+                                + " are no longer buffered (oldest is " + oldest + ")"));
+                        return;
+                    }
+                    for (long seq = Math.max(afterSeq + 1, oldest); seq < nextSeq; seq++) {
+                        sink.next(ring[(int) (seq % bufferSize)]);
+                        if (afterSeq > 0) {
+                            replayedEvents.increment();
+                        }
+                    }
+                    if (done) {
+                        terminate(sink);
+                        return;
+                    }
+                    subscribers.add(sink);
+                    if (detachTask != null) {
+                        detachTask.dispose();
+                        detachTask = null;
+                    }
+                }
+                sink.onDispose(() -> detach(sink));
+            });
+        }
+
+        private synchronized void onNext(StreamEvent event) {
+            long seq = nextSeq++;
+            ResumableEvent resumable = new ResumableEvent(runId, seq, event);
+            ring[(int) (seq % bufferSize)] = resumable;
+            for (FluxSink<ResumableEvent> sink : subscribers) {
+                sink.next(resumable);
+            }
+            if (replayLog != null) {
+                replayLog.append(key, resumable);
+            }
+        }
+
+        private void onError(Throwable e) {
+            finish(e);
+        }
+
+        private void onComplete() {
+            finish(null);
+        }
+
+        private void finish(Throwable e) {
+            List<FluxSink<ResumableEvent>> toTerminate;
+            boolean empty;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                error = e;
+                toTerminate = new ArrayList<>(subscribers);
+                subscribers.clear();
+                for (FluxSink<ResumableEvent> sink : toTerminate) {
+                    terminate(sink);
+                }
+                empty = nextSeq == 1;
+                if (replayLog != null && !empty) {
+                    replayLog.complete(key, runId, nextSeq - 1, e);
+                }
+            }
+            onFinished(this, empty);
+        }
+
+        private void terminate(FluxSink<ResumableEvent> sink) {
+            if (error != null) {
+                sink.error(error);
+            }
+            else {
+                sink.complete();
+            }
+        }
+
+        private void detach(FluxSink<ResumableEvent> sink) {
+            synchronized (this) {
+                if (!subscribers.remove(sink) || !subscribers.isEmpty() || done) {
+                    return;
+                }
+                detachTask = Schedulers.parallel().schedule(this::cancelIfDetached,
+                        detachTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void cancelIfDetached() {
+            Disposable subscription;
+            synchronized (this) {
+                if (!subscribers.isEmpty() || done) {
+                    return;
+                }
+                subscription = upstream;
+            }
+            log.debug("No client reattached to run {} of {} within {}, cancelling", runId, key, detachTimeout);
+            detachedCancels.increment();
+            if (subscription != null) {
+                subscription.dispose();
+            }
+            finish(new StreamNotResumableException("Run " + runId + " was cancelled because no client reattached within "
+                    + detachTimeout.toSeconds() + " s"));
+        }
+    }
+
+    /**
+     * 续传统计
+     *
+     * @param running          仍在产生输出的运行数
+     * @param retained         内存中保留缓冲的运行数（含已结束、尚在保留期内的）
+     * @param started          累计开始的运行数
+     * @param localResumes     从本地缓冲续传的次数
+     * @param replayLogResumes 从外部副本续传的次数
+     * @param replayedEvents   续传时回放的事件数
+     * @param notResumable     无法续传的次数
+     * @param detachedCancels  因无人重连而取消的运行数
+     */
+    public record Stats(int running, long retained, long started, long localResumes, long replayLogResumes,
+                        long replayedEvents, long notResumable, long detachedCancels) {
+    }
+
+    public static class Builder {
+        private int bufferSize = 1024;
+        private Duration retention = Duration.ofMinutes(5);
+        private Duration detachTimeout = Duration.ofMinutes(2);
+        private long maxStreams = 10_000;
+        private ReplayLog replayLog;
+
+        /**
+         * 每个运行保留的最近事件数，默认 1024
+         */
+        public Builder bufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * 运行结束后缓冲的保留时长，默认 5 分钟；0 表示结束即丢弃
+         */
+        public Builder retention(Duration retention) {
+            this.retention = retention;
+            return this;
+        }
+
+        /**
+         * 最后一个订阅者断开后运行继续执行的最长时长，默认 2 分钟
+         */
+        public Builder detachTimeout(Duration detachTimeout) {
+            this.detachTimeout = detachTimeout;
+            return this;
+        }
+
+        /**
+         * 内存中最多保留缓冲的运行数，默认 10000
+         */
+        public Builder maxStreams(long maxStreams) {
+            this.maxStreams = maxStreams;
+            return this;
+        }
+
+        /**
+         * 外部副本（如 Redis Streams），多实例部署时配置
+         */
+        public Builder replayLog(ReplayLog replayLog) {
+            this.replayLog = replayLog;
+            return this;
+        }
+
+        public ResumableStreams build() {
+            if (bufferSize <= 0) {
+                throw new IllegalArgumentException("bufferSize must be positive");
+            }
+            if (retention.isNegative() || detachTimeout.isNegative()) {
+                throw new IllegalArgumentException("retention and detachTimeout must not be negative");
+            }
+            if (maxStreams <= 0) {
+                throw new IllegalArgumentException("maxStreams must be positive");
+            }
+            return new ResumableStreams(this);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.lks.common.stream;
+
+/**
+ * 投影后的流式事件
+ *
+ * @param type 事件类型，对应 SSE 的 event 字段
+ * @param data 事件内容
+ */
+public record StreamEvent(Type type, String data) {
+
+    private static final StreamEvent DONE = new StreamEvent(Type.DONE, "");
+
+    public static StreamEvent reasoning(String data) {
+        return new StreamEvent(Type.REASONING, data);
+    }
+
+    public static StreamEvent answer(String data) {
+        return new StreamEvent(Type.ANSWER, data);
+    }
+
+    public static StreamEvent done() {
+        return DONE;
+    }
+
+    public static StreamEvent node(String data) {
+        return new StreamEvent(Type.NODE, data);
+    }
+
+    public static StreamEvent subAgent(String data) {
+        return new StreamEvent(Type.SUBAGENT, data);
+    }
+
+    public static StreamEvent error(String data) {
+        return new StreamEvent(Type.ERROR, data);
+    }
+
+    public enum Type {
+
+        /** 模型的思考过程（DashScope reasoningContent） */
+        REASONING("reasoning", true),
+
+        /** 模型的回答内容 */
+        ANSWER("answer", true),
+
+        /** 节点执行完成（JSON） */
+        NODE("node", false),
+
+        /** 子代理的节点输出（JSON） */
+        SUBAGENT("subagent", false),
+
+        /** 运行失败或被取消（JSON） */
+        ERROR("error", false),
+
+        /** 流结束 */
+        DONE("done", false);
+
+        private final String eventName;
+        private final boolean coalescible;
+
+        Type(String eventName, boolean coalescible) {
+            this.eventName = eventName;
+            this.coalescible = coalescible;
+        }
+
+        public String eventName() {
+            return eventName;
+        }
+
+        /**
+         * @return 微批时相邻的同类型事件能否拼接为一帧（token 文本可以，JSON 不可以）
+         */
+        public boolean coalescible() {
+            return coalescible;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.lks.common.stream;
+
+/**
+ * 无法从 Last-Event-ID 继续：运行不存在、已过保留期、错过的事件已被环形缓冲覆盖，或运行因无人订阅已被取消
+ *
+ * 在任何输出之前抛出，Web 层据此返回 410，客户端应重新发起请求。
+ */
+public class StreamNotResumableException extends RuntimeException {
+
+    public StreamNotResumableException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,178 @@
+package com.lks.common.stream;
+
+import com.alibaba.cloud.ai.graph.NodeOutput;
+import com.alibaba.cloud.ai.graph.streaming.OutputType;
+import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 流式输出投影
+ *
+ * 把 Agent 的 {@code Flux<NodeOutput>} 投影为带类型的 {@link StreamEvent}：
+ * <ul>
+ *     <li>只保留模型流式输出，拆分为 reasoning（思考过程）与 answer（回答）两个通道</li>
+ *     <li>丢弃空内容和非模型节点的输出，流结束时追加一个 done 事件</li>
+ *     <li>可选微批：在时间窗口内或累计字节数达到上限前，把同类型的相邻 token 合并为一帧</li>
+ * </ul>
+ * 整个过程没有控制台 I/O，合并后客户端收到的帧更少、更大。
+ */
+public class StreamingProjection {
+
+    /** DashScope 在消息元数据中放置思考过程的键 */
+    public static final String DEFAULT_REASONING_KEY = "reasoningContent";
+
+    private final String reasoningKey;
+    private final Duration batchWindow;
+    private final int batchMaxBytes;
+
+    protected StreamingProjection(Builder builder) {
+        this.reasoningKey = builder.reasoningKey;
+        this.batchWindow = builder.batchWindow;
+        this.batchMaxBytes = builder.batchMaxBytes;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 投影 Agent 输出流
+     *
+     * @param outputs Agent 的节点输出流
+     * @return 类型化事件流，以 done 事件结束
+     */
+    public Flux<StreamEvent> project(Flux<NodeOutput> outputs) {
+        Flux<StreamEvent> events = outputs.concatMapIterable(this::toEvents);
+        if (isBatching()) {
+            events = coalesce(events);
+        }
+        return events.concatWith(Flux.just(StreamEvent.done()));
+    }
+
+    public boolean isBatching() {
+        return batchWindow != null && !batchWindow.isZero() && batchMaxBytes > 0;
+    }
+
+    // ==================== 内部实现 ====================
+
+    /**
+     * 一个节点输出对应的事件，子类可在模型 token 之外追加其他事件
+     */
+    protected List<StreamEvent> toEvents(NodeOutput output) {
+        if (!(output instanceof StreamingOutput<?> streamingOutput)
+                || streamingOutput.getOutputType() != OutputType.AGENT_MODEL_STREAMING) {
+            return List.of();
+        }
+        Message message = streamingOutput.message();
+        if (!(message instanceof AssistantMessage assistantMessage)) {
+            return List.of();
+        }
+        Object reasoning = assistantMessage.getMetadata().get(reasoningKey);
+        String text = assistantMessage.getText();
+        boolean hasReasoning = reasoning != null && !reasoning.toString().isEmpty();
+        boolean hasText = text != null && !text.isEmpty();
+        if (hasReasoning && hasText) {
+            return List.of(StreamEvent.reasoning(reasoning.toString()), StreamEvent.answer(text));
+        }
+        if (hasReasoning) {
+            return List.of(StreamEvent.reasoning(reasoning.toString()));
+        }
+        return hasText ? List.of(StreamEvent.answer(text)) : List.of();
+    }
+
+    /**
+     * 微批合并：累计字节数达到上限时切出一个窗口，窗口内再按时间间隔分批，每批中相邻同类型的 token 事件合并为一帧
+     */
+    private Flux<StreamEvent> coalesce(Flux<StreamEvent> events) {
+        return Flux.defer(() -> {
+            long[] pendingBytes = {0};
+            return events
+                    .windowUntil(event -> {
+                        pendingBytes[0] += utf8Length(event.data());
+                        if (pendingBytes[0] >= batchMaxBytes) {
+                            pendingBytes[0] = 0;
+                            return true;
+                        }
+                        return false;
+                    })
+                    .concatMap(window -> window.bufferTimeout(Integer.MAX_VALUE, batchWindow))
+                    .concatMapIterable(StreamingProjection::merge);
+        });
+    }
+
+    private static List<StreamEvent> merge(List<StreamEvent> batch) {
+        if (batch.size() <= 1) {
+            return batch;
+        }
+        List<StreamEvent> merged = new ArrayList<>(2);
+        StreamEvent.Type type = null;
+        StringBuilder data = new StringBuilder();
+        for (StreamEvent event : batch) {
+            if (type != null && (event.type() != type || !type.coalescible())) {
+                merged.add(new StreamEvent(type, data.toString()));
+                data.setLength(0);
+            }
+            type = event.type();
+            data.append(event.data());
+        }
+        merged.add(new StreamEvent(type, data.toString()));
+        return merged;
+    }
+
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            }
+            else if (c < 0x800 || Character.isSurrogate(c)) {
+                // 代理对的两个 char 合计 4 字节
+                length += 2;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    public static class Builder {
+        private String reasoningKey = DEFAULT_REASONING_KEY;
+        private Duration batchWindow = Duration.ZERO;
+        private int batchMaxBytes = 512;
+
+        public Builder reasoningKey(String reasoningKey) {
+            this.reasoningKey = reasoningKey;
+            return this;
+        }
+
+        /**
+         * 微批时间窗口，为 0 时不合并，逐 token 输出
+         */
+        public Builder batchWindow(Duration batchWindow) {
+            this.batchWindow = batchWindow;
+            return this;
+        }
+
+        /**
+         * 单帧累计的 UTF-8 字节数上限，达到后立即输出
+         */
+        public Builder batchMaxBytes(int batchMaxBytes) {
+            this.batchMaxBytes = batchMaxBytes;
+            return this;
+        }
+
+        public StreamingProjection build() {
+            Objects.requireNonNull(reasoningKey, "reasoningKey cannot be null");
+            return new StreamingProjection(this);
+        }
+    }
+}
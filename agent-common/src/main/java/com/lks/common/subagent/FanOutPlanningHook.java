@@ -0,0 +1,40 @@
+package com.lks.common.subagent;
+
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.hook.HookPosition;
+import com.alibaba.cloud.ai.graph.agent.hook.HookPositions;
+import com.alibaba.cloud.ai.graph.agent.hook.ModelHook;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import org.springframework.ai.chat.messages.AssistantMessage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 模型回复后记下其中的全部 task 调用（不执行），供工具节点执行第一个 task 调用时一起启动
+ */
+@HookPositions(value = {HookPosition.AFTER_MODEL})
+public class FanOutPlanningHook extends ModelHook {
+
+    private final SubAgentFanOut fanOut;
+
+    FanOutPlanningHook(SubAgentFanOut fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> afterModel(OverAllState state, RunnableConfig config) {
+        if (state.value("messages").orElse(null) instanceof List<?> messages && !messages.isEmpty()
+                && messages.get(messages.size() - 1) instanceof AssistantMessage message && message.hasToolCalls()) {
+            fanOut.plan(config.threadId().orElse(BaseCheckpointSaver.THREAD_ID_DEFAULT), message.getToolCalls());
+        }
+        return CompletableFuture.completedFuture(Map.of());
+    }
+
+    @Override
+    public String getName() {
+        return "FanOutPlanningHook";
+    }
+}
@@ -0,0 +1,53 @@
+package com.lks.common.subagent;
+
+import com.alibaba.cloud.ai.graph.agent.ReactAgent;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+
+import java.util.Map;
+
+/**
+ * 并发执行 task 调用
+ *
+ * 调用属于已记下的作用域时，启动作用域（同一回复的全部 task 调用并发运行）并等待本调用的结果；
+ * 否则（钩子未记下、参数无法解析、作用域已过期）交回框架的 TaskTool 串行执行。
+ * 工具节点线程在等待时被中断视为父运行中止，取消同一作用域的其余子代理。
+ */
+public class FanOutTaskInterceptor extends ToolInterceptor {
+
+    private final SubAgentFanOut fanOut;
+    private final Map<String, ReactAgent> subAgents;
+
+    FanOutTaskInterceptor(SubAgentFanOut fanOut, Map<String, ReactAgent> subAgents) {
+        this.fanOut = fanOut;
+        this.subAgents = subAgents;
+    }
+
+    @Override
+    public ToolCallResponse interceptToolCall(ToolCallRequest request, ToolCallHandler handler) {
+        if (!SubAgentFanOut.TASK_TOOL.equals(request.getToolName())) {
+            return handler.call(request);
+        }
+        TaskScope scope = fanOut.scopeOf(request.getToolCallId(), request.getArguments());
+        if (scope == null) {
+            return handler.call(request);
+        }
+        String result;
+        try {
+            result = fanOut.join(scope, request.getToolCallId(), subAgents);
+        }
+        catch (InterruptedException e) {
+            fanOut.cancel(scope);
+            Thread.currentThread().interrupt();
+            result = SubAgentFanOut.CANCELLED;
+        }
+        return ToolCallResponse.of(request.getToolCallId(), request.getToolName(), result);
+    }
+
+    @Override
+    public String getName() {
+        return "FanOutTaskInterceptor";
+    }
+}
@@ -0,0 +1,23 @@
+package com.lks.common.subagent;
+
+import java.util.function.Consumer;
+
+/**
+ * 把子代理调用交给其他节点执行
+ *
+ * 设置后 {@link SubAgentFanOut} 不再在本进程运行子代理，而是把每个 task 调用投递出去并等待结果，
+ * 执行节点用 {@link SubAgentFanOut#execute(SubAgentTask, Consumer)} 按本地注册的同名子代理运行。
+ * 投递与等待在扇出的虚拟线程上进行，实现可以阻塞。
+ */
+public interface SubAgentDispatcher {
+
+    /**
+     * 投递一次子代理调用并等待结果
+     *
+     * @param task     子代理调用
+     * @param progress 执行节点回传的子代理输出，按到达顺序调用
+     * @return 与 TaskTool 相同格式的结果（子代理最后一条回复的文本，失败、超时或无人执行时以 Error 开头）
+     * @throws InterruptedException 等待时线程被中断（父运行中止），实现应在抛出前撤销该调用
+     */
+    String dispatch(SubAgentTask task, Consumer<SubAgentOutput> progress) throws InterruptedException;
+}
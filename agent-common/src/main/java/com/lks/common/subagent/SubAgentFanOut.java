@@ -0,0 +1,587 @@
+package com.lks.common.subagent;
+
+import com.alibaba.cloud.ai.graph.NodeOutput;
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.ReactAgent;
+import com.alibaba.cloud.ai.graph.agent.hook.ModelHook;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.exception.GraphRunnerException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 子代理并行扇出
+ *
+ * 框架的工具节点逐个执行一条模型回复中的工具调用，模型一次发起的多个 task（子代理）调用因此串行运行，
+ * 研究耗时是各子问题耗时之和。这里把它们改为并发：
+ * <ul>
+ *     <li>{@link #getPlanningHook()}（afterModel）记下模型回复中的全部 task 调用，此时尚未执行——
+ *     人工审批等钩子仍可中断本步</li>
+ *     <li>{@link #interceptor(Map)} 在第一个 task 调用到达工具节点时为同一回复的全部 task 调用各启动一个虚拟线程，
+ *     工具节点随后按原顺序取结果，墙钟时间取决于最慢的子问题</li>
+ *     <li>同时运行的子代理数不超过 {@link Builder#maxConcurrency(int)}（进程内共享），其余排队；
+ *     每个子代理最长运行 {@link Builder#timeout(Duration)}，超时的返回错误结果，不影响其他子代理</li>
+ *     <li>父运行中止（工具节点线程被中断，或调用 {@link #abort(String)}）时取消同一运行的全部子代理</li>
+ *     <li>子代理以流式方式运行，节点输出到达即经 {@link #outputs(String)} 发布，可用 {@link #merge(String, Flux, Function)}
+ *     并入父运行的输出流</li>
+ * </ul>
+ * 每次 task 调用使用独立的线程ID（父线程ID/工具调用ID），并行的同类子代理互不共享检查点，运行结束即释放。
+ * 结果格式与框架的 TaskTool 一致（子代理最后一条回复的文本，失败时以 Error 开头）。
+ *
+ * 设置 {@link Builder#dispatcher(SubAgentDispatcher)} 后子代理不在本进程运行：每个 task 调用经分发器投递给执行节点，
+ * 扇出的虚拟线程只等待结果并发布回传的输出，不占用本进程的并发名额；执行节点以 {@link #execute(SubAgentTask, Consumer)}
+ * 按 {@link #interceptor(Map)} 注册的同名子代理运行，受执行节点自己的并发上限与超时约束。
+ *
+ * JDK 21 的 StructuredTaskScope 仍是预览 API，这里用等价的作用域（{@link TaskScope}）实现同样的约束：
+ * 子任务只在作用域内启动，作用域关闭前全部结束或被取消。
+ */
+public class SubAgentFanOut {
+
+    private static final Logger log = LoggerFactory.getLogger(SubAgentFanOut.class);
+
+    static final String TASK_TOOL = "task";
+    /** 失败结果的前缀，与框架 TaskTool 一致 */
+    public static final String ERROR_PREFIX = "Error executing subagent task: ";
+    /** 父运行中止时子代理的结果 */
+    public static final String CANCELLED = ERROR_PREFIX + "cancelled";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Duration timeout;
+    private final SubAgentDispatcher dispatcher;
+    private final Semaphore permits;
+    private final ThreadFactory threadFactory;
+    private final Scheduler agentScheduler;
+    private final Cache<String, TaskScope> scopes;
+    private final Map<String, List<FluxSink<SubAgentOutput>>> listeners = new ConcurrentHashMap<>();
+    /** 已注册的子代理，供执行节点运行分发来的调用 */
+    private final Map<String, ReactAgent> definitions = new ConcurrentHashMap<>();
+    private final FanOutPlanningHook planningHook;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger dispatched = new AtomicInteger();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private volatile DistributionSummary widthSummary;
+    private volatile MeterRegistry registry;
+    private volatile String gate;
+
+    protected SubAgentFanOut(Builder builder) {
+        this.timeout = builder.timeout;
+        this.dispatcher = builder.dispatcher;
+        this.permits = new Semaphore(builder.maxConcurrency > 0 ? builder.maxConcurrency : Integer.MAX_VALUE, true);
+        this.threadFactory = Thread.ofVirtual().name("subagent-", 0).factory();
+        // 子代理的图在独立的虚拟线程上执行，超时或取消时中断该线程（阻塞中的模型 / 工具调用随之结束），等待方立即返回
+        this.agentScheduler = Schedulers.fromExecutorService(
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("subagent-run-", 0).factory()), "subagent");
+        // 已记下但迟迟未执行的作用域（如运行在人工审批处中断后被放弃）到期时取消；
+        // 保留时长至少是单个子代理超时的两倍，正在被取结果的作用域不会到期
+        Duration retention = builder.timeout.multipliedBy(2).compareTo(Duration.ofHours(1)) > 0
+                ? builder.timeout.multipliedBy(2)
+                : Duration.ofHours(1);
+        this.scopes = Caffeine.newBuilder()
+                .expireAfterAccess(retention)
+                .ticker(builder.ticker)
+                .removalListener((String toolCallId, TaskScope scope, RemovalCause cause) -> {
+                    if (scope != null && cause.wasEvicted()) {
+                        cancelled.add(scope.cancel());
+                    }
+                })
+                .build();
+        this.planningHook = new FanOutPlanningHook(this);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return 记下 task 调用的钩子，挂到发起 task 调用的代理（主代理）上
+     */
+    public ModelHook getPlanningHook() {
+        return planningHook;
+    }
+
+    /**
+     * 并发执行 task 调用的工具拦截器，放在主代理拦截器列表中子代理拦截器之前
+     *
+     * @param subAgents 子代理类型到代理实例的映射，与 SubAgentInterceptor 中注册的一致；
+     *                  未列出的类型交回框架的 TaskTool 处理。同时登记为本进程可执行的子代理
+     */
+    public ToolInterceptor interceptor(Map<String, ReactAgent> subAgents) {
+        definitions.putAll(subAgents);
+        return new FanOutTaskInterceptor(this, Map.copyOf(subAgents));
+    }
+
+    /**
+     * 在本进程运行一次分发来的子代理调用（执行节点使用）
+     *
+     * 与本地扇出共用并发上限与超时，线程被中断时返回取消结果。
+     *
+     * @param task     子代理调用
+     * @param progress 子代理输出，到达即调用
+     * @return 与 TaskTool 相同格式的结果
+     */
+    public String execute(SubAgentTask task, Consumer<SubAgentOutput> progress) {
+        Objects.requireNonNull(task, "task cannot be null");
+        Objects.requireNonNull(progress, "progress cannot be null");
+        return runLocally(task, definitions, progress);
+    }
+
+    /**
+     * @return 本进程已注册、可执行分发调用的子代理类型；代理构建完成前为空
+     */
+    public Set<String> subAgentTypes() {
+        return Collections.unmodifiableSet(definitions.keySet());
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * 某次父运行的子代理输出，按到达顺序发布；只包含订阅之后产生的输出
+     *
+     * @param threadId 父运行的线程ID
+     */
+    public Flux<SubAgentOutput> outputs(String threadId) {
+        Objects.requireNonNull(threadId, "threadId cannot be null");
+        return Flux.create(sink -> {
+            List<FluxSink<SubAgentOutput>> sinks = listeners.compute(threadId, (key, current) -> {
+                List<FluxSink<SubAgentOutput>> list = current != null ? current : new CopyOnWriteArrayList<>();
+                list.add(sink);
+                return list;
+            });
+            sink.onDispose(() -> listeners.computeIfPresent(threadId, (key, current) -> {
+                current.remove(sink);
+                return current.isEmpty() ? null : current;
+            }));
+        });
+    }
+
+    /**
+     * 把子代理输出并入父运行的输出流：子代理输出到达即发出，父流结束时合并流随之结束
+     *
+     * @param threadId 父运行的线程ID
+     * @param parent   父运行的输出流
+     * @param mapper   子代理输出到父流元素类型的转换
+     */
+    public <T> Flux<T> merge(String threadId, Flux<T> parent, Function<SubAgentOutput, T> mapper) {
+        return parent.publish(shared -> Flux.merge(shared,
+                outputs(threadId).map(mapper).takeUntilOther(shared.ignoreElements())));
+    }
+
+    /**
+     * 取消某次父运行仍在运行或排队的全部子代理
+     *
+     * @param threadId 父运行的线程ID
+     * @return 被取消的子代理数
+     */
+    public int abort(String threadId) {
+        Set<TaskScope> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+        scopes.asMap().values().stream()
+                .filter(scope -> scope.threadId().equals(threadId))
+                .forEach(matched::add);
+        int aborted = 0;
+        for (TaskScope scope : matched) {
+            aborted += scope.cancel();
+        }
+        cancelled.add(aborted);
+        return aborted;
+    }
+
+    /**
+     * @return 当前运行数、排队数与累计结果数
+     */
+    public Stats stats() {
+        return new Stats(running.get(), waiting.get(), succeeded.sum(), failed.sum(), timedOut.sum(), cancelled.sum());
+    }
+
+    /**
+     * 注册指标：agent.subagent.fanout.running / waiting（当前运行与等待并发名额的子代理数）、
+     * agent.subagent.fanout.dispatched（已投递给执行节点、等待结果的子代理数）、
+     * agent.subagent.fanout.tasks（outcome 标签：success / error / timeout / cancelled）、
+     * agent.subagent.fanout.width（每条模型回复并行启动的子代理数）、
+     * agent.subagent.fanout.duration（子代理自身的运行耗时，不含排队，subagent / outcome 标签）
+     *
+     * @param name gate 标签
+     */
+    public SubAgentFanOut bindTo(MeterRegistry registry, String name) {
+        Gauge.builder("agent.subagent.fanout.running", running, AtomicInteger::get)
+                .tag("gate", name).description("Sub-agents running concurrently").register(registry);
+        Gauge.builder("agent.subagent.fanout.waiting", waiting, AtomicInteger::get)
+                .tag("gate", name).description("Sub-agents waiting for a concurrency slot").register(registry);
+        Gauge.builder("agent.subagent.fanout.dispatched", dispatched, AtomicInteger::get)
+                .tag("gate", name).description("Sub-agents dispatched to worker nodes and awaiting results").register(registry);
+        registerOutcome(registry, name, "success", succeeded);
+        registerOutcome(registry, name, "error", failed);
+        registerOutcome(registry, name, "timeout", timedOut);
+        registerOutcome(registry, name, "cancelled", cancelled);
+        this.widthSummary = DistributionSummary.builder("agent.subagent.fanout.width")
+                .tag("gate", name).description("Sub-agents launched together from one model response")
+                .register(registry);
+        this.gate = name;
+        this.registry = registry;
+        return this;
+    }
+
+    // ==================== 供钩子与拦截器使用 ====================
+
+    /**
+     * 记下模型回复中的 task 调用，等工具节点执行第一个调用时再启动
+     */
+    void plan(String threadId, List<AssistantMessage.ToolCall> toolCalls) {
+        List<TaskScope.TaskCall> calls = new ArrayList<>();
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            if (TASK_TOOL.equals(toolCall.name()) && toolCall.id() != null) {
+                TaskScope.TaskCall call = parse(toolCall);
+                if (call != null) {
+                    calls.add(call);
+                }
+            }
+        }
+        if (calls.isEmpty()) {
+            return;
+        }
+        TaskScope scope = new TaskScope(threadId, calls);
+        for (String toolCallId : scope.toolCallIds()) {
+            scopes.put(toolCallId, scope);
+        }
+    }
+
+    TaskScope scopeOf(String toolCallId, String arguments) {
+        TaskScope scope = toolCallId != null ? scopes.getIfPresent(toolCallId) : null;
+        return scope != null && scope.contains(toolCallId, arguments) ? scope : null;
+    }
+
+    /**
+     * 启动作用域（只有第一次生效）并等待某个调用的结果
+     */
+    String join(TaskScope scope, String toolCallId, Map<String, ReactAgent> subAgents) throws InterruptedException {
+        if (scope.fork(call -> run(new SubAgentTask(scope.threadId(), call.toolCallId(), call.subagent(), call.description()), subAgents),
+                threadFactory)) {
+            DistributionSummary summary = widthSummary;
+            if (summary != null) {
+                summary.record(scope.width());
+            }
+            log.debug("[ThreadId {}] Fanned out {} sub-agent tasks", scope.threadId(), scope.width());
+        }
+        try {
+            return scope.join(toolCallId);
+        }
+        finally {
+            if (scope.isJoined()) {
+                scopes.invalidateAll(scope.toolCallIds());
+            }
+        }
+    }
+
+    /**
+     * 父运行被中止：取消作用域内其余子代理；作用域保留到其余调用取走取消结果，不会退回串行执行
+     */
+    void cancel(TaskScope scope) {
+        cancelled.add(scope.cancel());
+    }
+
+    // ==================== 内部实现 ====================
+
+    /**
+     * 在虚拟线程上执行一次 task 调用：设置了分发器时投递给执行节点，否则在本进程运行
+     */
+    private String run(SubAgentTask task, Map<String, ReactAgent> subAgents) {
+        if (dispatcher == null) {
+            return runLocally(task, subAgents, this::publish);
+        }
+        if (!subAgents.containsKey(task.subagent())) {
+            failed.increment();
+            return unknownType(task, subAgents);
+        }
+        dispatched.incrementAndGet();
+        try {
+            String result = dispatcher.dispatch(task, this::publish);
+            if (CANCELLED.equals(result)) {
+                // 取消已由作用域计数
+                return result;
+            }
+            if (result.startsWith(ERROR_PREFIX + "timed out")) {
+                timedOut.increment();
+            }
+            else if (result.startsWith("Error")) {
+                failed.increment();
+            }
+            else {
+                succeeded.increment();
+            }
+            return result;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CANCELLED;
+        }
+        catch (RuntimeException e) {
+            failed.increment();
+            log.warn("[ThreadId {}] Failed to dispatch sub-agent {} ({})", task.threadId(), task.subagent(), task.toolCallId(), e);
+            return ERROR_PREFIX + e.getMessage();
+        }
+        finally {
+            dispatched.decrementAndGet();
+        }
+    }
+
+    /**
+     * 在本进程运行一个子代理：排队等待并发名额，以流式方式运行并发布输出，返回最后一条回复的文本
+     */
+    private String runLocally(SubAgentTask task, Map<String, ReactAgent> subAgents, Consumer<SubAgentOutput> progress) {
+        String threadId = task.threadId();
+        ReactAgent agent = subAgents.get(task.subagent());
+        if (agent == null) {
+            failed.increment();
+            return unknownType(task, subAgents);
+        }
+        waiting.incrementAndGet();
+        try {
+            permits.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CANCELLED;
+        }
+        finally {
+            waiting.decrementAndGet();
+        }
+        running.incrementAndGet();
+        long startedAt = System.nanoTime();
+        String outcome = "cancelled";
+        RunnableConfig config = RunnableConfig.builder().threadId(task.subThreadId()).build();
+        try {
+            AtomicReference<NodeOutput> last = new AtomicReference<>();
+            AtomicBoolean expired = new AtomicBoolean();
+            Flux.defer(() -> stream(agent, task.description(), config))
+                    .subscribeOn(agentScheduler)
+                    .doOnNext(output -> {
+                        last.set(output);
+                        progress.accept(new SubAgentOutput(threadId, task.toolCallId(), task.subagent(), output));
+                    })
+                    // 整个子代理运行的截止时间（Flux.timeout 只限制相邻两项的间隔）
+                    .takeUntilOther(Mono.delay(timeout).doOnNext(tick -> expired.set(true)))
+                    .blockLast();
+            if (expired.get()) {
+                timedOut.increment();
+                outcome = "timeout";
+                log.warn("[ThreadId {}] Sub-agent {} ({}) timed out after {}", threadId, task.subagent(), task.toolCallId(), timeout);
+                return ERROR_PREFIX + "timed out after " + timeout;
+            }
+            succeeded.increment();
+            outcome = "success";
+            return answer(last.get());
+        }
+        catch (RuntimeException e) {
+            Throwable cause = Exceptions.unwrap(e);
+            if (cause instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+                return CANCELLED;
+            }
+            failed.increment();
+            outcome = "error";
+            log.warn("[ThreadId {}] Sub-agent {} ({}) failed", threadId, task.subagent(), task.toolCallId(), cause);
+            return ERROR_PREFIX + cause.getMessage();
+        }
+        finally {
+            running.decrementAndGet();
+            permits.release();
+            recordDuration(task.subagent(), outcome, System.nanoTime() - startedAt);
+            release(agent, config);
+        }
+    }
+
+    private static String unknownType(SubAgentTask task, Map<String, ReactAgent> subAgents) {
+        return "Error: invoked agent of type " + task.subagent() + ", the only allowed types are " + subAgents.keySet();
+    }
+
+    private void recordDuration(String subagent, String outcome, long nanos) {
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry != null) {
+            Timer.builder("agent.subagent.fanout.duration")
+                    .tag("gate", gate).tag("subagent", subagent).tag("outcome", outcome)
+                    .description("Sub-agent run time under the fan-out executor, excluding queueing")
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(timeout.plusSeconds(1))
+                    .register(meterRegistry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Flux<NodeOutput> stream(ReactAgent agent, String description, RunnableConfig config) {
+        try {
+            return agent.stream(description, config);
+        }
+        catch (GraphRunnerException e) {
+            return Flux.error(e);
+        }
+    }
+
+    private void publish(SubAgentOutput output) {
+        List<FluxSink<SubAgentOutput>> sinks = listeners.get(output.threadId());
+        if (sinks != null) {
+            for (FluxSink<SubAgentOutput> sink : sinks) {
+                sink.next(output);
+            }
+        }
+    }
+
+    /**
+     * 子代理每次调用都是一次性的，运行结束后释放它在保存器中的检查点
+     */
+    private static void release(ReactAgent agent, RunnableConfig config) {
+        try {
+            BaseCheckpointSaver saver = agent.getAndCompileGraph().compileConfig.checkpointSaver().orElse(null);
+            if (saver != null) {
+                saver.release(config);
+            }
+        }
+        catch (Exception e) {
+            log.debug("Failed to release sub-agent checkpoints for {}", config.threadId().orElse(null), e);
+        }
+    }
+
+    /**
+     * 子代理最后一条回复的文本，与 TaskTool 取 {@code ReactAgent.call(...).getText()} 一致
+     */
+    static String answer(NodeOutput output) {
+        OverAllState state = output != null ? output.state() : null;
+        if (state == null) {
+            return "";
+        }
+        Object value = state.value("messages").orElse(null);
+        if (value instanceof List<?> messages && !messages.isEmpty()
+                && messages.get(messages.size() - 1) instanceof AssistantMessage message) {
+            return message.getText();
+        }
+        return "";
+    }
+
+    private static TaskScope.TaskCall parse(AssistantMessage.ToolCall toolCall) {
+        try {
+            JsonNode arguments = MAPPER.readTree(toolCall.arguments());
+            JsonNode description = arguments.get("description");
+            JsonNode subagent = arguments.get("subagent_type");
+            if (description == null || subagent == null) {
+                return null;
+            }
+            return new TaskScope.TaskCall(toolCall.id(), subagent.asText(), description.asText(), toolCall.arguments());
+        }
+        catch (Exception e) {
+            // 参数无法解析时交回 TaskTool，由它返回错误
+            return null;
+        }
+    }
+
+    private static void registerOutcome(MeterRegistry registry, String name, String outcome, LongAdder counter) {
+        FunctionCounter.builder("agent.subagent.fanout.tasks", counter, LongAdder::sum)
+                .tag("gate", name).tag("outcome", outcome)
+                .description("Sub-agent tasks run by the fan-out executor").register(registry);
+    }
+
+    /**
+     * @param running   正在运行的子代理数
+     * @param waiting   等待并发名额的子代理数
+     * @param succeeded 累计成功数
+     * @param failed    累计失败数
+     * @param timedOut  累计超时数
+     * @param cancelled 累计取消数
+     */
+    public record Stats(int running, int waiting, long succeeded, long failed, long timedOut, long cancelled) {
+    }
+
+    public static class Builder {
+        private int maxConcurrency = 4;
+        private Duration timeout = Duration.ofMinutes(10);
+        private SubAgentDispatcher dispatcher;
+        private Ticker ticker = Ticker.systemTicker();
+
+        /**
+         * 进程内同时运行的子代理数上限，0 表示不限
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * 单个子代理的最长运行时间（不含排队），超时的子代理被取消并返回错误结果
+         */
+        public Builder timeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * 把子代理调用交给其他节点执行（如 Redis Streams 工作队列），为 null 时在本进程运行
+         */
+        public Builder dispatcher(SubAgentDispatcher dispatcher) {
+            this.dispatcher = dispatcher;
+            return this;
+        }
+
+        /**
+         * 作用域过期判断使用的时钟，测试中替换以模拟时间流逝
+         */
+        Builder ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public SubAgentFanOut build() {
+            Objects.requireNonNull(ticker, "ticker cannot be null");
+            Objects.requireNonNull(timeout, "timeout cannot be null");
+            if (timeout.isZero() || timeout.isNegative()) {
+                throw new IllegalArgumentException("timeout must be positive");
+            }
+            return new SubAgentFanOut(this);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.lks.common.subagent;
+
+import com.alibaba.cloud.ai.graph.NodeOutput;
+
+/**
+ * 子代理运行中产生的一条节点输出
+ *
+ * @param threadId   父运行的线程ID
+ * @param toolCallId 启动该子代理的 task 工具调用ID，同一类型的并行子代理以此区分
+ * @param subagent   子代理类型（subagent_type）
+ * @param output     子代理的节点输出（含模型流式分片）
+ */
+public record SubAgentOutput(String threadId, String toolCallId, String subagent, NodeOutput output) {
+}
@@ -0,0 +1,19 @@
+package com.lks.common.subagent;
+
+/**
+ * 一次子代理调用（一个 task 工具调用）
+ *
+ * @param threadId    父运行的线程ID
+ * @param toolCallId  task 工具调用ID，子代理在 threadId/toolCallId 线程上运行
+ * @param subagent    子代理类型（subagent_type）
+ * @param description 交给子代理的任务描述
+ */
+public record SubAgentTask(String threadId, String toolCallId, String subagent, String description) {
+
+    /**
+     * @return 子代理运行使用的线程ID
+     */
+    public String subThreadId() {
+        return threadId + "/" + toolCallId;
+    }
+}
@@ -0,0 +1,142 @@
+package com.lks.common.subagent;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+
+/**
+ * 一条模型回复中全部 task 调用的作用域
+ *
+ * 第一个 task 调用到达工具节点时一次性为全部调用各启动一个虚拟线程，工具节点随后按原顺序逐个取结果；
+ * 全部结果取完或作用域被取消（父运行中止、长期无人取结果）时关闭，子代理不会比作用域活得更久。
+ * 单个子代理失败或超时只影响它自己的结果，不取消其他子代理——各子问题的研究互不依赖。
+ */
+final class TaskScope {
+
+    /**
+     * 一次 task 调用
+     *
+     * @param toolCallId  工具调用ID
+     * @param subagent    子代理类型
+     * @param description 交给子代理的任务描述
+     * @param arguments   原始参数，用于确认工具节点执行的是同一调用
+     */
+    record TaskCall(String toolCallId, String subagent, String description, String arguments) {
+    }
+
+    private final String threadId;
+    private final Map<String, TaskCall> calls = new LinkedHashMap<>();
+    private final Map<String, FutureTask<String>> forks = new ConcurrentHashMap<>();
+    private final Set<String> unjoined = ConcurrentHashMap.newKeySet();
+    private boolean started;
+    private boolean closed;
+
+    TaskScope(String threadId, List<TaskCall> calls) {
+        this.threadId = threadId;
+        for (TaskCall call : calls) {
+            this.calls.put(call.toolCallId(), call);
+            this.unjoined.add(call.toolCallId());
+        }
+    }
+
+    String threadId() {
+        return threadId;
+    }
+
+    Set<String> toolCallIds() {
+        return calls.keySet();
+    }
+
+    int width() {
+        return calls.size();
+    }
+
+    /**
+     * 工具节点执行的调用是否属于本作用域（ID 与参数都一致）
+     */
+    boolean contains(String toolCallId, String arguments) {
+        TaskCall call = calls.get(toolCallId);
+        return call != null && Objects.equals(call.arguments(), arguments);
+    }
+
+    /**
+     * 为每个调用启动一个虚拟线程；只有第一次调用生效
+     *
+     * @return 本次是否实际启动
+     */
+    synchronized boolean fork(Function<TaskCall, String> task, ThreadFactory threadFactory) {
+        if (started || closed) {
+            return false;
+        }
+        started = true;
+        for (TaskCall call : calls.values()) {
+            FutureTask<String> fork = new FutureTask<>(() -> task.apply(call));
+            forks.put(call.toolCallId(), fork);
+            threadFactory.newThread(fork).start();
+        }
+        return true;
+    }
+
+    /**
+     * 等待某个调用的结果；最后一个结果取走后作用域关闭，已取消的作用域直接返回取消结果
+     *
+     * @throws InterruptedException 父运行的线程被中断，调用方应取消整个作用域
+     */
+    String join(String toolCallId) throws InterruptedException {
+        FutureTask<String> fork = forks.get(toolCallId);
+        if (fork == null) {
+            return SubAgentFanOut.CANCELLED;
+        }
+        try {
+            return fork.get();
+        }
+        catch (CancellationException e) {
+            return SubAgentFanOut.CANCELLED;
+        }
+        catch (ExecutionException e) {
+            return SubAgentFanOut.ERROR_PREFIX + e.getCause().getMessage();
+        }
+        finally {
+            if (unjoined.remove(toolCallId) && unjoined.isEmpty()) {
+                close();
+            }
+        }
+    }
+
+    /**
+     * 中断所有仍在运行的子代理并关闭作用域
+     *
+     * @return 被中断的子代理数
+     */
+    int cancel() {
+        int cancelled = 0;
+        synchronized (this) {
+            closed = true;
+        }
+        for (FutureTask<String> fork : forks.values()) {
+            if (fork.cancel(true)) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * @return 全部调用的结果是否都已取走（取消后的调用取到的是取消结果）
+     */
+    boolean isJoined() {
+        return unjoined.isEmpty();
+    }
+
+    private synchronized void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,559 @@
+package com.lks.common.summary;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.hook.HookPosition;
+import com.alibaba.cloud.ai.graph.agent.hook.HookPositions;
+import com.alibaba.cloud.ai.graph.agent.hook.JumpTo;
+import com.alibaba.cloud.ai.graph.agent.hook.TokenCounter;
+import com.alibaba.cloud.ai.graph.agent.hook.messages.AgentCommand;
+import com.alibaba.cloud.ai.graph.agent.hook.messages.MessagesModelHook;
+import com.alibaba.cloud.ai.graph.agent.hook.messages.UpdatePolicy;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 后台预计算摘要的摘要钩子
+ *
+ * 框架的 SummarizationHook 在历史超过阈值的那一步同步调用模型生成摘要，代理在这段时间里停顿。
+ * 这里把摘要移出关键路径：
+ * <ul>
+ *     <li>历史达到 {@code prefetchRatio × maxTokensBeforeSummary} 时，按当时的安全切分点把之前的消息交给专用的
+ *     摘要模型在后台生成摘要，每个会话同时只有一个任务</li>
+ *     <li>达到阈值时，若后台摘要已完成且切分点之前的消息未变，直接替换为“首条用户消息 + 摘要 + 切分点之后的消息”；
+ *     切分点之后新追加的消息原样保留</li>
+ *     <li>摘要未完成时最多等待 {@link Builder#maxWaitForPrecomputed(Duration)}（默认不等待），
+ *     之后退回同步摘要；后台摘要失败、历史已被替换或替换后仍超过阈值时同样同步摘要</li>
+ * </ul>
+ * 会话以首条消息的身份区分（与 TokenAccountant 相同），主代理与子代理可共用一个实例。
+ * 替换后的消息格式与框架一致（摘要前缀、提示词、角色名），可与 SummarizationHook 互换。
+ *
+ * 指标：
+ * <ul>
+ *     <li>{@value #STALL}：达到阈值的那一步因摘要停顿的时间，mode 标签为 precomputed / waited / inline</li>
+ *     <li>{@value #STALL_AVOIDED}：使用后台摘要省下的停顿时间（摘要耗时减去等待时间）</li>
+ *     <li>{@value #BACKGROUND}：后台摘要耗时，outcome 标签为 success / failure</li>
+ * </ul>
+ */
+@HookPositions(value = {HookPosition.BEFORE_MODEL})
+public class BackgroundSummarizationHook extends MessagesModelHook {
+
+    private static final Logger log = LoggerFactory.getLogger(BackgroundSummarizationHook.class);
+
+    public static final String STALL = "agent.summarization.stall";
+    public static final String STALL_AVOIDED = "agent.summarization.stall.avoided";
+    public static final String BACKGROUND = "agent.summarization.background";
+
+    private static final int SEARCH_RANGE_FOR_TOOL_PAIRS = 5;
+    private static final String DEFAULT_SUMMARY_PROMPT = """
+            <role>
+            Context Extraction Assistant
+            </role>
+
+            <primary_objective>
+            Your sole objective in this task is to extract the highest quality/most relevant context from the conversation history below.
+            </primary_objective>
+
+            <instructions>
+            The conversation history below will be replaced with the context you extract in this step. Extract and record all of the most important context from the conversation history.
+            Respond ONLY with the extracted context. Do not include any additional information.
+            </instructions>
+
+            <messages>
+            Messages to summarize:
+            %s
+            </messages>""";
+    private static final String DEFAULT_SUMMARY_PREFIX = "## Previous conversation summary:";
+
+    private final ChatModel model;
+    private final TokenCounter tokenCounter;
+    private final int maxTokensBeforeSummary;
+    private final int prefetchTokens;
+    private final int messagesToKeep;
+    private final boolean keepFirstUserMessage;
+    private final String summaryPrompt;
+    private final String summaryPrefix;
+    private final Duration maxWaitForPrecomputed;
+    private final Executor executor;
+    private final Cache<Message, SummaryJob> jobs;
+
+    private final Timer precomputedStall;
+    private final Timer waitedStall;
+    private final Timer inlineStall;
+    private final Timer stallAvoided;
+    private final Timer backgroundSuccess;
+    private final Timer backgroundFailure;
+
+    private BackgroundSummarizationHook(Builder builder) {
+        this.model = builder.model;
+        this.tokenCounter = builder.tokenCounter;
+        this.maxTokensBeforeSummary = builder.maxTokensBeforeSummary;
+        this.prefetchTokens = (int) (builder.maxTokensBeforeSummary * builder.prefetchRatio);
+        this.messagesToKeep = builder.messagesToKeep;
+        this.keepFirstUserMessage = builder.keepFirstUserMessage;
+        this.summaryPrompt = builder.summaryPrompt;
+        this.summaryPrefix = builder.summaryPrefix;
+        this.maxWaitForPrecomputed = builder.maxWaitForPrecomputed;
+        this.executor = builder.executor != null ? builder.executor : Executors.newVirtualThreadPerTaskExecutor();
+        // 以会话首条消息为键，消息随检查点释放后任务一并回收
+        this.jobs = Caffeine.newBuilder()
+                .weakKeys()
+                .maximumSize(builder.maxConversations)
+                .build();
+
+        MeterRegistry registry = builder.meterRegistry != null ? builder.meterRegistry : Metrics.globalRegistry;
+        this.precomputedStall = stallTimer(registry, "precomputed");
+        this.waitedStall = stallTimer(registry, "waited");
+        this.inlineStall = stallTimer(registry, "inline");
+        this.stallAvoided = Timer.builder(STALL_AVOIDED)
+                .description("Summarization time moved off the agent's critical path")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.backgroundSuccess = backgroundTimer(registry, "success");
+        this.backgroundFailure = backgroundTimer(registry, "failure");
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public AgentCommand beforeModel(List<Message> previousMessages, RunnableConfig config) {
+        if (previousMessages.isEmpty()) {
+            return unchanged();
+        }
+        int totalTokens = tokenCounter.countTokens(previousMessages);
+        if (totalTokens < prefetchTokens) {
+            return unchanged();
+        }
+        Message head = previousMessages.get(0);
+        SummaryJob job = jobs.getIfPresent(head);
+        if (job != null && !job.matches(previousMessages)) {
+            // 历史已被替换（摘要、回滚），旧任务作废
+            jobs.asMap().remove(head, job);
+            job = null;
+        }
+        if (totalTokens < maxTokensBeforeSummary) {
+            if (job == null) {
+                prefetch(head, previousMessages, totalTokens);
+            }
+            return unchanged();
+        }
+
+        log.info("Token count {} exceeds threshold {}, triggering summarization", totalTokens, maxTokensBeforeSummary);
+        long startedAt = System.nanoTime();
+        if (job != null) {
+            jobs.asMap().remove(head, job);
+            boolean ready = job.summary().isDone();
+            List<Message> summarized = swapIn(job, previousMessages);
+            if (summarized != null) {
+                long stall = System.nanoTime() - startedAt;
+                (ready ? precomputedStall : waitedStall).record(stall, TimeUnit.NANOSECONDS);
+                stallAvoided.record(Math.max(0, job.summary().join().elapsedNanos() - stall), TimeUnit.NANOSECONDS);
+                return new AgentCommand(summarized, UpdatePolicy.REPLACE);
+            }
+        }
+
+        // 没有可用的后台摘要，同步生成
+        int cutoffIndex = findSafeCutoff(previousMessages);
+        if (cutoffIndex <= 0) {
+            log.warn("Cannot find safe cutoff point for summarization");
+            return unchanged();
+        }
+        Message firstUserMessage = findFirstUserMessage(previousMessages);
+        String summary = createSummary(messagesToSummarize(previousMessages, cutoffIndex, firstUserMessage));
+        List<Message> summarized = replaceWithSummary(previousMessages, cutoffIndex, firstUserMessage, summary);
+        inlineStall.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        return new AgentCommand(summarized, UpdatePolicy.REPLACE);
+    }
+
+    @Override
+    public String getName() {
+        return "BackgroundSummarization";
+    }
+
+    @Override
+    public List<JumpTo> canJumpTo() {
+        return List.of();
+    }
+
+    // ==================== 后台摘要 ====================
+
+    private void prefetch(Message head, List<Message> messages, int totalTokens) {
+        int cutoffIndex = findSafeCutoff(messages);
+        if (cutoffIndex <= 0) {
+            return;
+        }
+        Message firstUserMessage = findFirstUserMessage(messages);
+        List<Message> toSummarize = messagesToSummarize(messages, cutoffIndex, firstUserMessage);
+        CompletableFuture<Precomputed> summary = new CompletableFuture<>();
+        SummaryJob job = new SummaryJob(cutoffIndex, new WeakReference<>(messages.get(cutoffIndex - 1)),
+                firstUserMessage != null ? new WeakReference<>(firstUserMessage) : null, summary);
+        if (jobs.asMap().putIfAbsent(head, job) != null) {
+            return;
+        }
+        log.info("Token count {} reached prefetch threshold {}, summarizing {} messages in background",
+                totalTokens, prefetchTokens, toSummarize.size());
+        try {
+            executor.execute(() -> {
+                long startedAt = System.nanoTime();
+                try {
+                    String text = callModel(toSummarize);
+                    long elapsed = System.nanoTime() - startedAt;
+                    backgroundSuccess.record(elapsed, TimeUnit.NANOSECONDS);
+                    summary.complete(new Precomputed(text, elapsed));
+                }
+                catch (Throwable e) {
+                    log.warn("Background summarization failed: {}", e.getMessage());
+                    backgroundFailure.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                    summary.completeExceptionally(e);
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            log.warn("Failed to schedule background summarization: {}", e.getMessage());
+            jobs.asMap().remove(head, job);
+        }
+    }
+
+    /**
+     * 用后台摘要替换历史，摘要不可用或替换后仍超过阈值时返回 null
+     */
+    private List<Message> swapIn(SummaryJob job, List<Message> messages) {
+        Precomputed precomputed;
+        try {
+            precomputed = maxWaitForPrecomputed.isZero()
+                    ? job.summary().getNow(null)
+                    : job.summary().get(maxWaitForPrecomputed.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException e) {
+            precomputed = null;
+        }
+        catch (ExecutionException e) {
+            return null;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (precomputed == null) {
+            log.info("Background summary not ready after {}, falling back to inline summarization", maxWaitForPrecomputed);
+            return null;
+        }
+        if (!isSafeCutoffPoint(messages, job.cutoffIndex())) {
+            return null;
+        }
+        Message firstUserMessage = job.firstUserMessage() != null ? job.firstUserMessage().get() : null;
+        List<Message> summarized = replaceWithSummary(messages, job.cutoffIndex(), firstUserMessage, precomputed.text());
+        // 预取之后追加的内容过多时，只替换旧前缀仍不够，改为按当前历史重新摘要
+        if (tokenCounter.countTokens(summarized) >= maxTokensBeforeSummary) {
+            log.info("History grew past the threshold after the background summary was started, summarizing inline");
+            return null;
+        }
+        log.info("Swapped in background summary of {} messages, keeping {} recent messages",
+                job.cutoffIndex(), messages.size() - job.cutoffIndex());
+        return summarized;
+    }
+
+    // ==================== 与 SummarizationHook 一致的切分与摘要 ====================
+
+    private Message findFirstUserMessage(List<Message> messages) {
+        if (!keepFirstUserMessage) {
+            return null;
+        }
+        for (Message message : messages) {
+            if (message instanceof UserMessage) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    private static List<Message> messagesToSummarize(List<Message> messages, int cutoffIndex, Message firstUserMessage) {
+        List<Message> toSummarize = new ArrayList<>(cutoffIndex);
+        for (int i = 0; i < cutoffIndex; i++) {
+            Message message = messages.get(i);
+            if (message != firstUserMessage) {
+                toSummarize.add(message);
+            }
+        }
+        return toSummarize;
+    }
+
+    private List<Message> replaceWithSummary(List<Message> messages, int cutoffIndex, Message firstUserMessage,
+                                             String summary) {
+        List<Message> newMessages = new ArrayList<>(messages.size() - cutoffIndex + 2);
+        if (firstUserMessage != null) {
+            newMessages.add(firstUserMessage);
+        }
+        newMessages.add(new SystemMessage(summaryPrefix + "\n" + summary));
+        newMessages.addAll(messages.subList(cutoffIndex, messages.size()));
+        return newMessages;
+    }
+
+    private int findSafeCutoff(List<Message> messages) {
+        if (messages.size() <= messagesToKeep) {
+            return 0;
+        }
+        for (int i = messages.size() - messagesToKeep; i >= 0; i--) {
+            if (isSafeCutoffPoint(messages, i)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 切分点不能把助手的工具调用与对应的工具结果分到两侧
+     */
+    private boolean isSafeCutoffPoint(List<Message> messages, int cutoffIndex) {
+        if (cutoffIndex >= messages.size()) {
+            return true;
+        }
+        int searchStart = Math.max(0, cutoffIndex - SEARCH_RANGE_FOR_TOOL_PAIRS);
+        int searchEnd = Math.min(messages.size(), cutoffIndex + SEARCH_RANGE_FOR_TOOL_PAIRS);
+        for (int i = searchStart; i < searchEnd; i++) {
+            if (messages.get(i) instanceof AssistantMessage assistantMessage && !assistantMessage.getToolCalls().isEmpty()
+                    && separatesToolPair(messages, i, cutoffIndex, toolCallIds(assistantMessage))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> toolCallIds(AssistantMessage assistantMessage) {
+        Set<String> ids = new HashSet<>();
+        for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+            ids.add(toolCall.id());
+        }
+        return ids;
+    }
+
+    private static boolean separatesToolPair(List<Message> messages, int assistantIndex, int cutoffIndex,
+                                             Set<String> toolCallIds) {
+        for (int j = assistantIndex + 1; j < messages.size(); j++) {
+            if (messages.get(j) instanceof ToolResponseMessage toolResponseMessage) {
+                for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                    if (toolCallIds.contains(response.id()) && (assistantIndex < cutoffIndex) != (j < cutoffIndex)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private String createSummary(List<Message> messages) {
+        try {
+            return callModel(messages);
+        }
+        catch (Exception e) {
+            log.error("Failed to create summary: {}", e.getMessage());
+            return "Summary generation failed: " + e.getMessage();
+        }
+    }
+
+    private String callModel(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return "No previous conversation.";
+        }
+        StringBuilder messageText = new StringBuilder();
+        for (Message message : messages) {
+            messageText.append(roleName(message)).append(": ").append(message.getText()).append("\n");
+        }
+        Prompt prompt = new Prompt(List.of(new UserMessage(String.format(summaryPrompt, messageText))));
+        return model.call(prompt).getResult().getOutput().getText();
+    }
+
+    private static String roleName(Message message) {
+        if (message instanceof UserMessage) {
+            return "Human";
+        }
+        if (message instanceof AssistantMessage) {
+            return "Assistant";
+        }
+        if (message instanceof SystemMessage) {
+            return "System";
+        }
+        if (message instanceof ToolResponseMessage) {
+            return "Tool";
+        }
+        return "Unknown";
+    }
+
+    /**
+     * 不修改消息：APPEND 且消息为 null 时不写入状态，避免框架钩子那样每步整体替换一次消息列表
+     */
+    private static AgentCommand unchanged() {
+        return new AgentCommand((List<Message>) null, UpdatePolicy.APPEND);
+    }
+
+    private static Timer stallTimer(MeterRegistry registry, String mode) {
+        return Timer.builder(STALL)
+                .description("Time the agent waited for summarization before a model call")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static Timer backgroundTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder(BACKGROUND)
+                .description("Background summarization latency")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * 一个会话的后台摘要任务
+     *
+     * @param cutoffIndex      摘要覆盖 [0, cutoffIndex) 的消息
+     * @param lastSummarized   切分点前的最后一条消息，用于确认历史前缀未变
+     * @param firstUserMessage 保留的首条用户消息
+     * @param summary          摘要结果
+     */
+    private record SummaryJob(int cutoffIndex, WeakReference<Message> lastSummarized,
+                              WeakReference<Message> firstUserMessage, CompletableFuture<Precomputed> summary) {
+
+        boolean matches(List<Message> messages) {
+            return messages.size() > cutoffIndex && lastSummarized.get() == messages.get(cutoffIndex - 1);
+        }
+    }
+
+    /**
+     * 后台生成的摘要
+     *
+     * @param text         摘要文本
+     * @param elapsedNanos 摘要模型耗时，即同步摘要时代理会停顿的时间
+     */
+    private record Precomputed(String text, long elapsedNanos) {
+    }
+
+    public static class Builder {
+        private ChatModel model;
+        private TokenCounter tokenCounter = TokenCounter.approximateMsgCounter();
+        private int maxTokensBeforeSummary;
+        private double prefetchRatio = 0.8;
+        private int messagesToKeep = 20;
+        private boolean keepFirstUserMessage = true;
+        private String summaryPrompt = DEFAULT_SUMMARY_PROMPT;
+        private String summaryPrefix = DEFAULT_SUMMARY_PREFIX;
+        private Duration maxWaitForPrecomputed = Duration.ZERO;
+        private Executor executor;
+        private MeterRegistry meterRegistry;
+        private long maxConversations = 10_000;
+
+        /**
+         * 生成摘要的模型，建议使用比主模型更便宜、更快的模型
+         */
+        public Builder model(ChatModel model) {
+            this.model = model;
+            return this;
+        }
+
+        public Builder tokenCounter(TokenCounter tokenCounter) {
+            this.tokenCounter = tokenCounter;
+            return this;
+        }
+
+        public Builder maxTokensBeforeSummary(int maxTokensBeforeSummary) {
+            this.maxTokensBeforeSummary = maxTokensBeforeSummary;
+            return this;
+        }
+
+        /**
+         * 历史达到阈值的该比例时开始后台摘要，取值 (0, 1]，为 1 时不预取
+         */
+        public Builder prefetchRatio(double prefetchRatio) {
+            this.prefetchRatio = prefetchRatio;
+            return this;
+        }
+
+        public Builder messagesToKeep(int messagesToKeep) {
+            this.messagesToKeep = messagesToKeep;
+            return this;
+        }
+
+        public Builder keepFirstUserMessage(boolean keepFirstUserMessage) {
+            this.keepFirstUserMessage = keepFirstUserMessage;
+            return this;
+        }
+
+        public Builder summaryPrompt(String summaryPrompt) {
+            this.summaryPrompt = summaryPrompt;
+            return this;
+        }
+
+        public Builder summaryPrefix(String summaryPrefix) {
+            this.summaryPrefix = summaryPrefix;
+            return this;
+        }
+
+        /**
+         * 达到阈值时等待未完成的后台摘要的最长时间，超时后同步摘要
+         */
+        public Builder maxWaitForPrecomputed(Duration maxWaitForPrecomputed) {
+            this.maxWaitForPrecomputed = maxWaitForPrecomputed;
+            return this;
+        }
+
+        /**
+         * 执行后台摘要的线程池，默认每个任务一个虚拟线程
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Builder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        public Builder maxConversations(long maxConversations) {
+            this.maxConversations = maxConversations;
+            return this;
+        }
+
+        public BackgroundSummarizationHook build() {
+            Objects.requireNonNull(model, "model cannot be null");
+            Objects.requireNonNull(tokenCounter, "tokenCounter cannot be null");
+            Objects.requireNonNull(maxWaitForPrecomputed, "maxWaitForPrecomputed cannot be null");
+            if (maxTokensBeforeSummary <= 0) {
+                throw new IllegalArgumentException("maxTokensBeforeSummary must be positive");
+            }
+            if (prefetchRatio <= 0 || prefetchRatio > 1) {
+                throw new IllegalArgumentException("prefetchRatio must be in (0, 1]");
+            }
+            if (maxWaitForPrecomputed.isNegative()) {
+                throw new IllegalArgumentException("maxWaitForPrecomputed cannot be negative");
+            }
+            return new BackgroundSummarizationHook(this);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.lks.common.token;
+
+import com.alibaba.cloud.ai.graph.agent.hook.TokenCounter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 增量 token 计数
+ *
+ * 框架的 {@code TokenCounter.approximateMsgCounter()} 在每次模型调用前重新扫描整段历史，开销随历史长度线性增长。
+ * 这里做两级缓存：
+ * <ul>
+ *     <li>文本级：较长的文本（工具结果、模型回答）按对象身份缓存 token 数，只扫描一次；
+ *     消息对象与其中的字符串在一次运行内不会变化，弱引用键随消息一起回收</li>
+ *     <li>会话级：以会话首条消息的身份为键记录“已计数的消息数 + 末尾消息 + 累计 token 数”。
+ *     新的历史若仍以上次末尾消息为前缀，只累加新追加的消息；消息被删除或替换（如摘要后 REPLACE）时按文本缓存重算</li>
+ * </ul>
+ * 实现 {@link TokenCounter}，可直接交给 {@code SummarizationHook.builder().tokenCounter(...)}；
+ * 工具结果在返回时由 {@code TokenBudgetEvictionInterceptor} 计数一次，之后摘要判断直接命中缓存。
+ * 前缀校验只比较上次末尾消息是否仍在原位置，历史中间的消息被就地替换而长度不变时无法察觉，
+ * 框架的状态更新只会追加或整体替换消息列表，不会出现这种情况。
+ */
+public class TokenAccountant implements TokenCounter {
+
+    private final Tokenizer tokenizer;
+    private final int minCachedLength;
+    private final Cache<String, Integer> textCounts;
+    private final Cache<Message, Ledger> ledgers;
+
+    private final LongAdder textHits = new LongAdder();
+    private final LongAdder textMisses = new LongAdder();
+    private final LongAdder incrementalUpdates = new LongAdder();
+    private final LongAdder fullRecounts = new LongAdder();
+
+    private TokenAccountant(Builder builder) {
+        this.tokenizer = builder.tokenizer;
+        this.minCachedLength = builder.minCachedLength;
+        // 弱引用键按身份比较，不会对长文本计算哈希
+        this.textCounts = Caffeine.newBuilder()
+                .weakKeys()
+                .maximumSize(builder.maxCachedTexts)
+                .build();
+        this.ledgers = Caffeine.newBuilder()
+                .weakKeys()
+                .maximumSize(builder.maxConversations)
+                .build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 统计整段消息历史的 token 数，同一会话的后续调用只计数新追加的消息
+     *
+     * @param messages 消息历史
+     * @return token 数
+     */
+    @Override
+    public int countTokens(List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return 0;
+        }
+        Ledger ledger = ledgers.asMap().compute(messages.get(0), (head, previous) -> update(previous, messages));
+        return (int) Math.min(ledger.total(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * 统计单条消息的 token 数：工具结果、回答文本与工具调用参数
+     */
+    public int countTokens(Message message) {
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            int total = 0;
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                total += countTokens(response.responseData());
+            }
+            return total;
+        }
+        int total = countTokens(message.getText());
+        if (message instanceof AssistantMessage assistantMessage) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                total += countTokens(toolCall.arguments());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 统计文本的 token 数，较长的文本按对象身份缓存
+     */
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        if (text.length() < minCachedLength) {
+            return tokenizer.countTokens(text);
+        }
+        Integer cached = textCounts.getIfPresent(text);
+        if (cached != null) {
+            textHits.increment();
+            return cached;
+        }
+        textMisses.increment();
+        int tokens = tokenizer.countTokens(text);
+        textCounts.put(text, tokens);
+        return tokens;
+    }
+
+    public Stats stats() {
+        return new Stats(textHits.sum(), textMisses.sum(), incrementalUpdates.sum(), fullRecounts.sum(),
+                textCounts.estimatedSize(), ledgers.estimatedSize());
+    }
+
+    private Ledger update(Ledger previous, List<Message> messages) {
+        int size = messages.size();
+        long total;
+        int from;
+        if (previous != null && previous.size() <= size && previous.last().get() == messages.get(previous.size() - 1)) {
+            incrementalUpdates.increment();
+            total = previous.total();
+            from = previous.size();
+        }
+        else {
+            fullRecounts.increment();
+            total = 0;
+            from = 0;
+        }
+        for (int i = from; i < size; i++) {
+            total += countTokens(messages.get(i));
+        }
+        // 末尾消息用弱引用，会话只有一条消息时它就是键本身
+        return new Ledger(size, new WeakReference<>(messages.get(size - 1)), total);
+    }
+
+    private record Ledger(int size, WeakReference<Message> last, long total) {
+    }
+
+    /**
+     * 计数统计
+     *
+     * @param textHits           文本缓存命中次数
+     * @param textMisses         文本缓存未命中（实际扫描）次数
+     * @param incrementalUpdates 只累加新消息的会话计数次数
+     * @param fullRecounts       重算整段历史的会话计数次数
+     * @param cachedTexts        缓存的文本数
+     * @param conversations      跟踪的会话数
+     */
+    public record Stats(long textHits, long textMisses, long incrementalUpdates, long fullRecounts,
+                        long cachedTexts, long conversations) {
+    }
+
+    public static class Builder {
+        private Tokenizer tokenizer = new ApproximateTokenizer();
+        private int minCachedLength = 256;
+        private long maxCachedTexts = 100_000;
+        private long maxConversations = 10_000;
+
+        public Builder tokenizer(Tokenizer tokenizer) {
+            this.tokenizer = tokenizer;
+            return this;
+        }
+
+        /**
+         * 短于该长度的文本直接扫描，不进缓存
+         */
+        public Builder minCachedLength(int minCachedLength) {
+            this.minCachedLength = minCachedLength;
+            return this;
+        }
+
+        public Builder maxCachedTexts(long maxCachedTexts) {
+            this.maxCachedTexts = maxCachedTexts;
+            return this;
+        }
+
+        public Builder maxConversations(long maxConversations) {
+            this.maxConversations = maxConversations;
+            return this;
+        }
+
+        public TokenAccountant build() {
+            Objects.requireNonNull(tokenizer, "tokenizer cannot be null");
+            return new TokenAccountant(this);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.lks.common.token;
+
+/**
+ * 文本 token 计数
+ *
+ * 实现可以是本地的近似估算（零依赖、单次线性扫描），也可以包装模型对应的真实词表。
+ */
+public interface Tokenizer {
+
+    /**
+     * 估算文本的 token 数
+     *
+     * @param text 输入文本，可为 null
+     * @return token 数，null 或空文本为 0
+     */
+    int countTokens(CharSequence text);
+}
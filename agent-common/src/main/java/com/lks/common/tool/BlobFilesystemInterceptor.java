@@ -0,0 +1,295 @@
+package com.lks.common.tool;
+
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.extension.file.EditResult;
+import com.alibaba.cloud.ai.graph.agent.extension.file.FileInfo;
+import com.alibaba.cloud.ai.graph.agent.extension.file.GrepMatch;
+import com.alibaba.cloud.ai.graph.agent.extension.file.WriteResult;
+import com.alibaba.cloud.ai.graph.agent.extension.tools.filesystem.EditFileTool;
+import com.alibaba.cloud.ai.graph.agent.extension.tools.filesystem.GrepTool;
+import com.alibaba.cloud.ai.graph.agent.extension.tools.filesystem.ReadFileTool;
+import com.alibaba.cloud.ai.graph.agent.extension.tools.filesystem.WriteFileTool;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import com.alibaba.cloud.ai.graph.agent.tools.ToolContextConstants;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+import com.lks.common.store.BlobStoreFilesystemBackend;
+import com.lks.common.store.MappedBlobStore;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.execution.ToolCallResultConverter;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+
+/**
+ * 基于内容寻址存储的文件系统工具
+ *
+ * 替代框架的 FilesystemInterceptor（它的工具直接读写磁盘，read_file 每次分页都把整个文件读进堆），
+ * 提供同名的 ls / read_file / write_file / edit_file / glob / grep 工具，全部经 {@link BlobStoreFilesystemBackend} 访问
+ * {@link MappedBlobStore}：
+ * <ul>
+ *     <li>写入按当前线程 ID 计入会话限额，拿不到线程 ID 时（如 task 启动的子代理）计入共享会话</li>
+ *     <li>read_file 按行区间从内存映射中读取，超长行已切分，可以逐页读取大结果</li>
+ *     <li>同一区间、内容未变的 read_file 结果仍在对话中时，只返回一行提示，不再重复发送整段内容</li>
+ *     <li>工具结果原样返回，不经 JSON 字符串转义（换行、制表符与引号不再被转义成两个字符）</li>
+ * </ul>
+ */
+public class BlobFilesystemInterceptor extends ModelInterceptor {
+
+    private static final String DEFAULT_SYSTEM_PROMPT = """
+            ## Filesystem Tools `ls`, `read_file`, `write_file`, `edit_file`, `glob`, `grep`
+
+            You have access to a filesystem which you can interact with using these tools.
+            All file paths must start with a /.
+
+            - ls: list files in a directory (requires absolute path)
+            - read_file: read a file from the filesystem; page through large files with offset and limit
+            - write_file: write to a file in the filesystem
+            - edit_file: edit a file in the filesystem
+            - glob: find files matching a pattern (e.g., "**/*.py")
+            - grep: search for text within files
+            """;
+    private static final String LS_DESCRIPTION = """
+            Lists all files in the filesystem, filtering by directory.
+
+            Usage:
+            - The path parameter must be an absolute path, not a relative path
+            - Returns the files (with their size in bytes) and subdirectories of the directory
+            - You should almost ALWAYS use this tool before using the Read or Edit tools.
+            """;
+    private static final String READ_FILE_DESCRIPTION = """
+            Reads a file from the filesystem.
+
+            Usage:
+            - The file_path parameter must be an absolute path, not a relative path
+            - By default, it reads up to 500 lines starting from the beginning of the file
+            - Use pagination with offset and limit parameters to avoid context overflow, e.g. read_file(path, offset=100, limit=200)
+            - Lines longer than 2000 bytes are split into several numbered lines, so large single-line results can be paged too
+            - Results are returned using cat -n format, with line numbers starting at 1
+            - If the same range of an unchanged file is already in the conversation, a short notice is returned instead of the content
+            """;
+    private static final String GLOB_DESCRIPTION = """
+            Find files matching a glob pattern.
+
+            Usage:
+            - Supports standard glob patterns: `*` (any characters), `**` (any directories), `?` (single character)
+            - The pattern is matched against paths relative to the path parameter (default: /)
+            """;
+    private static final int DEFAULT_READ_LIMIT = 500;
+    /** 短于该长度的读取结果直接返回，不值得去重 */
+    private static final int MIN_DEDUPLICATED_LENGTH = 512;
+    private static final Pattern LITERAL_METACHARACTERS = Pattern.compile("[\\\\.\\[\\]{}()*+?^$|-]");
+    private static final ToolCallResultConverter RAW_RESULT = (result, returnType) -> String.valueOf(result);
+
+    private final BlobStoreFilesystemBackend backend;
+    private final String systemPrompt;
+    private final List<ToolCallback> tools;
+
+    private BlobFilesystemInterceptor(Builder builder) {
+        this.backend = builder.backend;
+        this.systemPrompt = builder.systemPrompt != null ? builder.systemPrompt : DEFAULT_SYSTEM_PROMPT;
+        List<ToolCallback> toolList = new ArrayList<>();
+        toolList.add(tool("ls", LS_DESCRIPTION, ListRequest.class, this::ls));
+        toolList.add(tool("read_file", READ_FILE_DESCRIPTION, ReadFileTool.ReadFileRequest.class, this::readFile));
+        if (!builder.readOnly) {
+            toolList.add(tool("write_file", WriteFileTool.DESCRIPTION, WriteFileTool.WriteFileRequest.class, this::writeFile));
+            toolList.add(tool("edit_file", EditFileTool.DESCRIPTION, EditFileTool.EditFileRequest.class, this::editFile));
+        }
+        toolList.add(tool("glob", GLOB_DESCRIPTION, GlobRequest.class, this::glob));
+        toolList.add(tool("grep", GrepTool.DESCRIPTION, GrepTool.GrepRequest.class, this::grep));
+        this.tools = List.copyOf(toolList);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<ToolCallback> getTools() {
+        return tools;
+    }
+
+    @Override
+    public String getName() {
+        return "BlobFilesystem";
+    }
+
+    @Override
+    public ModelResponse interceptModel(ModelRequest request, ModelCallHandler handler) {
+        SystemMessage systemMessage = request.getSystemMessage() == null
+                ? new SystemMessage(systemPrompt)
+                : new SystemMessage(request.getSystemMessage().getText() + "\n\n" + systemPrompt);
+        return handler.call(ModelRequest.builder(request).systemMessage(systemMessage).build());
+    }
+
+    // ==================== 工具实现 ====================
+
+    private String ls(ListRequest request, ToolContext toolContext) {
+        List<FileInfo> infos = backend.lsInfo(request.path);
+        if (infos.isEmpty()) {
+            return "No files found in directory: " + request.path;
+        }
+        StringBuilder result = new StringBuilder();
+        for (FileInfo info : infos) {
+            result.append(info.getPath());
+            if (!Boolean.TRUE.equals(info.getIsDir()) && info.getSize() != null) {
+                result.append(" (").append(info.getSize()).append(" bytes)");
+            }
+            result.append('\n');
+        }
+        return result.toString().stripTrailing();
+    }
+
+    private String readFile(ReadFileTool.ReadFileRequest request, ToolContext toolContext) {
+        int offset = request.offset != null ? request.offset : 0;
+        int limit = request.limit != null ? request.limit : DEFAULT_READ_LIMIT;
+        String content = backend.read(request.filePath, offset, limit);
+        if (content.length() >= MIN_DEDUPLICATED_LENGTH && alreadyInConversation(content, toolContext)) {
+            return "File '" + request.filePath + "' (offset=" + offset + ", limit=" + limit + ") is unchanged since an earlier "
+                    + "read_file call whose output is still in this conversation. Refer to that output instead of reading it again.";
+        }
+        return content;
+    }
+
+    private String writeFile(WriteFileTool.WriteFileRequest request, ToolContext toolContext) {
+        WriteResult result = backend(toolContext).write(request.filePath, request.content);
+        return result.getError() != null ? result.getError() : "Successfully created file: " + request.filePath;
+    }
+
+    private String editFile(EditFileTool.EditFileRequest request, ToolContext toolContext) {
+        EditResult result = backend(toolContext).edit(request.filePath, request.oldString, request.newString, request.replaceAll);
+        return result.getError() != null
+                ? result.getError()
+                : "Successfully replaced " + result.getOccurrences() + " occurrence(s) in " + request.filePath;
+    }
+
+    private String glob(GlobRequest request, ToolContext toolContext) {
+        List<FileInfo> infos = backend.globInfo(request.pattern, request.path != null ? request.path : "/");
+        if (infos.isEmpty()) {
+            return "No files found matching pattern: " + request.pattern;
+        }
+        return String.join("\n", infos.stream().map(FileInfo::getPath).toList());
+    }
+
+    private String grep(GrepTool.GrepRequest request, ToolContext toolContext) {
+        // 与框架工具一致，pattern 按字面文本匹配；转义写法同时适用于 Java 正则与 ripgrep
+        Object raw = backend.grepRaw(LITERAL_METACHARACTERS.matcher(request.pattern).replaceAll("\\\\$0"), request.path, request.glob);
+        if (raw instanceof String error) {
+            return error;
+        }
+        List<String> results = new ArrayList<>();
+        Set<String> files = new LinkedHashSet<>();
+        for (Object item : (List<?>) raw) {
+            if (item instanceof GrepMatch match) {
+                switch (request.outputMode == null ? "files_with_matches" : request.outputMode) {
+                    case "content" -> results.add(match.getPath() + ":" + match.getLine() + ": " + match.getText());
+                    case "count" -> results.add(match.getPath() + ": matched");
+                    default -> files.add(match.getPath());
+                }
+            }
+        }
+        results.addAll(files);
+        if (results.isEmpty()) {
+            return "No matches found for pattern: " + request.pattern;
+        }
+        return String.join("\n", results);
+    }
+
+    /**
+     * 写入计入当前线程的会话
+     */
+    private BlobStoreFilesystemBackend backend(ToolContext toolContext) {
+        if (toolContext != null && toolContext.getContext().get(ToolContextConstants.AGENT_CONFIG_CONTEXT_KEY) instanceof RunnableConfig config) {
+            return backend.forSession(config.threadId().orElse(MappedBlobStore.SHARED_SESSION));
+        }
+        return backend;
+    }
+
+    /**
+     * 当前对话中是否已有内容完全相同的 read_file 结果（摘要或上下文编辑清掉后即不再命中）
+     */
+    private static boolean alreadyInConversation(String content, ToolContext toolContext) {
+        if (toolContext == null || !(toolContext.getContext().get(ToolContextConstants.AGENT_STATE_CONTEXT_KEY) instanceof OverAllState state)) {
+            return false;
+        }
+        List<Message> messages = state.<List<Message>>value("messages").orElse(List.of());
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof ToolResponseMessage toolResponseMessage) {
+                for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                    if ("read_file".equals(response.name()) && content.equals(response.responseData())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static <I> ToolCallback tool(String name, String description, Class<I> inputType,
+                                         BiFunction<I, ToolContext, String> function) {
+        return FunctionToolCallback.builder(name, function)
+                .description(description)
+                .inputType(inputType)
+                .toolCallResultConverter(RAW_RESULT)
+                .build();
+    }
+
+    public static class ListRequest {
+        @JsonProperty(required = true, value = "path")
+        @JsonPropertyDescription("The absolute directory path to list files from")
+        public String path;
+    }
+
+    public static class GlobRequest {
+        @JsonProperty(required = true, value = "pattern")
+        @JsonPropertyDescription("The glob pattern to match files")
+        public String pattern;
+
+        @JsonProperty(value = "path")
+        @JsonPropertyDescription("The directory to search in (default: /)")
+        public String path;
+    }
+
+    public static class Builder {
+        private BlobStoreFilesystemBackend backend;
+        private String systemPrompt;
+        private boolean readOnly = false;
+
+        /**
+         * 文件系统后端，其会话作为拿不到线程 ID 时的默认会话
+         */
+        public Builder backend(BlobStoreFilesystemBackend backend) {
+            this.backend = backend;
+            return this;
+        }
+
+        public Builder systemPrompt(String systemPrompt) {
+            this.systemPrompt = systemPrompt;
+            return this;
+        }
+
+        public Builder readOnly(boolean readOnly) {
+            this.readOnly = readOnly;
+            return this;
+        }
+
+        public BlobFilesystemInterceptor build() {
+            Objects.requireNonNull(backend, "backend cannot be null");
+            return new BlobFilesystemInterceptor(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.lks.common.tool;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+/**
+ * 带结果缓存的工具装饰器
+ *
+ * 工具定义与元数据保持不变，调用经 {@link ToolResultCache} 去重与缓存。
+ * ToolContext 只包含 Agent 运行状态，不参与缓存键。
+ */
+public class CachingToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+    private final ToolResultCache cache;
+
+    public CachingToolCallback(ToolCallback delegate, ToolResultCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return cache.getOrCall(delegate.getToolDefinition().name(), toolInput, () -> delegate.call(toolInput));
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        return cache.getOrCall(delegate.getToolDefinition().name(), toolInput,
+                () -> delegate.call(toolInput, toolContext));
+    }
+
+    public ToolCallback getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,165 @@
+package com.lks.common.tool;
+
+import com.alibaba.cloud.ai.graph.agent.extension.file.FilesystemBackend;
+import com.alibaba.cloud.ai.graph.agent.extension.file.LocalFilesystemBackend;
+import com.alibaba.cloud.ai.graph.agent.extension.file.WriteResult;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+import com.lks.common.token.TokenAccountant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 按 token 预算驱逐大工具结果
+ *
+ * 与框架 LargeResultEvictionInterceptor 行为一致（超限结果写入 large_tool_results/ 目录，返回路径与前 10 行样例），
+ * 区别在于是否驱逐由 {@link TokenAccountant} 判断，而不是“字符数 &gt; 4 × 上限”：中文结果在框架的判断下
+ * 要到约 4 倍上限才会被驱逐。未驱逐的结果在这里计数一次并按对象身份缓存，之后摘要钩子统计历史时直接命中。
+ */
+public class TokenBudgetEvictionInterceptor extends ToolInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenBudgetEvictionInterceptor.class);
+
+    private static final String LARGE_RESULTS_DIR = System.getProperty("user.dir") + "/large_tool_results/";
+    private static final int SAMPLE_LINES_COUNT = 10;
+    private static final int SAMPLE_LINE_MAX_LENGTH = 1000;
+    private static final String TOO_LARGE_TOOL_MSG = """
+            Tool result too large, the result of this tool call %s was saved in the filesystem at this path: %s
+            You can read the result from the filesystem by using the read_file tool, but make sure to only read part of the result at a time.
+            You can do this by specifying an offset and limit in the read_file tool call.
+            For example, to read the first 100 lines, you can use the read_file tool with offset=0 and limit=100.
+
+            Here are the first 10 lines of the result:
+            %s
+            """;
+
+    private final TokenAccountant tokenAccountant;
+    private final int toolTokenLimitBeforeEvict;
+    private final Set<String> excludedTools;
+    private final FilesystemBackend backend;
+
+    private TokenBudgetEvictionInterceptor(Builder builder) {
+        this.tokenAccountant = builder.tokenAccountant;
+        this.toolTokenLimitBeforeEvict = builder.toolTokenLimitBeforeEvict;
+        this.excludedTools = Set.copyOf(builder.excludedTools);
+        this.backend = builder.backend != null ? builder.backend : new LocalFilesystemBackend(null, false, 10);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public ToolCallResponse interceptToolCall(ToolCallRequest request, ToolCallHandler handler) {
+        ToolCallResponse response = handler.call(request);
+        String result = response.getResult();
+        if (result == null || result.isEmpty() || excludedTools.contains(request.getToolName())) {
+            return response;
+        }
+        int tokens = tokenAccountant.countTokens(result);
+        if (tokens <= toolTokenLimitBeforeEvict) {
+            return response;
+        }
+        log.debug("Evicting {} result of ~{} tokens (limit {})", request.getToolName(), tokens, toolTokenLimitBeforeEvict);
+        return evict(response, request.getToolCallId());
+    }
+
+    @Override
+    public String getName() {
+        return "TokenBudgetEviction";
+    }
+
+    private ToolCallResponse evict(ToolCallResponse response, String toolCallId) {
+        String filePath = LARGE_RESULTS_DIR + sanitizeToolCallId(toolCallId);
+        WriteResult writeResult = backend.write(filePath, response.getResult());
+        if (writeResult.getError() != null) {
+            log.warn("Failed to write large tool result to {}: {}", filePath, writeResult.getError());
+        }
+        String evictedMessage = String.format(TOO_LARGE_TOOL_MSG, toolCallId, filePath, contentSample(response.getResult()));
+        return ToolCallResponse.builder()
+                .content(evictedMessage)
+                .toolName(response.getToolName())
+                .toolCallId(response.getToolCallId())
+                .status("evicted_to_filesystem")
+                .build();
+    }
+
+    private static String sanitizeToolCallId(String toolCallId) {
+        return toolCallId == null ? "unknown" : toolCallId.replaceAll("[^a-zA-Z0-9_-]", "_");
+    }
+
+    /**
+     * 前 10 行，带行号，超长的行截断
+     */
+    private static String contentSample(String content) {
+        StringBuilder sample = new StringBuilder();
+        int start = 0;
+        for (int line = 1; line <= SAMPLE_LINES_COUNT && start <= content.length(); line++) {
+            int end = content.indexOf('\n', start);
+            if (end < 0) {
+                end = content.length();
+            }
+            String text = content.substring(start, Math.min(end, start + SAMPLE_LINE_MAX_LENGTH));
+            if (end - start > SAMPLE_LINE_MAX_LENGTH) {
+                text += "... (truncated)";
+            }
+            sample.append(String.format("%6d\t%s\n", line, text));
+            start = end + 1;
+        }
+        return sample.toString();
+    }
+
+    public static class Builder {
+        private TokenAccountant tokenAccountant;
+        private int toolTokenLimitBeforeEvict = 20000;
+        private final Set<String> excludedTools = new HashSet<>();
+        private FilesystemBackend backend;
+
+        /**
+         * 与摘要钩子共用同一个实例，工具结果只计数一次
+         */
+        public Builder tokenAccountant(TokenAccountant tokenAccountant) {
+            this.tokenAccountant = tokenAccountant;
+            return this;
+        }
+
+        public Builder toolTokenLimitBeforeEvict(int toolTokenLimitBeforeEvict) {
+            this.toolTokenLimitBeforeEvict = toolTokenLimitBeforeEvict;
+            return this;
+        }
+
+        public Builder excludeTools(Set<String> toolNames) {
+            this.excludedTools.addAll(toolNames);
+            return this;
+        }
+
+        /**
+         * 排除文件系统工具，避免读取被驱逐的结果时再次驱逐
+         */
+        public Builder excludeFilesystemTools() {
+            return excludeTools(Set.of("ls", "read_file", "write_file", "edit_file", "glob", "grep"));
+        }
+
+        /**
+         * 驱逐结果的写入后端，默认写本地文件系统
+         */
+        public Builder backend(FilesystemBackend backend) {
+            this.backend = backend;
+            return this;
+        }
+
+        public TokenBudgetEvictionInterceptor build() {
+            Objects.requireNonNull(tokenAccountant, "tokenAccountant cannot be null");
+            if (toolTokenLimitBeforeEvict <= 0) {
+                throw new IllegalArgumentException("toolTokenLimitBeforeEvict must be positive");
+            }
+            return new TokenBudgetEvictionInterceptor(this);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.lks.common.tool;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 工具参数规范化
+ *
+ * 模型生成的工具参数经常只在字段顺序、空白或显式 null 上不同，规范化后才能作为缓存键：
+ * 对象字段按名称排序、去掉 null 字段、字符串首尾去空白并合并连续空白。
+ * 非 JSON 输入按纯文本做同样的空白处理。
+ */
+public final class ToolArguments {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private ToolArguments() {
+    }
+
+    public static String normalize(String arguments) {
+        if (arguments == null || arguments.isBlank()) {
+            return "";
+        }
+        try {
+            return MAPPER.writeValueAsString(canonical(MAPPER.readTree(arguments)));
+        }
+        catch (JsonProcessingException e) {
+            return normalizeText(arguments);
+        }
+    }
+
+    private static JsonNode canonical(JsonNode node) {
+        if (node.isObject()) {
+            List<String> names = new ArrayList<>();
+            node.fieldNames().forEachRemaining(names::add);
+            Collections.sort(names);
+            ObjectNode sorted = JsonNodeFactory.instance.objectNode();
+            for (String name : names) {
+                JsonNode value = node.get(name);
+                if (value != null && !value.isNull()) {
+                    sorted.set(name, canonical(value));
+                }
+            }
+            return sorted;
+        }
+        if (node.isArray()) {
+            ArrayNode array = JsonNodeFactory.instance.arrayNode();
+            for (Iterator<JsonNode> it = node.elements(); it.hasNext(); ) {
+                array.add(canonical(it.next()));
+            }
+            return array;
+        }
+        if (node.isTextual()) {
+            return TextNode.valueOf(normalizeText(node.asText()));
+        }
+        return node;
+    }
+
+    private static String normalizeText(String text) {
+        return text.strip().replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,409 @@
+package com.lks.common.tool;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.lks.common.store.ContentAddressedStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 工具结果缓存
+ *
+ * 按“工具名 + 规范化参数”缓存外部工具（搜索、论文下载等）的结果：
+ * <ul>
+ *     <li>每个工具单独配置 TTL，未配置的工具不缓存</li>
+ *     <li>single-flight：并发的相同调用只发起一次外部请求，其余调用等待同一结果</li>
+ *     <li>可选落盘到 {@link ContentAddressedStore}，重启后仍可命中，相同内容只存一份；
+ *     后台定期删除过期结果及不再被引用的内容</li>
+ * </ul>
+ * 工具抛出异常时不缓存，等待中的调用收到同一个异常。命中/未命中/合并次数可经 {@link #bindTo} 导出为指标。
+ */
+public class ToolResultCache implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolResultCache.class);
+
+    /** 新写入的内容在引用落盘前不被当作孤立对象删除 */
+    private static final Duration PRUNE_GRACE = Duration.ofMinutes(5);
+
+    private final String name;
+    private final Map<String, Duration> ttlByTool;
+    private final Cache<String, Entry> memory;
+    private final ContentAddressedStore store;
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+    private final LongAdder pruned = new LongAdder();
+    private final ScheduledExecutorService pruner;
+
+    protected ToolResultCache(Builder builder) {
+        this.name = builder.name;
+        this.ttlByTool = Map.copyOf(builder.ttlByTool);
+        this.store = builder.store;
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(builder.maxMemoryChars)
+                .weigher((String key, Entry entry) -> entry.value().length())
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return Math.max(0, entry.expiresAtMillis() - System.currentTimeMillis()) * 1_000_000L;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, entry, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        if (store != null && builder.pruneInterval != null && builder.pruneInterval.isPositive()) {
+            this.pruner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "tool-cache-pruner");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = builder.pruneInterval.toMillis();
+            // 启动时先清理一次上次运行遗留的过期结果
+            pruner.scheduleWithFixedDelay(this::pruneQuietly, 0, interval, TimeUnit.MILLISECONDS);
+        }
+        else {
+            this.pruner = null;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return 该工具是否配置了缓存
+     */
+    public boolean isCached(String toolName) {
+        return ttlByTool.containsKey(toolName);
+    }
+
+    /**
+     * 用缓存装饰工具列表，只有配置了 TTL 的工具会被包装
+     */
+    public List<ToolCallback> decorate(List<ToolCallback> toolCallbacks) {
+        List<ToolCallback> decorated = new ArrayList<>(toolCallbacks.size());
+        for (ToolCallback toolCallback : toolCallbacks) {
+            decorated.add(isCached(toolCallback.getToolDefinition().name())
+                    ? new CachingToolCallback(toolCallback, this)
+                    : toolCallback);
+        }
+        return decorated;
+    }
+
+    /**
+     * 取缓存结果，未命中时执行调用并缓存
+     *
+     * @param toolName  工具名
+     * @param arguments 原始参数（JSON）
+     * @param call      实际调用
+     * @return 工具结果
+     */
+    public String getOrCall(String toolName, String arguments, Supplier<String> call) {
+        Duration ttl = ttlByTool.get(toolName);
+        if (ttl == null) {
+            return call.get();
+        }
+        String key = toolName + ":" + ToolArguments.normalize(arguments);
+
+        Entry entry = memory.getIfPresent(key);
+        if (entry != null) {
+            hits.increment();
+            return entry.value();
+        }
+        entry = readStore(key);
+        if (entry != null) {
+            diskHits.increment();
+            memory.put(key, entry);
+            return entry.value();
+        }
+
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> leader = inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            collapsed.increment();
+            return await(leader);
+        }
+        try {
+            // 上一个调用可能恰好在两次查找之间完成并让出位置，再查一次，避免重复调用
+            Entry cached = memory.getIfPresent(key);
+            if (cached != null) {
+                hits.increment();
+                mine.complete(cached.value());
+                return cached.value();
+            }
+            cached = readStore(key);
+            if (cached != null) {
+                diskHits.increment();
+                memory.put(key, cached);
+                mine.complete(cached.value());
+                return cached.value();
+            }
+            misses.increment();
+            String result = call.get();
+            Entry created = new Entry(result, System.currentTimeMillis() + ttl.toMillis());
+            memory.put(key, created);
+            writeStore(key, created);
+            mine.complete(result);
+            return result;
+        }
+        catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * 删除落盘存储中过期的结果，以及不再被任何结果引用的内容
+     *
+     * @return 删除的结果数
+     */
+    public int prune() throws IOException {
+        if (store == null) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        Set<String> live = new HashSet<>();
+        int removed = store.pruneRefs(ref -> {
+            String[] parts = ref.split(" ");
+            if (parts.length != 2) {
+                return true;
+            }
+            try {
+                if (Long.parseLong(parts[1]) <= now) {
+                    return true;
+                }
+            }
+            catch (NumberFormatException e) {
+                return true;
+            }
+            live.add(parts[0]);
+            return false;
+        });
+        int objects = store.retainObjects(live, PRUNE_GRACE);
+        pruned.add(removed);
+        if (removed > 0 || objects > 0) {
+            log.info("[{}] pruned {} expired tool results and {} unreferenced objects", name, removed, objects);
+        }
+        return removed;
+    }
+
+    /**
+     * 注册命中（内存 / 磁盘）、实际调用、合并调用、清理数与内存条目数指标
+     *
+     * @param registry 指标注册表
+     * @param name     cache 标签值
+     * @return this
+     */
+    public ToolResultCache bindTo(MeterRegistry registry, String name) {
+        FunctionCounter.builder("agent.cache.tool.hits", hits, LongAdder::sum)
+                .tag("cache", name).tag("tier", "memory").description("Tool calls served from the tool result cache")
+                .register(registry);
+        FunctionCounter.builder("agent.cache.tool.hits", diskHits, LongAdder::sum)
+                .tag("cache", name).tag("tier", "disk").description("Tool calls served from the tool result cache")
+                .register(registry);
+        FunctionCounter.builder("agent.cache.tool.misses", misses, LongAdder::sum)
+                .tag("cache", name).description("Tool calls that reached the tool")
+                .register(registry);
+        FunctionCounter.builder("agent.cache.tool.collapsed", collapsed, LongAdder::sum)
+                .tag("cache", name).description("Tool calls that waited on an identical in-flight call")
+                .register(registry);
+        FunctionCounter.builder("agent.cache.tool.pruned", pruned, LongAdder::sum)
+                .tag("cache", name).description("Expired tool results removed from the store")
+                .register(registry);
+        Gauge.builder("agent.cache.tool.size", memory, Cache::estimatedSize)
+                .tag("cache", name).description("Tool results cached in memory")
+                .register(registry);
+        return this;
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), diskHits.sum(), misses.sum(), collapsed.sum(), memory.estimatedSize());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void close() {
+        if (pruner != null) {
+            pruner.shutdownNow();
+        }
+    }
+
+    // ==================== 内部实现 ====================
+
+    private void pruneQuietly() {
+        try {
+            prune();
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn("[{}] failed to prune tool result store: {}", name, e.getMessage());
+        }
+    }
+
+    private static String await(CompletableFuture<String> leader) {
+        try {
+            return leader.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 引用内容格式：“内容哈希 过期时间毫秒”
+     */
+    private Entry readStore(String key) {
+        if (store == null) {
+            return null;
+        }
+        try {
+            Optional<String> ref = store.getRef(key);
+            if (ref.isEmpty()) {
+                return null;
+            }
+            String[] parts = ref.get().split(" ");
+            long expiresAt = Long.parseLong(parts[1]);
+            if (expiresAt <= System.currentTimeMillis()) {
+                store.deleteRef(key);
+                return null;
+            }
+            return store.get(parts[0])
+                    .map(bytes -> new Entry(new String(bytes, StandardCharsets.UTF_8), expiresAt))
+                    .orElse(null);
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn("[{}] failed to read tool result store: {}", name, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeStore(String key, Entry entry) {
+        if (store == null) {
+            return;
+        }
+        try {
+            String hash = store.put(entry.value().getBytes(StandardCharsets.UTF_8));
+            store.putRef(key, hash + " " + entry.expiresAtMillis());
+        }
+        catch (IOException e) {
+            log.warn("[{}] failed to persist tool result: {}", name, e.getMessage());
+        }
+    }
+
+    private record Entry(String value, long expiresAtMillis) {
+    }
+
+    /**
+     * 缓存统计
+     *
+     * @param hits      内存命中次数
+     * @param diskHits  磁盘命中次数
+     * @param misses    实际调用次数
+     * @param collapsed 合并到进行中请求的调用次数
+     * @param size      内存中的条目数
+     */
+    public record Stats(long hits, long diskHits, long misses, long collapsed, long size) {
+
+        public double hitRate() {
+            long total = hits + diskHits + misses + collapsed;
+            return total == 0 ? 0 : (double) (hits + diskHits + collapsed) / total;
+        }
+    }
+
+    public static class Builder {
+        private String name = "tool-result-cache";
+        private final Map<String, Duration> ttlByTool = new HashMap<>();
+        private long maxMemoryChars = 64L * 1024 * 1024;
+        private ContentAddressedStore store;
+        private Duration pruneInterval = Duration.ofHours(1);
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * 为工具配置缓存 TTL
+         */
+        public Builder toolTtl(String toolName, Duration ttl) {
+            this.ttlByTool.put(toolName, ttl);
+            return this;
+        }
+
+        public Builder toolTtls(Map<String, Duration> ttls) {
+            this.ttlByTool.putAll(ttls);
+            return this;
+        }
+
+        /**
+         * 内存中缓存结果的总字符数上限
+         */
+        public Builder maxMemoryChars(long maxMemoryChars) {
+            this.maxMemoryChars = maxMemoryChars;
+            return this;
+        }
+
+        /**
+         * 落盘存储，为 null 时只缓存在内存
+         */
+        public Builder store(ContentAddressedStore store) {
+            this.store = store;
+            return this;
+        }
+
+        /**
+         * 落盘存储的清理间隔，为 null 或非正数时不自动清理
+         */
+        public Builder pruneInterval(Duration pruneInterval) {
+            this.pruneInterval = pruneInterval;
+            return this;
+        }
+
+        public ToolResultCache build() {
+            return new ToolResultCache(this);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.lks.common.budget;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 验证预算治理：按预算压力依次降级、子代理用量计入父运行且阶段不低于父运行、收尾轮数与结束判断、
+ * 降级后拒绝 task 调用，以及按模型单价估算费用
+ */
+class RunGovernorTest {
+
+    private static final RunBudget THOUSAND_PROMPT_TOKENS = RunBudget.builder().promptTokens(1000).build();
+
+    @Test
+    void stagesAdvanceWithBudgetPressure() {
+        RunGovernor governor = RunGovernor.builder().runBudget(THOUSAND_PROMPT_TOKENS).build();
+        RunLedger ledger = governor.open(RunGovernor.Scope.RUN, config("t-1"));
+
+        assertThat(governor.evaluate(ledger)).isEqualTo(BudgetStage.NORMAL);
+        ledger.chargeModel(500, 0, 0);
+        assertThat(governor.evaluate(ledger)).isEqualTo(BudgetStage.ECONOMY);
+        ledger.chargeModel(200, 0, 0);
+        assertThat(governor.evaluate(ledger)).isEqualTo(BudgetStage.NO_SUBAGENTS);
+        ledger.chargeModel(150, 0, 0);
+        assertThat(governor.evaluate(ledger)).isEqualTo(BudgetStage.FINAL);
+        ledger.chargeModel(150, 0, 0);
+        assertThat(governor.evaluate(ledger)).isEqualTo(BudgetStage.EXHAUSTED);
+
+        assertThat(ledger.exhausted()).containsExactly(RunBudget.Kind.PROMPT_TOKENS);
+        assertThat(governor.stats()).isEqualTo(new RunGovernor.Stats(1, 1, 1, 1, 1));
+    }
+
+    @Test
+    void skippedStagesAreCountedAndStagesNeverGoBack() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RunGovernor governor = RunGovernor.builder().runBudget(THOUSAND_PROMPT_TOKENS).build().bindTo(registry, "research");
+        RunLedger ledger = governor.open(RunGovernor.Scope.RUN, config("t-1"));
+
+        ledger.chargeModel(900, 0, 0);
+        assertThat(governor.evaluate(ledger)).isEqualTo(BudgetStage.FINAL);
+        assertThat(governor.evaluate(ledger)).isEqualTo(BudgetStage.FINAL);
+
+        assertThat(governor.stats()).isEqualTo(new RunGovernor.Stats(1, 1, 1, 1, 0));
+        assertThat(registry.get("agent.budget.stage").tag("scope", "run").tag("stage", "no_subagents").counter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("agent.budget.active").gauge().value()).isEqualTo(1);
+        governor.close(ledger);
+        assertThat(registry.get("agent.budget.active").gauge().value()).isZero();
+        assertThat(registry.get("agent.budget.pressure").summary().max()).isCloseTo(0.9, within(1e-9));
+    }
+
+    @Test
+    void subAgentUsageIsChargedToTheParentRun() {
+        RunGovernor governor = RunGovernor.builder()
+                .runBudget(THOUSAND_PROMPT_TOKENS)
+                .subAgentBudget(RunBudget.builder().promptTokens(5000).toolCalls(10).build())
+                .build();
+        RunLedger run = governor.open(RunGovernor.Scope.RUN, config("t-1"));
+        RunLedger subAgent = governor.open(RunGovernor.Scope.SUBAGENT, config("t-1/call-1"));
+        RunLedger orphan = governor.open(RunGovernor.Scope.SUBAGENT, config("t-2/call-1"));
+
+        subAgent.chargeModel(720, 30, 0.5);
+        subAgent.chargeTool(2048);
+
+        assertThat(subAgent.parent()).isSameAs(run);
+        assertThat(orphan.parent()).isNull();
+        assertThat(run.used(RunBudget.Kind.PROMPT_TOKENS)).isEqualTo(720);
+        assertThat(run.used(RunBudget.Kind.COMPLETION_TOKENS)).isEqualTo(30);
+        assertThat(run.used(RunBudget.Kind.TOOL_BYTES)).isEqualTo(2048);
+        assertThat(run.used(RunBudget.Kind.TOOL_CALLS)).isEqualTo(1);
+        assertThat(run.used(RunBudget.Kind.COST)).isEqualTo(0.5);
+        // 子代理自身的预算只用了 14%，阶段随父运行
+        assertThat(governor.evaluate(subAgent)).isEqualTo(BudgetStage.NO_SUBAGENTS);
+        assertThat(run.stage()).isEqualTo(BudgetStage.NO_SUBAGENTS);
+        assertThat(governor.evaluate(orphan)).isEqualTo(BudgetStage.NORMAL);
+    }
+
+    @Test
+    void runStopsAfterItsFinalTurns() {
+        RunGovernor governor = RunGovernor.builder().runBudget(THOUSAND_PROMPT_TOKENS).maxFinalTurns(2).build();
+        RunLedger ledger = governor.open(RunGovernor.Scope.RUN, config("t-1"));
+
+        // 收尾阶段可进行 maxFinalTurns 次模型调用
+        assertThat(governor.shouldStop(ledger, BudgetStage.FINAL)).isFalse();
+        ledger.takeFinalTurn();
+        assertThat(governor.shouldStop(ledger, BudgetStage.FINAL)).isFalse();
+        ledger.takeFinalTurn();
+        assertThat(governor.shouldStop(ledger, BudgetStage.FINAL)).isTrue();
+
+        // 直接跳到耗尽的运行仍有一次收尾机会
+        RunLedger jumped = governor.open(RunGovernor.Scope.RUN, config("t-2"));
+        jumped.chargeModel(2000, 0, 0);
+        assertThat(governor.shouldStop(jumped, governor.evaluate(jumped))).isFalse();
+        jumped.takeFinalTurn();
+        assertThat(governor.shouldStop(jumped, governor.evaluate(jumped))).isTrue();
+        assertThat(governor.exhaustedMessage(jumped)).contains("prompt_tokens");
+    }
+
+    @Test
+    void taskCallsAreRefusedOnceSubAgentsAreDisabled() {
+        RunGovernor governor = RunGovernor.builder().runBudget(THOUSAND_PROMPT_TOKENS).build();
+        RunnableConfig config = config("t-1");
+        RunLedger ledger = governor.open(RunGovernor.Scope.RUN, config);
+        assertThat(RunGovernor.ledger(config)).isSameAs(ledger);
+        Map<String, Object> context = config.metadata().orElseThrow();
+        AtomicInteger executed = new AtomicInteger();
+
+        ToolCallResponse search = intercept(governor, context, "jina_search", executed);
+        ledger.chargeModel(700, 0, 0);
+        ToolCallResponse task = intercept(governor, context, RunGovernor.TASK_TOOL, executed);
+
+        assertThat(search.getResult()).isEqualTo("0123456789");
+        assertThat(task.getResult()).startsWith("Error: sub-agent not started");
+        assertThat(executed.get()).isEqualTo(1);
+        assertThat(ledger.used(RunBudget.Kind.TOOL_CALLS)).isEqualTo(1);
+        assertThat(ledger.used(RunBudget.Kind.TOOL_BYTES)).isEqualTo(10);
+    }
+
+    @Test
+    void costIsEstimatedByLongestModelPrefix() {
+        RunGovernor governor = RunGovernor.builder()
+                .defaultModel("qwen-plus")
+                .price("qwen-plus", 0.8, 2.0)
+                .price("qwen", 10, 10)
+                .price("qwen-turbo", 0.3, 0.6)
+                .build();
+
+        assertThat(governor.estimateCost("qwen-turbo-2025-04-28", 1000, 1000)).isCloseTo(0.9, within(1e-9));
+        assertThat(governor.estimateCost(null, 2000, 500)).isCloseTo(2.6, within(1e-9));
+        assertThat(governor.estimateCost("deepseek-r1", 1000, 0)).isCloseTo(0.8, within(1e-9));
+    }
+
+    private static ToolCallResponse intercept(RunGovernor governor, Map<String, Object> context, String tool,
+                                              AtomicInteger executed) {
+        ToolCallRequest request = ToolCallRequest.builder()
+                .toolName(tool).toolCallId("call-" + tool).arguments("{}").context(context).build();
+        return governor.getToolInterceptor().interceptToolCall(request, ignored -> {
+            executed.incrementAndGet();
+            return ToolCallResponse.of("call-" + tool, tool, "0123456789");
+        });
+    }
+
+    private static RunnableConfig config(String threadId) {
+        return RunnableConfig.builder().threadId(threadId).addMetadata("origin", "test").build();
+    }
+}
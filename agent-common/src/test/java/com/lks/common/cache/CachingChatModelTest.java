@@ -0,0 +1,169 @@
+package com.lks.common.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 验证缓存装饰器：同步调用命中、流式结果累加后写入并按块重放、工具调用分片合并，以及流出错或被取消时不写入
+ */
+class CachingChatModelTest {
+
+    @Test
+    void callIsServedFromCacheOnSecondRequest() {
+        ScriptedModel model = new ScriptedModel(List.of(chunk("床前明月光", "", List.of(), "STOP")));
+        CachingChatModel caching = caching(model, 16);
+
+        ChatResponse first = caching.call(prompt("write a poem"));
+        ChatResponse second = caching.call(prompt("write a poem"));
+
+        assertThat(model.calls.get()).isEqualTo(1);
+        assertThat(first.getMetadata().<String>get(CachingChatModel.CACHE_HIT_METADATA_KEY)).isNull();
+        assertThat(second.getResult().getOutput().getText()).isEqualTo("床前明月光");
+        assertThat(second.getResult().getMetadata().getFinishReason()).isEqualTo("STOP");
+        assertThat(second.getMetadata().<String>get(CachingChatModel.CACHE_HIT_METADATA_KEY)).isEqualTo("EXACT");
+        assertThat(second.getMetadata().getModel()).isEqualTo("qwen-plus");
+    }
+
+    @Test
+    void streamIsAccumulatedAndReplayedInChunks() {
+        ScriptedModel model = new ScriptedModel(List.of(
+                chunk("", "先想想", List.of(), null),
+                chunk("", "意境。", List.of(), null),
+                chunk("床前明月光，", "", List.of(), null),
+                chunk("疑是地上霜。", "", List.of(), "STOP")));
+        CachingChatModel caching = caching(model, 4);
+
+        List<ChatResponse> live = caching.stream(prompt("write a poem")).collectList().block();
+        List<ChatResponse> replayed = caching.stream(prompt("write a poem")).collectList().block();
+
+        assertThat(model.streams.get()).isEqualTo(1);
+        assertThat(live).hasSize(4);
+        // 思考过程 5 个字符按 4 切成 2 块，正文 12 个字符切成 3 块，最后一块携带结束原因
+        assertThat(replayed).hasSize(6);
+        assertThat(join(replayed, response -> (String) response.getResult().getOutput().getMetadata()
+                .getOrDefault(CachedResponse.REASONING_CONTENT_KEY, ""))).isEqualTo("先想想意境。");
+        assertThat(join(replayed, response -> response.getResult().getOutput().getText())).isEqualTo("床前明月光，疑是地上霜。");
+        assertThat(replayed.get(0).getResult().getOutput().getText()).isEmpty();
+        assertThat(replayed.get(replayed.size() - 1).getResult().getMetadata().getFinishReason()).isEqualTo("STOP");
+        assertThat(replayed).allSatisfy(response ->
+                assertThat(response.getMetadata().<String>get(CachingChatModel.CACHE_HIT_METADATA_KEY)).isEqualTo("EXACT"));
+    }
+
+    @Test
+    void toolCallFragmentsAreMergedBeforeCaching() {
+        // c781309 回归：参数分片到达时后续分片不带ID，应归入同一个工具调用并按顺序拼接参数
+        ScriptedModel model = new ScriptedModel(List.of(
+                chunk("", "", List.of(new AssistantMessage.ToolCall("call-1", "function", "search", "{\"q\":")), null),
+                chunk("", "", List.of(new AssistantMessage.ToolCall("", "", "", "\"moon\"}")), null),
+                chunk("", "", List.of(new AssistantMessage.ToolCall("call-2", "function", "read", "{\"id\":")), null),
+                chunk("", "", List.of(new AssistantMessage.ToolCall(null, null, null, "7}")), "TOOL_CALLS")));
+        CachingChatModel caching = caching(model, 16);
+
+        caching.stream(prompt("search the moon")).blockLast();
+        List<ChatResponse> replayed = caching.stream(prompt("search the moon")).collectList().block();
+
+        assertThat(replayed).hasSize(1);
+        assertThat(replayed.get(0).getResult().getOutput().getToolCalls()).containsExactly(
+                new AssistantMessage.ToolCall("call-1", "function", "search", "{\"q\":\"moon\"}"),
+                new AssistantMessage.ToolCall("call-2", "function", "read", "{\"id\":7}"));
+        assertThat(replayed.get(0).getResult().getMetadata().getFinishReason()).isEqualTo("TOOL_CALLS");
+    }
+
+    @Test
+    void failedOrCancelledStreamsAreNotCached() {
+        ScriptedModel failing = new ScriptedModel(List.of(chunk("partial", "", List.of(), null)));
+        failing.failAfterChunks = true;
+        CachingChatModel caching = caching(failing, 16);
+
+        assertThatThrownBy(() -> caching.stream(prompt("write a poem")).blockLast()).hasMessageContaining("stream broke");
+        caching.stream(prompt("write a song")).take(1).blockLast();
+
+        assertThat(caching.stats().puts()).isZero();
+        failing.failAfterChunks = false;
+        caching.stream(prompt("write a poem")).blockLast();
+        assertThat(failing.streams.get()).isEqualTo(3);
+        assertThat(caching.stats().puts()).isEqualTo(1);
+    }
+
+    private static CachingChatModel caching(ChatModel model, int replayChunkSize) {
+        return CachingChatModel.builder()
+                .delegate(model)
+                .cache(ResponseCache.builder().name("poem").build())
+                .replayChunkSize(replayChunkSize)
+                .build();
+    }
+
+    private static Prompt prompt(String text) {
+        return new Prompt(List.of(new UserMessage(text)));
+    }
+
+    private static String join(List<ChatResponse> responses, Function<ChatResponse, String> part) {
+        StringBuilder sb = new StringBuilder();
+        responses.forEach(response -> sb.append(part.apply(response)));
+        return sb.toString();
+    }
+
+    private static ChatResponse chunk(String text, String reasoning, List<AssistantMessage.ToolCall> toolCalls,
+                                      String finishReason) {
+        AssistantMessage message = AssistantMessage.builder()
+                .content(text)
+                .properties(reasoning.isEmpty() ? Map.of() : Map.of(CachedResponse.REASONING_CONTENT_KEY, reasoning))
+                .toolCalls(toolCalls)
+                .build();
+        ChatGenerationMetadata metadata = finishReason == null ? ChatGenerationMetadata.NULL
+                : ChatGenerationMetadata.builder().finishReason(finishReason).build();
+        return new ChatResponse(List.of(new Generation(message, metadata)),
+                ChatResponseMetadata.builder().model("qwen-plus").build());
+    }
+
+    /**
+     * 按预设分块返回的模型；call 返回合并后的整段正文
+     */
+    private static final class ScriptedModel implements ChatModel {
+
+        private final List<ChatResponse> chunks;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger streams = new AtomicInteger();
+        private volatile boolean failAfterChunks;
+
+        ScriptedModel(List<ChatResponse> chunks) {
+            this.chunks = new ArrayList<>(chunks);
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            calls.incrementAndGet();
+            return chunks.get(chunks.size() - 1);
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            streams.incrementAndGet();
+            Flux<ChatResponse> flux = Flux.fromIterable(chunks);
+            return failAfterChunks ? flux.concatWith(Flux.error(new IllegalStateException("stream broke"))) : flux;
+        }
+
+        @Override
+        public ChatOptions getDefaultOptions() {
+            return ChatOptions.builder().model("qwen-plus").build();
+        }
+    }
+}
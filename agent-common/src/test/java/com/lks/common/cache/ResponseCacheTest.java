@@ -0,0 +1,206 @@
+package com.lks.common.cache;
+
+import com.lks.common.embedding.EmbeddingFunction;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 验证 Prompt 指纹的规范化、精确与语义两级查找（相似度阈值、上下文隔离、工具调用不参与语义匹配）以及指标导出
+ */
+class ResponseCacheTest {
+
+    private static final ChatOptions OPTIONS = ChatOptions.builder().model("qwen-plus").temperature(0.7).build();
+
+    @Test
+    void fingerprintIgnoresWhitespaceAndToolCallIds() {
+        PromptFingerprint a = fingerprint(List.of(
+                new SystemMessage("You are   a poet."),
+                assistantCalling("call-1", "{\"q\": \"moon\"}"),
+                toolResult("call-1", "moon  poems"),
+                new UserMessage("  write a poem\nabout the moon ")));
+        PromptFingerprint b = fingerprint(List.of(
+                new SystemMessage("You are a poet."),
+                assistantCalling("call-9", "{\"q\":  \"moon\"}"),
+                toolResult("call-9", "moon poems"),
+                new UserMessage("write a poem about the moon")));
+
+        assertThat(a.exactKey()).isEqualTo(b.exactKey());
+        assertThat(a.contextKey()).isEqualTo(b.contextKey());
+        assertThat(a.lastUserText()).isEqualTo("write a poem about the moon");
+    }
+
+    @Test
+    void fingerprintSeparatesNamespacesOptionsAndContent() {
+        List<Message> messages = List.of(new SystemMessage("You are a poet."), new UserMessage("write a poem"));
+        PromptFingerprint base = fingerprint(messages);
+
+        assertThat(PromptFingerprint.of("other", new Prompt(messages, OPTIONS), null).exactKey())
+                .isNotEqualTo(base.exactKey());
+        assertThat(PromptFingerprint.of("poem", new Prompt(messages,
+                ChatOptions.builder().model("qwen-plus").temperature(0.2).build()), null).exactKey())
+                .isNotEqualTo(base.exactKey());
+        assertThat(fingerprint(List.of(new SystemMessage("You are a poet."), new UserMessage("write a song"))))
+                .satisfies(other -> {
+                    assertThat(other.exactKey()).isNotEqualTo(base.exactKey());
+                    assertThat(other.contextKey()).isEqualTo(base.contextKey());
+                });
+        // Prompt 未带选项时使用模型默认选项
+        assertThat(PromptFingerprint.of("poem", new Prompt(messages), OPTIONS).exactKey()).isEqualTo(base.exactKey());
+    }
+
+    @Test
+    void fingerprintWithoutTrailingUserMessageHasNoSemanticText() {
+        PromptFingerprint fingerprint = fingerprint(List.of(new UserMessage("search"),
+                assistantCalling("call-1", "{}"), toolResult("call-1", "results")));
+
+        assertThat(fingerprint.lastUserText()).isNull();
+        assertThat(fingerprint.exactKey()).isEqualTo(fingerprint.contextKey());
+    }
+
+    @Test
+    void exactHitThenMissForOtherPrompt() {
+        ResponseCache cache = ResponseCache.builder().name("poem").build();
+        PromptFingerprint question = fingerprint(List.of(new UserMessage("write a poem")));
+        cache.put(question, response("床前明月光", List.of()));
+
+        assertThat(cache.lookup(fingerprint(List.of(new UserMessage("write  a poem")))))
+                .hasValueSatisfying(hit -> {
+                    assertThat(hit.type()).isEqualTo(ResponseCache.HitType.EXACT);
+                    assertThat(hit.response().text()).isEqualTo("床前明月光");
+                });
+        assertThat(cache.lookup(fingerprint(List.of(new UserMessage("write a song"))))).isEmpty();
+        assertThat(cache.stats()).satisfies(stats -> {
+            assertThat(stats.exactHits()).isEqualTo(1);
+            assertThat(stats.misses()).isEqualTo(1);
+            assertThat(stats.hitRate()).isEqualTo(0.5);
+        });
+    }
+
+    @Test
+    void semanticHitRespectsThresholdAndContext() {
+        // 固定向量：与 "moon poem" 的余弦相似度分别为 0.96 与 0.80
+        EmbeddingFunction embeddings = new FixedEmbeddings(Map.of(
+                "write a moon poem", new float[]{1, 0},
+                "compose a poem about the moon", new float[]{0.96f, 0.28f},
+                "write a sun poem", new float[]{0.8f, 0.6f}));
+        ResponseCache cache = ResponseCache.builder()
+                .name("poem")
+                .embeddingFunction(embeddings)
+                .similarityThreshold(0.95)
+                .build();
+        cache.put(fingerprint(List.of(new UserMessage("write a moon poem"))), response("moon", List.of()));
+
+        assertThat(cache.lookup(fingerprint(List.of(new UserMessage("compose a poem about the moon")))))
+                .hasValueSatisfying(hit -> {
+                    assertThat(hit.type()).isEqualTo(ResponseCache.HitType.SEMANTIC);
+                    assertThat(hit.score()).isBetween(0.95, 0.97);
+                    assertThat(hit.response().text()).isEqualTo("moon");
+                });
+        assertThat(cache.lookup(fingerprint(List.of(new UserMessage("write a sun poem"))))).isEmpty();
+        // 相似的问题，但上下文不同（多了一条系统提示）时不命中
+        assertThat(cache.lookup(fingerprint(List.of(new SystemMessage("be brief"),
+                new UserMessage("compose a poem about the moon"))))).isEmpty();
+        assertThat(cache.stats().semanticHits()).isEqualTo(1);
+        assertThat(cache.stats().semanticSize()).isEqualTo(1);
+    }
+
+    @Test
+    void responsesWithToolCallsAreOnlyMatchedExactly() {
+        EmbeddingFunction embeddings = new FixedEmbeddings(Map.of(
+                "search the moon", new float[]{1, 0},
+                "search for the moon", new float[]{1, 0}));
+        ResponseCache cache = ResponseCache.builder().name("poem").embeddingFunction(embeddings).build();
+        PromptFingerprint question = fingerprint(List.of(new UserMessage("search the moon")));
+        cache.put(question, response("", List.of(new AssistantMessage.ToolCall("call-1", "function", "search", "{\"q\":\"moon\"}"))));
+
+        assertThat(cache.lookup(question)).isPresent();
+        assertThat(cache.lookup(fingerprint(List.of(new UserMessage("search for the moon"))))).isEmpty();
+        assertThat(cache.stats().semanticSize()).isZero();
+    }
+
+    @Test
+    void emptyResponsesAreNotCached() {
+        ResponseCache cache = ResponseCache.builder().name("poem").build();
+        PromptFingerprint question = fingerprint(List.of(new UserMessage("write a poem")));
+
+        cache.put(question, response("  ", List.of()));
+        cache.put(question, null);
+
+        assertThat(cache.lookup(question)).isEmpty();
+        assertThat(cache.stats().puts()).isZero();
+    }
+
+    @Test
+    void bindToExportsHitsMissesPutsAndSize() {
+        EmbeddingFunction embeddings = new FixedEmbeddings(Map.of(
+                "write a moon poem", new float[]{1, 0},
+                "compose a moon poem", new float[]{1, 0},
+                "write a sun poem", new float[]{0, 1}));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ResponseCache cache = ResponseCache.builder().name("poem").embeddingFunction(embeddings).build()
+                .bindTo(registry, "poem");
+        PromptFingerprint question = fingerprint(List.of(new UserMessage("write a moon poem")));
+
+        cache.put(question, response("moon", List.of()));
+        cache.lookup(question);
+        cache.lookup(fingerprint(List.of(new UserMessage("compose a moon poem"))));
+        cache.lookup(fingerprint(List.of(new UserMessage("write a sun poem"))));
+
+        assertThat(registry.get("agent.cache.response.hits").tag("type", "exact").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("agent.cache.response.hits").tag("type", "semantic").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("agent.cache.response.misses").tag("cache", "poem").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("agent.cache.response.puts").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("agent.cache.response.size").tag("type", "exact").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("agent.cache.response.size").tag("type", "semantic").gauge().value()).isEqualTo(1);
+    }
+
+    private static PromptFingerprint fingerprint(List<Message> messages) {
+        return PromptFingerprint.of("poem", new Prompt(messages, OPTIONS), null);
+    }
+
+    private static AssistantMessage assistantCalling(String id, String arguments) {
+        return AssistantMessage.builder()
+                .content("")
+                .toolCalls(List.of(new AssistantMessage.ToolCall(id, "function", "search", arguments)))
+                .build();
+    }
+
+    private static ToolResponseMessage toolResult(String id, String data) {
+        return ToolResponseMessage.builder()
+                .responses(List.of(new ToolResponseMessage.ToolResponse(id, "search", data)))
+                .build();
+    }
+
+    private static CachedResponse response(String text, List<AssistantMessage.ToolCall> toolCalls) {
+        return new CachedResponse(text, "", toolCalls, "STOP", "qwen-plus", System.currentTimeMillis());
+    }
+
+    /**
+     * 按文本返回预设向量，未预设的文本返回与所有预设正交的向量
+     */
+    private record FixedEmbeddings(Map<String, float[]> vectors) implements EmbeddingFunction {
+
+        @Override
+        public float[] embed(String text) {
+            float[] vector = vectors.get(text);
+            return vector != null ? vector : new float[]{0, 0};
+        }
+
+        @Override
+        public int dimensions() {
+            return 2;
+        }
+    }
+}
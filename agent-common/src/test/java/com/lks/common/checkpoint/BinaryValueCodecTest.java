@@ -0,0 +1,193 @@
+package com.lks.common.checkpoint;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.content.Media;
+import org.springframework.ai.deepseek.DeepSeekAssistantMessage;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 验证二进制值编码：基本类型与消息的往返、枚举、Jackson 回退以及截断和未知标签
+ */
+class BinaryValueCodecTest {
+
+    private final BinaryValueCodec codec = new BinaryValueCodec();
+
+    @Test
+    void primitivesRoundTrip() throws IOException {
+        List<Object> values = Arrays.asList(null, "", "中文 text", 0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE,
+                Long.MIN_VALUE, 1L << 40, 3.5d, -0.25f, true, false);
+
+        for (Object value : values) {
+            assertThat(roundTrip(value)).isEqualTo(value);
+        }
+        assertThat(roundTrip(-1)).isInstanceOf(Integer.class);
+        assertThat(roundTrip(-1L)).isInstanceOf(Long.class);
+    }
+
+    @Test
+    void nestedCollectionsRoundTrip() throws IOException {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("list", List.of(1, "two", List.of(3L)));
+        nested.put("map", Map.of("k", Map.of("inner", false)));
+        nested.put("null", null);
+
+        assertThat(roundTrip(nested)).isEqualTo(nested);
+    }
+
+    @Test
+    void messagesRoundTripWithMetadataAndToolCalls() throws IOException {
+        AssistantMessage assistant = AssistantMessage.builder()
+                .content("calling tools")
+                .properties(Map.of("finishReason", "TOOL_CALLS"))
+                .toolCalls(List.of(new AssistantMessage.ToolCall("call-1", "function", "jina_search", "{\"q\":\"x\"}"),
+                        new AssistantMessage.ToolCall("call-2", "function", "read_paper", "{}")))
+                .build();
+        ToolResponseMessage tool = ToolResponseMessage.builder()
+                .responses(List.of(new ToolResponseMessage.ToolResponse("call-1", "jina_search", "result")))
+                .metadata(Map.of("cached", true))
+                .build();
+        UserMessage user = UserMessage.builder().text("hi").metadata(Map.of("userId", "u-1")).build();
+        SystemMessage system = new SystemMessage("system prompt");
+
+        AssistantMessage assistantCopy = (AssistantMessage) roundTrip(assistant);
+        assertThat(assistantCopy.getText()).isEqualTo("calling tools");
+        assertThat(assistantCopy.getToolCalls()).isEqualTo(assistant.getToolCalls());
+        assertThat(assistantCopy.getMetadata()).containsEntry("finishReason", "TOOL_CALLS");
+        ToolResponseMessage toolCopy = (ToolResponseMessage) roundTrip(tool);
+        assertThat(toolCopy.getResponses()).isEqualTo(tool.getResponses());
+        assertThat(toolCopy.getMetadata()).containsEntry("cached", true);
+        assertThat(roundTrip(user)).isInstanceOf(UserMessage.class)
+                .extracting(m -> ((UserMessage) m).getMetadata().get("userId")).isEqualTo("u-1");
+        assertThat(((SystemMessage) roundTrip(system)).getText()).isEqualTo("system prompt");
+    }
+
+    @Test
+    void enumsRoundTripByDeclaringClass() throws IOException {
+        // 带常量体的枚举（如 CheckpointCompression）getClass() 是匿名子类，必须按声明类还原
+        assertThat(roundTrip(MessageType.ASSISTANT)).isSameAs(MessageType.ASSISTANT);
+        assertThat(roundTrip(CheckpointCompression.ZSTD)).isSameAs(CheckpointCompression.ZSTD);
+        assertThat(roundTrip(Map.of("messageType", MessageType.TOOL))).isEqualTo(Map.of("messageType", MessageType.TOOL));
+    }
+
+    @Test
+    void mediaMessagesRoundTrip() throws IOException {
+        // 框架的 Jackson 序列化器会丢掉媒体，带媒体的消息由本编解码器自行编码
+        UserMessage user = UserMessage.builder()
+                .text("look at this")
+                .media(List.of(new Media(MimeTypeUtils.IMAGE_PNG, URI.create("https://example.com/chart.png")),
+                        Media.builder().mimeType(MimeTypeUtils.IMAGE_JPEG).data(new byte[]{1, 2, 3}).name("photo").build()))
+                .build();
+        AssistantMessage assistant = AssistantMessage.builder()
+                .content("generated")
+                .media(List.of(Media.builder().mimeType(MimeTypeUtils.IMAGE_PNG).data(new byte[]{9}).id("img-1").build()))
+                .build();
+
+        UserMessage userCopy = (UserMessage) roundTrip(user);
+        assertThat(userCopy.getText()).isEqualTo("look at this");
+        assertThat(userCopy.getMedia()).hasSize(2);
+        assertThat(userCopy.getMedia().get(0).getMimeType()).isEqualTo(MimeTypeUtils.IMAGE_PNG);
+        assertThat(userCopy.getMedia().get(0).getData()).isEqualTo("https://example.com/chart.png");
+        assertThat(userCopy.getMedia().get(1).getDataAsByteArray()).containsExactly(1, 2, 3);
+        assertThat(userCopy.getMedia().get(1).getName()).isEqualTo("photo");
+        AssistantMessage assistantCopy = (AssistantMessage) roundTrip(assistant);
+        assertThat(assistantCopy.getText()).isEqualTo("generated");
+        assertThat(assistantCopy.getMedia()).singleElement()
+                .satisfies(media -> assertThat(media.getId()).isEqualTo("img-1"))
+                .satisfies(media -> assertThat(media.getDataAsByteArray()).containsExactly(9));
+    }
+
+    @Test
+    void unsupportedValuesFallBackToJackson() throws IOException {
+        DeepSeekAssistantMessage reasoning = DeepSeekAssistantMessage.prefixAssistantMessage("answer", "thinking...");
+
+        byte[] bytes = encode(reasoning);
+
+        assertThat(bytes[0]).isEqualTo((byte) 127);
+        assertThat(decode(bytes)).isInstanceOfSatisfying(DeepSeekAssistantMessage.class, copy -> {
+            assertThat(copy.getText()).isEqualTo("answer");
+            assertThat(copy.getReasoningContent()).isEqualTo("thinking...");
+        });
+        assertThat(roundTrip(Map.of(1, "non-string key"))).isEqualTo(Map.of("1", "non-string key"));
+    }
+
+    @Test
+    void truncatedInputFailsWithEof() throws IOException {
+        byte[] bytes = encode(List.of("a fairly long string value", 42, Map.of("k", "v")));
+
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThatThrownBy(() -> decode(truncated)).isInstanceOf(EOFException.class);
+        }
+    }
+
+    @Test
+    void unknownTagOrEnumFailsWithIOException() throws IOException {
+        assertThatThrownBy(() -> decode(new byte[]{99}))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Unknown value tag: 99");
+
+        byte[] bytes = encode(MessageType.USER);
+        String encoded = new String(bytes, StandardCharsets.ISO_8859_1)
+                .replace("MessageType", "MessageTypX");
+        assertThatThrownBy(() -> decode(encoded.getBytes(StandardCharsets.ISO_8859_1)))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Unknown enum type");
+    }
+
+    @Test
+    void varIntsUseMinimalBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        BinaryValueCodec.writeVarInt(127, out);
+        assertThat(bytes.size()).isEqualTo(1);
+        BinaryValueCodec.writeVarInt(128, out);
+        assertThat(bytes.size()).isEqualTo(3);
+        BinaryValueCodec.writeVarInt(-1, out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThat(BinaryValueCodec.readVarInt(in)).isEqualTo(127);
+        assertThat(BinaryValueCodec.readVarInt(in)).isEqualTo(128);
+        assertThat(BinaryValueCodec.readVarInt(in)).isEqualTo(-1);
+        assertThatThrownBy(() -> BinaryValueCodec.readVarLong(new DataInputStream(
+                new ByteArrayInputStream(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+                        (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80}))))
+                .hasMessageContaining("Malformed varint");
+    }
+
+    private Object roundTrip(Object value) throws IOException {
+        return decode(encode(value));
+    }
+
+    private byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        codec.writeValue(value, out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private Object decode(byte[] bytes) throws IOException {
+        return codec.readValue(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+}
@@ -0,0 +1,266 @@
+package com.lks.common.checkpoint;
+
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 验证检查点记录的全量/增量往返、各压缩算法以及截断、损坏记录的处理
+ */
+class CheckpointCodecTest {
+
+    @ParameterizedTest
+    @EnumSource(CheckpointCompression.class)
+    void fullRecordRoundTrips(CheckpointCompression compression) throws IOException {
+        CheckpointCodec codec = codec(compression);
+        Checkpoint checkpoint = checkpoint("cp-1", conversation(6));
+
+        byte[] record = codec.encode(checkpoint, null);
+
+        assertThat(CheckpointCodec.isCompactRecord(record)).isTrue();
+        assertThat(CheckpointCodec.isFullSnapshot(record)).isTrue();
+        assertThat(record[3]).isEqualTo((byte) compression.id());
+        assertSameCheckpoint(codec.decode(record, null), checkpoint);
+    }
+
+    @ParameterizedTest
+    @EnumSource(CheckpointCompression.class)
+    void deltaRecordStoresOnlyAppendedMessages(CheckpointCompression compression) throws IOException {
+        CheckpointCodec codec = codec(compression);
+        List<Object> history = conversation(20);
+        Checkpoint parent = checkpoint("cp-1", history);
+        List<Object> extended = new ArrayList<>(history);
+        extended.add(new UserMessage("and one more question"));
+        extended.add(new AssistantMessage("one more answer"));
+        Checkpoint child = checkpoint("cp-2", extended);
+
+        byte[] full = codec.encode(child, null);
+        byte[] delta = codec.encode(child, parent);
+
+        assertThat(CheckpointCodec.isFullSnapshot(delta)).isFalse();
+        assertThat(delta.length).isLessThan(full.length);
+        assertSameCheckpoint(codec.decode(delta, parent), child);
+        assertThat(codec.getStats().snapshot().deltaCount()).isEqualTo(1);
+        assertThat(codec.getStats().snapshot().fullCount()).isEqualTo(1);
+    }
+
+    @Test
+    void deltaChainRestoresEveryCheckpoint() throws IOException {
+        CheckpointCodec codec = codec(CheckpointCompression.LZ4);
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        List<Object> history = new ArrayList<>(List.of(new SystemMessage("system")));
+        for (int i = 1; i <= 5; i++) {
+            history.add(new UserMessage("question " + i));
+            history.add(new AssistantMessage("answer " + i));
+            checkpoints.add(checkpoint("cp-" + i, new ArrayList<>(history)));
+        }
+
+        List<byte[]> records = new ArrayList<>();
+        for (int i = 0; i < checkpoints.size(); i++) {
+            records.add(codec.encode(checkpoints.get(i), i == 0 ? null : checkpoints.get(i - 1)));
+        }
+        Checkpoint parent = null;
+        for (int i = 0; i < records.size(); i++) {
+            parent = codec.decode(records.get(i), parent);
+            assertSameCheckpoint(parent, checkpoints.get(i));
+        }
+    }
+
+    @Test
+    void rewrittenMiddleMessageIsWrittenAsFullSnapshot() throws IOException {
+        // 523c3f9 回归：只比较首尾消息时，中间消息被改写（摘要替换等）仍写成增量，解码后还原出改写前的内容
+        CheckpointCodec codec = codec(CheckpointCompression.NONE);
+        List<Object> history = conversation(6);
+        Checkpoint parent = checkpoint("cp-1", history);
+        List<Object> rewritten = new ArrayList<>(history);
+        rewritten.set(2, new UserMessage("[summary of earlier turns]"));
+        rewritten.add(new AssistantMessage("next answer"));
+        Checkpoint child = checkpoint("cp-2", rewritten);
+
+        byte[] record = codec.encode(child, parent);
+
+        assertThat(CheckpointCodec.isFullSnapshot(record)).isTrue();
+        assertSameCheckpoint(codec.decode(record, parent), child);
+    }
+
+    @Test
+    void rewrittenToolResponseIsNotAContinuation() throws IOException {
+        CheckpointCodec codec = codec(CheckpointCompression.NONE);
+        List<Object> history = conversation(4);
+        history.add(toolResponse("call-1", "very large search result"));
+        Checkpoint parent = checkpoint("cp-1", history);
+        List<Object> evicted = new ArrayList<>(history);
+        evicted.set(evicted.size() - 1, toolResponse("call-1", "[evicted to blob store]"));
+        evicted.add(new AssistantMessage("done"));
+
+        assertThat(CheckpointCodec.isFullSnapshot(codec.encode(checkpoint("cp-2", evicted), parent))).isTrue();
+    }
+
+    @Test
+    void deltaRequiresItsParent() throws IOException {
+        CheckpointCodec codec = codec(CheckpointCompression.NONE);
+        List<Object> history = conversation(4);
+        Checkpoint parent = checkpoint("cp-1", history);
+        List<Object> extended = new ArrayList<>(history);
+        extended.add(new UserMessage("next"));
+        byte[] delta = codec.encode(checkpoint("cp-2", extended), parent);
+
+        assertThatThrownBy(() -> codec.decode(delta, null))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("requires parent cp-1");
+        assertThatThrownBy(() -> codec.decode(delta, checkpoint("cp-0", history)))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("but got cp-0");
+    }
+
+    @ParameterizedTest
+    @EnumSource(CheckpointCompression.class)
+    void truncatedRecordFailsWithIOException(CheckpointCompression compression) throws Exception {
+        // 10cf44d 回归：截断的 DEFLATE 记录曾让 inflate 在输入耗尽后无限空转
+        CheckpointCodec codec = codec(compression);
+        byte[] record = codec.encode(checkpoint("cp-1", conversation(30)), null);
+
+        for (int length : new int[]{record.length / 2, record.length - 1}) {
+            byte[] truncated = Arrays.copyOf(record, length);
+            assertThatThrownBy(() -> decodeWithin(codec, truncated)).isInstanceOf(IOException.class);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CheckpointCompression.class, names = "NONE", mode = EnumSource.Mode.EXCLUDE)
+    void corruptedBodyFailsWithIOException(CheckpointCompression compression) throws Exception {
+        CheckpointCodec codec = codec(compression);
+        byte[] record = codec.encode(checkpoint("cp-1", conversation(30)), null);
+        byte[] corrupted = record.clone();
+        for (int i = 8; i < corrupted.length; i += 3) {
+            corrupted[i] = (byte) ~corrupted[i];
+        }
+
+        assertThatThrownBy(() -> decodeWithin(codec, corrupted)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void rejectsForeignRecordsAndUnknownVersions() throws IOException {
+        CheckpointCodec codec = codec(CheckpointCompression.NONE);
+        byte[] record = codec.encode(checkpoint("cp-1", conversation(2)), null);
+        byte[] foreign = record.clone();
+        foreign[0] = 'r';
+        byte[] future = record.clone();
+        future[1] = 9;
+
+        assertThat(CheckpointCodec.isCompactRecord(foreign)).isFalse();
+        assertThat(CheckpointCodec.isCompactRecord(new byte[]{0x43})).isFalse();
+        assertThatThrownBy(() -> codec.decode(foreign, null)).hasMessageContaining("Not a compact checkpoint record");
+        assertThatThrownBy(() -> codec.decode(future, null)).hasMessageContaining("Unsupported checkpoint record version: 9");
+    }
+
+    @Test
+    void smallRecordsAreNotCompressed() throws IOException {
+        CheckpointCodec codec = new CheckpointCodec(new BinaryValueCodec(), CheckpointCompression.ZSTD, 4096);
+
+        byte[] record = codec.encode(checkpoint("cp-1", conversation(2)), null);
+
+        assertThat(record[3]).isEqualTo((byte) CheckpointCompression.NONE.id());
+    }
+
+    // ==================== 辅助 ====================
+
+    private static CheckpointCodec codec(CheckpointCompression compression) {
+        return new CheckpointCodec(new BinaryValueCodec(), compression, 0);
+    }
+
+    /**
+     * 在单独线程中解码并限时等待，解码陷入死循环时测试失败而不是挂起
+     */
+    private static Checkpoint decodeWithin(CheckpointCodec codec, byte[] record) throws Exception {
+        CompletableFuture<Checkpoint> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                return codec.decode(record, null);
+            }
+            catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+        try {
+            return future.get(5, TimeUnit.SECONDS);
+        }
+        catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private static List<Object> conversation(int turns) {
+        List<Object> messages = new ArrayList<>();
+        messages.add(new SystemMessage("You are a research assistant."));
+        for (int i = 0; i < turns; i++) {
+            messages.add(new UserMessage("question " + i + ": compare vector databases for long documents"));
+            messages.add(AssistantMessage.builder()
+                    .content("answer " + i)
+                    .toolCalls(List.of(new AssistantMessage.ToolCall("call-" + i, "function", "jina_search",
+                            "{\"query\":\"vector database " + i + "\"}")))
+                    .build());
+            messages.add(toolResponse("call-" + i, "result " + i + " ".repeat(i)));
+        }
+        return messages;
+    }
+
+    private static ToolResponseMessage toolResponse(String id, String data) {
+        return ToolResponseMessage.builder()
+                .responses(List.of(new ToolResponseMessage.ToolResponse(id, "jina_search", data)))
+                .build();
+    }
+
+    private static Checkpoint checkpoint(String id, List<Object> messages) {
+        Map<String, Object> state = new HashMap<>();
+        state.put(CheckpointCodec.MESSAGES_KEY, messages);
+        state.put("step", 3);
+        state.put("plan", "step one");
+        return Checkpoint.builder().id(id).nodeId("agent").nextNodeId("tool").state(state).build();
+    }
+
+    private static void assertSameCheckpoint(Checkpoint actual, Checkpoint expected) {
+        assertThat(actual.getId()).isEqualTo(expected.getId());
+        assertThat(actual.getNodeId()).isEqualTo(expected.getNodeId());
+        assertThat(actual.getNextNodeId()).isEqualTo(expected.getNextNodeId());
+        assertThat(actual.getState()).containsOnlyKeys(expected.getState().keySet());
+        assertThat(actual.getState().get("step")).isEqualTo(expected.getState().get("step"));
+        assertThat(actual.getState().get("plan")).isEqualTo(expected.getState().get("plan"));
+        @SuppressWarnings("unchecked")
+        List<Message> actualMessages = (List<Message>) actual.getState().get(CheckpointCodec.MESSAGES_KEY);
+        @SuppressWarnings("unchecked")
+        List<Message> expectedMessages = (List<Message>) expected.getState().get(CheckpointCodec.MESSAGES_KEY);
+        assertThat(actualMessages).hasSameSizeAs(expectedMessages);
+        for (int i = 0; i < expectedMessages.size(); i++) {
+            Message a = actualMessages.get(i);
+            Message e = expectedMessages.get(i);
+            assertThat(a.getClass()).isEqualTo(e.getClass());
+            assertThat(a.getText()).isEqualTo(e.getText());
+            if (e instanceof AssistantMessage assistant) {
+                assertThat(((AssistantMessage) a).getToolCalls()).isEqualTo(assistant.getToolCalls());
+            }
+            if (e instanceof ToolResponseMessage tool) {
+                assertThat(((ToolResponseMessage) a).getResponses()).isEqualTo(tool.getResponses());
+            }
+        }
+    }
+}
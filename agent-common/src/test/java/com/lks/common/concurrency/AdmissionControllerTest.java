@@ -0,0 +1,156 @@
+package com.lks.common.concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 验证全局准入：并发上限与排队上限（429）、按到达顺序放行、排队超时，以及取消时释放名额
+ */
+class AdmissionControllerTest {
+
+    @Test
+    void runsBeyondTheQueueAreRejectedAsOverloaded() {
+        AdmissionController controller = AdmissionController.builder().maxConcurrent(2).maxQueued(1).build();
+        ControlledRun first = new ControlledRun();
+        ControlledRun second = new ControlledRun();
+        ControlledRun queued = new ControlledRun();
+        ControlledRun rejected = new ControlledRun();
+
+        first.subscribe(controller);
+        second.subscribe(controller);
+        queued.subscribe(controller);
+        rejected.subscribe(controller);
+
+        assertThat(first.started).isTrue();
+        assertThat(second.started).isTrue();
+        assertThat(queued.started).isFalse();
+        assertThat(rejected.started).isFalse();
+        assertThat(rejected.error.get()).isInstanceOfSatisfying(RunRejectedException.class, e -> {
+            assertThat(e.getReason()).isEqualTo(RunRejectedException.Reason.OVERLOADED);
+            assertThat(e.isThreadConflict()).isFalse();
+            assertThat(e.getRetryAfter()).isPositive();
+        });
+        assertThat(controller.stats()).isEqualTo(new AdmissionController.Stats(2, 1, 1, 0));
+    }
+
+    @Test
+    void queuedRunsAreAdmittedInArrivalOrder() {
+        AdmissionController controller = AdmissionController.builder().maxConcurrent(1).maxQueued(4).build();
+        ControlledRun running = new ControlledRun();
+        ControlledRun earlier = new ControlledRun();
+        ControlledRun later = new ControlledRun();
+
+        running.subscribe(controller);
+        earlier.subscribe(controller);
+        later.subscribe(controller);
+
+        running.complete();
+        assertThat(earlier.started).isTrue();
+        assertThat(later.started).isFalse();
+        earlier.fail(new IllegalStateException("model failed"));
+        assertThat(later.started).isTrue();
+        later.complete();
+
+        assertThat(earlier.error.get()).hasMessage("model failed");
+        assertThat(controller.stats().active()).isZero();
+        assertThat(controller.stats().queued()).isZero();
+    }
+
+    @Test
+    void waitingLongerThanTheQueueTimeoutIsRejected() {
+        AdmissionController controller = AdmissionController.builder()
+                .maxConcurrent(1)
+                .queueTimeout(Duration.ofMillis(100))
+                .build();
+        ControlledRun running = new ControlledRun();
+        ControlledRun waiting = new ControlledRun();
+
+        running.subscribe(controller);
+        waiting.subscribe(controller);
+
+        await().atMost(Duration.ofSeconds(2)).until(() -> waiting.error.get() != null);
+        assertThat(waiting.error.get()).isInstanceOfSatisfying(RunRejectedException.class, e -> {
+            assertThat(e.getReason()).isEqualTo(RunRejectedException.Reason.QUEUE_TIMEOUT);
+            assertThat(e.isThreadConflict()).isFalse();
+        });
+        assertThat(controller.stats().queueTimeouts()).isEqualTo(1);
+        assertThat(controller.stats().queued()).isZero();
+        running.complete();
+        assertThat(waiting.started).isFalse();
+        assertThat(controller.stats().active()).isZero();
+    }
+
+    @Test
+    void cancellingReleasesThePermit() {
+        AdmissionController controller = AdmissionController.builder().maxConcurrent(1).build();
+        ControlledRun running = new ControlledRun();
+        ControlledRun cancelledWhileQueued = new ControlledRun();
+        ControlledRun next = new ControlledRun();
+
+        running.subscribe(controller);
+        cancelledWhileQueued.subscribe(controller);
+        next.subscribe(controller);
+        cancelledWhileQueued.subscription.dispose();
+        assertThat(controller.stats().queued()).isEqualTo(1);
+
+        // 客户端断开：正在执行的运行被取消，名额交给下一个排队的运行
+        running.subscription.dispose();
+
+        assertThat(cancelledWhileQueued.started).isFalse();
+        assertThat(next.started).isTrue();
+        next.subscription.dispose();
+        assertThat(controller.stats().active()).isZero();
+    }
+
+    @Test
+    void bindToExportsGaugesAndRejections() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AdmissionController controller = AdmissionController.builder().maxConcurrent(1).maxQueued(0).build()
+                .bindTo(registry, "research");
+        ControlledRun running = new ControlledRun();
+        ControlledRun rejected = new ControlledRun();
+
+        running.subscribe(controller);
+        rejected.subscribe(controller);
+
+        assertThat(registry.get("agent.run.admission.active").tag("gate", "research").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("agent.run.admission.queued").gauge().value()).isZero();
+        assertThat(registry.get("agent.run.rejected").tag("reason", "overloaded").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("agent.run.rejected").tag("reason", "queue_timeout").functionCounter().count()).isZero();
+        assertThat(registry.get("agent.run.admission.wait").timer().count()).isEqualTo(1);
+        running.complete();
+    }
+
+    /**
+     * 由测试控制结束时机的运行
+     */
+    private static final class ControlledRun {
+        final Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        volatile boolean started;
+        Disposable subscription;
+
+        void subscribe(AdmissionController controller) {
+            subscription = controller.admit(() -> {
+                started = true;
+                return sink.asFlux();
+            }).subscribe(value -> { }, error::set);
+        }
+
+        void complete() {
+            sink.tryEmitComplete();
+        }
+
+        void fail(Throwable failure) {
+            sink.tryEmitError(failure);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.lks.common.concurrency;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 验证按线程串行：同一线程排队执行、不同线程互不影响、排队上限与 reject 模式、等待超时，以及取消时释放执行权
+ */
+class LocalThreadRunGateTest {
+
+    @Test
+    void runsOnTheSameThreadAreSerializedInArrivalOrder() {
+        LocalThreadRunGate gate = LocalThreadRunGate.builder().build();
+        ControlledRun first = new ControlledRun();
+        ControlledRun second = new ControlledRun();
+        ControlledRun third = new ControlledRun();
+        ControlledRun otherThread = new ControlledRun();
+
+        first.subscribe(gate, "t-1");
+        second.subscribe(gate, "t-1");
+        third.subscribe(gate, "t-1");
+        otherThread.subscribe(gate, "t-2");
+
+        assertThat(first.started).isTrue();
+        assertThat(second.started).isFalse();
+        assertThat(otherThread.started).isTrue();
+        assertThat(gate.activeThreads()).isEqualTo(2);
+        assertThat(gate.queuedRuns()).isEqualTo(2);
+
+        first.complete();
+        assertThat(second.started).isTrue();
+        assertThat(third.started).isFalse();
+        second.fail(new IllegalStateException("model failed"));
+        assertThat(third.started).isTrue();
+        third.complete();
+        otherThread.complete();
+
+        assertThat(second.error.get()).hasMessage("model failed");
+        assertThat(gate.activeThreads()).isZero();
+        assertThat(gate.queuedRuns()).isZero();
+    }
+
+    @Test
+    void runsBeyondThePerThreadQueueAreRejected() {
+        LocalThreadRunGate gate = LocalThreadRunGate.builder().maxQueuedPerThread(1).build();
+        ControlledRun running = new ControlledRun();
+        ControlledRun queued = new ControlledRun();
+        ControlledRun rejected = new ControlledRun();
+
+        running.subscribe(gate, "t-1");
+        queued.subscribe(gate, "t-1");
+        rejected.subscribe(gate, "t-1");
+
+        assertThat(rejected.started).isFalse();
+        assertThat(rejected.error.get()).isInstanceOfSatisfying(RunRejectedException.class, e -> {
+            assertThat(e.getReason()).isEqualTo(RunRejectedException.Reason.THREAD_BUSY);
+            assertThat(e.isThreadConflict()).isTrue();
+        });
+        assertThat(gate.queuedRuns()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectModeNeverQueues() {
+        LocalThreadRunGate gate = LocalThreadRunGate.builder().mode(ThreadRunGate.Mode.REJECT).build();
+        ControlledRun running = new ControlledRun();
+        ControlledRun overlapping = new ControlledRun();
+
+        running.subscribe(gate, "t-1");
+        overlapping.subscribe(gate, "t-1");
+
+        assertThat(overlapping.error.get()).isInstanceOf(RunRejectedException.class);
+        assertThat(gate.queuedRuns()).isZero();
+        running.complete();
+        assertThat(gate.activeThreads()).isZero();
+    }
+
+    @Test
+    void waitingLongerThanMaxWaitIsRejectedAndLeavesTheQueue() {
+        LocalThreadRunGate gate = LocalThreadRunGate.builder().maxWait(Duration.ofMillis(100)).build();
+        ControlledRun running = new ControlledRun();
+        ControlledRun waiting = new ControlledRun();
+
+        running.subscribe(gate, "t-1");
+        waiting.subscribe(gate, "t-1");
+
+        await().atMost(Duration.ofSeconds(2)).until(() -> waiting.error.get() != null);
+        assertThat(waiting.error.get()).isInstanceOfSatisfying(RunRejectedException.class, e -> {
+            assertThat(e.getReason()).isEqualTo(RunRejectedException.Reason.THREAD_WAIT_TIMEOUT);
+            assertThat(e.isThreadConflict()).isTrue();
+        });
+        assertThat(gate.queuedRuns()).isZero();
+        running.complete();
+        assertThat(waiting.started).isFalse();
+        assertThat(gate.activeThreads()).isZero();
+    }
+
+    @Test
+    void cancellingReleasesTheThread() {
+        LocalThreadRunGate gate = LocalThreadRunGate.builder().build();
+        ControlledRun running = new ControlledRun();
+        ControlledRun cancelledWhileQueued = new ControlledRun();
+        ControlledRun next = new ControlledRun();
+
+        running.subscribe(gate, "t-1");
+        cancelledWhileQueued.subscribe(gate, "t-1");
+        next.subscribe(gate, "t-1");
+        cancelledWhileQueued.subscription.dispose();
+        assertThat(gate.queuedRuns()).isEqualTo(1);
+
+        // 客户端断开：正在执行的运行被取消，执行权交给下一个排队的运行
+        running.subscription.dispose();
+
+        assertThat(cancelledWhileQueued.started).isFalse();
+        assertThat(next.started).isTrue();
+        next.subscription.dispose();
+        assertThat(gate.activeThreads()).isZero();
+    }
+
+    /**
+     * 由测试控制结束时机的运行
+     */
+    private static final class ControlledRun {
+        final Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        volatile boolean started;
+        Disposable subscription;
+
+        void subscribe(ThreadRunGate gate, String threadId) {
+            subscription = gate.run(threadId, () -> {
+                started = true;
+                return sink.asFlux();
+            }).subscribe(value -> { }, error::set);
+        }
+
+        void complete() {
+            sink.tryEmitComplete();
+        }
+
+        void fail(Throwable failure) {
+            sink.tryEmitError(failure);
+        }
+    }
+}
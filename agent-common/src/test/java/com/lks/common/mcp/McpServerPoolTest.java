@@ -0,0 +1,117 @@
+package com.lks.common.mcp;
+
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 以 scripts/stub_mcp_server.py 启动真实的 stdio 子进程，验证进程池的分派、崩溃后重启与请求超时
+ */
+class McpServerPoolTest {
+
+    private static final Path STUB = Path.of("..", "scripts", "stub_mcp_server.py").toAbsolutePath().normalize();
+
+    @BeforeAll
+    static void requirePython() throws Exception {
+        assumeTrue(Files.isRegularFile(STUB), "stub MCP server not found: " + STUB);
+        Process probe = new ProcessBuilder("python3", "--version").redirectErrorStream(true).start();
+        assumeTrue(probe.waitFor(10, TimeUnit.SECONDS) && probe.exitValue() == 0, "python3 is not available");
+    }
+
+    @Test
+    void dispatchesConcurrentCallsAcrossInstances() throws Exception {
+        try (McpServerPool pool = pool(2, Duration.ofSeconds(10), Duration.ZERO, "--latency-ms", "500")) {
+            assertThat(pool.getTools()).extracting(McpSchema.Tool::name).contains("jina_search", "read_paper");
+
+            Set<String> pids = ConcurrentHashMap.newKeySet();
+            try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<McpSchema.CallToolResult>> results = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    String query = "q" + i;
+                    results.add(callers.submit(() -> pool.callTool(search(query))));
+                }
+                for (Future<McpSchema.CallToolResult> result : results) {
+                    pids.add(pidOf(result.get(10, TimeUnit.SECONDS)));
+                }
+            }
+
+            // 进行中请求数最少的实例优先，4 个并发调用必然分到两个进程上
+            assertThat(pids).hasSize(2);
+            assertThat(pool.stats().calls()).isEqualTo(4);
+            assertThat(pool.stats().failures()).isZero();
+            assertThat(pool.stats().inFlight()).isZero();
+        }
+    }
+
+    @Test
+    void restartsCrashedInstance() {
+        try (McpServerPool pool = pool(1, Duration.ofSeconds(2), Duration.ofMillis(200),
+                "--latency-ms", "10", "--crash-after", "1")) {
+            // 第一次调用返回后进程退出
+            String firstPid = pidOf(pool.callTool(search("before crash")));
+
+            await().atMost(Duration.ofSeconds(15))
+                    .untilAsserted(() -> assertThat(pool.stats().restarts()).isPositive());
+            await().atMost(Duration.ofSeconds(15))
+                    .untilAsserted(() -> assertThat(pool.stats().healthy()).isEqualTo(1));
+
+            String secondPid = pidOf(pool.callTool(search("after restart")));
+            assertThat(secondPid).isNotEqualTo(firstPid);
+        }
+    }
+
+    @Test
+    void timesOutSlowCallsWithoutBlockingThePool() {
+        try (McpServerPool pool = pool(1, Duration.ofMillis(300), Duration.ZERO, "--latency-ms", "3000")) {
+            long startedAt = System.nanoTime();
+            assertThatThrownBy(() -> pool.callTool(search("slow"))).isInstanceOf(RuntimeException.class);
+
+            assertThat(Duration.ofNanos(System.nanoTime() - startedAt)).isLessThan(Duration.ofSeconds(2));
+            assertThat(pool.stats().failures()).isEqualTo(1);
+            assertThat(pool.stats().inFlight()).isZero();
+        }
+    }
+
+    private static McpServerPool pool(int size, Duration requestTimeout, Duration healthCheckInterval, String... args) {
+        List<String> command = new ArrayList<>(List.of(STUB.toString()));
+        command.addAll(List.of(args));
+        return McpServerPool.builder()
+                .name("stub")
+                .parameters(ServerParameters.builder("python3").args(command).build())
+                .size(size)
+                .requestTimeout(requestTimeout)
+                .initializationTimeout(Duration.ofSeconds(10))
+                .healthCheckInterval(healthCheckInterval)
+                .build()
+                .start();
+    }
+
+    private static McpSchema.CallToolRequest search(String query) {
+        return new McpSchema.CallToolRequest("jina_search", Map.of("query", query));
+    }
+
+    private static String pidOf(McpSchema.CallToolResult result) {
+        assertThat(result.isError()).isFalse();
+        String text = ((McpSchema.TextContent) result.content().get(0)).text();
+        return text.replaceAll(".*\"pid\":\\s*(\\d+).*", "$1");
+    }
+}
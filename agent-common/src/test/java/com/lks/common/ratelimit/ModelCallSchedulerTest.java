@@ -0,0 +1,186 @@
+package com.lks.common.ratelimit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 验证调度器：令牌桶补充与按实际用量退还、优先级与老化、429 后降速暂停与恢复、排队中取消及排队超时
+ */
+class ModelCallSchedulerTest {
+
+    private final List<ModelCallScheduler> schedulers = new ArrayList<>();
+
+    @AfterEach
+    void close() {
+        schedulers.forEach(ModelCallScheduler::close);
+    }
+
+    @Test
+    void requestBucketRefillsAtTheConfiguredRate() throws Exception {
+        // 每秒 10 个请求，桶容量 1 秒
+        ModelCallScheduler scheduler = scheduler(ModelCallScheduler.builder()
+                .requestsPerMinute(600)
+                .burst(Duration.ofSeconds(1)));
+        for (int i = 0; i < 10; i++) {
+            assertThat(scheduler.acquire(ModelPriority.REPORT, 0)).isDone();
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<ModelCallScheduler.Permit> next = scheduler.acquire(ModelPriority.REPORT, 0);
+        assertThat(next).isNotDone();
+        next.get(2, TimeUnit.SECONDS);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(50);
+        assertThat(scheduler.stats().granted()).isEqualTo(11);
+    }
+
+    @Test
+    void unusedTokensAreRefundedOnCompletion() throws Exception {
+        // 每秒 10 个 token，桶容量 100；不退还时第三个调用要等 5 秒
+        ModelCallScheduler scheduler = scheduler(ModelCallScheduler.builder()
+                .tokensPerMinute(600)
+                .burst(Duration.ofSeconds(10)));
+        ModelCallScheduler.Permit first = scheduler.acquire(ModelPriority.REPORT, 50).get();
+        ModelCallScheduler.Permit second = scheduler.acquire(ModelPriority.REPORT, 50).get();
+        CompletableFuture<ModelCallScheduler.Permit> third = scheduler.acquire(ModelPriority.REPORT, 50);
+        assertThat(third).isNotDone();
+
+        first.complete(10);
+        second.complete(10);
+
+        third.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void usageAboveTheEstimateIsChargedToLaterCalls() throws Exception {
+        ModelCallScheduler scheduler = scheduler(ModelCallScheduler.builder()
+                .tokensPerMinute(600)
+                .burst(Duration.ofSeconds(10)));
+        scheduler.acquire(ModelPriority.REPORT, 10).get().complete(100);
+
+        assertThat(scheduler.acquire(ModelPriority.REPORT, 10)).isNotDone();
+    }
+
+    @Test
+    void higherPrioritiesAreGrantedFirst() throws Exception {
+        ModelCallScheduler scheduler = scheduler(ModelCallScheduler.builder().maxConcurrency(1));
+        ModelCallScheduler.Permit running = scheduler.acquire(ModelPriority.INTERACTIVE, 0).get();
+        CompletableFuture<ModelCallScheduler.Permit> background = scheduler.acquire(ModelPriority.BACKGROUND, 0);
+        CompletableFuture<ModelCallScheduler.Permit> research = scheduler.acquire(ModelPriority.RESEARCH, 0);
+        CompletableFuture<ModelCallScheduler.Permit> report = scheduler.acquire(ModelPriority.REPORT, 0);
+        assertThat(scheduler.stats().queued()).isEqualTo(3);
+
+        running.complete(0);
+        assertThat(report).isDone();
+        assertThat(research).isNotDone();
+        report.get().complete(0);
+        assertThat(research).isDone();
+        assertThat(background).isNotDone();
+        research.get().complete(0);
+        assertThat(background).isDone();
+    }
+
+    @Test
+    void agedLowPriorityCallsOvertakeNewerHighPriorityOnes() throws Exception {
+        ModelCallScheduler scheduler = scheduler(ModelCallScheduler.builder()
+                .maxConcurrency(1)
+                .agingThreshold(Duration.ofMillis(100)));
+        ModelCallScheduler.Permit running = scheduler.acquire(ModelPriority.INTERACTIVE, 0).get();
+        CompletableFuture<ModelCallScheduler.Permit> background = scheduler.acquire(ModelPriority.BACKGROUND, 0);
+        Thread.sleep(150);
+        CompletableFuture<ModelCallScheduler.Permit> interactive = scheduler.acquire(ModelPriority.INTERACTIVE, 0);
+
+        running.complete(0);
+
+        assertThat(background).isDone();
+        assertThat(interactive).isNotDone();
+    }
+
+    @Test
+    void throttlingHalvesTheRatePausesAndRecovers() throws Exception {
+        ModelCallScheduler scheduler = scheduler(ModelCallScheduler.builder()
+                .requestsPerMinute(60_000)
+                .initialBackoff(Duration.ofMillis(200))
+                .recoveryStep(0.25));
+        ModelCallScheduler.Permit permit = scheduler.acquire(ModelPriority.REPORT, 0).get();
+
+        long start = System.nanoTime();
+        CompletableFuture<ModelCallScheduler.Permit> retry = permit.throttled(0);
+
+        assertThat(scheduler.stats().rateFactor()).isEqualTo(0.5);
+        assertThat(scheduler.stats().throttled()).isEqualTo(1);
+        // 暂停期间其他调用同样不放行
+        CompletableFuture<ModelCallScheduler.Permit> other = scheduler.acquire(ModelPriority.INTERACTIVE, 0);
+        assertThat(retry).isNotDone();
+        assertThat(other).isNotDone();
+
+        ModelCallScheduler.Permit retried = retry.get(2, TimeUnit.SECONDS);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(200);
+        retried.complete(0);
+        assertThat(scheduler.stats().rateFactor()).isEqualTo(0.75);
+        other.get(2, TimeUnit.SECONDS).complete(0);
+        assertThat(scheduler.stats().rateFactor()).isEqualTo(1.0);
+    }
+
+    @Test
+    void consecutiveThrottlesNeverDropBelowTheMinimumRate() throws Exception {
+        ModelCallScheduler scheduler = scheduler(ModelCallScheduler.builder()
+                .initialBackoff(Duration.ofMillis(1))
+                .minRateFactor(0.2));
+        for (int i = 0; i < 4; i++) {
+            scheduler.acquire(ModelPriority.REPORT, 0).get(2, TimeUnit.SECONDS).throttled();
+        }
+
+        assertThat(scheduler.stats().rateFactor()).isEqualTo(0.2);
+        assertThat(scheduler.stats().inFlight()).isZero();
+    }
+
+    @Test
+    void cancellingAQueuedCallRemovesItFromTheQueue() throws Exception {
+        ModelCallScheduler scheduler = scheduler(ModelCallScheduler.builder().maxConcurrency(1));
+        ModelCallScheduler.Permit running = scheduler.acquire(ModelPriority.REPORT, 0).get();
+        CompletableFuture<ModelCallScheduler.Permit> queued = scheduler.acquire(ModelPriority.REPORT, 0);
+        assertThat(scheduler.stats().queued()).isEqualTo(1);
+
+        queued.cancel(false);
+        assertThat(scheduler.stats().queued()).isZero();
+        running.complete(0);
+
+        assertThat(scheduler.stats().inFlight()).isZero();
+        assertThat(scheduler.stats().granted()).isEqualTo(1);
+    }
+
+    @Test
+    void queuedCallsTimeOutAndLeaveTheQueue() throws Exception {
+        ModelCallScheduler scheduler = scheduler(ModelCallScheduler.builder()
+                .maxConcurrency(1)
+                .acquireTimeout(Duration.ofMillis(100)));
+        ModelCallScheduler.Permit running = scheduler.acquire(ModelPriority.REPORT, 0).get();
+        CompletableFuture<ModelCallScheduler.Permit> queued = scheduler.acquire(ModelPriority.REPORT, 0);
+
+        assertThatThrownBy(() -> queued.get(2, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(ModelQuotaTimeoutException.class);
+        await().atMost(Duration.ofSeconds(1)).until(() -> scheduler.stats().queued() == 0);
+        running.complete(0);
+        assertThat(scheduler.stats().inFlight()).isZero();
+        assertThat(scheduler.stats().granted()).isEqualTo(1);
+    }
+
+    private ModelCallScheduler scheduler(ModelCallScheduler.Builder builder) {
+        ModelCallScheduler scheduler = builder.build();
+        schedulers.add(scheduler);
+        return scheduler;
+    }
+}
@@ -0,0 +1,167 @@
+package com.lks.common.ratelimit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 验证调度装饰器：同步调用限流后重新排队、流式调用只在首个数据块之前重新排队、订阅取消与排队超时
+ */
+class ScheduledChatModelTest {
+
+    private final ModelCallScheduler scheduler = ModelCallScheduler.builder()
+            .maxConcurrency(1)
+            .initialBackoff(Duration.ofMillis(10))
+            .maxThrottleRetries(2)
+            .acquireTimeout(Duration.ofMillis(300))
+            .build();
+
+    @AfterEach
+    void close() {
+        scheduler.close();
+    }
+
+    @Test
+    void callIsRetriedAfterThrottlingAndReleasesItsPermit() {
+        AtomicInteger calls = new AtomicInteger();
+        ScheduledChatModel model = scheduled(new StubModel(() -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("429 - Too Many Requests");
+            }
+            return Flux.just(response("ok", 42));
+        }));
+
+        assertThat(model.call(prompt()).getResult().getOutput().getText()).isEqualTo("ok");
+
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(scheduler.stats().throttled()).isEqualTo(1);
+        assertThat(scheduler.stats().granted()).isEqualTo(2);
+        assertThat(scheduler.stats().inFlight()).isZero();
+    }
+
+    @Test
+    void callGivesUpAfterTheRetryLimit() {
+        ScheduledChatModel model = scheduled(new StubModel(() -> {
+            throw new IllegalStateException("429 - Too Many Requests");
+        }));
+
+        assertThatThrownBy(() -> model.call(prompt())).hasMessageStartingWith("429");
+
+        assertThat(scheduler.stats().throttled()).isEqualTo(3);
+        assertThat(scheduler.stats().inFlight()).isZero();
+    }
+
+    @Test
+    void streamThrottledBeforeTheFirstChunkIsRequeued() {
+        AtomicInteger streams = new AtomicInteger();
+        ScheduledChatModel model = scheduled(new StubModel(() -> streams.incrementAndGet() == 1
+                ? Flux.error(new IllegalStateException("Throttling.RateQuota"))
+                : Flux.just(response("床前", 0), response("明月光", 12))));
+
+        List<ChatResponse> chunks = model.stream(prompt()).collectList().block(Duration.ofSeconds(5));
+
+        assertThat(chunks).extracting(chunk -> chunk.getResult().getOutput().getText()).containsExactly("床前", "明月光");
+        assertThat(streams.get()).isEqualTo(2);
+        assertThat(scheduler.stats().throttled()).isEqualTo(1);
+        assertThat(scheduler.stats().inFlight()).isZero();
+    }
+
+    @Test
+    void streamThrottledAfterTheFirstChunkFails() {
+        AtomicInteger streams = new AtomicInteger();
+        ScheduledChatModel model = scheduled(new StubModel(() -> {
+            streams.incrementAndGet();
+            return Flux.just(response("床前", 0)).concatWith(Flux.error(new IllegalStateException("429 - slow down")));
+        }));
+
+        assertThatThrownBy(() -> model.stream(prompt()).blockLast(Duration.ofSeconds(5))).hasMessageStartingWith("429");
+
+        assertThat(streams.get()).isEqualTo(1);
+        assertThat(scheduler.stats().inFlight()).isZero();
+    }
+
+    @Test
+    void cancellingAQueuedStreamLeavesTheQueue() throws Exception {
+        AtomicInteger streams = new AtomicInteger();
+        ScheduledChatModel model = scheduled(new StubModel(() -> {
+            streams.incrementAndGet();
+            return Flux.just(response("ok", 0));
+        }));
+        ModelCallScheduler.Permit running = scheduler.acquire(ModelPriority.REPORT, 0).get();
+
+        Disposable subscription = model.stream(prompt()).subscribe();
+        await().atMost(Duration.ofSeconds(1)).until(() -> scheduler.stats().queued() == 1);
+        subscription.dispose();
+
+        assertThat(scheduler.stats().queued()).isZero();
+        running.complete(0);
+        assertThat(streams.get()).isZero();
+        assertThat(scheduler.stats().inFlight()).isZero();
+    }
+
+    @Test
+    void callWaitingLongerThanTheAcquireTimeoutFails() throws Exception {
+        ScheduledChatModel model = scheduled(new StubModel(() -> Flux.just(response("ok", 0))));
+        ModelCallScheduler.Permit running = scheduler.acquire(ModelPriority.REPORT, 0).get();
+
+        assertThatThrownBy(() -> model.call(prompt())).isInstanceOf(ModelQuotaTimeoutException.class);
+        assertThatThrownBy(() -> model.stream(prompt()).blockLast(Duration.ofSeconds(5)))
+                .isInstanceOf(ModelQuotaTimeoutException.class);
+
+        assertThat(scheduler.stats().queued()).isZero();
+        running.complete(0);
+        assertThat(model.call(prompt()).getResult().getOutput().getText()).isEqualTo("ok");
+    }
+
+    private ScheduledChatModel scheduled(ChatModel delegate) {
+        return ScheduledChatModel.builder()
+                .delegate(delegate)
+                .scheduler(scheduler)
+                .priority(ModelPriority.REPORT)
+                .reservedOutputTokens(16)
+                .build();
+    }
+
+    private static Prompt prompt() {
+        return new Prompt(List.of(new UserMessage("write a poem")));
+    }
+
+    private static ChatResponse response(String text, int totalTokens) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))),
+                ChatResponseMetadata.builder().usage(new DefaultUsage(0, totalTokens, totalTokens)).build());
+    }
+
+    /**
+     * call 取 stream 的最后一个数据块，两者都由给定的 Supplier 生成结果
+     */
+    private record StubModel(Supplier<Flux<ChatResponse>> responses) implements ChatModel {
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            return responses.get().blockLast();
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return responses.get();
+        }
+    }
+}
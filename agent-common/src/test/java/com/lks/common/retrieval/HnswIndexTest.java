@@ -0,0 +1,165 @@
+package com.lks.common.retrieval;
+
+import com.lks.common.embedding.HashingEmbeddingFunction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 验证 HNSW 索引：与暴力检索对比的召回率、flush 后重新打开，以及崩溃后截断到已提交的节点数并剔除残留的边
+ */
+class HnswIndexTest {
+
+    private static final int M = 8;
+
+    private final HashingEmbeddingFunction embedding = new HashingEmbeddingFunction(128, 2);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recallIsCloseToBruteForce() throws IOException {
+        List<float[]> vectors = corpus(2000, 1);
+        try (HnswIndex index = open()) {
+            vectors.forEach(index::add);
+            List<float[]> queries = corpus(50, 2);
+
+            double recall = recall(index, vectors, queries, 10, 64);
+
+            assertThat(recall).isGreaterThanOrEqualTo(0.9);
+        }
+    }
+
+    @Test
+    void flushedIndexIsReopenedUnchanged() throws IOException {
+        List<float[]> vectors = corpus(500, 1);
+        float[] query = embedding.embed("moon light frost");
+        List<HnswIndex.Neighbor> before;
+        try (HnswIndex index = open()) {
+            vectors.forEach(index::add);
+            before = index.search(query, 10, 64);
+        }
+
+        try (HnswIndex reopened = open()) {
+            assertThat(reopened.size()).isEqualTo(500);
+            assertThat(reopened.search(query, 10, 64)).isEqualTo(before);
+            assertThat(reopened.search(vectors.get(123), 1, 64).get(0).id()).isEqualTo(123);
+        }
+    }
+
+    @Test
+    void reopeningWithADifferentSpaceRebuilds() throws IOException {
+        try (HnswIndex index = open()) {
+            corpus(50, 1).forEach(index::add);
+        }
+
+        try (HnswIndex rebuilt = HnswIndex.open(dir, "other-space", embedding.dimensions(), M, 64)) {
+            assertThat(rebuilt.size()).isZero();
+        }
+    }
+
+    @Test
+    void uncommittedNodesAreDroppedAfterACrash() throws IOException {
+        List<float[]> committed = corpus(300, 1);
+        List<float[]> lost = corpus(200, 2);
+        HnswIndex crashed = open();
+        committed.forEach(crashed::add);
+        crashed.flush();
+        // 提交后继续写入，未 flush 就崩溃：映射中已有已提交节点指向这些节点的边
+        lost.forEach(crashed::add);
+        assertThat(maxLayer0Link(300)).isGreaterThanOrEqualTo(300);
+
+        try (HnswIndex recovered = open()) {
+            assertThat(recovered.size()).isEqualTo(300);
+            assertThat(maxLayer0Link(300)).isLessThan(300);
+
+            // 新节点沿用被丢弃的节点号，不应经残留的边被连到无关位置
+            List<float[]> added = corpus(200, 3);
+            added.forEach(recovered::add);
+            List<float[]> all = new ArrayList<>(committed);
+            all.addAll(added);
+            assertThat(recall(recovered, all, corpus(50, 4), 10, 64)).isGreaterThanOrEqualTo(0.9);
+            for (int id : List.of(0, 150, 299, 300, 499)) {
+                assertThat(recovered.search(all.get(id), 1, 64).get(0).id()).isEqualTo(id);
+            }
+        }
+    }
+
+    private HnswIndex open() throws IOException {
+        return HnswIndex.open(dir, embedding.name(), embedding.dimensions(), M, 64);
+    }
+
+    /**
+     * 由随机词组成的文本的向量，同一种子生成相同的语料
+     */
+    private List<float[]> corpus(int size, long seed) {
+        String[] words = {"moon", "frost", "light", "bed", "home", "river", "mountain", "autumn", "wind", "poem",
+                "spring", "flower", "night", "rain", "boat", "willow", "crane", "cloud", "snow", "bamboo"};
+        Random random = new Random(seed);
+        List<float[]> vectors = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < 6; w++) {
+                text.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            text.append(i).append('-').append(seed);
+            vectors.add(embedding.embed(text.toString()));
+        }
+        return vectors;
+    }
+
+    private static double recall(HnswIndex index, List<float[]> vectors, List<float[]> queries, int k, int ef) {
+        int found = 0;
+        for (float[] query : queries) {
+            Set<Integer> exact = new HashSet<>(IntStream.range(0, vectors.size()).boxed()
+                    .sorted(Comparator.comparingDouble((Integer id) -> dot(query, vectors.get(id))).reversed())
+                    .limit(k)
+                    .toList());
+            for (HnswIndex.Neighbor neighbor : index.search(query, k, ef)) {
+                if (exact.contains(neighbor.id())) {
+                    found++;
+                }
+            }
+        }
+        return (double) found / (queries.size() * k);
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+
+    /**
+     * 直接读 links0.bin：前 nodes 个节点第 0 层邻居中的最大节点号
+     */
+    private int maxLayer0Link(int nodes) throws IOException {
+        int slotInts = 1 + 2 * M;
+        ByteBuffer links = ByteBuffer.wrap(Files.readAllBytes(dir.resolve("links0.bin"))).order(ByteOrder.LITTLE_ENDIAN);
+        int max = -1;
+        for (int node = 0; node < nodes; node++) {
+            int base = node * slotInts * Integer.BYTES;
+            int count = links.getInt(base);
+            for (int i = 1; i <= count; i++) {
+                max = Math.max(max, links.getInt(base + i * Integer.BYTES));
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,130 @@
+package com.lks.common.retrieval;
+
+import com.lks.common.embedding.HashingEmbeddingFunction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 验证本地语料库：切块检索与去重、重启后沿用索引、截断崩溃前未提交的块记录，以及只重新索引变化的文件
+ */
+class LocalCorpusTest {
+
+    private static final String POEM = "床前明月光，疑是地上霜。举头望明月，低头思故乡。";
+    private static final String ESSAY = "Retrieval augmented generation grounds the model answer in documents fetched at query time.";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void indexedTextIsSearchableAndDeduplicated() throws IOException {
+        try (LocalCorpus corpus = open()) {
+            assertThat(corpus.index("poem", POEM)).isEqualTo(1);
+            assertThat(corpus.index("essay", ESSAY)).isEqualTo(1);
+            assertThat(corpus.index("poem-again", "  " + POEM + "  ")).isZero();
+
+            List<LocalCorpus.Hit> hits = corpus.search("举头望明月", 1);
+
+            assertThat(hits).singleElement().satisfies(hit -> {
+                assertThat(hit.source()).isEqualTo("poem");
+                assertThat(hit.text()).isEqualTo(POEM);
+            });
+            assertThat(corpus.search("completely unrelated quantum chromodynamics", 3)).isEmpty();
+            assertThat(corpus.stats().chunks()).isEqualTo(2);
+            assertThat(corpus.stats().duplicateChunks()).isEqualTo(1);
+            assertThat(corpus.stats().hits()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void indexSurvivesRestart() throws IOException {
+        try (LocalCorpus corpus = open()) {
+            corpus.index("poem", POEM);
+            corpus.index("essay", ESSAY);
+        }
+
+        try (LocalCorpus reopened = open()) {
+            assertThat(reopened.stats().chunks()).isEqualTo(2);
+            assertThat(reopened.search("retrieval augmented generation", 1))
+                    .extracting(LocalCorpus.Hit::source).containsExactly("essay");
+            // 去重集合同样从块日志恢复
+            assertThat(reopened.index("poem", POEM)).isZero();
+        }
+    }
+
+    @Test
+    void uncommittedChunkRecordsAreTruncated() throws IOException {
+        long committedBytes;
+        try (LocalCorpus corpus = open()) {
+            corpus.index("poem", POEM);
+            committedBytes = corpus.stats().logBytes();
+        }
+        // 块已写入日志、索引尚未提交时崩溃
+        appendRecord("lost", "this chunk was never committed to the index");
+
+        try (LocalCorpus recovered = open()) {
+            assertThat(recovered.stats().logBytes()).isEqualTo(committedBytes);
+            assertThat(Files.size(dir.resolve("corpus").resolve("chunks.log"))).isEqualTo(committedBytes);
+
+            recovered.index("essay", ESSAY);
+
+            assertThat(recovered.search("retrieval augmented generation", 1)).singleElement()
+                    .satisfies(hit -> assertThat(hit.text()).isEqualTo(ESSAY));
+            assertThat(recovered.search("低头思故乡", 1)).extracting(LocalCorpus.Hit::source).containsExactly("poem");
+        }
+    }
+
+    @Test
+    void scanIndexesOnlyNewOrChangedFiles() throws IOException {
+        Path papers = Files.createDirectories(dir.resolve("papers"));
+        Path poem = Files.writeString(papers.resolve("poem.md"), POEM);
+        Files.writeString(papers.resolve("essay.txt"), ESSAY);
+        Files.writeString(papers.resolve("image.png"), "not text");
+
+        try (LocalCorpus corpus = open()) {
+            assertThat(corpus.scan(papers)).isEqualTo(2);
+            assertThat(corpus.scan(papers)).isZero();
+
+            Files.writeString(poem, POEM + "\n白日依山尽，黄河入海流。");
+            Files.setLastModifiedTime(poem, FileTime.fromMillis(System.currentTimeMillis() + Duration.ofMinutes(1).toMillis()));
+            assertThat(corpus.scan(papers)).isEqualTo(1);
+            assertThat(corpus.stats().files()).isEqualTo(2);
+        }
+
+        try (LocalCorpus reopened = open()) {
+            assertThat(reopened.scan(papers)).isZero();
+            assertThat(reopened.search("白日依山尽", 1)).extracting(LocalCorpus.Hit::source).containsExactly("file:poem.md");
+        }
+    }
+
+    private LocalCorpus open() throws IOException {
+        return LocalCorpus.builder()
+                .dir(dir.resolve("corpus"))
+                .embeddingFunction(new HashingEmbeddingFunction(256, 2))
+                .hnsw(8, 32, 32)
+                .scanInterval(Duration.ZERO)
+                .build();
+    }
+
+    /**
+     * 按块日志的格式（来源长度、文本长度、来源、文本）追加一条记录
+     */
+    private void appendRecord(String source, String text) throws IOException {
+        byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + sourceBytes.length + textBytes.length);
+        record.putInt(sourceBytes.length).putInt(textBytes.length).put(sourceBytes).put(textBytes);
+        Files.write(dir.resolve("corpus").resolve("chunks.log"), record.array(), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,144 @@
+package com.lks.common.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 验证内存映射存储：按会话限额淘汰最近最少访问的文件、读取被淘汰文件的提示、内容去重与引用计数、
+ * 映射被换出后重新映射、超长行分页，以及重启时清空上次的对象
+ */
+class MappedBlobStoreTest {
+
+    private static final String KB = "x".repeat(1023) + "\n";
+
+    @TempDir
+    Path root;
+
+    @Test
+    void sessionOverBudgetEvictsItsLeastRecentlyUsedFiles() throws IOException {
+        MappedBlobStore store = MappedBlobStore.builder().root(root).maxBytesPerSession(3 * 1024).build();
+        store.put("s1", "/a.md", KB + "a");
+        store.put("s1", "/b.md", KB + "b");
+        store.put("s2", "/other.md", KB.repeat(2) + "other");
+        // 访问 /a.md 后 /b.md 成为最久未访问的文件
+        assertThat(store.get("/a.md")).isPresent();
+
+        store.put("s1", "/c.md", KB + "c");
+
+        assertThat(store.get("/b.md")).isEmpty();
+        assertThat(store.isEvicted("/b.md")).isTrue();
+        assertThat(store.list("/")).extracting(MappedBlobStore.Entry::path)
+                .containsExactly("/a.md", "/c.md", "/other.md");
+        assertThat(store.stats().evictions()).isEqualTo(1);
+        assertThat(store.stats().logicalBytes()).isEqualTo(2 * 1025 + 2 * 1024 + 5);
+
+        // 重新写入后不再视为已淘汰
+        store.put("s1", "/b.md", "small");
+        assertThat(store.isEvicted("/b.md")).isFalse();
+        assertThat(store.get("/b.md")).map(MappedBlobStore.Blob::text).hasValue("small");
+    }
+
+    @Test
+    void aSingleFileLargerThanTheBudgetIsKept() throws IOException {
+        MappedBlobStore store = MappedBlobStore.builder().root(root).maxBytesPerSession(1024).build();
+        store.put("s1", "/small.md", "small");
+
+        store.put("s1", "/large.md", KB.repeat(4));
+
+        assertThat(store.isEvicted("/small.md")).isTrue();
+        assertThat(store.get("/large.md")).map(MappedBlobStore.Blob::lineCount).hasValue(4);
+    }
+
+    @Test
+    void readingAnEvictedFileExplainsWhy() throws IOException {
+        MappedBlobStore store = MappedBlobStore.builder().root(root).maxBytesPerSession(2 * 1024).build();
+        BlobStoreFilesystemBackend backend = new BlobStoreFilesystemBackend(store, "s1", null);
+        backend.write("/search_1.json", KB + "first");
+        backend.write("/search_2.json", KB + "second");
+
+        assertThat(backend.read("/search_1.json", 0, 10))
+                .startsWith("Error: File '/search_1.json' was evicted")
+                .contains("Re-run the tool");
+        assertThat(backend.read("/missing.json", 0, 10)).isEqualTo("Error: File '/missing.json' not found");
+        assertThat(backend.read("/search_2.json", 1, 10)).isEqualTo("     2\tsecond");
+    }
+
+    @Test
+    void identicalContentIsStoredOnceAndDeletedWithItsLastPath() throws IOException {
+        MappedBlobStore store = MappedBlobStore.builder().root(root).build();
+        MappedBlobStore.Entry first = store.put("s1", "/r1/result.json", KB);
+        store.put("s2", "/r2/result.json", KB);
+
+        assertThat(store.stats().objects()).isEqualTo(1);
+        assertThat(store.stats().dedupHits()).isEqualTo(1);
+        assertThat(store.stats().logicalBytes()).isEqualTo(2 * 1024);
+        assertThat(store.stats().storedBytes()).isEqualTo(1024);
+        Path object = root.resolve("objects").resolve(first.hash().substring(0, 2)).resolve(first.hash());
+
+        store.delete("/r1/result.json");
+        assertThat(object).exists();
+        store.put("s2", "/r2/result.json", "overwritten");
+        assertThat(object).doesNotExist();
+        assertThat(store.stats().objects()).isEqualTo(1);
+    }
+
+    @Test
+    void blobsAreRemappedAfterLeavingTheMappingCache() throws IOException {
+        MappedBlobStore cached = MappedBlobStore.builder().root(root.resolve("cached")).build();
+        cached.put("s1", "/a.md", KB.repeat(2));
+        assertThat(cached.get("/a.md")).containsSame(cached.get("/a.md").orElseThrow());
+
+        // 映射上限小于对象本身，映射用完即被换出
+        MappedBlobStore store = MappedBlobStore.builder().root(root.resolve("small")).maxMappedBytes(1024).build();
+        store.put("s1", "/a.md", KB.repeat(2));
+        MappedBlobStore.Blob first = store.get("/a.md").orElseThrow();
+        await().atMost(Duration.ofSeconds(2)).until(() -> store.stats().mappedBlobs() == 0);
+
+        MappedBlobStore.Blob reloaded = store.get("/a.md").orElseThrow();
+
+        assertThat(reloaded).isNotSameAs(first);
+        assertThat(reloaded.hash()).isEqualTo(first.hash());
+        assertThat(reloaded.lines(0, 5)).hasSize(2).allMatch(line -> line.length() == 1023);
+        // 换出的映射随对象文件存在而继续可读
+        assertThat(first.lines(1, 1)).containsExactly("x".repeat(1023));
+    }
+
+    @Test
+    void longLinesArePagedOnCharacterBoundaries() throws IOException {
+        MappedBlobStore store = MappedBlobStore.builder().root(root).build();
+        // 单行 JSON：3 字节的汉字不会被切成两半
+        String line = "{\"text\":\"" + "明月".repeat(1000) + "\"}";
+        store.put("s1", "/page.json", line);
+
+        MappedBlobStore.Blob blob = store.get("/page.json").orElseThrow();
+
+        assertThat(blob.lineCount()).isEqualTo(4);
+        assertThat(String.join("", blob.lines(0, blob.lineCount()))).isEqualTo(line);
+        assertThat(blob.lines(1, 1).get(0)).doesNotContain("\uFFFD");
+        assertThat(blob.lines(4, 1)).isEmpty();
+    }
+
+    @Test
+    void restartClearsObjectsLeftByThePreviousProcess() throws IOException {
+        MappedBlobStore previous = MappedBlobStore.builder().root(root).build();
+        previous.put("s1", "/a.md", "left over");
+
+        MappedBlobStore restarted = MappedBlobStore.builder().root(root).build();
+
+        assertThat(restarted.get("/a.md")).isEmpty();
+        try (Stream<Path> files = Files.walk(root.resolve("objects"))) {
+            assertThat(files.filter(Files::isRegularFile)).isEmpty();
+        }
+        restarted.put("s1", "/a.md", "left over");
+        assertThat(restarted.get("/a.md")).map(MappedBlobStore.Blob::text).hasValue("left over");
+    }
+}
@@ -0,0 +1,224 @@
+package com.lks.common.stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 验证可续传流：按 Last-Event-ID 回放并接上后续输出、缓冲被覆盖与键不匹配时拒绝、无人重连时取消运行、
+ * 结束后的保留期，以及本地没有缓冲时从外部副本回放
+ */
+class ResumableStreamsTest {
+
+    private final Sinks.Many<StreamEvent> source = Sinks.many().unicast().onBackpressureBuffer();
+    private final AtomicBoolean sourceCancelled = new AtomicBoolean();
+
+    @Test
+    void resumeReplaysMissedEventsAndFollowsTheRun() {
+        ResumableStreams streams = ResumableStreams.builder().build();
+        Client first = Client.subscribe(streams.start("t-1", source()));
+        emit("床前", "明月光", "疑是");
+        first.subscription.dispose();
+        // 客户端断开后运行继续
+        emit("地上霜");
+
+        String lastEventId = first.events.get(1).id();
+        Client resumed = Client.subscribe(streams.resume("t-1", lastEventId));
+        emit("举头");
+        source.tryEmitComplete();
+
+        assertThat(first.events).extracting(ResumableEvent::seq).containsExactly(1L, 2L, 3L);
+        assertThat(resumed.events).extracting(event -> event.event().data()).containsExactly("疑是", "地上霜", "举头");
+        assertThat(resumed.events).extracting(ResumableEvent::seq).containsExactly(3L, 4L, 5L);
+        assertThat(resumed.completed()).isTrue();
+        assertThat(sourceCancelled).isFalse();
+        assertThat(streams.stats().localResumes()).isEqualTo(1);
+        assertThat(streams.stats().replayedEvents()).isEqualTo(2);
+    }
+
+    @Test
+    void resumingBeyondTheBufferIsRejected() {
+        ResumableStreams streams = ResumableStreams.builder().bufferSize(2).build();
+        Client client = Client.subscribe(streams.start("t-1", source()));
+        emit("a", "b", "c", "d", "e");
+        String runId = client.events.get(0).runId();
+
+        assertThatThrownBy(() -> streams.resume("t-1", runId + ":1").blockFirst())
+                .isInstanceOf(StreamNotResumableException.class)
+                .hasMessageContaining("no longer buffered");
+        Client resumed = Client.subscribe(streams.resume("t-1", runId + ":3"));
+        assertThat(resumed.events).extracting(event -> event.event().data()).containsExactly("d", "e");
+        assertThat(streams.stats().notResumable()).isEqualTo(1);
+    }
+
+    @Test
+    void resumeRequiresTheSameKeyAndAWellFormedId() {
+        ResumableStreams streams = ResumableStreams.builder().build();
+        Client client = Client.subscribe(streams.start("t-1", source()));
+        emit("a");
+        String lastEventId = client.events.get(0).id();
+
+        assertThatThrownBy(() -> streams.resume("t-2", lastEventId).blockFirst())
+                .isInstanceOf(StreamNotResumableException.class)
+                .hasMessageContaining("does not belong to t-2");
+        assertThatThrownBy(() -> streams.resume("t-1", "not-an-id").blockFirst())
+                .isInstanceOf(StreamNotResumableException.class);
+        assertThatThrownBy(() -> streams.resume("t-1", "unknown:1").blockFirst())
+                .isInstanceOf(StreamNotResumableException.class)
+                .hasMessageContaining("unknown or has expired");
+        assertThat(streams.stats().notResumable()).isEqualTo(3);
+    }
+
+    @Test
+    void runIsCancelledWhenNoClientReattachesWithinTheDetachTimeout() {
+        ResumableStreams streams = ResumableStreams.builder().detachTimeout(Duration.ofMillis(100)).build();
+        Client client = Client.subscribe(streams.start("t-1", source()));
+        emit("a");
+        client.subscription.dispose();
+
+        await().atMost(Duration.ofSeconds(2)).untilTrue(sourceCancelled);
+
+        assertThat(streams.stats().detachedCancels()).isEqualTo(1);
+        assertThat(streams.stats().running()).isZero();
+        // 重连仍能取回已产生的输出，随后得知运行已被取消
+        Client resumed = Client.subscribe(streams.resume("t-1", client.events.get(0).runId() + ":0"));
+        assertThat(resumed.events).hasSize(1);
+        assertThat(resumed.error.get()).isInstanceOf(StreamNotResumableException.class);
+    }
+
+    @Test
+    void reattachingWithinTheDetachTimeoutKeepsTheRunAlive() throws Exception {
+        ResumableStreams streams = ResumableStreams.builder().detachTimeout(Duration.ofMillis(200)).build();
+        Client client = Client.subscribe(streams.start("t-1", source()));
+        emit("a");
+        client.subscription.dispose();
+        Client resumed = Client.subscribe(streams.resume("t-1", client.events.get(0).id()));
+
+        Thread.sleep(400);
+        emit("b");
+        source.tryEmitComplete();
+
+        assertThat(sourceCancelled).isFalse();
+        assertThat(resumed.events).extracting(event -> event.event().data()).containsExactly("b");
+        assertThat(resumed.completed()).isTrue();
+        assertThat(streams.stats().detachedCancels()).isZero();
+    }
+
+    @Test
+    void finishedRunsAreRetainedOnlyForTheRetentionPeriod() {
+        ResumableStreams streams = ResumableStreams.builder().retention(Duration.ofMillis(200)).build();
+        Client client = Client.subscribe(streams.start("t-1", source()));
+        emit("a", "b");
+        source.tryEmitComplete();
+        String runId = client.events.get(0).runId();
+
+        assertThat(streams.resume("t-1", runId + ":1").collectList().block())
+                .extracting(event -> event.event().data()).containsExactly("b");
+        assertThat(streams.stats().retained()).isEqualTo(1);
+
+        await().atMost(Duration.ofSeconds(2)).untilAsserted(() ->
+                assertThatThrownBy(() -> streams.resume("t-1", runId + ":1").blockFirst())
+                        .isInstanceOf(StreamNotResumableException.class));
+    }
+
+    @Test
+    void runsWithoutLocalBufferAreReplayedFromTheReplayLog() {
+        InMemoryReplayLog replayLog = new InMemoryReplayLog();
+        ResumableStreams instanceA = ResumableStreams.builder().replayLog(replayLog).build();
+        ResumableStreams instanceB = ResumableStreams.builder().replayLog(replayLog).build();
+        Client client = Client.subscribe(instanceA.start("t-1", source()));
+        emit("a", "b", "c");
+        source.tryEmitComplete();
+
+        // 重连到另一个实例
+        List<ResumableEvent> replayed = instanceB.resume("t-1", client.events.get(0).id()).collectList().block();
+
+        assertThat(replayed).extracting(event -> event.event().data()).containsExactly("b", "c");
+        assertThat(replayLog.lastSeq.get()).isEqualTo(3L);
+        assertThat(instanceB.stats().replayLogResumes()).isEqualTo(1);
+        assertThat(instanceB.stats().replayedEvents()).isEqualTo(2);
+    }
+
+    @Test
+    void bindToExportsGaugesAndCounters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ResumableStreams streams = ResumableStreams.builder().build().bindTo(registry, "poem");
+        Client client = Client.subscribe(streams.start("t-1", source()));
+        emit("a", "b");
+        Client.subscribe(streams.resume("t-1", client.events.get(0).id()));
+
+        assertThat(registry.get("agent.stream.resumable.running").tag("stream", "poem").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("agent.stream.resumable.retained").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("agent.stream.resumable.resumes").tag("source", "local").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("agent.stream.resumable.replayed.events").functionCounter().count()).isEqualTo(1);
+        source.tryEmitComplete();
+        assertThat(registry.get("agent.stream.resumable.running").gauge().value()).isZero();
+    }
+
+    private Flux<StreamEvent> source() {
+        return source.asFlux().doOnCancel(() -> sourceCancelled.set(true));
+    }
+
+    private void emit(String... answers) {
+        for (String answer : answers) {
+            source.tryEmitNext(StreamEvent.answer(answer));
+        }
+    }
+
+    /**
+     * 记录收到的事件与结束状态的订阅者
+     */
+    private record Client(List<ResumableEvent> events, AtomicReference<Throwable> error, AtomicBoolean done,
+                          Disposable subscription) {
+
+        static Client subscribe(Flux<ResumableEvent> flux) {
+            List<ResumableEvent> events = new CopyOnWriteArrayList<>();
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            AtomicBoolean done = new AtomicBoolean();
+            Disposable subscription = flux.subscribe(events::add, error::set, () -> done.set(true));
+            return new Client(events, error, done, subscription);
+        }
+
+        boolean completed() {
+            return done.get();
+        }
+    }
+
+    /**
+     * 同步写入的外部副本，只支持回放已结束的运行
+     */
+    private static final class InMemoryReplayLog implements ReplayLog {
+
+        private final List<ResumableEvent> events = new ArrayList<>();
+        private final AtomicReference<Long> lastSeq = new AtomicReference<>();
+
+        @Override
+        public synchronized void append(String key, ResumableEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void complete(String key, String runId, long lastSeq, Throwable error) {
+            this.lastSeq.set(lastSeq);
+        }
+
+        @Override
+        public synchronized Flux<ResumableEvent> read(String key, String runId, long afterSeq) {
+            return Flux.fromIterable(List.copyOf(events))
+                    .filter(event -> event.runId().equals(runId) && event.seq() > afterSeq);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.lks.common.subagent;
+
+import com.alibaba.cloud.ai.graph.agent.ReactAgent;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+import com.alibaba.cloud.ai.graph.checkpoint.savers.MemorySaver;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 验证子代理扇出：同一回复的 task 调用并发运行并按原顺序返回、并发上限、单个超时互不影响、
+ * 父运行中止与工具节点线程中断时取消其余子代理，以及过期作用域的取消
+ */
+class SubAgentFanOutTest {
+
+    private final SleepingModel model = new SleepingModel();
+
+    @Test
+    void tasksFromOneResponseRunConcurrentlyAndJoinInOrder() {
+        SubAgentFanOut fanOut = SubAgentFanOut.builder().maxConcurrency(4).build();
+        ToolInterceptor interceptor = fanOut.interceptor(Map.of("researcher", agent()));
+        List<AssistantMessage.ToolCall> calls = List.of(task("c1", "300 moon"), task("c2", "300 frost"),
+                task("c3", "300 home"));
+        fanOut.plan("t-1", calls);
+
+        long start = System.nanoTime();
+        List<String> results = new ArrayList<>();
+        for (AssistantMessage.ToolCall call : calls) {
+            results.add(intercept(interceptor, call));
+        }
+
+        assertThat(results).containsExactly("moon", "frost", "home");
+        // 串行需要 900ms 以上
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(800);
+        assertThat(model.maxConcurrent.get()).isEqualTo(3);
+        assertThat(fanOut.stats().succeeded()).isEqualTo(3);
+        assertThat(fanOut.stats().running()).isZero();
+        // 作用域取完即移除，同一调用再次执行时交回 TaskTool
+        assertThat(fanOut.scopeOf("c1", calls.get(0).arguments())).isNull();
+    }
+
+    @Test
+    void concurrencyIsBoundedAcrossScopes() {
+        SubAgentFanOut fanOut = SubAgentFanOut.builder().maxConcurrency(1).build();
+        ToolInterceptor interceptor = fanOut.interceptor(Map.of("researcher", agent()));
+        List<AssistantMessage.ToolCall> calls = List.of(task("c1", "100 moon"), task("c2", "100 frost"));
+        fanOut.plan("t-1", calls);
+
+        assertThat(intercept(interceptor, calls.get(0))).isEqualTo("moon");
+        assertThat(intercept(interceptor, calls.get(1))).isEqualTo("frost");
+
+        assertThat(model.maxConcurrent.get()).isEqualTo(1);
+        assertThat(fanOut.stats().waiting()).isZero();
+    }
+
+    @Test
+    void aTimedOutTaskDoesNotAffectTheOthers() {
+        SubAgentFanOut fanOut = SubAgentFanOut.builder().timeout(Duration.ofMillis(300)).build();
+        ToolInterceptor interceptor = fanOut.interceptor(Map.of("researcher", agent()));
+        List<AssistantMessage.ToolCall> calls = List.of(task("c1", "5000 slow"), task("c2", "50 fast"),
+                new AssistantMessage.ToolCall("c3", "function", "task",
+                        "{\"description\":\"50 x\",\"subagent_type\":\"unknown\"}"));
+        fanOut.plan("t-1", calls);
+
+        assertThat(intercept(interceptor, calls.get(0))).isEqualTo(SubAgentFanOut.ERROR_PREFIX + "timed out after PT0.3S");
+        assertThat(intercept(interceptor, calls.get(1))).isEqualTo("fast");
+        assertThat(intercept(interceptor, calls.get(2))).startsWith("Error: invoked agent of type unknown");
+
+        assertThat(fanOut.stats().timedOut()).isEqualTo(1);
+        assertThat(fanOut.stats().succeeded()).isEqualTo(1);
+        assertThat(fanOut.stats().failed()).isEqualTo(1);
+        await().atMost(Duration.ofSeconds(2)).until(() -> fanOut.stats().running() == 0);
+    }
+
+    @Test
+    void abortingTheParentCancelsItsRunningTasks() throws Exception {
+        SubAgentFanOut fanOut = SubAgentFanOut.builder().build();
+        ToolInterceptor interceptor = fanOut.interceptor(Map.of("researcher", agent()));
+        List<AssistantMessage.ToolCall> calls = List.of(task("c1", "5000 a"), task("c2", "5000 b"));
+        fanOut.plan("t-1", calls);
+        fanOut.plan("t-2", List.of(task("other", "50 c")));
+        ExecutorService toolNode = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> first = toolNode.submit(() -> intercept(interceptor, calls.get(0)));
+            await().atMost(Duration.ofSeconds(2)).until(() -> fanOut.stats().running() == 2);
+
+            assertThat(fanOut.abort("t-1")).isEqualTo(2);
+
+            assertThat(first.get(2, TimeUnit.SECONDS)).isEqualTo(SubAgentFanOut.CANCELLED);
+            assertThat(intercept(interceptor, calls.get(1))).isEqualTo(SubAgentFanOut.CANCELLED);
+        }
+        finally {
+            toolNode.shutdownNow();
+        }
+        assertThat(fanOut.stats().cancelled()).isEqualTo(2);
+        await().atMost(Duration.ofSeconds(2)).until(() -> fanOut.stats().running() == 0);
+        // 其他运行的作用域不受影响
+        assertThat(fanOut.scopeOf("other", task("other", "50 c").arguments())).isNotNull();
+    }
+
+    @Test
+    void interruptingTheToolNodeCancelsTheRestOfTheScope() throws Exception {
+        SubAgentFanOut fanOut = SubAgentFanOut.builder().build();
+        ToolInterceptor interceptor = fanOut.interceptor(Map.of("researcher", agent()));
+        List<AssistantMessage.ToolCall> calls = List.of(task("c1", "5000 a"), task("c2", "5000 b"));
+        fanOut.plan("t-1", calls);
+        AtomicInteger interruptedAfter = new AtomicInteger(-1);
+        Thread toolNode = Thread.ofPlatform().start(() -> {
+            String result = intercept(interceptor, calls.get(0));
+            interruptedAfter.set(Thread.currentThread().isInterrupted() && SubAgentFanOut.CANCELLED.equals(result) ? 1 : 0);
+        });
+        await().atMost(Duration.ofSeconds(2)).until(() -> fanOut.stats().running() == 2);
+
+        toolNode.interrupt();
+        toolNode.join(2000);
+
+        // 中断状态保留给工具节点，结果为取消
+        assertThat(interruptedAfter.get()).isEqualTo(1);
+        assertThat(intercept(interceptor, calls.get(1))).isEqualTo(SubAgentFanOut.CANCELLED);
+        assertThat(fanOut.stats().cancelled()).isEqualTo(2);
+        await().atMost(Duration.ofSeconds(2)).until(() -> fanOut.stats().running() == 0);
+    }
+
+    @Test
+    void expiredScopesAreCancelled() {
+        FakeTicker ticker = new FakeTicker();
+        SubAgentFanOut fanOut = SubAgentFanOut.builder().ticker(ticker).build();
+        ToolInterceptor interceptor = fanOut.interceptor(Map.of("researcher", agent()));
+        List<AssistantMessage.ToolCall> abandoned = List.of(task("c1", "50 a"));
+        List<AssistantMessage.ToolCall> halfJoined = List.of(task("c2", "50 b"), task("c3", "5000 c"));
+        fanOut.plan("t-1", abandoned);
+        fanOut.plan("t-2", halfJoined);
+        TaskScope abandonedScope = fanOut.scopeOf("c1", abandoned.get(0).arguments());
+        assertThat(intercept(interceptor, halfJoined.get(0))).isEqualTo("b");
+        await().atMost(Duration.ofSeconds(2)).until(() -> fanOut.stats().running() == 1);
+
+        ticker.advance(Duration.ofHours(2));
+
+        // 过期的作用域不再接管调用，交回 TaskTool；仍在运行的子代理被取消
+        assertThat(fanOut.scopeOf("c1", abandoned.get(0).arguments())).isNull();
+        await().atMost(Duration.ofSeconds(2)).until(() -> fanOut.stats().cancelled() == 1);
+        await().atMost(Duration.ofSeconds(2)).until(() -> fanOut.stats().running() == 0);
+        // 未启动的作用域被关闭，之后不会再启动子代理
+        assertThat(abandonedScope.fork(call -> "late", Thread.ofVirtual().factory())).isFalse();
+    }
+
+    private ReactAgent agent() {
+        return ReactAgent.builder()
+                .name("researcher")
+                .model(model)
+                .saver(new MemorySaver())
+                .build();
+    }
+
+    private static AssistantMessage.ToolCall task(String id, String description) {
+        return new AssistantMessage.ToolCall(id, "function", SubAgentFanOut.TASK_TOOL,
+                "{\"description\":\"" + description + "\",\"subagent_type\":\"researcher\"}");
+    }
+
+    private static String intercept(ToolInterceptor interceptor, AssistantMessage.ToolCall call) {
+        ToolCallRequest request = ToolCallRequest.builder().toolCall(call).context(Map.of()).build();
+        ToolCallResponse response = interceptor.interceptToolCall(request, unused -> {
+            throw new AssertionError("task call should not fall back to TaskTool");
+        });
+        return response.getResult();
+    }
+
+    /**
+     * 按任务描述 "毫秒数 回答" 先阻塞再回答的模型，记录同时进行的调用数
+     */
+    private static final class SleepingModel implements ChatModel {
+
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            String[] task = lastUserText(prompt).split(" ", 2);
+            int now = concurrent.incrementAndGet();
+            maxConcurrent.accumulateAndGet(now, Math::max);
+            try {
+                Thread.sleep(Long.parseLong(task[0]));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted", e);
+            }
+            finally {
+                concurrent.decrementAndGet();
+            }
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(task[1]))));
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.defer(() -> Flux.just(call(prompt)));
+        }
+
+        private static String lastUserText(Prompt prompt) {
+            List<Message> messages = prompt.getInstructions();
+            for (int i = messages.size() - 1; i >= 0; i--) {
+                if (messages.get(i) instanceof UserMessage user) {
+                    return user.getText();
+                }
+            }
+            return "0 ";
+        }
+    }
+
+    private static final class FakeTicker implements Ticker {
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(Duration duration) {
+            nanos.addAndGet(duration.toNanos());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.lks.common.token;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 验证近似 token 计数与真实词表的误差界：相对 o200k 只高估且不超过 50%，相对 cl100k 也不会明显低估
+ */
+class ApproximateTokenizerTest {
+
+    private static final List<String> SAMPLES = List.of(
+            // 英文正文
+            "Large language model agents increasingly rely on retrieval to ground their answers. A research agent plans a set of "
+                    + "sub-questions, dispatches them to specialised workers, and merges the findings into a single report. Because every "
+                    + "intermediate result is appended to the conversation, the context window fills quickly, and the agent must decide "
+                    + "when to summarise older turns or move bulky tool output to external storage.",
+            // 搜索结果 JSON
+            "{\"results\":[{\"title\":\"Spring AI Alibaba Graph\",\"url\":\"https://github.com/alibaba/spring-ai-alibaba\","
+                    + "\"snippet\":\"A workflow and multi-agent framework for Java developers, built on Spring AI.\",\"score\":0.8731,"
+                    + "\"published\":\"2025-04-28\"},{\"title\":\"ReAct: Synergizing Reasoning and Acting\","
+                    + "\"url\":\"https://arxiv.org/abs/2210.03629\","
+                    + "\"snippet\":\"We explore the use of LLMs to generate both reasoning traces and task-specific actions.\",\"score\":0.8124}]}",
+            // 中文正文
+            "深度研究代理先根据用户的问题制定研究计划，再把子问题分派给多个子代理并行检索资料。每个子代理把搜索结果写入虚拟文件系统，"
+                    + "主代理阅读这些文件后整理出结构清晰、引用完整的研究报告。随着对话变长，系统会在上下文接近上限时自动摘要较早的消息。",
+            // 中英混合的 Markdown 报告
+            "## 2025 年大模型推理成本分析\n\n- **Qwen-Plus**：输入 0.8 元 / 百万 token，输出 2 元 / 百万 token\n"
+                    + "- **DeepSeek-V3**：缓存命中时输入价格下降约 75%\n\n结论：对于 RAG 场景，prompt caching 与上下文压缩带来的节省最为显著。",
+            // 代码
+            "public int countTokens(List<Message> messages) {\n    if (messages == null || messages.isEmpty()) {\n        return 0;\n    }\n"
+                    + "    Ledger ledger = ledgers.asMap().compute(messages.get(0), (head, previous) -> update(previous, messages));\n"
+                    + "    return (int) Math.min(ledger.total(), Integer.MAX_VALUE);\n}\n");
+
+    private final ApproximateTokenizer tokenizer = new ApproximateTokenizer();
+    private final EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
+
+    @Test
+    void overestimatesO200kByAtMostHalf() {
+        Encoding o200k = registry.getEncoding(EncodingType.O200K_BASE);
+
+        for (String sample : SAMPLES) {
+            int real = o200k.countTokens(sample);
+            int approximate = tokenizer.countTokens(sample);
+
+            assertThat(approximate).as(sample).isBetween(real, real * 3 / 2);
+        }
+    }
+
+    @Test
+    void neverFallsFarBelowCl100k() {
+        Encoding cl100k = registry.getEncoding(EncodingType.CL100K_BASE);
+
+        for (String sample : SAMPLES) {
+            int real = cl100k.countTokens(sample);
+            int approximate = tokenizer.countTokens(sample);
+
+            // cl100k 把多数汉字拆成多个字节 token，中文略低估
+            assertThat(approximate).as(sample).isBetween(real * 4 / 5, real * 3 / 2);
+        }
+        // 框架的“字符数 / 4”在中文上不到一半
+        String chinese = SAMPLES.get(2);
+        assertThat(chinese.length() / 4).isLessThan(cl100k.countTokens(chinese) / 2);
+    }
+
+    @Test
+    void countsEachCharacterClassSeparately() {
+        assertThat(tokenizer.countTokens(null)).isZero();
+        assertThat(tokenizer.countTokens("")).isZero();
+        // 单词间的单个空格不计
+        assertThat(tokenizer.countTokens("moon light")).isEqualTo(2);
+        assertThat(tokenizer.countTokens("internationalization")).isEqualTo(4);
+        assertThat(tokenizer.countTokens("1234567")).isEqualTo(3);
+        assertThat(tokenizer.countTokens("\":\"")).isEqualTo(2);
+        assertThat(tokenizer.countTokens("明月光")).isEqualTo(3);
+        assertThat(tokenizer.countTokens("\uD83C\uDF19")).isEqualTo(2);
+        assertThat(tokenizer.countTokens("        return")).isEqualTo(3);
+    }
+}
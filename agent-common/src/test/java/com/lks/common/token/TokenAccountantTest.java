@@ -0,0 +1,161 @@
+package com.lks.common.token;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 验证增量 token 计数：追加消息只计新消息、删除或替换消息后按文本缓存重算且总数正确、
+ * 会话按首条消息区分，以及长文本按对象身份缓存
+ */
+class TokenAccountantTest {
+
+    private final CountingTokenizer tokenizer = new CountingTokenizer();
+    private final TokenAccountant accountant = TokenAccountant.builder().tokenizer(tokenizer).minCachedLength(0).build();
+
+    @Test
+    void appendingMessagesOnlyCountsTheNewOnes() {
+        List<Message> history = new ArrayList<>(List.of(new SystemMessage("You are a research agent."),
+                new UserMessage("Compare inference prices of Qwen and DeepSeek")));
+        int total = accountant.countTokens(history);
+
+        for (int step = 0; step < 20; step++) {
+            history.add(toolCall("call-" + step, "{\"query\":\"price page " + step + "\"}"));
+            history.add(toolResult("call-" + step, searchResult(step)));
+            int callsBefore = tokenizer.calls.get();
+
+            total = accountant.countTokens(history);
+
+            // 每步只扫描新增的工具参数与工具结果，与历史长度无关
+            assertThat(tokenizer.calls.get() - callsBefore).isEqualTo(2);
+            assertThat(total).isEqualTo(recount(history));
+        }
+        assertThat(accountant.stats().incrementalUpdates()).isEqualTo(20);
+        assertThat(accountant.stats().fullRecounts()).isEqualTo(1);
+        assertThat(accountant.stats().conversations()).isEqualTo(1);
+    }
+
+    @Test
+    void removedOrReplacedMessagesAreRecountedFromTheTextCache() {
+        List<Message> history = history(10);
+        int full = accountant.countTokens(history);
+        int callsBefore = tokenizer.calls.get();
+
+        // 删除末尾的工具调用与结果
+        List<Message> truncated = new ArrayList<>(history.subList(0, history.size() - 2));
+        int afterRemoval = accountant.countTokens(truncated);
+
+        assertThat(afterRemoval).isEqualTo(recount(truncated)).isLessThan(full);
+        assertThat(tokenizer.calls.get()).isEqualTo(callsBefore);
+        assertThat(accountant.stats().fullRecounts()).isEqualTo(2);
+
+        // 摘要后整体替换：保留首条消息，中间的历史换成摘要
+        Message summary = new UserMessage("Summary: Qwen-Plus costs 0.8 per million input tokens.");
+        List<Message> summarized = List.of(history.get(0), summary, history.get(history.size() - 1));
+        int afterSummary = accountant.countTokens(summarized);
+
+        assertThat(afterSummary).isEqualTo(recount(summarized)).isLessThan(afterRemoval);
+        assertThat(tokenizer.calls.get()).isEqualTo(callsBefore + 1);
+
+        // 末尾消息被替换而长度不变，同样察觉并重算
+        List<Message> replaced = new ArrayList<>(summarized);
+        replaced.set(2, new AssistantMessage("Qwen is cheaper for long prompts."));
+        assertThat(accountant.countTokens(replaced)).isEqualTo(recount(replaced));
+        assertThat(accountant.stats().fullRecounts()).isEqualTo(4);
+    }
+
+    @Test
+    void conversationsAreTrackedSeparately() {
+        List<Message> first = history(3);
+        List<Message> second = history(5);
+
+        int firstTotal = accountant.countTokens(first);
+        int secondTotal = accountant.countTokens(second);
+        first.add(new AssistantMessage("First conversation is done."));
+        second.add(new AssistantMessage("Second conversation is done too."));
+
+        assertThat(accountant.countTokens(first)).isEqualTo(recount(first)).isGreaterThan(firstTotal);
+        assertThat(accountant.countTokens(second)).isEqualTo(recount(second)).isGreaterThan(secondTotal);
+        assertThat(accountant.stats().conversations()).isEqualTo(2);
+        assertThat(accountant.stats().incrementalUpdates()).isEqualTo(2);
+        assertThat(accountant.countTokens(List.of())).isZero();
+        assertThat(accountant.countTokens((List<Message>) null)).isZero();
+    }
+
+    @Test
+    void longTextsAreCachedByIdentity() {
+        TokenAccountant defaults = TokenAccountant.builder().tokenizer(tokenizer).build();
+        String result = searchResult(1);
+        String copy = new String(result);
+
+        int tokens = defaults.countTokens(result);
+
+        assertThat(defaults.countTokens(result)).isEqualTo(tokens);
+        assertThat(defaults.countTokens(copy)).isEqualTo(tokens);
+        // 短文本直接扫描，不进缓存
+        defaults.countTokens("short");
+        defaults.countTokens("short");
+        assertThat(tokenizer.calls.get()).isEqualTo(4);
+        assertThat(defaults.stats().textHits()).isEqualTo(1);
+        assertThat(defaults.stats().textMisses()).isEqualTo(2);
+        assertThat(defaults.stats().cachedTexts()).isEqualTo(2);
+    }
+
+    /**
+     * 用全新的实例（不带缓存）重新计数
+     */
+    private static int recount(List<Message> messages) {
+        return TokenAccountant.builder().build().countTokens(messages);
+    }
+
+    private static List<Message> history(int steps) {
+        List<Message> history = new ArrayList<>();
+        history.add(new UserMessage("Compare inference prices of Qwen and DeepSeek"));
+        for (int step = 0; step < steps; step++) {
+            history.add(toolCall("call-" + step, "{\"query\":\"price page " + step + "\"}"));
+            history.add(toolResult("call-" + step, searchResult(step)));
+        }
+        return history;
+    }
+
+    private static AssistantMessage toolCall(String id, String arguments) {
+        return AssistantMessage.builder()
+                .content("")
+                .toolCalls(List.of(new AssistantMessage.ToolCall(id, "function", "jina_search", arguments)))
+                .build();
+    }
+
+    private static ToolResponseMessage toolResult(String id, String data) {
+        return ToolResponseMessage.builder()
+                .responses(List.of(new ToolResponseMessage.ToolResponse(id, "jina_search", data)))
+                .build();
+    }
+
+    private static String searchResult(int step) {
+        return "{\"title\":\"大模型推理价格 " + step + "\",\"snippet\":\"" + "输入 0.8 元 / 百万 token，输出 2 元。".repeat(20 + step) + "\"}";
+    }
+
+    /**
+     * 记录实际扫描次数的近似计数
+     */
+    private static final class CountingTokenizer implements Tokenizer {
+
+        private final ApproximateTokenizer delegate = new ApproximateTokenizer();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public int countTokens(CharSequence text) {
+            calls.incrementAndGet();
+            return delegate.countTokens(text);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.lks.common.tool;
+
+import com.lks.common.store.ContentAddressedStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 验证工具结果缓存：参数规范化、single-flight 合并、TTL 过期、落盘命中与清理，以及指标导出
+ */
+class ToolResultCacheTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void argumentsAreNormalizedBeforeKeying() {
+        assertThat(ToolArguments.normalize("{\"b\": 1, \"a\": \"  moon   poems \", \"c\": null}"))
+                .isEqualTo(ToolArguments.normalize("{\"a\":\"moon poems\",\"b\":1}"));
+        assertThat(ToolArguments.normalize("{\"q\": {\"y\": [\" x \"], \"x\": 1}}"))
+                .isEqualTo("{\"q\":{\"x\":1,\"y\":[\"x\"]}}");
+        assertThat(ToolArguments.normalize("  not   json ")).isEqualTo("not json");
+        assertThat(ToolArguments.normalize(null)).isEmpty();
+
+        ToolResultCache cache = ToolResultCache.builder().toolTtl("jina_search", Duration.ofMinutes(1)).build();
+        AtomicInteger calls = new AtomicInteger();
+        cache.getOrCall("jina_search", "{\"q\":\"moon\",\"n\":5}", () -> "r" + calls.incrementAndGet());
+
+        assertThat(cache.getOrCall("jina_search", "{ \"n\": 5, \"q\": \" moon\" }", () -> "r" + calls.incrementAndGet()))
+                .isEqualTo("r1");
+        assertThat(cache.getOrCall("jina_search", "{\"q\":\"sun\",\"n\":5}", () -> "r" + calls.incrementAndGet()))
+                .isEqualTo("r2");
+        // 未配置 TTL 的工具每次都调用
+        cache.getOrCall("download_paper", "{}", () -> "d" + calls.incrementAndGet());
+        cache.getOrCall("download_paper", "{}", () -> "d" + calls.incrementAndGet());
+        assertThat(calls.get()).isEqualTo(4);
+    }
+
+    @Test
+    void concurrentIdenticalCallsAreCollapsed() throws Exception {
+        ToolResultCache cache = ToolResultCache.builder().toolTtl("jina_search", Duration.ofMinutes(1)).build();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> cache.getOrCall("jina_search", "{\"q\":\"moon\"}", () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    return "result";
+                })));
+            }
+            // 等其余调用都挂在进行中的请求上再放行
+            Awaitility.await().atMost(Duration.ofSeconds(5))
+                    .until(() -> cache.stats().collapsed() == 7);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(cache.stats().misses()).isEqualTo(1);
+        assertThat(cache.getOrCall("jina_search", "{\"q\":\"moon\"}", () -> "again")).isEqualTo("result");
+        assertThat(cache.stats().hits()).isEqualTo(1);
+    }
+
+    @Test
+    void failuresAreSharedButNotCached() throws Exception {
+        ToolResultCache cache = ToolResultCache.builder().toolTtl("jina_search", Duration.ofMinutes(1)).build();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> cache.getOrCall("jina_search", "{}", () -> {
+                started.countDown();
+                await(release);
+                throw new IllegalStateException("search down");
+            }));
+            started.await(5, TimeUnit.SECONDS);
+            Future<String> follower = executor.submit(() -> cache.getOrCall("jina_search", "{}", () -> "unused"));
+            Awaitility.await().atMost(Duration.ofSeconds(5)).until(() -> cache.stats().collapsed() == 1);
+            release.countDown();
+            assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("search down");
+            assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("search down");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(cache.getOrCall("jina_search", "{}", () -> "recovered")).isEqualTo("recovered");
+    }
+
+    @Test
+    void entriesExpireAfterTheirToolTtl() throws Exception {
+        ToolResultCache cache = ToolResultCache.builder()
+                .toolTtl("jina_search", Duration.ofMillis(100))
+                .toolTtl("jina_reader", Duration.ofMinutes(1))
+                .build();
+        cache.getOrCall("jina_search", "{}", () -> "old search");
+        cache.getOrCall("jina_reader", "{}", () -> "old page");
+
+        Thread.sleep(200);
+
+        assertThat(cache.getOrCall("jina_search", "{}", () -> "new search")).isEqualTo("new search");
+        assertThat(cache.getOrCall("jina_reader", "{}", () -> "new page")).isEqualTo("old page");
+    }
+
+    @Test
+    void storedResultsSurviveRestartUntilTheyExpire() throws Exception {
+        ContentAddressedStore store = new ContentAddressedStore(root);
+        ToolResultCache first = storeBacked(store, Duration.ofMinutes(1), Duration.ofMillis(150));
+        first.getOrCall("jina_search", "{\"q\":\"moon\"}", () -> "moon results");
+        first.getOrCall("jina_reader", "{\"url\":\"a\"}", () -> "short lived");
+
+        ToolResultCache restarted = storeBacked(store, Duration.ofMinutes(1), Duration.ofMillis(150));
+        assertThat(restarted.getOrCall("jina_search", "{\"q\":\"moon\"}", () -> "fresh")).isEqualTo("moon results");
+        assertThat(restarted.stats().diskHits()).isEqualTo(1);
+
+        Thread.sleep(250);
+        ToolResultCache later = storeBacked(store, Duration.ofMinutes(1), Duration.ofMillis(150));
+        assertThat(later.getOrCall("jina_reader", "{\"url\":\"a\"}", () -> "reloaded")).isEqualTo("reloaded");
+    }
+
+    @Test
+    void pruneRemovesExpiredRefsAndUnreferencedObjects() throws Exception {
+        ContentAddressedStore store = new ContentAddressedStore(root);
+        ToolResultCache cache = storeBacked(store, Duration.ofMinutes(1), Duration.ofMillis(50));
+        cache.getOrCall("jina_search", "{\"q\":\"moon\"}", () -> "kept");
+        cache.getOrCall("jina_reader", "{\"url\":\"a\"}", () -> "expired");
+        cache.getOrCall("jina_search", "{\"q\":\"moon poems\"}", () -> "kept");
+        Thread.sleep(100);
+        ageObjects();
+
+        assertThat(cache.prune()).isEqualTo(1);
+
+        assertThat(store.contains(ContentAddressedStore.sha256("kept".getBytes()))).isTrue();
+        assertThat(store.contains(ContentAddressedStore.sha256("expired".getBytes()))).isFalse();
+        assertThat(count(root.resolve("refs"))).isEqualTo(2);
+        assertThat(cache.prune()).isZero();
+    }
+
+    @Test
+    void pruneKeepsObjectsWrittenWithinTheGracePeriod() throws Exception {
+        ContentAddressedStore store = new ContentAddressedStore(root);
+        String hash = store.put("orphan".getBytes());
+
+        assertThat(storeBacked(store, Duration.ofMinutes(1), Duration.ofMinutes(1)).prune()).isZero();
+
+        assertThat(store.contains(hash)).isTrue();
+    }
+
+    @Test
+    void bindToExportsCounters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ToolResultCache cache = ToolResultCache.builder().toolTtl("jina_search", Duration.ofMinutes(1)).build()
+                .bindTo(registry, "research");
+
+        cache.getOrCall("jina_search", "{}", () -> "result");
+        cache.getOrCall("jina_search", "{}", () -> "result");
+
+        assertThat(registry.get("agent.cache.tool.hits").tag("tier", "memory").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("agent.cache.tool.hits").tag("tier", "disk").functionCounter().count()).isZero();
+        assertThat(registry.get("agent.cache.tool.misses").tag("cache", "research").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("agent.cache.tool.collapsed").functionCounter().count()).isZero();
+        assertThat(registry.get("agent.cache.tool.size").gauge().value()).isEqualTo(1);
+    }
+
+    private static ToolResultCache storeBacked(ContentAddressedStore store, Duration searchTtl, Duration readerTtl) {
+        return ToolResultCache.builder()
+                .toolTtl("jina_search", searchTtl)
+                .toolTtl("jina_reader", readerTtl)
+                .store(store)
+                .pruneInterval(null)
+                .build();
+    }
+
+    /**
+     * 把所有内容的修改时间调到清理保留期之前
+     */
+    private void ageObjects() throws IOException {
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - Duration.ofHours(1).toMillis());
+        try (Stream<Path> paths = Files.walk(root.resolve("objects"))) {
+            for (Path path : paths.filter(Files::isRegularFile).toList()) {
+                Files.setLastModifiedTime(path, old);
+            }
+        }
+    }
+
+    private static long count(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.count();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.lks.benchmarks;
+
+import com.alibaba.cloud.ai.graph.NodeOutput;
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.alibaba.cloud.ai.graph.streaming.OutputType;
+import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.DefaultToolDefinition;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 基准测试数据
+ *
+ * 生成与研究代理实际运行相近的确定性数据：多轮“搜索 → 阅读 → 总结”的消息历史、
+ * 模型逐 token 的流式输出，以及不访问网络的模型与工具替身。
+ */
+public final class BenchmarkFixtures {
+
+    /** 研究代理实际使用的 MCP 工具 */
+    public static final List<String> MCP_TOOL_NAMES = List.of(
+            "jina_search", "jina_reader", "search_papers", "download_paper", "list_papers", "read_paper");
+
+    private static final String WORDS = "agent graph checkpoint state message model tool search paper "
+            + "research summary context token stream redis memory latency throughput 研究 论文 摘要 检索 模型 上下文";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * 生成消息历史：系统提示词 + 用户问题 + 若干轮（带工具调用的助手消息、工具结果）
+     *
+     * @param rounds          工具调用轮数
+     * @param toolResultChars 每条工具结果的字符数
+     */
+    public static List<Message> messageHistory(int rounds, int toolResultChars) {
+        Random random = new Random(42);
+        List<Message> messages = new ArrayList<>(rounds * 2 + 3);
+        messages.add(new SystemMessage(text(random, 2000)));
+        messages.add(new UserMessage("请调研多智能体系统中检查点持久化的性能优化方法"));
+        for (int i = 0; i < rounds; i++) {
+            String toolName = MCP_TOOL_NAMES.get(i % MCP_TOOL_NAMES.size());
+            String callId = "call_" + i;
+            messages.add(AssistantMessage.builder()
+                    .content(text(random, 200))
+                    .toolCalls(List.of(new AssistantMessage.ToolCall(callId, "function", toolName,
+                            "{\"query\":\"" + text(random, 40) + "\"}")))
+                    .build());
+            messages.add(ToolResponseMessage.builder()
+                    .responses(List.of(new ToolResponseMessage.ToolResponse(callId, toolName, text(random, toolResultChars))))
+                    .build());
+        }
+        messages.add(new AssistantMessage(text(random, 1500)));
+        return messages;
+    }
+
+    /**
+     * 与 ReactAgent 运行时相同结构的检查点
+     */
+    public static Checkpoint checkpoint(List<Message> messages) {
+        Map<String, Object> state = new HashMap<>();
+        state.put("messages", messages);
+        state.put("input", "请调研多智能体系统中检查点持久化的性能优化方法");
+        state.put("todos", List.of(Map.of("content", "检索相关论文", "status", "completed"),
+                Map.of("content", "撰写报告", "status", "in_progress")));
+        return Checkpoint.builder()
+                .id(UUID.nameUUIDFromBytes(("cp-" + messages.size()).getBytes()).toString())
+                .state(state)
+                .nodeId("model")
+                .nextNodeId("tools")
+                .build();
+    }
+
+    /**
+     * 模型流式输出：先是思考过程 token，再是回答 token，夹杂节点输出与空 token
+     *
+     * @param tokens 回答 token 数
+     */
+    public static List<NodeOutput> poemStream(int tokens) {
+        Random random = new Random(7);
+        OverAllState state = new OverAllState();
+        List<NodeOutput> outputs = new ArrayList<>(tokens * 2);
+        outputs.add(NodeOutput.of("__START__", "simple_poem_agent", state, null));
+        for (int i = 0; i < tokens / 2; i++) {
+            AssistantMessage reasoning = AssistantMessage.builder()
+                    .content("")
+                    .properties(Map.of("reasoningContent", text(random, 3)))
+                    .build();
+            outputs.add(new StreamingOutput<>(reasoning, "model", "simple_poem_agent", state, OutputType.AGENT_MODEL_STREAMING));
+        }
+        for (int i = 0; i < tokens; i++) {
+            // 约十分之一的 token 为空内容
+            String token = i % 10 == 0 ? "" : text(random, 2);
+            outputs.add(new StreamingOutput<>(new AssistantMessage(token), "model", "simple_poem_agent", state,
+                    OutputType.AGENT_MODEL_STREAMING));
+        }
+        outputs.add(new StreamingOutput<>(new AssistantMessage(""), "model", "simple_poem_agent", state,
+                OutputType.AGENT_MODEL_FINISHED));
+        outputs.add(NodeOutput.of("__END__", "simple_poem_agent", state, null));
+        return outputs;
+    }
+
+    /**
+     * 不访问网络的模型替身，固定返回一条回答
+     */
+    public static ChatModel stubChatModel() {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("ok"))));
+            }
+        };
+    }
+
+    /**
+     * 与 MCP 工具同名的工具替身
+     */
+    public static List<ToolCallback> stubMcpTools() {
+        List<ToolCallback> tools = new ArrayList<>();
+        for (String name : MCP_TOOL_NAMES) {
+            ToolDefinition definition = DefaultToolDefinition.builder()
+                    .name(name)
+                    .description("stub " + name)
+                    .inputSchema("{\"type\":\"object\",\"properties\":{\"query\":{\"type\":\"string\"}}}")
+                    .build();
+            tools.add(new ToolCallback() {
+                @Override
+                public ToolDefinition getToolDefinition() {
+                    return definition;
+                }
+
+                @Override
+                public String call(String toolInput) {
+                    return "[]";
+                }
+            });
+        }
+        return tools;
+    }
+
+    private static String text(Random random, int chars) {
+        StringBuilder sb = new StringBuilder(chars + 16);
+        String[] words = WORDS.split(" ");
+        while (sb.length() < chars) {
+            sb.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        sb.setLength(chars);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,112 @@
+package com.lks.benchmarks;
+
+import com.alibaba.cloud.ai.graph.StateGraph;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.alibaba.cloud.ai.graph.serializer.check_point.CheckPointSerializer;
+import com.lks.common.checkpoint.BinaryValueCodec;
+import com.lks.common.checkpoint.CheckpointCodec;
+import com.lks.common.checkpoint.CheckpointCompression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 检查点编解码基准
+ *
+ * 对比 RedisConfig 中配置的紧凑编码（CheckpointCodec，全量 / 增量）与旧版 RedisSaver 使用的
+ * Jackson + ObjectOutputStream 序列化，消息历史规模由 rounds（工具调用轮数）控制。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckpointCodecBenchmark {
+
+    /** 与 agent.checkpoint.compression-threshold 默认值一致 */
+    private static final int COMPRESSION_THRESHOLD = 512;
+
+    @Param({"5", "30"})
+    public int rounds;
+
+    @Param({"LZ4", "ZSTD", "NONE"})
+    public String compression;
+
+    private CheckpointCodec codec;
+    private CheckPointSerializer legacySerializer;
+
+    private Checkpoint parent;
+    private Checkpoint checkpoint;
+    private byte[] fullRecord;
+    private byte[] deltaRecord;
+    private byte[] legacyRecord;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        codec = new CheckpointCodec(new BinaryValueCodec(), CheckpointCompression.valueOf(compression), COMPRESSION_THRESHOLD);
+        legacySerializer = new CheckPointSerializer(StateGraph.DEFAULT_JACKSON_SERIALIZER);
+
+        List<org.springframework.ai.chat.messages.Message> history = BenchmarkFixtures.messageHistory(rounds, 4000);
+        // 父检查点比当前检查点少最后一轮（助手消息 + 工具结果 + 总结）
+        parent = BenchmarkFixtures.checkpoint(history.subList(0, history.size() - 3));
+        checkpoint = BenchmarkFixtures.checkpoint(history);
+
+        fullRecord = codec.encode(checkpoint, null);
+        deltaRecord = codec.encode(checkpoint, parent);
+        legacyRecord = legacyEncode();
+    }
+
+    @Benchmark
+    public byte[] encodeFull() throws IOException {
+        return codec.encode(checkpoint, null);
+    }
+
+    @Benchmark
+    public byte[] encodeDelta() throws IOException {
+        return codec.encode(checkpoint, parent);
+    }
+
+    @Benchmark
+    public Checkpoint decodeFull() throws IOException {
+        return codec.decode(fullRecord, null);
+    }
+
+    @Benchmark
+    public Checkpoint decodeDelta() throws IOException {
+        return codec.decode(deltaRecord, parent);
+    }
+
+    @Benchmark
+    public byte[] legacyEncode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            legacySerializer.write(checkpoint, out);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Checkpoint legacyDecode() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(legacyRecord))) {
+            return legacySerializer.read(in);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.lks.benchmarks;
+
+import com.alibaba.cloud.ai.graph.CompiledGraph;
+import com.alibaba.cloud.ai.graph.StateGraph;
+import com.alibaba.cloud.ai.graph.agent.ReactAgent;
+import com.alibaba.cloud.ai.graph.checkpoint.savers.MemorySaver;
+import com.lks.agent.Agents.DeepResearchAgent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 研究代理构建与图编译基准
+ *
+ * 按 DeepResearchAgent.getResearchAgent 的真实配置（拦截器、钩子、子代理）构建 ReactAgent，
+ * 使用不访问网络的模型与 MCP 工具替身，分别测量代理构建、StateGraph 生成与编译的耗时。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphCompileBenchmark {
+
+    private ChatModel chatModel;
+    private List<ToolCallback> tools;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        chatModel = BenchmarkFixtures.stubChatModel();
+        tools = BenchmarkFixtures.stubMcpTools();
+    }
+
+    @Benchmark
+    public ReactAgent buildAgent() {
+        return new DeepResearchAgent(chatModel).getResearchAgent(tools, new MemorySaver());
+    }
+
+    @Benchmark
+    public StateGraph buildGraph() {
+        return buildAgent().getGraph();
+    }
+
+    @Benchmark
+    public CompiledGraph buildAndCompile() {
+        return buildAgent().getAndCompileGraph();
+    }
+}
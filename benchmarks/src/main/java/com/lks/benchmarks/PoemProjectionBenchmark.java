@@ -0,0 +1,96 @@
+package com.lks.benchmarks;
+
+import com.alibaba.cloud.ai.graph.NodeOutput;
+import com.alibaba.cloud.ai.graph.streaming.OutputType;
+import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
+import com.lks.common.stream.StreamEvent;
+import com.lks.common.stream.StreamingProjection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /poem 流式输出投影基准
+ *
+ * 在合成的 NodeOutput 流上对比：原 Controller.getPoem 的 filter/mapNotNull 写法（去掉控制台输出）、
+ * 逐 token 的 StreamingProjection，以及按 agent.stream.poem 默认配置微批合并的 StreamingProjection。
+ * 每次调用完整消费一个流，吞吐量即每秒处理的流数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PoemProjectionBenchmark {
+
+    @Param({"200", "2000"})
+    public int tokens;
+
+    private List<NodeOutput> outputs;
+    private StreamingProjection perToken;
+    private StreamingProjection batched;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        outputs = BenchmarkFixtures.poemStream(tokens);
+        perToken = StreamingProjection.builder().build();
+        batched = StreamingProjection.builder()
+                .batchWindow(Duration.ofMillis(50))
+                .batchMaxBytes(512)
+                .build();
+    }
+
+    @Benchmark
+    public List<String> legacyFilterMap() {
+        return Flux.fromIterable(outputs)
+                .filter(output -> {
+                    if (output instanceof StreamingOutput<?> streamingOutput) {
+                        return streamingOutput.getOutputType() == OutputType.AGENT_MODEL_STREAMING
+                                || streamingOutput.getOutputType() == OutputType.AGENT_MODEL_FINISHED;
+                    }
+                    return "__END__".equals(output.node()) && output.state() != null;
+                })
+                .mapNotNull(output -> {
+                    if (output instanceof StreamingOutput<?> streamingOutput
+                            && streamingOutput.getOutputType() == OutputType.AGENT_MODEL_STREAMING) {
+                        Message message = streamingOutput.message();
+                        if (message instanceof AssistantMessage assistantMessage) {
+                            Object reasoningContent = assistantMessage.getMetadata().get("reasoningContent");
+                            if (reasoningContent == null || reasoningContent.toString().isEmpty()) {
+                                return assistantMessage.getText();
+                            }
+                        }
+                    }
+                    return "";
+                })
+                .collectList()
+                .block();
+    }
+
+    @Benchmark
+    public List<StreamEvent> projectPerToken() {
+        return perToken.project(Flux.fromIterable(outputs)).collectList().block();
+    }
+
+    @Benchmark
+    public List<StreamEvent> projectBatched() {
+        return batched.project(Flux.fromIterable(outputs)).collectList().block();
+    }
+}
@@ -0,0 +1,116 @@
+package com.lks.benchmarks;
+
+import com.alibaba.cloud.ai.graph.agent.hook.TokenCounter;
+import com.lks.common.token.ApproximateTokenizer;
+import com.lks.common.token.TokenAccountant;
+import com.lks.common.token.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 摘要钩子 token 计数基准
+ *
+ * 模拟 SummarizationHook 在每次模型调用前统计历史：从 rounds 轮工具调用的历史开始，
+ * 每步追加一条消息再统计整段历史，连续 {@value #STEPS} 步，结果为单步平均耗时。
+ * 对比框架的 approximateMsgCounter（按字符数 / 4，每步遍历全部消息）、不缓存的中英文分别估算（每步扫描全部文本）
+ * 与 TokenAccountant（每步只计数新消息）。每次操作开始时历史截回初始长度，TokenAccountant 会按文本缓存重算一次，
+ * 该开销摊入各步，相当于每 {@value #STEPS} 步发生一次摘要替换或检查点恢复。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(TokenAccountingBenchmark.STEPS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenAccountingBenchmark {
+
+    static final int STEPS = 1000;
+
+    @Param({"10", "100", "1000"})
+    public int rounds;
+
+    private final TokenCounter frameworkCounter = TokenCounter.approximateMsgCounter();
+    private final Tokenizer tokenizer = new ApproximateTokenizer();
+    private final TokenCounter uncachedCounter = messages -> {
+        int total = 0;
+        for (Message message : messages) {
+            total += countUncached(message);
+        }
+        return total;
+    };
+    private final TokenAccountant accountant = TokenAccountant.builder().build();
+
+    private List<Message> initialHistory;
+    private List<Message> newMessages;
+    private List<Message> history;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        initialHistory = BenchmarkFixtures.messageHistory(rounds, 4000);
+        // 去掉系统提示词与用户问题，只保留“助手消息 + 工具结果”
+        List<Message> generated = BenchmarkFixtures.messageHistory(STEPS / 2, 4000);
+        newMessages = generated.subList(2, 2 + STEPS);
+        history = new ArrayList<>(initialHistory);
+    }
+
+    @Benchmark
+    public int frameworkApproximate() {
+        return continueConversation(frameworkCounter);
+    }
+
+    @Benchmark
+    public int uncachedApproximate() {
+        return continueConversation(uncachedCounter);
+    }
+
+    @Benchmark
+    public int tokenAccountant() {
+        return continueConversation(accountant);
+    }
+
+    private int continueConversation(TokenCounter counter) {
+        history.subList(initialHistory.size(), history.size()).clear();
+        int tokens = 0;
+        for (Message message : newMessages) {
+            history.add(message);
+            tokens += counter.countTokens(history);
+        }
+        return tokens;
+    }
+
+    private int countUncached(Message message) {
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            int total = 0;
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                total += tokenizer.countTokens(response.responseData());
+            }
+            return total;
+        }
+        int total = tokenizer.countTokens(message.getText());
+        if (message instanceof AssistantMessage assistantMessage) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                total += tokenizer.countTokens(toolCall.arguments());
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,109 @@
+package com.lks.benchmarks.load;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 闭环压测驱动
+ *
+ * 固定数量的并发用户（虚拟线程）循环发起请求，直到完成指定请求数；预热请求不计入统计。
+ * 统计阶段记录每个请求的总延迟与首 token 延迟，并定时采样堆占用。
+ */
+public class LoadDriver {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadDriver.class);
+
+    private static final long HEAP_SAMPLE_INTERVAL_MILLIS = 50;
+
+    private final int concurrency;
+    private final int warmupRequests;
+    private final int requests;
+
+    public LoadDriver(int concurrency, int warmupRequests, int requests) {
+        if (concurrency < 1 || requests < 1 || warmupRequests < 0) {
+            throw new IllegalArgumentException("concurrency and requests must be positive");
+        }
+        this.concurrency = concurrency;
+        this.warmupRequests = warmupRequests;
+        this.requests = requests;
+    }
+
+    public LoadTestReport run(LoadTarget target, ScriptedChatModel model) {
+        if (warmupRequests > 0) {
+            log.info("[{}] warming up with {} requests", target.name(), warmupRequests);
+            execute(target, 0, warmupRequests, new long[warmupRequests], new long[warmupRequests]);
+        }
+
+        long[] latencies = new long[requests];
+        long[] firstTokens = new long[requests];
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        AtomicLong heapPeak = new AtomicLong();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(() -> heapPeak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, HEAP_SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        log.info("[{}] running {} requests at concurrency {}", target.name(), requests, concurrency);
+        long tokensBefore = model.getEmittedTokens();
+        long startedAt = System.nanoTime();
+        int errors;
+        try {
+            errors = execute(target, warmupRequests, requests, latencies, firstTokens);
+        }
+        finally {
+            sampler.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        long tokens = model.getEmittedTokens() - tokensBefore;
+
+        System.gc();
+        long heapAfterGc = memory.getHeapMemoryUsage().getUsed();
+
+        return new LoadTestReport(target.name(), concurrency, requests, errors, seconds,
+                (requests - errors) / seconds, tokens / seconds,
+                LoadTestReport.Percentiles.of(latencies), LoadTestReport.Percentiles.of(firstTokens),
+                heapPeak.get(), heapAfterGc);
+    }
+
+    /**
+     * @return 失败的请求数
+     */
+    private int execute(LoadTarget target, int firstIndex, int count, long[] latencies, long[] firstTokens) {
+        Arrays.fill(latencies, -1);
+        Arrays.fill(firstTokens, -1);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        try (ExecutorService users = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int user = 0; user < Math.min(concurrency, count); user++) {
+                users.execute(() -> {
+                    for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                        long startedAt = System.nanoTime();
+                        try {
+                            firstTokens[i] = target.execute(firstIndex + i);
+                            latencies[i] = System.nanoTime() - startedAt;
+                        }
+                        catch (Exception e) {
+                            if (errors.getAndIncrement() == 0) {
+                                log.warn("[{}] request {} failed", target.name(), firstIndex + i, e);
+                            }
+                        }
+                    }
+                });
+            }
+        }
+        return errors.get();
+    }
+}
@@ -0,0 +1,17 @@
+package com.lks.benchmarks.load;
+
+/**
+ * 压测目标
+ */
+public interface LoadTarget extends AutoCloseable {
+
+    String name();
+
+    /**
+     * 执行一次完整请求并等待结束
+     *
+     * @param index 请求序号，用于生成互不相同的会话 ID 与问题
+     * @return 从请求开始到首个回答 token 的耗时（纳秒），没有回答内容时返回 -1
+     */
+    long execute(int index) throws Exception;
+}
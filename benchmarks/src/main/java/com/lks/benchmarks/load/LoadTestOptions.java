@@ -0,0 +1,82 @@
+package com.lks.benchmarks.load;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 压测参数
+ *
+ * 命令行参数形如 {@code --concurrency=32 --ttft=300ms}；以 {@code app.} 开头的参数去掉前缀后
+ * 原样传给被压测的 Spring 应用，例如 {@code --app.agent.checkpoint.tier.durability=sync}。
+ */
+public final class LoadTestOptions {
+
+    private static final String APP_PREFIX = "app.";
+
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    private LoadTestOptions() {
+    }
+
+    public static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unrecognized argument: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                options.values.put(arg.substring(2), "true");
+            }
+            else {
+                options.values.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+        return options;
+    }
+
+    public String getString(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String value = values.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    public double getDouble(String name, double defaultValue) {
+        String value = values.get(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    public Duration getDuration(String name, Duration defaultValue) {
+        String value = values.get(name);
+        return value != null ? DurationStyle.detectAndParse(value) : defaultValue;
+    }
+
+    /**
+     * @return 逗号分隔的列表，值为空字符串时返回空列表
+     */
+    public List<String> getList(String name, String defaultValue) {
+        String value = values.getOrDefault(name, defaultValue);
+        return Arrays.stream(value.split(",")).map(String::trim).filter(item -> !item.isEmpty()).toList();
+    }
+
+    /**
+     * @return 传给被压测应用的配置项
+     */
+    public Map<String, Object> getAppProperties() {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        values.forEach((name, value) -> {
+            if (name.startsWith(APP_PREFIX)) {
+                properties.put(name.substring(APP_PREFIX.length()), value);
+            }
+        });
+        return properties;
+    }
+}
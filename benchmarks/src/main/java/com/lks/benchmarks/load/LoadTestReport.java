@@ -0,0 +1,62 @@
+package com.lks.benchmarks.load;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个压测目标的结果
+ *
+ * @param target            压测目标（poem / research）
+ * @param concurrency       并发数
+ * @param requests          计入统计的请求数
+ * @param errors            失败的请求数
+ * @param seconds           计入统计阶段的总耗时
+ * @param requestsPerSecond 请求吞吐量
+ * @param tokensPerSecond   模型输出 token 吞吐量
+ * @param latency           请求延迟（毫秒）
+ * @param firstToken        首个回答 token 的延迟（毫秒）
+ * @param heapPeakBytes     压测期间采样到的最大堆占用
+ * @param heapAfterGcBytes  压测结束 GC 后的堆占用
+ */
+public record LoadTestReport(String target, int concurrency, int requests, int errors, double seconds,
+                             double requestsPerSecond, double tokensPerSecond, Percentiles latency,
+                             Percentiles firstToken, long heapPeakBytes, long heapAfterGcBytes) {
+
+    public String format() {
+        return String.format(Locale.ROOT,
+                "%-8s concurrency=%d requests=%d errors=%d time=%.1fs throughput=%.2f req/s tokens=%.0f tok/s%n"
+                        + "         latency    %s%n"
+                        + "         firstToken %s%n"
+                        + "         heap peak=%d MB after-gc=%d MB",
+                target, concurrency, requests, errors, seconds, requestsPerSecond, tokensPerSecond,
+                latency.format(), firstToken.format(), heapPeakBytes >> 20, heapAfterGcBytes >> 20);
+    }
+
+    /**
+     * 延迟分位数（毫秒）
+     */
+    public record Percentiles(double p50, double p95, double p99, double max) {
+
+        /**
+         * @param nanos 每个请求的耗时（纳秒），小于 0 的值视为缺失
+         */
+        public static Percentiles of(long[] nanos) {
+            long[] sorted = Arrays.stream(nanos).filter(value -> value >= 0).sorted().toArray();
+            if (sorted.length == 0) {
+                return new Percentiles(0, 0, 0, 0);
+            }
+            return new Percentiles(millis(sorted, 0.50), millis(sorted, 0.95), millis(sorted, 0.99),
+                    millis(sorted, 1.0));
+        }
+
+        private static double millis(long[] sorted, double quantile) {
+            int index = Math.max(0, (int) Math.ceil(quantile * sorted.length) - 1);
+            return sorted[index] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        String format() {
+            return String.format(Locale.ROOT, "p50=%.0fms p95=%.0fms p99=%.0fms max=%.0fms", p50, p95, p99, max);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.lks.benchmarks.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 离线压测入口
+ *
+ * 不访问 DashScope、Jina 等外部服务：模型为 {@link ScriptedChatModel}，MCP 工具由本地 stub 服务器提供，
+ * {@code /poem} 的检查点写入进程内启动的 Redis（embedded-redis 内置的 redis-server，无需容器）。
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.lks.benchmarks.load.LoadTestRunner \
+ *     --targets=poem,research --concurrency=32 --requests=500 --ttft=300ms --tokens-per-second=60
+ * </pre>
+ * 参数：
+ * <ul>
+ *     <li>{@code --targets}：poem、research，默认两者都压测</li>
+ *     <li>{@code --concurrency} / {@code --requests} / {@code --warmup}：并发数、统计请求数、预热请求数</li>
+ *     <li>{@code --ttft} / {@code --tokens-per-second} / {@code --reasoning-tokens} / {@code --answer-tokens}：模型替身的输出节奏</li>
+ *     <li>{@code --tool-calls}：研究代理每次运行依次调用的工具，默认 search_papers,read_paper</li>
+ *     <li>{@code --mcp-latency} / {@code --mcp-instances} / {@code --mcp-script}：stub MCP 服务器</li>
+ *     <li>{@code --redis}：使用已有的 Redis（host:port）代替内置 Redis</li>
+ *     <li>{@code --result}：JSON 结果文件，默认 target/loadtest-result.json</li>
+ *     <li>{@code --app.*}：传给被压测应用的配置项</li>
+ * </ul>
+ */
+public class LoadTestRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTestRunner.class);
+
+    public static void main(String[] args) {
+        try {
+            run(LoadTestOptions.parse(args));
+        }
+        catch (Exception e) {
+            log.error("Load test failed", e);
+            System.exit(1);
+        }
+        // Redisson、Netty 等留有非守护线程
+        System.exit(0);
+    }
+
+    private static void run(LoadTestOptions options) throws IOException {
+        LoadDriver driver = new LoadDriver(options.getInt("concurrency", 16), options.getInt("warmup", 20),
+                options.getInt("requests", 200));
+
+        List<LoadTestReport> reports = new ArrayList<>();
+        for (String target : options.getList("targets", "poem,research")) {
+            switch (target) {
+                case "poem" -> reports.add(runPoem(options, driver));
+                case "research" -> reports.add(runResearch(options, driver));
+                default -> throw new IllegalArgumentException("Unknown target: " + target);
+            }
+        }
+
+        System.out.println();
+        reports.forEach(report -> System.out.println(report.format()));
+        Path result = Path.of(options.getString("result", "target/loadtest-result.json"));
+        Files.createDirectories(result.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(result.toFile(), reports);
+        System.out.println("Load test result is saved to " + result);
+    }
+
+    private static LoadTestReport runPoem(LoadTestOptions options, LoadDriver driver) throws IOException {
+        // 诗歌代理没有工具
+        ScriptedChatModel model = model(options, List.of());
+        String redisAddress = options.getString("redis", null);
+        RedisServer redisServer = null;
+        if (redisAddress == null) {
+            int port = freePort();
+            redisServer = RedisServer.newRedisServer()
+                    .bind("127.0.0.1")
+                    .port(port)
+                    .setting("save \"\"")
+                    .setting("appendonly no")
+                    .build();
+            redisServer.start();
+            redisAddress = "127.0.0.1:" + port;
+            log.info("Embedded Redis started on {}", redisAddress);
+        }
+        try (PoemLoadTarget target = new PoemLoadTarget(model, redisAddress, options.getAppProperties())) {
+            return driver.run(target, model);
+        }
+        finally {
+            if (redisServer != null) {
+                redisServer.stop();
+            }
+        }
+    }
+
+    private static LoadTestReport runResearch(LoadTestOptions options, LoadDriver driver) throws IOException {
+        ScriptedChatModel model = model(options, options.getList("tool-calls", "search_papers,read_paper"));
+        try (ResearchLoadTarget target = new ResearchLoadTarget(model,
+                Path.of(options.getString("mcp-script", "scripts/stub_mcp_server.py")),
+                options.getDuration("mcp-latency", Duration.ofMillis(100)),
+                options.getInt("mcp-instances", 2))) {
+            return driver.run(target, model);
+        }
+    }
+
+    private static ScriptedChatModel model(LoadTestOptions options, List<String> toolCalls) {
+        return ScriptedChatModel.builder()
+                .timeToFirstToken(options.getDuration("ttft", Duration.ofMillis(200)))
+                .tokensPerSecond(options.getDouble("tokens-per-second", 100))
+                .reasoningTokens(options.getInt("reasoning-tokens", 50))
+                .answerTokens(options.getInt("answer-tokens", 150))
+                .toolCalls(toolCalls)
+                .build();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.lks.benchmarks.load;
+
+import com.lks.graphAgent.SimpleReactAgentApplication;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 压测 simple-react-agent 的 {@code /poem}
+ *
+ * 在进程内启动应用（随机端口），把 {@code qwenChatModel} 替换为模型替身，检查点写入本地 Redis；
+ * 通过 HTTP 消费 SSE，收到首个 answer 事件记为首 token，收到 done 事件或流结束记为请求完成。
+ * 替身不经过响应缓存，每个请求都会完整走一遍模型输出。
+ */
+public class PoemLoadTarget implements LoadTarget {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(5);
+
+    private final ConfigurableApplicationContext context;
+    private final HttpClient httpClient;
+    private final URI baseUri;
+
+    /**
+     * @param model         替换 DashScope 的模型替身
+     * @param redisAddress  Redis 地址（host:port）
+     * @param appProperties 额外传给应用的配置项
+     */
+    public PoemLoadTarget(ChatModel model, String redisAddress, Map<String, Object> appProperties) {
+        String[] hostAndPort = redisAddress.split(":");
+        Map<String, Object> properties = new HashMap<>();
+        // 不读取模块自带的 application.yaml（类路径上同名文件不止一个），未配置的项使用代码中的默认值
+        properties.put("spring.config.location", "optional:classpath:/loadtest/");
+        properties.put("spring.main.web-application-type", "reactive");
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("spring.application.name", "simple-react-agent");
+        properties.put("server.port", 0);
+        properties.put("spring.ai.dashscope.api-key", "offline");
+        properties.put("spring.ai.mcp.client.enabled", false);
+        // 类路径上的 Studio 属于 deepResearchAgent，依赖其 AgentLoader
+        properties.put("spring.autoconfigure.exclude", "com.alibaba.cloud.ai.agent.studio.SaaStudioWebModuleAutoConfiguration");
+        properties.put("spring.data.redis.host", hostAndPort[0]);
+        properties.put("spring.data.redis.port", hostAndPort[1]);
+        properties.putAll(appProperties);
+
+        this.context = new SpringApplicationBuilder(SimpleReactAgentApplication.class)
+                .properties(properties)
+                .initializers(applicationContext -> ((GenericApplicationContext) applicationContext)
+                        .registerBean("loadTestModelRegistrar", BeanDefinitionRegistryPostProcessor.class,
+                                () -> new ModelRegistrar(model)))
+                .run();
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        this.baseUri = URI.create("http://127.0.0.1:" + port);
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    @Override
+    public String name() {
+        return "poem";
+    }
+
+    @Override
+    public long execute(int index) throws IOException, InterruptedException {
+        String msg = URLEncoder.encode("做一首关于春天的诗 #" + index, StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/poem?msg=" + msg + "&thread_Id=load-" + index))
+                .header("Accept", "text/event-stream")
+                .timeout(REQUEST_TIMEOUT)
+                .GET()
+                .build();
+        long startedAt = System.nanoTime();
+        HttpResponse<Stream<String>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+        try (Stream<String> lines = response.body()) {
+            if (response.statusCode() != 200) {
+                throw new IOException("HTTP " + response.statusCode() + " from /poem");
+            }
+            long firstToken = -1;
+            for (Iterator<String> it = lines.iterator(); it.hasNext(); ) {
+                String line = it.next();
+                if (firstToken < 0 && line.equals("event:answer")) {
+                    firstToken = System.nanoTime() - startedAt;
+                }
+                else if (line.equals("event:done")) {
+                    break;
+                }
+            }
+            return firstToken;
+        }
+    }
+
+    @Override
+    public void close() {
+        httpClient.close();
+        context.close();
+    }
+
+    /**
+     * 在配置类解析之后把 qwenChatModel 的定义替换为模型替身
+     */
+    private record ModelRegistrar(ChatModel model) implements BeanDefinitionRegistryPostProcessor {
+
+        @Override
+        public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
+            registry.removeBeanDefinition("qwenChatModel");
+            registry.registerBeanDefinition("qwenChatModel",
+                    BeanDefinitionBuilder.genericBeanDefinition(ChatModel.class, () -> model).getBeanDefinition());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.lks.benchmarks.load;
+
+import com.alibaba.cloud.ai.graph.NodeOutput;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.ReactAgent;
+import com.alibaba.cloud.ai.graph.exception.GraphRunnerException;
+import com.alibaba.cloud.ai.graph.streaming.OutputType;
+import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
+import com.lks.agent.Agents.DeepResearchAgent;
+import com.lks.common.checkpoint.BoundedMemorySaver;
+import com.lks.common.checkpoint.CheckpointCompression;
+import com.lks.common.mcp.McpServerPool;
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import org.springframework.ai.chat.model.ChatModel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 压测研究代理
+ *
+ * 按 DeepResearchAgent 的真实配置（拦截器、钩子、子代理、有界检查点保存器）构建代理，
+ * 模型使用替身，MCP 工具由 {@code scripts/stub_mcp_server.py} 进程池提供；直接调用
+ * {@link ReactAgent#stream}，首个非空的回答 token 记为首 token，流结束记为请求完成。
+ * 脚本中不要包含需要人工审批的工具（jina_search、download_paper），否则运行会在审批处中断。
+ */
+public class ResearchLoadTarget implements LoadTarget {
+
+    private final McpServerPool mcpServerPool;
+    private final BoundedMemorySaver saver;
+    private final ReactAgent agent;
+
+    /**
+     * @param model        替换 DashScope 的模型替身
+     * @param stubScript   stub MCP 服务器脚本路径
+     * @param mcpLatency   每次工具调用的模拟耗时
+     * @param mcpInstances stub 服务器实例数
+     */
+    public ResearchLoadTarget(ChatModel model, Path stubScript, Duration mcpLatency, int mcpInstances)
+            throws IOException {
+        this.mcpServerPool = McpServerPool.builder()
+                .name("stub")
+                .parameters(ServerParameters.builder("python3")
+                        .args(List.of(stubScript.toString(), "--latency-ms", String.valueOf(mcpLatency.toMillis())))
+                        .build())
+                .size(mcpInstances)
+                .build()
+                .start();
+        this.saver = BoundedMemorySaver.builder()
+                .spillDirectory(Files.createTempDirectory("research-load-test"))
+                .compression(CheckpointCompression.LZ4)
+                .build();
+        this.agent = new DeepResearchAgent(model).getResearchAgent(mcpServerPool.getToolCallbacks(), saver);
+        this.agent.getAndCompileGraph();
+    }
+
+    @Override
+    public String name() {
+        return "research";
+    }
+
+    @Override
+    public long execute(int index) throws GraphRunnerException {
+        RunnableConfig config = RunnableConfig.builder()
+                .threadId("research-load-" + index)
+                .build();
+        long startedAt = System.nanoTime();
+        AtomicLong firstToken = new AtomicLong(-1);
+        agent.stream("请调研多智能体系统中检查点持久化的性能优化方法 #" + index, config)
+                .doOnNext(output -> {
+                    if (firstToken.get() < 0 && isAnswerToken(output)) {
+                        firstToken.compareAndSet(-1, System.nanoTime() - startedAt);
+                    }
+                })
+                .blockLast();
+        return firstToken.get();
+    }
+
+    @Override
+    public void close() {
+        saver.close();
+        mcpServerPool.close();
+    }
+
+    private static boolean isAnswerToken(NodeOutput output) {
+        return output instanceof StreamingOutput<?> streaming
+                && streaming.getOutputType() == OutputType.AGENT_MODEL_STREAMING
+                && streaming.message() != null
+                && streaming.message().getText() != null
+                && !streaming.message().getText().isEmpty();
+    }
+}
@@ -0,0 +1,246 @@
+package com.lks.benchmarks.load;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.tool.ToolCallback;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 确定性的模型替身
+ *
+ * 按固定节奏输出 token：首个 token 在 {@code timeToFirstToken} 后到达，之后按 {@code tokensPerSecond} 匀速输出。
+ * 每轮先输出思考过程（与 DashScope 相同，放在 {@code reasoningContent} 属性中），再输出：
+ * <ul>
+ *     <li>工具调用：按脚本顺序调用工具，当前轮次 = 最后一条用户消息之后已发起工具调用的助手消息数；
+ *     本次请求未提供的工具跳过，因此子代理不会重复调用只有主代理才有的工具</li>
+ *     <li>回答：脚本执行完毕后输出固定长度的回答</li>
+ * </ul>
+ * 同步调用按相同节奏等待后一次性返回。累计输出的 token 数用于计算压测吞吐量。
+ */
+public class ScriptedChatModel implements ChatModel {
+
+    private static final String TEXT = "春眠不觉晓处处闻啼鸟夜来风雨声花落知多少";
+
+    private final Duration timeToFirstToken;
+    private final Duration tokenInterval;
+    private final int reasoningTokens;
+    private final int answerTokens;
+    private final List<String> toolCalls;
+
+    private final LongAdder emittedTokens = new LongAdder();
+    private final AtomicLong callIds = new AtomicLong();
+
+    protected ScriptedChatModel(Builder builder) {
+        this.timeToFirstToken = builder.timeToFirstToken;
+        this.tokenInterval = Duration.ofNanos((long) (1_000_000_000L / builder.tokensPerSecond));
+        this.reasoningTokens = builder.reasoningTokens;
+        this.answerTokens = builder.answerTokens;
+        this.toolCalls = List.copyOf(builder.toolCalls);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        List<AssistantMessage> chunks = plan(prompt);
+        Mono.delay(timeToFirstToken.plus(tokenInterval.multipliedBy(chunks.size() - 1))).block();
+        emittedTokens.add(chunks.size());
+
+        StringBuilder content = new StringBuilder();
+        StringBuilder reasoning = new StringBuilder();
+        List<AssistantMessage.ToolCall> calls = new ArrayList<>();
+        for (AssistantMessage chunk : chunks) {
+            content.append(chunk.getText());
+            Object reasoningContent = chunk.getMetadata().get("reasoningContent");
+            if (reasoningContent != null) {
+                reasoning.append(reasoningContent);
+            }
+            calls.addAll(chunk.getToolCalls());
+        }
+        AssistantMessage message = AssistantMessage.builder()
+                .content(content.toString())
+                .properties(Map.of("reasoningContent", reasoning.toString()))
+                .toolCalls(calls)
+                .build();
+        return response(message, prompt, chunks.size());
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        List<AssistantMessage> chunks = plan(prompt);
+        int last = chunks.size() - 1;
+        return Flux.range(0, chunks.size())
+                .concatMap(i -> Mono.just(i).delayElement(i == 0 ? timeToFirstToken : tokenInterval))
+                .map(i -> {
+                    emittedTokens.increment();
+                    // 与真实模型一样只在最后一帧携带用量
+                    return i == last ? response(chunks.get(i), prompt, chunks.size()) : response(chunks.get(i));
+                });
+    }
+
+    /**
+     * @return 累计输出的 token 数
+     */
+    public long getEmittedTokens() {
+        return emittedTokens.sum();
+    }
+
+    // ==================== 内部实现 ====================
+
+    /**
+     * 规划本轮输出：思考过程 token，随后是一次工具调用或回答 token
+     */
+    private List<AssistantMessage> plan(Prompt prompt) {
+        List<AssistantMessage> chunks = new ArrayList<>(reasoningTokens + answerTokens + 1);
+        int offset = 0;
+        for (int i = 0; i < reasoningTokens; i++) {
+            chunks.add(AssistantMessage.builder()
+                    .content("")
+                    .properties(Map.of("reasoningContent", token(offset++)))
+                    .build());
+        }
+
+        String tool = nextToolCall(prompt);
+        if (tool != null) {
+            String id = "call_" + callIds.incrementAndGet();
+            chunks.add(AssistantMessage.builder()
+                    .content("")
+                    .toolCalls(List.of(new AssistantMessage.ToolCall(id, "function", tool,
+                            "{\"query\":\"" + id + "\",\"paper_id\":\"2401.00001\",\"url\":\"https://example.com/" + id + "\"}")))
+                    .build());
+            return chunks;
+        }
+        for (int i = 0; i < answerTokens; i++) {
+            chunks.add(new AssistantMessage(token(offset++)));
+        }
+        return chunks;
+    }
+
+    private String nextToolCall(Prompt prompt) {
+        if (toolCalls.isEmpty()) {
+            return null;
+        }
+        Set<String> available = availableTools(prompt);
+        List<String> script = toolCalls.stream().filter(available::contains).toList();
+
+        int round = 0;
+        List<Message> messages = prompt.getInstructions();
+        for (int i = messages.size() - 1; i >= 0 && !(messages.get(i) instanceof UserMessage); i--) {
+            if (messages.get(i) instanceof AssistantMessage assistant && assistant.hasToolCalls()) {
+                round++;
+            }
+        }
+        return round < script.size() ? script.get(round) : null;
+    }
+
+    private static Set<String> availableTools(Prompt prompt) {
+        Set<String> names = new HashSet<>();
+        if (prompt.getOptions() instanceof ToolCallingChatOptions options) {
+            for (ToolCallback callback : options.getToolCallbacks()) {
+                names.add(callback.getToolDefinition().name());
+            }
+            names.addAll(options.getToolNames());
+        }
+        return names;
+    }
+
+    private static String token(int index) {
+        return String.valueOf(TEXT.charAt(index % TEXT.length()));
+    }
+
+    private static ChatResponse response(AssistantMessage message) {
+        return new ChatResponse(List.of(new Generation(message)));
+    }
+
+    private static ChatResponse response(AssistantMessage message, Prompt prompt, int completionTokens) {
+        int promptChars = 0;
+        for (Message instruction : prompt.getInstructions()) {
+            promptChars += instruction.getText() != null ? instruction.getText().length() : 0;
+        }
+        ChatResponseMetadata metadata = ChatResponseMetadata.builder()
+                .usage(new DefaultUsage(promptChars / 4, completionTokens))
+                .build();
+        return new ChatResponse(List.of(new Generation(message)), metadata);
+    }
+
+    public static class Builder {
+        private Duration timeToFirstToken = Duration.ofMillis(200);
+        private double tokensPerSecond = 100;
+        private int reasoningTokens = 50;
+        private int answerTokens = 150;
+        private List<String> toolCalls = List.of();
+
+        /**
+         * 从请求开始到首个 token 的耗时
+         */
+        public Builder timeToFirstToken(Duration timeToFirstToken) {
+            this.timeToFirstToken = timeToFirstToken;
+            return this;
+        }
+
+        /**
+         * 首个 token 之后的输出速率
+         */
+        public Builder tokensPerSecond(double tokensPerSecond) {
+            this.tokensPerSecond = tokensPerSecond;
+            return this;
+        }
+
+        /**
+         * 每轮输出的思考过程 token 数
+         */
+        public Builder reasoningTokens(int reasoningTokens) {
+            this.reasoningTokens = reasoningTokens;
+            return this;
+        }
+
+        /**
+         * 回答的 token 数
+         */
+        public Builder answerTokens(int answerTokens) {
+            this.answerTokens = answerTokens;
+            return this;
+        }
+
+        /**
+         * 依次调用的工具名，每轮调用一个，全部调用后输出回答
+         */
+        public Builder toolCalls(List<String> toolCalls) {
+            this.toolCalls = toolCalls;
+            return this;
+        }
+
+        public ScriptedChatModel build() {
+            Objects.requireNonNull(timeToFirstToken, "timeToFirstToken cannot be null");
+            Objects.requireNonNull(toolCalls, "toolCalls cannot be null");
+            if (tokensPerSecond <= 0) {
+                throw new IllegalArgumentException("tokensPerSecond must be positive");
+            }
+            if (reasoningTokens < 0 || answerTokens < 1) {
+                throw new IllegalArgumentException("reasoningTokens must not be negative and answerTokens must be positive");
+            }
+            return new ScriptedChatModel(this);
+        }
+    }
+}
@@ -2,26 +2,47 @@ package com.lks.agent.Agents;
 
 import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.alibaba.cloud.ai.graph.CompileConfig;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
+import com.alibaba.cloud.ai.graph.agent.extension.file.FilesystemBackend;
+import com.alibaba.cloud.ai.graph.agent.extension.file.LocalFilesystemBackend;
 import com.alibaba.cloud.ai.graph.agent.extension.interceptor.FilesystemInterceptor;
-import com.alibaba.cloud.ai.graph.agent.extension.interceptor.LargeResultEvictionInterceptor;
 import com.alibaba.cloud.ai.graph.agent.extension.interceptor.PatchToolCallsInterceptor;
 import com.alibaba.cloud.ai.graph.agent.extension.interceptor.SubAgentInterceptor;
 import com.alibaba.cloud.ai.graph.agent.extension.interceptor.SubAgentSpec;
+import com.alibaba.cloud.ai.graph.agent.hook.Hook;
 import com.alibaba.cloud.ai.graph.agent.hook.hip.HumanInTheLoopHook;
 import com.alibaba.cloud.ai.graph.agent.hook.shelltool.ShellToolAgentHook;
-import com.alibaba.cloud.ai.graph.agent.hook.summarization.SummarizationHook;
 import com.alibaba.cloud.ai.graph.agent.hook.toolcalllimit.ToolCallLimitHook;
 import com.alibaba.cloud.ai.graph.agent.interceptor.Interceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
 import com.alibaba.cloud.ai.graph.agent.interceptor.contextediting.ContextEditingInterceptor;
 import com.alibaba.cloud.ai.graph.agent.interceptor.todolist.TodoListInterceptor;
 import com.alibaba.cloud.ai.graph.agent.interceptor.toolretry.ToolRetryInterceptor;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.config.SaverConfig;
 import com.alibaba.cloud.ai.graph.checkpoint.savers.MemorySaver;
+import com.lks.common.budget.RunGovernor;
+import com.lks.common.concurrency.RunCancellation;
+import com.lks.common.metrics.AgentMetrics;
+import com.lks.common.retrieval.LocalIndexInterceptor;
+import com.lks.common.store.BlobStoreFilesystemBackend;
+import com.lks.common.store.MappedBlobStore;
+import com.lks.common.subagent.SubAgentFanOut;
+import com.lks.common.summary.BackgroundSummarizationHook;
+import com.lks.common.token.TokenAccountant;
+import com.lks.common.tool.BlobFilesystemInterceptor;
+import com.lks.common.tool.TokenBudgetEvictionInterceptor;
 
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.tool.ToolCallback;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import static com.lks.agent.Agents.DeepResearchAgent.Prompts.researchInstructions;
 import static com.lks.agent.Agents.DeepResearchAgent.Prompts.subCritiquePrompt;
@@ -34,14 +55,29 @@ public class DeepResearchAgent {
             "In order to complete the objective that the user asks of you, " +
                     "you have access to a number of standard tools.";
 
+    /** 与框架内置通用子代理一致的名称与描述 */
+    private static final String GENERAL_PURPOSE_AGENT = "general-purpose";
+    private static final String GENERAL_PURPOSE_DESCRIPTION =
+            "General-purpose agent for researching complex questions, searching for files and content, " +
+                    "and executing multi-step tasks. This agent has access to all tools as the main agent.";
+
     private String systemPrompt;
     private ChatModel chatModel;
 
+    /** 摘要模型 - 比主模型更便宜、更快，在后台预先生成对话摘要 */
+    private ChatModel summaryModel;
+
+    /** 研究子代理（research-agent 与通用子代理）使用的模型，启用限流时为较低优先级的视图 */
+    private ChatModel researchModel;
+
+    /** token 计数 - 摘要钩子与大结果拦截器共用，消息与工具结果只计数一次 */
+    private TokenAccountant tokenAccountant;
+
     // ==================== 拦截器（Interceptors）====================
     /** 大结果拦截器 - 当工具返回结果过大时自动保存到文件系统 */
-    private LargeResultEvictionInterceptor largeResultEvictionInterceptor;
-    /** 文件系统拦截器 - 控制对文件系统的读写操作 */
-    private FilesystemInterceptor filesystemInterceptor;
+    private TokenBudgetEvictionInterceptor largeResultEvictionInterceptor;
+    /** 文件系统拦截器 - 控制对文件系统的读写操作（启用内容寻址存储时为 BlobFilesystemInterceptor） */
+    private ModelInterceptor filesystemInterceptor;
     /** 待办事项列表拦截器 - 管理和跟踪研究任务进度 */
     private TodoListInterceptor todoListInterceptor;
     /** 工具调用补丁拦截器 - 修复或增强工具调用行为 */
@@ -50,15 +86,26 @@ public class DeepResearchAgent {
     private ContextEditingInterceptor contextEditingInterceptor;
     /** 工具重试拦截器 - 处理工具有失败时的重试逻辑 */
     private ToolRetryInterceptor toolRetryInterceptor;
+    /** 本地索引拦截器（可选）- 抓取网页、读取论文的结果写入本地语料库，供 local_search 检索 */
+    private LocalIndexInterceptor localIndexInterceptor;
 
     // ==================== 钩子（Hooks）====================
-    /** 摘要钩子 - 当对话历史过长时自动生成摘要 */
-    private SummarizationHook summarizationHook;
+    /** 摘要钩子 - 当对话历史接近上限时在后台生成摘要，达到上限时替换 */
+    private BackgroundSummarizationHook summarizationHook;
     /** 人类参与钩子 - 在关键操作前请求人类审批 */
     private HumanInTheLoopHook humanInTheLoopHook;
-    /** 工具调用限制钩子 - 限制单次运行的工具调用次数 */
+    /** 工具调用限制钩子 - 未启用预算治理时限制单次运行的工具调用次数 */
     private ToolCallLimitHook toolCallLimitHook;
 
+    /** 运行指标（可选）- 节点、模型、工具与子代理的耗时统计 */
+    private AgentMetrics metrics;
+
+    /** 子代理并行扇出（可选）- 同一回复中的多个 task 调用并发运行，为 null 时由工具节点逐个执行 */
+    private SubAgentFanOut fanOut;
+
+    /** 运行预算治理（可选）- 按时间、token、工具流量与费用逐级降级，为 null 时使用固定的工具调用次数上限 */
+    private RunGovernor governor;
+
     /**
      * DeepResearch代理构造函数
      *
@@ -71,24 +118,67 @@ public class DeepResearchAgent {
      * 注意：需要环境变量 AI_DASHSCOPE_API_KEY 来访问阿里云百炼API
      */
     public DeepResearchAgent() {
+        this(createDefaultChatModel());
+    }
+
+    /**
+     * 使用指定聊天模型的构造函数
+     *
+     * 便于在外部对模型进行装饰（如响应缓存），主代理和所有子代理共用该模型。
+     * 需要分离研究 / 摘要模型或启用指标、文件存储、扇出、预算治理、本地检索时使用 {@link #builder()}。
+     *
+     * @param chatModel 聊天模型
+     */
+    public DeepResearchAgent(ChatModel chatModel) {
+        this(builder().chatModel(chatModel));
+    }
+
+    protected DeepResearchAgent(Builder builder) {
+        ChatModel chatModel = builder.chatModel;
+        ChatModel researchModel = builder.researchModel != null ? builder.researchModel : chatModel;
+        ChatModel summaryModel = builder.summaryModel != null ? builder.summaryModel : chatModel;
+        AgentMetrics metrics = builder.metrics;
+        MappedBlobStore blobStore = builder.blobStore;
+
         // ==================== 初始化 ChatModel ====================
-        DashScopeApi dashScopeApi = DashScopeApi.builder().apiKey(System.getenv("AI_DASHSCOPE_API_KEY")).build();
-        this.chatModel = DashScopeChatModel.builder().dashScopeApi(dashScopeApi).build();
+        this.chatModel = chatModel;
+        this.researchModel = researchModel;
+        this.summaryModel = summaryModel;
+        this.metrics = metrics;
+        this.fanOut = builder.fanOut;
+        this.governor = builder.governor;
+        this.localIndexInterceptor = builder.localIndexInterceptor;
 
         // 组合研究指令和基础代理提示词
         this.systemPrompt = researchInstructions + "\n\n" + BASE_AGENT_PROMPT;
 
+        /**
+         * 配置 token 计数
+         * 功能：按对象缓存每条消息的 token 数，并按会话增量维护历史总数，避免每次模型调用重新统计整段历史
+         */
+        this.tokenAccountant = TokenAccountant.builder().build();
+
         // ==================== 拦截器 ====================
 
+        /**
+         * 配置文件系统后端
+         * 功能：启用内容寻址存储时，写入去重落盘、读取按行区间走内存映射；存储中没有的文件（如 MCP 下载的论文）仍从本地磁盘读取
+         */
+        FilesystemBackend filesystemBackend = blobStore != null
+                ? new BlobStoreFilesystemBackend(blobStore, MappedBlobStore.SHARED_SESSION, new LocalFilesystemBackend(null, false, 10))
+                : new LocalFilesystemBackend(null, false, 10);
+
         /**
          * 配置大结果驱逐拦截器
          * 功能：当工具返回的结果超过指定token数量时，自动将其保存到文件系统
-         * 配置：排除文件系统工具本身，避免递归；设置5000 token阈值
+         * 配置：排除文件系统工具本身，避免递归；设置5000 token阈值（按中英文分别估算，不再是字符数 / 4）
          */
-        this.largeResultEvictionInterceptor = LargeResultEvictionInterceptor
+        this.largeResultEvictionInterceptor = TokenBudgetEvictionInterceptor
                 .builder()
+                .tokenAccountant(tokenAccountant)  // 与摘要钩子共用计数缓存
                 .excludeFilesystemTools()  // 排除文件系统工具，防止递归操作
                 .toolTokenLimitBeforeEvict(5000)  // 当工具结果超过5000 tokens时触发驱逐
+                .backend(filesystemBackend)  // 驱逐结果写入文件系统后端（相同结果只存一份）
                 .build();
 
         /**
@@ -96,9 +186,14 @@ public class DeepResearchAgent {
          * 功能：控制代理对文件系统的读写权限
          * 配置：允许读写操作（非只读模式）
          */
-        this.filesystemInterceptor = FilesystemInterceptor.builder()
-                .readOnly(false)  // 允许读写文件系统
-                .build();
+        this.filesystemInterceptor = filesystemBackend instanceof BlobStoreFilesystemBackend blobBackend
+                ? BlobFilesystemInterceptor.builder()
+                        .backend(blobBackend)  // 文件工具经内容寻址存储读写
+                        .readOnly(false)  // 允许读写文件系统
+                        .build()
+                : FilesystemInterceptor.builder()
+                        .readOnly(false)  // 允许读写文件系统
+                        .build();
 
         /**
          * 配置待办事项列表拦截器
@@ -127,13 +222,16 @@ public class DeepResearchAgent {
         /**
          * 配置摘要钩子
          * 功能：当对话历史过长时自动生成摘要以节省上下文空间
-         * 配置：当达到120000 tokens时触发摘要，保留最近6条消息
-         * 注意：建议使用专门的摘要模型而不是主聊天模型
+         * 配置：达到96000 tokens（阈值的80%）时由摘要模型在后台生成摘要，达到120000 tokens时直接替换，保留最近6条消息
+         * 注意：后台摘要尚未完成时退回同步摘要
          */
-        this.summarizationHook = SummarizationHook.builder()
-                .model(chatModel) // TODO: 应该使用另一个专门的摘要模型
-                .maxTokensBeforeSummary(120000)  // 达到12万tokens时生成摘要
+        this.summarizationHook = BackgroundSummarizationHook.builder()
+                .model(summaryModel)  // 专门的摘要模型
+                .maxTokensBeforeSummary(120000)  // 达到12万tokens时替换为摘要
+                .prefetchRatio(0.8)  // 达到阈值的80%时开始后台摘要
                 .messagesToKeep(6)  // 保留最近6条消息
+                .tokenCounter(tokenAccountant)  // 增量计数，每步只统计新追加的消息
+                .meterRegistry(metrics != null ? metrics.getRegistry() : null)  // 停顿时间与节省的停顿时间
                 .build();
 
         /**
@@ -148,7 +246,7 @@ public class DeepResearchAgent {
 
         /**
          * 配置工具调用限制钩子
-         * 功能：防止单次运行中工具调用次数过多
+         * 功能：未启用预算治理时，防止单次运行中工具调用次数过多
          * 配置：限制每次运行最多调用25次工具
          */
         this.toolCallLimitHook = ToolCallLimitHook.builder()
@@ -170,18 +268,44 @@ public class DeepResearchAgent {
 
     }
 
+    /**
+     * 创建默认的 DashScope 聊天模型
+     *
+     * @return ChatModel 使用环境变量 AI_DASHSCOPE_API_KEY 的聊天模型
+     */
+    public static ChatModel createDefaultChatModel() {
+        DashScopeApi dashScopeApi = DashScopeApi.builder().apiKey(System.getenv("AI_DASHSCOPE_API_KEY")).build();
+        return DashScopeChatModel.builder().dashScopeApi(dashScopeApi).build();
+    }
+
+    /**
+     * 创建摘要使用的 DashScope 聊天模型
+     *
+     * @param model 模型名称，如 qwen-turbo
+     * @return ChatModel 使用环境变量 AI_DASHSCOPE_API_KEY 的聊天模型
+     */
+    public static ChatModel createSummaryChatModel(String model) {
+        DashScopeApi dashScopeApi = DashScopeApi.builder().apiKey(System.getenv("AI_DASHSCOPE_API_KEY")).build();
+        return DashScopeChatModel.builder()
+                .dashScopeApi(dashScopeApi)
+                .defaultOptions(DashScopeChatOptions.builder().model(model).build())
+                .build();
+    }
+
     /**
      * 创建报告评审子代理规范
      *
      * @param subCritiquePrompt 评审代理使用的系统提示词
+     * @param model 评审代理使用的聊天模型
      * @return SubAgentSpec 评审子代理规范
      */
-    private static SubAgentSpec createCritiqueAgent(String subCritiquePrompt) {
+    private static SubAgentSpec createCritiqueAgent(String subCritiquePrompt, ChatModel model) {
         return SubAgentSpec.builder()
                 .name("critique-agent")  // 子代理名称
                 .description("Used to critique the final report. Provide information about " +
                         "how you want the report to be critiqued.")  // 代理描述
                 .systemPrompt(subCritiquePrompt)  // 系统提示词
+                .model(model)  // 评审在最终报告的关键路径上，与主代理同一优先级
                 .enableLoopingLog(true)  // 启用循环日志记录
                 .build();
     }
@@ -191,15 +315,17 @@ public class DeepResearchAgent {
      *
      * @param toolsFromMcp 来自MCP客户端的工具回调列表
      * @param subResearchPrompt 研究代理使用的系统提示词
+     * @param model 研究代理使用的聊天模型
      * @return SubAgentSpec 研究子代理规范
      */
-    private static SubAgentSpec createResearchAgent(List<ToolCallback> toolsFromMcp, String subResearchPrompt) {
+    private static SubAgentSpec createResearchAgent(List<ToolCallback> toolsFromMcp, String subResearchPrompt, ChatModel model) {
         return SubAgentSpec.builder()
                 .name("research-agent")  // 子代理名称
                 .description("Used to research in-depth questions. Only give one topic at a time. " +
                         "Break down large topics into components and call multiple research agents " +
                         "in parallel for each sub-question.")  // 代理描述：专注单一主题，可并行处理子问题
                 .systemPrompt(subResearchPrompt)  // 系统提示词
+                .model(model)  // 探索性研究使用较低优先级
                 .tools(toolsFromMcp)  // 可用工具列表
                 .enableLoopingLog(true)  // 启用循环日志记录
                 .build();
@@ -220,6 +346,41 @@ public class DeepResearchAgent {
      * @return ReactAgent 配置完成的研究代理实例
      */
     public ReactAgent getResearchAgent(List<ToolCallback> toolsFromMcp) {
+        return getResearchAgent(toolsFromMcp, new MemorySaver());
+    }
+
+    /**
+     * 使用指定状态保存器获取研究代理实例
+     *
+     * @param toolsFromMcp 来自MCP客户端的工具回调列表
+     * @param saver 状态保存器（如有界内存保存器）
+     * @return ReactAgent 配置完成的研究代理实例
+     */
+    public ReactAgent getResearchAgent(List<ToolCallback> toolsFromMcp, BaseCheckpointSaver saver) {
+        // 配置拦截器链（按顺序执行，取消拦截器在最外层使已取消的运行不再执行工具，预算拦截器随后以便指标按降级后的模型记录，
+        // 指标拦截器再随后以覆盖其余拦截器的耗时）
+        List<Interceptor> interceptors = new ArrayList<>(List.of(RunCancellation.toolInterceptor()));
+        interceptors.addAll(governorInterceptors());
+        interceptors.addAll(metricsInterceptors());
+        interceptors.addAll(List.of(todoListInterceptor,  // 待办事项管理
+                filesystemInterceptor,  // 文件系统操作
+                largeResultEvictionInterceptor));  // 大结果处理
+        interceptors.addAll(localIndexInterceptors());  // 抓取结果写入本地语料库（在驱逐之内，拿到完整结果）
+        interceptors.addAll(List.of(patchToolCallsInterceptor,  // 工具调用增强
+//				contextEditingInterceptor,  // 上下文编辑（暂时禁用）
+                toolRetryInterceptor));  // 工具重试机制
+        interceptors.addAll(subAgentAsInterceptors(toolsFromMcp));  // 子代理拦截器（启用扇出时含并行执行拦截器）
+        // 配置钩子机制
+        List<Hook> hooks = new ArrayList<>(metricsHooks());
+        hooks.addAll(List.of(humanInTheLoopHook,  // 人类参与控制
+                summarizationHook));  // 对话摘要
+        hooks.addAll(governor != null
+                ? governor.getRunHooks()  // 运行预算（含其子代理）
+                : List.of(toolCallLimitHook));  // 工具调用限制
+        if (fanOut != null) {
+            hooks.add(fanOut.getPlanningHook());  // 记下每条回复中的 task 调用，供并行执行
+        }
+
         // 使用建造者模式构建ReactAgent，配置所有必要组件
         return ReactAgent.builder()
                 .name("DeepResearchAgent")  // 代理名称
@@ -227,23 +388,44 @@ public class DeepResearchAgent {
                 .tools(toolsFromMcp)  // 注入MCP工具
                 .systemPrompt(systemPrompt)  // 设置系统提示词
                 .enableLogging(true)  // 启用详细日志
-                // 配置拦截器链（按顺序执行）
-                .interceptors(todoListInterceptor,  // 待办事项管理
-                        filesystemInterceptor,  // 文件系统操作
-                        largeResultEvictionInterceptor,  // 大结果处理
-                        patchToolCallsInterceptor,  // 工具调用增强
-//						contextEditingInterceptor,  // 上下文编辑（暂时禁用）
-                        toolRetryInterceptor,  // 工具重试机制
-                        subAgentAsInterceptors(toolsFromMcp))  // 子代理拦截器
-                // 配置钩子机制
-                .hooks(humanInTheLoopHook,  // 人类参与控制
-                        summarizationHook,  // 对话摘要
-                        toolCallLimitHook)  // 工具调用限制
-                .saver(new MemorySaver())  // 内存状态保存器
+                .interceptors(interceptors)
+                .hooks(hooks)
+                .compileConfig(compileConfig(saver))  // 状态保存器与节点耗时监听
                 .build();  // 构建最终代理实例
 
     }
 
+    /**
+     * 编译配置：注册状态保存器，启用指标时挂上节点耗时监听器
+     *
+     * 设置 compileConfig 后建造者会忽略 saver()，因此保存器在这里一并注册。
+     */
+    private CompileConfig compileConfig(BaseCheckpointSaver saver) {
+        CompileConfig.Builder builder = CompileConfig.builder()
+                .saverConfig(SaverConfig.builder().register(saver).build())
+                .recursionLimit(Integer.MAX_VALUE);
+        if (metrics != null) {
+            builder.withLifecycleListener(metrics.getLifecycleListener());
+        }
+        return builder.build();
+    }
+
+    private List<Interceptor> governorInterceptors() {
+        return governor != null ? List.of(governor.getModelInterceptor(), governor.getToolInterceptor()) : List.of();
+    }
+
+    private List<Interceptor> localIndexInterceptors() {
+        return localIndexInterceptor != null ? List.of(localIndexInterceptor) : List.of();
+    }
+
+    private List<Interceptor> metricsInterceptors() {
+        return metrics != null ? List.of(metrics.getModelInterceptor(), metrics.getToolInterceptor()) : List.of();
+    }
+
+    private List<Hook> metricsHooks() {
+        return metrics != null ? List.of(metrics.getHook()) : List.of();
+    }
+
     /**
      * 将子代理包装为拦截器
      *
@@ -251,33 +433,96 @@ public class DeepResearchAgent {
      * - research-agent：负责深入研究特定问题
      * - critique-agent：负责评审和完善报告质量
      *
+     * 启用并行扇出时，子代理在这里按框架相同的方式构建，同一组实例既注册到子代理拦截器（提供 task 工具），
+     * 也交给扇出拦截器并发运行；扇出拦截器排在前面，task 调用不再落到框架的串行执行。
+     *
      * @param toolsFromMcp 来自MCP客户端的工具回调列表
-     * @return Interceptor 子代理拦截器实例
+     * @return 子代理相关的拦截器（扇出拦截器在前）
      */
-    private Interceptor subAgentAsInterceptors(List<ToolCallback> toolsFromMcp) {
+    private List<Interceptor> subAgentAsInterceptors(List<ToolCallback> toolsFromMcp) {
         // 创建两个专用子代理规范
-        SubAgentSpec researchAgent = createResearchAgent(toolsFromMcp, subResearchPrompt);  // 研究代理
-        SubAgentSpec critiqueAgent = createCritiqueAgent(subCritiquePrompt);  // 评审代理
+        SubAgentSpec researchAgent = createResearchAgent(toolsFromMcp, subResearchPrompt, researchModel);  // 研究代理
+        SubAgentSpec critiqueAgent = createCritiqueAgent(subCritiquePrompt, chatModel);  // 评审代理
+
+        // 为所有子代理设置默认拦截器（子代理的模型与工具调用同样计入预算与指标）
+        List<Interceptor> interceptors = new ArrayList<>(governorInterceptors());
+        interceptors.addAll(metricsInterceptors());
+        interceptors.addAll(List.of(todoListInterceptor,  // 待办事项管理
+                filesystemInterceptor,  // 文件系统访问
+//				contextEditingInterceptor,  // 上下文编辑（暂时禁用）
+                patchToolCallsInterceptor,  // 工具调用增强
+                largeResultEvictionInterceptor));  // 大结果处理
+        interceptors.addAll(localIndexInterceptors());  // 抓取结果写入本地语料库
+        // 为所有子代理设置默认钩子
+        List<Hook> hooks = new ArrayList<>(metricsHooks());
+        hooks.addAll(List.of(humanInTheLoopHook,  // 人类参与
+                summarizationHook));  // 摘要生成
+        hooks.addAll(governor != null
+                ? governor.getSubAgentHooks()  // 子代理预算（同时计入父运行）
+                : List.of(toolCallLimitHook));  // 工具调用限制
 
         // 构建子代理拦截器
         SubAgentInterceptor.Builder subAgentBuilder = SubAgentInterceptor.builder()
-                .defaultModel(chatModel)  // 默认使用主聊天模型
-                // 为所有子代理设置默认拦截器
-                .defaultInterceptors(
-                        todoListInterceptor,  // 待办事项管理
-                        filesystemInterceptor,  // 文件系统访问
-//						contextEditingInterceptor,  // 上下文编辑（暂时禁用）
-                        patchToolCallsInterceptor,  // 工具调用增强
-                        largeResultEvictionInterceptor  // 大结果处理
-                )
-                // 为所有子代理设置默认钩子
-                .defaultHooks(humanInTheLoopHook,  // 人类参与
-                        summarizationHook,  // 摘要生成
-                        toolCallLimitHook)  // 工具调用限制
-                .addSubAgent(researchAgent)  // 添加研究子代理
-                .includeGeneralPurpose(true)  // 包含通用目的工具
-                .addSubAgent(critiqueAgent);  // 添加评审子代理
-        return subAgentBuilder.build();  // 构建并返回拦截器
+                .defaultModel(researchModel)  // 通用子代理使用研究模型
+                .defaultInterceptors(interceptors.toArray(Interceptor[]::new))
+                .defaultHooks(hooks.toArray(Hook[]::new))
+                .includeGeneralPurpose(true);  // 包含通用目的工具
+        if (fanOut == null) {
+            return List.of(subAgentBuilder
+                    .addSubAgent(researchAgent)  // 添加研究子代理
+                    .addSubAgent(critiqueAgent)  // 添加评审子代理
+                    .build());
+        }
+
+        Map<String, ReactAgent> subAgents = new LinkedHashMap<>();
+        subAgents.put(GENERAL_PURPOSE_AGENT, createGeneralPurposeAgent(interceptors,
+                governor != null ? governor.getSubAgentHooks() : List.of()));
+        for (SubAgentSpec spec : List.of(researchAgent, critiqueAgent)) {
+            ReactAgent subAgent = createSubAgent(spec, interceptors, hooks);
+            subAgents.put(spec.getName(), subAgent);
+            subAgentBuilder.addSubAgent(spec.getName(), subAgent);
+        }
+        return List.of(fanOut.interceptor(subAgents),  // 并行执行 task 调用
+                subAgentBuilder.build());  // 提供 task 工具
+    }
+
+    /**
+     * 按子代理规范构建子代理，与框架 SubAgentInterceptor 的构建方式一致
+     */
+    private ReactAgent createSubAgent(SubAgentSpec spec, List<Interceptor> interceptors, List<Hook> hooks) {
+        List<Interceptor> subAgentInterceptors = new ArrayList<>(interceptors);
+        if (spec.getInterceptors() != null) {
+            subAgentInterceptors.addAll(spec.getInterceptors());
+        }
+        com.alibaba.cloud.ai.graph.agent.Builder builder = ReactAgent.builder()
+                .name(spec.getName())
+                .description(spec.getDescription())
+                .instruction(spec.getSystemPrompt())
+                .saver(new MemorySaver())
+                .model(spec.getModel() != null ? spec.getModel() : researchModel)
+                .interceptors(subAgentInterceptors)
+                .hooks(hooks)
+                .enableLogging(spec.isEnableLoopingLog());
+        if (spec.getTools() != null && !spec.getTools().isEmpty()) {
+            builder.tools(spec.getTools());
+        }
+        return builder.build();
+    }
+
+    /**
+     * 构建与框架内置通用子代理等价的实例（框架的实例不对外暴露），供并行扇出运行；
+     * 框架的通用子代理不挂钩子，这里只挂上预算钩子，使其同样受子代理预算约束
+     */
+    private ReactAgent createGeneralPurposeAgent(List<Interceptor> interceptors, List<Hook> hooks) {
+        return ReactAgent.builder()
+                .name(GENERAL_PURPOSE_AGENT)
+                .description(GENERAL_PURPOSE_DESCRIPTION)
+                .model(researchModel)
+                .systemPrompt(BASE_AGENT_PROMPT)
+                .saver(new MemorySaver())
+                .interceptors(interceptors)
+                .hooks(hooks)
+                .build();
     }
 
     /**
@@ -400,4 +645,89 @@ public class DeepResearchAgent {
 				- The article has clear structure, fluent language, and is easy to understand
 				""";
     }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private ChatModel chatModel;
+        private ChatModel researchModel;
+        private ChatModel summaryModel;
+        private AgentMetrics metrics;
+        private MappedBlobStore blobStore;
+        private SubAgentFanOut fanOut;
+        private RunGovernor governor;
+        private LocalIndexInterceptor localIndexInterceptor;
+
+        /**
+         * 主代理与评审子代理的聊天模型
+         */
+        public Builder chatModel(ChatModel chatModel) {
+            this.chatModel = chatModel;
+            return this;
+        }
+
+        /**
+         * research-agent 与通用子代理的聊天模型（如同一额度下较低优先级的视图），未设置时与主模型相同
+         */
+        public Builder researchModel(ChatModel researchModel) {
+            this.researchModel = researchModel;
+            return this;
+        }
+
+        /**
+         * 摘要模型，建议使用更轻量的模型（见 {@link #createSummaryChatModel(String)}），未设置时与主模型相同
+         */
+        public Builder summaryModel(ChatModel summaryModel) {
+            this.summaryModel = summaryModel;
+            return this;
+        }
+
+        /**
+         * 运行指标，为 null 时不埋点
+         */
+        public Builder metrics(AgentMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * 文件工具与大结果驱逐使用的内容寻址存储，为 null 时直接读写本地磁盘
+         */
+        public Builder blobStore(MappedBlobStore blobStore) {
+            this.blobStore = blobStore;
+            return this;
+        }
+
+        /**
+         * 子代理并行扇出，为 null 时子代理逐个运行
+         */
+        public Builder fanOut(SubAgentFanOut fanOut) {
+            this.fanOut = fanOut;
+            return this;
+        }
+
+        /**
+         * 运行预算治理，为 null 时每次运行最多调用25次工具
+         */
+        public Builder governor(RunGovernor governor) {
+            this.governor = governor;
+            return this;
+        }
+
+        /**
+         * 把抓取结果写入本地语料库的拦截器，为 null 时不索引
+         */
+        public Builder localIndexInterceptor(LocalIndexInterceptor localIndexInterceptor) {
+            this.localIndexInterceptor = localIndexInterceptor;
+            return this;
+        }
+
+        public DeepResearchAgent build() {
+            Objects.requireNonNull(chatModel, "chatModel cannot be null");
+            return new DeepResearchAgent(this);
+        }
+    }
+
 }
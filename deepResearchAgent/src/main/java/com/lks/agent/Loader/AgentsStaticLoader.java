@@ -4,45 +4,135 @@ import com.alibaba.cloud.ai.agent.studio.loader.AgentLoader;
 import com.alibaba.cloud.ai.graph.GraphRepresentation;
 import com.alibaba.cloud.ai.graph.agent.Agent;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
 import com.lks.agent.Agents.DeepResearchAgent;
+import com.lks.common.budget.RunGovernor;
+import com.lks.common.cache.CachingChatModel;
+import com.lks.common.cache.ResponseCache;
+import com.lks.common.mcp.McpHttpServers;
+import com.lks.common.mcp.McpServerPools;
+import com.lks.common.metrics.AgentMetrics;
+import com.lks.common.ratelimit.ModelCallScheduler;
+import com.lks.common.ratelimit.ModelPriority;
+import com.lks.common.ratelimit.ScheduledChatModel;
+import com.lks.common.retrieval.LocalCorpus;
+import com.lks.common.retrieval.LocalIndexInterceptor;
+import com.lks.common.retrieval.LocalSearchTool;
+import com.lks.common.store.MappedBlobStore;
+import com.lks.common.subagent.SubAgentFanOut;
+import com.lks.common.tool.ToolResultCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 
+/**
+ * 代理加载器
+ *
+ * 代理的构建（拉取 MCP 工具、创建模型与代理、编译图）不再阻塞 Spring 启动：
+ * <ul>
+ *     <li>background（默认）：容器刷新完成后在后台线程构建，完成前就绪状态为 REFUSING_TRAFFIC</li>
+ *     <li>lazy：首次 {@link #loadAgent(String)} 时构建</li>
+ *     <li>eager：容器刷新时同步构建（原有行为）</li>
+ * </ul>
+ * 编译后的图由代理缓存复用；图的可视化表示按需渲染并缓存。
+ */
 @Configuration
 public class AgentsStaticLoader implements AgentLoader {
 
-    private Map<String, Agent> agents = new ConcurrentHashMap<>();
-
-    public AgentsStaticLoader(ToolCallbackProvider toolCallbackProvider) {
+    private static final Logger log = LoggerFactory.getLogger(AgentsStaticLoader.class);
 
-        // 获取MCP客户端提供的工具回调列表
-        List<ToolCallback> toolCallbacks = Arrays.asList(toolCallbackProvider.getToolCallbacks());
+    public static final String RESEARCH_AGENT = "research_agent";
 
-        // 输出加载的工具数量信息
-        System.out.println("Loaded MCP tool callbacks: " + toolCallbacks.size());
+    private Map<String, Agent> agents = new ConcurrentHashMap<>();
 
-        // 创建DeepResearch研究代理实例
-        ReactAgent researchAgent = new DeepResearchAgent().getResearchAgent(toolCallbacks);
+    private final Map<String, String> graphRepresentations = new ConcurrentHashMap<>();
 
-        // 生成代理图的PlantUML表示（用于可视化调试）
-        GraphRepresentation representation = researchAgent.getAndCompileGraph().stateGraph.getGraph(GraphRepresentation.Type.PLANTUML);
+    private final ObjectProvider<McpServerPools> mcpServerPoolsProvider;
+    private final ObjectProvider<McpHttpServers> mcpHttpServersProvider;
+    private final ObjectProvider<ToolCallbackProvider> toolCallbackProvider;
+    private final ObjectProvider<ResponseCache> responseCacheProvider;
+    private final ObjectProvider<ToolResultCache> toolResultCacheProvider;
+    private final BaseCheckpointSaver checkpointSaver;
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+    private final ObjectProvider<AgentMetrics> agentMetricsProvider;
+    private final ObjectProvider<MappedBlobStore> blobStoreProvider;
+    private final ObjectProvider<ModelCallScheduler> modelSchedulerProvider;
+    private final ObjectProvider<SubAgentFanOut> fanOutProvider;
+    private final ObjectProvider<RunGovernor> governorProvider;
+    private final ObjectProvider<LocalCorpus> localCorpusProvider;
+    private final ObjectProvider<LocalIndexInterceptor> localIndexProvider;
+    private final ApplicationEventPublisher eventPublisher;
+    private final String initialization;
+    private final String summaryModelName;
 
-        // 输出图形表示内容
-        System.out.println(representation.content());
+    private final Object readinessLock = new Object();
+    private CompletableFuture<Void> initializing;
+    private volatile StartupTiming startupTiming;
 
-        this.agents.put("research_agent", researchAgent);
+    public AgentsStaticLoader(ObjectProvider<McpServerPools> mcpServerPoolsProvider,
+                              ObjectProvider<McpHttpServers> mcpHttpServersProvider,
+                              ObjectProvider<ToolCallbackProvider> toolCallbackProvider,
+                              ObjectProvider<ResponseCache> responseCacheProvider,
+                              ObjectProvider<ToolResultCache> toolResultCacheProvider,
+                              @Qualifier("researchCheckpointSaver") BaseCheckpointSaver checkpointSaver,
+                              ObjectProvider<MeterRegistry> meterRegistryProvider,
+                              ObjectProvider<AgentMetrics> agentMetricsProvider,
+                              ObjectProvider<MappedBlobStore> blobStoreProvider,
+                              ObjectProvider<ModelCallScheduler> modelSchedulerProvider,
+                              ObjectProvider<SubAgentFanOut> fanOutProvider,
+                              ObjectProvider<RunGovernor> governorProvider,
+                              ObjectProvider<LocalCorpus> localCorpusProvider,
+                              ObjectProvider<LocalIndexInterceptor> localIndexProvider,
+                              ApplicationEventPublisher eventPublisher,
+                              @Value("${agent.loader.initialization:background}") String initialization,
+                              @Value("${agent.summarization.model:qwen-turbo}") String summaryModelName) {
+        this.mcpServerPoolsProvider = mcpServerPoolsProvider;
+        this.mcpHttpServersProvider = mcpHttpServersProvider;
+        this.toolCallbackProvider = toolCallbackProvider;
+        this.responseCacheProvider = responseCacheProvider;
+        this.toolResultCacheProvider = toolResultCacheProvider;
+        this.checkpointSaver = checkpointSaver;
+        this.meterRegistryProvider = meterRegistryProvider;
+        this.agentMetricsProvider = agentMetricsProvider;
+        this.blobStoreProvider = blobStoreProvider;
+        this.modelSchedulerProvider = modelSchedulerProvider;
+        this.fanOutProvider = fanOutProvider;
+        this.governorProvider = governorProvider;
+        this.localCorpusProvider = localCorpusProvider;
+        this.localIndexProvider = localIndexProvider;
+        this.eventPublisher = eventPublisher;
+        this.initialization = initialization.toLowerCase();
+        this.summaryModelName = summaryModelName;
     }
 
     @NotNull
     @Override
     public List<String> listAgents() {
-        return agents.keySet().stream().toList();
+        // 代理名称在构建前即已确定
+        return List.of(RESEARCH_AGENT);
     }
 
     @Override
@@ -51,6 +141,12 @@ public class AgentsStaticLoader implements AgentLoader {
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Agent name cannot be null or empty");
         }
+        if (!listAgents().contains(name)) {
+            throw new NoSuchElementException("Agent not found: " + name);
+        }
+
+        // 尚未构建完成时等待构建
+        awaitInitialization();
 
         // 从映射表中查找代理实例
         Agent agent = agents.get(name);
@@ -60,4 +156,211 @@ public class AgentsStaticLoader implements AgentLoader {
 
         return agent;
     }
+
+    /**
+     * 按需渲染代理图的可视化表示（PlantUML / Mermaid），结果缓存
+     */
+    public String getGraphRepresentation(String name, GraphRepresentation.Type type) {
+        Agent agent = loadAgent(name);
+        return graphRepresentations.computeIfAbsent(name + ":" + type,
+                key -> agent.getAndCompileGraph().stateGraph.getGraph(type, name).content());
+    }
+
+    /**
+     * @return 代理是否已构建完成
+     */
+    public boolean isReady() {
+        return startupTiming != null;
+    }
+
+    /**
+     * @return 启动耗时，构建完成前为 null
+     */
+    public StartupTiming getStartupTiming() {
+        return startupTiming;
+    }
+
+    /**
+     * 容器刷新完成后按配置开始构建代理
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void onContextRefreshed() {
+        switch (initialization) {
+            case "lazy" -> log.info("Agents will be built on first use");
+            case "eager" -> awaitInitialization();
+            default -> startInitialization();
+        }
+    }
+
+    /**
+     * Spring Boot 启动完成时会把就绪状态置为 ACCEPTING_TRAFFIC；代理尚未构建完成时改回 REFUSING_TRAFFIC
+     */
+    @EventListener
+    public void onReadinessChanged(AvailabilityChangeEvent<ReadinessState> event) {
+        synchronized (readinessLock) {
+            if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && !isReady() && !"lazy".equals(initialization)) {
+                AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+            }
+        }
+    }
+
+    // ==================== 内部实现 ====================
+
+    private CompletableFuture<Void> startInitialization() {
+        synchronized (readinessLock) {
+            // 首次调用或上次构建失败时（重新）开始构建
+            if (initializing == null || initializing.isCompletedExceptionally()) {
+                initializing = CompletableFuture.runAsync(this::initialize,
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "agents-loader");
+                            thread.setDaemon(true);
+                            thread.start();
+                        });
+            }
+            return initializing;
+        }
+    }
+
+    private void awaitInitialization() {
+        try {
+            startInitialization().join();
+        }
+        catch (CompletionException e) {
+            throw new IllegalStateException("Failed to build agents", e.getCause());
+        }
+    }
+
+    private void initialize() {
+        long startedAt = System.nanoTime();
+        try {
+            // 获取MCP工具回调列表：优先使用进程池（首次获取时预热），否则使用Spring AI MCP客户端提供的工具
+            McpServerPools mcpServerPools = mcpServerPoolsProvider.getIfAvailable();
+            List<ToolCallback> toolCallbacks = new ArrayList<>(mcpServerPools != null
+                    ? mcpServerPools.getToolCallbacks()
+                    : Arrays.asList(toolCallbackProvider.getObject().getToolCallbacks()));
+            // 启用远程 MCP 服务器时追加其工具（首次获取时建立会话）
+            McpHttpServers mcpHttpServers = mcpHttpServersProvider.getIfAvailable();
+            if (mcpHttpServers != null) {
+                toolCallbacks.addAll(mcpHttpServers.getToolCallbacks());
+            }
+
+            // 输出加载的工具数量信息
+            log.info("Loaded MCP tool callbacks: {}", toolCallbacks.size());
+
+            // 启用工具缓存时，为配置了 TTL 的工具包装结果缓存并注册命中率指标
+            ToolResultCache toolResultCache = toolResultCacheProvider.getIfAvailable();
+            if (toolResultCache != null) {
+                toolResultCache.bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), RESEARCH_AGENT);
+                toolCallbacks = toolResultCache.decorate(toolCallbacks);
+            }
+            // 启用本地检索时与 MCP 工具一起注册 local_search，主代理与研究子代理都可先查本地语料库
+            LocalCorpus localCorpus = localCorpusProvider.getIfAvailable();
+            if (localCorpus != null) {
+                toolCallbacks.add(LocalSearchTool.create(localCorpus));
+            }
+            long toolsReadyAt = System.nanoTime();
+
+            // 创建聊天模型：启用限流时主代理（含评审）与研究子代理分别以 REPORT / RESEARCH 优先级经同一调度器排队，
+            // 启用缓存时在外层包装响应缓存（命中时不占用额度），各视图共用的缓存只注册一次指标
+            ResponseCache responseCache = responseCacheProvider.getIfAvailable();
+            if (responseCache != null) {
+                responseCache.bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), RESEARCH_AGENT);
+            }
+            ChatModel baseModel = DeepResearchAgent.createDefaultChatModel();
+            ModelCallScheduler modelScheduler = modelSchedulerProvider.getIfAvailable();
+            ScheduledChatModel scheduledModel = modelScheduler == null ? null : ScheduledChatModel.builder()
+                    .delegate(baseModel)
+                    .scheduler(modelScheduler)
+                    .priority(ModelPriority.REPORT)
+                    .build();
+            ChatModel chatModel = cached(scheduledModel != null ? scheduledModel : baseModel);
+            ChatModel researchModel = scheduledModel != null ? cached(scheduledModel.withPriority(ModelPriority.RESEARCH)) : chatModel;
+
+            // 摘要使用单独的轻量模型（不经过响应缓存，额度独立），未配置时与主模型相同，以 BACKGROUND 优先级排队
+            ChatModel summaryModel;
+            if (summaryModelName == null || summaryModelName.isBlank()) {
+                summaryModel = scheduledModel != null ? cached(scheduledModel.withPriority(ModelPriority.BACKGROUND)) : chatModel;
+            }
+            else {
+                summaryModel = DeepResearchAgent.createSummaryChatModel(summaryModelName);
+            }
+
+            // 创建DeepResearch研究代理实例，启用指标时主代理与子代理都挂上埋点，启用文件存储时文件工具经存储读写，
+            // 启用扇出时同一回复中的多个子代理并发运行，启用预算治理时按预算逐级降级，启用本地检索时抓取结果写入本地语料库
+            ReactAgent researchAgent = DeepResearchAgent.builder()
+                    .chatModel(chatModel)
+                    .researchModel(researchModel)
+                    .summaryModel(summaryModel)
+                    .metrics(agentMetricsProvider.getIfAvailable())
+                    .blobStore(blobStoreProvider.getIfAvailable())
+                    .fanOut(fanOutProvider.getIfAvailable())
+                    .governor(governorProvider.getIfAvailable())
+                    .localIndexInterceptor(localIndexProvider.getIfAvailable())
+                    .build()
+                    .getResearchAgent(toolCallbacks, checkpointSaver);
+            long builtAt = System.nanoTime();
+
+            // 预先编译图，代理内部缓存编译结果，之后的调用直接复用
+            researchAgent.getAndCompileGraph();
+            long compiledAt = System.nanoTime();
+
+            this.agents.put(RESEARCH_AGENT, researchAgent);
+            markReady(new StartupTiming(
+                    TimeUnit.NANOSECONDS.toMillis(toolsReadyAt - startedAt),
+                    TimeUnit.NANOSECONDS.toMillis(builtAt - toolsReadyAt),
+                    TimeUnit.NANOSECONDS.toMillis(compiledAt - builtAt),
+                    TimeUnit.NANOSECONDS.toMillis(compiledAt - startedAt),
+                    System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime()));
+        }
+        catch (RuntimeException e) {
+            log.error("Failed to build agents", e);
+            throw e;
+        }
+    }
+
+    /**
+     * 启用响应缓存时为模型包装一层缓存，各优先级的视图共用同一缓存
+     */
+    private ChatModel cached(ChatModel chatModel) {
+        ResponseCache responseCache = responseCacheProvider.getIfAvailable();
+        return responseCache != null ? CachingChatModel.builder().delegate(chatModel).cache(responseCache).build() : chatModel;
+    }
+
+    private void markReady(StartupTiming timing) {
+        synchronized (readinessLock) {
+            this.startupTiming = timing;
+            AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+        }
+        log.info("Agents ready: tools {} ms, build {} ms, compile {} ms, total {} ms, {} ms since JVM start",
+                timing.toolsMillis(), timing.buildMillis(), timing.compileMillis(), timing.totalMillis(),
+                timing.sinceJvmStartMillis());
+
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry);
+        recordPhase(registry, "tools", timing.toolsMillis());
+        recordPhase(registry, "build", timing.buildMillis());
+        recordPhase(registry, "compile", timing.compileMillis());
+        recordPhase(registry, "total", timing.totalMillis());
+        recordPhase(registry, "jvm_to_ready", timing.sinceJvmStartMillis());
+    }
+
+    private static void recordPhase(MeterRegistry registry, String phase, long millis) {
+        Timer.builder("agent.loader.startup")
+                .tag("phase", phase)
+                .description("Time spent building agents at startup")
+                .register(registry)
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 启动耗时
+     *
+     * @param toolsMillis         拉取 MCP 工具（含进程池预热）
+     * @param buildMillis         创建模型与代理
+     * @param compileMillis       编译代理图
+     * @param totalMillis         构建总耗时
+     * @param sinceJvmStartMillis 从 JVM 启动到代理就绪
+     */
+    public record StartupTiming(long toolsMillis, long buildMillis, long compileMillis, long totalMillis,
+                                long sinceJvmStartMillis) {
+    }
 }
@@ -0,0 +1,127 @@
+package com.lks.agent.config;
+
+import com.lks.agent.Loader.AgentsStaticLoader;
+import com.lks.agent.run.AgentRuns;
+import com.lks.agent.run.AgentStreamProjection;
+import com.lks.common.concurrency.AdmissionController;
+import com.lks.common.concurrency.LocalThreadRunGate;
+import com.lks.common.concurrency.ThreadRunGate;
+import com.lks.common.stream.ResumableStreams;
+import com.lks.common.stream.StreamingProjection;
+import com.lks.common.subagent.SubAgentFanOut;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(prefix = "agent.run", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class AgentRunConfig {
+
+    /** 同一线程上的重叠运行：queue（排队）| reject（立即拒绝） */
+    @Value("${agent.run.thread-mode:queue}")
+    private String threadMode;
+
+    @Value("${agent.run.thread-max-wait:30s}")
+    private Duration threadMaxWait;
+
+    @Value("${agent.run.thread-max-queued:4}")
+    private int threadMaxQueued;
+
+    @Value("${agent.run.max-concurrent:256}")
+    private int maxConcurrent;
+
+    @Value("${agent.run.max-queued:512}")
+    private int maxQueued;
+
+    @Value("${agent.run.queue-timeout:30s}")
+    private Duration queueTimeout;
+
+    @Value("${agent.run.retry-after:5s}")
+    private Duration retryAfter;
+
+    /**
+     * 研究运行的按线程串行 gate
+     *
+     * 同一 thread_id 的重叠运行按配置排队或拒绝，避免并发运行交错写同一条检查点链。
+     */
+    @Bean
+    public ThreadRunGate researchThreadRunGate(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        return LocalThreadRunGate.builder()
+                .mode(ThreadRunGate.Mode.of(threadMode))
+                .maxWait(threadMaxWait)
+                .maxQueuedPerThread(threadMaxQueued)
+                .retryAfter(retryAfter)
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), AgentsStaticLoader.RESEARCH_AGENT);
+    }
+
+    /**
+     * 研究运行的全局准入控制
+     *
+     * 同时执行的运行数有上限，超出时排队（有长度上限与超时），队列满时立即返回 429。
+     * 运行在虚拟线程上执行、等待模型与工具时不占用平台线程，上限主要受模型额度与内存约束。
+     */
+    @Bean
+    public AdmissionController researchAdmissionController(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        return AdmissionController.builder()
+                .maxConcurrent(maxConcurrent)
+                .maxQueued(maxQueued)
+                .queueTimeout(queueTimeout)
+                .retryAfter(retryAfter)
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), AgentsStaticLoader.RESEARCH_AGENT);
+    }
+
+    /**
+     * 研究运行的可续传输出
+     *
+     * 每次运行的输出保存在环形缓冲中，客户端随时订阅或带 Last-Event-ID 续传；运行结束后缓冲再保留 retention。
+     */
+    @Bean
+    public ResumableStreams researchResumableStreams(@Value("${agent.run.buffer-size:8192}") int bufferSize,
+                                                     @Value("${agent.run.retention:30m}") Duration retention,
+                                                     @Value("${agent.run.max-streams:10000}") long maxStreams,
+                                                     ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        return ResumableStreams.builder()
+                .bufferSize(bufferSize)
+                .retention(retention)
+                .maxStreams(maxStreams)
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), AgentsStaticLoader.RESEARCH_AGENT);
+    }
+
+    /**
+     * 代理运行Bean：提交、订阅输出、查询状态与结果、取消
+     *
+     * @return AgentRuns 实例
+     */
+    @Bean(destroyMethod = "close")
+    public AgentRuns agentRuns(AgentsStaticLoader agentsLoader,
+                               ThreadRunGate researchThreadRunGate,
+                               AdmissionController researchAdmissionController,
+                               ResumableStreams researchResumableStreams,
+                               ObjectProvider<SubAgentFanOut> fanOutProvider,
+                               @Value("${agent.run.retention:30m}") Duration retention,
+                               @Value("${agent.run.batch-window:50ms}") Duration batchWindow,
+                               @Value("${agent.run.batch-max-bytes:1024}") int batchMaxBytes,
+                               ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        return AgentRuns.builder()
+                .agentLoader(agentsLoader::loadAgent)
+                .projection(new AgentStreamProjection(StreamingProjection.builder()
+                        .batchWindow(batchWindow)
+                        .batchMaxBytes(batchMaxBytes)))
+                .streams(researchResumableStreams)
+                .threadRunGate(researchThreadRunGate)
+                .admissionController(researchAdmissionController)
+                .fanOut(fanOutProvider.getIfAvailable())
+                .retention(retention)
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), AgentsStaticLoader.RESEARCH_AGENT);
+    }
+}
@@ -0,0 +1,41 @@
+package com.lks.agent.config;
+
+import com.lks.common.store.MappedBlobStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class BlobStoreConfig {
+
+    /**
+     * 研究代理的文件存储Bean
+     *
+     * 仅在 agent.blob-store.enabled=true 时创建。
+     * 文件工具（read_file / write_file 等）与大结果驱逐写入的文件按内容哈希去重落盘，读取按行区间走内存映射；
+     * 每个会话写入的文件有总大小上限，超出时淘汰最久未访问的文件。
+     *
+     * @return MappedBlobStore 实例
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "agent.blob-store", name = "enabled", havingValue = "true")
+    public MappedBlobStore researchBlobStore(@Value("${agent.blob-store.dir:${java.io.tmpdir}/deep-research-blobs}") String dir,
+                                             @Value("${agent.blob-store.max-bytes-per-session:64MB}") DataSize maxBytesPerSession,
+                                             @Value("${agent.blob-store.max-mapped-bytes:256MB}") DataSize maxMappedBytes,
+                                             ObjectProvider<MeterRegistry> meterRegistryProvider) throws IOException {
+        return MappedBlobStore.builder()
+                .root(Path.of(dir))
+                .maxBytesPerSession(maxBytesPerSession.toBytes())
+                .maxMappedBytes(maxMappedBytes.toBytes())
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "research_agent");
+    }
+}
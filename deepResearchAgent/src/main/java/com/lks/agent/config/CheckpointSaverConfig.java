@@ -0,0 +1,61 @@
+package com.lks.agent.config;
+
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.savers.MemorySaver;
+import com.lks.common.checkpoint.BoundedMemorySaver;
+import com.lks.common.checkpoint.CheckpointCompression;
+import com.lks.common.metrics.AgentMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+public class CheckpointSaverConfig {
+
+    /**
+     * 研究代理的检查点保存器Bean
+     *
+     * Studio 中每个研究会话的完整检查点历史都会留在堆上，长时间运行容易 OOM。
+     * 默认使用有界保存器：限制常驻线程数与字节数，空闲或超限的线程溢写到本地文件，再次访问时自动恢复。
+     * 设置 agent.checkpoint.research.bounded=false 可退回框架的 MemorySaver。
+     *
+     * @return BaseCheckpointSaver 实例
+     */
+    @Bean(name = "researchCheckpointSaver")
+    public BaseCheckpointSaver researchCheckpointSaver(@Value("${agent.checkpoint.research.bounded:true}") boolean bounded,
+                                                       @Value("${agent.checkpoint.research.max-threads:100}") int maxThreads,
+                                                       @Value("${agent.checkpoint.research.max-bytes:256MB}") DataSize maxBytes,
+                                                       @Value("${agent.checkpoint.research.idle-ttl:30m}") Duration idleTtl,
+                                                       @Value("${agent.checkpoint.research.spill-dir:${java.io.tmpdir}/deep-research-checkpoints}") String spillDir,
+                                                       @Value("${agent.checkpoint.research.compression:lz4}") String compression,
+                                                       ObjectProvider<MeterRegistry> meterRegistryProvider,
+                                                       ObjectProvider<AgentMetrics> metricsProvider) {
+        if (!bounded) {
+            return instrument(new MemorySaver(), metricsProvider.getIfAvailable());
+        }
+        BoundedMemorySaver saver = BoundedMemorySaver.builder()
+                .maxThreads(maxThreads)
+                .maxBytes(maxBytes.toBytes())
+                .idleTtl(idleTtl)
+                .spillDirectory(spillDir.isBlank() ? null : Path.of(spillDir))
+                .compression(CheckpointCompression.valueOf(compression.toUpperCase()))
+                .build();
+        // 没有 Actuator 时注册到全局注册表，接入 Micrometer 后即可导出
+        saver.bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "research_agent");
+        return instrument(saver, metricsProvider.getIfAvailable());
+    }
+
+    /**
+     * 启用代理指标时统计检查点读写耗时（溢写恢复等慢路径会体现在 get 的长尾上）
+     */
+    private static BaseCheckpointSaver instrument(BaseCheckpointSaver saver, AgentMetrics metrics) {
+        return metrics != null ? metrics.instrument(saver, "research_agent") : saver;
+    }
+}
@@ -0,0 +1,100 @@
+package com.lks.agent.config;
+
+import com.lks.agent.subagent.RedisSubAgentQueue;
+import com.lks.agent.subagent.RedisSubAgentWorker;
+import com.lks.common.subagent.SubAgentFanOut;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 研究子代理的分布式执行
+ *
+ * 启用后主代理发起的 task 调用投递到 Redis Streams 工作队列，由运行相同代理定义的任一节点（含本节点）领取执行，
+ * 子代理输出与结果经回复 Stream 回到父运行；一次研究的子问题因此可以分散到整个集群。
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "agent.subagent.distributed", name = "enabled", havingValue = "true")
+public class DistributedSubAgentConfig {
+
+    @Value("${agent.subagent.distributed.redis-address:redis://localhost:6379}")
+    private String redisAddress;
+
+    @Value("${agent.subagent.distributed.key-prefix:research:subagent:}")
+    private String keyPrefix;
+
+    @Value("${agent.subagent.distributed.group:workers}")
+    private String group;
+
+    @Value("${agent.subagent.distributed.queue-timeout:10m}")
+    private Duration queueTimeout;
+
+    @Value("${agent.subagent.distributed.claim-timeout:60s}")
+    private Duration claimTimeout;
+
+    @Value("${agent.subagent.fan-out.timeout:10m}")
+    private Duration runTimeout;
+
+    @Bean(destroyMethod = "shutdown")
+    public RedissonClient subAgentRedissonClient() {
+        Config config = new Config();
+        config.useSingleServer()
+              .setAddress(redisAddress.contains("://") ? redisAddress : "redis://" + redisAddress);
+        return Redisson.create(config);
+    }
+
+    /**
+     * 子代理工作队列（投递端），注入扇出执行器后 task 调用不再在本进程运行
+     *
+     * @return RedisSubAgentQueue 实例
+     */
+    @Bean
+    public RedisSubAgentQueue subAgentQueue(RedissonClient subAgentRedissonClient,
+                                            ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        return RedisSubAgentQueue.builder()
+                .redisson(subAgentRedissonClient)
+                .keyPrefix(keyPrefix)
+                .group(group)
+                .queueTimeout(queueTimeout)
+                .runTimeout(runTimeout)
+                .claimTimeout(claimTimeout)
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "research_agent");
+    }
+
+    /**
+     * 执行节点：领取队列中的 task 调用并用本节点构建的子代理运行
+     *
+     * agent.subagent.distributed.worker.enabled=false 时本节点只投递不执行（如只接入流量的网关节点）。
+     *
+     * @return RedisSubAgentWorker 实例
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "agent.subagent.distributed.worker", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public RedisSubAgentWorker subAgentWorker(RedisSubAgentQueue subAgentQueue,
+                                              ObjectProvider<SubAgentFanOut> fanOutProvider,
+                                              @Value("${agent.subagent.distributed.worker.concurrency:4}") int concurrency,
+                                              @Value("${agent.subagent.distributed.worker.max-attempts:3}") int maxAttempts,
+                                              ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        SubAgentFanOut fanOut = fanOutProvider.getIfAvailable();
+        if (fanOut == null) {
+            throw new IllegalStateException("agent.subagent.distributed requires agent.subagent.fan-out.enabled=true");
+        }
+        return RedisSubAgentWorker.builder()
+                .queue(subAgentQueue)
+                .fanOut(fanOut)
+                .concurrency(concurrency)
+                .maxAttempts(maxAttempts)
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "research_agent");
+    }
+}
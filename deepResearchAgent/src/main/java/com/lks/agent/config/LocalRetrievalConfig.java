@@ -0,0 +1,97 @@
+package com.lks.agent.config;
+
+import com.lks.common.embedding.EmbeddingFunction;
+import com.lks.common.embedding.HashingEmbeddingFunction;
+import com.lks.common.embedding.ModelEmbeddingFunction;
+import com.lks.common.retrieval.LocalCorpus;
+import com.lks.common.retrieval.LocalIndexInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+@Configuration
+@ConditionalOnProperty(prefix = "agent.retrieval", name = "enabled", havingValue = "true")
+public class LocalRetrievalConfig {
+
+    /**
+     * 研究代理的本地语料库Bean
+     *
+     * 仅在 agent.retrieval.enabled=true 时创建。
+     * 抓取的网页、读取的论文与论文存储目录中的文件分块后写入内存映射的 HNSW 索引，重启后直接复用；
+     * 向量默认由本地哈希函数生成（不调用模型），embedding=model 时改用模型的向量接口，切换后索引按新维度重建。
+     *
+     * @return LocalCorpus 实例
+     */
+    @Bean
+    public LocalCorpus researchLocalCorpus(@Value("${agent.retrieval.dir:./local-corpus}") String dir,
+                                           @Value("${agent.retrieval.embedding:hashing}") String embedding,
+                                           @Value("${agent.retrieval.model-name:text-embedding-v3}") String modelName,
+                                           @Value("${agent.retrieval.dimensions:1024}") int dimensions,
+                                           @Value("${agent.retrieval.batch-size:10}") int batchSize,
+                                           @Value("${agent.retrieval.chunk-chars:1200}") int chunkChars,
+                                           @Value("${agent.retrieval.chunk-overlap:150}") int chunkOverlap,
+                                           @Value("${agent.retrieval.m:16}") int m,
+                                           @Value("${agent.retrieval.ef-construction:128}") int efConstruction,
+                                           @Value("${agent.retrieval.ef-search:100}") int efSearch,
+                                           @Value("${agent.retrieval.min-score:0.3}") double minScore,
+                                           @Value("${agent.retrieval.watch-dirs:./papers-storage}") List<String> watchDirs,
+                                           @Value("${agent.retrieval.scan-interval:30s}") Duration scanInterval,
+                                           ObjectProvider<EmbeddingModel> embeddingModelProvider,
+                                           ObjectProvider<MeterRegistry> meterRegistryProvider) throws IOException {
+        LocalCorpus.Builder builder = LocalCorpus.builder()
+                .dir(Path.of(dir))
+                .embeddingFunction(embeddingFunction(embedding, modelName, dimensions, batchSize, embeddingModelProvider))
+                .chunking(chunkChars, chunkOverlap)
+                .hnsw(m, efConstruction, efSearch)
+                .minScore(minScore)
+                .scanInterval(scanInterval);
+        watchDirs.stream().filter(watchDir -> !watchDir.isBlank()).forEach(watchDir -> builder.watch(Path.of(watchDir.strip())));
+        return builder.build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "research_agent");
+    }
+
+    /**
+     * 本地索引拦截器Bean：配置的工具返回后把结果排队写入本地语料库
+     *
+     * @return LocalIndexInterceptor 实例
+     */
+    @Bean
+    public LocalIndexInterceptor researchLocalIndexInterceptor(LocalCorpus researchLocalCorpus,
+                                                               @Value("${agent.retrieval.index-tools:jina_reader,read_paper}") Set<String> indexTools) {
+        return LocalIndexInterceptor.builder()
+                .corpus(researchLocalCorpus)
+                .tools(indexTools)
+                .build();
+    }
+
+    private static EmbeddingFunction embeddingFunction(String embedding, String modelName, int dimensions, int batchSize,
+                                                       ObjectProvider<EmbeddingModel> embeddingModelProvider) {
+        if ("hashing".equalsIgnoreCase(embedding)) {
+            return new HashingEmbeddingFunction();
+        }
+        if (!"model".equalsIgnoreCase(embedding)) {
+            throw new IllegalArgumentException("Unknown agent.retrieval.embedding: " + embedding + " (expected hashing or model)");
+        }
+        EmbeddingModel embeddingModel = embeddingModelProvider.getIfAvailable();
+        if (embeddingModel == null) {
+            throw new IllegalStateException("agent.retrieval.embedding=model requires an EmbeddingModel bean");
+        }
+        return ModelEmbeddingFunction.builder()
+                .model(embeddingModel)
+                .modelName(modelName)
+                .dimensions(dimensions)
+                .batchSize(batchSize)
+                .build();
+    }
+}
@@ -0,0 +1,92 @@
+package com.lks.agent.config;
+
+import com.lks.common.mcp.McpHttpServer;
+import com.lks.common.mcp.McpHttpServers;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Configuration
+@ConditionalOnProperty(prefix = "agent.mcp.http", name = "enabled", havingValue = "true")
+public class McpHttpConfig {
+
+    /**
+     * 远程 MCP 服务器Bean
+     *
+     * 读取 agent.mcp.http.servers 中的每个服务器（url、endpoint、transport、headers、max-concurrency），
+     * 全部服务器共用一个 HTTP/2 客户端，调用在虚拟线程上等待响应。
+     * 与进程池一样延迟创建：由代理加载器在后台构建代理时连接，不阻塞应用启动。
+     *
+     * @return 远程 MCP 服务器集合，容器关闭时断开全部会话
+     */
+    @Bean
+    @Lazy
+    public McpHttpServers mcpHttpServers(Environment environment,
+                                         @Value("${agent.mcp.http.connect-timeout:5s}") Duration connectTimeout,
+                                         @Value("${agent.mcp.http.read-timeout:60s}") Duration readTimeout,
+                                         @Value("${agent.mcp.http.initialization-timeout:30s}") Duration initializationTimeout,
+                                         @Value("${agent.mcp.http.max-concurrency:16}") int maxConcurrency,
+                                         @Value("${agent.mcp.http.hedge-delay:0s}") Duration hedgeDelay,
+                                         @Value("${agent.mcp.http.hedged-tools:}") Set<String> hedgedTools,
+                                         ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        Map<String, ServerProperties> servers = Binder.get(environment)
+                .bind("agent.mcp.http.servers", Bindable.mapOf(String.class, ServerProperties.class))
+                .orElse(Map.of());
+
+        HttpClient httpClient = McpHttpServers.newHttpClient(connectTimeout);
+        List<McpHttpServer> started = new ArrayList<>(servers.size());
+        try {
+            for (Map.Entry<String, ServerProperties> server : servers.entrySet()) {
+                ServerProperties properties = server.getValue();
+                started.add(McpHttpServer.builder()
+                        .name(server.getKey())
+                        .url(properties.url())
+                        .endpoint(properties.endpoint())
+                        .transport(properties.transport() != null ? properties.transport() : McpHttpServer.Transport.STREAMABLE)
+                        .headers(properties.headers() != null ? properties.headers() : Map.of())
+                        .httpClient(httpClient)
+                        .readTimeout(readTimeout)
+                        .initializationTimeout(initializationTimeout)
+                        .maxConcurrency(properties.maxConcurrency() != null ? properties.maxConcurrency() : maxConcurrency)
+                        .hedgedTools(hedgedTools)
+                        .hedgeDelay(hedgeDelay)
+                        .build()
+                        .start());
+            }
+        }
+        catch (RuntimeException e) {
+            new McpHttpServers(httpClient, started).close();
+            throw e;
+        }
+        return new McpHttpServers(httpClient, started)
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    /**
+     * 单个远程服务器的配置
+     *
+     * @param url            服务器基础地址
+     * @param endpoint       端点路径，默认 Streamable HTTP 为 /mcp、SSE 为 /sse
+     * @param transport      streamable | sse
+     * @param headers        附加请求头，值中可使用 ${环境变量}
+     * @param maxConcurrency 覆盖该端点的并发上限
+     */
+    record ServerProperties(String url, String endpoint, McpHttpServer.Transport transport,
+                            Map<String, String> headers, Integer maxConcurrency) {
+    }
+}
@@ -0,0 +1,75 @@
+package com.lks.agent.config;
+
+import com.lks.common.mcp.McpServerConfigs;
+import com.lks.common.mcp.McpServerPool;
+import com.lks.common.mcp.McpServerPools;
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+@ConditionalOnProperty(prefix = "agent.mcp.pool", name = "enabled", havingValue = "true")
+public class McpPoolConfig {
+
+    /**
+     * MCP 服务器进程池Bean
+     *
+     * 读取与 Spring AI stdio 客户端相同格式的配置文件，为每个服务器启动多个常驻实例并在启动时预热。
+     * 实例数默认 agent.mcp.pool.default-size，可在 agent.mcp.pool.sizes 中按服务器名覆盖。
+     * 启用进程池时应关闭 Spring AI 自带的 MCP 客户端，避免同一服务器被重复启动。
+     * 延迟创建：由代理加载器在后台构建代理时触发预热，不阻塞应用启动；
+     * 因此不注册为 ToolCallbackProvider，避免被 Spring AI 的工具解析器在启动时提前创建。
+     *
+     * @return 服务器进程池集合，容器关闭时结束全部进程
+     */
+    @Bean
+    @Lazy
+    public McpServerPools mcpServerPools(Environment environment,
+                                         @Value("${agent.mcp.pool.servers-configuration:classpath:/mcp-servers-config.json}") Resource serversConfiguration,
+                                         @Value("${agent.mcp.pool.default-size:2}") int defaultSize,
+                                         @Value("${agent.mcp.pool.request-timeout:60s}") Duration requestTimeout,
+                                         @Value("${agent.mcp.pool.initialization-timeout:120s}") Duration initializationTimeout,
+                                         @Value("${agent.mcp.pool.health-check-interval:30s}") Duration healthCheckInterval) throws IOException {
+        Map<String, ServerParameters> servers;
+        try (InputStream input = serversConfiguration.getInputStream()) {
+            servers = McpServerConfigs.load(input);
+        }
+        Map<String, Integer> sizes = Binder.get(environment)
+                .bind("agent.mcp.pool.sizes", Bindable.mapOf(String.class, Integer.class))
+                .orElse(Map.of());
+
+        List<McpServerPool> pools = new ArrayList<>(servers.size());
+        try {
+            for (Map.Entry<String, ServerParameters> server : servers.entrySet()) {
+                pools.add(McpServerPool.builder()
+                        .name(server.getKey())
+                        .parameters(server.getValue())
+                        .size(sizes.getOrDefault(server.getKey(), defaultSize))
+                        .requestTimeout(requestTimeout)
+                        .initializationTimeout(initializationTimeout)
+                        .healthCheckInterval(healthCheckInterval)
+                        .build()
+                        .start());
+            }
+        }
+        catch (RuntimeException e) {
+            pools.forEach(McpServerPool::close);
+            throw e;
+        }
+        return new McpServerPools(pools);
+    }
+}
@@ -0,0 +1,49 @@
+package com.lks.agent.config;
+
+import com.lks.common.ratelimit.ModelCallScheduler;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class ModelSchedulerConfig {
+
+    /**
+     * 研究代理的模型调用调度器Bean
+     *
+     * 仅在 agent.rate-limit.research.enabled=true 时创建。
+     * 主代理、research-agent、critique-agent 与通用子代理共用同一个 DashScope 模型额度，
+     * 因此共用这一个调度器：按请求数与 token 数限速，最终报告撰写优先于探索性研究，收到 429 时自适应退避，
+     * 排队超过 acquire-timeout 的调用以 ModelQuotaTimeoutException 失败，不会无限阻塞运行线程。
+     * 使用其他模型的摘要模型额度独立，不经过该调度器。
+     *
+     * @return ModelCallScheduler 实例
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "agent.rate-limit.research", name = "enabled", havingValue = "true")
+    public ModelCallScheduler researchModelScheduler(@Value("${agent.rate-limit.research.requests-per-minute:300}") long requestsPerMinute,
+                                                     @Value("${agent.rate-limit.research.tokens-per-minute:500000}") long tokensPerMinute,
+                                                     @Value("${agent.rate-limit.research.burst:10s}") Duration burst,
+                                                     @Value("${agent.rate-limit.research.max-concurrency:8}") int maxConcurrency,
+                                                     @Value("${agent.rate-limit.research.max-backoff:60s}") Duration maxBackoff,
+                                                     @Value("${agent.rate-limit.research.aging-threshold:30s}") Duration agingThreshold,
+                                                     @Value("${agent.rate-limit.research.acquire-timeout:5m}") Duration acquireTimeout,
+                                                     ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        return ModelCallScheduler.builder()
+                .requestsPerMinute(requestsPerMinute)
+                .tokensPerMinute(tokensPerMinute)
+                .burst(burst)
+                .maxConcurrency(maxConcurrency)
+                .maxBackoff(maxBackoff)
+                .agingThreshold(agingThreshold)
+                .acquireTimeout(acquireTimeout)
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "research_agent");
+    }
+}
@@ -0,0 +1,38 @@
+package com.lks.agent.config;
+
+import com.lks.common.cache.ResponseCache;
+import com.lks.common.embedding.HashingEmbeddingFunction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class ResponseCacheConfig {
+
+    /**
+     * 研究代理的模型响应缓存Bean
+     *
+     * 仅在 agent.cache.research.enabled=true 时创建（按 agent 单独开启）。
+     * 主代理与子代理共用同一个模型，因此也共用该缓存；
+     * 重复的子问题调研在上下文完全一致时可直接命中。
+     *
+     * @return ResponseCache 实例
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "agent.cache.research", name = "enabled", havingValue = "true")
+    public ResponseCache researchResponseCache(@Value("${agent.cache.research.max-size:2000}") long maxSize,
+                                               @Value("${agent.cache.research.ttl:6h}") Duration ttl,
+                                               @Value("${agent.cache.research.semantic-enabled:false}") boolean semanticEnabled,
+                                               @Value("${agent.cache.research.similarity-threshold:0.97}") double similarityThreshold) {
+        return ResponseCache.builder()
+                .name("research_agent")
+                .maxSize(maxSize)
+                .ttl(ttl)
+                .embeddingFunction(semanticEnabled ? new HashingEmbeddingFunction() : null)
+                .similarityThreshold(similarityThreshold)
+                .build();
+    }
+}
@@ -0,0 +1,95 @@
+package com.lks.agent.config;
+
+import com.lks.common.budget.RunBudget;
+import com.lks.common.budget.RunGovernor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+@Configuration
+public class RunGovernorConfig {
+
+    /**
+     * 研究运行预算治理Bean
+     *
+     * 默认启用，取代固定的工具调用次数上限；agent.budget.enabled=false 时退回每次运行最多 25 次工具调用。
+     * 主代理一次运行（含其子代理）与单个子代理分别读取 agent.budget.run / agent.budget.subagent，
+     * 费用按 agent.budget.prices 中的单价估算。
+     *
+     * @return RunGovernor 实例
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "agent.budget", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public RunGovernor runGovernor(Environment environment,
+                                   @Value("${agent.budget.economy-at:0.5}") double economyAt,
+                                   @Value("${agent.budget.no-subagents-at:0.7}") double noSubAgentsAt,
+                                   @Value("${agent.budget.final-at:0.85}") double finalAt,
+                                   @Value("${agent.budget.economy-model:qwen-turbo}") String economyModel,
+                                   @Value("${agent.budget.default-model:qwen-plus}") String defaultModel,
+                                   @Value("${agent.budget.max-final-turns:4}") int maxFinalTurns,
+                                   @Value("${agent.budget.final-tools:write_file,edit_file,read_file,ls}") Set<String> finalTools,
+                                   ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        Binder binder = Binder.get(environment);
+        RunGovernor.Builder builder = RunGovernor.builder()
+                .runBudget(budget(binder, "agent.budget.run"))
+                .subAgentBudget(budget(binder, "agent.budget.subagent"))
+                .thresholds(economyAt, noSubAgentsAt, finalAt)
+                .economyModel(economyModel)
+                .defaultModel(defaultModel)
+                .maxFinalTurns(maxFinalTurns)
+                .finalTools(finalTools);
+        binder.bind("agent.budget.prices", Bindable.mapOf(String.class, PriceProperties.class))
+                .orElse(Map.of())
+                .forEach((model, price) -> builder.price(model, price.prompt(), price.completion()));
+        return builder.build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "research_agent");
+    }
+
+    private static RunBudget budget(Binder binder, String prefix) {
+        BudgetProperties properties = binder.bind(prefix, BudgetProperties.class)
+                .orElse(new BudgetProperties(null, null, null, null, null, null));
+        return RunBudget.builder()
+                .wallClock(properties.wallClock() != null ? properties.wallClock() : Duration.ZERO)
+                .promptTokens(properties.promptTokens() != null ? properties.promptTokens() : 0)
+                .completionTokens(properties.completionTokens() != null ? properties.completionTokens() : 0)
+                .toolBytes(properties.toolBytes() != null ? properties.toolBytes().toBytes() : 0)
+                .toolCalls(properties.toolCalls() != null ? properties.toolCalls() : 0)
+                .cost(properties.cost() != null ? properties.cost() : 0)
+                .build();
+    }
+
+    /**
+     * 一组预算上限，未配置的项不限
+     *
+     * @param wallClock        墙钟时间
+     * @param promptTokens     累计提示 token 数
+     * @param completionTokens 累计生成 token 数
+     * @param toolBytes        工具结果累计大小
+     * @param toolCalls        工具调用次数
+     * @param cost             估算费用
+     */
+    record BudgetProperties(Duration wallClock, Long promptTokens, Long completionTokens, DataSize toolBytes,
+                            Long toolCalls, Double cost) {
+    }
+
+    /**
+     * 模型单价
+     *
+     * @param prompt     每千提示 token 的价格
+     * @param completion 每千生成 token 的价格
+     */
+    record PriceProperties(double prompt, double completion) {
+    }
+}
@@ -0,0 +1,41 @@
+package com.lks.agent.config;
+
+import com.lks.common.subagent.SubAgentDispatcher;
+import com.lks.common.subagent.SubAgentFanOut;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class SubAgentFanOutConfig {
+
+    /**
+     * 子代理并行扇出Bean
+     *
+     * 默认启用，agent.subagent.fan-out.enabled=false 时子代理退回框架的逐个执行。
+     * 并发上限在本进程的所有研究运行之间共享；子代理的模型调用仍经过研究代理的模型调度器限速。
+     * 启用分布式执行（agent.subagent.distributed.enabled=true）时子代理经 Redis 工作队列交给执行节点运行，
+     * 并发上限与超时约束的是本节点作为执行节点时运行的子代理。
+     *
+     * @return SubAgentFanOut 实例
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "agent.subagent.fan-out", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public SubAgentFanOut subAgentFanOut(@Value("${agent.subagent.fan-out.max-concurrency:4}") int maxConcurrency,
+                                         @Value("${agent.subagent.fan-out.timeout:10m}") Duration timeout,
+                                         ObjectProvider<SubAgentDispatcher> dispatcherProvider,
+                                         ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        return SubAgentFanOut.builder()
+                .maxConcurrency(maxConcurrency)
+                .timeout(timeout)
+                .dispatcher(dispatcherProvider.getIfAvailable())
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "research_agent");
+    }
+}
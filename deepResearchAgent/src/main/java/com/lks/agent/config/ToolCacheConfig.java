@@ -0,0 +1,50 @@
+package com.lks.agent.config;
+
+import com.lks.common.store.ContentAddressedStore;
+import com.lks.common.tool.ToolResultCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+@Configuration
+public class ToolCacheConfig {
+
+    /**
+     * 研究代理的工具结果缓存Bean
+     *
+     * 仅在 agent.tool-cache.enabled=true 时创建。
+     * 只缓存 agent.tool-cache.tools 中列出的工具（工具名 → TTL），
+     * 并发的相同搜索只会真正调用一次 MCP 服务；有副作用的工具（如 download_paper）不应列入。
+     * 配置 store-dir 时结果同时落盘，重启后仍可命中；过期结果每隔 prune-interval 从磁盘清理。
+     *
+     * @return ToolResultCache 实例
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "agent.tool-cache", name = "enabled", havingValue = "true")
+    public ToolResultCache researchToolResultCache(Environment environment,
+                                                   @Value("${agent.tool-cache.max-memory:64MB}") DataSize maxMemory,
+                                                   @Value("${agent.tool-cache.store-dir:}") String storeDir,
+                                                   @Value("${agent.tool-cache.prune-interval:1h}") Duration pruneInterval) throws IOException {
+        Map<String, Duration> ttls = Binder.get(environment)
+                .bind("agent.tool-cache.tools", Bindable.mapOf(String.class, Duration.class))
+                .orElse(Map.of());
+        return ToolResultCache.builder()
+                .name("research_agent")
+                .toolTtls(ttls)
+                // 按字符计数，与字节数同量级即可
+                .maxMemoryChars(maxMemory.toBytes())
+                .store(storeDir.isBlank() ? null : new ContentAddressedStore(Path.of(storeDir)))
+                .pruneInterval(pruneInterval)
+                .build();
+    }
+}
@@ -2,11 +2,13 @@ package com.lks.agent.config;
 
 import io.modelcontextprotocol.client.transport.customizer.McpSyncHttpClientRequestCustomizer;
 import io.modelcontextprotocol.common.McpTransportContext;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.net.URI;
 import java.net.http.HttpRequest;
+import java.time.Duration;
 
 @Configuration
 public class mcpConfig {
@@ -15,11 +17,14 @@ public class mcpConfig {
      *
      * 配置MCP(Model Context Protocol)客户端的HTTP请求头和超时设置。
      * 主要用于与Jina AI服务进行集成，提供搜索等外部工具支持。
+     * 只作用于 Spring AI 自带的同步 HTTP 客户端；agent.mcp.http 下的远程服务器使用共享的 HTTP/2 客户端，不经过这里。
      *
+     * @param readTimeout 等待单次请求响应的超时时间，与 agent.mcp.http 共用
      * @return McpSyncHttpClientRequestCustomizer 实例
      */
     @Bean
-    public McpSyncHttpClientRequestCustomizer mcpSyncHttpClientRequestCustomizer() {
+    public McpSyncHttpClientRequestCustomizer mcpSyncHttpClientRequestCustomizer(
+            @Value("${agent.mcp.http.read-timeout:120s}") Duration readTimeout) {
         return new McpSyncHttpClientRequestCustomizer() {
             /**
              * 自定义HTTP请求
@@ -34,8 +39,8 @@ public class mcpConfig {
             public void customize(HttpRequest.Builder builder, String method, URI endpoint, String body, McpTransportContext context) {
                 // 添加Jina API密钥到Authorization头部
                 builder.header("Authorization", "Bearer " + System.getenv("JINA_API_KEY"));
-                // 设置请求超时时间为120秒
-                builder.timeout(java.time.Duration.ofSeconds(120));
+                // 设置读取超时时间（连接超时由传输的 HttpClient 单独控制）
+                builder.timeout(readTimeout);
             }
         };
     }
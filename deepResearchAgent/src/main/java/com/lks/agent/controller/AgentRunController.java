@@ -0,0 +1,194 @@
+package com.lks.agent.controller;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.lks.agent.Loader.AgentsStaticLoader;
+import com.lks.agent.run.AgentRun;
+import com.lks.agent.run.AgentRuns;
+import com.lks.common.concurrency.RunRejectedException;
+import com.lks.common.stream.ResumableEvent;
+import com.lks.common.stream.StreamNotResumableException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+
+@RestController
+@ConditionalOnProperty(prefix = "agent.run", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class AgentRunController {
+
+    private final AgentsStaticLoader agentsLoader;
+    private final AgentRuns agentRuns;
+    private final int clientBuffer;
+
+    public AgentRunController(AgentsStaticLoader agentsLoader, AgentRuns agentRuns,
+                              @Value("${agent.run.client-buffer:1024}") int clientBuffer) {
+        this.agentsLoader = agentsLoader;
+        this.agentRuns = agentRuns;
+        this.clientBuffer = clientBuffer;
+    }
+
+    /**
+     * 异步提交运行
+     *
+     * 运行开始执行（轮到本线程且获得准入名额）后返回 202 与运行状态，Location 指向状态与结果；
+     * 运行在后台执行，之后经 /events 订阅输出、经 DELETE 取消。同一 thread_id 冲突返回 409，过载返回 429。
+     */
+    @PostMapping(value = "/agents/{name}/runs", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<AgentRun.View>> submit(@PathVariable("name") String name, @RequestBody RunRequest request) {
+        return start(name, request).map(run -> ResponseEntity.accepted()
+                .location(URI.create("/agents/" + name + "/runs/" + run.getRunId()))
+                .body(run.view()));
+    }
+
+    /**
+     * 提交运行并以 SSE 输出
+     *
+     * 事件：reasoning / answer（主代理的模型 token，微批合并）、node（节点完成，JSON）、
+     * subagent（子代理节点完成，JSON）、error（失败或取消，JSON）、done（结束）。
+     * 每个事件带 id，断线后运行继续执行，带 Last-Event-ID 请求 /events 续传。
+     */
+    @PostMapping(value = "/agents/{name}/runs", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Mono<ResponseEntity<Flux<ServerSentEvent<String>>>> submitAndStream(@PathVariable("name") String name,
+                                                                               @RequestBody RunRequest request) {
+        return start(name, request).map(run -> ResponseEntity.ok()
+                .header("X-Run-Id", run.getRunId())
+                .body(toServerSentEvents(agentRuns.events(run.getRunId(), null))));
+    }
+
+    /**
+     * 订阅运行输出：不带 Last-Event-ID 时从缓冲中最早的事件开始，带上时只回放错过的事件再接上实时输出；
+     * 无法续传时返回 410
+     */
+    @GetMapping(value = "/agents/{name}/runs/{runId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> events(@PathVariable("name") String name,
+                                                @PathVariable("runId") String runId,
+                                                @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return toServerSentEvents(agentRuns.events(find(name, runId).getRunId(), lastEventId));
+    }
+
+    /**
+     * 运行状态与结果：结束后 result 为最后一条模型回复（审批中断时为等待审批的工具），error 为失败原因
+     */
+    @GetMapping(value = "/agents/{name}/runs/{runId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public AgentRun.View status(@PathVariable("name") String name, @PathVariable("runId") String runId) {
+        return find(name, runId).view();
+    }
+
+    /**
+     * 取消运行：排队中的不再执行，执行中的停止输出、中断工具调用并取消其子代理
+     */
+    @DeleteMapping(value = "/agents/{name}/runs/{runId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<AgentRun.View> cancel(@PathVariable("name") String name, @PathVariable("runId") String runId) {
+        find(name, runId);
+        return ResponseEntity.accepted().body(agentRuns.cancel(runId).view());
+    }
+
+    /**
+     * 代理或运行不存在（含已过保留期）：返回 404
+     */
+    @ExceptionHandler(NoSuchElementException.class)
+    public ResponseEntity<Map<String, String>> onNotFound(NoSuchElementException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("reason", "NOT_FOUND", "message", e.getMessage()));
+    }
+
+    /**
+     * 请求参数不合法（如缺少 message）：返回 400；其他异常不在此处映射，按服务端错误处理
+     */
+    @ExceptionHandler(InvalidRunRequestException.class)
+    public ResponseEntity<Map<String, String>> onBadRequest(InvalidRunRequestException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("reason", "BAD_REQUEST", "message", e.getMessage()));
+    }
+
+    /**
+     * 无法续传（运行未知、已过期或错过的事件已被覆盖）：返回 410
+     */
+    @ExceptionHandler(StreamNotResumableException.class)
+    public ResponseEntity<Map<String, String>> onStreamNotResumable(StreamNotResumableException e) {
+        return ResponseEntity.status(HttpStatus.GONE)
+                .body(Map.of("reason", "NOT_RESUMABLE", "message", e.getMessage()));
+    }
+
+    /**
+     * 运行未被接纳：同一线程冲突返回 409，过载返回 429，均带 Retry-After
+     */
+    @ExceptionHandler(RunRejectedException.class)
+    public ResponseEntity<Map<String, String>> onRunRejected(RunRejectedException e) {
+        HttpStatus status = e.isThreadConflict() ? HttpStatus.CONFLICT : HttpStatus.TOO_MANY_REQUESTS;
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                .body(Map.of("reason", e.getReason().name(), "message", e.getMessage()));
+    }
+
+    private Mono<AgentRun> start(String name, RunRequest request) {
+        if (!agentsLoader.listAgents().contains(name)) {
+            return Mono.error(new NoSuchElementException("Agent not found: " + name));
+        }
+        if (request == null || request.message() == null || request.message().isBlank()) {
+            return Mono.error(new InvalidRunRequestException("message is required"));
+        }
+        // 创建带唯一threadId的配置，以便跟踪会话状态；不指定 thread_id 时每次运行使用新会话
+        String threadId = name + "_thread_" + (request.threadId() != null && !request.threadId().isBlank()
+                ? request.threadId()
+                : UUID.randomUUID().toString().replace("-", ""));
+        return agentRuns.start(name, request.message(), threadId);
+    }
+
+    private AgentRun find(String name, String runId) {
+        AgentRun run = agentRuns.get(runId);
+        if (run == null || !run.getAgent().equals(name)) {
+            throw new NoSuchElementException("Run " + runId + " of " + name + " is unknown or has expired");
+        }
+        return run;
+    }
+
+    /**
+     * 客户端读取跟不上时最多为其缓冲 clientBuffer 个事件，超出后断开该连接（运行不受影响），
+     * 客户端带 Last-Event-ID 重连后从运行的缓冲续传
+     */
+    private Flux<ServerSentEvent<String>> toServerSentEvents(Flux<ResumableEvent> events) {
+        return events
+                .onBackpressureBuffer(clientBuffer)
+                .map(event -> ServerSentEvent.builder(event.event().data())
+                        .id(event.id())
+                        .event(event.event().type().eventName())
+                        .build());
+    }
+
+    /**
+     * @param message  用户消息
+     * @param threadId 会话ID，相同的会话ID共用历史并串行执行；为空时使用新会话
+     */
+    public record RunRequest(String message, @JsonProperty("thread_id") String threadId) {
+    }
+
+    /**
+     * 提交的运行请求不合法，只由本控制器校验请求时抛出
+     */
+    static class InvalidRunRequestException extends RuntimeException {
+
+        InvalidRunRequestException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.lks.agent.controller;
+
+import com.alibaba.cloud.ai.graph.GraphRepresentation;
+import com.lks.agent.Loader.AgentsStaticLoader;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+@RestController
+public class AgentStatusController {
+
+    private final AgentsStaticLoader agentsLoader;
+
+    public AgentStatusController(AgentsStaticLoader agentsLoader) {
+        this.agentsLoader = agentsLoader;
+    }
+
+    /**
+     * 代理构建状态
+     *
+     * 构建完成前返回 503，可作为就绪探针；完成后返回各阶段耗时。
+     */
+    @GetMapping("/agents/status")
+    public ResponseEntity<Map<String, Object>> status() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("ready", agentsLoader.isReady());
+        body.put("agents", agentsLoader.listAgents());
+        if (agentsLoader.getStartupTiming() != null) {
+            body.put("startup", agentsLoader.getStartupTiming());
+        }
+        return ResponseEntity.status(agentsLoader.isReady() ? 200 : 503).body(body);
+    }
+
+    /**
+     * 按需渲染代理图
+     *
+     * @param type plantuml 或 mermaid，其他取值返回 400
+     */
+    @GetMapping(value = "/agents/{name}/graph", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> graph(@PathVariable("name") String name,
+                                        @RequestParam(value = "type", defaultValue = "plantuml") String type) {
+        GraphRepresentation.Type graphType;
+        try {
+            graphType = GraphRepresentation.Type.valueOf(type.toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Unknown graph type: " + type + ", expected one of "
+                    + Arrays.stream(GraphRepresentation.Type.values()).map(t -> t.name().toLowerCase(Locale.ROOT)).toList());
+        }
+        return ResponseEntity.ok(agentsLoader.getGraphRepresentation(name, graphType));
+    }
+}
@@ -0,0 +1,173 @@
+package com.lks.agent.run;
+
+import com.alibaba.cloud.ai.graph.NodeOutput;
+import com.alibaba.cloud.ai.graph.action.InterruptionMetadata;
+import com.lks.common.concurrency.RunCancellation;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 一次代理运行的状态与结果
+ *
+ * 状态只前进一次：QUEUED → RUNNING → COMPLETED / INTERRUPTED / FAILED / CANCELLED，先到的结束状态生效。
+ */
+public class AgentRun {
+
+    /**
+     * 运行状态
+     */
+    public enum Status {
+        /** 等待同一线程的前一次运行或全局准入名额 */
+        QUEUED,
+        /** 执行中 */
+        RUNNING,
+        /** 正常结束，结果为最后一条模型回复 */
+        COMPLETED,
+        /** 在人工审批处中断，结果为等待审批的工具 */
+        INTERRUPTED,
+        /** 出错结束 */
+        FAILED,
+        /** 被取消 */
+        CANCELLED;
+
+        public String tag() {
+            return name().toLowerCase();
+        }
+
+        public boolean isFinished() {
+            return this != QUEUED && this != RUNNING;
+        }
+    }
+
+    private final String runId;
+    private final String agent;
+    private final String threadId;
+    private final Instant createdAt = Instant.now();
+    private final RunCancellation cancellation = new RunCancellation();
+
+    // 以下字段由 this 保护
+    private Status status = Status.QUEUED;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String result;
+    private String error;
+    private long events;
+
+    private volatile NodeOutput lastOutput;
+
+    AgentRun(String runId, String agent, String threadId) {
+        this.runId = runId;
+        this.agent = agent;
+        this.threadId = threadId;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public String getAgent() {
+        return agent;
+    }
+
+    public String getThreadId() {
+        return threadId;
+    }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return 运行状态与结果的快照
+     */
+    public synchronized View view() {
+        return new View(runId, agent, threadId, status.tag(), createdAt, startedAt, finishedAt, events, result, error);
+    }
+
+    RunCancellation cancellation() {
+        return cancellation;
+    }
+
+    synchronized void started() {
+        if (status == Status.QUEUED) {
+            status = Status.RUNNING;
+            startedAt = Instant.now();
+        }
+    }
+
+    void record(NodeOutput output) {
+        lastOutput = output;
+    }
+
+    synchronized void event() {
+        events++;
+    }
+
+    /**
+     * 运行输出正常结束：最后的输出是审批中断时为 INTERRUPTED，否则为 COMPLETED
+     *
+     * @return 是否由此结束（已取消时为 false）
+     */
+    boolean completed() {
+        NodeOutput output = lastOutput;
+        if (output instanceof InterruptionMetadata interruption) {
+            return finish(Status.INTERRUPTED, "Waiting for approval: " + interruption.toolFeedbacks().stream()
+                    .map(InterruptionMetadata.ToolFeedback::getName)
+                    .collect(Collectors.joining(", ")), null);
+        }
+        return finish(Status.COMPLETED, lastReply(output), null);
+    }
+
+    boolean failed(Throwable e) {
+        return finish(Status.FAILED, null, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+    }
+
+    boolean cancelled() {
+        return finish(Status.CANCELLED, null, "cancelled");
+    }
+
+    private synchronized boolean finish(Status finalStatus, String finalResult, String finalError) {
+        if (status.isFinished()) {
+            return false;
+        }
+        status = finalStatus;
+        finishedAt = Instant.now();
+        result = finalResult;
+        error = finalError;
+        return true;
+    }
+
+    synchronized boolean finishedBefore(Instant instant) {
+        return finishedAt != null && finishedAt.isBefore(instant);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String lastReply(NodeOutput output) {
+        if (output == null || output.state() == null) {
+            return null;
+        }
+        List<Message> messages = output.state().value("messages", List.class).orElse(List.of());
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof AssistantMessage message && message.getText() != null
+                    && !message.getText().isBlank()) {
+                return message.getText();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 运行状态快照
+     *
+     * @param events 已产生的输出事件数
+     * @param result 结束后的结果：最后一条模型回复，或等待审批的工具
+     * @param error  失败原因
+     */
+    public record View(String runId, String agent, String threadId, String status, Instant createdAt,
+                       Instant startedAt, Instant finishedAt, long events, String result, String error) {
+    }
+}
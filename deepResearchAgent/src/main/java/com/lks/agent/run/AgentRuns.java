@@ -0,0 +1,367 @@
+package com.lks.agent.run;
+
+import com.alibaba.cloud.ai.graph.NodeOutput;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.Agent;
+import com.alibaba.cloud.ai.graph.exception.GraphRunnerException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lks.common.concurrency.AdmissionController;
+import com.lks.common.concurrency.RunRejectedException;
+import com.lks.common.concurrency.ThreadRunGate;
+import com.lks.common.stream.ResumableEvent;
+import com.lks.common.stream.ResumableStreams;
+import com.lks.common.stream.StreamEvent;
+import com.lks.common.stream.StreamNotResumableException;
+import com.lks.common.subagent.SubAgentFanOut;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 代理运行：提交、订阅输出、查询状态与结果、取消
+ *
+ * 每次运行都经可续传输出（{@link ResumableStreams}）持有：提交后运行在后台执行，输出保存在运行的环形缓冲中，
+ * 客户端随时订阅（从头或带 Last-Event-ID 续传），断开不影响运行；运行只因结束或 {@link #cancel(String)} 停止。
+ * <ul>
+ *     <li>准入：先按线程串行（{@link ThreadRunGate}），再取全局名额（{@link AdmissionController}），
+ *     排队期间不占用线程；未被接纳时 {@link #start} 以 {@link RunRejectedException} 结束</li>
+ *     <li>执行：获得名额后在新的虚拟线程上订阅代理输出，阻塞的工具调用只占用该虚拟线程</li>
+ *     <li>输出：主代理的模型 token 与节点事件经 {@link AgentStreamProjection} 投影，
+ *     启用并行扇出时子代理的节点输出经 {@link SubAgentFanOut#merge} 并入同一条输出流</li>
+ *     <li>取消：停止订阅代理输出，中断正在执行的工具调用（{@link com.lks.common.concurrency.RunCancellation}），
+ *     并经 {@link SubAgentFanOut#abort(String)} 取消同一运行的全部子代理</li>
+ * </ul>
+ * 结束的运行保留 retention 后从内存移除。
+ */
+public class AgentRuns {
+
+    private static final Logger log = LoggerFactory.getLogger(AgentRuns.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Function<String, Agent> agentLoader;
+    private final AgentStreamProjection projection;
+    private final ResumableStreams streams;
+    private final ThreadRunGate threadRunGate;
+    private final AdmissionController admissionController;
+    private final SubAgentFanOut fanOut;
+    private final Duration retention;
+    private final Scheduler runScheduler = Schedulers.fromExecutorService(
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("agent-run-", 0).factory()), "agent-run");
+
+    private final Map<String, AgentRun> runs = new ConcurrentHashMap<>();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    private AgentRuns(Builder builder) {
+        this.agentLoader = builder.agentLoader;
+        this.projection = builder.projection;
+        this.streams = builder.streams;
+        this.threadRunGate = builder.threadRunGate;
+        this.admissionController = builder.admissionController;
+        this.fanOut = builder.fanOut;
+        this.retention = builder.retention;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 提交一次运行
+     *
+     * @param agent    代理名
+     * @param message  用户消息
+     * @param threadId 线程ID，同一线程的运行共用会话历史并串行执行
+     * @return 运行开始执行时发出运行；未被接纳时以 {@link RunRejectedException} 结束
+     */
+    public Mono<AgentRun> start(String agent, String message, String threadId) {
+        purgeFinished();
+        AgentRun run = new AgentRun(UUID.randomUUID().toString().replace("-", ""), agent, threadId);
+        Sinks.Empty<Void> admitted = Sinks.empty();
+        runs.put(run.getRunId(), run);
+        started.increment();
+
+        // 获得名额后才加载代理并订阅其输出；订阅在新的虚拟线程上进行，代理构建未完成时在此等待
+        Flux<StreamEvent> execution = Flux.defer(() -> {
+            run.started();
+            admitted.tryEmitEmpty();
+            return output(run, message);
+        }).subscribeOn(runScheduler);
+        Flux<StreamEvent> admittedRun = admissionController != null ? admissionController.admit(() -> execution) : execution;
+        Flux<StreamEvent> gated = threadRunGate != null ? threadRunGate.run(threadId, () -> admittedRun) : admittedRun;
+        Mono<Void> cancelSignal = Mono.create(sink -> run.cancellation().onCancel(sink::success));
+        Flux<StreamEvent> source = gated
+                .takeUntilOther(cancelSignal)
+                .onErrorResume(e -> !(e instanceof RunRejectedException), e -> {
+                    if (run.failed(e)) {
+                        failed.increment();
+                        log.warn("[ThreadId {}] Run {} of {} failed", threadId, run.getRunId(), agent, e);
+                    }
+                    return Flux.just(StreamEvent.error(status(run)), StreamEvent.done());
+                })
+                .concatWith(Flux.defer(() -> run.getStatus() == AgentRun.Status.CANCELLED
+                        ? Flux.just(StreamEvent.error(status(run)), StreamEvent.done())
+                        : Flux.empty()));
+
+        // 持有者订阅贯穿整个运行，客户端是否订阅都不影响运行
+        streams.start(threadId, run.getRunId(), source).subscribe(
+                event -> run.event(),
+                e -> {
+                    if (e instanceof RunRejectedException rejection) {
+                        runs.remove(run.getRunId(), run);
+                        rejected.increment();
+                        admitted.tryEmitError(rejection);
+                    }
+                    else {
+                        run.failed(e);
+                        admitted.tryEmitEmpty();
+                    }
+                },
+                admitted::tryEmitEmpty);
+        return admitted.asMono().thenReturn(run);
+    }
+
+    /**
+     * @return 运行，不存在或已过保留期时为 null
+     */
+    public AgentRun get(String runId) {
+        return runs.get(runId);
+    }
+
+    /**
+     * 订阅运行的输出
+     *
+     * @param lastEventId 客户端收到的最后一个事件ID，为空时从头开始
+     * @return 先回放缓冲中的事件再跟随后续输出；运行未知或错过的事件已不在缓冲中时以
+     * {@link StreamNotResumableException} 结束
+     */
+    public Flux<ResumableEvent> events(String runId, String lastEventId) {
+        AgentRun run = runs.get(runId);
+        if (run == null) {
+            return Flux.error(new StreamNotResumableException("Run " + runId + " is unknown or has expired"));
+        }
+        String after = lastEventId != null && !lastEventId.isBlank() ? lastEventId : runId + ":0";
+        return streams.resume(run.getThreadId(), after);
+    }
+
+    /**
+     * 取消运行：排队中的运行不再执行，执行中的运行停止输出、中断工具调用并取消其子代理
+     *
+     * @return 运行，不存在时为 null
+     */
+    public AgentRun cancel(String runId) {
+        AgentRun run = runs.get(runId);
+        if (run == null) {
+            return null;
+        }
+        if (run.cancelled()) {
+            cancelled.increment();
+            log.info("[ThreadId {}] Cancelling run {} of {}", run.getThreadId(), runId, run.getAgent());
+            run.cancellation().cancel();
+            if (fanOut != null) {
+                fanOut.abort(run.getThreadId());
+            }
+        }
+        return run;
+    }
+
+    /**
+     * @return 当前统计
+     */
+    public Stats stats() {
+        int queued = 0;
+        int running = 0;
+        for (AgentRun run : runs.values()) {
+            switch (run.getStatus()) {
+                case QUEUED -> queued++;
+                case RUNNING -> running++;
+                default -> {
+                }
+            }
+        }
+        return new Stats(queued, running, runs.size(), started.sum(), rejected.sum(), completed.sum(), failed.sum(),
+                cancelled.sum());
+    }
+
+    /**
+     * 注册排队 / 执行中的运行数与按结果统计的运行数指标
+     *
+     * @param registry 指标注册表
+     * @param name     名称，作为 agent 标签
+     * @return this
+     */
+    public AgentRuns bindTo(MeterRegistry registry, String name) {
+        Gauge.builder("agent.runs.active", this, agentRuns -> agentRuns.stats().running())
+                .tag("agent", name).tag("status", "running").description("Runs currently executing").register(registry);
+        Gauge.builder("agent.runs.active", this, agentRuns -> agentRuns.stats().queued())
+                .tag("agent", name).tag("status", "queued").description("Runs waiting for admission").register(registry);
+        FunctionCounter.builder("agent.runs.finished", completed, LongAdder::sum)
+                .tag("agent", name).tag("status", "completed").register(registry);
+        FunctionCounter.builder("agent.runs.finished", failed, LongAdder::sum)
+                .tag("agent", name).tag("status", "failed").register(registry);
+        FunctionCounter.builder("agent.runs.finished", cancelled, LongAdder::sum)
+                .tag("agent", name).tag("status", "cancelled").register(registry);
+        FunctionCounter.builder("agent.runs.rejected", rejected, LongAdder::sum)
+                .tag("agent", name).register(registry);
+        return this;
+    }
+
+    /**
+     * 关闭运行线程池（进行中的运行随之中断）
+     */
+    public void close() {
+        runs.values().forEach(run -> cancel(run.getRunId()));
+        runScheduler.dispose();
+    }
+
+    // ==================== 内部实现 ====================
+
+    private Flux<StreamEvent> output(AgentRun run, String message) {
+        Agent agent = agentLoader.apply(run.getAgent());
+        RunnableConfig config = run.cancellation()
+                .attachTo(RunnableConfig.builder().threadId(run.getThreadId()))
+                .build();
+        Flux<NodeOutput> outputs;
+        try {
+            outputs = agent.stream(message, config);
+        }
+        catch (GraphRunnerException e) {
+            return Flux.error(e);
+        }
+        Flux<StreamEvent> events = projection.project(outputs
+                .doOnNext(run::record)
+                .doOnComplete(() -> {
+                    if (run.completed()) {
+                        completed.increment();
+                    }
+                }));
+        if (fanOut == null) {
+            return events;
+        }
+        return fanOut.merge(run.getThreadId(), events.map(List::of), projection::toSubAgentEvents)
+                .concatMapIterable(Function.identity());
+    }
+
+    private static String status(AgentRun run) {
+        AgentRun.View view = run.view();
+        ObjectNode status = MAPPER.createObjectNode();
+        status.put("run_id", view.runId());
+        status.put("status", view.status());
+        status.put("error", view.error());
+        return status.toString();
+    }
+
+    private void purgeFinished() {
+        Instant expiredBefore = Instant.now().minus(retention);
+        runs.values().removeIf(run -> run.finishedBefore(expiredBefore));
+    }
+
+    /**
+     * 运行统计
+     *
+     * @param queued    排队中的运行数
+     * @param running   执行中的运行数
+     * @param retained  内存中的运行数（含保留期内已结束的）
+     * @param started   累计提交的运行数
+     * @param rejected  累计未被接纳的运行数
+     * @param completed 累计正常结束（含审批中断）的运行数
+     * @param failed    累计失败的运行数
+     * @param cancelled 累计取消的运行数
+     */
+    public record Stats(int queued, int running, int retained, long started, long rejected, long completed,
+                        long failed, long cancelled) {
+    }
+
+    public static class Builder {
+        private Function<String, Agent> agentLoader;
+        private AgentStreamProjection projection;
+        private ResumableStreams streams;
+        private ThreadRunGate threadRunGate;
+        private AdmissionController admissionController;
+        private SubAgentFanOut fanOut;
+        private Duration retention = Duration.ofMinutes(30);
+
+        /**
+         * 按代理名取得代理（如 {@code AgentsStaticLoader::loadAgent}），在运行线程上调用，可以阻塞
+         */
+        public Builder agentLoader(Function<String, Agent> agentLoader) {
+            this.agentLoader = agentLoader;
+            return this;
+        }
+
+        public Builder projection(AgentStreamProjection projection) {
+            this.projection = projection;
+            return this;
+        }
+
+        /**
+         * 持有运行输出的可续传输出
+         */
+        public Builder streams(ResumableStreams streams) {
+            this.streams = streams;
+            return this;
+        }
+
+        /**
+         * 按线程串行，为 null 时同一线程的运行可以重叠
+         */
+        public Builder threadRunGate(ThreadRunGate threadRunGate) {
+            this.threadRunGate = threadRunGate;
+            return this;
+        }
+
+        /**
+         * 全局准入，为 null 时不限制并发运行数
+         */
+        public Builder admissionController(AdmissionController admissionController) {
+            this.admissionController = admissionController;
+            return this;
+        }
+
+        /**
+         * 子代理并行扇出，设置后子代理输出并入运行输出，取消时一并取消子代理
+         */
+        public Builder fanOut(SubAgentFanOut fanOut) {
+            this.fanOut = fanOut;
+            return this;
+        }
+
+        /**
+         * 结束的运行在内存中保留的时长，期间可查询状态与结果
+         */
+        public Builder retention(Duration retention) {
+            this.retention = retention;
+            return this;
+        }
+
+        public AgentRuns build() {
+            Objects.requireNonNull(agentLoader, "agentLoader cannot be null");
+            Objects.requireNonNull(projection, "projection cannot be null");
+            Objects.requireNonNull(streams, "streams cannot be null");
+            return new AgentRuns(this);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.lks.agent.run;
+
+import com.alibaba.cloud.ai.graph.NodeOutput;
+import com.alibaba.cloud.ai.graph.action.InterruptionMetadata;
+import com.alibaba.cloud.ai.graph.streaming.OutputType;
+import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.lks.common.stream.StreamEvent;
+import com.lks.common.stream.StreamingProjection;
+import com.lks.common.subagent.SubAgentOutput;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.util.List;
+
+/**
+ * 代理运行的输出投影
+ *
+ * 在模型 token（reasoning / answer）之外，每个节点完成时发出一个 node 事件（JSON）：
+ * 节点名、代理名、模型发起的工具调用、返回结果的工具、等待审批的工具。
+ * 子代理的模型 token 不逐个转发（并行子代理的 token 交错后没有可读性），只在其节点完成时发出 subagent 事件，
+ * 模型节点带完整回复。
+ */
+public class AgentStreamProjection extends StreamingProjection {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public AgentStreamProjection(StreamingProjection.Builder builder) {
+        super(builder);
+    }
+
+    @Override
+    protected List<StreamEvent> toEvents(NodeOutput output) {
+        if (isStreaming(output)) {
+            return super.toEvents(output);
+        }
+        return List.of(StreamEvent.node(describe(output).toString()));
+    }
+
+    /**
+     * 子代理的一条节点输出对应的事件，模型 token 不产生事件
+     */
+    public List<StreamEvent> toSubAgentEvents(SubAgentOutput output) {
+        if (isStreaming(output.output())) {
+            return List.of();
+        }
+        ObjectNode event = describe(output.output());
+        event.put("subagent", output.subagent());
+        event.put("tool_call_id", output.toolCallId());
+        if (output.output() instanceof StreamingOutput<?> streaming
+                && streaming.message() instanceof AssistantMessage message
+                && message.getText() != null && !message.getText().isEmpty()) {
+            event.put("text", message.getText());
+        }
+        return List.of(StreamEvent.subAgent(event.toString()));
+    }
+
+    private static boolean isStreaming(NodeOutput output) {
+        return output instanceof StreamingOutput<?> streaming
+                && (streaming.getOutputType() == OutputType.AGENT_MODEL_STREAMING
+                || streaming.getOutputType() == OutputType.AGENT_TOOL_STREAMING
+                || streaming.getOutputType() == OutputType.AGENT_HOOK_STREAMING
+                || streaming.getOutputType() == OutputType.GRAPH_NODE_STREAMING);
+    }
+
+    private static ObjectNode describe(NodeOutput output) {
+        ObjectNode event = MAPPER.createObjectNode();
+        event.put("node", output.node());
+        if (output.agent() != null) {
+            event.put("agent", output.agent());
+        }
+        Message message = output instanceof StreamingOutput<?> streaming ? streaming.message() : null;
+        if (message instanceof AssistantMessage assistant && assistant.hasToolCalls()) {
+            ArrayNode toolCalls = event.putArray("tool_calls");
+            assistant.getToolCalls().forEach(toolCall -> toolCalls.add(toolCall.name()));
+        }
+        if (message instanceof ToolResponseMessage toolResponse) {
+            ArrayNode tools = event.putArray("tools");
+            toolResponse.getResponses().forEach(response -> tools.add(response.name()));
+        }
+        if (output instanceof InterruptionMetadata interruption) {
+            ArrayNode approvals = event.putArray("approvals");
+            interruption.toolFeedbacks().forEach(feedback -> approvals.add(feedback.getName()));
+        }
+        return event;
+    }
+}
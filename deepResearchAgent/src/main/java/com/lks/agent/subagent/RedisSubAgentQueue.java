@@ -0,0 +1,436 @@
+package com.lks.agent.subagent;
+
+import com.alibaba.cloud.ai.graph.NodeOutput;
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.streaming.OutputType;
+import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
+import com.lks.common.stream.StreamingProjection;
+import com.lks.common.subagent.SubAgentDispatcher;
+import com.lks.common.subagent.SubAgentFanOut;
+import com.lks.common.subagent.SubAgentOutput;
+import com.lks.common.subagent.SubAgentTask;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.redisson.api.RFuture;
+import org.redisson.api.RStream;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.stream.StreamAddArgs;
+import org.redisson.api.stream.StreamCreateGroupArgs;
+import org.redisson.api.stream.StreamReadArgs;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 基于 Redis Streams 的子代理工作队列（投递端）
+ *
+ * 每次 task 调用作为一条消息追加到任务 Stream（prefix + tasks），运行相同代理定义的执行节点以消费组
+ * （{@link RedisSubAgentWorker}）领取并运行；执行节点把开始、子代理输出与结果追加到该调用专属的回复 Stream
+ * （prefix + reply:任务ID），投递端阻塞读取回复 Stream，输出到达即并入父运行，读到结果时返回。
+ * <ul>
+ *     <li>超过 queueTimeout 没有执行节点开始运行、或开始后超过 runTimeout + claimTimeout 没有结果时返回错误结果</li>
+ *     <li>执行节点宕机后由其他节点在 claimTimeout 后重新领取，回复 Stream 中出现新一轮 started，截止时间随之顺延</li>
+ *     <li>父运行中止或放弃等待时写入取消标记（prefix + cancel:任务ID），执行节点据此停止运行；尚未领取的消息
+ *     被领取时直接确认丢弃（不由投递端删除，避免消费组中留下指向已删除消息的待确认记录）</li>
+ * </ul>
+ * 同一调用可能因重新领取而运行不止一次（至少一次语义），投递端只取第一个结果。
+ */
+public class RedisSubAgentQueue implements SubAgentDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisSubAgentQueue.class);
+
+    // 任务消息字段
+    static final String FIELD_ID = "id";
+    static final String FIELD_THREAD = "thread";
+    static final String FIELD_CALL = "call";
+    static final String FIELD_SUBAGENT = "subagent";
+    static final String FIELD_DESCRIPTION = "description";
+
+    // 回复消息字段
+    static final String FIELD_TYPE = "type";
+    static final String FIELD_ATTEMPT = "attempt";
+    static final String FIELD_WORKER = "worker";
+    static final String FIELD_NODE = "node";
+    static final String FIELD_AGENT = "agent";
+    static final String FIELD_TEXT = "text";
+    static final String FIELD_REASONING = "reasoning";
+    static final String FIELD_DATA = "data";
+
+    static final String TYPE_STARTED = "started";
+    static final String TYPE_CHUNK = "chunk";
+    static final String TYPE_NODE = "node";
+    static final String TYPE_RESULT = "result";
+
+    private final RedissonClient redisson;
+    private final String keyPrefix;
+    private final String group;
+    private final Duration queueTimeout;
+    private final Duration runTimeout;
+    private final Duration claimTimeout;
+    private final Duration pollTimeout;
+
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder unclaimed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private volatile Timer queueWait;
+
+    private RedisSubAgentQueue(Builder builder) {
+        this.redisson = builder.redisson;
+        this.keyPrefix = builder.keyPrefix;
+        this.group = builder.group;
+        this.queueTimeout = builder.queueTimeout;
+        this.runTimeout = builder.runTimeout;
+        this.claimTimeout = builder.claimTimeout;
+        this.pollTimeout = builder.pollTimeout;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String dispatch(SubAgentTask task, Consumer<SubAgentOutput> progress) throws InterruptedException {
+        String taskId = UUID.randomUUID().toString();
+        RStream<String, String> replies = replies(taskId);
+        Map<String, String> fields = new HashMap<>();
+        fields.put(FIELD_ID, taskId);
+        fields.put(FIELD_THREAD, task.threadId());
+        fields.put(FIELD_CALL, task.toolCallId());
+        fields.put(FIELD_SUBAGENT, task.subagent());
+        fields.put(FIELD_DESCRIPTION, task.description());
+        await(tasks().addAsync(StreamAddArgs.entries(fields)));
+        log.debug("[ThreadId {}] Dispatched sub-agent {} ({}) as task {}", task.threadId(), task.subagent(), task.toolCallId(), taskId);
+
+        long enqueuedAt = System.nanoTime();
+        long deadline = enqueuedAt + queueTimeout.toNanos();
+        boolean started = false;
+        boolean finished = false;
+        StreamMessageId cursor = new StreamMessageId(0, 0);
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    if (started) {
+                        timedOut.increment();
+                        return SubAgentFanOut.ERROR_PREFIX + "timed out after " + runTimeout;
+                    }
+                    unclaimed.increment();
+                    log.warn("[ThreadId {}] No worker picked up sub-agent {} ({}) within {}", task.threadId(), task.subagent(),
+                            task.toolCallId(), queueTimeout);
+                    return SubAgentFanOut.ERROR_PREFIX + "no worker picked up the task within " + queueTimeout;
+                }
+                Duration wait = Duration.ofNanos(Math.min(remaining, pollTimeout.toNanos())).plusMillis(1);
+                Map<StreamMessageId, Map<String, String>> messages = await(replies.readAsync(
+                        StreamReadArgs.greaterThan(cursor).count(256).timeout(wait)));
+                if (messages == null || messages.isEmpty()) {
+                    continue;
+                }
+                List<Map.Entry<StreamMessageId, Map<String, String>>> entries = new ArrayList<>(messages.entrySet());
+                entries.sort(Map.Entry.comparingByKey((a, b) -> a.getId0() != b.getId0()
+                        ? Long.compare(a.getId0(), b.getId0())
+                        : Long.compare(a.getId1(), b.getId1())));
+                for (Map.Entry<StreamMessageId, Map<String, String>> entry : entries) {
+                    cursor = entry.getKey();
+                    Map<String, String> reply = entry.getValue();
+                    switch (Objects.toString(reply.get(FIELD_TYPE), "")) {
+                        case TYPE_STARTED -> {
+                            int attempt = Integer.parseInt(reply.getOrDefault(FIELD_ATTEMPT, "1"));
+                            if (!started) {
+                                recordQueueWait(System.nanoTime() - enqueuedAt);
+                            }
+                            if (attempt > 1) {
+                                retried.increment();
+                                log.info("[ThreadId {}] Sub-agent {} ({}) restarted on {} (attempt {})", task.threadId(),
+                                        task.subagent(), task.toolCallId(), reply.get(FIELD_WORKER), attempt);
+                            }
+                            started = true;
+                            // 执行节点超时后仍需写回结果，再留出一个领取超时的余量
+                            deadline = System.nanoTime() + runTimeout.plus(claimTimeout).toNanos();
+                        }
+                        case TYPE_CHUNK, TYPE_NODE -> progress.accept(
+                                new SubAgentOutput(task.threadId(), task.toolCallId(), task.subagent(), decode(reply)));
+                        case TYPE_RESULT -> {
+                            finished = true;
+                            String result = Objects.toString(reply.get(FIELD_DATA), "");
+                            if (result.startsWith(SubAgentFanOut.ERROR_PREFIX + "timed out")) {
+                                timedOut.increment();
+                            }
+                            else if (result.startsWith("Error")) {
+                                failed.increment();
+                            }
+                            else {
+                                succeeded.increment();
+                            }
+                            return result;
+                        }
+                        default -> log.debug("Ignoring reply {} of task {}", reply.get(FIELD_TYPE), taskId);
+                    }
+                }
+            }
+        }
+        finally {
+            if (!finished) {
+                cancel(taskId);
+            }
+            replies.deleteAsync();
+        }
+    }
+
+    /**
+     * 放弃等待：写入取消标记，执行节点续约时读到标记后停止运行，尚未开始的在领取时丢弃
+     */
+    private void cancel(String taskId) {
+        cancelled.increment();
+        redisson.getBucket(cancelKey(taskId), StringCodec.INSTANCE).setAsync("1", replyTtl().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 注册指标：agent.subagent.remote.tasks（outcome 标签：success / error / timeout / unclaimed / cancelled / retried）、
+     * agent.subagent.remote.queue_wait（从投递到执行节点开始运行的等待时间）
+     *
+     * @param name gate 标签
+     */
+    public RedisSubAgentQueue bindTo(MeterRegistry registry, String name) {
+        registerOutcome(registry, name, "success", succeeded);
+        registerOutcome(registry, name, "error", failed);
+        registerOutcome(registry, name, "timeout", timedOut);
+        registerOutcome(registry, name, "unclaimed", unclaimed);
+        registerOutcome(registry, name, "cancelled", cancelled);
+        registerOutcome(registry, name, "retried", retried);
+        this.queueWait = Timer.builder("agent.subagent.remote.queue_wait")
+                .tag("gate", name)
+                .description("Time from dispatching a sub-agent task until a worker starts it")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(queueTimeout)
+                .register(registry);
+        return this;
+    }
+
+    private void recordQueueWait(long nanos) {
+        Timer timer = queueWait;
+        if (timer != null) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static void registerOutcome(MeterRegistry registry, String name, String outcome, LongAdder counter) {
+        FunctionCounter.builder("agent.subagent.remote.tasks", counter, LongAdder::sum)
+                .tag("gate", name).tag("outcome", outcome)
+                .description("Sub-agent tasks dispatched through the Redis work queue").register(registry);
+    }
+
+    // ==================== 供执行节点使用 ====================
+
+    /**
+     * 创建消费组（任务 Stream 不存在时一并创建），已存在时忽略
+     */
+    void ensureGroup() {
+        try {
+            tasks().createGroup(StreamCreateGroupArgs.name(group).id(StreamMessageId.ALL).makeStream());
+        }
+        catch (RuntimeException e) {
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    RStream<String, String> tasks() {
+        return redisson.getStream(keyPrefix + "tasks", StringCodec.INSTANCE);
+    }
+
+    RStream<String, String> replies(String taskId) {
+        return redisson.getStream(keyPrefix + "reply:" + taskId, StringCodec.INSTANCE);
+    }
+
+    String cancelKey(String taskId) {
+        return keyPrefix + "cancel:" + taskId;
+    }
+
+    RedissonClient redisson() {
+        return redisson;
+    }
+
+    String group() {
+        return group;
+    }
+
+    Duration claimTimeout() {
+        return claimTimeout;
+    }
+
+    Duration pollTimeout() {
+        return pollTimeout;
+    }
+
+    /**
+     * @return 回复 Stream 的过期时间：投递端读完会删除，投递端消失时由过期兜底
+     */
+    Duration replyTtl() {
+        return queueTimeout.plus(runTimeout).plus(claimTimeout.multipliedBy(2));
+    }
+
+    static SubAgentTask task(Map<String, String> fields) {
+        return new SubAgentTask(fields.get(FIELD_THREAD), fields.get(FIELD_CALL), fields.get(FIELD_SUBAGENT),
+                Objects.toString(fields.get(FIELD_DESCRIPTION), ""));
+    }
+
+    /**
+     * 子代理输出转为回复消息：只回传模型流式分片（回答与思考过程）与节点完成事件，状态不跨节点传输
+     *
+     * @return 无需回传时为 null
+     */
+    static Map<String, String> encode(NodeOutput output) {
+        Map<String, String> fields = new HashMap<>();
+        if (output.node() != null) {
+            fields.put(FIELD_NODE, output.node());
+        }
+        if (output.agent() != null) {
+            fields.put(FIELD_AGENT, output.agent());
+        }
+        if (output instanceof StreamingOutput<?> streaming) {
+            if (streaming.getOutputType() != OutputType.AGENT_MODEL_STREAMING
+                    || !(streaming.message() instanceof AssistantMessage message)) {
+                return null;
+            }
+            Object reasoning = message.getMetadata().get(StreamingProjection.DEFAULT_REASONING_KEY);
+            String text = message.getText();
+            if ((text == null || text.isEmpty()) && (reasoning == null || reasoning.toString().isEmpty())) {
+                return null;
+            }
+            fields.put(FIELD_TYPE, TYPE_CHUNK);
+            fields.put(FIELD_TEXT, Objects.toString(text, ""));
+            fields.put(FIELD_REASONING, Objects.toString(reasoning, ""));
+            return fields;
+        }
+        fields.put(FIELD_TYPE, TYPE_NODE);
+        return fields;
+    }
+
+    /**
+     * 回复消息还原为节点输出：模型分片还原为流式输出，与本地运行时的输出一样可被 StreamingProjection 投影
+     */
+    static NodeOutput decode(Map<String, String> fields) {
+        String node = fields.get(FIELD_NODE);
+        String agent = fields.get(FIELD_AGENT);
+        if (!TYPE_CHUNK.equals(fields.get(FIELD_TYPE))) {
+            return NodeOutput.of(node, agent, new OverAllState(), null);
+        }
+        String reasoning = fields.get(FIELD_REASONING);
+        Message message = AssistantMessage.builder()
+                .content(Objects.toString(fields.get(FIELD_TEXT), ""))
+                .properties(reasoning == null || reasoning.isEmpty()
+                        ? Map.of()
+                        : Map.of(StreamingProjection.DEFAULT_REASONING_KEY, reasoning))
+                .build();
+        return new StreamingOutput<>(message, node, agent, new OverAllState(), OutputType.AGENT_MODEL_STREAMING);
+    }
+
+    /**
+     * 等待 Redisson 异步调用完成；等待中被中断时抛出 InterruptedException
+     */
+    static <T> T await(RFuture<T> future) throws InterruptedException {
+        try {
+            return future.toCompletableFuture().get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+        }
+    }
+
+    public static class Builder {
+        private RedissonClient redisson;
+        private String keyPrefix = "research:subagent:";
+        private String group = "workers";
+        private Duration queueTimeout = Duration.ofMinutes(10);
+        private Duration runTimeout = Duration.ofMinutes(10);
+        private Duration claimTimeout = Duration.ofSeconds(60);
+        private Duration pollTimeout = Duration.ofSeconds(1);
+
+        public Builder redisson(RedissonClient redisson) {
+            this.redisson = redisson;
+            return this;
+        }
+
+        /**
+         * 键前缀，默认 research:subagent:
+         */
+        public Builder keyPrefix(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+            return this;
+        }
+
+        /**
+         * 执行节点的消费组名，默认 workers
+         */
+        public Builder group(String group) {
+            this.group = group;
+            return this;
+        }
+
+        /**
+         * 投递后等待执行节点开始运行的最长时间，默认 10 分钟
+         */
+        public Builder queueTimeout(Duration queueTimeout) {
+            this.queueTimeout = queueTimeout;
+            return this;
+        }
+
+        /**
+         * 执行节点上单个子代理的最长运行时间，应与执行节点的扇出超时一致，默认 10 分钟
+         */
+        public Builder runTimeout(Duration runTimeout) {
+            this.runTimeout = runTimeout;
+            return this;
+        }
+
+        /**
+         * 领取超时：执行节点超过该时长没有续约（宕机、长时间停顿）时，其他节点可重新领取，默认 60 秒
+         */
+        public Builder claimTimeout(Duration claimTimeout) {
+            this.claimTimeout = claimTimeout;
+            return this;
+        }
+
+        /**
+         * 单次阻塞读的超时，默认 1 秒
+         */
+        public Builder pollTimeout(Duration pollTimeout) {
+            this.pollTimeout = pollTimeout;
+            return this;
+        }
+
+        public RedisSubAgentQueue build() {
+            Objects.requireNonNull(redisson, "redisson cannot be null");
+            Objects.requireNonNull(keyPrefix, "keyPrefix cannot be null");
+            Objects.requireNonNull(group, "group cannot be null");
+            for (Duration duration : List.of(queueTimeout, runTimeout, claimTimeout, pollTimeout)) {
+                if (duration == null || duration.isZero() || duration.isNegative()) {
+                    throw new IllegalArgumentException("timeouts must be positive");
+                }
+            }
+            return new RedisSubAgentQueue(this);
+        }
+    }
+}
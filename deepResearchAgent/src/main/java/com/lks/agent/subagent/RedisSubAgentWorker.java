@@ -0,0 +1,458 @@
+package com.lks.agent.subagent;
+
+import com.lks.common.subagent.SubAgentFanOut;
+import com.lks.common.subagent.SubAgentTask;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.redisson.api.AutoClaimResult;
+import org.redisson.api.PendingEntry;
+import org.redisson.api.RStream;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.stream.StreamAddArgs;
+import org.redisson.api.stream.StreamReadGroupArgs;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis Streams 子代理工作队列的执行节点
+ *
+ * 以消费组成员身份领取 {@link RedisSubAgentQueue} 投递的 task 调用，用本进程注册的同名子代理运行
+ * （{@link SubAgentFanOut#execute}），输出与结果写回该调用的回复 Stream，写完后确认（XACK）并删除任务消息。
+ * <ul>
+ *     <li>同时运行的调用数不超过 concurrency，有空闲名额时才读取新消息，积压留在 Stream 中由其他节点领取</li>
+ *     <li>运行期间每 claimTimeout / 3 续约一次（XCLAIM JUSTID 重置空闲时间）；节点宕机后续约停止，
+ *     其他节点在读取新消息前以 XAUTOCLAIM 领取空闲超过 claimTimeout 的消息重跑，超过 maxAttempts 次的返回错误结果</li>
+ *     <li>续约时检查取消标记，投递端已放弃的调用立即中断</li>
+ *     <li>关闭时中断仍在运行的调用但不确认，由其他节点在领取超时后重跑</li>
+ * </ul>
+ * 代理尚未构建完成（本进程还没有可执行的子代理）时不领取消息。
+ */
+public class RedisSubAgentWorker implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisSubAgentWorker.class);
+
+    private final RedisSubAgentQueue queue;
+    private final SubAgentFanOut fanOut;
+    private final String consumer;
+    private final int concurrency;
+    private final int maxAttempts;
+    private final Semaphore slots;
+    private final Map<StreamMessageId, Execution> executions = new ConcurrentHashMap<>();
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder reclaimed = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final AtomicLong backlog = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread poller;
+    private ScheduledExecutorService maintenance;
+
+    private RedisSubAgentWorker(Builder builder) {
+        this.queue = builder.queue;
+        this.fanOut = builder.fanOut;
+        this.consumer = builder.consumer;
+        this.concurrency = builder.concurrency;
+        this.maxAttempts = builder.maxAttempts;
+        this.slots = new Semaphore(builder.concurrency);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 创建消费组并开始领取
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        queue.ensureGroup();
+        running = true;
+        poller = Thread.ofVirtual().name("subagent-worker-poll").start(this::poll);
+        long interval = Math.max(queue.claimTimeout().toMillis() / 3, 100);
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "subagent-worker-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Sub-agent worker {} started (concurrency {}, claim timeout {})", consumer, concurrency, queue.claimTimeout());
+    }
+
+    /**
+     * 停止领取，中断仍在运行的调用（不确认，由其他节点重跑）
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        maintenance.shutdownNow();
+        poller.interrupt();
+        for (Execution execution : executions.values()) {
+            execution.interrupt();
+        }
+        log.info("Sub-agent worker {} stopped, {} running tasks left to other workers", consumer, executions.size());
+    }
+
+    /**
+     * @return 正在运行的调用数
+     */
+    public int running() {
+        return executions.size();
+    }
+
+    /**
+     * 注册指标：agent.subagent.worker.running（本节点正在运行的调用数）、
+     * agent.subagent.worker.backlog（任务 Stream 中尚未完成的调用数，含其他节点正在运行的）、
+     * agent.subagent.worker.tasks（outcome 标签：completed / cancelled / reclaimed / abandoned）
+     *
+     * @param name gate 标签
+     */
+    public RedisSubAgentWorker bindTo(MeterRegistry registry, String name) {
+        Gauge.builder("agent.subagent.worker.running", executions, Map::size)
+                .tag("gate", name).description("Dispatched sub-agent tasks running on this worker").register(registry);
+        Gauge.builder("agent.subagent.worker.backlog", backlog, AtomicLong::get)
+                .tag("gate", name).description("Sub-agent tasks queued or running across all workers").register(registry);
+        registerOutcome(registry, name, "completed", completed);
+        registerOutcome(registry, name, "cancelled", cancelled);
+        registerOutcome(registry, name, "reclaimed", reclaimed);
+        registerOutcome(registry, name, "abandoned", abandoned);
+        return this;
+    }
+
+    // ==================== 内部实现 ====================
+
+    /**
+     * 有空闲名额时先领取其他节点放弃的消息（每个续约周期一次），再阻塞读取新消息，一次最多读取空闲名额数条
+     */
+    private void poll() {
+        RStream<String, String> tasks = queue.tasks();
+        long interval = TimeUnit.MILLISECONDS.toNanos(Math.max(queue.claimTimeout().toMillis() / 3, 100));
+        long nextReclaim = System.nanoTime();
+        while (running) {
+            int free = 0;
+            try {
+                if (fanOut.subAgentTypes().isEmpty()) {
+                    Thread.sleep(queue.pollTimeout().toMillis());
+                    continue;
+                }
+                slots.acquire();
+                free = 1 + slots.drainPermits();
+                if (System.nanoTime() - nextReclaim >= 0) {
+                    nextReclaim = System.nanoTime() + interval;
+                    free -= reclaim(tasks, free);
+                    if (free == 0) {
+                        continue;
+                    }
+                }
+                Map<StreamMessageId, Map<String, String>> messages = RedisSubAgentQueue.await(tasks.readGroupAsync(queue.group(), consumer,
+                        StreamReadGroupArgs.neverDelivered().count(free).timeout(queue.pollTimeout())));
+                if (messages != null) {
+                    for (Map.Entry<StreamMessageId, Map<String, String>> entry : messages.entrySet()) {
+                        launch(entry.getKey(), entry.getValue(), 1);
+                        free--;
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Sub-agent worker {} failed to read tasks: {}", consumer, e.getMessage());
+                recreateGroup(e);
+                pause();
+            }
+            finally {
+                slots.release(free);
+            }
+        }
+    }
+
+    /**
+     * 定期续约、检查取消标记，并刷新积压数
+     */
+    private void maintain() {
+        try {
+            RStream<String, String> tasks = queue.tasks();
+            if (!executions.isEmpty()) {
+                StreamMessageId[] ids = executions.keySet().toArray(StreamMessageId[]::new);
+                tasks.fastClaim(queue.group(), consumer, 0, TimeUnit.MILLISECONDS, ids);
+                String[] cancelKeys = executions.values().stream().map(execution -> queue.cancelKey(execution.taskId)).toArray(String[]::new);
+                Map<String, Object> flagged = queue.redisson().getBuckets(StringCodec.INSTANCE).get(cancelKeys);
+                for (Execution execution : executions.values()) {
+                    if (flagged.containsKey(queue.cancelKey(execution.taskId))) {
+                        execution.cancel();
+                    }
+                }
+            }
+            backlog.set(tasks.size());
+        }
+        catch (RuntimeException e) {
+            if (running) {
+                log.warn("Sub-agent worker {} maintenance failed: {}", consumer, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 领取空闲超过领取超时的消息（原执行节点宕机或长时间停顿），超过最大次数的写回错误结果
+     *
+     * @param free 可用名额
+     * @return 启动运行的调用数（占用的名额数）
+     */
+    private int reclaim(RStream<String, String> tasks, int free) {
+        AutoClaimResult<String, String> result = tasks.autoClaim(queue.group(), consumer,
+                queue.claimTimeout().toMillis(), TimeUnit.MILLISECONDS, StreamMessageId.MIN, free);
+        int launched = 0;
+        for (Map.Entry<StreamMessageId, Map<String, String>> entry : result.getMessages().entrySet()) {
+            StreamMessageId id = entry.getKey();
+            Map<String, String> fields = entry.getValue();
+            if (fields == null || fields.get(RedisSubAgentQueue.FIELD_ID) == null) {
+                // 消息已被投递端删除（调用已取消）
+                tasks.ack(queue.group(), id);
+                continue;
+            }
+            List<PendingEntry> pending = tasks.listPending(queue.group(), id, id, 1);
+            int attempt = pending.isEmpty() ? 1 : (int) pending.get(0).getLastTimeDelivered();
+            if (attempt > maxAttempts) {
+                abandon(id, fields, attempt - 1);
+                continue;
+            }
+            reclaimed.increment();
+            log.info("Sub-agent worker {} reclaimed task {} (attempt {})", consumer, fields.get(RedisSubAgentQueue.FIELD_ID), attempt);
+            launch(id, fields, attempt);
+            launched++;
+        }
+        return launched;
+    }
+
+    private void abandon(StreamMessageId id, Map<String, String> fields, int attempts) {
+        String taskId = fields.get(RedisSubAgentQueue.FIELD_ID);
+        abandoned.increment();
+        log.warn("Sub-agent task {} abandoned after {} attempts", taskId, attempts);
+        RStream<String, String> replies = queue.replies(taskId);
+        replies.add(StreamAddArgs.entries(Map.of(
+                RedisSubAgentQueue.FIELD_TYPE, RedisSubAgentQueue.TYPE_RESULT,
+                RedisSubAgentQueue.FIELD_DATA, SubAgentFanOut.ERROR_PREFIX + "worker lost " + attempts + " times, giving up")));
+        replies.expire(queue.replyTtl());
+        complete(id);
+    }
+
+    /**
+     * 占用一个名额，在虚拟线程上运行领取到的调用
+     */
+    private void launch(StreamMessageId id, Map<String, String> fields, int attempt) {
+        Execution execution = new Execution(fields.get(RedisSubAgentQueue.FIELD_ID));
+        executions.put(id, execution);
+        Thread.ofVirtual().name("subagent-worker-" + execution.taskId).start(() -> {
+            try {
+                execute(id, fields, attempt, execution);
+            }
+            finally {
+                executions.remove(id, execution);
+                slots.release();
+            }
+        });
+    }
+
+    private void execute(StreamMessageId id, Map<String, String> fields, int attempt, Execution execution) {
+        execution.bind(Thread.currentThread());
+        SubAgentTask task = RedisSubAgentQueue.task(fields);
+        try {
+            if (queue.redisson().getBucket(queue.cancelKey(execution.taskId), StringCodec.INSTANCE).isExists()) {
+                cancelled.increment();
+                complete(id);
+                return;
+            }
+            ReplyWriter writer = new ReplyWriter(queue.replies(execution.taskId), queue.replyTtl(), execution.taskId);
+            writer.send(Map.of(RedisSubAgentQueue.FIELD_TYPE, RedisSubAgentQueue.TYPE_STARTED,
+                    RedisSubAgentQueue.FIELD_ATTEMPT, Integer.toString(attempt),
+                    RedisSubAgentQueue.FIELD_WORKER, consumer));
+            String result = fanOut.execute(task, output -> writer.send(RedisSubAgentQueue.encode(output.output())));
+            // 取消或关闭时的中断已生效，清除中断标记后再访问 Redis
+            Thread.interrupted();
+            if (!running) {
+                // 节点关闭：不写结果、不确认，交给其他节点重跑
+                writer.abandon();
+                return;
+            }
+            if (execution.isCancelled()) {
+                writer.discard(queue.claimTimeout());
+                cancelled.increment();
+                complete(id);
+                return;
+            }
+            writer.send(Map.of(RedisSubAgentQueue.FIELD_TYPE, RedisSubAgentQueue.TYPE_RESULT,
+                    RedisSubAgentQueue.FIELD_DATA, Objects.toString(result, "")));
+            if (!writer.close(queue.claimTimeout())) {
+                // 结果没有写成功：不确认，领取超时后由其他节点重跑
+                log.warn("[ThreadId {}] Failed to report result of sub-agent task {}", task.threadId(), execution.taskId);
+                return;
+            }
+            completed.increment();
+            complete(id);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (RuntimeException e) {
+            log.warn("[ThreadId {}] Sub-agent task {} failed on worker {}", task.threadId(), execution.taskId, consumer, e);
+        }
+    }
+
+    /**
+     * 确认并删除任务消息，Stream 中只留下排队与运行中的调用
+     */
+    private void complete(StreamMessageId id) {
+        RStream<String, String> tasks = queue.tasks();
+        tasks.ack(queue.group(), id);
+        tasks.remove(id);
+    }
+
+    private void recreateGroup(RuntimeException e) {
+        if (e.getMessage() != null && e.getMessage().contains("NOGROUP")) {
+            try {
+                queue.ensureGroup();
+            }
+            catch (RuntimeException ignored) {
+                // 下一轮重试
+            }
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(queue.pollTimeout().toMillis());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void registerOutcome(MeterRegistry registry, String name, String outcome, LongAdder counter) {
+        FunctionCounter.builder("agent.subagent.worker.tasks", counter, LongAdder::sum)
+                .tag("gate", name).tag("outcome", outcome)
+                .description("Dispatched sub-agent tasks handled by this worker").register(registry);
+    }
+
+    /**
+     * 一次领取到的调用
+     */
+    private static final class Execution {
+        private final String taskId;
+        private volatile Thread thread;
+        private volatile boolean cancelled;
+
+        private Execution(String taskId) {
+            this.taskId = taskId;
+        }
+
+        private void bind(Thread thread) {
+            this.thread = thread;
+        }
+
+        /**
+         * 只中断一次：之后运行线程还要写回、确认，不能再被打断
+         */
+        private void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                interrupt();
+            }
+        }
+
+        private boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void interrupt() {
+            Thread current = thread;
+            if (current != null) {
+                current.interrupt();
+            }
+        }
+    }
+
+    public static class Builder {
+        private RedisSubAgentQueue queue;
+        private SubAgentFanOut fanOut;
+        private String consumer = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        private int concurrency = 4;
+        private int maxAttempts = 3;
+
+        /**
+         * 工作队列（键前缀、消费组与超时取自这里）
+         */
+        public Builder queue(RedisSubAgentQueue queue) {
+            this.queue = queue;
+            return this;
+        }
+
+        /**
+         * 运行子代理的扇出执行器，子代理按 {@link SubAgentFanOut#interceptor} 注册的类型查找
+         */
+        public Builder fanOut(SubAgentFanOut fanOut) {
+            this.fanOut = fanOut;
+            return this;
+        }
+
+        /**
+         * 消费者名，每个节点唯一，默认 pid@host + 随机后缀
+         */
+        public Builder consumer(String consumer) {
+            this.consumer = consumer;
+            return this;
+        }
+
+        /**
+         * 本节点同时运行的调用数上限，默认 4
+         */
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * 单个调用最多运行的次数（含执行节点宕机后的重跑），默认 3
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public RedisSubAgentWorker build() {
+            Objects.requireNonNull(queue, "queue cannot be null");
+            Objects.requireNonNull(fanOut, "fanOut cannot be null");
+            Objects.requireNonNull(consumer, "consumer cannot be null");
+            if (concurrency <= 0 || maxAttempts <= 0) {
+                throw new IllegalArgumentException("concurrency and maxAttempts must be positive");
+            }
+            return new RedisSubAgentWorker(this);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.lks.agent.subagent;
+
+import org.redisson.api.RStream;
+import org.redisson.api.stream.StreamAddArgs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 一次子代理运行的回复写入器
+ *
+ * 子代理输出在模型流式回调中到达，不能阻塞；这里把回复放入队列，由一个虚拟线程按顺序追加到回复 Stream。
+ * 上一次写入尚未完成时到达的相邻模型分片（同一节点、同一通道）合并为一条消息，Redis 往返越慢合并越多，
+ * 逐 token 的输出不会变成逐 token 的 XADD。
+ */
+final class ReplyWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplyWriter.class);
+
+    /** 结束标记，按引用比较 */
+    private static final Map<String, String> END = Collections.unmodifiableMap(new HashMap<>());
+
+    private final RStream<String, String> stream;
+    private final Duration ttl;
+    private final LinkedBlockingQueue<Map<String, String>> pending = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean failed;
+
+    ReplyWriter(RStream<String, String> stream, Duration ttl, String name) {
+        this.stream = stream;
+        this.ttl = ttl;
+        this.thread = Thread.ofVirtual().name("subagent-reply-" + name).start(this::drain);
+    }
+
+    /**
+     * 追加一条回复，不阻塞
+     */
+    void send(Map<String, String> reply) {
+        if (reply != null) {
+            pending.add(reply);
+        }
+    }
+
+    /**
+     * 写完已追加的全部回复后结束
+     *
+     * @return 是否在限时内全部写入成功
+     */
+    boolean close(Duration timeout) throws InterruptedException {
+        pending.add(END);
+        thread.join(timeout);
+        return !thread.isAlive() && !failed;
+    }
+
+    /**
+     * 丢弃尚未写入的回复并结束（运行交给其他节点重跑，已写入的回复保留）
+     */
+    void abandon() {
+        pending.clear();
+        pending.add(END);
+    }
+
+    /**
+     * 丢弃尚未写入的回复，结束后删除回复 Stream（投递端已放弃等待）
+     */
+    void discard(Duration timeout) throws InterruptedException {
+        abandon();
+        thread.join(timeout);
+        stream.delete();
+    }
+
+    private void drain() {
+        List<Map<String, String>> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(pending.take());
+                pending.drainTo(batch);
+                boolean written = false;
+                boolean ended = false;
+                for (Map<String, String> reply : coalesce(batch)) {
+                    if (reply == END) {
+                        ended = true;
+                        break;
+                    }
+                    stream.add(StreamAddArgs.entries(reply));
+                    written = true;
+                }
+                if (written) {
+                    // 每批写入后刷新过期时间：投递端读完即删除，之后迟到的写入会重新创建 Stream
+                    stream.expire(ttl);
+                }
+                if (ended) {
+                    return;
+                }
+                batch.clear();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (RuntimeException e) {
+            failed = true;
+            log.warn("Failed to write sub-agent reply to {}: {}", stream.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * 合并相邻的模型分片；思考过程之后接回答可以合并（投影时先出思考再出回答），反之不合并以保持顺序
+     */
+    private static List<Map<String, String>> coalesce(List<Map<String, String>> batch) {
+        List<Map<String, String>> merged = new ArrayList<>(batch.size());
+        for (Map<String, String> reply : batch) {
+            Map<String, String> last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && isChunk(last) && isChunk(reply)
+                    && Objects.equals(last.get(RedisSubAgentQueue.FIELD_NODE), reply.get(RedisSubAgentQueue.FIELD_NODE))
+                    && Objects.equals(last.get(RedisSubAgentQueue.FIELD_AGENT), reply.get(RedisSubAgentQueue.FIELD_AGENT))
+                    && (last.get(RedisSubAgentQueue.FIELD_TEXT).isEmpty() || reply.get(RedisSubAgentQueue.FIELD_REASONING).isEmpty())) {
+                Map<String, String> combined = new HashMap<>(last);
+                combined.put(RedisSubAgentQueue.FIELD_TEXT,
+                        last.get(RedisSubAgentQueue.FIELD_TEXT) + reply.get(RedisSubAgentQueue.FIELD_TEXT));
+                combined.put(RedisSubAgentQueue.FIELD_REASONING,
+                        last.get(RedisSubAgentQueue.FIELD_REASONING) + reply.get(RedisSubAgentQueue.FIELD_REASONING));
+                merged.set(merged.size() - 1, combined);
+            }
+            else {
+                merged.add(reply);
+            }
+        }
+        return merged;
+    }
+
+    private static boolean isChunk(Map<String, String> reply) {
+        return RedisSubAgentQueue.TYPE_CHUNK.equals(reply.get(RedisSubAgentQueue.FIELD_TYPE));
+    }
+}
@@ -0,0 +1,294 @@
+package com.lks.agent.subagent;
+
+import com.lks.common.subagent.SubAgentFanOut;
+import com.lks.common.subagent.SubAgentOutput;
+import com.lks.common.subagent.SubAgentTask;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.stream.StreamReadGroupArgs;
+import org.redisson.config.Config;
+import redis.embedded.RedisServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 以本地 redis-server 验证分布式子代理执行：执行节点宕机后由其他节点重新领取、超过最大次数后放弃、投递端取消后中断运行。
+ * 宕机的执行节点是单独启动的 JVM，运行中被强制杀死（不确认、不再续约）。
+ */
+class RedisSubAgentWorkerTest {
+
+    private static final Duration CLAIM_TIMEOUT = Duration.ofSeconds(1);
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(200);
+
+    private static RedisServer redis;
+    private static int port;
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private RedissonClient redisson;
+    private String keyPrefix;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redis = RedisServer.newRedisServer()
+                .bind("127.0.0.1")
+                .port(port)
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        redis.start();
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (redis != null) {
+            redis.stop();
+        }
+    }
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        for (AutoCloseable resource : resources.reversed()) {
+            resource.close();
+        }
+    }
+
+    @Test
+    void taskOfKilledWorkerIsReclaimedByAnotherWorker() throws Exception {
+        RedisSubAgentQueue queue = queue();
+        CompletableFuture<String> result = dispatch(queue, "compare vector databases");
+
+        Process victim = startWorkerJvm("victim");
+        awaitLine(victim, "STARTED");
+        victim.destroyForcibly().waitFor(10, TimeUnit.SECONDS);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ScriptedFanOut fanOut = new ScriptedFanOut("survivor", Duration.ZERO);
+        worker(queue, fanOut, "survivor", 3).bindTo(registry, "test");
+
+        assertThat(result.get(30, TimeUnit.SECONDS)).isEqualTo("survivor: compare vector databases");
+        assertThat(registry.get("agent.subagent.worker.tasks").tag("outcome", "reclaimed").functionCounter().count())
+                .isEqualTo(1);
+        await().atMost(Duration.ofSeconds(5)).until(() -> queue.tasks().size() == 0);
+    }
+
+    @Test
+    void taskIsAbandonedAfterMaxAttempts() throws Exception {
+        RedisSubAgentQueue queue = queue();
+        queue.ensureGroup();
+        CompletableFuture<String> result = dispatch(queue, "summarize");
+
+        // 领取后即消失的执行节点：读取消息但从不确认、不续约
+        await().atMost(Duration.ofSeconds(5)).until(() -> !queue.tasks()
+                .readGroup(queue.group(), "ghost", StreamReadGroupArgs.neverDelivered().count(1)).isEmpty());
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ScriptedFanOut fanOut = new ScriptedFanOut("survivor", Duration.ZERO);
+        worker(queue, fanOut, "survivor", 1).bindTo(registry, "test");
+
+        assertThat(result.get(30, TimeUnit.SECONDS))
+                .startsWith(SubAgentFanOut.ERROR_PREFIX)
+                .contains("worker lost 1 times");
+        assertThat(fanOut.executions).isZero();
+        assertThat(registry.get("agent.subagent.worker.tasks").tag("outcome", "abandoned").functionCounter().count())
+                .isEqualTo(1);
+        await().atMost(Duration.ofSeconds(5)).until(() -> queue.tasks().size() == 0);
+    }
+
+    @Test
+    void cancelFlagInterruptsRunningTask() throws Exception {
+        RedisSubAgentQueue queue = queue();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ScriptedFanOut fanOut = new ScriptedFanOut("worker", Duration.ofMinutes(5));
+        worker(queue, fanOut, "worker", 3).bindTo(registry, "test");
+
+        Thread dispatcher = Thread.ofVirtual().start(() -> {
+            try {
+                queue.dispatch(new SubAgentTask("thread-1", "call-1", "research-agent", "long research"), output -> {
+                });
+            }
+            catch (InterruptedException e) {
+                // 投递端放弃等待，写入取消标记
+            }
+        });
+        assertThat(fanOut.started.await(10, TimeUnit.SECONDS)).isTrue();
+        dispatcher.interrupt();
+
+        assertThat(fanOut.interrupted.await(10, TimeUnit.SECONDS)).isTrue();
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(
+                registry.get("agent.subagent.worker.tasks").tag("outcome", "cancelled").functionCounter().count())
+                .isEqualTo(1));
+        await().atMost(Duration.ofSeconds(5)).until(() -> queue.tasks().size() == 0);
+    }
+
+    // ==================== 辅助 ====================
+
+    private RedisSubAgentQueue queue() {
+        if (redisson == null) {
+            redisson = redisson(port);
+            resources.add(redisson::shutdown);
+        }
+        keyPrefix = "test:" + UUID.randomUUID() + ":";
+        return queue(redisson, keyPrefix);
+    }
+
+    private RedisSubAgentWorker worker(RedisSubAgentQueue queue, SubAgentFanOut fanOut, String consumer, int maxAttempts) {
+        RedisSubAgentWorker worker = RedisSubAgentWorker.builder()
+                .queue(queue)
+                .fanOut(fanOut)
+                .consumer(consumer)
+                .concurrency(2)
+                .maxAttempts(maxAttempts)
+                .build();
+        worker.start();
+        resources.add(worker);
+        return worker;
+    }
+
+    private static CompletableFuture<String> dispatch(RedisSubAgentQueue queue, String description) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Thread.ofVirtual().start(() -> {
+            try {
+                result.complete(queue.dispatch(new SubAgentTask("thread-1", "call-1", "research-agent", description),
+                        output -> {
+                        }));
+            }
+            catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private Process startWorkerJvm(String consumer) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                WorkerJvm.class.getName(), Integer.toString(port), keyPrefix, consumer)
+                .redirectErrorStream(true)
+                .start();
+        resources.add(process::destroyForcibly);
+        return process;
+    }
+
+    private static void awaitLine(Process process, String expected) throws Exception {
+        CompletableFuture<Void> seen = CompletableFuture.runAsync(() -> {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.equals(expected)) {
+                        return;
+                    }
+                }
+                throw new IllegalStateException("worker JVM exited before printing " + expected);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        seen.get(60, TimeUnit.SECONDS);
+    }
+
+    private static RedisSubAgentQueue queue(RedissonClient redisson, String keyPrefix) {
+        return RedisSubAgentQueue.builder()
+                .redisson(redisson)
+                .keyPrefix(keyPrefix)
+                .queueTimeout(Duration.ofSeconds(60))
+                .runTimeout(Duration.ofSeconds(60))
+                .claimTimeout(CLAIM_TIMEOUT)
+                .pollTimeout(POLL_TIMEOUT)
+                .build();
+    }
+
+    private static RedissonClient redisson(int port) {
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+        return Redisson.create(config);
+    }
+
+    /**
+     * 不运行真实代理的扇出执行器：按固定耗时返回“节点名: 描述”，被中断时返回取消结果
+     */
+    static class ScriptedFanOut extends SubAgentFanOut {
+
+        private final String name;
+        private final Duration duration;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+        private volatile int executions;
+
+        ScriptedFanOut(String name, Duration duration) {
+            super(SubAgentFanOut.builder());
+            this.name = name;
+            this.duration = duration;
+        }
+
+        @Override
+        public Set<String> subAgentTypes() {
+            return Set.of("research-agent");
+        }
+
+        @Override
+        public String execute(SubAgentTask task, Consumer<SubAgentOutput> progress) {
+            executions++;
+            started.countDown();
+            try {
+                Thread.sleep(duration.toMillis());
+            }
+            catch (InterruptedException e) {
+                interrupted.countDown();
+                return CANCELLED;
+            }
+            return name + ": " + task.description();
+        }
+    }
+
+    /**
+     * 单独 JVM 中的执行节点：领取到任务后打印 STARTED 并一直运行，等待被强制杀死
+     */
+    public static final class WorkerJvm {
+
+        public static void main(String[] args) throws InterruptedException {
+            RedissonClient redisson = redisson(Integer.parseInt(args[0]));
+            ScriptedFanOut fanOut = new ScriptedFanOut(args[2], Duration.ofMinutes(5)) {
+                @Override
+                public String execute(SubAgentTask task, Consumer<SubAgentOutput> progress) {
+                    System.out.println("STARTED");
+                    System.out.flush();
+                    return super.execute(task, progress);
+                }
+            };
+            RedisSubAgentWorker.builder()
+                    .queue(queue(redisson, args[1]))
+                    .fanOut(fanOut)
+                    .consumer(args[2])
+                    .build()
+                    .start();
+            Thread.sleep(Long.MAX_VALUE);
+        }
+    }
+}
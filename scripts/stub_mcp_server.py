@@ -0,0 +1,177 @@
+#!/usr/bin/env python3
+"""
+本地 MCP stub 服务器（stdio 或 Streamable HTTP，无第三方依赖）
+
+用于在没有 uv / npx / 外部 API 的环境下验证 MCP 进程池、HTTP 传输与工具调用链路：
+默认按换行分隔的 JSON-RPC 读取 stdin；指定 --http 时以 Streamable HTTP 监听 POST /mcp（JSON 响应），
+实现 initialize / ping / tools/list / tools/call，
+工具名与真实服务器一致（jina_search、jina_reader、search_papers、download_paper、list_papers、read_paper），
+返回确定性的假数据。
+
+参数：
+  --latency-ms N      每次工具调用的模拟耗时（毫秒），默认 200
+  --crash-after N     处理 N 次工具调用后进程退出，用于验证健康检查与重启，默认不退出
+  --sequential        串行处理请求（模拟单线程服务器），默认并发处理
+  --tools PREFIXES    只暴露名称以这些前缀开头的工具（逗号分隔），默认全部
+  --http PORT         以 Streamable HTTP 方式监听该端口，而不是 stdio
+  --slow-ratio R      按该比例随机挑出工具调用额外延迟 --slow-ms 毫秒，模拟长尾，默认 0
+  --slow-ms N         长尾调用的额外耗时（毫秒），默认 3000
+"""
+import argparse
+import json
+import os
+import random
+import sys
+import threading
+import time
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+TOOLS = [
+    ("jina_search", "Search the web", {"query": {"type": "string"}}),
+    ("jina_reader", "Read a web page", {"url": {"type": "string"}}),
+    ("search_papers", "Search arXiv papers", {"query": {"type": "string"}, "max_results": {"type": "integer"}}),
+    ("download_paper", "Download an arXiv paper", {"paper_id": {"type": "string"}}),
+    ("list_papers", "List downloaded papers", {}),
+    ("read_paper", "Read a downloaded paper", {"paper_id": {"type": "string"}}),
+]
+
+write_lock = threading.Lock()
+call_count = 0
+count_lock = threading.Lock()
+
+
+def send(message):
+    with write_lock:
+        sys.stdout.write(json.dumps(message, ensure_ascii=False) + "\n")
+        sys.stdout.flush()
+
+
+def result(request_id, payload):
+    return {"jsonrpc": "2.0", "id": request_id, "result": payload}
+
+
+def call_tool(request_id, params, args):
+    global call_count
+    latency = args.latency_ms
+    if args.slow_ratio > 0 and random.random() < args.slow_ratio:
+        latency += args.slow_ms
+    time.sleep(latency / 1000.0)
+    name = params.get("name")
+    arguments = params.get("arguments") or {}
+    text = json.dumps({"tool": name, "arguments": arguments, "pid": os.getpid()}, ensure_ascii=False)
+    with count_lock:
+        call_count += 1
+        crash = args.crash_after > 0 and call_count >= args.crash_after
+    return result(request_id, {"content": [{"type": "text", "text": text}], "isError": False}), crash
+
+
+def handle(message, args):
+    response, crash = respond(message, args)
+    if response is not None:
+        send(response)
+    if crash:
+        os._exit(1)
+
+
+def respond(message, args):
+    """返回 (响应, 是否应退出)，通知返回 None"""
+    method = message.get("method")
+    request_id = message.get("id")
+    params = message.get("params") or {}
+    if request_id is None:
+        # 通知（如 notifications/initialized）无需响应
+        return None, False
+    if method == "initialize":
+        return result(request_id, {
+            "protocolVersion": params.get("protocolVersion", "2024-11-05"),
+            "capabilities": {"tools": {"listChanged": False}},
+            "serverInfo": {"name": "stub-mcp-server", "version": "1.0.0"},
+        }), False
+    if method == "ping":
+        return result(request_id, {}), False
+    if method == "tools/list":
+        prefixes = tuple(args.tools.split(",")) if args.tools else ("",)
+        return result(request_id, {"tools": [
+            {"name": name, "description": description,
+             "inputSchema": {"type": "object", "properties": properties}}
+            for name, description, properties in TOOLS if name.startswith(prefixes)
+        ]}), False
+    if method == "tools/call":
+        return call_tool(request_id, params, args)
+    return {"jsonrpc": "2.0", "id": request_id,
+            "error": {"code": -32601, "message": "Method not found: " + str(method)}}, False
+
+
+def serve_http(args):
+    """Streamable HTTP：POST /mcp 直接返回 JSON 响应，不提供 GET 事件流（返回 405）"""
+
+    class Handler(BaseHTTPRequestHandler):
+        protocol_version = "HTTP/1.1"
+
+        def do_POST(self):
+            body = self.rfile.read(int(self.headers.get("Content-Length", 0)))
+            response, crash = respond(json.loads(body), args)
+            if response is None:
+                self.send_response(202)
+                self.send_header("Content-Length", "0")
+                self.end_headers()
+            else:
+                payload = json.dumps(response, ensure_ascii=False).encode("utf-8")
+                self.send_response(200)
+                self.send_header("Content-Type", "application/json")
+                self.send_header("Mcp-Session-Id", "stub-session")
+                self.send_header("Content-Length", str(len(payload)))
+                self.end_headers()
+                self.wfile.write(payload)
+            if crash:
+                os._exit(1)
+
+        def do_GET(self):
+            self.send_response(405)
+            self.send_header("Content-Length", "0")
+            self.end_headers()
+
+        def do_DELETE(self):
+            self.send_response(200)
+            self.send_header("Content-Length", "0")
+            self.end_headers()
+
+        def log_message(self, format, *log_args):
+            pass
+
+    class Server(ThreadingHTTPServer):
+        # 默认 backlog 只有 5，并发建连时 SYN 被丢弃会让客户端等待 1 秒重传
+        request_queue_size = 256
+        daemon_threads = True
+
+    Server(("127.0.0.1", args.http), Handler).serve_forever()
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--latency-ms", type=int, default=200)
+    parser.add_argument("--crash-after", type=int, default=0)
+    parser.add_argument("--sequential", action="store_true")
+    parser.add_argument("--tools", default="")
+    parser.add_argument("--http", type=int, default=0)
+    parser.add_argument("--slow-ratio", type=float, default=0.0)
+    parser.add_argument("--slow-ms", type=int, default=3000)
+    args = parser.parse_args()
+
+    if args.http:
+        serve_http(args)
+        return
+
+    for line in sys.stdin:
+        line = line.strip()
+        if not line:
+            continue
+        message = json.loads(line)
+        if args.sequential or message.get("method") != "tools/call":
+            handle(message, args)
+        else:
+            threading.Thread(target=handle, args=(message, args), daemon=True).start()
+
+
+if __name__ == "__main__":
+    main()
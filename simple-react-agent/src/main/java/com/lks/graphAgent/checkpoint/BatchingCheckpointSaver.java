@@ -0,0 +1,48 @@
+package com.lks.graphAgent.checkpoint;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 支持批量追加的检查点保存器
+ *
+ * 供 {@link TieredCheckpointSaver} 回写时一次提交同一线程积压的多个检查点，减少 Redis 往返；
+ * 并提供线程租约，持有租约的节点可以直接使用 L1 中的检查点，不必每次读取 Redis 校验。
+ */
+public interface BatchingCheckpointSaver extends BaseCheckpointSaver {
+
+    /**
+     * 按顺序追加同一线程的多个检查点
+     *
+     * @param config      包含 threadId 的配置
+     * @param checkpoints 待追加的检查点，最旧的在前
+     */
+    void putAll(RunnableConfig config, List<Checkpoint> checkpoints) throws Exception;
+
+    /**
+     * 以 owner 身份取得或续约线程的租约，同时返回线程最新检查点的ID
+     *
+     * 租约有效期间其他 owner 取不到该线程的租约。一次往返完成，只读取记录最新ID的小键，不读取、不解码检查点记录。
+     *
+     * @param config   包含 threadId 的配置
+     * @param owner    持有者标识（每个 L1 一个）
+     * @param duration 租期
+     * @return 租约结果
+     */
+    Lease lease(RunnableConfig config, String owner, Duration duration) throws Exception;
+
+    /**
+     * 一次取得租约的结果
+     *
+     * @param granted            是否取得（或续上）租约
+     * @param continued          租约此前一直由该 owner 持有（未过期），期间其他节点不可能取得租约
+     * @param latestCheckpointId 线程最新检查点的ID；没有检查点，或数据早于最新ID键写入时为 null
+     * @param remaining          未取得时当前持有者租约的剩余时长
+     */
+    record Lease(boolean granted, boolean continued, String latestCheckpointId, Duration remaining) {
+    }
+}
@@ -0,0 +1,482 @@
+package com.lks.graphAgent.checkpoint;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lks.common.checkpoint.CheckpointRetentionPolicy;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RListAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 检查点后台裁剪与内存占用统计
+ *
+ * 在独立的后台线程上按固定间隔扫描一个或多个 {@link CompactRedisSaver}（分片时每个分片一个）的全部线程：
+ * <ul>
+ *     <li>用 SCAN 分批遍历线程键（不使用 KEYS），每批 batchSize 个键的 LLEN / MEMORY USAGE / PTTL / 最后写入时间在一次管道中完成</li>
+ *     <li>检查点数超出策略的线程经 {@link CompactRedisSaver#compact(String)} 裁剪，正在运行的线程跳过，留给下一轮</li>
+ *     <li>策略设置了 maxAge 但键没有过期时间（保留策略上线前的旧数据）时补设过期时间</li>
+ *     <li>配置了内存预算且总占用超出时，按保存器记录的最后写入时间删除最久未写入的线程，直到回到预算内</li>
+ * </ul>
+ *
+ * 扫描与裁剪都是阻塞调用，只在本类的后台线程或调用方线程上执行，不占用 Redisson / Netty 的事件循环。
+ */
+public class CheckpointCompactor implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CheckpointCompactor.class);
+
+    private final Supplier<List<CompactRedisSaver>> savers;
+    private final int batchSize;
+    private final long memoryBudget;
+    private final ScheduledExecutorService executor;
+
+    /** 线程上次裁剪后的检查点数，检查点数未变化时不重复读取 */
+    private final Cache<String, Long> compactedSizes = Caffeine.newBuilder().maximumSize(100_000).build();
+
+    private final LongAdder prunedCheckpoints = new LongAdder();
+    private final LongAdder reclaimedBytes = new LongAdder();
+    private final LongAdder evictedThreads = new LongAdder();
+    private final LongAdder busySkips = new LongAdder();
+    private volatile Pass lastPass;
+    private volatile Timer passTimer;
+
+    private CheckpointCompactor(Builder builder) {
+        this.savers = builder.savers;
+        this.batchSize = builder.batchSize;
+        this.memoryBudget = builder.memoryBudget;
+        if (builder.interval.isZero()) {
+            this.executor = null;
+        }
+        else {
+            this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "checkpoint-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = builder.interval.toMillis();
+            executor.scheduleWithFixedDelay(this::runQuietly, builder.initialDelay.toMillis(), period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 执行一轮裁剪；与后台任务互斥
+     *
+     * @return 本轮结果
+     */
+    public synchronized Pass runOnce() {
+        long start = System.nanoTime();
+        long[] totals = new long[6];  // threads, checkpoints, bytes, compacted, pruned, reclaimed
+        long[] busy = new long[1];
+        List<Candidate> candidates = new ArrayList<>();
+        scan((saver, chunk) -> {
+            List<ThreadFootprint> missingTtl = new ArrayList<>();
+            for (ThreadFootprint thread : chunk) {
+                CheckpointRetentionPolicy policy = saver.policyFor(thread.threadId());
+                ThreadFootprint current = thread;
+                if (needsCompaction(saver, thread, policy)) {
+                    try {
+                        CompactRedisSaver.Compaction compaction = saver.compact(thread.threadId());
+                        if (compaction == null) {
+                            busy[0]++;
+                        }
+                        else {
+                            compactedSizes.put(sizeKey(saver, thread.threadId()), (long) compaction.after());
+                            if (compaction.pruned() > 0) {
+                                totals[3]++;
+                                totals[4] += compaction.pruned();
+                                totals[5] += compaction.bytesBefore() - compaction.bytesAfter();
+                                current = new ThreadFootprint(thread.threadId(), compaction.after(),
+                                        Math.max(0, thread.bytes() - (compaction.bytesBefore() - compaction.bytesAfter())),
+                                        policy.expires() ? policy.maxAge().toMillis() : thread.ttlMillis(),
+                                        thread.lastWriteMillis());
+                            }
+                        }
+                    }
+                    catch (Exception e) {
+                        log.warn("[{}] checkpoint compaction failed on {}: {}", thread.threadId(), saver.name(), e.getMessage());
+                    }
+                }
+                else if (policy.expires() && thread.ttlMillis() < 0) {
+                    missingTtl.add(thread);
+                }
+                totals[0]++;
+                totals[1] += current.checkpoints();
+                totals[2] += current.bytes();
+                if (memoryBudget > 0) {
+                    candidates.add(new Candidate(saver, current));
+                }
+            }
+            expire(saver, missingTtl);
+        });
+
+        long evicted = 0;
+        long bytes = totals[2];
+        if (memoryBudget > 0 && bytes > memoryBudget) {
+            // 按最后写入时间从旧到新删除；不依赖过期时间，全部保留（不过期）时同样有效
+            candidates.sort(Comparator.comparingLong(candidate -> candidate.thread().lastWriteMillis()));
+            for (Iterator<Candidate> it = candidates.iterator(); it.hasNext() && bytes > memoryBudget; ) {
+                Candidate candidate = it.next();
+                ThreadFootprint thread = candidate.thread();
+                if (candidate.saver().evict(thread.threadId())) {
+                    compactedSizes.invalidate(sizeKey(candidate.saver(), thread.threadId()));
+                    bytes -= thread.bytes();
+                    totals[0]--;
+                    totals[1] -= thread.checkpoints();
+                    evicted++;
+                }
+                else {
+                    busy[0]++;
+                }
+            }
+            if (bytes > memoryBudget) {
+                log.warn("Checkpoints still use {} bytes after eviction, over the budget of {} bytes", bytes, memoryBudget);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        Pass pass = new Pass((int) totals[0], totals[1], bytes, (int) totals[3], totals[4], totals[5], evicted,
+                busy[0], Duration.ofNanos(elapsed));
+        prunedCheckpoints.add(totals[4]);
+        reclaimedBytes.add(totals[5]);
+        evictedThreads.add(evicted);
+        busySkips.add(busy[0]);
+        Timer timer = passTimer;
+        if (timer != null) {
+            timer.record(elapsed, TimeUnit.NANOSECONDS);
+        }
+        lastPass = pass;
+        if (pass.prunedCheckpoints() > 0 || evicted > 0) {
+            log.info("Checkpoint compaction: {} threads, pruned {} checkpoints ({} bytes), evicted {} threads in {} ms",
+                    pass.threads(), pass.prunedCheckpoints(), pass.reclaimedBytes(), evicted, pass.duration().toMillis());
+        }
+        return pass;
+    }
+
+    /**
+     * 统计检查点占用，不做任何修改
+     *
+     * @param top 返回占用最大的线程数
+     * @return 线程数、检查点数、总字节数与占用最大的线程
+     */
+    public Footprint footprint(int top) {
+        Map<String, long[]> shards = new LinkedHashMap<>();
+        PriorityQueue<ThreadFootprint> largest = new PriorityQueue<>(Comparator.comparingLong(ThreadFootprint::bytes));
+        scan((saver, chunk) -> {
+            long[] totals = shards.computeIfAbsent(saver.name(), name -> new long[3]);
+            for (ThreadFootprint thread : chunk) {
+                totals[0]++;
+                totals[1] += thread.checkpoints();
+                totals[2] += thread.bytes();
+                if (top > 0) {
+                    largest.add(thread);
+                    if (largest.size() > top) {
+                        largest.poll();
+                    }
+                }
+            }
+        });
+        List<ThreadFootprint> sorted = new ArrayList<>(largest);
+        sorted.sort(Comparator.comparingLong(ThreadFootprint::bytes).reversed());
+        List<ShardFootprint> perShard = new ArrayList<>();
+        long threads = 0;
+        long checkpoints = 0;
+        long bytes = 0;
+        for (CompactRedisSaver saver : savers.get()) {
+            long[] totals = shards.getOrDefault(saver.name(), new long[3]);
+            perShard.add(new ShardFootprint(saver.name(), (int) totals[0], totals[1], totals[2]));
+            threads += totals[0];
+            checkpoints += totals[1];
+            bytes += totals[2];
+        }
+        return new Footprint((int) threads, checkpoints, bytes, memoryBudget, perShard, sorted);
+    }
+
+    /**
+     * @return 最近一轮裁剪的结果，尚未执行过时为 null
+     */
+    public Pass lastPass() {
+        return lastPass;
+    }
+
+    /**
+     * 注册裁剪轮次、裁剪检查点数、回收字节数、删除线程数、忙碌跳过次数与最近一轮占用指标
+     *
+     * @param registry 指标注册表
+     * @param name     名称，作为 saver 标签
+     * @return this
+     */
+    public CheckpointCompactor bindTo(MeterRegistry registry, String name) {
+        FunctionCounter.builder("agent.checkpoint.retention.pruned", prunedCheckpoints, LongAdder::sum)
+                .tag("saver", name).description("Checkpoints removed by retention policies").register(registry);
+        FunctionCounter.builder("agent.checkpoint.retention.reclaimed", reclaimedBytes, LongAdder::sum)
+                .tag("saver", name).baseUnit("bytes").register(registry);
+        FunctionCounter.builder("agent.checkpoint.retention.evicted", evictedThreads, LongAdder::sum)
+                .tag("saver", name).description("Threads deleted to stay within the memory budget").register(registry);
+        FunctionCounter.builder("agent.checkpoint.retention.busy", busySkips, LongAdder::sum)
+                .tag("saver", name).description("Threads skipped because a run held them").register(registry);
+        Gauge.builder("agent.checkpoint.retention.threads", this, compactor -> compactor.lastValue(Pass::threads))
+                .tag("saver", name).register(registry);
+        Gauge.builder("agent.checkpoint.retention.checkpoints", this, compactor -> compactor.lastValue(Pass::checkpoints))
+                .tag("saver", name).register(registry);
+        Gauge.builder("agent.checkpoint.retention.bytes", this, compactor -> compactor.lastValue(Pass::bytes))
+                .tag("saver", name).baseUnit("bytes").register(registry);
+        this.passTimer = Timer.builder("agent.checkpoint.retention.pass")
+                .tag("saver", name).description("Duration of a compaction pass").register(registry);
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    // ==================== 内部实现 ====================
+
+    private void runQuietly() {
+        try {
+            runOnce();
+        }
+        catch (Exception e) {
+            log.warn("Checkpoint compaction pass failed", e);
+        }
+    }
+
+    private double lastValue(ToDoubleFunction<Pass> value) {
+        Pass pass = lastPass;
+        return pass != null ? value.applyAsDouble(pass) : Double.NaN;
+    }
+
+    private boolean needsCompaction(CompactRedisSaver saver, ThreadFootprint thread, CheckpointRetentionPolicy policy) {
+        if (!policy.prunes() || thread.checkpoints() <= 1) {
+            return false;
+        }
+        Long compacted = compactedSizes.getIfPresent(sizeKey(saver, thread.threadId()));
+        if (compacted != null && compacted == thread.checkpoints()) {
+            return false;
+        }
+        return policy.stepBoundariesOnly() || thread.checkpoints() > policy.keepLast();
+    }
+
+    private static String sizeKey(CompactRedisSaver saver, String threadId) {
+        return saver.name() + "/" + threadId;
+    }
+
+    /**
+     * 逐个保存器 SCAN 遍历全部线程键，每批键的检查点数、内存占用、剩余过期时间与最后写入时间经一次管道读取
+     */
+    private void scan(BiConsumer<CompactRedisSaver, List<ThreadFootprint>> chunkHandler) {
+        for (CompactRedisSaver saver : savers.get()) {
+            Iterator<String> keys = saver.redisson().getKeys()
+                    .getKeysByPattern(CompactRedisSaver.CHECKPOINT_PREFIX + "*", batchSize)
+                    .iterator();
+            List<String> chunk = new ArrayList<>(batchSize);
+            while (keys.hasNext()) {
+                chunk.add(keys.next());
+                if (chunk.size() >= batchSize || !keys.hasNext()) {
+                    chunkHandler.accept(saver, measure(saver.redisson(), chunk));
+                    chunk.clear();
+                }
+            }
+        }
+    }
+
+    private List<ThreadFootprint> measure(RedissonClient redisson, List<String> keys) {
+        RBatch batch = redisson.createBatch();
+        List<RFuture<Integer>> sizes = new ArrayList<>(keys.size());
+        List<RFuture<Long>> memory = new ArrayList<>(keys.size());
+        List<RFuture<Long>> ttls = new ArrayList<>(keys.size());
+        List<RFuture<String>> written = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            RListAsync<byte[]> list = batch.getList(key, ByteArrayCodec.INSTANCE);
+            sizes.add(list.sizeAsync());
+            memory.add(list.sizeInMemoryAsync());
+            ttls.add(list.remainTimeToLiveAsync());
+            String threadId = key.substring(CompactRedisSaver.CHECKPOINT_PREFIX.length());
+            written.add(batch.<String>getBucket(CompactRedisSaver.writtenKey(threadId), StringCodec.INSTANCE).getAsync());
+        }
+        batch.execute();
+        List<ThreadFootprint> result = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            int size = sizes.get(i).toCompletableFuture().join();
+            if (size == 0) {
+                // 扫描与读取之间已被删除或过期
+                continue;
+            }
+            String threadId = keys.get(i).substring(CompactRedisSaver.CHECKPOINT_PREFIX.length());
+            String writtenAt = written.get(i).toCompletableFuture().join();
+            result.add(new ThreadFootprint(threadId, size, memory.get(i).toCompletableFuture().join(),
+                    ttls.get(i).toCompletableFuture().join(), writtenAt != null ? Long.parseLong(writtenAt) : 0));
+        }
+        return result;
+    }
+
+    private void expire(CompactRedisSaver saver, List<ThreadFootprint> threads) {
+        if (threads.isEmpty()) {
+            return;
+        }
+        RBatch batch = saver.redisson().createBatch();
+        for (ThreadFootprint thread : threads) {
+            Duration maxAge = saver.policyFor(thread.threadId()).maxAge();
+            batch.getList(CompactRedisSaver.CHECKPOINT_PREFIX + thread.threadId(), ByteArrayCodec.INSTANCE)
+                    .expireAsync(maxAge);
+            batch.getBucket(CompactRedisSaver.writtenKey(thread.threadId())).expireAsync(maxAge);
+        }
+        batch.execute();
+    }
+
+    private record Candidate(CompactRedisSaver saver, ThreadFootprint thread) {
+    }
+
+    /**
+     * 单个分片的占用
+     *
+     * @param shard       分片名
+     * @param threads     线程数
+     * @param checkpoints 检查点数
+     * @param bytes       总字节数
+     */
+    public record ShardFootprint(String shard, int threads, long checkpoints, long bytes) {
+    }
+
+    /**
+     * 单个线程的占用
+     *
+     * @param threadId        线程ID
+     * @param checkpoints     检查点数
+     * @param bytes           Redis 内存占用（MEMORY USAGE）
+     * @param ttlMillis       剩余过期时间，-1 表示不过期
+     * @param lastWriteMillis 最后一次写入的时间戳（毫秒），没有记录（早于写入时间键上线的数据）时为 0，最先被删除
+     */
+    public record ThreadFootprint(String threadId, long checkpoints, long bytes, long ttlMillis, long lastWriteMillis) {
+    }
+
+    /**
+     * 检查点占用汇总
+     *
+     * @param threads      线程数
+     * @param checkpoints  检查点数
+     * @param bytes        总字节数
+     * @param memoryBudget 内存预算，0 表示未设置
+     * @param shards       各分片的占用（未分片时只有一项）
+     * @param largest      占用最大的线程（降序）
+     */
+    public record Footprint(int threads, long checkpoints, long bytes, long memoryBudget, List<ShardFootprint> shards,
+                            List<ThreadFootprint> largest) {
+    }
+
+    /**
+     * 一轮裁剪的结果
+     *
+     * @param threads           本轮结束时的线程数
+     * @param checkpoints       本轮结束时的检查点数
+     * @param bytes             本轮结束时的总字节数（按裁剪回收量估算）
+     * @param compactedThreads  被裁剪的线程数
+     * @param prunedCheckpoints 裁剪掉的检查点数
+     * @param reclaimedBytes    裁剪回收的记录字节数
+     * @param evictedThreads    因超出内存预算被删除的线程数
+     * @param busyThreads       因正在运行被跳过的线程数
+     * @param duration          耗时
+     */
+    public record Pass(int threads, long checkpoints, long bytes, int compactedThreads, long prunedCheckpoints,
+                       long reclaimedBytes, long evictedThreads, long busyThreads, Duration duration) {
+    }
+
+    public static class Builder {
+        private Supplier<List<CompactRedisSaver>> savers;
+        private Duration interval = Duration.ofMinutes(5);
+        private Duration initialDelay = Duration.ofMinutes(1);
+        private int batchSize = 100;
+        private long memoryBudget;
+
+        /**
+         * 要裁剪的保存器
+         */
+        public Builder saver(CompactRedisSaver saver) {
+            Objects.requireNonNull(saver, "saver cannot be null");
+            this.savers = () -> List.of(saver);
+            return this;
+        }
+
+        /**
+         * 要裁剪的保存器列表，每轮重新获取（分片在线增加后自动纳入）
+         */
+        public Builder savers(Supplier<List<CompactRedisSaver>> savers) {
+            this.savers = savers;
+            return this;
+        }
+
+        /**
+         * 后台裁剪间隔，默认 5 分钟；0 表示不启动后台任务，只能手动触发
+         */
+        public Builder interval(Duration interval) {
+            this.interval = interval;
+            return this;
+        }
+
+        /**
+         * 启动后首轮裁剪的延迟，默认 1 分钟
+         */
+        public Builder initialDelay(Duration initialDelay) {
+            this.initialDelay = initialDelay;
+            return this;
+        }
+
+        /**
+         * 每次 SCAN 与管道处理的键数，默认 100
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * 检查点总内存预算（字节），超出时删除最久未写入的线程；0 表示不限
+         */
+        public Builder memoryBudget(long memoryBudget) {
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        public CheckpointCompactor build() {
+            Objects.requireNonNull(savers, "saver cannot be null");
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("batchSize must be positive");
+            }
+            if (interval.isNegative() || memoryBudget < 0) {
+                throw new IllegalArgumentException("interval and memoryBudget must not be negative");
+            }
+            return new CheckpointCompactor(this);
+        }
+    }
+}
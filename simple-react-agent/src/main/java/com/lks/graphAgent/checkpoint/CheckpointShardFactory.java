@@ -0,0 +1,18 @@
+package com.lks.graphAgent.checkpoint;
+
+import java.util.List;
+
+/**
+ * 按地址创建检查点分片，编码、压缩与保留策略等设置与已有分片一致
+ */
+@FunctionalInterface
+public interface CheckpointShardFactory {
+
+    /**
+     * @param name     分片名，决定分片在哈希环上的位置
+     * @param address  主节点地址（redis://host:port）
+     * @param replicas 只读副本地址，可为空
+     * @return 连接到该分片的保存器
+     */
+    CompactRedisSaver create(String name, String address, List<String> replicas);
+}
@@ -0,0 +1,765 @@
+package com.lks.graphAgent.checkpoint;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.lks.common.checkpoint.BinaryValueCodec;
+import com.lks.common.checkpoint.CheckpointCodec;
+import com.lks.common.checkpoint.CheckpointCodecStats;
+import com.lks.common.checkpoint.CheckpointCompression;
+import com.lks.common.checkpoint.CheckpointRetention;
+import com.lks.common.checkpoint.CheckpointRetentionPolicy;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucket;
+import org.redisson.api.RBucketAsync;
+import org.redisson.api.RList;
+import org.redisson.api.RListAsync;
+import org.redisson.api.RLock;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 紧凑格式的 Redis 检查点保存器
+ *
+ * 与框架 RedisSaver 每次 put 都把整个检查点列表重新序列化成 Base64 字符串不同，
+ * 这里每个线程对应一个 Redis List，每个检查点是一条独立的二进制记录（最新的在尾部）：
+ * <ul>
+ *     <li>追加检查点只需 LRANGE 读取最近 {@code snapshotInterval} 条记录并 RPUSH 一条新记录</li>
+ *     <li>记录默认为增量（DELTA），只保存相对上一个检查点新追加的消息</li>
+ *     <li>每隔 {@code snapshotInterval} 条写一次全量快照（FULL），限制还原时的增量链长度</li>
+ * </ul>
+ *
+ * 每次追加在同一批命令中更新线程的最新检查点ID键与最后写入时间键：{@link #lease} 只读取前者，供 L1 以一次小往返判断本地副本是否最新；
+ * 后者供 {@link CheckpointCompactor} 在超出内存预算时先删除最久未写入的线程。
+ * 配置 {@link LegacyRedisCheckpointReader} 后，首次访问没有紧凑数据的线程时会把旧版数据迁移过来。
+ * 配置 {@link CheckpointRetention} 后，写入时刷新线程的过期时间（maxAge），
+ * 并可由 {@link CheckpointCompactor} 调用 {@link #compact(String)} 按策略裁剪历史。
+ */
+public class CompactRedisSaver implements BatchingCheckpointSaver {
+
+    private static final Logger log = LoggerFactory.getLogger(CompactRedisSaver.class);
+
+    static final String CHECKPOINT_PREFIX = "graph:compact:checkpoints:";
+    private static final String LOCK_PREFIX = "graph:compact:lock:";
+    /** 线程最新检查点ID，与记录在同一批命令中写入；键名带 {threadId} 哈希标签，与租约键落在同一哈希槽 */
+    private static final String HEAD_PREFIX = "graph:compact:head:";
+    private static final String LEASE_PREFIX = "graph:compact:lease:";
+    /** 线程最后一次写入的时间（毫秒），与记录在同一批命令中写入，供 {@link CheckpointCompactor} 按写入先后删除线程 */
+    private static final String WRITTEN_PREFIX = "graph:compact:written:";
+
+    /**
+     * 租约未被其他 owner 持有时设置（或续约）并返回 {1, 是否续约, 最新ID, 0}，否则返回 {0, 0, nil, 剩余毫秒}
+     */
+    private static final String LEASE_SCRIPT = """
+            local holder = redis.call('get', KEYS[1])
+            if holder and holder ~= ARGV[1] then
+                return {0, 0, false, redis.call('pttl', KEYS[1])}
+            end
+            redis.call('set', KEYS[1], ARGV[1], 'px', ARGV[2])
+            return {1, holder and 1 or 0, redis.call('get', KEYS[2]), 0}
+            """;
+
+    private final String name;
+    private final RedissonClient redisson;
+    private final CheckpointCodec codec;
+    private final int snapshotInterval;
+    private final LegacyRedisCheckpointReader legacyReader;
+    private final CheckpointRetention retention;
+
+    protected CompactRedisSaver(Builder builder) {
+        this.name = builder.name;
+        this.redisson = builder.redisson;
+        this.codec = new CheckpointCodec(builder.valueCodec, builder.compression, builder.compressionThreshold);
+        this.snapshotInterval = builder.snapshotInterval;
+        this.legacyReader = builder.legacyReader;
+        this.retention = builder.retention;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        String threadName = threadName(config);
+        RLock lock = redisson.getLock(LOCK_PREFIX + threadName);
+        try {
+            if (!lock.tryLock(500, TimeUnit.MILLISECONDS)) {
+                return List.of();
+            }
+            return newestFirst(readAll(threadName));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to decode checkpoints", e);
+        }
+        finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        String threadName = threadName(config);
+        RLock lock = redisson.getLock(LOCK_PREFIX + threadName);
+        try {
+            if (!lock.tryLock(500, TimeUnit.MILLISECONDS)) {
+                return Optional.empty();
+            }
+            if (config.checkPointId().isPresent()) {
+                String checkPointId = config.checkPointId().get();
+                return readAll(threadName).stream()
+                        .filter(checkpoint -> checkpoint.getId().equals(checkPointId))
+                        .findFirst();
+            }
+            Tail tail = readTail(threadName);
+            return Optional.ofNullable(tail.latest());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to decode checkpoints", e);
+        }
+        finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        String threadName = threadName(config);
+        RLock lock = redisson.getLock(LOCK_PREFIX + threadName);
+        try {
+            if (!lock.tryLock(3, TimeUnit.SECONDS)) {
+                throw new RuntimeException("Failed to acquire lock for thread: " + threadName);
+            }
+            long start = System.nanoTime();
+            int bytes;
+            if (config.checkPointId().isPresent()) {
+                bytes = replace(threadName, config.checkPointId().get(), checkpoint);
+            }
+            else {
+                bytes = append(threadName, List.of(checkpoint));
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] checkpoint {} saved: {} bytes, {} us", threadName, checkpoint.getId(), bytes,
+                        (System.nanoTime() - start) / 1000);
+            }
+            return RunnableConfig.builder(config).checkPointId(checkpoint.getId()).build();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to encode/decode checkpoints", e);
+        }
+        finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void putAll(RunnableConfig config, List<Checkpoint> checkpoints) throws Exception {
+        if (checkpoints.isEmpty()) {
+            return;
+        }
+        String threadName = threadName(config);
+        RLock lock = redisson.getLock(LOCK_PREFIX + threadName);
+        try {
+            if (!lock.tryLock(3, TimeUnit.SECONDS)) {
+                throw new RuntimeException("Failed to acquire lock for thread: " + threadName);
+            }
+            long start = System.nanoTime();
+            int bytes = append(threadName, checkpoints);
+            if (log.isDebugEnabled()) {
+                log.debug("[{}] {} checkpoints saved in batch: {} bytes, {} us", threadName, checkpoints.size(),
+                        bytes, (System.nanoTime() - start) / 1000);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to encode/decode checkpoints", e);
+        }
+        finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Lease lease(RunnableConfig config, String owner, Duration duration) {
+        String threadName = threadName(config);
+        List<Object> result = redisson.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, LEASE_SCRIPT,
+                RScript.ReturnType.MULTI, List.of(leaseKey(threadName), headKey(threadName)),
+                owner, Long.toString(Math.max(1, duration.toMillis())));
+        boolean granted = ((Number) result.get(0)).longValue() == 1;
+        return new Lease(granted, ((Number) result.get(1)).longValue() == 1, (String) result.get(2),
+                Duration.ofMillis(Math.max(0, ((Number) result.get(3)).longValue())));
+    }
+
+    @Override
+    public Tag release(RunnableConfig config) throws Exception {
+        String threadName = threadName(config);
+        RLock lock = redisson.getLock(LOCK_PREFIX + threadName);
+        try {
+            if (!lock.tryLock(3, TimeUnit.SECONDS)) {
+                throw new RuntimeException("Failed to acquire lock for thread: " + threadName);
+            }
+            List<Checkpoint> checkpoints = readAll(threadName);
+            records(threadName).delete();
+            redisson.getKeys().delete(headKey(threadName), writtenKey(threadName));
+            return new Tag(threadName, newestFirst(checkpoints));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to decode checkpoints", e);
+        }
+        finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 按保留策略裁剪线程的检查点
+     *
+     * 保留的检查点从第一个起按快照间隔重新编码（第一个必须是全量快照），删除与重写在一个 MULTI 事务中完成。
+     * 线程正在被读写时不等待，直接跳过，由下一轮处理。
+     *
+     * @param threadName 线程ID
+     * @return 裁剪结果；线程正忙时为 null
+     */
+    public Compaction compact(String threadName) throws IOException {
+        CheckpointRetentionPolicy policy = policyFor(threadName);
+        RLock lock = redisson.getLock(LOCK_PREFIX + threadName);
+        if (!lock.tryLock()) {
+            return null;
+        }
+        try {
+            List<byte[]> records = records(threadName).readAll();
+            long bytesBefore = 0;
+            for (byte[] record : records) {
+                bytesBefore += record.length;
+            }
+            if (records.isEmpty() || !policy.prunes()) {
+                return new Compaction(records.size(), records.size(), bytesBefore, bytesBefore);
+            }
+            List<Checkpoint> checkpoints = decodeChain(records);
+            List<Checkpoint> kept = policy.select(checkpoints);
+            if (kept.size() == checkpoints.size()) {
+                return new Compaction(records.size(), records.size(), bytesBefore, bytesBefore);
+            }
+            List<byte[]> encoded = new ArrayList<>(kept.size());
+            long bytesAfter = 0;
+            for (int i = 0; i < kept.size(); i++) {
+                boolean snapshot = i % snapshotInterval == 0;
+                byte[] record = codec.encode(kept.get(i), snapshot ? null : kept.get(i - 1));
+                encoded.add(record);
+                bytesAfter += record.length;
+            }
+            RBatch batch = redisson.createBatch(BatchOptions.defaults()
+                    .executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+            RListAsync<byte[]> list = batch.getList(CHECKPOINT_PREFIX + threadName, ByteArrayCodec.INSTANCE);
+            list.deleteAsync();
+            list.addAllAsync(encoded);
+            if (policy.expires()) {
+                list.expireAsync(policy.maxAge());
+            }
+            batch.execute();
+            return new Compaction(records.size(), kept.size(), bytesBefore, bytesAfter);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 删除整个线程的检查点（内存超出预算时由 {@link CheckpointCompactor} 调用）
+     *
+     * @param threadName 线程ID
+     * @return 是否已删除；线程正被读写时为 false
+     */
+    public boolean evict(String threadName) {
+        RLock lock = redisson.getLock(LOCK_PREFIX + threadName);
+        if (!lock.tryLock()) {
+            return false;
+        }
+        try {
+            redisson.getKeys().delete(headKey(threadName), writtenKey(threadName));
+            return records(threadName).delete();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param threadName 线程ID
+     * @return 该线程是否有检查点
+     */
+    public boolean contains(String threadName) {
+        return records(threadName).isExists();
+    }
+
+    /**
+     * 把线程的全部记录原样移到另一个保存器（分片再平衡），保留剩余过期时间
+     *
+     * 两侧都在各自的线程锁内操作；目标已有该线程的记录时以目标为准，只删除本地记录。
+     *
+     * @param threadName 线程ID
+     * @param target     目标保存器
+     * @return 是否移动了记录；本地没有该线程时为 false
+     */
+    public boolean moveTo(String threadName, CompactRedisSaver target) throws InterruptedException {
+        RLock lock = redisson.getLock(LOCK_PREFIX + threadName);
+        if (!lock.tryLock(3, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Failed to acquire lock for thread: " + threadName);
+        }
+        try {
+            RList<byte[]> source = records(threadName);
+            List<byte[]> records = source.readAll();
+            if (records.isEmpty()) {
+                return false;
+            }
+            // 最新ID与租约一起移过去，持有租约的 L1 在租期内仍然有效
+            RBucket<String> lease = redisson.getBucket(leaseKey(threadName), StringCodec.INSTANCE);
+            if (!target.importRecords(threadName, records, source.remainTimeToLive(), head(threadName).get(),
+                    written(threadName).get(), lease.get(), lease.remainTimeToLive())) {
+                log.warn("[{}] thread already exists on {}, dropping the copy on {}", threadName, target.name, name);
+            }
+            source.delete();
+            redisson.getKeys().delete(headKey(threadName), writtenKey(threadName));
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 名称（分片名），用于日志与指标
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return 该保存器使用的 Redisson 客户端（分片时为该分片的客户端）
+     */
+    public RedissonClient redisson() {
+        return redisson;
+    }
+
+    /**
+     * 写入从其他分片移来的记录、最新ID、最后写入时间与租约
+     *
+     * @return 是否写入；本地已有该线程时为 false
+     */
+    private boolean importRecords(String threadName, List<byte[]> records, long ttlMillis, String headId,
+                                  String writtenAt, String leaseOwner, long leaseTtlMillis) throws InterruptedException {
+        RLock lock = redisson.getLock(LOCK_PREFIX + threadName);
+        if (!lock.tryLock(3, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Failed to acquire lock for thread: " + threadName);
+        }
+        try {
+            if (records(threadName).isExists()) {
+                return false;
+            }
+            RBatch batch = redisson.createBatch(BatchOptions.defaults()
+                    .executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+            RListAsync<byte[]> list = batch.getList(CHECKPOINT_PREFIX + threadName, ByteArrayCodec.INSTANCE);
+            list.addAllAsync(records);
+            if (ttlMillis > 0) {
+                list.expireAsync(Duration.ofMillis(ttlMillis));
+            }
+            batch.execute();
+            if (headId != null) {
+                if (ttlMillis > 0) {
+                    head(threadName).set(headId, Duration.ofMillis(ttlMillis));
+                }
+                else {
+                    head(threadName).set(headId);
+                }
+            }
+            if (writtenAt != null) {
+                if (ttlMillis > 0) {
+                    written(threadName).set(writtenAt, Duration.ofMillis(ttlMillis));
+                }
+                else {
+                    written(threadName).set(writtenAt);
+                }
+            }
+            if (leaseOwner != null && leaseTtlMillis > 0) {
+                redisson.getBucket(leaseKey(threadName), StringCodec.INSTANCE).setIfAbsent(leaseOwner, Duration.ofMillis(leaseTtlMillis));
+            }
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param threadName 线程ID
+     * @return 该线程适用的保留策略
+     */
+    public CheckpointRetentionPolicy policyFor(String threadName) {
+        return retention != null ? retention.policyFor(threadName) : CheckpointRetentionPolicy.KEEP_ALL;
+    }
+
+    /**
+     * @return 编解码统计（字节数、耗时、增量/全量占比）
+     */
+    public CheckpointCodecStats.Snapshot stats() {
+        return codec.getStats().snapshot();
+    }
+
+    // ==================== 内部实现 ====================
+
+    /**
+     * 追加一批检查点（最旧的在前）：距离上一个全量快照达到间隔时写全量，否则写增量。
+     * 整批记录通过一条多值 RPUSH 写入
+     */
+    private int append(String threadName, List<Checkpoint> checkpoints) throws IOException {
+        Tail tail = readTail(threadName);
+        Checkpoint parent = tail.latest();
+        int distanceFromFull = tail.distanceFromFull();
+        List<byte[]> encoded = new ArrayList<>(checkpoints.size());
+        int bytes = 0;
+        for (Checkpoint checkpoint : checkpoints) {
+            boolean snapshot = parent == null || distanceFromFull + 1 >= snapshotInterval;
+            byte[] record = codec.encode(checkpoint, snapshot ? null : parent);
+            distanceFromFull = CheckpointCodec.isFullSnapshot(record) ? 0 : distanceFromFull + 1;
+            parent = checkpoint;
+            encoded.add(record);
+            bytes += record.length;
+        }
+        push(threadName, encoded, parent.getId());
+        return bytes;
+    }
+
+    /**
+     * 追加记录，并在同一批命令中更新最新检查点ID与最后写入时间；策略设置了 maxAge 时同时刷新线程的过期时间
+     *
+     * @param latestId 最后一条记录的检查点ID
+     */
+    private void push(String threadName, List<byte[]> encoded, String latestId) {
+        CheckpointRetentionPolicy policy = policyFor(threadName);
+        RBatch batch = redisson.createBatch();
+        RListAsync<byte[]> list = batch.getList(CHECKPOINT_PREFIX + threadName, ByteArrayCodec.INSTANCE);
+        RBucketAsync<String> head = batch.getBucket(headKey(threadName), StringCodec.INSTANCE);
+        RBucketAsync<String> written = batch.getBucket(writtenKey(threadName), StringCodec.INSTANCE);
+        String now = Long.toString(System.currentTimeMillis());
+        list.addAllAsync(encoded);
+        if (policy.expires()) {
+            list.expireAsync(policy.maxAge());
+            head.setAsync(latestId, policy.maxAge());
+            written.setAsync(now, policy.maxAge());
+        }
+        else {
+            head.setAsync(latestId);
+            written.setAsync(now);
+        }
+        batch.execute();
+    }
+
+    /**
+     * 原地替换已有检查点（updateState 场景），并重新编码其后依赖它的记录
+     */
+    private int replace(String threadName, String checkPointId, Checkpoint checkpoint) throws IOException {
+        List<Checkpoint> checkpoints = readAll(threadName);
+        int index = -1;
+        for (int i = 0; i < checkpoints.size(); i++) {
+            if (checkpoints.get(i).getId().equals(checkPointId)) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            throw new NoSuchElementException(String.format("Checkpoint with id %s not found!", checkPointId));
+        }
+        checkpoints.set(index, checkpoint);
+
+        // 被替换记录之后的增量都以它为基础，需要从最近的全量快照起按原有节奏重新编码
+        RList<byte[]> records = records(threadName);
+        int bytes = 0;
+        int sinceFull = 0;
+        for (int i = 0; i < checkpoints.size(); i++) {
+            boolean snapshot = i == 0 || sinceFull + 1 >= snapshotInterval;
+            sinceFull = snapshot ? 0 : sinceFull + 1;
+            if (i < index) {
+                continue;
+            }
+            byte[] record = codec.encode(checkpoints.get(i), snapshot ? null : checkpoints.get(i - 1));
+            records.fastSet(i, record);
+            bytes += record.length;
+        }
+        CheckpointRetentionPolicy policy = policyFor(threadName);
+        String now = Long.toString(System.currentTimeMillis());
+        if (policy.expires()) {
+            written(threadName).set(now, policy.maxAge());
+        }
+        else {
+            written(threadName).set(now);
+        }
+        if (index == checkpoints.size() - 1) {
+            // 替换的是最新检查点，ID 可能变化；刷新最新ID键，持有旧ID的 L1 随之失效
+            if (policy.expires()) {
+                head(threadName).set(checkpoint.getId(), policy.maxAge());
+            }
+            else {
+                head(threadName).set(checkpoint.getId());
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 读取最近 snapshotInterval 条记录，并从其中最后一个全量快照开始还原
+     */
+    private Tail readTail(String threadName) throws IOException {
+        List<byte[]> window = records(threadName).range(-snapshotInterval, -1);
+        if (window.isEmpty()) {
+            List<Checkpoint> migrated = migrateLegacy(threadName);
+            return migrated.isEmpty()
+                    ? new Tail(null, 0)
+                    : new Tail(migrated.get(migrated.size() - 1), (migrated.size() - 1) % snapshotInterval);
+        }
+        int fullIndex = -1;
+        for (int i = window.size() - 1; i >= 0; i--) {
+            if (CheckpointCodec.isFullSnapshot(window.get(i))) {
+                fullIndex = i;
+                break;
+            }
+        }
+        if (fullIndex < 0) {
+            // 间隔配置被调大后旧数据可能不满足窗口内必有快照，退回全量读取
+            List<Checkpoint> all = readAll(threadName);
+            return new Tail(all.get(all.size() - 1), snapshotInterval);
+        }
+        List<Checkpoint> chain = decodeChain(window.subList(fullIndex, window.size()));
+        return new Tail(chain.get(chain.size() - 1), window.size() - 1 - fullIndex);
+    }
+
+    /**
+     * 读取并还原线程的全部检查点（最旧的在前）
+     */
+    private List<Checkpoint> readAll(String threadName) throws IOException {
+        List<byte[]> records = records(threadName).readAll();
+        if (records.isEmpty()) {
+            return migrateLegacy(threadName);
+        }
+        return decodeChain(records);
+    }
+
+    private List<Checkpoint> decodeChain(List<byte[]> records) throws IOException {
+        List<Checkpoint> checkpoints = new ArrayList<>(records.size());
+        Checkpoint parent = null;
+        for (byte[] record : records) {
+            parent = codec.decode(record, parent);
+            checkpoints.add(parent);
+        }
+        return checkpoints;
+    }
+
+    /**
+     * 将旧版 RedisSaver 中的线程数据迁移为紧凑格式
+     *
+     * @return 迁移的检查点（最旧的在前），没有旧数据时为空
+     */
+    private List<Checkpoint> migrateLegacy(String threadName) throws IOException {
+        if (legacyReader == null) {
+            return List.of();
+        }
+        LinkedList<Checkpoint> legacy = legacyReader.read(threadName);
+        if (legacy.isEmpty()) {
+            return List.of();
+        }
+        List<Checkpoint> checkpoints = new ArrayList<>(legacy);
+        Collections.reverse(checkpoints);
+        List<byte[]> encoded = new ArrayList<>(checkpoints.size());
+        for (int i = 0; i < checkpoints.size(); i++) {
+            boolean snapshot = i % snapshotInterval == 0;
+            encoded.add(codec.encode(checkpoints.get(i), snapshot ? null : checkpoints.get(i - 1)));
+        }
+        push(threadName, encoded, checkpoints.get(checkpoints.size() - 1).getId());
+        legacyReader.markMigrated(threadName);
+        log.info("[{}] migrated {} legacy checkpoints to compact format", threadName, checkpoints.size());
+        return checkpoints;
+    }
+
+    private RList<byte[]> records(String threadName) {
+        return redisson.getList(CHECKPOINT_PREFIX + threadName, ByteArrayCodec.INSTANCE);
+    }
+
+    private RBucket<String> head(String threadName) {
+        return redisson.getBucket(headKey(threadName), StringCodec.INSTANCE);
+    }
+
+    private RBucket<String> written(String threadName) {
+        return redisson.getBucket(writtenKey(threadName), StringCodec.INSTANCE);
+    }
+
+    private static String headKey(String threadName) {
+        return HEAD_PREFIX + "{" + threadName + "}";
+    }
+
+    /**
+     * @return 线程最后写入时间键（值为毫秒时间戳字符串）
+     */
+    static String writtenKey(String threadName) {
+        return WRITTEN_PREFIX + "{" + threadName + "}";
+    }
+
+    private static String leaseKey(String threadName) {
+        return LEASE_PREFIX + "{" + threadName + "}";
+    }
+
+    private static String threadName(RunnableConfig config) {
+        return config.threadId().orElseThrow(() -> new IllegalArgumentException("threadId isn't allow null"));
+    }
+
+    private static LinkedList<Checkpoint> newestFirst(List<Checkpoint> oldestFirst) {
+        LinkedList<Checkpoint> result = new LinkedList<>();
+        for (Checkpoint checkpoint : oldestFirst) {
+            result.push(checkpoint);
+        }
+        return result;
+    }
+
+    /**
+     * 一次裁剪的结果
+     *
+     * @param before      裁剪前的检查点数
+     * @param after       裁剪后的检查点数
+     * @param bytesBefore 裁剪前的记录字节数
+     * @param bytesAfter  裁剪后的记录字节数
+     */
+    public record Compaction(int before, int after, long bytesBefore, long bytesAfter) {
+
+        public int pruned() {
+            return before - after;
+        }
+    }
+
+    /**
+     * 最新检查点及其距最近全量快照的记录数
+     */
+    private record Tail(Checkpoint latest, int distanceFromFull) {
+    }
+
+    public static class Builder {
+        private String name = "redis";
+        private RedissonClient redisson;
+        private BinaryValueCodec valueCodec;
+        private CheckpointCompression compression = CheckpointCompression.LZ4;
+        private int compressionThreshold = 512;
+        private int snapshotInterval = 10;
+        private LegacyRedisCheckpointReader legacyReader;
+        private CheckpointRetention retention;
+
+        /**
+         * 名称（分片名），默认 redis
+         */
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder redisson(RedissonClient redisson) {
+            this.redisson = redisson;
+            return this;
+        }
+
+        public Builder valueCodec(BinaryValueCodec valueCodec) {
+            this.valueCodec = valueCodec;
+            return this;
+        }
+
+        public Builder compression(CheckpointCompression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * 记录原始字节数不低于该阈值时才压缩
+         */
+        public Builder compressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+
+        /**
+         * 每隔多少条记录写一次全量快照
+         */
+        public Builder snapshotInterval(int snapshotInterval) {
+            this.snapshotInterval = snapshotInterval;
+            return this;
+        }
+
+        /**
+         * 旧版 RedisSaver 数据读取器，为空时不做迁移
+         */
+        public Builder legacyReader(LegacyRedisCheckpointReader legacyReader) {
+            this.legacyReader = legacyReader;
+            return this;
+        }
+
+        /**
+         * 检查点保留策略，为空时全部保留且不过期
+         */
+        public Builder retention(CheckpointRetention retention) {
+            this.retention = retention;
+            return this;
+        }
+
+        public CompactRedisSaver build() {
+            Objects.requireNonNull(redisson, "redisson cannot be null");
+            Objects.requireNonNull(compression, "compression cannot be null");
+            if (snapshotInterval < 1) {
+                throw new IllegalArgumentException("snapshotInterval must be positive");
+            }
+            if (valueCodec == null) {
+                valueCodec = new BinaryValueCodec();
+            }
+            return new CompactRedisSaver(this);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.lks.graphAgent.checkpoint;
+
+/**
+ * 检查点持久化模式
+ */
+public enum DurabilityMode {
+
+    /** 每次 put 同步写 Redis，L1 只加速读取 */
+    SYNC,
+
+    /** put 只写 L1，后台按固定间隔批量回写 Redis */
+    ASYNC,
+
+    /** put 只写 L1，仅在一次运行结束（或积压过多）时批量回写 Redis */
+    FLUSH_ON_END;
+
+    /**
+     * 解析配置值，兼容 {@code flush-on-end} 这类短横线写法
+     */
+    public static DurabilityMode of(String value) {
+        return valueOf(value.trim().replace('-', '_').toUpperCase());
+    }
+}
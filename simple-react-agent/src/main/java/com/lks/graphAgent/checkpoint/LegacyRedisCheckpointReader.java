@@ -0,0 +1,91 @@
+package com.lks.graphAgent.checkpoint;
+
+import com.alibaba.cloud.ai.graph.StateGraph;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.alibaba.cloud.ai.graph.serializer.StateSerializer;
+import com.alibaba.cloud.ai.graph.serializer.check_point.CheckPointSerializer;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Base64;
+import java.util.LinkedList;
+
+/**
+ * 旧版 RedisSaver 数据读取器
+ *
+ * 按框架 {@code RedisSaver} 的键布局读取已有检查点（Base64 编码的 Java 序列化流），
+ * 供 {@link CompactRedisSaver} 在首次访问某个线程时把旧数据迁移到紧凑格式。
+ */
+public class LegacyRedisCheckpointReader {
+
+    private static final String CHECKPOINT_PREFIX = "graph:checkpoint:content:";
+    private static final String THREAD_META_PREFIX = "graph:thread:meta:";
+    private static final String THREAD_REVERSE_PREFIX = "graph:thread:reverse:";
+    private static final String FIELD_THREAD_ID = "thread_id";
+    private static final String FIELD_IS_RELEASED = "is_released";
+
+    private final RedissonClient redisson;
+    private final CheckPointSerializer checkpointSerializer;
+
+    public LegacyRedisCheckpointReader(RedissonClient redisson) {
+        this(redisson, StateGraph.DEFAULT_JACKSON_SERIALIZER);
+    }
+
+    public LegacyRedisCheckpointReader(RedissonClient redisson, StateSerializer stateSerializer) {
+        this.redisson = redisson;
+        this.checkpointSerializer = new CheckPointSerializer(stateSerializer);
+    }
+
+    /**
+     * 读取线程的全部旧版检查点
+     *
+     * @param threadName 线程名（RunnableConfig.threadId）
+     * @return 检查点列表，最新的在前；没有活跃数据时返回空列表
+     */
+    public LinkedList<Checkpoint> read(String threadName) throws IOException {
+        String threadId = activeThreadId(threadName);
+        if (threadId == null) {
+            return new LinkedList<>();
+        }
+        String content = (String) redisson.getBucket(CHECKPOINT_PREFIX + threadId).get();
+        if (content == null || content.isEmpty()) {
+            return new LinkedList<>();
+        }
+        byte[] bytes = Base64.getDecoder().decode(content);
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            int size = ois.readInt();
+            LinkedList<Checkpoint> checkpoints = new LinkedList<>();
+            for (int i = 0; i < size; i++) {
+                checkpoints.add(checkpointSerializer.read(ois));
+            }
+            return checkpoints;
+        }
+        catch (ClassNotFoundException e) {
+            throw new IOException("Failed to deserialize legacy checkpoints", e);
+        }
+    }
+
+    /**
+     * 将旧版线程标记为已释放（迁移完成后调用，原始数据保留不删除）
+     */
+    public void markMigrated(String threadName) {
+        String threadId = activeThreadId(threadName);
+        if (threadId == null) {
+            return;
+        }
+        RMap<String, String> meta = redisson.getMap(THREAD_META_PREFIX + threadName);
+        meta.put(FIELD_IS_RELEASED, "true");
+        RMap<String, String> reverse = redisson.getMap(THREAD_REVERSE_PREFIX + threadId);
+        reverse.put(FIELD_IS_RELEASED, "true");
+    }
+
+    private String activeThreadId(String threadName) {
+        RMap<String, String> meta = redisson.getMap(THREAD_META_PREFIX + threadName);
+        String threadId = meta.get(FIELD_THREAD_ID);
+        String isReleased = meta.get(FIELD_IS_RELEASED);
+        return threadId != null && !"true".equals(isReleased) ? threadId : null;
+    }
+}
@@ -0,0 +1,52 @@
+package com.lks.graphAgent.checkpoint;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.lks.common.metrics.AgentMetrics;
+import com.lks.common.metrics.MeteredCheckpointSaver;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 统计读写耗时并保留批量写入能力的保存器包装
+ *
+ * {@link TieredCheckpointSaver} 回写时按 {@link BatchingCheckpointSaver} 判断能否批量提交，
+ * 包装 {@link CompactRedisSaver} 时需要保留该接口；批量写入记为 put_all 操作，取得线程租约记为 lease 操作。
+ */
+public class MeteredBatchingCheckpointSaver extends MeteredCheckpointSaver implements BatchingCheckpointSaver {
+
+    private final BatchingCheckpointSaver delegate;
+
+    public MeteredBatchingCheckpointSaver(BatchingCheckpointSaver delegate, AgentMetrics metrics, String name) {
+        super(delegate, metrics, name);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void putAll(RunnableConfig config, List<Checkpoint> checkpoints) throws Exception {
+        long startedAt = System.nanoTime();
+        String outcome = "error";
+        try {
+            delegate.putAll(config, checkpoints);
+            outcome = "success";
+        }
+        finally {
+            record("put_all", startedAt, outcome);
+        }
+    }
+
+    @Override
+    public Lease lease(RunnableConfig config, String owner, Duration duration) throws Exception {
+        long startedAt = System.nanoTime();
+        String outcome = "error";
+        try {
+            Lease lease = delegate.lease(config, owner, duration);
+            outcome = "success";
+            return lease;
+        }
+        finally {
+            record("lease", startedAt, outcome);
+        }
+    }
+}
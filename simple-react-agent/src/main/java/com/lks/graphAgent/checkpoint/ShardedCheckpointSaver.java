@@ -0,0 +1,450 @@
+package com.lks.graphAgent.checkpoint;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lks.common.metrics.AgentMetrics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按 threadId 一致性哈希分片的检查点保存器
+ *
+ * 每个分片是一个独立 Redis 实例（可带只读副本）上的 {@link CompactRedisSaver}；每个分片在哈希环上放
+ * virtualNodes 个虚拟节点，线程归属于顺时针方向的第一个虚拟节点。新增分片时只有约 1/N 的线程换了归属：
+ * <ul>
+ *     <li>后台任务逐个分片 SCAN 线程键，把归属已变化的线程原样移到新分片（保留过期时间）</li>
+ *     <li>再平衡期间访问某线程时，若它还不在归属分片上，先从其他分片移过来再读写；源分片上该线程的锁被占用且重试后仍无法移动时，
+ *     本次在原分片读写，之后的访问继续尝试移动</li>
+ * </ul>
+ *
+ * 每个分片的读写经 {@link MeteredBatchingCheckpointSaver} 计时，saver 标签为 {@code redis-shard-<分片名>}。
+ * 分片拓扑只在本实例内生效，多实例部署时应在所有实例上一致地增加分片（修改配置后滚动重启即可，启动时会再平衡）。
+ */
+public class ShardedCheckpointSaver implements BatchingCheckpointSaver, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedCheckpointSaver.class);
+
+    /** 访问时移动线程的尝试次数，每次等待源分片上的线程锁至多 3 秒 */
+    private static final int PULL_ATTEMPTS = 3;
+
+    private final int virtualNodes;
+    private final int batchSize;
+    private final AgentMetrics metrics;
+    private final ExecutorService rebalancer;
+
+    private volatile Ring ring;
+    /** 非 0 表示再平衡进行中；每次启动再平衡加一，结束时只清除本次的标记 */
+    private volatile long rebalanceEpoch;
+    /** 再平衡期间已确认位于归属分片上的线程 */
+    private final Cache<String, Boolean> settled = Caffeine.newBuilder().maximumSize(100_000).build();
+
+    /** 未能移到归属分片、暂时仍在原分片上读写的线程 */
+    private final Set<String> stranded = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder migratedThreads = new LongAdder();
+
+    private ShardedCheckpointSaver(Builder builder) {
+        this.virtualNodes = builder.virtualNodes;
+        this.batchSize = builder.batchSize;
+        this.metrics = builder.metrics;
+        this.rebalancer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-rebalancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, Shard> shards = new LinkedHashMap<>();
+        for (CompactRedisSaver saver : builder.shards) {
+            shards.put(saver.name(), shard(saver));
+        }
+        this.ring = new Ring(shards, virtualNodes);
+        if (builder.rebalanceOnStart && shards.size() > 1) {
+            rebalance(beginRebalance());
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        return owner(config).saver().list(config);
+    }
+
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        return owner(config).saver().get(config);
+    }
+
+    @Override
+    public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        return owner(config).saver().put(config, checkpoint);
+    }
+
+    @Override
+    public void putAll(RunnableConfig config, List<Checkpoint> checkpoints) throws Exception {
+        owner(config).saver().putAll(config, checkpoints);
+    }
+
+    @Override
+    public Lease lease(RunnableConfig config, String owner, Duration duration) throws Exception {
+        return owner(config).saver().lease(config, owner, duration);
+    }
+
+    @Override
+    public Tag release(RunnableConfig config) throws Exception {
+        return owner(config).saver().release(config);
+    }
+
+    /**
+     * 在线增加一个分片并在后台再平衡
+     *
+     * @param saver 新分片（名称不能与已有分片重复）
+     */
+    public synchronized void addShard(CompactRedisSaver saver) {
+        Ring current = ring;
+        if (current.shards().containsKey(saver.name())) {
+            throw new IllegalArgumentException("Shard " + saver.name() + " already exists");
+        }
+        Map<String, Shard> shards = new LinkedHashMap<>(current.shards());
+        shards.put(saver.name(), shard(saver));
+        // 先进入再平衡状态再切换哈希环，切换后的每次访问都会先把线程移到新归属
+        long epoch = beginRebalance();
+        ring = new Ring(shards, virtualNodes);
+        log.info("Added checkpoint shard {}, now {} shards; rebalancing", saver.name(), shards.size());
+        rebalance(epoch);
+    }
+
+    /**
+     * @return 各分片的紧凑保存器（按加入顺序），供裁剪与统计使用
+     */
+    public List<CompactRedisSaver> shards() {
+        List<CompactRedisSaver> savers = new ArrayList<>();
+        for (Shard shard : ring.shards().values()) {
+            savers.add(shard.compact());
+        }
+        return savers;
+    }
+
+    /**
+     * @param threadId 线程ID
+     * @return 线程归属的分片名
+     */
+    public String shardOf(String threadId) {
+        return ring.route(threadId).compact().name();
+    }
+
+    /**
+     * @return 是否正在再平衡
+     */
+    public boolean isRebalancing() {
+        return rebalanceEpoch != 0;
+    }
+
+    /**
+     * @return 再平衡累计移动的线程数
+     */
+    public long migratedThreads() {
+        return migratedThreads.sum();
+    }
+
+    /**
+     * 注册分片数、再平衡状态与移动线程数指标（每个分片的读写耗时由 AgentMetrics 记录）
+     *
+     * @param registry 指标注册表
+     * @return this
+     */
+    public ShardedCheckpointSaver bindTo(MeterRegistry registry) {
+        Gauge.builder("agent.checkpoint.shard.count", this, saver -> saver.ring.shards().size())
+                .description("Checkpoint shards on the hash ring").register(registry);
+        Gauge.builder("agent.checkpoint.shard.rebalancing", this, saver -> saver.isRebalancing() ? 1 : 0)
+                .register(registry);
+        FunctionCounter.builder("agent.checkpoint.shard.migrated", migratedThreads, LongAdder::sum)
+                .description("Threads moved to a new owning shard").register(registry);
+        return this;
+    }
+
+    /**
+     * 停止再平衡并关闭各分片的 Redisson 客户端
+     */
+    @Override
+    public void close() {
+        rebalancer.shutdownNow();
+        for (Shard shard : ring.shards().values()) {
+            shard.compact().redisson().shutdown();
+        }
+    }
+
+    // ==================== 内部实现 ====================
+
+    private Shard shard(CompactRedisSaver saver) {
+        BatchingCheckpointSaver routed = metrics != null
+                ? new MeteredBatchingCheckpointSaver(saver, metrics, "redis-shard-" + saver.name())
+                : saver;
+        return new Shard(saver, routed);
+    }
+
+    /**
+     * 线程本次读写使用的分片；再平衡期间（或上次未能移动时）先确保线程已位于归属分片上
+     */
+    private Shard owner(RunnableConfig config) {
+        String threadId = config.threadId().orElseThrow(() -> new IllegalArgumentException("threadId isn't allow null"));
+        Ring current = ring;
+        Shard owner = current.route(threadId);
+        if ((rebalanceEpoch != 0 && settled.getIfPresent(threadId) == null) || stranded.contains(threadId)) {
+            Shard location = pull(current, threadId, owner);
+            if (location != owner) {
+                // 本次留在原分片读写，之后的访问（包括再平衡结束后）继续尝试移动
+                stranded.add(threadId);
+                return location;
+            }
+            stranded.remove(threadId);
+            settled.put(threadId, Boolean.TRUE);
+        }
+        return owner;
+    }
+
+    /**
+     * 归属分片上没有该线程时，从其他分片上找到并移过来
+     *
+     * 源分片上该线程的锁被占用（正被其他实例读写，或正被再平衡移动）时稍后重试；
+     * 重试 PULL_ATTEMPTS 次仍未移动时返回线程当前所在的分片，由本次读写在原位置进行，不因移动失败让运行出错。
+     *
+     * @return 本次读写应使用的分片
+     */
+    private Shard pull(Ring current, String threadId, Shard owner) {
+        for (int attempt = 1; ; attempt++) {
+            if (owner.compact().contains(threadId)) {
+                return owner;
+            }
+            Shard locked = null;
+            for (Shard shard : current.shards().values()) {
+                if (shard == owner) {
+                    continue;
+                }
+                try {
+                    if (shard.compact().moveTo(threadId, owner.compact())) {
+                        migratedThreads.increment();
+                        return owner;
+                    }
+                }
+                catch (IllegalStateException e) {
+                    locked = shard;
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while moving thread " + threadId, e);
+                }
+            }
+            if (locked == null) {
+                // 其他分片上也没有：新线程
+                return owner;
+            }
+            if (attempt >= PULL_ATTEMPTS) {
+                log.warn("[{}] could not be moved to shard {} while locked on {}, serving it from there for now",
+                        threadId, owner.compact().name(), locked.compact().name());
+                return locked;
+            }
+        }
+    }
+
+    private synchronized long beginRebalance() {
+        long epoch = rebalanceEpoch + 1;
+        rebalanceEpoch = epoch;
+        settled.invalidateAll();
+        return epoch;
+    }
+
+    private void rebalance(long epoch) {
+        rebalancer.execute(() -> {
+            long start = System.nanoTime();
+            long moved = 0;
+            try {
+                moved = moveMisplaced();
+            }
+            catch (Exception e) {
+                log.warn("Checkpoint rebalancing failed, misplaced threads are moved on access", e);
+            }
+            finally {
+                synchronized (this) {
+                    // 期间又有分片加入时由新一轮负责清除标记
+                    if (rebalanceEpoch == epoch) {
+                        rebalanceEpoch = 0;
+                        settled.invalidateAll();
+                    }
+                }
+            }
+            log.info("Checkpoint rebalancing finished: moved {} threads in {} ms", moved, (System.nanoTime() - start) / 1_000_000);
+        });
+    }
+
+    /**
+     * 逐个分片 SCAN 线程键，把归属已不是该分片的线程移到归属分片
+     */
+    private long moveMisplaced() throws InterruptedException {
+        long moved = 0;
+        Ring current = ring;
+        for (Shard shard : current.shards().values()) {
+            Iterator<String> keys = shard.compact().redisson().getKeys()
+                    .getKeysByPattern(CompactRedisSaver.CHECKPOINT_PREFIX + "*", batchSize)
+                    .iterator();
+            while (keys.hasNext()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                String threadId = keys.next().substring(CompactRedisSaver.CHECKPOINT_PREFIX.length());
+                Shard owner = ring.route(threadId);
+                if (owner == shard) {
+                    continue;
+                }
+                try {
+                    if (shard.compact().moveTo(threadId, owner.compact())) {
+                        migratedThreads.increment();
+                        moved++;
+                    }
+                }
+                catch (IllegalStateException e) {
+                    // 线程正在运行，访问时再移动
+                    log.debug("[{}] skipped during rebalancing: {}", threadId, e.getMessage());
+                }
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * 64 位 FNV-1a 再经 murmur3 fmix64 扰动，短字符串也能在环上均匀分布
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 一个分片：紧凑保存器本身（用于移动与裁剪）与读写使用的（可能带计时的）保存器
+     */
+    private record Shard(CompactRedisSaver compact, BatchingCheckpointSaver saver) {
+    }
+
+    /**
+     * 不可变的哈希环，拓扑变化时整体替换
+     */
+    private record Ring(Map<String, Shard> shards, NavigableMap<Long, Shard> nodes) {
+
+        Ring(Map<String, Shard> shards, int virtualNodes) {
+            this(Collections.unmodifiableMap(new LinkedHashMap<>(shards)), buildNodes(shards, virtualNodes));
+        }
+
+        private static NavigableMap<Long, Shard> buildNodes(Map<String, Shard> shards, int virtualNodes) {
+            if (shards.isEmpty()) {
+                throw new IllegalArgumentException("At least one shard is required");
+            }
+            NavigableMap<Long, Shard> nodes = new TreeMap<>();
+            for (Map.Entry<String, Shard> entry : shards.entrySet()) {
+                for (int i = 0; i < virtualNodes; i++) {
+                    nodes.put(hash(entry.getKey() + "#" + i), entry.getValue());
+                }
+            }
+            return nodes;
+        }
+
+        Shard route(String threadId) {
+            Map.Entry<Long, Shard> entry = nodes.ceilingEntry(hash(threadId));
+            return (entry != null ? entry : nodes.firstEntry()).getValue();
+        }
+    }
+
+    public static class Builder {
+        private final List<CompactRedisSaver> shards = new ArrayList<>();
+        private int virtualNodes = 160;
+        private int batchSize = 100;
+        private AgentMetrics metrics;
+        private boolean rebalanceOnStart = true;
+
+        /**
+         * 增加一个分片，分片名取 {@link CompactRedisSaver#name()}，决定其在哈希环上的位置
+         */
+        public Builder shard(CompactRedisSaver saver) {
+            shards.add(Objects.requireNonNull(saver, "saver cannot be null"));
+            return this;
+        }
+
+        /**
+         * 每个分片在哈希环上的虚拟节点数，默认 160
+         */
+        public Builder virtualNodes(int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+            return this;
+        }
+
+        /**
+         * 再平衡时每次 SCAN 的键数，默认 100
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * 记录每个分片读写耗时的指标，为空时不计时
+         */
+        public Builder metrics(AgentMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * 启动时是否在后台把不在归属分片上的线程移过去（分片配置变化后重启），默认 true
+         */
+        public Builder rebalanceOnStart(boolean rebalanceOnStart) {
+            this.rebalanceOnStart = rebalanceOnStart;
+            return this;
+        }
+
+        public ShardedCheckpointSaver build() {
+            if (shards.isEmpty()) {
+                throw new IllegalArgumentException("At least one shard is required");
+            }
+            if (shards.stream().map(CompactRedisSaver::name).distinct().count() != shards.size()) {
+                throw new IllegalArgumentException("Shard names must be unique");
+            }
+            if (virtualNodes <= 0 || batchSize <= 0) {
+                throw new IllegalArgumentException("virtualNodes and batchSize must be positive");
+            }
+            return new ShardedCheckpointSaver(this);
+        }
+    }
+}
@@ -0,0 +1,567 @@
+package com.lks.graphAgent.checkpoint;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 两级检查点保存器：进程内 L1 + 回写 Redis
+ *
+ * 同一线程几乎总是由上一次服务它的节点继续处理，因此：
+ * <ul>
+ *     <li>L1（Caffeine，按线程数量 + 空闲时间淘汰）保存热点线程最近的几个检查点。本节点持有线程租约（{@link BatchingCheckpointSaver#lease}）
+ *     期间其他节点取不到租约、不会读写该线程，命中时完全不访问 Redis；租期过半时在后台续约</li>
+ *     <li>租约过期后的第一次读取先取租约，同时拿到 Redis 中的最新检查点ID：与 L1 一致时继续使用 L1，否则（线程在别的节点上运行过）
+ *     丢弃 L1 改读 Redis，不会从旧检查点继续</li>
+ *     <li>其他节点持有租约时最多等待 leaseWait；仍未取得时（同一线程同时在两个节点上运行）本次不使用 L1，
+ *     此时对方在其剩余租期内仍可能使用自己的 L1</li>
+ *     <li>写入按 {@link DurabilityMode} 处理：同步直写，或先进入每线程的待写队列，由后台/运行结束时批量回写；
+ *     同一线程积压的检查点一次批量提交</li>
+ *     <li>待写队列独立于 L1 保存，不会因 L1 淘汰而丢失；读取未命中时先回写该线程再读 Redis，保证读到最新数据</li>
+ * </ul>
+ *
+ * 下游必须是 {@link BatchingCheckpointSaver}（紧凑格式）；框架 RedisSaver（legacy 格式）没有租约与最新ID键，无法校验 L1，不能放在本类之下。
+ */
+public class TieredCheckpointSaver implements BaseCheckpointSaver, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(TieredCheckpointSaver.class);
+
+    private final BatchingCheckpointSaver delegate;
+    private final DurabilityMode durability;
+    private final String owner;
+    private final Duration leaseDuration;
+    private final Duration leaseWait;
+    private final int recentPerThread;
+    private final int maxPendingPerThread;
+    private final Cache<String, Recent> l1;
+    private final ConcurrentHashMap<String, PendingWrites> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    private final LongAdder l1Hits = new LongAdder();
+    private final LongAdder l1Misses = new LongAdder();
+    private final LongAdder leaseRequests = new LongAdder();
+    private final LongAdder leaseConflicts = new LongAdder();
+    private final LongAdder flushedBatches = new LongAdder();
+    private final LongAdder flushedCheckpoints = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    protected TieredCheckpointSaver(Builder builder) {
+        this.delegate = builder.delegate;
+        this.durability = builder.durability;
+        this.owner = builder.owner;
+        this.leaseDuration = builder.leaseDuration;
+        this.leaseWait = builder.leaseWait;
+        this.recentPerThread = builder.recentPerThread;
+        this.maxPendingPerThread = builder.maxPendingPerThread;
+        this.l1 = Caffeine.newBuilder()
+                .maximumSize(builder.maxThreads)
+                .expireAfterAccess(builder.idleTtl)
+                .build();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (durability == DurabilityMode.ASYNC) {
+            long interval = builder.flushInterval.toMillis();
+            flusher.scheduleWithFixedDelay(this::flushAllQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        flushQuietly(threadName(config));
+        return delegate.list(config);
+    }
+
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        String threadName = threadName(config);
+        Recent recent = l1.getIfPresent(threadName);
+        if (recent != null && (recent.leased() || hasPending(threadName))) {
+            // 持有租约期间其他节点不会写入；有待回写的检查点时 L1 比 Redis 新
+            Optional<Checkpoint> hit = find(recent, config);
+            if (hit.isPresent()) {
+                l1Hits.increment();
+                renewIfDue(threadName, recent);
+                return hit;
+            }
+        }
+        l1Misses.increment();
+        flushQuietly(threadName);
+        Grant grant = acquire(threadName);
+        if (grant != null && recent != null && recent.isLatest(grant.latestCheckpointId())) {
+            // 租约过期期间没有其他节点写入过该线程，L1 仍是最新状态
+            recent.leaseUntil = grant.validUntil();
+            Optional<Checkpoint> hit = find(recent, config);
+            if (hit.isPresent()) {
+                return hit;
+            }
+        }
+        else {
+            l1.invalidate(threadName);
+        }
+        Optional<Checkpoint> checkpoint = delegate.get(config);
+        if (config.checkPointId().isEmpty() && checkpoint.isPresent()) {
+            Recent fresh = new Recent(recentPerThread);
+            fresh.push(checkpoint.get());
+            if (grant != null && checkpoint.get().getId().equals(grant.latestCheckpointId())) {
+                fresh.leaseUntil = grant.validUntil();
+            }
+            l1.put(threadName, fresh);
+        }
+        return checkpoint;
+    }
+
+    @Override
+    public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        String threadName = threadName(config);
+        if (config.checkPointId().isPresent()) {
+            // 更新历史检查点：先把积压写入落地，再直接交给下游替换
+            flush(threadName);
+            l1.invalidate(threadName);
+            delegate.put(config, checkpoint);
+            return RunnableConfig.builder(config).checkPointId(checkpoint.getId()).build();
+        }
+
+        if (durability == DurabilityMode.SYNC) {
+            delegate.put(config, checkpoint);
+        }
+        else {
+            PendingWrites writes = pending.compute(threadName, (key, current) -> {
+                PendingWrites target = current != null ? current : new PendingWrites();
+                target.add(checkpoint);
+                return target;
+            });
+            if (writes.size() >= maxPendingPerThread) {
+                flusher.execute(() -> flushQuietly(threadName));
+            }
+        }
+        Recent recent = l1.get(threadName, key -> new Recent(recentPerThread));
+        recent.push(checkpoint);
+        renewIfDue(threadName, recent);
+        return RunnableConfig.builder(config).checkPointId(checkpoint.getId()).build();
+    }
+
+    @Override
+    public Tag release(RunnableConfig config) throws Exception {
+        String threadName = threadName(config);
+        flush(threadName);
+        l1.invalidate(threadName);
+        return delegate.release(config);
+    }
+
+    /**
+     * 将指定线程积压的检查点同步回写到下游
+     */
+    public void flush(String threadName) throws Exception {
+        PendingWrites writes = pending.get(threadName);
+        if (writes == null) {
+            return;
+        }
+        writes.flushLock.lock();
+        try {
+            List<Checkpoint> batch = writes.drain();
+            if (!batch.isEmpty()) {
+                try {
+                    write(threadName, batch);
+                }
+                catch (Exception e) {
+                    writes.requeue(batch);
+                    flushFailures.increment();
+                    throw e;
+                }
+                flushedBatches.increment();
+                flushedCheckpoints.add(batch.size());
+            }
+            pending.computeIfPresent(threadName, (key, current) -> current == writes && writes.isEmpty() ? null : current);
+        }
+        finally {
+            writes.flushLock.unlock();
+        }
+    }
+
+    /**
+     * 在回写线程上异步回写指定线程，用于流式响应结束后不阻塞调用方
+     */
+    public CompletableFuture<Void> flushAsync(String threadName) {
+        return CompletableFuture.runAsync(() -> flushQuietly(threadName), flusher);
+    }
+
+    /**
+     * 回写所有线程积压的检查点
+     */
+    public void flushAll() {
+        for (String threadName : new ArrayList<>(pending.keySet())) {
+            flushQuietly(threadName);
+        }
+    }
+
+    /**
+     * 停止后台回写并落地全部积压
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        flushAll();
+    }
+
+    public Stats stats() {
+        int pendingCheckpoints = pending.values().stream().mapToInt(PendingWrites::size).sum();
+        return new Stats(l1Hits.sum(), l1Misses.sum(), leaseRequests.sum(), leaseConflicts.sum(), pending.size(),
+                pendingCheckpoints, flushedBatches.sum(), flushedCheckpoints.sum(), flushFailures.sum());
+    }
+
+    public DurabilityMode getDurability() {
+        return durability;
+    }
+
+    // ==================== 内部实现 ====================
+
+    private void write(String threadName, List<Checkpoint> batch) throws Exception {
+        delegate.putAll(RunnableConfig.builder().threadId(threadName).build(), batch);
+    }
+
+    private static Optional<Checkpoint> find(Recent recent, RunnableConfig config) {
+        return config.checkPointId().isPresent() ? recent.find(config.checkPointId().get()) : recent.latest();
+    }
+
+    private boolean hasPending(String threadName) {
+        PendingWrites writes = pending.get(threadName);
+        return writes != null && !writes.isEmpty();
+    }
+
+    /**
+     * 取得线程租约；其他节点持有时等待其到期，最多等待 leaseWait
+     *
+     * @return 租约与 Redis 中的最新检查点ID；未取得或读取失败时为 null，本次不使用 L1
+     */
+    private Grant acquire(String threadName) {
+        RunnableConfig config = RunnableConfig.builder().threadId(threadName).build();
+        long deadline = System.nanoTime() + leaseWait.toNanos();
+        try {
+            while (true) {
+                long requestedAt = System.nanoTime();
+                leaseRequests.increment();
+                BatchingCheckpointSaver.Lease lease = delegate.lease(config, owner, leaseDuration);
+                if (lease.granted()) {
+                    return new Grant(lease.latestCheckpointId(), requestedAt + leaseDuration.toNanos());
+                }
+                long waitNanos = Math.min(lease.remaining().toNanos(), deadline - System.nanoTime());
+                if (waitNanos <= 0) {
+                    leaseConflicts.increment();
+                    log.warn("[{}] checkpoint lease is held by another node, reading without L1", threadName);
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.sleep(waitNanos + TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (Exception e) {
+            log.debug("[{}] failed to acquire checkpoint lease: {}", threadName, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 租期过半（或尚未持有租约）时在回写线程上续约，不阻塞读写
+     */
+    private void renewIfDue(String threadName, Recent recent) {
+        if (recent.leaseUntil - System.nanoTime() > leaseDuration.toNanos() / 2 || !recent.renewing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            flusher.execute(() -> renew(threadName, recent));
+        }
+        catch (RejectedExecutionException e) {
+            recent.renewing.set(false);
+        }
+    }
+
+    private void renew(String threadName, Recent recent) {
+        try {
+            long requestedAt = System.nanoTime();
+            leaseRequests.increment();
+            BatchingCheckpointSaver.Lease lease = delegate.lease(RunnableConfig.builder().threadId(threadName).build(),
+                    owner, leaseDuration);
+            if (!lease.granted()) {
+                recent.leaseUntil = 0;
+            }
+            else if (lease.continued() || hasPending(threadName) || recent.isLatest(lease.latestCheckpointId())) {
+                recent.leaseUntil = requestedAt + leaseDuration.toNanos();
+            }
+            else {
+                // 租约中断期间线程在别的节点上写过
+                l1.asMap().remove(threadName, recent);
+            }
+        }
+        catch (Exception e) {
+            log.debug("[{}] failed to renew checkpoint lease: {}", threadName, e.getMessage());
+        }
+        finally {
+            recent.renewing.set(false);
+        }
+    }
+
+    private void flushQuietly(String threadName) {
+        try {
+            flush(threadName);
+        }
+        catch (Exception e) {
+            log.warn("[{}] failed to flush checkpoints, will retry: {}", threadName, e.getMessage());
+        }
+    }
+
+    private void flushAllQuietly() {
+        try {
+            flushAll();
+        }
+        catch (RuntimeException e) {
+            log.warn("checkpoint flush round failed: {}", e.getMessage());
+        }
+    }
+
+    private static String threadName(RunnableConfig config) {
+        return config.threadId().orElseThrow(() -> new IllegalArgumentException("threadId isn't allow null"));
+    }
+
+    /**
+     * 线程最近的检查点（最新的在前）
+     */
+    private static final class Recent {
+
+        private final int capacity;
+        private final Deque<Checkpoint> checkpoints;
+        /** 租约到期时刻（System.nanoTime），0 表示未持有 */
+        private volatile long leaseUntil;
+        private final AtomicBoolean renewing = new AtomicBoolean();
+
+        Recent(int capacity) {
+            this.capacity = capacity;
+            this.checkpoints = new ArrayDeque<>(capacity);
+        }
+
+        synchronized void push(Checkpoint checkpoint) {
+            checkpoints.addFirst(checkpoint);
+            while (checkpoints.size() > capacity) {
+                checkpoints.removeLast();
+            }
+        }
+
+        synchronized Optional<Checkpoint> latest() {
+            return Optional.ofNullable(checkpoints.peekFirst());
+        }
+
+        synchronized Optional<Checkpoint> find(String checkPointId) {
+            return checkpoints.stream().filter(cp -> cp.getId().equals(checkPointId)).findFirst();
+        }
+
+        synchronized boolean isLatest(String checkPointId) {
+            Checkpoint latest = checkpoints.peekFirst();
+            return latest != null && latest.getId().equals(checkPointId);
+        }
+
+        boolean leased() {
+            return leaseUntil != 0 && leaseUntil - System.nanoTime() > 0;
+        }
+    }
+
+    /**
+     * 取得的租约
+     *
+     * @param latestCheckpointId Redis 中的最新检查点ID
+     * @param validUntil         本地认为租约有效的截止时刻（System.nanoTime，从发出请求时算起）
+     */
+    private record Grant(String latestCheckpointId, long validUntil) {
+    }
+
+    /**
+     * 线程待回写的检查点（最旧的在前）；flushLock 保证同一线程的批次按顺序落地
+     */
+    private static final class PendingWrites {
+
+        private final ReentrantLock flushLock = new ReentrantLock();
+        private List<Checkpoint> queue = new ArrayList<>();
+
+        synchronized void add(Checkpoint checkpoint) {
+            queue.add(checkpoint);
+        }
+
+        synchronized List<Checkpoint> drain() {
+            List<Checkpoint> batch = queue;
+            queue = new ArrayList<>();
+            return batch;
+        }
+
+        synchronized void requeue(List<Checkpoint> batch) {
+            batch.addAll(queue);
+            queue = batch;
+        }
+
+        synchronized int size() {
+            return queue.size();
+        }
+
+        synchronized boolean isEmpty() {
+            return queue.isEmpty();
+        }
+    }
+
+    /**
+     * L1 与回写统计
+     *
+     * @param l1Hits             L1 命中次数（不访问 Redis）
+     * @param l1Misses           L1 未命中次数（取租约并可能读取 Redis）
+     * @param leaseRequests      取得或续约租约的 Redis 往返次数
+     * @param leaseConflicts     等待 leaseWait 后仍未取得租约的次数
+     * @param pendingThreads     有积压写入的线程数
+     * @param pendingCheckpoints 积压的检查点数
+     * @param flushedBatches     已回写的批次数
+     * @param flushedCheckpoints 已回写的检查点数
+     * @param flushFailures      回写失败次数
+     */
+    public record Stats(long l1Hits, long l1Misses, long leaseRequests, long leaseConflicts, int pendingThreads, int pendingCheckpoints,
+                        long flushedBatches, long flushedCheckpoints, long flushFailures) {
+
+        public double hitRate() {
+            long total = l1Hits + l1Misses;
+            return total == 0 ? 0 : (double) l1Hits / total;
+        }
+    }
+
+    public static class Builder {
+        private BatchingCheckpointSaver delegate;
+        private DurabilityMode durability = DurabilityMode.FLUSH_ON_END;
+        private String owner = "tier-" + UUID.randomUUID();
+        private Duration leaseDuration = Duration.ofSeconds(5);
+        private Duration leaseWait;
+        private long maxThreads = 1000;
+        private Duration idleTtl = Duration.ofMinutes(30);
+        private int recentPerThread = 4;
+        private Duration flushInterval = Duration.ofMillis(200);
+        private int maxPendingPerThread = 64;
+
+        /**
+         * 下游保存器（紧凑格式的 Redis 保存器或其分片）
+         */
+        public Builder delegate(BatchingCheckpointSaver delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * 租约持有者标识，默认随机生成；同一进程内的多个实例必须不同
+         */
+        public Builder owner(String owner) {
+            this.owner = owner;
+            return this;
+        }
+
+        /**
+         * 线程租约时长，默认 5 秒：持有期间命中不访问 Redis，也是线程换节点时新节点最长的等待时间
+         */
+        public Builder leaseDuration(Duration leaseDuration) {
+            this.leaseDuration = leaseDuration;
+            return this;
+        }
+
+        /**
+         * 其他节点持有租约时最多等待的时长，默认等于租约时长
+         */
+        public Builder leaseWait(Duration leaseWait) {
+            this.leaseWait = leaseWait;
+            return this;
+        }
+
+        public Builder durability(DurabilityMode durability) {
+            this.durability = durability;
+            return this;
+        }
+
+        /**
+         * L1 最多保存的线程数
+         */
+        public Builder maxThreads(long maxThreads) {
+            this.maxThreads = maxThreads;
+            return this;
+        }
+
+        /**
+         * 线程在 L1 中的空闲过期时间
+         */
+        public Builder idleTtl(Duration idleTtl) {
+            this.idleTtl = idleTtl;
+            return this;
+        }
+
+        /**
+         * 每个线程在 L1 中保留的最近检查点数
+         */
+        public Builder recentPerThread(int recentPerThread) {
+            this.recentPerThread = recentPerThread;
+            return this;
+        }
+
+        /**
+         * ASYNC 模式下的后台回写间隔
+         */
+        public Builder flushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        /**
+         * 单个线程积压超过该数量时立即触发回写
+         */
+        public Builder maxPendingPerThread(int maxPendingPerThread) {
+            this.maxPendingPerThread = maxPendingPerThread;
+            return this;
+        }
+
+        public TieredCheckpointSaver build() {
+            Objects.requireNonNull(delegate, "delegate cannot be null");
+            Objects.requireNonNull(durability, "durability cannot be null");
+            Objects.requireNonNull(owner, "owner cannot be null");
+            if (recentPerThread < 1) {
+                throw new IllegalArgumentException("recentPerThread must be positive");
+            }
+            if (leaseDuration == null || leaseDuration.toMillis() < 1) {
+                throw new IllegalArgumentException("leaseDuration must be positive");
+            }
+            if (leaseWait == null) {
+                leaseWait = leaseDuration;
+            }
+            return new TieredCheckpointSaver(this);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.lks.graphAgent.concurrency;
+
+import com.lks.common.concurrency.RunRejectedException;
+import com.lks.common.concurrency.ThreadRunGate;
+import org.redisson.api.RFuture;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 跨进程的按线程串行执行：多个实例共用同一个 Redis 检查点时，同一 threadId 同一时刻只在一个实例上运行
+ *
+ * 先经进程内的 gate 串行（同一实例上的重叠运行不必去 Redis 抢锁），再获取该线程的 Redisson 锁。
+ * 锁不设租期，由 Redisson 看门狗在运行期间续期，实例崩溃后锁在看门狗超时后自动失效。
+ * 运行在响应式线程上结束，因此每次运行用随机数作为锁的持有者标识，而不是 Java 线程ID。
+ */
+public class RedissonThreadRunGate implements ThreadRunGate {
+
+    private static final Logger log = LoggerFactory.getLogger(RedissonThreadRunGate.class);
+
+    private final RedissonClient redisson;
+    private final ThreadRunGate local;
+    private final String keyPrefix;
+    private final Mode mode;
+    private final Duration maxWait;
+    private final Duration retryAfter;
+
+    private RedissonThreadRunGate(Builder builder) {
+        this.redisson = builder.redisson;
+        this.local = builder.local;
+        this.keyPrefix = builder.keyPrefix;
+        this.mode = builder.mode;
+        this.maxWait = builder.maxWait;
+        this.retryAfter = builder.retryAfter;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public <T> Flux<T> run(String threadId, Supplier<Flux<T>> run) {
+        return local.run(threadId, () -> lockAndRun(threadId, run));
+    }
+
+    private <T> Flux<T> lockAndRun(String threadId, Supplier<Flux<T>> run) {
+        return Flux.defer(() -> {
+            RLock lock = redisson.getLock(keyPrefix + threadId);
+            long owner = ThreadLocalRandom.current().nextLong();
+            long waitMillis = mode == Mode.REJECT ? 0 : maxWait.toMillis();
+            RFuture<Boolean> locking = lock.tryLockAsync(waitMillis, -1, TimeUnit.MILLISECONDS, owner);
+            AtomicBoolean handedOver = new AtomicBoolean();
+            return Mono.fromFuture(locking.toCompletableFuture(), true)
+                    .doOnCancel(() -> locking.whenComplete((locked, error) -> {
+                        // 抢锁期间被取消：之后拿到的锁没有人会释放，这里释放
+                        if (Boolean.TRUE.equals(locked) && !handedOver.get()) {
+                            unlock(lock, owner);
+                        }
+                    }))
+                    .flatMapMany(locked -> {
+                        handedOver.set(true);
+                        if (!locked) {
+                            return Flux.error(new RunRejectedException(mode == Mode.REJECT
+                                    ? RunRejectedException.Reason.THREAD_BUSY
+                                    : RunRejectedException.Reason.THREAD_WAIT_TIMEOUT,
+                                    "Thread " + threadId + " has a run in progress on another instance", retryAfter));
+                        }
+                        return Flux.defer(run).doFinally(signal -> unlock(lock, owner));
+                    });
+        });
+    }
+
+    private void unlock(RLock lock, long owner) {
+        lock.unlockAsync(owner).whenComplete((ignored, error) -> {
+            if (error != null) {
+                // 锁已因看门狗停止续期而过期
+                log.warn("Failed to release run lock {}: {}", lock.getName(), error.getMessage());
+            }
+        });
+    }
+
+    public static class Builder {
+        private RedissonClient redisson;
+        private ThreadRunGate local;
+        private String keyPrefix = "agent:run-lock:";
+        private Mode mode = Mode.QUEUE;
+        private Duration maxWait = Duration.ofSeconds(30);
+        private Duration retryAfter = Duration.ofSeconds(1);
+
+        public Builder redisson(RedissonClient redisson) {
+            this.redisson = redisson;
+            return this;
+        }
+
+        /**
+         * 进程内的按线程串行 gate，先经它排队再抢 Redis 锁
+         */
+        public Builder local(ThreadRunGate local) {
+            this.local = local;
+            return this;
+        }
+
+        /**
+         * 锁的键前缀，默认 agent:run-lock:
+         */
+        public Builder keyPrefix(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+            return this;
+        }
+
+        /**
+         * 其他实例上有运行时的处理策略：排队时最多等待 maxWait，拒绝时不等待
+         */
+        public Builder mode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * 等待其他实例上的运行结束的最长时长，默认 30 秒
+         */
+        public Builder maxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+            return this;
+        }
+
+        /**
+         * 拒绝时建议客户端等待的时长，默认 1 秒
+         */
+        public Builder retryAfter(Duration retryAfter) {
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
+        public RedissonThreadRunGate build() {
+            Objects.requireNonNull(redisson, "redisson cannot be null");
+            Objects.requireNonNull(local, "local cannot be null");
+            Objects.requireNonNull(mode, "mode cannot be null");
+            return new RedissonThreadRunGate(this);
+        }
+    }
+}
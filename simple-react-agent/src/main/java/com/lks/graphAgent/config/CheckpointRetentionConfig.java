@@ -0,0 +1,96 @@
+package com.lks.graphAgent.config;
+
+import com.lks.common.checkpoint.CheckpointRetention;
+import com.lks.common.checkpoint.CheckpointRetentionPolicy;
+import com.lks.graphAgent.checkpoint.CheckpointCompactor;
+import com.lks.graphAgent.checkpoint.CompactRedisSaver;
+import com.lks.graphAgent.checkpoint.ShardedCheckpointSaver;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.Map;
+
+@Configuration
+@ConditionalOnProperty(prefix = "agent.checkpoint.retention", name = "enabled", havingValue = "true")
+public class CheckpointRetentionConfig {
+
+    @Value("${agent.checkpoint.retention.keep-last:0}")
+    private int keepLast;
+
+    @Value("${agent.checkpoint.retention.step-boundaries-only:false}")
+    private boolean stepBoundariesOnly;
+
+    @Value("${agent.checkpoint.retention.max-age:0s}")
+    private Duration maxAge;
+
+    @Value("${agent.checkpoint.retention.interval:5m}")
+    private Duration interval;
+
+    @Value("${agent.checkpoint.retention.batch-size:100}")
+    private int batchSize;
+
+    /** 检查点总内存预算，超出时删除最久未写入的线程；0 表示不限 */
+    @Value("${agent.checkpoint.retention.memory-budget:0B}")
+    private DataSize memoryBudget;
+
+    /**
+     * 检查点保留策略：默认策略 + 按线程ID前缀覆盖（agent.checkpoint.retention.policies.[前缀].*）
+     */
+    @Bean
+    public CheckpointRetention checkpointRetention(Environment environment) {
+        CheckpointRetention.Builder builder = CheckpointRetention.builder()
+                .defaultPolicy(new CheckpointRetentionPolicy(keepLast, stepBoundariesOnly, maxAge));
+        Binder.get(environment)
+                .bind("agent.checkpoint.retention.policies", Bindable.mapOf(String.class, PolicyProperties.class))
+                .orElse(Map.of())
+                .forEach((prefix, policy) -> builder.policy(prefix, policy.toPolicy(keepLast, stepBoundariesOnly, maxAge)));
+        return builder.build();
+    }
+
+    /**
+     * 后台裁剪紧凑格式的检查点（legacy 格式不支持）；分片时逐个分片裁剪
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "agent.checkpoint", name = "format", havingValue = "compact", matchIfMissing = true)
+    public CheckpointCompactor checkpointCompactor(ObjectProvider<CompactRedisSaver> compactSaverProvider,
+                                                   ObjectProvider<ShardedCheckpointSaver> shardedSaverProvider,
+                                                   ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        ShardedCheckpointSaver shardedSaver = shardedSaverProvider.getIfAvailable();
+        CheckpointCompactor.Builder builder = CheckpointCompactor.builder();
+        if (shardedSaver != null) {
+            builder.savers(shardedSaver::shards);
+        }
+        else {
+            builder.saver(compactSaverProvider.getObject());
+        }
+        return builder
+                .interval(interval)
+                .batchSize(batchSize)
+                .memoryBudget(memoryBudget.toBytes())
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "redis");
+    }
+
+    /**
+     * 单个前缀的策略，未设置的项沿用默认策略
+     */
+    record PolicyProperties(Integer keepLast, Boolean stepBoundariesOnly, Duration maxAge) {
+
+        CheckpointRetentionPolicy toPolicy(int defaultKeepLast, boolean defaultStepBoundariesOnly, Duration defaultMaxAge) {
+            return new CheckpointRetentionPolicy(
+                    keepLast != null ? keepLast : defaultKeepLast,
+                    stepBoundariesOnly != null ? stepBoundariesOnly : defaultStepBoundariesOnly,
+                    maxAge != null ? maxAge : defaultMaxAge);
+        }
+    }
+}
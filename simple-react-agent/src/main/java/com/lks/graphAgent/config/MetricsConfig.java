@@ -0,0 +1,36 @@
+package com.lks.graphAgent.config;
+
+import com.lks.common.metrics.AgentMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * 代理运行指标Bean
+     *
+     * 节点、模型、工具、子代理与检查点的耗时 / token / 负载指标，经 Actuator 在 /actuator/prometheus 导出。
+     * 设置 agent.metrics.enabled=false 可关闭埋点。
+     *
+     * @return AgentMetrics 实例
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "agent.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public AgentMetrics agentMetrics(ObjectProvider<MeterRegistry> meterRegistryProvider,
+                                     @Value("${agent.metrics.max-tag-values:100}") int maxTagValues,
+                                     @Value("${agent.metrics.max-expected-duration:30m}") Duration maxExpectedDuration) {
+        return AgentMetrics.builder()
+                .registry(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry))
+                .maxTagValues(maxTagValues)
+                .maxExpectedDuration(maxExpectedDuration)
+                .build();
+    }
+}
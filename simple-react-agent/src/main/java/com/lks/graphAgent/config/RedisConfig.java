@@ -1,32 +1,248 @@
 package com.lks.graphAgent.config;
 
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
 import com.alibaba.cloud.ai.graph.checkpoint.savers.redis.RedisSaver;
-import com.alibaba.cloud.ai.graph.serializer.StateSerializer;
+import com.lks.common.checkpoint.CheckpointCompression;
+import com.lks.common.checkpoint.CheckpointRetention;
+import com.lks.common.metrics.AgentMetrics;
+import com.lks.graphAgent.checkpoint.BatchingCheckpointSaver;
+import com.lks.graphAgent.checkpoint.CheckpointShardFactory;
+import com.lks.graphAgent.checkpoint.CompactRedisSaver;
+import com.lks.graphAgent.checkpoint.DurabilityMode;
+import com.lks.graphAgent.checkpoint.LegacyRedisCheckpointReader;
+import com.lks.graphAgent.checkpoint.MeteredBatchingCheckpointSaver;
+import com.lks.graphAgent.checkpoint.ShardedCheckpointSaver;
+import com.lks.graphAgent.checkpoint.TieredCheckpointSaver;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.codec.JsonJacksonCodec;
 import org.redisson.config.Config;
+import org.redisson.config.ReadMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.List;
 
 @Configuration
 public class RedisConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(RedisConfig.class);
+
     @Value("${spring.data.redis.host}")
     private String redisHost;
 
     @Value("${spring.data.redis.port}")
     private int redisPort;
 
+    @Value("${agent.checkpoint.compression:lz4}")
+    private String checkpointCompression;
+
+    @Value("${agent.checkpoint.compression-threshold:512}")
+    private int compressionThreshold;
+
+    @Value("${agent.checkpoint.snapshot-interval:10}")
+    private int snapshotInterval;
+
+    /** 是否在首次访问时迁移旧版 RedisSaver 数据 */
+    @Value("${agent.checkpoint.migrate-legacy:true}")
+    private boolean migrateLegacy;
+
+    /** 是否在 Redis 前加一层进程内 L1 + 回写 */
+    @Value("${agent.checkpoint.tier.enabled:true}")
+    private boolean tierEnabled;
+
+    /** 持久化模式：sync | async | flush-on-end */
+    @Value("${agent.checkpoint.tier.durability:flush-on-end}")
+    private String durability;
+
+    @Value("${agent.checkpoint.tier.max-threads:1000}")
+    private long tierMaxThreads;
+
+    @Value("${agent.checkpoint.tier.idle-ttl:30m}")
+    private Duration tierIdleTtl;
+
+    @Value("${agent.checkpoint.tier.flush-interval:200ms}")
+    private Duration flushInterval;
+
+    @Value("${agent.checkpoint.tier.max-pending:64}")
+    private int maxPending;
+
+    /** 线程租约时长：持有期间 L1 命中不访问 Redis，也是线程换节点时新节点最长的等待时间 */
+    @Value("${agent.checkpoint.tier.lease:5s}")
+    private Duration tierLease;
+
+    /** 读命令发往：master（主节点）| replica（只读副本，可能读到复制延迟内的旧数据） */
+    @Value("${agent.redis.read-mode:master}")
+    private String readMode;
+
+    @Value("${agent.checkpoint.sharding.virtual-nodes:160}")
+    private int virtualNodes;
+
+    @Value("${agent.checkpoint.sharding.rebalance-on-start:true}")
+    private boolean rebalanceOnStart;
+
+    /**
+     * 配置了 spring.data.redis.cluster.nodes 时连接 Redis Cluster（检查点按键的哈希槽分布到各主节点），否则连接单个实例
+     */
     @Bean
-    public RedissonClient redissonClient() {
+    public RedissonClient redissonClient(Environment environment) {
         Config config = new Config();
-        String redisAddress = "redis://" + redisHost + ":" + redisPort;
-        config.useSingleServer()
-              .setAddress(redisAddress);
+        List<String> clusterNodes = Binder.get(environment)
+                .bind("spring.data.redis.cluster.nodes", Bindable.listOf(String.class))
+                .orElse(List.of());
+        if (clusterNodes.isEmpty()) {
+            config.useSingleServer()
+                  .setAddress(redisUri(redisHost + ":" + redisPort));
+        }
+        else {
+            config.useClusterServers()
+                  .addNodeAddress(clusterNodes.stream().map(RedisConfig::redisUri).toArray(String[]::new))
+                  .setReadMode(readMode());
+        }
         config.setCodec(new JsonJacksonCodec());
-        
+
         return Redisson.create(config);
     }
-}
\ No newline at end of file
+
+    /**
+     * 紧凑格式的 Redis 检查点保存器；启用保留策略时写入刷新线程过期时间，并由 CheckpointCompactor 裁剪
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "agent.checkpoint", name = "format", havingValue = "compact", matchIfMissing = true)
+    @ConditionalOnProperty(prefix = "agent.checkpoint.sharding", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public CompactRedisSaver compactRedisSaver(RedissonClient redissonClient, ObjectProvider<CheckpointRetention> retentionProvider) {
+        return compactSaver("redis", redissonClient, retentionProvider.getIfAvailable())
+                .legacyReader(migrateLegacy ? new LegacyRedisCheckpointReader(redissonClient) : null)
+                .build();
+    }
+
+    /**
+     * 按地址创建检查点分片：只有主节点时直连，配置了副本时以主从模式连接并按 read-mode 分发读命令
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "agent.checkpoint.sharding", name = "enabled", havingValue = "true")
+    public CheckpointShardFactory checkpointShardFactory(ObjectProvider<CheckpointRetention> retentionProvider) {
+        return (name, address, replicas) -> {
+            Config config = new Config();
+            if (replicas == null || replicas.isEmpty()) {
+                config.useSingleServer()
+                      .setAddress(redisUri(address));
+            }
+            else {
+                config.useMasterSlaveServers()
+                      .setMasterAddress(redisUri(address))
+                      .addSlaveAddress(replicas.stream().map(RedisConfig::redisUri).toArray(String[]::new))
+                      .setReadMode(readMode());
+            }
+            return compactSaver(name, Redisson.create(config), retentionProvider.getIfAvailable()).build();
+        };
+    }
+
+    /**
+     * 按 threadId 一致性哈希分片到多个独立 Redis 实例的检查点保存器（agent.checkpoint.sharding.shards）
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "agent.checkpoint.sharding", name = "enabled", havingValue = "true")
+    public ShardedCheckpointSaver shardedCheckpointSaver(Environment environment, CheckpointShardFactory shardFactory,
+                                                         ObjectProvider<AgentMetrics> metricsProvider,
+                                                         ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        List<ShardProperties> shards = Binder.get(environment)
+                .bind("agent.checkpoint.sharding.shards", Bindable.listOf(ShardProperties.class))
+                .orElseThrow(() -> new IllegalStateException("agent.checkpoint.sharding.shards must not be empty"));
+        ShardedCheckpointSaver.Builder builder = ShardedCheckpointSaver.builder()
+                .virtualNodes(virtualNodes)
+                .rebalanceOnStart(rebalanceOnStart)
+                .metrics(metricsProvider.getIfAvailable());
+        for (ShardProperties shard : shards) {
+            builder.shard(shardFactory.create(shard.name(), shard.address(), shard.replicas()));
+        }
+        return builder.build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    /**
+     * 代理使用的检查点保存器（Redis 层外可选 L1 + 回写），注入 BaseCheckpointSaver 时优先于 compactRedisSaver
+     *
+     * L1 依赖紧凑格式的租约与最新ID键校验本地副本，legacy 格式（框架 RedisSaver）时不启用 L1。
+     */
+    @Bean
+    @Primary
+    public BaseCheckpointSaver checkpointSaver(RedissonClient redissonClient, ObjectProvider<CompactRedisSaver> compactSaverProvider,
+                                               ObjectProvider<ShardedCheckpointSaver> shardedSaverProvider,
+                                               ObjectProvider<AgentMetrics> metricsProvider) {
+        BaseCheckpointSaver saver = shardedSaverProvider.getIfAvailable();
+        if (saver == null) {
+            saver = compactSaverProvider.getIfAvailable();
+        }
+        if (saver == null) {
+            saver = RedisSaver.builder().redisson(redissonClient).build();
+        }
+        BaseCheckpointSaver redisSaver = instrument(saver, metricsProvider.getIfAvailable());
+        if (!tierEnabled) {
+            return redisSaver;
+        }
+        if (!(redisSaver instanceof BatchingCheckpointSaver batching)) {
+            log.warn("agent.checkpoint.tier requires the compact checkpoint format, L1 is disabled for the legacy RedisSaver");
+            return redisSaver;
+        }
+        // 热点线程的最近检查点留在本地，写入按持久化模式批量回写 Redis
+        return TieredCheckpointSaver.builder()
+                .delegate(batching)
+                .durability(DurabilityMode.of(durability))
+                .leaseDuration(tierLease)
+                .maxThreads(tierMaxThreads)
+                .idleTtl(tierIdleTtl)
+                .flushInterval(flushInterval)
+                .maxPendingPerThread(maxPending)
+                .build();
+    }
+
+    private CompactRedisSaver.Builder compactSaver(String name, RedissonClient redissonClient, CheckpointRetention retention) {
+        return CompactRedisSaver.builder()
+                .name(name)
+                .redisson(redissonClient)
+                .compression(CheckpointCompression.valueOf(checkpointCompression.toUpperCase()))
+                .compressionThreshold(compressionThreshold)
+                .snapshotInterval(snapshotInterval)
+                .retention(retention);
+    }
+
+    private ReadMode readMode() {
+        return "replica".equalsIgnoreCase(readMode) ? ReadMode.SLAVE : ReadMode.MASTER;
+    }
+
+    private static String redisUri(String address) {
+        return address.contains("://") ? address : "redis://" + address;
+    }
+
+    /**
+     * 单个分片：名称决定在哈希环上的位置，修改名称会使该分片的线程换归属
+     */
+    record ShardProperties(String name, String address, List<String> replicas) {
+    }
+
+    /**
+     * 统计 Redis 层的读写耗时；L1 层不包装，控制器按 TieredCheckpointSaver 类型在运行结束时回写
+     */
+    private static BaseCheckpointSaver instrument(BaseCheckpointSaver redisSaver, AgentMetrics metrics) {
+        if (metrics == null) {
+            return redisSaver;
+        }
+        if (redisSaver instanceof BatchingCheckpointSaver batching) {
+            return new MeteredBatchingCheckpointSaver(batching, metrics, "redis");
+        }
+        return metrics.instrument(redisSaver, "redis");
+    }
+}
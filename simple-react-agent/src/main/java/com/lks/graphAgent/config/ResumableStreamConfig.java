@@ -0,0 +1,64 @@
+package com.lks.graphAgent.config;
+
+import com.lks.common.stream.ResumableStreams;
+import com.lks.graphAgent.stream.RedisReplayLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(prefix = "agent.stream.poem.resumable", name = "enabled", havingValue = "true")
+public class ResumableStreamConfig {
+
+    @Value("${agent.stream.poem.resumable.buffer-size:1024}")
+    private int bufferSize;
+
+    @Value("${agent.stream.poem.resumable.retention:5m}")
+    private Duration retention;
+
+    @Value("${agent.stream.poem.resumable.detach-timeout:2m}")
+    private Duration detachTimeout;
+
+    @Value("${agent.stream.poem.resumable.max-streams:10000}")
+    private long maxStreams;
+
+    /** 是否把输出同时写入 Redis Streams，供重连到其他实例时回放（多实例部署时开启） */
+    @Value("${agent.stream.poem.resumable.redis-enabled:false}")
+    private boolean redisEnabled;
+
+    @Value("${agent.stream.poem.resumable.redis-max-idle:2m}")
+    private Duration redisMaxIdle;
+
+    /**
+     * 诗歌 agent 的可续传输出
+     *
+     * 客户端断开后运行继续执行并缓冲输出，带 Last-Event-ID 重连时回放错过的事件再接上实时输出。
+     */
+    @Bean
+    public ResumableStreams poemResumableStreams(ObjectProvider<RedissonClient> redissonProvider,
+                                                 ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        ResumableStreams.Builder builder = ResumableStreams.builder()
+                .bufferSize(bufferSize)
+                .retention(retention)
+                .detachTimeout(detachTimeout)
+                .maxStreams(maxStreams);
+        if (redisEnabled) {
+            builder.replayLog(RedisReplayLog.builder()
+                    .redisson(redissonProvider.getObject())
+                    .keyPrefix("poem:stream:")
+                    .maxLen(bufferSize)
+                    .retention(retention)
+                    .maxIdle(redisMaxIdle)
+                    .build());
+        }
+        return builder.build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "simplePoemReactAgent");
+    }
+}
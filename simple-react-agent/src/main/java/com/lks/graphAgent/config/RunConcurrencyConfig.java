@@ -0,0 +1,93 @@
+package com.lks.graphAgent.config;
+
+import com.lks.common.concurrency.AdmissionController;
+import com.lks.common.concurrency.LocalThreadRunGate;
+import com.lks.common.concurrency.ThreadRunGate;
+import com.lks.graphAgent.concurrency.RedissonThreadRunGate;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(prefix = "agent.concurrency.poem", name = "enabled", havingValue = "true")
+public class RunConcurrencyConfig {
+
+    /** 同一线程上的重叠运行：queue（排队）| reject（立即拒绝） */
+    @Value("${agent.concurrency.poem.thread-mode:queue}")
+    private String threadMode;
+
+    @Value("${agent.concurrency.poem.thread-max-wait:30s}")
+    private Duration threadMaxWait;
+
+    @Value("${agent.concurrency.poem.thread-max-queued:4}")
+    private int threadMaxQueued;
+
+    /** 是否经 Redisson 锁跨实例串行（多实例共用同一 Redis 时开启） */
+    @Value("${agent.concurrency.poem.distributed:false}")
+    private boolean distributed;
+
+    @Value("${agent.concurrency.poem.max-concurrent:64}")
+    private int maxConcurrent;
+
+    @Value("${agent.concurrency.poem.max-queued:128}")
+    private int maxQueued;
+
+    @Value("${agent.concurrency.poem.queue-timeout:5s}")
+    private Duration queueTimeout;
+
+    @Value("${agent.concurrency.poem.retry-after:1s}")
+    private Duration retryAfter;
+
+    /**
+     * 诗歌 agent 的按线程串行 gate
+     *
+     * 同一 thread_Id 的重叠请求按配置排队或拒绝，避免并发运行交错写同一条检查点链；
+     * 开启 distributed 时再经 Redisson 锁跨实例串行。
+     */
+    @Bean
+    public ThreadRunGate poemThreadRunGate(ObjectProvider<RedissonClient> redissonProvider,
+                                           ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        ThreadRunGate.Mode mode = ThreadRunGate.Mode.of(threadMode);
+        LocalThreadRunGate local = LocalThreadRunGate.builder()
+                .mode(mode)
+                .maxWait(threadMaxWait)
+                .maxQueuedPerThread(threadMaxQueued)
+                .retryAfter(retryAfter)
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "simplePoemReactAgent");
+        if (!distributed) {
+            return local;
+        }
+        return RedissonThreadRunGate.builder()
+                .redisson(redissonProvider.getObject())
+                .local(local)
+                .keyPrefix("poem:run-lock:")
+                .mode(mode)
+                .maxWait(threadMaxWait)
+                .retryAfter(retryAfter)
+                .build();
+    }
+
+    /**
+     * 诗歌 agent 的全局准入控制
+     *
+     * 并发运行数有上限，超出时排队（有长度上限与超时），队列满时立即返回 429。
+     */
+    @Bean
+    public AdmissionController poemAdmissionController(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        return AdmissionController.builder()
+                .maxConcurrent(maxConcurrent)
+                .maxQueued(maxQueued)
+                .queueTimeout(queueTimeout)
+                .retryAfter(retryAfter)
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "simplePoemReactAgent");
+    }
+}
@@ -3,15 +3,31 @@ package com.lks.graphAgent.config;
 import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.alibaba.cloud.ai.graph.CompileConfig;
+import com.alibaba.cloud.ai.graph.agent.Builder;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
-import com.alibaba.cloud.ai.graph.checkpoint.savers.redis.RedisSaver;
-import org.redisson.api.RedissonClient;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.config.SaverConfig;
+import com.lks.common.cache.CachingChatModel;
+import com.lks.common.cache.ResponseCache;
+import com.lks.common.embedding.HashingEmbeddingFunction;
+import com.lks.common.metrics.AgentMetrics;
+import com.lks.common.ratelimit.ModelCallScheduler;
+import com.lks.common.ratelimit.ModelPriority;
+import com.lks.common.ratelimit.ScheduledChatModel;
+import com.lks.common.stream.StreamingProjection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 public class SimpleReactAgentWithRedisSaverConfig {
 
@@ -20,6 +36,31 @@ public class SimpleReactAgentWithRedisSaverConfig {
     @Value("${spring.ai.dashscope.api-key}")
     private String API_KEY;
 
+    /** 是否为诗歌 agent 启用响应缓存 */
+    @Value("${agent.cache.poem.enabled:false}")
+    private boolean cacheEnabled;
+
+    @Value("${agent.cache.poem.max-size:1000}")
+    private long cacheMaxSize;
+
+    @Value("${agent.cache.poem.ttl:1h}")
+    private Duration cacheTtl;
+
+    /** 是否启用语义相似匹配（基于本地哈希向量） */
+    @Value("${agent.cache.poem.semantic-enabled:false}")
+    private boolean semanticEnabled;
+
+    @Value("${agent.cache.poem.similarity-threshold:0.95}")
+    private double similarityThreshold;
+
+    /** 流式输出微批时间窗口，0 表示逐 token 输出 */
+    @Value("${agent.stream.poem.batch-window:50ms}")
+    private Duration batchWindow;
+
+    /** 单帧累计字节数上限 */
+    @Value("${agent.stream.poem.batch-max-bytes:512}")
+    private int batchMaxBytes;
+
     @Bean
     public DashScopeApi dashScopeApi() {
         return DashScopeApi.builder()
@@ -27,9 +68,34 @@ public class SimpleReactAgentWithRedisSaverConfig {
                 .build();
     }
 
+    /**
+     * 诗歌 agent 的模型调用调度器
+     *
+     * 仅在 agent.rate-limit.poem.enabled=true 时创建。按请求数与 token 数限速，收到 429 时自适应退避；
+     * /poem 是在线交互请求，以 INTERACTIVE 优先级排队，排队超过 acquire-timeout 时放弃调用。
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "agent.rate-limit.poem", name = "enabled", havingValue = "true")
+    public ModelCallScheduler poemModelScheduler(@Value("${agent.rate-limit.poem.requests-per-minute:60}") long requestsPerMinute,
+                                                 @Value("${agent.rate-limit.poem.tokens-per-minute:100000}") long tokensPerMinute,
+                                                 @Value("${agent.rate-limit.poem.burst:10s}") Duration burst,
+                                                 @Value("${agent.rate-limit.poem.max-concurrency:0}") int maxConcurrency,
+                                                 @Value("${agent.rate-limit.poem.acquire-timeout:60s}") Duration acquireTimeout,
+                                                 ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        return ModelCallScheduler.builder()
+                .requestsPerMinute(requestsPerMinute)
+                .tokensPerMinute(tokensPerMinute)
+                .burst(burst)
+                .maxConcurrency(maxConcurrency)
+                .acquireTimeout(acquireTimeout)
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "simplePoemReactAgent");
+    }
+
     @Bean(name = "qwenChatModel")
-    public ChatModel qwenChatModel(DashScopeApi dashScopeApi) {
-        return DashScopeChatModel.builder()
+    public ChatModel qwenChatModel(DashScopeApi dashScopeApi, ObjectProvider<ModelCallScheduler> schedulerProvider,
+                                   ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        ChatModel chatModel = DashScopeChatModel.builder()
                 .dashScopeApi(dashScopeApi)
                 .defaultOptions(DashScopeChatOptions.builder()
                         .model(CHAT_MODEL_NAME)
@@ -37,16 +103,61 @@ public class SimpleReactAgentWithRedisSaverConfig {
                         .enableThinking(true)
                         .build())
                 .build();
+        // 启用限流时经调度器排队，放在缓存内层，缓存命中不占用额度
+        ModelCallScheduler scheduler = schedulerProvider.getIfAvailable();
+        if (scheduler != null) {
+            chatModel = ScheduledChatModel.builder()
+                    .delegate(chatModel)
+                    .scheduler(scheduler)
+                    .priority(ModelPriority.INTERACTIVE)
+                    .reservedOutputTokens(1000)  // 与 maxToken 一致
+                    .build();
+        }
+        if (!cacheEnabled) {
+            return chatModel;
+        }
+        // 相同的提问直接从缓存返回，流式调用时以Flux重放缓存内容
+        ResponseCache responseCache = ResponseCache.builder()
+                .name("simplePoemReactAgent")
+                .maxSize(cacheMaxSize)
+                .ttl(cacheTtl)
+                .embeddingFunction(semanticEnabled ? new HashingEmbeddingFunction() : null)
+                .similarityThreshold(similarityThreshold)
+                .build()
+                .bindTo(meterRegistryProvider.getIfAvailable(() -> Metrics.globalRegistry), "simplePoemReactAgent");
+        return CachingChatModel.builder()
+                .delegate(chatModel)
+                .cache(responseCache)
+                .build();
     }
 
     @Bean(name = "simplePoemReactAgent")
-    public ReactAgent reactAgent(@Qualifier("qwenChatModel") ChatModel qwenChatModel, RedissonClient redissonClient) {
-        return ReactAgent.builder()
+    public ReactAgent reactAgent(@Qualifier("qwenChatModel") ChatModel qwenChatModel, BaseCheckpointSaver checkpointSaver,
+                                 ObjectProvider<AgentMetrics> metricsProvider) {
+        AgentMetrics metrics = metricsProvider.getIfAvailable();
+        // 设置 compileConfig 后建造者会忽略 saver()，保存器在 SaverConfig 中注册
+        CompileConfig.Builder compileConfig = CompileConfig.builder()
+                .saverConfig(SaverConfig.builder().register(checkpointSaver).build())
+                .recursionLimit(Integer.MAX_VALUE);
+        Builder builder = ReactAgent.builder()
                 .name("simplePoemReactAgent") //名称必选
                 .systemPrompt("你是一个文采斐然的唐代诗人满腹经纶、学富五车，能做出世界上最动人的诗句。请先逐步分析用户的需求，然后创作诗歌")
                 .model(qwenChatModel)
-                .saver(RedisSaver.builder().redisson(redissonClient).build())
-                .enableLogging(true)
+                .enableLogging(true);
+        if (metrics != null) {
+            // 节点耗时、模型首 token 延迟与 token 数、运行耗时
+            compileConfig.withLifecycleListener(metrics.getLifecycleListener());
+            builder.interceptors(metrics.getModelInterceptor(), metrics.getToolInterceptor())
+                    .hooks(metrics.getHook());
+        }
+        return builder.compileConfig(compileConfig.build()).build();
+    }
+
+    @Bean(name = "poemStreamingProjection")
+    public StreamingProjection poemStreamingProjection() {
+        return StreamingProjection.builder()
+                .batchWindow(batchWindow)
+                .batchMaxBytes(batchMaxBytes)
                 .build();
     }
 }
@@ -0,0 +1,131 @@
+package com.lks.graphAgent.controller;
+
+import com.lks.graphAgent.checkpoint.CheckpointCompactor;
+import com.lks.graphAgent.checkpoint.CheckpointShardFactory;
+import com.lks.graphAgent.checkpoint.CompactRedisSaver;
+import com.lks.graphAgent.checkpoint.ShardedCheckpointSaver;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 检查点存储管理接口
+ *
+ * 扫描与裁剪都是阻塞的 Redis 调用，在 boundedElastic 线程上执行，不占用 WebFlux 事件循环。
+ */
+@RestController
+@RequestMapping("/admin/checkpoints")
+public class CheckpointAdminController {
+
+    /** 启用 agent.checkpoint.retention 且为 compact 格式时存在 */
+    @Autowired
+    private ObjectProvider<CheckpointCompactor> compactorProvider;
+
+    /** 启用 agent.checkpoint.sharding 时存在 */
+    @Autowired
+    private ObjectProvider<ShardedCheckpointSaver> shardedSaverProvider;
+
+    @Autowired
+    private ObjectProvider<CheckpointShardFactory> shardFactoryProvider;
+
+    /**
+     * 检查点占用：线程数、检查点数、总字节数，以及占用最大的 top 个线程的检查点数与字节数
+     */
+    @GetMapping
+    public Mono<ResponseEntity<Object>> footprint(@RequestParam(value = "top", defaultValue = "20") int top) {
+        CheckpointCompactor compactor = compactorProvider.getIfAvailable();
+        if (compactor == null) {
+            return Mono.just(notEnabled());
+        }
+        return Mono.fromCallable(() -> ResponseEntity.ok((Object) compactor.footprint(Math.max(0, top))))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 立即执行一轮裁剪并返回结果
+     */
+    @PostMapping("/compact")
+    public Mono<ResponseEntity<Object>> compact() {
+        CheckpointCompactor compactor = compactorProvider.getIfAvailable();
+        if (compactor == null) {
+            return Mono.just(notEnabled());
+        }
+        return Mono.fromCallable(() -> ResponseEntity.ok((Object) compactor.runOnce()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 分片拓扑：各分片名、是否正在再平衡、累计移动的线程数
+     */
+    @GetMapping("/shards")
+    public ResponseEntity<Object> shards() {
+        ShardedCheckpointSaver shardedSaver = shardedSaverProvider.getIfAvailable();
+        if (shardedSaver == null) {
+            return shardingNotEnabled();
+        }
+        return ResponseEntity.ok(Map.of(
+                "shards", shardedSaver.shards().stream().map(CompactRedisSaver::name).toList(),
+                "rebalancing", shardedSaver.isRebalancing(),
+                "migratedThreads", shardedSaver.migratedThreads()));
+    }
+
+    /**
+     * 在线增加分片，归属变化的线程在后台移到新分片；只影响本实例，多实例部署时需在每个实例上执行或修改配置后滚动重启
+     */
+    @PostMapping("/shards")
+    public Mono<ResponseEntity<Object>> addShard(@RequestBody ShardRequest request) {
+        ShardedCheckpointSaver shardedSaver = shardedSaverProvider.getIfAvailable();
+        CheckpointShardFactory shardFactory = shardFactoryProvider.getIfAvailable();
+        if (shardedSaver == null || shardFactory == null) {
+            return Mono.just(shardingNotEnabled());
+        }
+        if (request.name() == null || request.name().isBlank() || request.address() == null || request.address().isBlank()) {
+            return Mono.just(ResponseEntity.badRequest().body(Map.of("message", "name and address are required")));
+        }
+        return Mono.fromCallable(() -> {
+                    CompactRedisSaver shard = shardFactory.create(request.name(), request.address(),
+                            request.replicas() != null ? request.replicas() : List.of());
+                    try {
+                        shardedSaver.addShard(shard);
+                    }
+                    catch (IllegalArgumentException e) {
+                        shard.redisson().shutdown();
+                        return ResponseEntity.status(HttpStatus.CONFLICT).body((Object) Map.of("message", e.getMessage()));
+                    }
+                    return shards();
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static ResponseEntity<Object> shardingNotEnabled() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("message", "Checkpoint sharding is not enabled (agent.checkpoint.sharding.enabled)"));
+    }
+
+    /**
+     * 新增分片请求
+     *
+     * @param name     分片名
+     * @param address  主节点地址
+     * @param replicas 只读副本地址
+     */
+    public record ShardRequest(String name, String address, List<String> replicas) {
+    }
+
+    private static ResponseEntity<Object> notEnabled() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("message", "Checkpoint retention is not enabled (agent.checkpoint.retention.enabled, compact format)"));
+    }
+}
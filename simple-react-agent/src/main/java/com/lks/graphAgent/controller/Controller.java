@@ -3,17 +3,36 @@ package com.lks.graphAgent.controller;
 import com.alibaba.cloud.ai.graph.NodeOutput;
 import com.alibaba.cloud.ai.graph.RunnableConfig;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
 import com.alibaba.cloud.ai.graph.exception.GraphRunnerException;
-import com.alibaba.cloud.ai.graph.streaming.OutputType;
-import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
-import org.springframework.ai.chat.messages.AssistantMessage;
-import org.springframework.ai.chat.messages.Message;
+import com.lks.common.concurrency.AdmissionController;
+import com.lks.common.concurrency.RunRejectedException;
+import com.lks.common.concurrency.ThreadRunGate;
+import com.lks.common.stream.ResumableEvent;
+import com.lks.common.stream.ResumableStreams;
+import com.lks.common.stream.StreamEvent;
+import com.lks.common.stream.StreamNotResumableException;
+import com.lks.common.stream.StreamingProjection;
+import com.lks.graphAgent.checkpoint.TieredCheckpointSaver;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
 
 
 @RestController
@@ -23,48 +42,121 @@ public class Controller {
     @Qualifier("simplePoemReactAgent")
     private ReactAgent reactAgent;
 
-    @GetMapping("/poem")
-    public Flux<String> getPoem(@RequestParam(value = "msg", defaultValue = "做一首关于春天的诗") String msg,
-                                @RequestParam(value = "thread_Id") String thread_Id) throws GraphRunnerException {
+    @Autowired
+    private BaseCheckpointSaver checkpointSaver;
+
+    @Autowired
+    @Qualifier("poemStreamingProjection")
+    private StreamingProjection streamingProjection;
+
+    /** 按线程串行（启用 agent.concurrency.poem 时存在） */
+    @Autowired
+    private ObjectProvider<ThreadRunGate> threadRunGateProvider;
+
+    /** 全局准入控制（启用 agent.concurrency.poem 时存在） */
+    @Autowired
+    private ObjectProvider<AdmissionController> admissionControllerProvider;
+
+    /** 可续传输出（启用 agent.stream.poem.resumable 时存在） */
+    @Autowired
+    private ObjectProvider<ResumableStreams> resumableStreamsProvider;
+
+    /**
+     * 流式作诗
+     *
+     * 以 SSE 输出三类事件：reasoning（思考过程）、answer（诗歌内容）、done（结束）。
+     * 空内容不会产生帧，相邻 token 按配置合并为微批。
+     * 同一 thread_Id 的重叠请求排队或返回 409，并发已满且排队超时或队列已满时返回 429。
+     * 启用可续传输出时每个事件带 id，断线后带 Last-Event-ID 重连会回放错过的事件并接上仍在进行的运行，
+     * 不会重新运行；无法续传时返回 410。
+     */
+    @GetMapping(value = "/poem", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> getPoem(@RequestParam(value = "msg", defaultValue = "做一首关于春天的诗") String msg,
+                                                 @RequestParam(value = "thread_Id") String thread_Id,
+                                                 @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
         // 创建带唯一threadId的配置，以便在Redis中跟踪状态
+        String threadId = "poem_thread_" + thread_Id;
         RunnableConfig config = RunnableConfig.builder()
-                .threadId("poem_thread_" + thread_Id)
+                .threadId(threadId)
                 .build();
-                
-        Flux<NodeOutput> stream = reactAgent.stream(msg, config);
-        
-        return stream.filter(output -> {
-            // 只处理包含实际内容的输出
-            if (output instanceof StreamingOutput streamingOutput) {
-                return streamingOutput.getOutputType() == OutputType.AGENT_MODEL_STREAMING || 
-                       streamingOutput.getOutputType() == OutputType.AGENT_MODEL_FINISHED;
+
+        ResumableStreams resumableStreams = resumableStreamsProvider.getIfAvailable();
+        if (resumableStreams != null && lastEventId != null && !lastEventId.isBlank()) {
+            // 重连：接上已有的运行，不再经过线程串行与准入控制
+            return resumableStreams.resume(threadId, lastEventId).map(this::toServerSentEvent);
+        }
+
+        // 轮到本线程且获得准入名额后才开始运行；先按线程排队，排队期间不占用全局名额
+        Flux<StreamEvent> run = Flux.defer(() -> {
+            Flux<NodeOutput> stream;
+            try {
+                stream = reactAgent.stream(msg, config);
             }
-            // 对于非StreamingOutput，检查是否是结束节点且包含有用信息
-            return "__END__".equals(output.node()) && output.state() != null;
-        }).mapNotNull(output -> {
-            if (output instanceof StreamingOutput streamingOutput) {
-                // 处理流式输出
-                if (streamingOutput.getOutputType() == OutputType.AGENT_MODEL_STREAMING) {
-                    Message message = streamingOutput.message();
-                    if(message instanceof AssistantMessage assistantMessage){
-                        // 尝试获取各种可能的思维过程字段
-                        Object reasoningContent = assistantMessage.getMetadata().get("reasoningContent");
-                        
-                        // 打印所有可用的元数据键，帮助调试
-                        System.out.println("Available metadata keys: " + assistantMessage.getMetadata().keySet());
-                        
-                        if (reasoningContent != null && !reasoningContent.toString().isEmpty()) {
-                            System.out.println("思考中。。。" + reasoningContent);
-                        } else {
-                            // 普通模型响应（增量内容）
-                            return assistantMessage.getText();
-                        }
-                    }
-                } else if (streamingOutput.getOutputType() == OutputType.AGENT_MODEL_FINISHED) {
-                    return ""; // 完成时不额外输出
-                }
+            catch (GraphRunnerException e) {
+                return Flux.error(e);
             }
-            return "";
+            // 先落地检查点再发出 done 事件
+            return streamingProjection.project(flushOnEnd(stream, threadId));
         });
+        AdmissionController admissionController = admissionControllerProvider.getIfAvailable();
+        Flux<StreamEvent> admitted = admissionController != null ? admissionController.admit(() -> run) : run;
+        ThreadRunGate threadRunGate = threadRunGateProvider.getIfAvailable();
+        Flux<StreamEvent> gated = threadRunGate != null ? threadRunGate.run(threadId, () -> admitted) : admitted;
+        if (resumableStreams == null) {
+            return gated.map(event -> ServerSentEvent.builder(event.data())
+                    .event(event.type().eventName())
+                    .build());
+        }
+        return resumableStreams.start(threadId, gated).map(this::toServerSentEvent);
+    }
+
+    /**
+     * 无法续传（运行未知、已过期、错过的事件已被覆盖或运行已因无人重连被取消）：返回 410，客户端应重新发起请求
+     */
+    @ExceptionHandler(StreamNotResumableException.class)
+    public ResponseEntity<Map<String, String>> onStreamNotResumable(StreamNotResumableException e) {
+        return ResponseEntity.status(HttpStatus.GONE)
+                .body(Map.of("reason", "NOT_RESUMABLE", "message", e.getMessage()));
+    }
+
+    /**
+     * 运行未被接纳：同一线程冲突返回 409，过载返回 429，均带 Retry-After
+     */
+    @ExceptionHandler(RunRejectedException.class)
+    public ResponseEntity<Map<String, String>> onRunRejected(RunRejectedException e) {
+        HttpStatus status = e.isThreadConflict() ? HttpStatus.CONFLICT : HttpStatus.TOO_MANY_REQUESTS;
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                .body(Map.of("reason", e.getReason().name(), "message", e.getMessage()));
+    }
+
+    private ServerSentEvent<String> toServerSentEvent(ResumableEvent event) {
+        return ServerSentEvent.builder(event.event().data())
+                .id(event.id())
+                .event(event.event().type().eventName())
+                .build();
+    }
+
+    /**
+     * 运行结束时回写本线程积压的检查点：正常完成时在结束信号前落地，取消或出错时异步落地
+     */
+    private <T> Flux<T> flushOnEnd(Flux<T> output, String threadId) {
+        if (!(checkpointSaver instanceof TieredCheckpointSaver tieredSaver)) {
+            return output;
+        }
+        Mono<T> flush = Mono.<T>fromRunnable(() -> {
+            try {
+                tieredSaver.flush(threadId);
+            }
+            catch (Exception e) {
+                throw new IllegalStateException("Failed to flush checkpoints for " + threadId, e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+        return output.concatWith(flush)
+                .doFinally(signal -> {
+                    if (signal != SignalType.ON_COMPLETE) {
+                        tieredSaver.flushAsync(threadId);
+                    }
+                });
     }
-}
\ No newline at end of file
+}
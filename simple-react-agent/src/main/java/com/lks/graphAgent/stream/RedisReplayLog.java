@@ -0,0 +1,221 @@
+package com.lks.graphAgent.stream;
+
+import com.lks.common.stream.ReplayLog;
+import com.lks.common.stream.ResumableEvent;
+import com.lks.common.stream.StreamEvent;
+import com.lks.common.stream.StreamNotResumableException;
+import org.redisson.api.RStream;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.stream.StreamAddArgs;
+import org.redisson.api.stream.StreamReadArgs;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 基于 Redis Streams 的运行输出副本
+ *
+ * 每个运行一个 Stream（键为 prefix + key + ":" + runId），消息ID 取 {@code 0-seq}，与事件序号一一对应，
+ * 续传时直接 XREAD 大于 {@code 0-lastSeq} 的消息。运行结束时追加一条 end 消息并把过期时间缩短为 retention。
+ * 写入均为异步且按运行串成链（显式ID 的 XADD 必须递增，并发发出可能乱序），失败只记日志，不影响运行本身。
+ */
+public class RedisReplayLog implements ReplayLog {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisReplayLog.class);
+
+    private static final String FIELD_TYPE = "type";
+    private static final String FIELD_DATA = "data";
+    private static final String TYPE_END = "end";
+
+    private final RedissonClient redisson;
+    private final String keyPrefix;
+    private final int maxLen;
+    private final Duration runningTtl;
+    private final Duration retention;
+    private final Duration pollTimeout;
+    private final Duration maxIdle;
+
+    /** 每个运行最后一次写入，后续写入接在其后 */
+    private final ConcurrentHashMap<String, CompletableFuture<?>> tails = new ConcurrentHashMap<>();
+
+    private RedisReplayLog(Builder builder) {
+        this.redisson = builder.redisson;
+        this.keyPrefix = builder.keyPrefix;
+        this.maxLen = builder.maxLen;
+        this.runningTtl = builder.runningTtl;
+        this.retention = builder.retention;
+        this.pollTimeout = builder.pollTimeout;
+        this.maxIdle = builder.maxIdle;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public void append(String key, ResumableEvent event) {
+        RStream<String, String> stream = stream(key, event.runId());
+        StreamAddArgs<String, String> args = StreamAddArgs.entries(
+                        Map.of(FIELD_TYPE, event.event().type().name(), FIELD_DATA, event.event().data()))
+                .trimNonStrict().maxLen(maxLen).noLimit();
+        enqueue(stream.getName(), () -> stream.addAsync(new StreamMessageId(0, event.seq()), args)
+                .thenCompose(id -> event.seq() == 1
+                        // 运行未正常结束（实例崩溃）时也不会永久残留
+                        ? stream.expireAsync(runningTtl)
+                        : CompletableFuture.completedFuture(true)), "append event " + event.id());
+    }
+
+    @Override
+    public void complete(String key, String runId, long lastSeq, Throwable error) {
+        RStream<String, String> stream = stream(key, runId);
+        String message = error == null ? "" : Objects.toString(error.getMessage(), error.getClass().getSimpleName());
+        CompletableFuture<?> tail = enqueue(stream.getName(),
+                () -> stream.addAsync(new StreamMessageId(0, lastSeq + 1), StreamAddArgs.entries(Map.of(FIELD_TYPE, TYPE_END, FIELD_DATA, message)))
+                        .thenCompose(id -> stream.expireAsync(retention)), "append end of run " + runId);
+        tail.whenComplete((ignored, e) -> tails.remove(stream.getName(), tail));
+    }
+
+    private CompletableFuture<?> enqueue(String name, Supplier<CompletionStage<?>> write, String description) {
+        return tails.compute(name, (key, previous) -> {
+            CompletableFuture<?> after = previous != null ? previous : CompletableFuture.completedFuture(null);
+            return after.thenCompose(ignored -> write.get())
+                    .exceptionally(e -> {
+                        log.warn("Failed to {} in replay log: {}", description, e.getMessage());
+                        return null;
+                    })
+                    .toCompletableFuture();
+        });
+    }
+
+    @Override
+    public Flux<ResumableEvent> read(String key, String runId, long afterSeq) {
+        return Flux.defer(() -> {
+            RStream<String, String> stream = stream(key, runId);
+            AtomicReference<StreamMessageId> cursor = new AtomicReference<>(new StreamMessageId(0, afterSeq));
+            return Mono.fromCompletionStage(stream.isExistsAsync())
+                    .flatMapMany(exists -> {
+                        if (!exists) {
+                            return Flux.error(new StreamNotResumableException("Run " + runId + " is unknown or has expired"));
+                        }
+                        // 阻塞读 pollTimeout，读到 end 消息时结束；超过 maxIdle 没有新消息视为运行已丢失
+                        return Mono.defer(() -> Mono.fromCompletionStage(stream.readAsync(
+                                        StreamReadArgs.greaterThan(cursor.get()).count(256).timeout(pollTimeout))))
+                                .repeat()
+                                .filter(messages -> messages != null && !messages.isEmpty())
+                                .timeout(maxIdle, Flux.error(() -> new StreamNotResumableException(
+                                        "Run " + runId + " produced no output for " + maxIdle.toSeconds() + " s")))
+                                .concatMapIterable(messages -> {
+                                    List<Map.Entry<StreamMessageId, Map<String, String>>> entries = new ArrayList<>(messages.entrySet());
+                                    entries.sort(Map.Entry.comparingByKey((a, b) -> Long.compare(a.getId1(), b.getId1())));
+                                    cursor.set(entries.get(entries.size() - 1).getKey());
+                                    return entries;
+                                })
+                                .takeUntil(entry -> TYPE_END.equals(entry.getValue().get(FIELD_TYPE)))
+                                .concatMap(entry -> toEvent(runId, entry));
+                    });
+        });
+    }
+
+    private Mono<ResumableEvent> toEvent(String runId, Map.Entry<StreamMessageId, Map<String, String>> entry) {
+        Map<String, String> fields = entry.getValue();
+        String type = fields.get(FIELD_TYPE);
+        if (TYPE_END.equals(type)) {
+            String error = fields.get(FIELD_DATA);
+            return error == null || error.isEmpty()
+                    ? Mono.empty()
+                    : Mono.error(new IllegalStateException("Run " + runId + " failed: " + error));
+        }
+        long seq = entry.getKey().getId1();
+        return Mono.just(new ResumableEvent(runId, seq,
+                new StreamEvent(StreamEvent.Type.valueOf(type), Objects.toString(fields.get(FIELD_DATA), ""))));
+    }
+
+    private RStream<String, String> stream(String key, String runId) {
+        return redisson.getStream(keyPrefix + key + ":" + runId, StringCodec.INSTANCE);
+    }
+
+    public static class Builder {
+        private RedissonClient redisson;
+        private String keyPrefix = "agent:stream:";
+        private int maxLen = 1024;
+        private Duration runningTtl = Duration.ofHours(1);
+        private Duration retention = Duration.ofMinutes(5);
+        private Duration pollTimeout = Duration.ofSeconds(1);
+        private Duration maxIdle = Duration.ofMinutes(2);
+
+        public Builder redisson(RedissonClient redisson) {
+            this.redisson = redisson;
+            return this;
+        }
+
+        /**
+         * Stream 键前缀，默认 agent:stream:
+         */
+        public Builder keyPrefix(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+            return this;
+        }
+
+        /**
+         * 每个运行保留的最近事件数（近似裁剪），默认 1024
+         */
+        public Builder maxLen(int maxLen) {
+            this.maxLen = maxLen;
+            return this;
+        }
+
+        /**
+         * 运行中 Stream 的过期时间，防止实例崩溃后残留，默认 1 小时
+         */
+        public Builder runningTtl(Duration runningTtl) {
+            this.runningTtl = runningTtl;
+            return this;
+        }
+
+        /**
+         * 运行结束后 Stream 的保留时长，默认 5 分钟
+         */
+        public Builder retention(Duration retention) {
+            this.retention = retention;
+            return this;
+        }
+
+        /**
+         * 单次阻塞读的超时，默认 1 秒
+         */
+        public Builder pollTimeout(Duration pollTimeout) {
+            this.pollTimeout = pollTimeout;
+            return this;
+        }
+
+        /**
+         * 跟随输出时最长无新消息时长，超过视为运行已丢失，默认 2 分钟
+         */
+        public Builder maxIdle(Duration maxIdle) {
+            this.maxIdle = maxIdle;
+            return this;
+        }
+
+        public RedisReplayLog build() {
+            Objects.requireNonNull(redisson, "redisson cannot be null");
+            if (maxLen <= 0) {
+                throw new IllegalArgumentException("maxLen must be positive");
+            }
+            return new RedisReplayLog(this);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.lks.graphAgent.checkpoint;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.lks.common.checkpoint.CheckpointRetention;
+import com.lks.common.checkpoint.CheckpointRetentionPolicy;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 以本地 redis-server 验证后台裁剪：超出内存预算时按最后写入时间删除线程（全部保留、不过期的默认配置下同样有效），
+ * 以及按策略裁剪线程内的检查点
+ */
+class CheckpointCompactorTest {
+
+    private static RedisServer redis;
+    private static RedissonClient redisson;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redis = RedisServer.newRedisServer()
+                .bind("127.0.0.1")
+                .port(port)
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        redis.start();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+        redisson = Redisson.create(config);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (redisson != null) {
+            redisson.shutdown();
+        }
+        if (redis != null) {
+            redis.stop();
+        }
+    }
+
+    @AfterEach
+    void flush() {
+        redisson.getKeys().flushall();
+    }
+
+    @Test
+    void evictsTheLeastRecentlyWrittenThreadFirstWithKeepAllDefaults() throws Exception {
+        CompactRedisSaver saver = CompactRedisSaver.builder().redisson(redisson).build();
+        List<String> threads = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            String threadId = "lru-" + UUID.randomUUID();
+            threads.add(threadId);
+            saver.put(config(threadId), checkpoint("cp-" + i));
+            Thread.sleep(5);
+        }
+        // 最早写入的线程被读取、最后一个写入的线程之后再也没有读取：读取不影响删除顺序
+        saver.get(config(threads.get(0)));
+        saver.put(config(threads.get(1)), checkpoint("cp-again"));
+
+        CheckpointCompactor probe = compactor(saver, 0);
+        CheckpointCompactor.Footprint footprint = probe.footprint(0);
+        assertThat(footprint.threads()).isEqualTo(6);
+        long budget = footprint.bytes() - 1;
+
+        CheckpointCompactor.Pass pass = compactor(saver, budget).runOnce();
+
+        assertThat(pass.evictedThreads()).isEqualTo(1);
+        assertThat(pass.threads()).isEqualTo(5);
+        assertThat(saver.contains(threads.get(0))).isFalse();
+        assertThat(threads.subList(1, 6)).allMatch(saver::contains);
+
+        // 预算再减一个线程：接下来删除的是 threads[2]，threads[1] 刚刚重新写过
+        long smaller = compactor(saver, 0).footprint(0).bytes() - 1;
+        assertThat(compactor(saver, smaller).runOnce().evictedThreads()).isEqualTo(1);
+        assertThat(saver.contains(threads.get(2))).isFalse();
+        assertThat(saver.contains(threads.get(1))).isTrue();
+    }
+
+    @Test
+    void evictionDropsTheThreadsSideKeys() throws Exception {
+        CompactRedisSaver saver = CompactRedisSaver.builder().redisson(redisson).build();
+        String threadId = "side-" + UUID.randomUUID();
+        saver.put(config(threadId), checkpoint("cp-1"));
+
+        compactor(saver, 1).runOnce();
+
+        assertThat(saver.contains(threadId)).isFalse();
+        assertThat(redisson.getBucket(CompactRedisSaver.writtenKey(threadId)).isExists()).isFalse();
+        assertThat(saver.lease(config(threadId), "node", Duration.ofSeconds(1)).latestCheckpointId()).isNull();
+    }
+
+    @Test
+    void prunesThreadsOverTheirRetentionPolicy() throws Exception {
+        CheckpointRetention retention = CheckpointRetention.builder()
+                .policy("short_", new CheckpointRetentionPolicy(2, false, Duration.ofHours(1)))
+                .build();
+        CompactRedisSaver saver = CompactRedisSaver.builder().redisson(redisson).retention(retention).build();
+        String pruned = "short_" + UUID.randomUUID();
+        String kept = "long_" + UUID.randomUUID();
+        for (int i = 1; i <= 5; i++) {
+            saver.put(config(pruned), checkpoint("cp-" + i));
+            saver.put(config(kept), checkpoint("cp-" + i));
+        }
+
+        CheckpointCompactor.Pass pass = compactor(saver, 0).runOnce();
+
+        assertThat(pass.compactedThreads()).isEqualTo(1);
+        assertThat(pass.prunedCheckpoints()).isEqualTo(3);
+        assertThat(pass.checkpoints()).isEqualTo(7);
+        assertThat(saver.list(config(pruned))).extracting(Checkpoint::getId).containsExactly("cp-5", "cp-4");
+        assertThat(saver.list(config(kept))).hasSize(5);
+        assertThat(compactor(saver, 0).runOnce().prunedCheckpoints()).isZero();
+    }
+
+    private static CheckpointCompactor compactor(CompactRedisSaver saver, long memoryBudget) {
+        return CheckpointCompactor.builder()
+                .saver(saver)
+                .interval(Duration.ZERO)
+                .batchSize(2)
+                .memoryBudget(memoryBudget)
+                .build();
+    }
+
+    private static RunnableConfig config(String threadId) {
+        return RunnableConfig.builder().threadId(threadId).build();
+    }
+
+    private static Checkpoint checkpoint(String id) {
+        Map<String, Object> state = new HashMap<>();
+        state.put("messages", new ArrayList<>());
+        state.put("payload", "x".repeat(200));
+        return Checkpoint.builder().id(id).nodeId("agent").nextNodeId("tool").state(state).build();
+    }
+}
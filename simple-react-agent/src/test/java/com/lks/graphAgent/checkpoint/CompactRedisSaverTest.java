@@ -0,0 +1,304 @@
+package com.lks.graphAgent.checkpoint;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.StateGraph;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.alibaba.cloud.ai.graph.checkpoint.savers.redis.RedisSaver;
+import com.lks.common.checkpoint.CheckpointCodec;
+import com.lks.common.checkpoint.CheckpointCompression;
+import com.lks.common.checkpoint.CheckpointRetention;
+import com.lks.common.checkpoint.CheckpointRetentionPolicy;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.config.Config;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 以本地 redis-server 验证紧凑格式保存器：快照间隔与尾部窗口读取、原地替换、按策略裁剪以及旧版数据迁移
+ */
+class CompactRedisSaverTest {
+
+    private static RedisServer redis;
+    private static RedissonClient redisson;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redis = RedisServer.newRedisServer()
+                .bind("127.0.0.1")
+                .port(port)
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        redis.start();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+        redisson = Redisson.create(config);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (redisson != null) {
+            redisson.shutdown();
+        }
+        if (redis != null) {
+            redis.stop();
+        }
+    }
+
+    @AfterEach
+    void flush() {
+        redisson.getKeys().flushall();
+    }
+
+    @Test
+    void writesFullSnapshotEverySnapshotInterval() throws Exception {
+        CompactRedisSaver saver = saver(3);
+        String threadId = threadId();
+
+        for (Checkpoint checkpoint : growing(1, 7)) {
+            saver.put(config(threadId), checkpoint);
+        }
+
+        assertThat(kinds(threadId)).containsExactly(true, false, false, true, false, false, true);
+        assertThat(saver.get(config(threadId))).hasValueSatisfying(latest -> assertCheckpoint(latest, "cp-7", 7));
+        assertThat(saver.list(config(threadId))).extracting(Checkpoint::getId)
+                .containsExactly("cp-7", "cp-6", "cp-5", "cp-4", "cp-3", "cp-2", "cp-1");
+        assertThat(saver.get(RunnableConfig.builder().threadId(threadId).checkPointId("cp-5").build()))
+                .hasValueSatisfying(checkpoint -> assertCheckpoint(checkpoint, "cp-5", 5));
+        assertThat(saver.stats().fullCount()).isEqualTo(3);
+        assertThat(saver.stats().deltaCount()).isEqualTo(4);
+    }
+
+    @Test
+    void putAllKeepsTheSnapshotCadenceAcrossBatches() throws Exception {
+        CompactRedisSaver saver = saver(3);
+        String threadId = threadId();
+
+        saver.putAll(config(threadId), growing(1, 2));
+        saver.putAll(config(threadId), growing(3, 5));
+
+        assertThat(kinds(threadId)).containsExactly(true, false, false, true, false);
+        assertThat(saver.get(config(threadId))).hasValueSatisfying(latest -> assertCheckpoint(latest, "cp-5", 5));
+        assertThat(saver.lease(config(threadId), "node", Duration.ofSeconds(1)).latestCheckpointId()).isEqualTo("cp-5");
+    }
+
+    @Test
+    void readsTailWithoutSnapshotAfterIntervalWasRaised() throws Exception {
+        // 先以较大间隔写入，再以较小间隔读取：尾部窗口中没有全量快照时退回全量读取
+        String threadId = threadId();
+        saver(10).putAll(config(threadId), growing(1, 8));
+        CompactRedisSaver narrow = saver(3);
+
+        assertThat(narrow.get(config(threadId))).hasValueSatisfying(latest -> assertCheckpoint(latest, "cp-8", 8));
+
+        narrow.put(config(threadId), growing(9, 9).get(0));
+        assertThat(kinds(threadId)).endsWith(false, true);
+        assertThat(narrow.get(config(threadId))).hasValueSatisfying(latest -> assertCheckpoint(latest, "cp-9", 9));
+    }
+
+    @Test
+    void replaceRewritesTheCheckpointAndTheDeltasAfterIt() throws Exception {
+        CompactRedisSaver saver = saver(4);
+        String threadId = threadId();
+        saver.putAll(config(threadId), growing(1, 6));
+
+        // updateState：改写 cp-3 的状态，之后依赖它的增量需要重新编码
+        Map<String, Object> state = new HashMap<>(saver.get(checkpointConfig(threadId, "cp-3")).orElseThrow().getState());
+        state.put("note", "edited");
+        saver.put(checkpointConfig(threadId, "cp-3"),
+                Checkpoint.builder().id("cp-3").nodeId("agent").nextNodeId("tool").state(state).build());
+
+        List<Checkpoint> all = new ArrayList<>(saver.list(config(threadId)));
+        assertThat(all).extracting(Checkpoint::getId).containsExactly("cp-6", "cp-5", "cp-4", "cp-3", "cp-2", "cp-1");
+        assertThat(all.get(3).getState()).containsEntry("note", "edited");
+        for (int i = 0; i < all.size(); i++) {
+            assertCheckpoint(all.get(i), "cp-" + (6 - i), 6 - i);
+        }
+        assertThat(kinds(threadId)).containsExactly(true, false, false, false, true, false);
+
+        assertThatThrownBy(() -> saver.put(checkpointConfig(threadId, "missing"), growing(7, 7).get(0)))
+                .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void replacingTheLatestCheckpointMovesTheHead() throws Exception {
+        CompactRedisSaver saver = saver(4);
+        String threadId = threadId();
+        saver.putAll(config(threadId), growing(1, 2));
+
+        Checkpoint renamed = Checkpoint.builder().id("cp-2b").nodeId("agent").nextNodeId("tool")
+                .state(saver.get(config(threadId)).orElseThrow().getState()).build();
+        saver.put(checkpointConfig(threadId, "cp-2"), renamed);
+
+        assertThat(saver.lease(config(threadId), "node", Duration.ofSeconds(1)).latestCheckpointId()).isEqualTo("cp-2b");
+        assertThat(saver.get(config(threadId))).map(Checkpoint::getId).contains("cp-2b");
+    }
+
+    @Test
+    void compactKeepsTheNewestCheckpointsAndReencodesFromASnapshot() throws Exception {
+        CheckpointRetention retention = CheckpointRetention.builder()
+                .policy("short_", new CheckpointRetentionPolicy(3, false, null))
+                .build();
+        CompactRedisSaver saver = CompactRedisSaver.builder()
+                .redisson(redisson)
+                .snapshotInterval(2)
+                .retention(retention)
+                .build();
+        String threadId = "short_" + UUID.randomUUID();
+        saver.putAll(config(threadId), growing(1, 7));
+
+        CompactRedisSaver.Compaction compaction = saver.compact(threadId);
+
+        assertThat(compaction.before()).isEqualTo(7);
+        assertThat(compaction.after()).isEqualTo(3);
+        assertThat(compaction.pruned()).isEqualTo(4);
+        assertThat(compaction.bytesAfter()).isLessThan(compaction.bytesBefore());
+        assertThat(kinds(threadId)).containsExactly(true, false, true);
+        assertThat(saver.list(config(threadId))).extracting(Checkpoint::getId).containsExactly("cp-7", "cp-6", "cp-5");
+        assertThat(saver.get(config(threadId))).hasValueSatisfying(latest -> assertCheckpoint(latest, "cp-7", 7));
+        assertThat(saver.compact(threadId).pruned()).isZero();
+    }
+
+    @Test
+    void compactSkipsThreadsWithoutPruningPolicy() throws Exception {
+        CompactRedisSaver saver = saver(2);
+        String threadId = threadId();
+        saver.putAll(config(threadId), growing(1, 5));
+
+        CompactRedisSaver.Compaction compaction = saver.compact(threadId);
+
+        assertThat(compaction.pruned()).isZero();
+        assertThat(compaction.bytesAfter()).isEqualTo(compaction.bytesBefore());
+        assertThat(saver.list(config(threadId))).hasSize(5);
+    }
+
+    @Test
+    void migratesLegacyRedisSaverThreadsOnFirstAccess() throws Exception {
+        RedisSaver legacy = RedisSaver.builder().redisson(redisson).build();
+        String threadId = threadId();
+        for (Checkpoint checkpoint : growing(1, 5)) {
+            legacy.put(config(threadId), checkpoint);
+        }
+        CompactRedisSaver saver = CompactRedisSaver.builder()
+                .redisson(redisson)
+                .snapshotInterval(2)
+                .legacyReader(new LegacyRedisCheckpointReader(redisson))
+                .build();
+
+        assertThat(saver.get(config(threadId))).hasValueSatisfying(latest -> assertCheckpoint(latest, "cp-5", 5));
+        assertThat(kinds(threadId)).containsExactly(true, false, true, false, true);
+        assertThat(saver.lease(config(threadId), "node", Duration.ofSeconds(1)).latestCheckpointId()).isEqualTo("cp-5");
+
+        // 迁移后旧版线程标记为已释放，不会再次迁移；之后的写入接在迁移的记录之后
+        assertThat(new LegacyRedisCheckpointReader(redisson).read(threadId)).isEmpty();
+        saver.put(config(threadId), growing(6, 6).get(0));
+        assertThat(saver.list(config(threadId))).extracting(Checkpoint::getId)
+                .containsExactly("cp-6", "cp-5", "cp-4", "cp-3", "cp-2", "cp-1");
+    }
+
+    @Test
+    void releaseAndEvictDropRecordsAndHead() throws Exception {
+        CompactRedisSaver saver = saver(3);
+        String released = threadId();
+        String evicted = threadId();
+        saver.putAll(config(released), growing(1, 3));
+        saver.putAll(config(evicted), growing(1, 2));
+
+        assertThat(saver.release(config(released)).checkpoints()).extracting(Checkpoint::getId)
+                .containsExactly("cp-3", "cp-2", "cp-1");
+        assertThat(saver.evict(evicted)).isTrue();
+
+        for (String threadId : List.of(released, evicted)) {
+            assertThat(saver.contains(threadId)).isFalse();
+            assertThat(saver.get(config(threadId))).isEmpty();
+            assertThat(saver.lease(config(threadId), "node-" + threadId, Duration.ofSeconds(1)).latestCheckpointId()).isNull();
+        }
+    }
+
+    // ==================== 辅助 ====================
+
+    private static CompactRedisSaver saver(int snapshotInterval) {
+        return CompactRedisSaver.builder()
+                .redisson(redisson)
+                .compression(CheckpointCompression.LZ4)
+                .compressionThreshold(64)
+                .snapshotInterval(snapshotInterval)
+                .build();
+    }
+
+    /**
+     * @return 每条记录是否为全量快照（最旧的在前）
+     */
+    private static List<Boolean> kinds(String threadId) {
+        List<byte[]> records = redisson.<byte[]>getList(CompactRedisSaver.CHECKPOINT_PREFIX + threadId, ByteArrayCodec.INSTANCE)
+                .readAll();
+        return records.stream().map(CheckpointCodec::isFullSnapshot).toList();
+    }
+
+    /**
+     * 生成 cp-from..cp-to，第 i 个检查点有 i 条消息（只追加）
+     */
+    private static List<Checkpoint> growing(int from, int to) {
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        List<Object> history = new ArrayList<>();
+        for (int i = 1; i <= to; i++) {
+            history.add(i % 2 == 1 ? new UserMessage("question " + i) : new AssistantMessage("answer " + i));
+            if (i >= from) {
+                checkpoints.add(checkpoint("cp-" + i, history, i));
+            }
+        }
+        return checkpoints;
+    }
+
+    private static Checkpoint checkpoint(String id, List<Object> history, int step) {
+        Map<String, Object> state = new HashMap<>();
+        state.put(CheckpointCodec.MESSAGES_KEY, new ArrayList<>(history));
+        state.put("step", step);
+        return Checkpoint.builder().id(id).nodeId("agent").nextNodeId(StateGraph.END).state(state).build();
+    }
+
+    private static void assertCheckpoint(Checkpoint checkpoint, String id, int messageCount) {
+        assertThat(checkpoint.getId()).isEqualTo(id);
+        @SuppressWarnings("unchecked")
+        List<Message> messages = (List<Message>) checkpoint.getState().get(CheckpointCodec.MESSAGES_KEY);
+        assertThat(messages).hasSize(messageCount);
+        assertThat(messages.get(messageCount - 1).getText()).endsWith(" " + messageCount);
+    }
+
+    private static String threadId() {
+        return "compact-" + UUID.randomUUID();
+    }
+
+    private static RunnableConfig config(String threadId) {
+        return RunnableConfig.builder().threadId(threadId).build();
+    }
+
+    private static RunnableConfig checkpointConfig(String threadId, String checkpointId) {
+        return RunnableConfig.builder().threadId(threadId).checkPointId(checkpointId).build();
+    }
+}
@@ -0,0 +1,195 @@
+package com.lks.graphAgent.checkpoint;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 以两个本地 redis-server 进程作为分片，验证一致性哈希路由、在线增加分片后的再平衡，
+ * 以及移动线程时锁被占用的回退
+ */
+class ShardedCheckpointSaverTest {
+
+    private static final String LOCK_PREFIX = "graph:compact:lock:";
+
+    private static RedisServer redisA;
+    private static RedisServer redisB;
+    private static int portA;
+    private static int portB;
+
+    private final List<ShardedCheckpointSaver> savers = new ArrayList<>();
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        portA = freePort();
+        portB = freePort();
+        redisA = redis(portA);
+        redisB = redis(portB);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (redisA != null) {
+            redisA.stop();
+        }
+        if (redisB != null) {
+            redisB.stop();
+        }
+    }
+
+    @AfterEach
+    void cleanUp() {
+        for (ShardedCheckpointSaver saver : savers) {
+            for (CompactRedisSaver shard : saver.shards()) {
+                shard.redisson().getKeys().flushall();
+            }
+            saver.close();
+        }
+    }
+
+    @Test
+    void routesEachThreadToItsShardOnly() throws Exception {
+        CompactRedisSaver a = shard("a", portA);
+        CompactRedisSaver b = shard("b", portB);
+        ShardedCheckpointSaver saver = sharded(false, a, b);
+
+        for (int i = 0; i < 40; i++) {
+            saver.put(config("route-" + i), checkpoint("cp-" + i));
+        }
+
+        int onA = 0;
+        for (int i = 0; i < 40; i++) {
+            String threadId = "route-" + i;
+            CompactRedisSaver owner = saver.shardOf(threadId).equals("a") ? a : b;
+            CompactRedisSaver other = owner == a ? b : a;
+            assertThat(owner.contains(threadId)).isTrue();
+            assertThat(other.contains(threadId)).isFalse();
+            assertThat(saver.get(config(threadId))).map(Checkpoint::getId).contains("cp-" + i);
+            onA += owner == a ? 1 : 0;
+        }
+        assertThat(onA).isBetween(1, 39);
+    }
+
+    @Test
+    void addShardMovesOnlyReassignedThreads() throws Exception {
+        CompactRedisSaver a = shard("a", portA);
+        ShardedCheckpointSaver saver = sharded(false, a);
+        for (int i = 0; i < 60; i++) {
+            saver.put(config("grow-" + i), checkpoint("cp-" + i));
+        }
+
+        CompactRedisSaver b = shard("b", portB);
+        saver.addShard(b);
+        await().atMost(Duration.ofSeconds(30)).until(() -> !saver.isRebalancing());
+
+        long reassigned = 0;
+        for (int i = 0; i < 60; i++) {
+            String threadId = "grow-" + i;
+            boolean onB = saver.shardOf(threadId).equals("b");
+            reassigned += onB ? 1 : 0;
+            assertThat(b.contains(threadId)).isEqualTo(onB);
+            assertThat(a.contains(threadId)).isEqualTo(!onB);
+            assertThat(saver.get(config(threadId))).map(Checkpoint::getId).contains("cp-" + i);
+        }
+        assertThat(reassigned).isPositive();
+        assertThat(saver.migratedThreads()).isEqualTo(reassigned);
+    }
+
+    @Test
+    void accessDuringRebalanceFallsBackWhileTheThreadIsLocked() throws Exception {
+        CompactRedisSaver a = shard("a", portA);
+        CompactRedisSaver b = shard("b", portB);
+        String threadId = threadOwnedBy(sharded(false, shard("a", portA), shard("b", portB)), "b");
+        // 线程的记录还在旧分片 a 上
+        a.put(config(threadId), checkpoint("cp-1"));
+
+        // 其他实例正持有该线程在 a 上的锁，租期覆盖访问时的全部移动重试（3 × 3s）
+        CompletableFuture.runAsync(() -> a.redisson().getLock(LOCK_PREFIX + threadId)
+                .lock(10_500, TimeUnit.MILLISECONDS)).get();
+
+        ShardedCheckpointSaver saver = sharded(true, a, b);
+        // 移动失败不让运行出错：本次写入留在 a 上
+        saver.put(config(threadId), checkpoint("cp-2"));
+        assertThat(a.contains(threadId)).isTrue();
+        assertThat(b.contains(threadId)).isFalse();
+
+        // 锁释放后的下一次访问把线程移到归属分片
+        await().atMost(Duration.ofSeconds(10)).until(() -> !saver.isRebalancing());
+        assertThat(saver.get(config(threadId))).map(Checkpoint::getId).contains("cp-2");
+        assertThat(b.contains(threadId)).isTrue();
+        assertThat(a.contains(threadId)).isFalse();
+    }
+
+    private ShardedCheckpointSaver sharded(boolean rebalanceOnStart, CompactRedisSaver... shards) {
+        ShardedCheckpointSaver.Builder builder = ShardedCheckpointSaver.builder().rebalanceOnStart(rebalanceOnStart);
+        for (CompactRedisSaver shard : shards) {
+            builder.shard(shard);
+        }
+        ShardedCheckpointSaver saver = builder.build();
+        savers.add(saver);
+        return saver;
+    }
+
+    private static String threadOwnedBy(ShardedCheckpointSaver saver, String shard) {
+        for (int i = 0; ; i++) {
+            if (saver.shardOf("locked-" + i).equals(shard)) {
+                return "locked-" + i;
+            }
+        }
+    }
+
+    private static CompactRedisSaver shard(String name, int port) {
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+        RedissonClient redisson = Redisson.create(config);
+        return CompactRedisSaver.builder().name(name).redisson(redisson).build();
+    }
+
+    private static RunnableConfig config(String threadId) {
+        return RunnableConfig.builder().threadId(threadId).build();
+    }
+
+    private static Checkpoint checkpoint(String id) {
+        Map<String, Object> state = new HashMap<>();
+        state.put("messages", new ArrayList<>());
+        state.put("step", id);
+        return Checkpoint.builder().id(id).nodeId("agent").nextNodeId("tool").state(state).build();
+    }
+
+    private static RedisServer redis(int port) throws IOException {
+        RedisServer server = RedisServer.newRedisServer()
+                .bind("127.0.0.1")
+                .port(port)
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        server.start();
+        return server;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.lks.graphAgent.checkpoint;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 以本地 redis-server 验证两级检查点保存器：三种持久化模式的写入时机、持有租约时命中不访问 Redis，
+ * 以及线程在另一个节点上写过后本地 L1 被识别为过期
+ */
+class TieredCheckpointSaverTest {
+
+    private static final Duration LEASE = Duration.ofMillis(300);
+
+    private static RedisServer redis;
+    private static RedissonClient redisson;
+
+    private final List<TieredCheckpointSaver> tiers = new ArrayList<>();
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redis = RedisServer.newRedisServer()
+                .bind("127.0.0.1")
+                .port(port)
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        redis.start();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+        redisson = Redisson.create(config);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (redisson != null) {
+            redisson.shutdown();
+        }
+        if (redis != null) {
+            redis.stop();
+        }
+    }
+
+    @AfterEach
+    void closeTiers() {
+        tiers.forEach(TieredCheckpointSaver::close);
+    }
+
+    @Test
+    void syncModeWritesThroughAndServesHitsWithoutRedis() throws Exception {
+        CountingSaver redisSaver = new CountingSaver(compact());
+        TieredCheckpointSaver tier = tier(redisSaver, DurabilityMode.SYNC, "node-a", Duration.ofSeconds(30));
+        String threadId = threadId();
+
+        tier.put(config(threadId), checkpoint("cp-1", 1));
+        assertThat(redisSaver.puts.get()).isEqualTo(1);
+        assertThat(compact().get(config(threadId))).map(Checkpoint::getId).contains("cp-1");
+
+        // 写入后后台取得租约，之后的读取完全由 L1 提供
+        await().atMost(Duration.ofSeconds(5)).until(() -> tier.stats().leaseRequests() >= 1);
+        long leaseRequests = tier.stats().leaseRequests();
+        for (int i = 0; i < 5; i++) {
+            assertThat(tier.get(config(threadId))).map(Checkpoint::getId).contains("cp-1");
+        }
+        assertThat(redisSaver.gets.get()).isZero();
+        assertThat(tier.stats().l1Hits()).isEqualTo(5);
+        assertThat(tier.stats().leaseRequests()).isEqualTo(leaseRequests);
+    }
+
+    @Test
+    void asyncModeFlushesInBackgroundInBatches() throws Exception {
+        CountingSaver redisSaver = new CountingSaver(compact());
+        TieredCheckpointSaver tier = TieredCheckpointSaver.builder()
+                .delegate(redisSaver)
+                .durability(DurabilityMode.ASYNC)
+                .flushInterval(Duration.ofMillis(50))
+                .owner("node-a")
+                .leaseDuration(LEASE)
+                .build();
+        tiers.add(tier);
+        String threadId = threadId();
+
+        for (int i = 1; i <= 3; i++) {
+            tier.put(config(threadId), checkpoint("cp-" + i, i));
+        }
+        assertThat(tier.get(config(threadId))).map(Checkpoint::getId).contains("cp-3");
+
+        await().atMost(Duration.ofSeconds(5))
+                .untilAsserted(() -> assertThat(compact().get(config(threadId))).map(Checkpoint::getId).contains("cp-3"));
+        assertThat(redisSaver.puts.get()).isZero();
+        assertThat(tier.stats().flushedCheckpoints()).isEqualTo(3);
+        assertThat(tier.stats().flushedBatches()).isEqualTo((long) redisSaver.putAlls.get()).isBetween(1L, 3L);
+        assertThat(compact().list(config(threadId))).extracting(Checkpoint::getId).containsExactly("cp-3", "cp-2", "cp-1");
+        assertThat(redisSaver.gets.get()).isZero();
+    }
+
+    @Test
+    void flushOnEndKeepsWritesLocalUntilFlushed() throws Exception {
+        CountingSaver redisSaver = new CountingSaver(compact());
+        TieredCheckpointSaver tier = tier(redisSaver, DurabilityMode.FLUSH_ON_END, "node-a");
+        String threadId = threadId();
+
+        for (int i = 1; i <= 4; i++) {
+            tier.put(config(threadId), checkpoint("cp-" + i, i));
+        }
+        assertThat(compact().contains(threadId)).isFalse();
+        assertThat(tier.stats().pendingCheckpoints()).isEqualTo(4);
+        // 有待回写的检查点时 L1 比 Redis 新
+        assertThat(tier.get(config(threadId))).map(Checkpoint::getId).contains("cp-4");
+        assertThat(redisSaver.gets.get()).isZero();
+
+        tier.flush(threadId);
+        assertThat(redisSaver.putAlls.get()).isEqualTo(1);
+        assertThat(tier.stats().pendingCheckpoints()).isZero();
+        assertThat(compact().list(config(threadId))).extracting(Checkpoint::getId)
+                .containsExactly("cp-4", "cp-3", "cp-2", "cp-1");
+    }
+
+    @Test
+    void detectsStaleL1AfterAnotherNodeWroteTheThread() throws Exception {
+        CountingSaver redisA = new CountingSaver(compact());
+        CountingSaver redisB = new CountingSaver(compact());
+        TieredCheckpointSaver nodeA = tier(redisA, DurabilityMode.SYNC, "node-a");
+        TieredCheckpointSaver nodeB = tier(redisB, DurabilityMode.SYNC, "node-b");
+        String threadId = threadId();
+
+        nodeA.put(config(threadId), checkpoint("cp-1", 1));
+        await().atMost(Duration.ofSeconds(5)).until(() -> nodeA.stats().leaseRequests() >= 1);
+        assertThat(nodeA.get(config(threadId))).map(Checkpoint::getId).contains("cp-1");
+
+        // 线程换到 B：等 A 的租约到期后取得租约，读到 A 写入的检查点并继续写
+        assertThat(nodeB.get(config(threadId))).map(Checkpoint::getId).contains("cp-1");
+        assertThat(redisB.gets.get()).isEqualTo(1);
+        nodeB.put(config(threadId), checkpoint("cp-2", 2));
+
+        // 回到 A：L1 中仍是 cp-1，取得租约时发现最新ID已变，改读 Redis
+        assertThat(nodeA.get(config(threadId))).map(Checkpoint::getId).contains("cp-2");
+        assertThat(redisA.gets.get()).isEqualTo(1);
+
+        // 之后 A 重新持有租约，再次命中不访问 Redis
+        assertThat(nodeA.get(config(threadId))).map(Checkpoint::getId).contains("cp-2");
+        assertThat(redisA.gets.get()).isEqualTo(1);
+    }
+
+    @Test
+    void revalidatesWithOneLeaseRoundTripWhenNobodyElseWrote() throws Exception {
+        CountingSaver redisSaver = new CountingSaver(compact());
+        TieredCheckpointSaver tier = tier(redisSaver, DurabilityMode.SYNC, "node-a");
+        String threadId = threadId();
+
+        tier.put(config(threadId), checkpoint("cp-1", 1));
+        Thread.sleep(LEASE.multipliedBy(2).toMillis());
+
+        assertThat(tier.get(config(threadId))).map(Checkpoint::getId).contains("cp-1");
+        assertThat(tier.stats().l1Misses()).isEqualTo(1);
+        assertThat(redisSaver.gets.get()).isZero();
+    }
+
+    @Test
+    void readsWithoutL1WhenAnotherNodeKeepsTheLease() throws Exception {
+        CountingSaver redisA = new CountingSaver(compact());
+        CountingSaver redisB = new CountingSaver(compact());
+        TieredCheckpointSaver nodeA = tier(redisA, DurabilityMode.SYNC, "node-a");
+        TieredCheckpointSaver nodeB = TieredCheckpointSaver.builder()
+                .delegate(redisB)
+                .durability(DurabilityMode.SYNC)
+                .owner("node-b")
+                .leaseDuration(Duration.ofSeconds(30))
+                .leaseWait(Duration.ZERO)
+                .build();
+        tiers.add(nodeB);
+        String threadId = threadId();
+
+        nodeB.put(config(threadId), checkpoint("cp-1", 1));
+        await().atMost(Duration.ofSeconds(5)).until(() -> nodeB.stats().leaseRequests() >= 1);
+
+        assertThat(nodeA.get(config(threadId))).map(Checkpoint::getId).contains("cp-1");
+        assertThat(nodeA.get(config(threadId))).map(Checkpoint::getId).contains("cp-1");
+        assertThat(nodeA.stats().leaseConflicts()).isEqualTo(2);
+        assertThat(nodeA.stats().l1Hits()).isZero();
+        assertThat(redisA.gets.get()).isEqualTo(2);
+    }
+
+    private TieredCheckpointSaver tier(BatchingCheckpointSaver delegate, DurabilityMode durability, String owner) {
+        return tier(delegate, durability, owner, LEASE);
+    }
+
+    private TieredCheckpointSaver tier(BatchingCheckpointSaver delegate, DurabilityMode durability, String owner,
+                                       Duration lease) {
+        TieredCheckpointSaver tier = TieredCheckpointSaver.builder()
+                .delegate(delegate)
+                .durability(durability)
+                .owner(owner)
+                .leaseDuration(lease)
+                .build();
+        tiers.add(tier);
+        return tier;
+    }
+
+    private static CompactRedisSaver compact() {
+        return CompactRedisSaver.builder().redisson(redisson).build();
+    }
+
+    private static String threadId() {
+        return "tier-" + UUID.randomUUID();
+    }
+
+    private static RunnableConfig config(String threadId) {
+        return RunnableConfig.builder().threadId(threadId).build();
+    }
+
+    private static Checkpoint checkpoint(String id, int step) {
+        Map<String, Object> state = new HashMap<>();
+        state.put("messages", new ArrayList<>());
+        state.put("step", step);
+        return Checkpoint.builder().id(id).nodeId("agent").nextNodeId("tool").state(state).build();
+    }
+
+    /**
+     * 统计到达 Redis 层的读写次数
+     */
+    private static final class CountingSaver implements BatchingCheckpointSaver {
+
+        private final BatchingCheckpointSaver delegate;
+        private final AtomicInteger gets = new AtomicInteger();
+        private final AtomicInteger puts = new AtomicInteger();
+        private final AtomicInteger putAlls = new AtomicInteger();
+
+        CountingSaver(BatchingCheckpointSaver delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Collection<Checkpoint> list(RunnableConfig config) {
+            gets.incrementAndGet();
+            return delegate.list(config);
+        }
+
+        @Override
+        public Optional<Checkpoint> get(RunnableConfig config) {
+            gets.incrementAndGet();
+            return delegate.get(config);
+        }
+
+        @Override
+        public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+            puts.incrementAndGet();
+            return delegate.put(config, checkpoint);
+        }
+
+        @Override
+        public void putAll(RunnableConfig config, List<Checkpoint> checkpoints) throws Exception {
+            putAlls.incrementAndGet();
+            delegate.putAll(config, checkpoints);
+        }
+
+        @Override
+        public Lease lease(RunnableConfig config, String owner, Duration duration) throws Exception {
+            return delegate.lease(config, owner, duration);
+        }
+
+        @Override
+        public Tag release(RunnableConfig config) throws Exception {
+            return delegate.release(config);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.lks.graphAgent.stream;
+
+import com.lks.common.stream.ResumableEvent;
+import com.lks.common.stream.ResumableStreams;
+import com.lks.common.stream.StreamEvent;
+import com.lks.common.stream.StreamNotResumableException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import reactor.core.publisher.Sinks;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 以本地 redis-server 验证运行输出副本：按序号回放、跟随进行中的运行、出错与未知运行，以及跨实例续传
+ */
+class RedisReplayLogTest {
+
+    private static RedisServer redis;
+    private static RedissonClient redisson;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redis = RedisServer.newRedisServer()
+                .bind("127.0.0.1")
+                .port(port)
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        redis.start();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+        redisson = Redisson.create(config);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (redisson != null) {
+            redisson.shutdown();
+        }
+        if (redis != null) {
+            redis.stop();
+        }
+    }
+
+    @AfterEach
+    void flush() {
+        redisson.getKeys().flushall();
+    }
+
+    @Test
+    void finishedRunIsReplayedAfterTheGivenSequence() {
+        RedisReplayLog replayLog = replayLog();
+        appendAll(replayLog, "run1", "床前", "明月光", "疑是");
+        replayLog.complete("t-1", "run1", 3, null);
+        awaitWritten("run1");
+
+        List<ResumableEvent> replayed = replayLog.read("t-1", "run1", 1).collectList().block(Duration.ofSeconds(5));
+
+        assertThat(replayed).extracting(ResumableEvent::seq).containsExactly(2L, 3L);
+        assertThat(replayed).extracting(event -> event.event().data()).containsExactly("明月光", "疑是");
+        assertThat(replayed.get(0).event().type()).isEqualTo(StreamEvent.Type.ANSWER);
+        await().atMost(Duration.ofSeconds(2)).untilAsserted(() ->
+                assertThat(redisson.getKeys().remainTimeToLive("agent:stream:t-1:run1")).isBetween(1L, 60_000L));
+    }
+
+    @Test
+    void readFollowsARunUntilItEnds() {
+        RedisReplayLog replayLog = replayLog();
+        appendAll(replayLog, "run1", "a");
+        List<ResumableEvent> events = new CopyOnWriteArrayList<>();
+        AtomicBoolean completed = new AtomicBoolean();
+        awaitWritten("run1");
+
+        replayLog.read("t-1", "run1", 0).subscribe(events::add, error -> { }, () -> completed.set(true));
+        await().atMost(Duration.ofSeconds(2)).until(() -> events.size() == 1);
+        appendAll(replayLog, "run1", 2, "b", "c");
+        replayLog.complete("t-1", "run1", 3, null);
+
+        await().atMost(Duration.ofSeconds(5)).untilTrue(completed);
+        assertThat(events).extracting(event -> event.event().data()).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void failedRunEndsTheReplayWithAnError() {
+        RedisReplayLog replayLog = replayLog();
+        appendAll(replayLog, "run1", "a");
+        replayLog.complete("t-1", "run1", 1, new IllegalStateException("model failed"));
+        awaitWritten("run1");
+
+        List<ResumableEvent> events = new CopyOnWriteArrayList<>();
+        assertThatThrownBy(() -> replayLog.read("t-1", "run1", 0).doOnNext(events::add).blockLast(Duration.ofSeconds(5)))
+                .hasMessageContaining("model failed");
+        assertThat(events).hasSize(1);
+    }
+
+    @Test
+    void unknownRunIsNotResumable() {
+        assertThatThrownBy(() -> replayLog().read("t-1", "missing", 0).blockFirst(Duration.ofSeconds(5)))
+                .isInstanceOf(StreamNotResumableException.class);
+    }
+
+    @Test
+    void runIsResumedOnAnotherInstance() {
+        RedisReplayLog replayLog = replayLog();
+        ResumableStreams instanceA = ResumableStreams.builder().replayLog(replayLog).build();
+        ResumableStreams instanceB = ResumableStreams.builder().replayLog(replayLog).build();
+        Sinks.Many<StreamEvent> source = Sinks.many().unicast().onBackpressureBuffer();
+        List<ResumableEvent> received = new CopyOnWriteArrayList<>();
+        instanceA.start("t-1", source.asFlux()).subscribe(received::add);
+        source.tryEmitNext(StreamEvent.answer("床前"));
+        source.tryEmitNext(StreamEvent.answer("明月光"));
+        source.tryEmitNext(StreamEvent.done());
+        source.tryEmitComplete();
+        awaitWritten(received.get(0).runId());
+
+        List<ResumableEvent> resumed = instanceB.resume("t-1", received.get(0).id())
+                .collectList().block(Duration.ofSeconds(5));
+
+        assertThat(resumed).extracting(ResumableEvent::id)
+                .containsExactly(received.get(1).id(), received.get(2).id());
+        assertThat(resumed.get(1).event().type()).isEqualTo(StreamEvent.Type.DONE);
+        assertThat(instanceB.stats().replayLogResumes()).isEqualTo(1);
+    }
+
+    private static RedisReplayLog replayLog() {
+        return RedisReplayLog.builder()
+                .redisson(redisson)
+                .retention(Duration.ofMinutes(1))
+                .pollTimeout(Duration.ofMillis(100))
+                .maxIdle(Duration.ofSeconds(5))
+                .build();
+    }
+
+    /**
+     * 写入是异步的，等到运行的 Stream 出现后再读
+     */
+    private static void awaitWritten(String runId) {
+        await().atMost(Duration.ofSeconds(2)).until(() -> redisson.getKeys().countExists("agent:stream:t-1:" + runId) == 1);
+    }
+
+    private static void appendAll(RedisReplayLog replayLog, String runId, String... answers) {
+        appendAll(replayLog, runId, 1, answers);
+    }
+
+    private static void appendAll(RedisReplayLog replayLog, String runId, long firstSeq, String... answers) {
+        for (int i = 0; i < answers.length; i++) {
+            replayLog.append("t-1", new ResumableEvent(runId, firstSeq + i, StreamEvent.answer(answers[i])));
+        }
+    }
+}